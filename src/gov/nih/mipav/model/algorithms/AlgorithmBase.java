@@ -515,6 +515,17 @@ public abstract class AlgorithmBase extends Thread implements ActionListener, Wi
         return srcImage;
     }
 
+    /**
+     * Returns whether the algorithm works through the long position accessors of ModelStorageBase, so that it can
+     * process paged images larger than Integer.MAX_VALUE elements. Algorithms that export whole images or compute int
+     * positions can not, and run() refuses to start them on such images.
+     *
+     * @return  <code>true</code> if the algorithm handles paged images
+     */
+    protected boolean supportsPagedImages() {
+        return false;
+    }
+
     /**
      * Returns flag that indicates that the algorithm has been sucessfully completed.
      *
@@ -596,6 +607,18 @@ public abstract class AlgorithmBase extends Thread implements ActionListener, Wi
      */
     public void run() {
         setStartTime();
+
+        if ( !supportsPagedImages() && ( ( (srcImage != null) && srcImage.isPaged())
+                || ( (destImage != null) && destImage.isPaged()))) {
+
+            // the int sized accessors refuse such images, so stop before the algorithm fails part way through
+            displayError("This algorithm can not process images of more than " + Integer.MAX_VALUE + " elements");
+            setCompleted(false);
+            notifyListeners(this);
+
+            return;
+        }
+
         runAlgorithm();
 
         if(threadStopped){
@@ -2,11 +2,17 @@ package gov.nih.mipav.model.algorithms;
 
 
 import gov.nih.mipav.util.MipavMath;
+import gov.nih.mipav.util.ThreadUtil;
 import gov.nih.mipav.model.structures.*;
 import gov.nih.mipav.view.MipavUtil;
+import gov.nih.mipav.view.Preferences;
 import gov.nih.mipav.view.renderer.WildMagic.Render.ImageRegistrationGPU;
 
 import java.awt.Point;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import WildMagic.LibFoundation.Mathematics.Matrix4f;
 
@@ -80,6 +86,30 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
 
     public static final int NORMALIZED_MUTUAL_INFORMATION_GPU_LM = 20;
 
+    /**
+     * Sums of the correlation ratio: the weights, the weighted input values and the weighted squared input values of
+     * every reference bin, then the number of voxels visited.
+     */
+    private static final int SUMS_CORRELATION_RATIO = 0;
+
+    /** Sums of the least squares cost: the weighted squared differences, the weights and the number of voxels. */
+    private static final int SUMS_LEAST_SQUARES = 1;
+
+    /**
+     * Sums of the mutual information costs: the joint histogram, the reference and input histograms and the number of
+     * voxels visited.
+     */
+    private static final int SUMS_JOINT_HISTOGRAM = 2;
+
+    /** Every voxel has weight 1. */
+    private static final int WEIGHT_NONE = 0;
+
+    /** The weights fall off near the bounds of the input image. */
+    private static final int WEIGHT_SMOOTHED = 1;
+
+    /** The weights are the product of the reference and input weight images, and fall off near the bounds. */
+    private static final int WEIGHT_SMOOTHED_WGT = 2;
+
     // ~ Instance fields
     // ------------------------------------------------------------------------------------------------
 
@@ -98,8 +128,8 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
     /** DOCUMENT ME! */
     private final int nBins;
 
-    /** DOCUMENT ME! */
-    private int nVoxels;
+    /** Number of threads over which the reference voxels are split. */
+    private int nthreads = Preferences.isMultiThreadingEnabled() ? ThreadUtil.getAvailableCores() : 1;
 
     /** DOCUMENT ME! */
     private double[] pLogP;
@@ -113,6 +143,12 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
     /** DOCUMENT ME! */
     private ModelSimpleImage refWgtImage = null;
 
+    /** The sampled reference voxels, or null to visit them all. */
+    private BitSet sampleMask = null;
+
+    /** Ratio of the number of reference voxels to the number of sampled ones. */
+    private double sampleScale = 1;
+
     /** DOCUMENT ME! */
     private final double[] sincKernel = new double[201];
 
@@ -255,27 +291,27 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         switch (costFunctID) {
 
             case CORRELATION_RATIO_SMOOTHED_WGT:
-                value = correlationRatioSmoothedWgt(affMatrix);
+                value = correlationRatioSmoothedWgt(coefficients(affMatrix));
                 break;
 
             case CORRELATION_RATIO_SMOOTHED:
-                value = correlationRatioSmoothed(affMatrix);
+                value = correlationRatioSmoothed(coefficients(affMatrix));
                 break;
 
             case CORRELATION_RATIO:
-                value = correlationRatio(affMatrix);
+                value = correlationRatio(coefficients(affMatrix));
                 break;
 
             case LEAST_SQUARES:
-                value = leastSquares(affMatrix);
+                value = leastSquares(coefficients(affMatrix));
                 break;
 
             case LEAST_SQUARES_SMOOTHED:
-                value = leastSquaresSmoothed(affMatrix);
+                value = leastSquaresSmoothed(coefficients(affMatrix));
                 break;
 
             case LEAST_SQUARES_SMOOTHED_WGT:
-                value = leastSquaresSmoothedWgt(affMatrix);
+                value = leastSquaresSmoothedWgt(coefficients(affMatrix));
                 break;
 
             case LEAST_SQUARES_COLOR:
@@ -369,27 +405,27 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         switch (costFunctID) {
 
             case CORRELATION_RATIO_SMOOTHED_WGT:
-                value = correlationRatioSmoothedWgt(affMatrix);
+                value = correlationRatioSmoothedWgt(coefficients(affMatrix));
                 break;
 
             case CORRELATION_RATIO_SMOOTHED:
-                value = correlationRatioSmoothed(affMatrix);
+                value = correlationRatioSmoothed(coefficients(affMatrix));
                 break;
 
             case CORRELATION_RATIO:
-                value = correlationRatio(affMatrix);
+                value = correlationRatio(coefficients(affMatrix));
                 break;
 
             case LEAST_SQUARES:
-                value = leastSquares(affMatrix);
+                value = leastSquares(coefficients(affMatrix));
                 break;
 
             case LEAST_SQUARES_SMOOTHED:
-                value = leastSquaresSmoothed(affMatrix);
+                value = leastSquaresSmoothed(coefficients(affMatrix));
                 break;
 
             case LEAST_SQUARES_SMOOTHED_WGT:
-                value = leastSquaresSmoothedWgt(affMatrix);
+                value = leastSquaresSmoothedWgt(coefficients(affMatrix));
                 break;
 
             case LEAST_SQUARES_COLOR:
@@ -617,86 +653,203 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
     }
 
     /**
-     * DOCUMENT ME!
+     * Sets the number of threads over which the reference voxels are split when the correlation ratio, least squares
+     * and mutual information costs are evaluated. The sums of every thread are added in a fixed order, so a given
+     * number of threads always gives the same cost.
      * 
-     * @param tMatrix DOCUMENT ME!
-     * @param jointEntropy DOCUMENT ME!
-     * @param margEntropyR DOCUMENT ME!
-     * @param margEntropyI DOCUMENT ME!
+     * @param nthreads the number of threads, 1 to evaluate on the calling thread only
      */
-    private void calcEntropy(final TransMatrix tMatrix, final double[] jointEntropy, final double[] margEntropyR,
-            final double[] margEntropyI) {
+    public void setNumberOfThreads(final int nthreads) {
+        this.nthreads = Math.max(1, nthreads);
+    }
 
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index, indexValueR, indexValueI;
-        int position1, position2;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double value;
+    /**
+     * Restricts the correlation ratio, least squares and mutual information costs to a fixed random sample of the
+     * reference voxels. The sample is drawn once, so the cost stays a smooth function of the transformation during an
+     * optimization, and the sums over the sample are scaled up to the whole reference image.
+     * 
+     * @param fraction the fraction of the reference voxels to sample; 1 or more, or 0 or less, visits every voxel
+     * @param seed the seed of the random sample
+     */
+    public void setSampling(final float fraction, final long seed) {
+        final int length = refImage.data.length;
 
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
+        if ( (fraction <= 0) || (fraction >= 1) || (length == 0)) {
+            sampleMask = null;
+            sampleScale = 1;
 
-        if (aT10 < 0) {
-            aT10 = -aT10;
+            return;
         }
 
-        if (aT20 < 0) {
-            aT20 = -aT20;
+        final Random random = new Random(seed);
+        final BitSet mask = new BitSet(length);
+
+        for (int i = 0; i < length; i++) {
+
+            if (random.nextFloat() < fraction) {
+                mask.set(i);
+            }
         }
 
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
+        final int nSampled = mask.cardinality();
+
+        if (nSampled == 0) {
+            mask.set(random.nextInt(length));
         }
 
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
+        sampleScale = (double) length / Math.max(1, nSampled);
+        sampleMask = mask;
+    }
+
+    /**
+     * Walks the reference voxels that map inside the input image under a transformation and accumulates the sums that
+     * a cost function needs. The slices of the reference image are split into blocks, one per thread, and every block
+     * accumulates into sums of its own, which are added in block order at the end; the result therefore does not
+     * depend on the scheduling of the threads. The calling thread works on blocks as well and only waits for blocks
+     * that another thread has already started, so an evaluation cannot stall the thread pool when it is itself run
+     * from a pool thread, as the parallel Powell search does. When a voxel sample is set only the sampled reference
+     * voxels are visited and the sums are scaled up to the whole image.
+     * 
+     * @param t the transformation matrix, row by row: M00, M01, M02, M03, M10, ..., M23
+     * @param sums SUMS_CORRELATION_RATIO, SUMS_LEAST_SQUARES or SUMS_JOINT_HISTOGRAM
+     * @param weighting WEIGHT_NONE, WEIGHT_SMOOTHED or WEIGHT_SMOOTHED_WGT
+     * 
+     * @return the sums, laid out as described for the SUMS_ constants
+     */
+    private double[] accumulate(final double[] t, final int sums, final int weighting) {
+        final int zFirst = (weighting == AlgorithmCostFunctions.WEIGHT_SMOOTHED_WGT) ? zStart : 0;
+        final int nSlices = zEnd - zFirst + 1;
+        final int nBlocks = Math.max(1, Math.min(nthreads, nSlices));
+        final double[][] blockSums = new double[nBlocks][];
+        final int length;
+
+        if (sums == AlgorithmCostFunctions.SUMS_CORRELATION_RATIO) {
+            length = (3 * nBins) + 1;
+        } else if (sums == AlgorithmCostFunctions.SUMS_LEAST_SQUARES) {
+            length = 3;
         } else {
-            iT10 = Double.MAX_VALUE;
+            length = (nBins * nBins) + (2 * nBins) + 1;
         }
 
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
+        if (nBlocks == 1) {
+            blockSums[0] = new double[length];
+            accumulate(t, sums, weighting, zFirst, zEnd, blockSums[0]);
         } else {
-            iT20 = Double.MAX_VALUE;
+            final AtomicInteger nextBlock = new AtomicInteger(0);
+            final CountDownLatch doneSignal = new CountDownLatch(nBlocks);
+            final Runnable worker = new Runnable() {
+                public void run() {
+                    int block;
+
+                    while ( (block = nextBlock.getAndIncrement()) < nBlocks) {
+
+                        try {
+                            blockSums[block] = new double[length];
+                            accumulate(t, sums, weighting, zFirst + (int) ((long) nSlices * block / nBlocks), zFirst
+                                    + (int) ((long) nSlices * (block + 1) / nBlocks) - 1, blockSums[block]);
+                        } finally {
+                            doneSignal.countDown();
+                        }
+                    }
+                }
+            };
+
+            for (int i = 1; i < nBlocks; i++) {
+                ThreadUtil.mipavThreadPool.execute(worker);
+            }
+
+            worker.run();
+
+            try {
+                doneSignal.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
 
-        final double[] jointHist = new double[nBins * nBins];
-        final double[] margHistR = new double[nBins];
-        final double[] margHistI = new double[nBins];
+        final double[] total = blockSums[0];
 
-        for (int i = 0; i < (nBins * nBins); i++) {
-            jointHist[i] = 0;
+        for (int block = 1; block < nBlocks; block++) {
+
+            for (int i = 0; i < length; i++) {
+                total[i] += blockSums[block][i];
+            }
         }
 
-        for (int i = 0; i < nBins; i++) {
-            margHistI[i] = 0;
-            margHistR[i] = 0;
+        if (sampleMask != null) {
+
+            for (int i = 0; i < length; i++) {
+                total[i] *= sampleScale;
+            }
         }
 
+        return total;
+    }
+
+    /**
+     * Accumulates the sums of a cost function over a range of reference slices; see accumulate(double[], int, int).
+     * Without reference and input weight images the reference voxels of a row are restricted beforehand to those that
+     * map inside the input image and the mapped position is stepped along the row; with them every voxel of the
+     * bounding box of the reference weights is mapped and tested.
+     * 
+     * @param t the transformation matrix, row by row
+     * @param sums SUMS_CORRELATION_RATIO, SUMS_LEAST_SQUARES or SUMS_JOINT_HISTOGRAM
+     * @param weighting WEIGHT_NONE, WEIGHT_SMOOTHED or WEIGHT_SMOOTHED_WGT
+     * @param zFirst first reference slice
+     * @param zLast last reference slice
+     * @param out receives the sums
+     */
+    private void accumulate(final double[] t, final int sums, final int weighting, final int zFirst,
+            final int zLast, final double[] out) {
+        int x, y, z;
+        double tmpZ1, tmpZ2, tmpZ3;
+        double rowX, rowY, rowZ;
+        int indexZ, rowIndex;
+        int index, indexValue, iCenter;
+        int xFirst, xLast;
+        int position1, position2, position11, position21;
+        int intX, intY, intZ;
+        double dx, dy, dz, dx1, dy1;
+        double b1, b2;
+        double value, weight, tmp;
+        double newPtX, newPtY, newPtZ;
+
+        final double T00 = t[0];
+        final double T01 = t[1];
+        final double T02 = t[2];
+        final double T03 = t[3];
+        final double T10 = t[4];
+        final double T11 = t[5];
+        final double T12 = t[6];
+        final double T13 = t[7];
+        final double T20 = t[8];
+        final double T21 = t[9];
+        final double T22 = t[10];
+        final double T23 = t[11];
+
+        // the next variable are used in the "findRangeX" method. They are calculated only once to
+        // speed up the cost function calculation
+        final double aT00 = Math.abs(T00);
+        final double aT10 = Math.abs(T10);
+        final double aT20 = Math.abs(T20);
+        final double iT00 = (aT00 >= 1.0e-8) ? (1 / T00) : Double.MAX_VALUE;
+        final double iT10 = (aT10 >= 1.0e-8) ? (1 / T10) : Double.MAX_VALUE;
+        final double iT20 = (aT20 >= 1.0e-8) ? (1 / T20) : Double.MAX_VALUE;
+
+        final double invSmooth = 1.0 / smoothSize;
+        final boolean weighted = (weighting == AlgorithmCostFunctions.WEIGHT_SMOOTHED_WGT);
+
+        // the mapped position is stepped along the rows unless voxels are skipped or tested one by one
+        final boolean stepped = !weighted && (sampleMask == null);
+        final float[] inputData = inputImage.data;
+        final float[] refData = refImage.data;
+        final float inputMin = inputImage.min;
+        final float refMin = refImage.min;
+        final int margR = nBins * nBins;
+        final int margI = margR + nBins;
+        final int nCalcs = out.length - 1;
+
+        // precalculates the constants for rebinning
         double constantR = 1;
 
         if ( (refImage.max - refImage.min) != 0) {
@@ -710,28 +863,60 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         }
 
         final Point minMaxPt = new Point();
-        for (z = 0; z <= zEnd; z++) {
+
+        for (z = zFirst; z <= zLast; z++) {
             tmpZ1 = (z * T02) + T03;
             tmpZ2 = (z * T12) + T13;
             tmpZ3 = (z * T22) + T23;
             indexZ = z * refSliceSize;
 
-            for (y = 0; y <= yEnd; y++) {
+            for (y = weighted ? yStart : 0; y <= yEnd; y++) {
+                rowX = (y * T01) + tmpZ1;
+                rowY = (y * T11) + tmpZ2;
+                rowZ = (y * T21) + tmpZ3;
 
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
+                if (weighted) {
+                    rowIndex = indexZ + (y * refImage.xDim);
+                    xFirst = xStart;
+                    xLast = xEnd;
+                } else {
+                    rowIndex = indexZ + (y * (xEnd + 1));
 
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
+                    // determine range
+                    findRangeX(minMaxPt, rowX, rowY, rowZ, aT00, aT10, aT20, iT00, iT10, iT20);
+                    xFirst = minMaxPt.x;
 
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
+                    // the correlation ratio has always left out the last voxel of the range
+                    xLast = (sums == AlgorithmCostFunctions.SUMS_CORRELATION_RATIO) ? (minMaxPt.y - 1) : minMaxPt.y;
+                }
 
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
+                newPtX = rowX + (xFirst * T00);
+                newPtY = rowY + (xFirst * T10);
+                newPtZ = rowZ + (xFirst * T20);
 
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
+                for (x = xFirst; x <= xLast; x++) {
+
+                    if (sampleMask != null) {
+                        x = sampleMask.nextSetBit(rowIndex + x) - rowIndex;
+
+                        if ( (x < 0) || (x > xLast)) {
+                            break;
+                        }
+                    }
+
+                    if ( !stepped) {
+                        newPtX = (x * T00) + rowX;
+                        newPtY = (x * T10) + rowY;
+                        newPtZ = (x * T20) + rowZ;
+
+                        if (weighted
+                                && ( (newPtX < 0.0) || (newPtX > xEnd2) || (newPtY < 0.0) || (newPtY > yEnd2)
+                                        || (newPtZ < 0.0) || (newPtZ > zEnd2))) {
+                            continue;
+                        }
+                    }
+
+                    index = rowIndex + x;
 
                     intX = (int) newPtX;
                     intY = (int) newPtY;
@@ -746,42 +931,121 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
 
                     position1 = (intZ * sliceSize) + (intY * xDim) + intX;
                     position2 = position1 + sliceSize;
+                    position11 = position1 + 1;
+                    position21 = position2 + 1;
 
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position1 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position1
-                                    + xDim + 1])));
+                    // trilinear interpolation
+                    b1 = (dy1 * ( (dx1 * inputData[position1]) + (dx * inputData[position11])))
+                            + (dy * ( (dx1 * inputData[position1 + xDim]) + (dx * inputData[position11 + xDim])));
 
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position2 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position2
-                                    + xDim + 1])));
+                    b2 = (dy1 * ( (dx1 * inputData[position2]) + (dx * inputData[position21])))
+                            + (dy * ( (dx1 * inputData[position2 + xDim]) + (dx * inputData[position21 + xDim])));
 
                     value = ( (1 - dz) * b1) + (dz * b2);
 
-                    indexValueI = (int) ( (value - inputImage.min) * constantI);
-                    indexValueR = (int) ( (refImage.data[index] - refImage.min) * constantR);
+                    if (weighting == AlgorithmCostFunctions.WEIGHT_NONE) {
+                        weight = 1.0;
+                    } else {
+
+                        if (weighted) {
+                            final float[] wgtData = inputWgtImage.data;
+
+                            b1 = (dy1 * ( (dx1 * wgtData[position1]) + (dx * wgtData[position11])))
+                                    + (dy * ( (dx1 * wgtData[position1 + xDim]) + (dx * wgtData[position11 + xDim])));
+
+                            b2 = (dy1 * ( (dx1 * wgtData[position2]) + (dx * wgtData[position21])))
+                                    + (dy * ( (dx1 * wgtData[position2 + xDim]) + (dx * wgtData[position21 + xDim])));
+
+                            weight = ( ( (1 - dz) * b1) + (dz * b2)) * refWgtImage.data[index];
+                        } else {
+                            weight = 1.0;
+                        }
+
+                        // smooth out the edges
+                        if (newPtX < smoothSize) {
+                            weight *= newPtX * invSmooth;
+                        } else if ( (xEnd2 - newPtX) < smoothSize) {
+                            weight *= (xEnd2 - newPtX) * invSmooth;
+                        }
+
+                        if (newPtY < smoothSize) {
+                            weight *= newPtY * invSmooth;
+                        } else if ( (yEnd2 - newPtY) < smoothSize) {
+                            weight *= (yEnd2 - newPtY) * invSmooth;
+                        }
+
+                        if (newPtZ < smoothSize) {
+                            weight *= newPtZ * invSmooth;
+                        } else if ( (zEnd2 - newPtZ) < smoothSize) {
+                            weight *= (zEnd2 - newPtZ) * invSmooth;
+                        }
 
-                    // if ( z == 1 )
-                    {
-                        jointHist[ (indexValueR * nBins) + indexValueI] += 1;
-                        margHistR[indexValueR] += 1;
-                        margHistI[indexValueI] += 1;
+                        if (weight < 0.0) {
+                            weight = 0.0;
+                        }
+                    }
+
+                    indexValue = (int) ( (refData[index] - refMin) * constantR);
+
+                    if (sums == AlgorithmCostFunctions.SUMS_CORRELATION_RATIO) {
+                        tmp = weight * (value - inputMin);
+                        out[indexValue] += weight;
+                        out[nBins + indexValue] += tmp;
+                        out[ (2 * nBins) + indexValue] += tmp * (value - inputMin);
+                    } else if (sums == AlgorithmCostFunctions.SUMS_LEAST_SQUARES) {
+                        tmp = (refData[index] - refMin) - (value - inputMin);
+                        out[0] += weight * tmp * tmp;
+                        out[1] += weight;
+                    } else {
+                        iCenter = (int) ( (value - inputMin) * constantI);
+
+                        if (iCenter >= nBins) {
+                            iCenter = nBins - 1;
+                        } else if (iCenter < 0) {
+                            iCenter = 0;
+                        }
+
+                        out[ (indexValue * nBins) + iCenter] += weight;
+                        out[margR + indexValue] += weight;
+                        out[margI + iCenter] += weight;
+                    }
+
+                    out[nCalcs]++;
+
+                    if (stepped) {
+                        newPtX += T00;
+                        newPtY += T10;
+                        newPtZ += T20;
                     }
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
                 }
             }
         }
+    }
+
+    /**
+     * Calculates the joint entropy and the marginal entropies of the reference image and the transformed input image
+     * from their joint histogram.
+     * 
+     * @param t the transformation matrix, row by row: M00, M01, M02, M03, M10, ..., M23
+     * @param jointEntropy receives the joint entropy
+     * @param margEntropyR receives the entropy of the reference image
+     * @param margEntropyI receives the entropy of the input image
+     */
+    private void calcEntropy(final double[] t, final double[] jointEntropy, final double[] margEntropyR,
+            final double[] margEntropyI) {
+        final double[] jointHist = accumulate(t, AlgorithmCostFunctions.SUMS_JOINT_HISTOGRAM,
+                AlgorithmCostFunctions.WEIGHT_NONE);
+        final int margR = nBins * nBins;
+        final int margI = margR + nBins;
 
         // note that the pLogP values indexed by integers such that: pLogP(n) = n/N * log(n/N)
         double p = 0.0;
         int n = 0;
         final int pSize = pLogP.length;
 
-        nVoxels = refImage.data.length;
+        final int nVoxels = refImage.data.length;
 
-        m_afJointHisto = new float[nBins * nBins * 4];
+        final float[] afJointHisto = new float[nBins * nBins * 4];
 
         for (int i = 0; i < (nBins * nBins); i++) {
             n = MipavMath.round(jointHist[i]);
@@ -795,18 +1059,17 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
                     jointEntropy[0] += -p * Math.log(p);
                 }
             }
-            m_afJointHisto[i * 4] = (float) jointHist[i];
-            m_afJointHisto[i * 4 + 1] = 0f;
-            m_afJointHisto[i * 4 + 2] = 0f;
-            m_afJointHisto[i * 4 + 3] = (float) jointHist[i];
-        }
-        // System.err.println("");
-        // System.err.println("");
-        // System.err.println("");
-        // System.err.println("Reference");
+            afJointHisto[i * 4] = (float) jointHist[i];
+            afJointHisto[i * 4 + 1] = 0f;
+            afJointHisto[i * 4 + 2] = 0f;
+            afJointHisto[i * 4 + 3] = (float) jointHist[i];
+        }
+
+        m_afJointHisto = afJointHisto;
+
         for (int i = 0; i < nBins; i++) {
-            n = MipavMath.round(margHistR[i]);
-            // System.err.println ( i + " " + n );
+            n = MipavMath.round(jointHist[margR + i]);
+
             if (n > 0) {
 
                 if (n < pSize) {
@@ -817,15 +1080,11 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
                 }
             }
         }
-        // System.err.println("Done");
-        // System.err.println("");
-        // System.err.println("");
-        // System.err.println("");
 
         double nOverlap = 0.0;
 
         for (int i = 0; i < nBins; i++) {
-            n = MipavMath.round(margHistI[i]);
+            n = MipavMath.round(jointHist[margI + i]);
 
             if (n > 0) {
                 nOverlap += n;
@@ -839,9 +1098,6 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
             }
         }
 
-        // System.err.println( "CPU: " + nBins + " " + nVoxels + " " + nOverlap + " " + margEntropyR[0] + " " +
-        // margEntropyI[0] + " " + jointEntropy[0] );
-
         // correct for difference in total histogram size
         // that is: nOverlap vs nVoxels
         // H_1 = N_0/N_1 * H_0 + log(N_1/N_0)
@@ -857,7 +1113,6 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
             }
         } else {
 
-            // System.out.println("nOvelap not high enough, less than 15% of voxels.");
             // Put in maximum entropy values as base cases = BAD registration
             jointEntropy[0] = 2.0 * Math.log(nBins);
             margEntropyR[0] = Math.log(nBins);
@@ -870,3672 +1125,550 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
 
         return;
     }
-    
+
     /**
-     * DOCUMENT ME!
+     * Calculates the joint entropy and the marginal entropies from a joint histogram in which the voxels near the
+     * bounds of the input image are given smaller weights.
      * 
-     * @param tMatrix DOCUMENT ME!
-     * @param jointEntropy DOCUMENT ME!
-     * @param margEntropyR DOCUMENT ME!
-     * @param margEntropyI DOCUMENT ME!
+     * @param t the transformation matrix, row by row
+     * @param jointEntropy receives the joint entropy
+     * @param margEntropyR receives the entropy of the reference image
+     * @param margEntropyI receives the entropy of the input image
      */
-    private void calcEntropy(final TransMatrixd tMatrix, final double[] jointEntropy, final double[] margEntropyR,
+    private void calcEntropySmoothed(final double[] t, final double[] jointEntropy, final double[] margEntropyR,
             final double[] margEntropyI) {
+        final double[] jointHist = accumulate(t, AlgorithmCostFunctions.SUMS_JOINT_HISTOGRAM,
+                AlgorithmCostFunctions.WEIGHT_SMOOTHED);
+        final int margR = nBins * nBins;
+        final int margI = margR + nBins;
 
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index, indexValueR, indexValueI;
-        int position1, position2;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double value;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
+        // Calculate joint entropy and marginal entropies.
+        double p = 0.0;
+        double nJ = 0.0, nR = 0.0, nI = 0.0;
+        int k;
 
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
+        final int nVoxels = refImage.data.length;
+        double nOverlap = 0.0;
 
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
+        for (int i = 0; i < nBins; i++) {
+            nI = jointHist[margI + i];
 
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
+            if (nI > 0.0) {
+                nOverlap += nI;
+            }
         }
 
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
+        if (nOverlap > (.15 * nVoxels)) {
 
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
+            for (int i = 0; i < nBins; i++) {
+                nR = jointHist[margR + i];
 
-        final double[] jointHist = new double[nBins * nBins];
-        final double[] margHistR = new double[nBins];
-        final double[] margHistI = new double[nBins];
+                if (nR > 0.0) {
+                    p = nR / (nOverlap);
+                    margEntropyR[0] += -p * Math.log(p);
+                }
 
-        for (int i = 0; i < (nBins * nBins); i++) {
-            jointHist[i] = 0;
-        }
+                nI = jointHist[margI + i];
 
-        for (int i = 0; i < nBins; i++) {
-            margHistI[i] = 0;
-            margHistR[i] = 0;
-        }
+                if (nI > 0.0) {
+                    p = nI / (nOverlap);
+                    margEntropyI[0] += -p * Math.log(p);
+                }
 
-        double constantR = 1;
+                for (int j = 0; j < nBins; j++) {
+                    k = (i * nBins) + j;
+                    nJ = jointHist[k];
 
-        if ( (refImage.max - refImage.min) != 0) {
-            constantR = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        double constantI = 1;
-
-        if ( (inputImage.max - inputImage.min) != 0) {
-            constantI = (nBins - 1) / (inputImage.max - inputImage.min);
-        }
-
-        final Point minMaxPt = new Point();
-        for (z = 0; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
-
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position1 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position1
-                                    + xDim + 1])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position2 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position2
-                                    + xDim + 1])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-
-                    indexValueI = (int) ( (value - inputImage.min) * constantI);
-                    indexValueR = (int) ( (refImage.data[index] - refImage.min) * constantR);
-
-                    // if ( z == 1 )
-                    {
-                        jointHist[ (indexValueR * nBins) + indexValueI] += 1;
-                        margHistR[indexValueR] += 1;
-                        margHistI[indexValueI] += 1;
+                    if (nJ > 0.0) {
+                        p = nJ / (nOverlap);
+                        jointEntropy[0] += -p * Math.log(p);
                     }
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
                 }
             }
+        } else {
+            jointEntropy[0] = 2.0 * Math.log(nBins);
+            margEntropyR[0] = Math.log(nBins);
+            margEntropyI[0] = Math.log(nBins);
         }
 
-        // note that the pLogP values indexed by integers such that: pLogP(n) = n/N * log(n/N)
-        double p = 0.0;
-        int n = 0;
-        final int pSize = pLogP.length;
+        return;
+    }
+
+    /**
+     * Calculates the joint entropy and the marginal entropies from a joint histogram weighted by the reference and
+     * input weight images, with smaller weights near the bounds of the input image.
+     * 
+     * @param t the transformation matrix, row by row
+     * @param jointEntropy receives the joint entropy
+     * @param margEntropyR receives the entropy of the reference image
+     * @param margEntropyI receives the entropy of the input image
+     */
+    private void calcEntropySmoothedWgt(final double[] t, final double[] jointEntropy, final double[] margEntropyR,
+            final double[] margEntropyI) {
 
-        nVoxels = refImage.data.length;
+        // Build the jointHistogram "image" and histogram images for the two input images. Then, to calculate the
+        // Normalized Mutual Information, we'll calculate the entropy of the histogram images by summing -plogp over
+        // all bins. p is the probability for a given intensity value - equal to the value in the histogram image
+        // divided by the total # of voxels.
+        final double[] jointHist = accumulate(t, AlgorithmCostFunctions.SUMS_JOINT_HISTOGRAM,
+                AlgorithmCostFunctions.WEIGHT_SMOOTHED_WGT);
+        final int margR = nBins * nBins;
+        final int margI = margR + nBins;
+        double p = 0.0;
+        double n = 0.0;
 
-        m_afJointHisto = new float[nBins * nBins * 4];
+        final int nVoxels = (zEnd - zStart + 1) * (yEnd - yStart + 1) * (xEnd - xStart + 1);
 
+        // Joint entropy H(A,B)
         for (int i = 0; i < (nBins * nBins); i++) {
-            n = MipavMath.round(jointHist[i]);
-
-            if (n > 0) {
+            n = jointHist[i];
 
-                if (n < pSize) {
-                    jointEntropy[0] += pLogP[n];
-                } else {
-                    p = ((double) n) / ((double) nVoxels);
-                    jointEntropy[0] += -p * Math.log(p);
-                }
+            if (n > 0.0) {
+                p = n / (nVoxels);
+                jointEntropy[0] += -p * Math.log(p);
             }
-            m_afJointHisto[i * 4] = (float) jointHist[i];
-            m_afJointHisto[i * 4 + 1] = 0f;
-            m_afJointHisto[i * 4 + 2] = 0f;
-            m_afJointHisto[i * 4 + 3] = (float) jointHist[i];
-        }
-        // System.err.println("");
-        // System.err.println("");
-        // System.err.println("");
-        // System.err.println("Reference");
+        }
+
+        // Marginal entropy of tranformed reference image H(B)
         for (int i = 0; i < nBins; i++) {
-            n = MipavMath.round(margHistR[i]);
-            // System.err.println ( i + " " + n );
-            if (n > 0) {
+            n = jointHist[margR + i];
 
-                if (n < pSize) {
-                    margEntropyR[0] += pLogP[n];
-                } else {
-                    p = ((double) n) / ((double) nVoxels);
-                    margEntropyR[0] += -p * Math.log(p);
-                }
+            if (n > 0.0) {
+                p = n / (nVoxels);
+                margEntropyR[0] += -p * Math.log(p);
             }
         }
-        // System.err.println("Done");
-        // System.err.println("");
-        // System.err.println("");
-        // System.err.println("");
 
+        // Marginal entropy of input image H(A)
         double nOverlap = 0.0;
 
         for (int i = 0; i < nBins; i++) {
-            n = MipavMath.round(margHistI[i]);
-
-            if (n > 0) {
-                nOverlap += n;
+            n = jointHist[margI + i];
 
-                if (n < pSize) {
-                    margEntropyI[0] += pLogP[n];
-                } else {
-                    p = ((double) n) / ((double) nVoxels);
-                    margEntropyI[0] += -p * Math.log(p);
-                }
+            if (n > 0.0) {
+                nOverlap += n; // Calculate the region of overlap while we're going through Input image voxels.
+                p = n / (nVoxels);
+                margEntropyI[0] += -p * Math.log(p);
             }
         }
 
-        // System.err.println( "CPU: " + nBins + " " + nVoxels + " " + nOverlap + " " + margEntropyR[0] + " " +
-        // margEntropyI[0] + " " + jointEntropy[0] );
-
         // correct for difference in total histogram size
         // that is: nOverlap vs nVoxels
         // H_1 = N_0/N_1 * H_0 + log(N_1/N_0)
         // = N_0/N_1 * H_0 - log(N_0/N_1)
-        if (nOverlap > (0.15 * nVoxels)) {
+        // This separation number of 5.0 may have to be tweaked depending on
+        // the size of the weighted volumes
+        if (nOverlap > 5.0) {
             final double nRatio = (nVoxels) / (nOverlap);
 
+            jointEntropy[0] = (nRatio * jointEntropy[0]) - Math.log(nRatio);
             margEntropyR[0] = (nRatio * margEntropyR[0]) - Math.log(nRatio);
             margEntropyI[0] = (nRatio * margEntropyI[0]) - Math.log(nRatio);
-            jointEntropy[0] = (nRatio * jointEntropy[0]) - Math.log(nRatio);
-            if (m_bPrint) {
-                System.err.println("CPU: " + margEntropyR[0] + " " + margEntropyI[0] + " " + jointEntropy[0]);
-            }
         } else {
 
-            // System.out.println("nOvelap not high enough, less than 15% of voxels.");
             // Put in maximum entropy values as base cases = BAD registration
             jointEntropy[0] = 2.0 * Math.log(nBins);
             margEntropyR[0] = Math.log(nBins);
             margEntropyI[0] = Math.log(nBins);
-            if (m_bPrint) {
-                System.out.println("nOvelap not high enough, less than 15% of voxels.");
-                System.err.println("CPU: " + margEntropyR[0] + " " + margEntropyI[0] + " " + jointEntropy[0]);
-            }
         }
 
         return;
     }
 
     /**
-     * DOCUMENT ME!
+     * Returns the first three rows of a transformation matrix as one array.
      * 
-     * @param tMatrix DOCUMENT ME!
-     * @param jointEntropy DOCUMENT ME!
-     * @param margEntropyR DOCUMENT ME!
-     * @param margEntropyI DOCUMENT ME!
+     * @param tMatrix the transformation matrix
+     * 
+     * @return M00, M01, M02, M03, M10, ..., M23
      */
-    private void calcEntropySmoothed(final TransMatrix tMatrix, final double[] jointEntropy,
-            final double[] margEntropyR, final double[] margEntropyI) {
+    private static double[] coefficients(final TransMatrix tMatrix) {
+        return new double[] {tMatrix.M00, tMatrix.M01, tMatrix.M02, tMatrix.M03, tMatrix.M10, tMatrix.M11,
+                tMatrix.M12, tMatrix.M13, tMatrix.M20, tMatrix.M21, tMatrix.M22, tMatrix.M23};
+    }
 
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index, indexValueR;
-        int iCenter;
-        int position1, position2;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double value;
+    /**
+     * Returns the first three rows of a transformation matrix as one array.
+     * 
+     * @param tMatrix the transformation matrix
+     * 
+     * @return M00, M01, M02, M03, M10, ..., M23
+     */
+    private static double[] coefficients(final TransMatrixd tMatrix) {
+        return new double[] {tMatrix.M00, tMatrix.M01, tMatrix.M02, tMatrix.M03, tMatrix.M10, tMatrix.M11,
+                tMatrix.M12, tMatrix.M13, tMatrix.M20, tMatrix.M21, tMatrix.M22, tMatrix.M23};
+    }
 
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        double weight;
+    /**
+     * Correlation ratio cost function.
+     * 
+     * @param t the transformation matrix, row by row: M00, M01, M02, M03, M10, ..., M23
+     * 
+     * @return the cost
+     */
+    private double correlationRatio(final double[] t) {
+        return correlationRatio(accumulate(t, AlgorithmCostFunctions.SUMS_CORRELATION_RATIO,
+                AlgorithmCostFunctions.WEIGHT_NONE), 0.25);
+    }
 
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
+    /**
+     * Calculates the correlation ratio from the sums of the input values over the iso-sets of the reference image.
+     * 
+     * @param sums the sums, laid out as for SUMS_CORRELATION_RATIO
+     * @param minCalcs the fraction of the reference image below which the cost is penalized for the number of voxels
+     *            that map inside the input image; 0 for no penalty
+     * 
+     * @return the cost
+     */
+    private double correlationRatio(final double[] sums, final double minCalcs) {
+        double corrRatio = 0.0;
+        double variance = 0.0;
+        double totSumY = 0.0;
+        double totSumY2 = 0.0;
+        double numTotY = 0.0;
+        double numY, sumY, sumY2;
 
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
+        // now calculate the individual variances for each iso-set
+        // weighting them by the number of pixels from Image x that contribute
+        for (int b = 0; b < nBins; b++) {
+            numY = sums[b];
 
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
+            if (numY > 2.0) {
+                sumY = sums[nBins + b];
+                sumY2 = sums[ (2 * nBins) + b];
+                numTotY += numY;
+                totSumY += sumY;
+                totSumY2 += sumY2;
 
-        if (aT00 < 0) {
-            aT00 = -aT00;
+                // the following should be the variance of the bth iso-subset
+                variance = (sumY2 - (sumY * sumY / numY)) / (numY - 1);
+                corrRatio += variance * numY;
+            }
         }
 
-        if (aT10 < 0) {
-            aT10 = -aT10;
+        // normalise the weighting of numy[]
+        if (numTotY > 0) {
+            corrRatio /= numTotY;
         }
 
-        if (aT20 < 0) {
-            aT20 = -aT20;
+        // calculate the total variance of Image y and then normalise by this
+        if (numTotY > 1) {
+            variance = (totSumY2 - (totSumY * totSumY / numTotY)) / (numTotY - 1);
         }
 
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
+        if (variance > 0.0) {
+            corrRatio /= variance;
         }
 
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
+        // penalizes cost based on the number of cost calculations over the
+        // total possible if the number of cost calculation is less than 1000.
+        final int totCalcs = zEnd * yEnd * xEnd;
+        final double nCalcs = sums[3 * nBins];
 
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
+        if (nCalcs < (minCalcs * totCalcs)) {
+            corrRatio = corrRatio + ( (1.0 - corrRatio) * ( (totCalcs - nCalcs) / totCalcs));
         }
-        final double[] jointHist = new double[nBins * nBins];
-        final double[] margHistR = new double[nBins];
-        final double[] margHistI = new double[nBins];
 
-        for (int i = 0; i < (nBins * nBins); i++) {
-            jointHist[i] = 0;
+        if ( (numTotY <= 1) || (variance <= 0.0)) {
+            return 1.0;
+        } // the totally uncorrelated condition
+        else {
+            return (corrRatio);
         }
 
-        for (int i = 0; i < nBins; i++) {
-            margHistI[i] = 0;
-            margHistR[i] = 0;
-        }
+        // an alternative is to return 1.0/corr_ratio (=1/(1-correlation ratio))
+        // which may be better at rewarding gains near the best solution
+    }
 
-        double constantR = 1;
+    /**
+     * Correlation ratio cost function with smaller weights for the voxels near the bounds of the input image.
+     * 
+     * @param t the transformation matrix, row by row
+     * 
+     * @return the cost
+     */
+    private double correlationRatioSmoothed(final double[] t) {
+        return correlationRatio(accumulate(t, AlgorithmCostFunctions.SUMS_CORRELATION_RATIO,
+                AlgorithmCostFunctions.WEIGHT_SMOOTHED), 0.15);
+    }
 
-        if ( (refImage.max - refImage.min) != 0) {
-            constantR = (nBins - 1) / (refImage.max - refImage.min);
-        }
+    /**
+     * Correlation ratio cost function using weighting functions to mask out areas that should not be included in the
+     * cost function calculations.
+     * 
+     * @param t the transformation matrix, row by row
+     * 
+     * @return the cost
+     */
+    private double correlationRatioSmoothedWgt(final double[] t) {
+        return correlationRatio(accumulate(t, AlgorithmCostFunctions.SUMS_CORRELATION_RATIO,
+                AlgorithmCostFunctions.WEIGHT_SMOOTHED_WGT), 0);
+    }
 
-        double constantI = 1;
-
-        if ( (inputImage.max - inputImage.min) != 0) {
-            constantI = (nBins - 1) / (inputImage.max - inputImage.min);
-        }
-
-        final Point minMaxPt = new Point();
-        for (z = 0; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
-
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position1 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position1
-                                    + xDim + 1])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position2 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position2
-                                    + xDim + 1])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-
-                    weight = 1.0;
-                    iCenter = (int) ( (value - inputImage.min) * constantI);
-                    indexValueR = (int) ( (refImage.data[index] - refImage.min) * constantR);
-
-                    if (newPtX < smoothX) {
-                        weight *= newPtX * invSmoothX;
-                    } else if ( (xEnd2 - newPtX) < smoothX) {
-                        weight *= (xEnd2 - newPtX) * invSmoothX;
-                    }
-
-                    if (newPtY < smoothY) {
-                        weight *= newPtY * invSmoothY;
-                    } else if ( (yEnd2 - newPtY) < smoothY) {
-                        weight *= (yEnd2 - newPtY) * invSmoothY;
-                    }
-
-                    if (newPtZ < smoothZ) {
-                        weight *= newPtZ * invSmoothZ;
-                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-                    }
-
-                    if (weight < 0.0) {
-                        weight = 0.0;
-                    }
-
-                    if (iCenter >= nBins) {
-                        System.out.println("Testing:  iCenter is greater than nBins " + iCenter + " " + nBins);
-                        iCenter = nBins - 1;
-                    }
-
-                    if (iCenter < 0) {
-                        System.out.println("Testing:  iCenter is less than 0 " + iCenter);
-                        iCenter = 0;
-                    }
-
-                    jointHist[ (indexValueR * nBins) + iCenter] += weight;
-                    margHistI[iCenter] += weight;
-                    margHistR[indexValueR] += weight;
-
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        // Calculate joint entropy and marginal entropies.
-        double p = 0.0;
-        double nJ = 0.0, nR = 0.0, nI = 0.0;
-        int k;
-
-        nVoxels = refImage.data.length;
-        double nOverlap = 0.0;
-
-        for (int i = 0; i < nBins; i++) {
-            nI = margHistI[i];
-
-            if (nI > 0.0) {
-                nOverlap += nI;
-            }
-        }
-
-        if (nOverlap > (.15 * nVoxels)) {
-
-            for (int i = 0; i < nBins; i++) {
-                nR = margHistR[i];
-
-                if (nR > 0.0) {
-                    p = nR / (nOverlap);
-                    margEntropyR[0] += -p * Math.log(p);
-                }
-
-                nI = margHistI[i];
-
-                if (nI > 0.0) {
-                    p = nI / (nOverlap);
-                    margEntropyI[0] += -p * Math.log(p);
-                }
-
-                for (int j = 0; j < nBins; j++) {
-                    k = (i * nBins) + j;
-                    nJ = jointHist[k];
-
-                    if (nJ > 0.0) {
-                        p = nJ / (nOverlap);
-                        jointEntropy[0] += -p * Math.log(p);
-                    }
-                }
-            }
-        } else {
-            jointEntropy[0] = 2.0 * Math.log(nBins);
-            margEntropyR[0] = Math.log(nBins);
-            margEntropyI[0] = Math.log(nBins);
-        }
-
-        return;
-    }
-    
-    /**
-     * DOCUMENT ME!
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * @param jointEntropy DOCUMENT ME!
-     * @param margEntropyR DOCUMENT ME!
-     * @param margEntropyI DOCUMENT ME!
-     */
-    private void calcEntropySmoothed(final TransMatrixd tMatrix, final double[] jointEntropy,
-            final double[] margEntropyR, final double[] margEntropyI) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index, indexValueR;
-        int iCenter;
-        int position1, position2;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double value;
-
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        double weight;
-
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
-        }
-
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
-
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
-        final double[] jointHist = new double[nBins * nBins];
-        final double[] margHistR = new double[nBins];
-        final double[] margHistI = new double[nBins];
-
-        for (int i = 0; i < (nBins * nBins); i++) {
-            jointHist[i] = 0;
-        }
-
-        for (int i = 0; i < nBins; i++) {
-            margHistI[i] = 0;
-            margHistR[i] = 0;
-        }
-
-        double constantR = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constantR = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        double constantI = 1;
-
-        if ( (inputImage.max - inputImage.min) != 0) {
-            constantI = (nBins - 1) / (inputImage.max - inputImage.min);
-        }
-
-        final Point minMaxPt = new Point();
-        for (z = 0; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
-
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position1 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position1
-                                    + xDim + 1])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position2 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position2
-                                    + xDim + 1])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-
-                    weight = 1.0;
-                    iCenter = (int) ( (value - inputImage.min) * constantI);
-                    indexValueR = (int) ( (refImage.data[index] - refImage.min) * constantR);
-
-                    if (newPtX < smoothX) {
-                        weight *= newPtX * invSmoothX;
-                    } else if ( (xEnd2 - newPtX) < smoothX) {
-                        weight *= (xEnd2 - newPtX) * invSmoothX;
-                    }
-
-                    if (newPtY < smoothY) {
-                        weight *= newPtY * invSmoothY;
-                    } else if ( (yEnd2 - newPtY) < smoothY) {
-                        weight *= (yEnd2 - newPtY) * invSmoothY;
-                    }
-
-                    if (newPtZ < smoothZ) {
-                        weight *= newPtZ * invSmoothZ;
-                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-                    }
-
-                    if (weight < 0.0) {
-                        weight = 0.0;
-                    }
-
-                    if (iCenter >= nBins) {
-                        System.out.println("Testing:  iCenter is greater than nBins " + iCenter + " " + nBins);
-                        iCenter = nBins - 1;
-                    }
-
-                    if (iCenter < 0) {
-                        System.out.println("Testing:  iCenter is less than 0 " + iCenter);
-                        iCenter = 0;
-                    }
-
-                    jointHist[ (indexValueR * nBins) + iCenter] += weight;
-                    margHistI[iCenter] += weight;
-                    margHistR[indexValueR] += weight;
-
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        // Calculate joint entropy and marginal entropies.
-        double p = 0.0;
-        double nJ = 0.0, nR = 0.0, nI = 0.0;
-        int k;
-
-        nVoxels = refImage.data.length;
-        double nOverlap = 0.0;
-
-        for (int i = 0; i < nBins; i++) {
-            nI = margHistI[i];
-
-            if (nI > 0.0) {
-                nOverlap += nI;
-            }
-        }
-
-        if (nOverlap > (.15 * nVoxels)) {
-
-            for (int i = 0; i < nBins; i++) {
-                nR = margHistR[i];
-
-                if (nR > 0.0) {
-                    p = nR / (nOverlap);
-                    margEntropyR[0] += -p * Math.log(p);
-                }
-
-                nI = margHistI[i];
-
-                if (nI > 0.0) {
-                    p = nI / (nOverlap);
-                    margEntropyI[0] += -p * Math.log(p);
-                }
-
-                for (int j = 0; j < nBins; j++) {
-                    k = (i * nBins) + j;
-                    nJ = jointHist[k];
-
-                    if (nJ > 0.0) {
-                        p = nJ / (nOverlap);
-                        jointEntropy[0] += -p * Math.log(p);
-                    }
-                }
-            }
-        } else {
-            jointEntropy[0] = 2.0 * Math.log(nBins);
-            margEntropyR[0] = Math.log(nBins);
-            margEntropyI[0] = Math.log(nBins);
-        }
-
-        return;
-    }
-
-    /**
-     * DOCUMENT ME!
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * @param jointEntropy DOCUMENT ME!
-     * @param margEntropyR DOCUMENT ME!
-     * @param margEntropyI DOCUMENT ME!
-     */
-    private void calcEntropySmoothedWgt(final TransMatrix tMatrix, final double[] jointEntropy,
-            final double[] margEntropyR, final double[] margEntropyI) {
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        double tmpY1, tmpY2, tmpY3;
-        int indexZ;
-        int indexY;
-        int index, indexValueR;
-        int iCenter;
-        int position1, position2, position1x, position2x;
-        int position11, position21, position11x, position21x;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double value, wValue;
-
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        double weight;
-
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double newPtX, newPtY, newPtZ;
-
-        // The variables aT00, aT10, aT20, iT00... etc. will be used for findRangeX, but calculated before
-        // entering the loop for efficiency.
-        // save the x multipliers to new variable names and then if negative, make them positive.
-        aT00 = T00;
-        aT10 = T10;
-        aT20 = T20;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        final double[] jointHist = new double[nBins * nBins];
-        final double[] margHistR = new double[nBins];
-        final double[] margHistI = new double[nBins];
-
-        for (int i = 0; i < (nBins * nBins); i++) {
-            jointHist[i] = 0;
-        }
-
-        for (int i = 0; i < nBins; i++) {
-            margHistI[i] = 0;
-            margHistR[i] = 0;
-        }
-
-        // Define constantR and constantI, where they each represent the number of bins per intensity
-        // value (less than one). They will be used later to multiply the intensity value of the reference
-        // image to find the appropriate bin.
-        double constantR = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constantR = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        double constantI = 1;
-
-        if ( (inputImage.max - inputImage.min) != 0) {
-            constantI = (nBins - 1) / (inputImage.max - inputImage.min);
-        }
-
-        // zEnd has been previously defined to be refImage.zDim-1 modified by highest nonzero z value in refWgtImage
-        for (z = zStart; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = yStart; y <= yEnd; y++) {
-                tmpY1 = (y * T01) + tmpZ1;
-                tmpY2 = (y * T11) + tmpZ2;
-                tmpY3 = (y * T21) + tmpZ3;
-                indexY = indexZ + y * refImage.xDim;
-                
-                for (x = xStart; x <= xEnd; x++) {
-                    newPtX = (x * T00) + tmpY1;
-                    if ( (0.0 <= newPtX) && (newPtX <= xEnd2)) {
-                        newPtY = (x * T10) + tmpY2;
-                        if ( (0.0 <= newPtY) && (newPtY <= yEnd2)) {
-                            newPtZ = (x * T20) + tmpY3;
-                            if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2)) {
-                                index = indexY + x;
-
-			                    // newPt's aren't integers, but we can only index images with integers.
-			                    // Interpolate (trilinear) between image value at neighboring indices.
-			                    intX = (int) newPtX;
-			                    intY = (int) newPtY;
-			                    intZ = (int) newPtZ;
-			
-			                    dx = newPtX - intX;
-			                    dy = newPtY - intY;
-			                    dz = newPtZ - intZ;
-			
-			                    dx1 = 1 - dx;
-			                    dy1 = 1 - dy;
-			
-			                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-			                    position1x = position1 + xDim;
-			                    position2 = position1 + sliceSize;
-			                    position2x = position2 + xDim;
-			                    position11 = position1 + 1;
-			                    position11x = position11 + xDim;
-			                    position21 = position2 + 1;
-			                    position21x = position21 + xDim;
-			
-			                    // Get value at current x,y, z for the inputImage.
-			                    // b1 is value interplated between x values and y values at rounded-down z slice
-			                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-			                            + (dy * ( (dx1 * inputImage.data[position1x]) + (dx * inputImage.data[position11x])));
-			
-			                    // b2 is value interpolated between x value and y values at rounded-up z slice
-			                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-			                            + (dy * ( (dx1 * inputImage.data[position2x]) + (dx * inputImage.data[position21x])));
-			
-			                    // value is interpolation between b1 and b2 and exact z location
-			                    value = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    // Get value at current x,y, z for the inputWgtImage - weighted image!!
-			                    // b1, b2 are same as above; wValue is now interpolation between b1 and b2
-			                    b1 = (dy1 * ( (dx1 * inputWgtImage.data[position1]) + (dx * inputWgtImage.data[position11])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position1x]) + (dx * inputWgtImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputWgtImage.data[position2]) + (dx * inputWgtImage.data[position21])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position2x]) + (dx * inputWgtImage.data[position21x])));
-			                    wValue = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    // Weight assigned wValue (weight of input image at current loc) times the Reference image weight.
-			                    weight = wValue * refWgtImage.data[index];
-			
-			                    // Find iCenter and indexValueR. iCenter is bin number for this pixel in the Input image (y
-			                    // coordinate of joint histogram image). indexValueR in the bin number for this pixel in the
-			                    // Reference image (x coordiante of joint histogram image).
-			                    iCenter = (int) ( (value - inputImage.min) * constantI);
-			                    indexValueR = (int) ( (refImage.data[index] - refImage.min) * constantR);
-			
-			                    // Smooth out the edges.
-			                    if (newPtX < smoothX) {
-			                        weight *= newPtX * invSmoothX;
-			                    } else if ( (xEnd2 - newPtX) < smoothX) {
-			                        weight *= (xEnd2 - newPtX) * invSmoothX;
-			                    }
-			
-			                    if (newPtY < smoothY) {
-			                        weight *= newPtY * invSmoothY;
-			                    } else if ( (yEnd2 - newPtY) < smoothY) {
-			                        weight *= (yEnd2 - newPtY) * invSmoothY;
-			                    }
-			
-			                    if (newPtZ < smoothZ) {
-			                        weight *= newPtZ * invSmoothZ;
-			                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-			                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-			                    }
-			
-			                    if (weight < 0.0) {
-			                        weight = 0.0;
-			                    }
-			
-			                    if (iCenter >= nBins) {
-			                        System.out.println("Testing.  iCenter is greater than nBins.");
-			                        iCenter = nBins - 1;
-			                    }
-			
-			                    if (iCenter < 0) {
-			                        System.out.println("Testing. iCenter is less than zero.");
-			                        iCenter = 0;
-			                    }
-			
-			                    // Add "weight" to the histograms. Index the jointHistogram (saved as 1D array) assuming width of
-			                    // nBins, so indexValueR*nBins + iCenter.
-			                    jointHist[ (indexValueR * nBins) + iCenter] += weight;
-			                    margHistI[iCenter] += weight;
-			                    margHistR[indexValueR] += weight;
-
-                            } // if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2))
-                        } // if ( (0.0 <= newPtY) && (newPtY <= yEnd2))
-                    } // if ( (0.0 <= newPtX) && (newPtX <= xEnd2))
-                } // end of x loop
-            } // end of y loop
-        } // end of z loop
-
-        // Up until this point we've generated a jointHistogram "image" and histogram images for the two
-        // input images. Now, to calculate the Normalized Mutual Information, we'll calculate the entropy of
-        // the histogram images by summing -plogp over all bins. p is the probability for a given
-        // intensity value - equal to the value in the histogram image divided by the total # of voxels.
-        double p = 0.0;
-        double n = 0.0;
-
-        nVoxels = (zEnd - zStart + 1) * (yEnd - yStart + 1) * (xEnd - xStart + 1);
-
-        // Joint entropy H(A,B)
-        for (int i = 0; i < (nBins * nBins); i++) {
-            n = jointHist[i];
-
-            if (n > 0.0) {
-                p = n / (nVoxels);
-                jointEntropy[0] += -p * Math.log(p);
-            }
-        }
-
-        // Marginal entropy of tranformed reference image H(B)
-        for (int i = 0; i < nBins; i++) {
-            n = margHistR[i];
-
-            if (n > 0.0) {
-                p = n / (nVoxels);
-                margEntropyR[0] += -p * Math.log(p);
-            }
-        }
-
-        // Marginal entropy of input image H(A)
-        double nOverlap = 0.0;
-
-        for (int i = 0; i < nBins; i++) {
-            n = margHistI[i];
-
-            if (n > 0.0) {
-                nOverlap += n; // Calculate the region of overlap while we're going through Input image voxels.
-                p = n / (nVoxels);
-                margEntropyI[0] += -p * Math.log(p);
-            }
-        }
-
-        // correct for difference in total histogram size
-        // that is: nOverlap vs nVoxels
-        // H_1 = N_0/N_1 * H_0 + log(N_1/N_0)
-        // = N_0/N_1 * H_0 - log(N_0/N_1)
-        // This separation number of 5.0 may have to be tweaked depending on
-        // the size of the weighted volumes
-        if (nOverlap > 5.0) {
-            final double nRatio = (nVoxels) / (nOverlap);
-
-            jointEntropy[0] = (nRatio * jointEntropy[0]) - Math.log(nRatio);
-            margEntropyR[0] = (nRatio * margEntropyR[0]) - Math.log(nRatio);
-            margEntropyI[0] = (nRatio * margEntropyI[0]) - Math.log(nRatio);
-        } else {
-
-            // Put in maximum entropy values as base cases = BAD registration
-            jointEntropy[0] = 2.0 * Math.log(nBins);
-            margEntropyR[0] = Math.log(nBins);
-            margEntropyI[0] = Math.log(nBins);
-        }
-
-        return;
-    }
-    
-    /**
-     * DOCUMENT ME!
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * @param jointEntropy DOCUMENT ME!
-     * @param margEntropyR DOCUMENT ME!
-     * @param margEntropyI DOCUMENT ME!
-     */
-    private void calcEntropySmoothedWgt(final TransMatrixd tMatrix, final double[] jointEntropy,
-            final double[] margEntropyR, final double[] margEntropyI) {
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        double tmpY1, tmpY2, tmpY3;
-        int indexZ;
-        int indexY;
-        int index, indexValueR;
-        int iCenter;
-        int position1, position2, position1x, position2x;
-        int position11, position21, position11x, position21x;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double value, wValue;
-
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        double weight;
-
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double newPtX, newPtY, newPtZ;
-
-        // The variables aT00, aT10, aT20, iT00... etc. will be used for findRangeX, but calculated before
-        // entering the loop for efficiency.
-        // save the x multipliers to new variable names and then if negative, make them positive.
-        aT00 = T00;
-        aT10 = T10;
-        aT20 = T20;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        final double[] jointHist = new double[nBins * nBins];
-        final double[] margHistR = new double[nBins];
-        final double[] margHistI = new double[nBins];
-
-        for (int i = 0; i < (nBins * nBins); i++) {
-            jointHist[i] = 0;
-        }
-
-        for (int i = 0; i < nBins; i++) {
-            margHistI[i] = 0;
-            margHistR[i] = 0;
-        }
-
-        // Define constantR and constantI, where they each represent the number of bins per intensity
-        // value (less than one). They will be used later to multiply the intensity value of the reference
-        // image to find the appropriate bin.
-        double constantR = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constantR = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        double constantI = 1;
-
-        if ( (inputImage.max - inputImage.min) != 0) {
-            constantI = (nBins - 1) / (inputImage.max - inputImage.min);
-        }
-
-        // // zEnd has been previously defined to be refImage.zDim-1 modified by highest nonzero z value in refWgtImage
-        for (z = zStart; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = yStart; y <= yEnd; y++) {
-            	tmpY1 = (y * T01) + tmpZ1;
-                tmpY2 = (y * T11) + tmpZ2;
-                tmpY3 = (y * T21) + tmpZ3;
-                indexY = indexZ + y * refImage.xDim;
-                
-                for (x = xStart; x <= xEnd; x++) {
-                    newPtX = (x * T00) + tmpY1;
-                    if ( (0.0 <= newPtX) && (newPtX <= xEnd2)) {
-                        newPtY = (x * T10) + tmpY2;
-                        if ( (0.0 <= newPtY) && (newPtY <= yEnd2)) {
-                            newPtZ = (x * T20) + tmpY3;
-                            if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2)) {
-                                index = indexY + x;
-                
-			                    // newPt's aren't integers, but we can only index images with integers.
-			                    // Interpolate (trilinear) between image value at neighboring indices.
-			                    intX = (int) newPtX;
-			                    intY = (int) newPtY;
-			                    intZ = (int) newPtZ;
-			
-			                    dx = newPtX - intX;
-			                    dy = newPtY - intY;
-			                    dz = newPtZ - intZ;
-			
-			                    dx1 = 1 - dx;
-			                    dy1 = 1 - dy;
-			
-			                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-			                    position1x = position1 + xDim;
-			                    position2 = position1 + sliceSize;
-			                    position2x = position2 + xDim;
-			                    position11 = position1 + 1;
-			                    position11x = position11 + xDim;
-			                    position21 = position2 + 1;
-			                    position21x = position21 + xDim;
-			
-			                    // Get value at current x,y, z for the inputImage.
-			                    // b1 is value interplated between x values and y values at rounded-down z slice
-			                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-			                            + (dy * ( (dx1 * inputImage.data[position1x]) + (dx * inputImage.data[position11x])));
-			
-			                    // b2 is value interpolated between x value and y values at rounded-up z slice
-			                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-			                            + (dy * ( (dx1 * inputImage.data[position2x]) + (dx * inputImage.data[position21x])));
-			
-			                    // value is interpolation between b1 and b2 and exact z location
-			                    value = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    // Get value at current x,y, z for the inputWgtImage - weighted image!!
-			                    // b1, b2 are same as above; wValue is now interpolation between b1 and b2
-			                    b1 = (dy1 * ( (dx1 * inputWgtImage.data[position1]) + (dx * inputWgtImage.data[position11])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position1x]) + (dx * inputWgtImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputWgtImage.data[position2]) + (dx * inputWgtImage.data[position21])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position2x]) + (dx * inputWgtImage.data[position21x])));
-			                    wValue = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    // Weight assigned wValue (weight of input image at current loc) times the Reference image weight.
-			                    weight = wValue * refWgtImage.data[index];
-			
-			                    // Find iCenter and indexValueR. iCenter is bin number for this pixel in the Input image (y
-			                    // coordinate of joint histogram image). indexValueR in the bin number for this pixel in the
-			                    // Reference image (x coordiante of joint histogram image).
-			                    iCenter = (int) ( (value - inputImage.min) * constantI);
-			                    indexValueR = (int) ( (refImage.data[index] - refImage.min) * constantR);
-			
-			                    // Smooth out the edges.
-			                    if (newPtX < smoothX) {
-			                        weight *= newPtX * invSmoothX;
-			                    } else if ( (xEnd2 - newPtX) < smoothX) {
-			                        weight *= (xEnd2 - newPtX) * invSmoothX;
-			                    }
-			
-			                    if (newPtY < smoothY) {
-			                        weight *= newPtY * invSmoothY;
-			                    } else if ( (yEnd2 - newPtY) < smoothY) {
-			                        weight *= (yEnd2 - newPtY) * invSmoothY;
-			                    }
-			
-			                    if (newPtZ < smoothZ) {
-			                        weight *= newPtZ * invSmoothZ;
-			                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-			                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-			                    }
-			
-			                    if (weight < 0.0) {
-			                        weight = 0.0;
-			                    }
-			
-			                    if (iCenter >= nBins) {
-			                        System.out.println("Testing.  iCenter is greater than nBins.");
-			                        iCenter = nBins - 1;
-			                    }
-			
-			                    if (iCenter < 0) {
-			                        System.out.println("Testing. iCenter is less than zero.");
-			                        iCenter = 0;
-			                    }
-			
-			                    // Add "weight" to the histograms. Index the jointHistogram (saved as 1D array) assuming width of
-			                    // nBins, so indexValueR*nBins + iCenter.
-			                    jointHist[ (indexValueR * nBins) + iCenter] += weight;
-			                    margHistI[iCenter] += weight;
-			                    margHistR[indexValueR] += weight;
-                            } // if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2))
-                        } // if ( (0.0 <= newPtY) && (newPtY <= yEnd2))
-                    } // if ( (0.0 <= newPtX) && (newPtX <= xEnd2))
-                } // end of x loop
-            } // end of y loop
-        } // end of z loop
-
-        // Up until this point we've generated a jointHistogram "image" and histogram images for the two
-        // input images. Now, to calculate the Normalized Mutual Information, we'll calculate the entropy of
-        // the histogram images by summing -plogp over all bins. p is the probability for a given
-        // intensity value - equal to the value in the histogram image divided by the total # of voxels.
-        double p = 0.0;
-        double n = 0.0;
-
-        nVoxels = (zEnd - zStart + 1) * (yEnd - yStart + 1) * (xEnd - xStart + 1);
-
-        // Joint entropy H(A,B)
-        for (int i = 0; i < (nBins * nBins); i++) {
-            n = jointHist[i];
-
-            if (n > 0.0) {
-                p = n / (nVoxels);
-                jointEntropy[0] += -p * Math.log(p);
-            }
-        }
-
-        // Marginal entropy of tranformed reference image H(B)
-        for (int i = 0; i < nBins; i++) {
-            n = margHistR[i];
-
-            if (n > 0.0) {
-                p = n / (nVoxels);
-                margEntropyR[0] += -p * Math.log(p);
-            }
-        }
-
-        // Marginal entropy of input image H(A)
-        double nOverlap = 0.0;
-
-        for (int i = 0; i < nBins; i++) {
-            n = margHistI[i];
-
-            if (n > 0.0) {
-                nOverlap += n; // Calculate the region of overlap while we're going through Input image voxels.
-                p = n / (nVoxels);
-                margEntropyI[0] += -p * Math.log(p);
-            }
-        }
-
-        // correct for difference in total histogram size
-        // that is: nOverlap vs nVoxels
-        // H_1 = N_0/N_1 * H_0 + log(N_1/N_0)
-        // = N_0/N_1 * H_0 - log(N_0/N_1)
-        // This separation number of 5.0 may have to be tweaked depending on
-        // the size of the weighted volumes
-        if (nOverlap > 5.0) {
-            final double nRatio = (nVoxels) / (nOverlap);
-
-            jointEntropy[0] = (nRatio * jointEntropy[0]) - Math.log(nRatio);
-            margEntropyR[0] = (nRatio * margEntropyR[0]) - Math.log(nRatio);
-            margEntropyI[0] = (nRatio * margEntropyI[0]) - Math.log(nRatio);
-        } else {
-
-            // Put in maximum entropy values as base cases = BAD registration
-            jointEntropy[0] = 2.0 * Math.log(nBins);
-            margEntropyR[0] = Math.log(nBins);
-            margEntropyI[0] = Math.log(nBins);
-        }
-
-        return;
-    }
-
-    /**
-     * Correlation ratio cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double correlationRatio(final TransMatrix tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index, indexValue;
-        double value;
-        int position1, position2;
-        int position11, position21;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-
-        final double[] numY = new double[nBins];
-        final double[] sumY = new double[nBins];
-        final double[] sumY2 = new double[nBins];
-
-        // get transformation matrix into quick access variables.
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
-        }
-
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
-
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
-
-        // precalculates this constant for rebinning
-        double constant = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constant = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        int nCalcs = 0;
-        final Point minMaxPt = new Point();
-
-        for (z = 0; z <= zEnd; z++) { // zEnd = the bound of ref image
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x < minMaxPt.y; x++) {
-
-                    // make function call to getTrilinear or move code here.
-                    // value = inputImage.getTriLinear(newPtX,newPtY,newPtZ);
-                    nCalcs++;
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-                    position11 = position1 + 1;
-                    position21 = position2 + 1;
-
-                    // trilinear interpolation
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position11
-                                    + xDim])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position21
-                                    + xDim])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-
-                    // This was actually slower -> b1 + (b2-b1)*dz ??????
-                    indexValue = (int) ( (refImage.data[index] - refImage.min) * constant);
-                    numY[indexValue] += 1;
-                    sumY[indexValue] += value - inputImage.min;
-                    sumY2[indexValue] += (value - inputImage.min) * (value - inputImage.min);
-
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        double corrRatio = 0.0;
-        double variance = 0.0;
-        double totSumY = 0.0;
-        double totSumY2 = 0.0;
-        double numTotY = 0.0;
-
-        // now calculate the individual variances for each iso-set
-        // weighting them by the number of pixels from Image x that contribute
-        for (int b = 0; b < nBins; b++) {
-
-            if (numY[b] > 2.0) {
-                numTotY += numY[b];
-                totSumY += sumY[b];
-                totSumY2 += sumY2[b];
-
-                // the following should be the variance of the bth iso-subset
-                variance = (sumY2[b] - (sumY[b] * sumY[b] / numY[b])) / (numY[b] - 1);
-                corrRatio += variance * numY[b];
-            }
-        }
-
-        // normalise the weighting of numy[]
-        if (numTotY > 0) {
-            corrRatio /= numTotY;
-        }
-
-        // calculate the total variance of Image y and then normalise by this
-        if (numTotY > 1) {
-            variance = (totSumY2 - (totSumY * totSumY / numTotY)) / (numTotY - 1);
-        }
-
-        if (variance > 0.0) {
-            corrRatio /= variance;
-        }
-
-        // penalizes cost based on the number of cost calculations over the
-        // total possible if the number of cost calculation is less than 1000.
-        final int totCalcs = zEnd * yEnd * xEnd;
-
-        if (nCalcs < (0.25 * totCalcs)) {
-            corrRatio = corrRatio + ( (1.0 - corrRatio) * ( (totCalcs - nCalcs) / (double) totCalcs));
-        }
-
-        if ( (numTotY <= 1) || (variance <= 0.0)) {
-            return 1.0;
-        } // the totally uncorrelated condition
-        else {
-            return (corrRatio);
-        }
-
-        // an alternative is to return 1.0/corr_ratio (=1/(1-correlation ratio))
-        // which may be better at rewarding gains near the best solution
-    }
-    
-    /**
-     * Correlation ratio cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double correlationRatio(final TransMatrixd tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index, indexValue;
-        double value;
-        int position1, position2;
-        int position11, position21;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-
-        final double[] numY = new double[nBins];
-        final double[] sumY = new double[nBins];
-        final double[] sumY2 = new double[nBins];
-
-        // get transformation matrix into quick access variables.
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
-        }
-
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
-
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
-
-        // precalculates this constant for rebinning
-        double constant = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constant = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        int nCalcs = 0;
-        final Point minMaxPt = new Point();
-
-        for (z = 0; z <= zEnd; z++) { // zEnd = the bound of ref image
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x < minMaxPt.y; x++) {
-
-                    // make function call to getTrilinear or move code here.
-                    // value = inputImage.getTriLinear(newPtX,newPtY,newPtZ);
-                    nCalcs++;
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-                    position11 = position1 + 1;
-                    position21 = position2 + 1;
-
-                    // trilinear interpolation
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position11
-                                    + xDim])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position21
-                                    + xDim])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-
-                    // This was actually slower -> b1 + (b2-b1)*dz ??????
-                    indexValue = (int) ( (refImage.data[index] - refImage.min) * constant);
-                    numY[indexValue] += 1;
-                    sumY[indexValue] += value - inputImage.min;
-                    sumY2[indexValue] += (value - inputImage.min) * (value - inputImage.min);
-
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        double corrRatio = 0.0;
-        double variance = 0.0;
-        double totSumY = 0.0;
-        double totSumY2 = 0.0;
-        double numTotY = 0.0;
-
-        // now calculate the individual variances for each iso-set
-        // weighting them by the number of pixels from Image x that contribute
-        for (int b = 0; b < nBins; b++) {
-
-            if (numY[b] > 2.0) {
-                numTotY += numY[b];
-                totSumY += sumY[b];
-                totSumY2 += sumY2[b];
-
-                // the following should be the variance of the bth iso-subset
-                variance = (sumY2[b] - (sumY[b] * sumY[b] / numY[b])) / (numY[b] - 1);
-                corrRatio += variance * numY[b];
-            }
-        }
-
-        // normalise the weighting of numy[]
-        if (numTotY > 0) {
-            corrRatio /= numTotY;
-        }
-
-        // calculate the total variance of Image y and then normalise by this
-        if (numTotY > 1) {
-            variance = (totSumY2 - (totSumY * totSumY / numTotY)) / (numTotY - 1);
-        }
-
-        if (variance > 0.0) {
-            corrRatio /= variance;
-        }
-
-        // penalizes cost based on the number of cost calculations over the
-        // total possible if the number of cost calculation is less than 1000.
-        final int totCalcs = zEnd * yEnd * xEnd;
-
-        if (nCalcs < (0.25 * totCalcs)) {
-            corrRatio = corrRatio + ( (1.0 - corrRatio) * ( (totCalcs - nCalcs) / (double) totCalcs));
-        }
-
-        if ( (numTotY <= 1) || (variance <= 0.0)) {
-            return 1.0;
-        } // the totally uncorrelated condition
-        else {
-            return (corrRatio);
-        }
-
-        // an alternative is to return 1.0/corr_ratio (=1/(1-correlation ratio))
-        // which may be better at rewarding gains near the best solution
-    }
-
-    /**
-     * Correlation ratio cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double correlationRatioSmoothed(final TransMatrix tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index, indexValue;
-        double value;
-        double weight;
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        int position1, position2;
-        int position11, position21;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double tmp;
-
-        // setup
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        // setup so that inner loops use multiples (faster) instead of divides.
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
-
-        final double[] numY = new double[nBins];
-        final double[] sumY = new double[nBins];
-        final double[] sumY2 = new double[nBins];
-
-        // get transformation matrix into quick access variables.
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
-        }
-
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
-
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
-
-        // precalculates this constant for rebinning
-        double constant = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constant = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        int nCalcs = 0;
-        final Point minMaxPt = new Point();
-
-        for (z = 0; z <= zEnd; z++) { // zEnd = the bound of ref image
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x < minMaxPt.y; x++) {
-
-                    // make function call to getTrilinear or move code here.
-                    nCalcs++;
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-                    position11 = position1 + 1;
-                    position21 = position2 + 1;
-
-                    // trilinear interpolation
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position11
-                                    + xDim])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position21
-                                    + xDim])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-                    // This was actually slower -> b1 + (b2-b1)*dz ??????
-
-                    weight = 1.0;
-
-                    if (newPtX < smoothX) {
-                        weight *= newPtX * invSmoothX;
-                    } else if ( (xEnd2 - newPtX) < smoothX) {
-                        weight *= (xEnd2 - newPtX) * invSmoothX;
-                    }
-
-                    if (newPtY < smoothY) {
-                        weight *= newPtY * invSmoothY;
-                    } else if ( (yEnd2 - newPtY) < smoothY) {
-                        weight *= (yEnd2 - newPtY) * invSmoothY;
-                    }
-
-                    if (newPtZ < smoothZ) {
-                        weight *= newPtZ * invSmoothZ;
-                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-                    }
-
-                    if (weight < 0.0) {
-                        weight = 0.0;
-                    }
-
-                    // could move remapping (rebinning) of refImage to the calling function. that way it is only
-                    // done once - savings - one mult, sub and convert to int. per loop.
-                    indexValue = (int) ( (refImage.data[index] - refImage.min) * constant);
-                    tmp = weight * (value - inputImage.min); // Added by Matt to handle image with neg values
-                    numY[indexValue] += weight;
-                    sumY[indexValue] += tmp;
-                    sumY2[indexValue] += tmp * (value - inputImage.min);
-
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        double corrRatio = 0.0;
-        double variance = 0.0;
-        double totSumY = 0.0;
-        double totSumY2 = 0.0;
-        double numTotY = 0.0;
-
-        // now calculate the individual variances for each iso-set
-        // weighting them by the number of pixels from Image x that contribute
-        for (int b = 0; b < nBins; b++) {
-
-            if (numY[b] > 2.0) {
-                numTotY += numY[b];
-                totSumY += sumY[b];
-                totSumY2 += sumY2[b];
-
-                // the following should be the variance of the bth iso-subset
-                variance = (sumY2[b] - (sumY[b] * sumY[b] / numY[b])) / (numY[b] - 1);
-                corrRatio += variance * numY[b];
-            }
-        }
-
-        // normalise the weighting of numy[]
-        if (numTotY > 0) {
-            corrRatio /= numTotY;
-        }
-
-        // calculate the total variance of Image y and then normalise by this
-        if (numTotY > 1) {
-            variance = (totSumY2 - (totSumY * totSumY / numTotY)) / (numTotY - 1);
-        }
-
-        if (variance > 0.0) {
-            corrRatio /= variance;
-        }
-
-        // penalizes cost based on the number of cost calculations over the
-        // total possible if the number of cost calculation is less than 1000.
-        final int totCalcs = zEnd * yEnd * xEnd;
-
-        if (nCalcs < (0.15 * totCalcs)) {
-            corrRatio = corrRatio + ( (1.0 - corrRatio) * ( (totCalcs - nCalcs) / (double) totCalcs));
-        }
-
-        if ( (numTotY <= 1) || (variance <= 0.0)) {
-            return 1.0;
-        } // the totally uncorrelated condition
-        else {
-            return (corrRatio);
-        }
-
-        // an alternative is to return 1.0/corr_ratio (=1/(1-correlation ratio))
-        // which may be better at rewarding gains near the best solution
-    }
-    
-    /**
-     * Correlation ratio cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double correlationRatioSmoothed(final TransMatrixd tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index, indexValue;
-        double value;
-        double weight;
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        int position1, position2;
-        int position11, position21;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double tmp;
-
-        // setup
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        // setup so that inner loops use multiples (faster) instead of divides.
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
-
-        final double[] numY = new double[nBins];
-        final double[] sumY = new double[nBins];
-        final double[] sumY2 = new double[nBins];
-
-        // get transformation matrix into quick access variables.
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
-        }
-
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
-
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
-
-        // precalculates this constant for rebinning
-        double constant = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constant = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        int nCalcs = 0;
-        final Point minMaxPt = new Point();
-
-        for (z = 0; z <= zEnd; z++) { // zEnd = the bound of ref image
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x < minMaxPt.y; x++) {
-
-                    // make function call to getTrilinear or move code here.
-                    nCalcs++;
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-                    position11 = position1 + 1;
-                    position21 = position2 + 1;
-
-                    // trilinear interpolation
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position11
-                                    + xDim])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position21
-                                    + xDim])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-                    // This was actually slower -> b1 + (b2-b1)*dz ??????
-
-                    weight = 1.0;
-
-                    if (newPtX < smoothX) {
-                        weight *= newPtX * invSmoothX;
-                    } else if ( (xEnd2 - newPtX) < smoothX) {
-                        weight *= (xEnd2 - newPtX) * invSmoothX;
-                    }
-
-                    if (newPtY < smoothY) {
-                        weight *= newPtY * invSmoothY;
-                    } else if ( (yEnd2 - newPtY) < smoothY) {
-                        weight *= (yEnd2 - newPtY) * invSmoothY;
-                    }
-
-                    if (newPtZ < smoothZ) {
-                        weight *= newPtZ * invSmoothZ;
-                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-                    }
-
-                    if (weight < 0.0) {
-                        weight = 0.0;
-                    }
-
-                    // could move remapping (rebinning) of refImage to the calling function. that way it is only
-                    // done once - savings - one mult, sub and convert to int. per loop.
-                    indexValue = (int) ( (refImage.data[index] - refImage.min) * constant);
-                    tmp = weight * (value - inputImage.min); // Added by Matt to handle image with neg values
-                    numY[indexValue] += weight;
-                    sumY[indexValue] += tmp;
-                    sumY2[indexValue] += tmp * (value - inputImage.min);
-
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;       
-                }
-            }
-        }
-
-        double corrRatio = 0.0;
-        double variance = 0.0;
-        double totSumY = 0.0;
-        double totSumY2 = 0.0;
-        double numTotY = 0.0;
-
-        // now calculate the individual variances for each iso-set
-        // weighting them by the number of pixels from Image x that contribute
-        for (int b = 0; b < nBins; b++) {
-
-            if (numY[b] > 2.0) {
-                numTotY += numY[b];
-                totSumY += sumY[b];
-                totSumY2 += sumY2[b];
-
-                // the following should be the variance of the bth iso-subset
-                variance = (sumY2[b] - (sumY[b] * sumY[b] / numY[b])) / (numY[b] - 1);
-                corrRatio += variance * numY[b];
-            }
-        }
-
-        // normalise the weighting of numy[]
-        if (numTotY > 0) {
-            corrRatio /= numTotY;
-        }
-
-        // calculate the total variance of Image y and then normalise by this
-        if (numTotY > 1) {
-            variance = (totSumY2 - (totSumY * totSumY / numTotY)) / (numTotY - 1);
-        }
-
-        if (variance > 0.0) {
-            corrRatio /= variance;
-        }
-
-        // penalizes cost based on the number of cost calculations over the
-        // total possible if the number of cost calculation is less than 1000.
-        final int totCalcs = zEnd * yEnd * xEnd;
-
-        if (nCalcs < (0.15 * totCalcs)) {
-            corrRatio = corrRatio + ( (1.0 - corrRatio) * ( (totCalcs - nCalcs) / (double) totCalcs));
-        }
-
-        if ( (numTotY <= 1) || (variance <= 0.0)) {
-            return 1.0;
-        } // the totally uncorrelated condition
-        else {
-            return (corrRatio);
-        }
-
-        // an alternative is to return 1.0/corr_ratio (=1/(1-correlation ratio))
-        // which may be better at rewarding gains near the best solution
-    }
-
-    /**
-     * Correlation ratio cost function using weighting functions to mask out areas that should not be included in the
-     * cost function calculations.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double correlationRatioSmoothedWgt(final TransMatrix tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        double tmpY1, tmpY2, tmpY3;
-        int indexZ;
-        int indexY;
-        int index, indexValue;
-        double value, wValue;
-        double weight;
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        int position1, position2, position1x, position2x;
-        int position11, position21, position11x, position21x;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double tmp;
-
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
-
-        final double[] numY = new double[nBins];
-        final double[] sumY = new double[nBins];
-        final double[] sumY2 = new double[nBins];
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        // Something to think about - could we use shear-warping to speed this process ???(Paeth, Levoy)
-        // Volumes must be of the same resolution.
-        // Although I could correct for this it would slow the process down - maybe two version are needed.
-
-        double constant = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constant = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-
-        for (z = zStart; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = yStart; y <= yEnd; y++) {
-            	tmpY1 = (y * T01) + tmpZ1;
-                tmpY2 = (y * T11) + tmpZ2;
-                tmpY3 = (y * T21) + tmpZ3;
-                indexY = indexZ + y * refImage.xDim;
-                
-                for (x = xStart; x <= xEnd; x++) {
-                    newPtX = (x * T00) + tmpY1;
-                    if ( (0.0 <= newPtX) && (newPtX <= xEnd2)) {
-                        newPtY = (x * T10) + tmpY2;
-                        if ( (0.0 <= newPtY) && (newPtY <= yEnd2)) {
-                            newPtZ = (x * T20) + tmpY3;
-                            if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2)) {
-                                index = indexY + x;
-
-			                    intX = (int) newPtX;
-			                    intY = (int) newPtY;
-			                    intZ = (int) newPtZ;
-			
-			                    dx = newPtX - intX;
-			                    dy = newPtY - intY;
-			                    dz = newPtZ - intZ;
-			
-			                    dx1 = 1 - dx;
-			                    dy1 = 1 - dy;
-			
-			                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-			                    position1x = position1 + xDim;
-			                    position2 = position1 + sliceSize;
-			                    position2x = position2 + xDim;
-			                    position11 = position1 + 1;
-			                    position11x = position11 + xDim;
-			                    position21 = position2 + 1;
-			                    position21x = position21 + xDim;
-			
-			                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-			                            + (dy * ( (dx1 * inputImage.data[position1x]) + (dx * inputImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-			                            + (dy * ( (dx1 * inputImage.data[position2x]) + (dx * inputImage.data[position21x])));
-			                    value = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    b1 = (dy1 * ( (dx1 * inputWgtImage.data[position1]) + (dx * inputWgtImage.data[position11])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position1x]) + (dx * inputWgtImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputWgtImage.data[position2]) + (dx * inputWgtImage.data[position21])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position2x]) + (dx * inputWgtImage.data[position21x])));
-			                    wValue = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    weight = wValue * refWgtImage.data[index];
-			
-			                    if (newPtX < smoothX) {
-			                        weight *= newPtX * invSmoothX;
-			                    } else if ( (xEnd2 - newPtX) < smoothX) {
-			                        weight *= (xEnd2 - newPtX) * invSmoothX;
-			                    }
-			
-			                    if (newPtY < smoothY) {
-			                        weight *= newPtY * invSmoothY;
-			                    } else if ( (yEnd2 - newPtY) < smoothY) {
-			                        weight *= (yEnd2 - newPtY) * invSmoothY;
-			                    }
-			
-			                    if (newPtZ < smoothZ) {
-			                        weight *= newPtZ * invSmoothZ;
-			                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-			                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-			                    }
-			
-			                    if (weight < 0.0) {
-			                        weight = 0.0;
-			                    }
-			
-			                    indexValue = (int) ( (refImage.data[index] - refImage.min) * constant);
-			                    tmp = weight * (value - inputImage.min);
-			                    numY[indexValue] += weight;
-			                    sumY[indexValue] += tmp;
-			                    sumY2[indexValue] += tmp * (value - inputImage.min);
-                            } // if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2))
-                        } // if ( (0.0 <= newPtY) && (newPtY <= yEnd2))
-                    } // if ( (0.0 <= newPtX) && (newPtX <= xEnd2))
-                }
-            }
-        }
-
-        double corrRatio = 0.0;
-        double variance = 0.0;
-        double totSumY = 0.0;
-        double totSumY2 = 0.0;
-        double numTotY = 0.0;
-
-        // now calculate the individual variances for each iso-set
-        // weighting them by the number of pixels from Image x that contribute
-        for (int b = 0; b < nBins; b++) {
-
-            if (numY[b] > 2.0) {
-                numTotY += numY[b];
-                totSumY += sumY[b];
-                totSumY2 += sumY2[b];
-
-                // the following should be the variance of the bth iso-subset
-                variance = (sumY2[b] - (sumY[b] * sumY[b] / numY[b])) / (numY[b] - 1);
-                corrRatio += variance * numY[b];
-            }
-        }
-
-        // normalise the weighting of numY[]
-        if (numTotY > 0) {
-            corrRatio /= numTotY;
-        }
-
-        // calculate the total variance of Image y and then normalise by this
-        if (numTotY > 1) {
-            variance = (totSumY2 - (totSumY * totSumY / numTotY)) / (numTotY - 1);
-        }
-
-        if (variance > 0.0) {
-            corrRatio /= variance;
-        }
-        // penalizes cost based on the number of cost calculations over the
-        // total possible if the number of cost calculation is less than 10000.
-
-        if ( (numTotY <= 1) || (variance <= 0.0)) {
-            return 1.0;
-        } // the totally uncorrelated condition
-        else {
-            return (corrRatio);
-        }
-    }
-    
-    /**
-     * Correlation ratio cost function using weighting functions to mask out areas that should not be included in the
-     * cost function calculations.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double correlationRatioSmoothedWgt(final TransMatrixd tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        double tmpY1, tmpY2, tmpY3;
-        int indexZ;
-        int indexY;
-        int index, indexValue;
-        double value, wValue;
-        double weight;
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        int position1, position2, position1x, position2x;
-        int position11, position21, position11x, position21x;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-        double tmp;
-
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
-
-        final double[] numY = new double[nBins];
-        final double[] sumY = new double[nBins];
-        final double[] sumY2 = new double[nBins];
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        // Something to think about - could we use shear-warping to speed this process ???(Paeth, Levoy)
-        // Volumes must be of the same resolution.
-        // Although I could correct for this it would slow the process down - maybe two version are needed.
-
-        double constant = 1;
-
-        if ( (refImage.max - refImage.min) != 0) {
-            constant = (nBins - 1) / (refImage.max - refImage.min);
-        }
-
-        for (z = zStart; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = yStart; y <= yEnd; y++) {
-            	tmpY1 = (y * T01) + tmpZ1;
-                tmpY2 = (y * T11) + tmpZ2;
-                tmpY3 = (y * T21) + tmpZ3;
-                indexY = indexZ + y * refImage.xDim;
-                
-                for (x = xStart; x <= xEnd; x++) {
-                    newPtX = (x * T00) + tmpY1;
-                    if ( (0.0 <= newPtX) && (newPtX <= xEnd2)) {
-                        newPtY = (x * T10) + tmpY2;
-                        if ( (0.0 <= newPtY) && (newPtY <= yEnd2)) {
-                            newPtZ = (x * T20) + tmpY3;
-                            if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2)) {
-                                index = indexY + x;
-
-			                    intX = (int) newPtX;
-			                    intY = (int) newPtY;
-			                    intZ = (int) newPtZ;
-			
-			                    dx = newPtX - intX;
-			                    dy = newPtY - intY;
-			                    dz = newPtZ - intZ;
-			
-			                    dx1 = 1 - dx;
-			                    dy1 = 1 - dy;
-			
-			                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-			                    position1x = position1 + xDim;
-			                    position2 = position1 + sliceSize;
-			                    position2x = position2 + xDim;
-			                    position11 = position1 + 1;
-			                    position11x = position11 + xDim;
-			                    position21 = position2 + 1;
-			                    position21x = position21 + xDim;
-			
-			                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-			                            + (dy * ( (dx1 * inputImage.data[position1x]) + (dx * inputImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-			                            + (dy * ( (dx1 * inputImage.data[position2x]) + (dx * inputImage.data[position21x])));
-			                    value = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    b1 = (dy1 * ( (dx1 * inputWgtImage.data[position1]) + (dx * inputWgtImage.data[position11])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position1x]) + (dx * inputWgtImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputWgtImage.data[position2]) + (dx * inputWgtImage.data[position21])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position2x]) + (dx * inputWgtImage.data[position21x])));
-			                    wValue = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    weight = wValue * refWgtImage.data[index];
-			
-			                    if (newPtX < smoothX) {
-			                        weight *= newPtX * invSmoothX;
-			                    } else if ( (xEnd2 - newPtX) < smoothX) {
-			                        weight *= (xEnd2 - newPtX) * invSmoothX;
-			                    }
-			
-			                    if (newPtY < smoothY) {
-			                        weight *= newPtY * invSmoothY;
-			                    } else if ( (yEnd2 - newPtY) < smoothY) {
-			                        weight *= (yEnd2 - newPtY) * invSmoothY;
-			                    }
-			
-			                    if (newPtZ < smoothZ) {
-			                        weight *= newPtZ * invSmoothZ;
-			                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-			                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-			                    }
-			
-			                    if (weight < 0.0) {
-			                        weight = 0.0;
-			                    }
-			
-			                    indexValue = (int) ( (refImage.data[index] - refImage.min) * constant);
-			                    tmp = weight * (value - inputImage.min);
-			                    numY[indexValue] += weight;
-			                    sumY[indexValue] += tmp;
-			                    sumY2[indexValue] += tmp * (value - inputImage.min);
-                            } // if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2))
-                        } // if ( (0.0 <= newPtY) && (newPtY <= yEnd2))
-                    } // if ( (0.0 <= newPtX) && (newPtX <= xEnd2))
-                }
-            }
-        }
-
-        double corrRatio = 0.0;
-        double variance = 0.0;
-        double totSumY = 0.0;
-        double totSumY2 = 0.0;
-        double numTotY = 0.0;
-
-        // now calculate the individual variances for each iso-set
-        // weighting them by the number of pixels from Image x that contribute
-        for (int b = 0; b < nBins; b++) {
-
-            if (numY[b] > 2.0) {
-                numTotY += numY[b];
-                totSumY += sumY[b];
-                totSumY2 += sumY2[b];
-
-                // the following should be the variance of the bth iso-subset
-                variance = (sumY2[b] - (sumY[b] * sumY[b] / numY[b])) / (numY[b] - 1);
-                corrRatio += variance * numY[b];
-            }
-        }
-
-        // normalise the weighting of numY[]
-        if (numTotY > 0) {
-            corrRatio /= numTotY;
-        }
-
-        // calculate the total variance of Image y and then normalise by this
-        if (numTotY > 1) {
-            variance = (totSumY2 - (totSumY * totSumY / numTotY)) / (numTotY - 1);
-        }
-
-        if (variance > 0.0) {
-            corrRatio /= variance;
-        }
-        // penalizes cost based on the number of cost calculations over the
-        // total possible if the number of cost calculation is less than 10000.
-
-        if ( (numTotY <= 1) || (variance <= 0.0)) {
-            return 1.0;
-        } // the totally uncorrelated condition
-        else {
-            return (corrRatio);
-        }
-    }
-
-    /**
-     * DOCUMENT ME!
-     * 
-     * @param minMaxPt DOCUMENT ME!
-     */
-    private void findRangeX(final Point minMaxPt, double newPtX, double newPtY, double newPtZ, final double aT00,
-            final double aT10, final double aT20, final double iT00, final double iT10, final double iT20) {
-        double x1, x2, xMin, xMax, xMin0, xMax0;
-
-        xMin0 = 0;
-        xMax0 = xEnd;
-
-        if (aT00 < 1.0e-8) {
-
-            if ( (0.0 <= newPtX) && (newPtX <= xEnd2)) {
-                x1 = -1.0e8;
-                x2 = 1.0e8;
-            } else {
-                x1 = -1.0e8;
-                x2 = -1.0e8;
-            }
-        } else {
-            x1 = -newPtX * iT00;
-            x2 = (xEnd2 - newPtX) * iT00;
-        }
-
-        xMin = x1;
-        xMax = x2;
-
-        if (x2 < x1) {
-            xMin = x2;
-            xMax = x1;
-        }
-
-        if (xMin > xMin0) {
-            xMin0 = xMin;
-        }
-
-        if (xMax < xMax0) {
-            xMax0 = xMax;
-        }
-
-        if (aT10 < 1.0e-8) {
-
-            if ( (0.0 <= newPtY) && (newPtY <= yEnd2)) {
-                x1 = -1.0e8;
-                x2 = 1.0e8;
-            } else {
-                x1 = -1.0e8;
-                x2 = -1.0e8;
-            }
-        } else {
-            x1 = -newPtY * iT10;
-            x2 = (yEnd2 - newPtY) * iT10;
-        }
-
-        xMin = x1;
-        xMax = x2;
-
-        if (x2 < x1) {
-            xMin = x2;
-            xMax = x1;
-        }
-
-        if (xMin > xMin0) {
-            xMin0 = xMin;
-        }
-
-        if (xMax < xMax0) {
-            xMax0 = xMax;
-        }
-
-        if (aT20 < 1.0e-8) {
-
-            if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2)) {
-                x1 = -1.0e8;
-                x2 = 1.0e8;
-            } else {
-                x1 = -1.0e8;
-                x2 = -1.0e8;
-            }
-        } else {
-            x1 = -newPtZ * iT20;
-            x2 = (zEnd2 - newPtZ) * iT20;
-        }
-
-        xMin = x1;
-        xMax = x2;
-
-        if (x2 < x1) {
-            xMin = x2;
-            xMax = x1;
-        }
-
-        if (xMin > xMin0) {
-            xMin0 = xMin;
-        }
-
-        if (xMax < xMax0) {
-            xMax0 = xMax;
-        }
-
-        if (xMax0 < xMin0) {
-            minMaxPt.y = 0;
-            minMaxPt.x = 1;
-        } else {
-            minMaxPt.x = (int) Math.ceil(xMin0);
-            minMaxPt.y = (int) Math.floor(xMax0);
-        }
-    }
-
-    /**
-     * DOCUMENT ME!
-     * 
-     * @param data DOCUMENT ME!
-     * @param x DOCUMENT ME!
-     * @param y DOCUMENT ME!
-     * @param z DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double getSinc(final float[] data, final double x, final double y, final double z) {
-
-        // kernel half-width (i.e. range is +/- w)
-        int w = sincWidth;
-        int ix0, iy0, iz0;
-
-        ix0 = (int) Math.floor(x);
-        iy0 = (int) Math.floor(y);
-        iz0 = (int) Math.floor(z);
-
-        double convsum = 0.0, interpval = 0.0;
-        double kersum = 0.0;
-
-        for (int d = -w; d <= w; d++) {
-            sincz[d + w] = kernelVal( (z - iz0 + d), w);
-            sincy[d + w] = kernelVal( (y - iy0 + d), w);
-            sincx[d + w] = kernelVal( (x - ix0 + d), w);
-        }
-
-        int xj, yj, zj;
-
-        for (int z1 = iz0 - w; z1 <= (iz0 + w); z1++) {
-            zj = iz0 - z1 + w;
-
-            for (int y1 = iy0 - w; y1 <= (iy0 + w); y1++) {
-                yj = iy0 - y1 + w;
-
-                for (int x1 = ix0 - w; x1 <= (ix0 + w); x1++) {
-                    final int index = (z1 * sliceSize) + (y1 * xDim) + x1;
-
-                    if ( (index >= 0) && (index < data.length)) {
-                        xj = ix0 - x1 + w;
-
-                        final double sincfac = sincx[xj] * sincy[yj] * sincz[zj];
-
-                        convsum += (data[index] * sincfac);
-                        kersum += sincfac;
-                    }
-                }
-            }
-        }
-
-        if (Math.abs(kersum) > 1e-9) {
-            interpval = (convsum / kersum);
-        } else {
-            return 0;
-        }
-
-        return interpval;
-    }
-
-    /**
-     * DOCUMENT ME!
-     * 
-     * @param x DOCUMENT ME!
-     * @param w DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private final static double hanning(final double x, final int w) {
-
-        if (Math.abs(x) > w) {
-            return 0.0;
-        } else {
-            return (0.5 + (0.5 * Math.cos(Math.PI * x / w)));
-        }
-    }
-
-    /**
-     * DOCUMENT ME!
-     * 
-     * @param x DOCUMENT ME!
-     * @param w DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double kernelVal(final double x, final int w) {
-
-        // effectively returns sinc(x)*hanning(x,w);
-        if (Math.abs(x) > w) {
-            return 0.0f;
-        }
-
-        double dn = (x / w * 100.0) + 100;
-        final int n = (int) Math.floor(dn);
-
-        dn -= n;
-
-        if (n >= 200) {
-            return 0.0f;
-        }
-
-        if (n < 0) {
-            return 0.0f;
-        }
-
-        return ( (sincKernel[n] * (1.0 - dn)) + (sincKernel[n + 1] * dn));
-    }
-
-    /**
-     * Least squares cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double leastSquares(final TransMatrix tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index;
-        int position1, position2, position11, position21;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-
-        double value, valueR, valueI;
-        double sum = 0.0;
-        long count = 0;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
-        }
-
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
-
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
-
-        final Point minMaxPt = new Point();
-
-        for (z = 0; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
-
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-                    position11 = position1 + 1;
-                    position21 = position2 + 1;
-
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position11
-                                    + xDim])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position21
-                                    + xDim])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-
-                    valueR = refImage.data[index] - refImage.min;
-                    valueI = value - inputImage.min;
-                    ;
-                    sum += (valueR - valueI) * (valueR - valueI);
-
-                    count++;
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        double lsq = 0;
-
-        if (count > 1000) {
-            lsq = sum / (count);
-        } else {
-            lsq = Double.MAX_VALUE;
-        }
-
-        return lsq;
-    }
-    
-    /**
-     * Least squares cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double leastSquares(final TransMatrixd tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index;
-        int position1, position2, position11, position21;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-
-        double value, valueR, valueI;
-        double sum = 0.0;
-        long count = 0;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
-        }
-
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
-
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
-
-        final Point minMaxPt = new Point();
-
-        for (z = 0; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
-
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
-
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-                    position11 = position1 + 1;
-                    position21 = position2 + 1;
-
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position11
-                                    + xDim])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position21
-                                    + xDim])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-
-                    valueR = refImage.data[index] - refImage.min;
-                    valueI = value - inputImage.min;
-                    ;
-                    sum += (valueR - valueI) * (valueR - valueI);
-
-                    count++;
-                    index++;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        double lsq = 0;
-
-        if (count > 1000) {
-            lsq = sum / (count);
-        } else {
-            lsq = Double.MAX_VALUE;
-        }
-
-        return lsq;
-    }
-
-    /**
-     * Least squares cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double leastSquaresColor(final TransMatrix tMatrix) {
-
-        int x, y, z, c;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index;
-        int position1, position2, position11, position21;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-
-        double valueR, valueI;
-        double sum = 0.0;
-        long count = 0;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
-        }
-
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
-        }
-
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
-        }
-
-        final Point minMaxPt = new Point();
-
-        for (z = 0; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = 4 * (indexZ + (y * (xEnd + 1)) + minMaxPt.x);
-
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
-
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = 4 * ( (intZ * sliceSize) + (intY * xDim) + intX);
-                    position2 = position1 + (4 * sliceSize);
-                    position11 = position1 + 4;
-                    position21 = position2 + 4;
-
-                    for (c = 1; c <= 3; c++) {
-
-                        b1 = (dy1 * ( (dx1 * inputImage.data[position1 + c]) + (dx * inputImage.data[position11 + c])))
-                                + (dy * ( (dx1 * inputImage.data[position1 + (4 * xDim) + c]) + (dx * inputImage.data[position11
-                                        + (4 * xDim) + c])));
-
-                        b2 = (dy1 * ( (dx1 * inputImage.data[position2 + c]) + (dx * inputImage.data[position21 + c])))
-                                + (dy * ( (dx1 * inputImage.data[position2 + (4 * xDim) + c]) + (dx * inputImage.data[position21
-                                        + (4 * xDim) + c])));
-
-                        valueI = ( (1 - dz) * b1) + (dz * b2);
-
-                        valueR = refImage.data[index + c];
-                        sum += (valueR - valueI) * (valueR - valueI);
-                    } // for (c = 1; c <= 3; c++)
-
-                    count++;
-                    index += 4;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        double lsq = 0;
-
-        if (count > 1000) {
-            lsq = sum / (count);
-        } else {
-            lsq = Double.MAX_VALUE;
-        }
-
-        return lsq;
-    }
-    
     /**
-     * Least squares cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
+     * DOCUMENT ME!
      * 
-     * @return DOCUMENT ME!
+     * @param minMaxPt DOCUMENT ME!
      */
-    private double leastSquaresColor(final TransMatrixd tMatrix) {
-
-        int x, y, z, c;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index;
-        int position1, position2, position11, position21;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-
-        double valueR, valueI;
-        double sum = 0.0;
-        long count = 0;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
+    private void findRangeX(final Point minMaxPt, double newPtX, double newPtY, double newPtZ, final double aT00,
+            final double aT10, final double aT20, final double iT00, final double iT10, final double iT20) {
+        double x1, x2, xMin, xMax, xMin0, xMax0;
 
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
+        xMin0 = 0;
+        xMax0 = xEnd;
 
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
+        if (aT00 < 1.0e-8) {
 
-        if (aT10 < 0) {
-            aT10 = -aT10;
+            if ( (0.0 <= newPtX) && (newPtX <= xEnd2)) {
+                x1 = -1.0e8;
+                x2 = 1.0e8;
+            } else {
+                x1 = -1.0e8;
+                x2 = -1.0e8;
+            }
+        } else {
+            x1 = -newPtX * iT00;
+            x2 = (xEnd2 - newPtX) * iT00;
         }
 
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
+        xMin = x1;
+        xMax = x2;
 
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
+        if (x2 < x1) {
+            xMin = x2;
+            xMax = x1;
         }
 
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
+        if (xMin > xMin0) {
+            xMin0 = xMin;
         }
 
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
-        } else {
-            iT20 = Double.MAX_VALUE;
+        if (xMax < xMax0) {
+            xMax0 = xMax;
         }
 
-        final Point minMaxPt = new Point();
-
-        for (z = 0; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = 0; y <= yEnd; y++) {
-
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
-
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
-
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
-
-                index = 4 * (indexZ + (y * (xEnd + 1)) + minMaxPt.x);
-
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
-
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
-
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
-
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
-
-                    position1 = 4 * ( (intZ * sliceSize) + (intY * xDim) + intX);
-                    position2 = position1 + (4 * sliceSize);
-                    position11 = position1 + 4;
-                    position21 = position2 + 4;
-
-                    for (c = 1; c <= 3; c++) {
-
-                        b1 = (dy1 * ( (dx1 * inputImage.data[position1 + c]) + (dx * inputImage.data[position11 + c])))
-                                + (dy * ( (dx1 * inputImage.data[position1 + (4 * xDim) + c]) + (dx * inputImage.data[position11
-                                        + (4 * xDim) + c])));
-
-                        b2 = (dy1 * ( (dx1 * inputImage.data[position2 + c]) + (dx * inputImage.data[position21 + c])))
-                                + (dy * ( (dx1 * inputImage.data[position2 + (4 * xDim) + c]) + (dx * inputImage.data[position21
-                                        + (4 * xDim) + c])));
-
-                        valueI = ( (1 - dz) * b1) + (dz * b2);
-
-                        valueR = refImage.data[index + c];
-                        sum += (valueR - valueI) * (valueR - valueI);
-                    } // for (c = 1; c <= 3; c++)
+        if (aT10 < 1.0e-8) {
 
-                    count++;
-                    index += 4;
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
+            if ( (0.0 <= newPtY) && (newPtY <= yEnd2)) {
+                x1 = -1.0e8;
+                x2 = 1.0e8;
+            } else {
+                x1 = -1.0e8;
+                x2 = -1.0e8;
             }
-        }
-
-        double lsq = 0;
-
-        if (count > 1000) {
-            lsq = sum / (count);
         } else {
-            lsq = Double.MAX_VALUE;
-        }
-
-        return lsq;
-    }
-
-    /**
-     * Least squares cost function.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double leastSquaresSmoothed(final TransMatrix tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        int indexZ;
-        int index;
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        double weight;
-        int position1, position2;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
+            x1 = -newPtY * iT10;
+            x2 = (yEnd2 - newPtY) * iT10;
+        }
 
-        double value, valueR, valueI;
-        double sum = 0.0;
-        double count = 0.0;
+        xMin = x1;
+        xMax = x2;
 
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
+        if (x2 < x1) {
+            xMin = x2;
+            xMax = x1;
+        }
 
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
+        if (xMin > xMin0) {
+            xMin0 = xMin;
+        }
 
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
+        if (xMax < xMax0) {
+            xMax0 = xMax;
+        }
 
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double iT00, iT10, iT20;
-        double newPtX, newPtY, newPtZ;
+        if (aT20 < 1.0e-8) {
 
-        if (aT00 < 0) {
-            aT00 = -aT00;
+            if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2)) {
+                x1 = -1.0e8;
+                x2 = 1.0e8;
+            } else {
+                x1 = -1.0e8;
+                x2 = -1.0e8;
+            }
+        } else {
+            x1 = -newPtZ * iT20;
+            x2 = (zEnd2 - newPtZ) * iT20;
         }
 
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
+        xMin = x1;
+        xMax = x2;
 
-        if (aT20 < 0) {
-            aT20 = -aT20;
+        if (x2 < x1) {
+            xMin = x2;
+            xMax = x1;
         }
 
-        if (aT00 >= 1.0e-8) {
-            iT00 = 1 / T00;
-        } else {
-            iT00 = Double.MAX_VALUE;
+        if (xMin > xMin0) {
+            xMin0 = xMin;
         }
 
-        if (aT10 >= 1.0e-8) {
-            iT10 = 1 / T10;
-        } else {
-            iT10 = Double.MAX_VALUE;
+        if (xMax < xMax0) {
+            xMax0 = xMax;
         }
 
-        if (aT20 >= 1.0e-8) {
-            iT20 = 1 / T20;
+        if (xMax0 < xMin0) {
+            minMaxPt.y = 0;
+            minMaxPt.x = 1;
         } else {
-            iT20 = Double.MAX_VALUE;
+            minMaxPt.x = (int) Math.ceil(xMin0);
+            minMaxPt.y = (int) Math.floor(xMax0);
         }
+    }
 
-        final Point minMaxPt = new Point();
-        for (z = 0; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
+    /**
+     * DOCUMENT ME!
+     * 
+     * @param data DOCUMENT ME!
+     * @param x DOCUMENT ME!
+     * @param y DOCUMENT ME!
+     * @param z DOCUMENT ME!
+     * 
+     * @return DOCUMENT ME!
+     */
+    private double getSinc(final float[] data, final double x, final double y, final double z) {
 
-            for (y = 0; y <= yEnd; y++) {
+        // kernel half-width (i.e. range is +/- w)
+        int w = sincWidth;
+        int ix0, iy0, iz0;
 
-                newPtX = (y * T01) + tmpZ1;
-                newPtY = (y * T11) + tmpZ2;
-                newPtZ = (y * T21) + tmpZ3;
+        ix0 = (int) Math.floor(x);
+        iy0 = (int) Math.floor(y);
+        iz0 = (int) Math.floor(z);
 
-                // determine range
-                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
+        double convsum = 0.0, interpval = 0.0;
+        double kersum = 0.0;
 
-                newPtX += minMaxPt.x * T00;
-                newPtY += minMaxPt.x * T10;
-                newPtZ += minMaxPt.x * T20;
+        for (int d = -w; d <= w; d++) {
+            sincz[d + w] = kernelVal( (z - iz0 + d), w);
+            sincy[d + w] = kernelVal( (y - iy0 + d), w);
+            sincx[d + w] = kernelVal( (x - ix0 + d), w);
+        }
 
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
+        int xj, yj, zj;
 
-                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
+        for (int z1 = iz0 - w; z1 <= (iz0 + w); z1++) {
+            zj = iz0 - z1 + w;
 
-                    intX = (int) newPtX;
-                    intY = (int) newPtY;
-                    intZ = (int) newPtZ;
+            for (int y1 = iy0 - w; y1 <= (iy0 + w); y1++) {
+                yj = iy0 - y1 + w;
 
-                    dx = newPtX - intX;
-                    dy = newPtY - intY;
-                    dz = newPtZ - intZ;
+                for (int x1 = ix0 - w; x1 <= (ix0 + w); x1++) {
+                    final int index = (z1 * sliceSize) + (y1 * xDim) + x1;
 
-                    dx1 = 1 - dx;
-                    dy1 = 1 - dy;
+                    if ( (index >= 0) && (index < data.length)) {
+                        xj = ix0 - x1 + w;
 
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
+                        final double sincfac = sincx[xj] * sincy[yj] * sincz[zj];
 
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position1 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position1
-                                    + xDim + 1])));
+                        convsum += (data[index] * sincfac);
+                        kersum += sincfac;
+                    }
+                }
+            }
+        }
 
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position2 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position2
-                                    + xDim + 1])));
+        if (Math.abs(kersum) > 1e-9) {
+            interpval = (convsum / kersum);
+        } else {
+            return 0;
+        }
 
-                    value = ( (1 - dz) * b1) + (dz * b2);
+        return interpval;
+    }
 
-                    weight = 1.0;
+    /**
+     * DOCUMENT ME!
+     * 
+     * @param x DOCUMENT ME!
+     * @param w DOCUMENT ME!
+     * 
+     * @return DOCUMENT ME!
+     */
+    private final static double hanning(final double x, final int w) {
 
-                    if (newPtX < smoothX) {
-                        weight *= newPtX * invSmoothX;
-                    } else if ( (xEnd2 - newPtX) < smoothX) {
-                        weight *= (xEnd2 - newPtX) * invSmoothX;
-                    }
+        if (Math.abs(x) > w) {
+            return 0.0;
+        } else {
+            return (0.5 + (0.5 * Math.cos(Math.PI * x / w)));
+        }
+    }
 
-                    if (newPtY < smoothY) {
-                        weight *= newPtY * invSmoothY;
-                    } else if ( (yEnd2 - newPtY) < smoothY) {
-                        weight *= (yEnd2 - newPtY) * invSmoothY;
-                    }
+    /**
+     * DOCUMENT ME!
+     * 
+     * @param x DOCUMENT ME!
+     * @param w DOCUMENT ME!
+     * 
+     * @return DOCUMENT ME!
+     */
+    private double kernelVal(final double x, final int w) {
 
-                    if (newPtZ < smoothZ) {
-                        weight *= newPtZ * invSmoothZ;
-                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-                    }
+        // effectively returns sinc(x)*hanning(x,w);
+        if (Math.abs(x) > w) {
+            return 0.0f;
+        }
 
-                    if (weight < 0.0) {
-                        weight = 0.0;
-                    }
+        double dn = (x / w * 100.0) + 100;
+        final int n = (int) Math.floor(dn);
 
-                    valueR = refImage.data[index] - refImage.min;
-                    index++;
-                    valueI = value - inputImage.min;
-                    count += weight;
-                    sum += weight * (valueR - valueI) * (valueR - valueI);
+        dn -= n;
 
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
+        if (n >= 200) {
+            return 0.0f;
+        }
+
+        if (n < 0) {
+            return 0.0f;
         }
 
+        return ( (sincKernel[n] * (1.0 - dn)) + (sincKernel[n + 1] * dn));
+    }
+
+    /**
+     * Least squares cost function.
+     * 
+     * @param t the transformation matrix, row by row: M00, M01, M02, M03, M10, ..., M23
+     * 
+     * @return the cost
+     */
+    private double leastSquares(final double[] t) {
+        return leastSquares(accumulate(t, AlgorithmCostFunctions.SUMS_LEAST_SQUARES,
+                AlgorithmCostFunctions.WEIGHT_NONE), 1000);
+    }
+
+    /**
+     * Calculates the mean squared difference from its sums.
+     * 
+     * @param sums the sums, laid out as for SUMS_LEAST_SQUARES
+     * @param minCount the summed weight at or below which the cost is Double.MAX_VALUE
+     * 
+     * @return the cost
+     */
+    private double leastSquares(final double[] sums, final double minCount) {
         double lsq = 0;
 
-        if (count > 1000) {
-            lsq = sum / count;
+        if (sums[1] > minCount) {
+            lsq = sums[0] / sums[1];
         } else {
             lsq = Double.MAX_VALUE;
         }
 
         return lsq;
     }
-    
+
+    /**
+     * Least squares cost function with smaller weights for the voxels near the bounds of the input image.
+     * 
+     * @param t the transformation matrix, row by row
+     * 
+     * @return the cost
+     */
+    private double leastSquaresSmoothed(final double[] t) {
+        return leastSquares(accumulate(t, AlgorithmCostFunctions.SUMS_LEAST_SQUARES,
+                AlgorithmCostFunctions.WEIGHT_SMOOTHED), 1000);
+    }
+
     /**
      * Least squares cost function.
      * 
@@ -4543,31 +1676,20 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
      * 
      * @return DOCUMENT ME!
      */
-    private double leastSquaresSmoothed(final TransMatrixd tMatrix) {
+    private double leastSquaresColor(final TransMatrix tMatrix) {
 
-        int x, y, z;
+        int x, y, z, c;
         double tmpZ1, tmpZ2, tmpZ3;
         int indexZ;
         int index;
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        double weight;
-        int position1, position2;
+        int position1, position2, position11, position21;
         int intX, intY, intZ;
         double dx, dy, dz, dx1, dy1;
         double b1, b2;
 
-        double value, valueR, valueI;
+        double valueR, valueI;
         double sum = 0.0;
-        double count = 0.0;
-
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
+        long count = 0;
 
         final double T00 = tMatrix.M00;
         final double T01 = tMatrix.M01;
@@ -4621,6 +1743,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         }
 
         final Point minMaxPt = new Point();
+
         for (z = 0; z <= zEnd; z++) {
             tmpZ1 = (z * T02) + T03;
             tmpZ2 = (z * T12) + T13;
@@ -4640,7 +1763,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
                 newPtY += minMaxPt.x * T10;
                 newPtZ += minMaxPt.x * T20;
 
-                index = indexZ + (y * (xEnd + 1)) + minMaxPt.x;
+                index = 4 * (indexZ + (y * (xEnd + 1)) + minMaxPt.x);
 
                 for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
 
@@ -4655,49 +1778,29 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
                     dx1 = 1 - dx;
                     dy1 = 1 - dy;
 
-                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-                    position2 = position1 + sliceSize;
-
-                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position1 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position1 + xDim]) + (dx * inputImage.data[position1
-                                    + xDim + 1])));
-
-                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position2 + 1])))
-                            + (dy * ( (dx1 * inputImage.data[position2 + xDim]) + (dx * inputImage.data[position2
-                                    + xDim + 1])));
-
-                    value = ( (1 - dz) * b1) + (dz * b2);
-
-                    weight = 1.0;
+                    position1 = 4 * ( (intZ * sliceSize) + (intY * xDim) + intX);
+                    position2 = position1 + (4 * sliceSize);
+                    position11 = position1 + 4;
+                    position21 = position2 + 4;
 
-                    if (newPtX < smoothX) {
-                        weight *= newPtX * invSmoothX;
-                    } else if ( (xEnd2 - newPtX) < smoothX) {
-                        weight *= (xEnd2 - newPtX) * invSmoothX;
-                    }
+                    for (c = 1; c <= 3; c++) {
 
-                    if (newPtY < smoothY) {
-                        weight *= newPtY * invSmoothY;
-                    } else if ( (yEnd2 - newPtY) < smoothY) {
-                        weight *= (yEnd2 - newPtY) * invSmoothY;
-                    }
+                        b1 = (dy1 * ( (dx1 * inputImage.data[position1 + c]) + (dx * inputImage.data[position11 + c])))
+                                + (dy * ( (dx1 * inputImage.data[position1 + (4 * xDim) + c]) + (dx * inputImage.data[position11
+                                        + (4 * xDim) + c])));
 
-                    if (newPtZ < smoothZ) {
-                        weight *= newPtZ * invSmoothZ;
-                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-                    }
+                        b2 = (dy1 * ( (dx1 * inputImage.data[position2 + c]) + (dx * inputImage.data[position21 + c])))
+                                + (dy * ( (dx1 * inputImage.data[position2 + (4 * xDim) + c]) + (dx * inputImage.data[position21
+                                        + (4 * xDim) + c])));
 
-                    if (weight < 0.0) {
-                        weight = 0.0;
-                    }
+                        valueI = ( (1 - dz) * b1) + (dz * b2);
 
-                    valueR = refImage.data[index] - refImage.min;
-                    index++;
-                    valueI = value - inputImage.min;
-                    count += weight;
-                    sum += weight * (valueR - valueI) * (valueR - valueI);
+                        valueR = refImage.data[index + c];
+                        sum += (valueR - valueI) * (valueR - valueI);
+                    } // for (c = 1; c <= 3; c++)
 
+                    count++;
+                    index += 4;
                     newPtX += T00;
                     newPtY += T10;
                     newPtZ += T20;
@@ -4708,14 +1811,14 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         double lsq = 0;
 
         if (count > 1000) {
-            lsq = sum / count;
+            lsq = sum / (count);
         } else {
             lsq = Double.MAX_VALUE;
         }
 
         return lsq;
     }
-
+    
     /**
      * Least squares cost function.
      * 
@@ -4723,31 +1826,20 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
      * 
      * @return DOCUMENT ME!
      */
-    private double leastSquaresSmoothedColor(final TransMatrix tMatrix) {
+    private double leastSquaresColor(final TransMatrixd tMatrix) {
 
         int x, y, z, c;
         double tmpZ1, tmpZ2, tmpZ3;
         int indexZ;
         int index;
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        double weight;
-        int position1, position2;
+        int position1, position2, position11, position21;
         int intX, intY, intZ;
         double dx, dy, dz, dx1, dy1;
         double b1, b2;
 
         double valueR, valueI;
         double sum = 0.0;
-        double count = 0.0;
-
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
+        long count = 0;
 
         final double T00 = tMatrix.M00;
         final double T01 = tMatrix.M01;
@@ -4838,50 +1930,27 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
 
                     position1 = 4 * ( (intZ * sliceSize) + (intY * xDim) + intX);
                     position2 = position1 + (4 * sliceSize);
-
-                    weight = 1.0;
-
-                    if (newPtX < smoothX) {
-                        weight *= newPtX * invSmoothX;
-                    } else if ( (xEnd2 - newPtX) < smoothX) {
-                        weight *= (xEnd2 - newPtX) * invSmoothX;
-                    }
-
-                    if (newPtY < smoothY) {
-                        weight *= newPtY * invSmoothY;
-                    } else if ( (yEnd2 - newPtY) < smoothY) {
-                        weight *= (yEnd2 - newPtY) * invSmoothY;
-                    }
-
-                    if (newPtZ < smoothZ) {
-                        weight *= newPtZ * invSmoothZ;
-                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-                    }
-
-                    if (weight < 0.0) {
-                        weight = 0.0;
-                    }
+                    position11 = position1 + 4;
+                    position21 = position2 + 4;
 
                     for (c = 1; c <= 3; c++) {
-                        b1 = (dy1 * ( (dx1 * inputImage.data[position1 + c]) + (dx * inputImage.data[position1 + 4 + c])))
-                                + (dy * ( (dx1 * inputImage.data[position1 + (4 * xDim) + c]) + (dx * inputImage.data[position1
-                                        + (4 * xDim) + 4 + c])));
 
-                        b2 = (dy1 * ( (dx1 * inputImage.data[position2 + c]) + (dx * inputImage.data[position2 + 4 + c])))
-                                + (dy * ( (dx1 * inputImage.data[position2 + (4 * xDim) + c]) + (dx * inputImage.data[position2
-                                        + (4 * xDim) + 4 + c])));
+                        b1 = (dy1 * ( (dx1 * inputImage.data[position1 + c]) + (dx * inputImage.data[position11 + c])))
+                                + (dy * ( (dx1 * inputImage.data[position1 + (4 * xDim) + c]) + (dx * inputImage.data[position11
+                                        + (4 * xDim) + c])));
+
+                        b2 = (dy1 * ( (dx1 * inputImage.data[position2 + c]) + (dx * inputImage.data[position21 + c])))
+                                + (dy * ( (dx1 * inputImage.data[position2 + (4 * xDim) + c]) + (dx * inputImage.data[position21
+                                        + (4 * xDim) + c])));
 
                         valueI = ( (1 - dz) * b1) + (dz * b2);
 
                         valueR = refImage.data[index + c];
-
-                        sum += weight * (valueR - valueI) * (valueR - valueI);
+                        sum += (valueR - valueI) * (valueR - valueI);
                     } // for (c = 1; c <= 3; c++)
 
+                    count++;
                     index += 4;
-                    count += weight;
-
                     newPtX += T00;
                     newPtY += T10;
                     newPtZ += T20;
@@ -4892,14 +1961,14 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         double lsq = 0;
 
         if (count > 1000) {
-            lsq = sum / count;
+            lsq = sum / (count);
         } else {
             lsq = Double.MAX_VALUE;
         }
 
         return lsq;
     }
-    
+
     /**
      * Least squares cost function.
      * 
@@ -4907,7 +1976,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
      * 
      * @return DOCUMENT ME!
      */
-    private double leastSquaresSmoothedColor(final TransMatrixd tMatrix) {
+    private double leastSquaresSmoothedColor(final TransMatrix tMatrix) {
 
         int x, y, z, c;
         double tmpZ1, tmpZ2, tmpZ3;
@@ -5063,188 +2132,19 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
                         sum += weight * (valueR - valueI) * (valueR - valueI);
                     } // for (c = 1; c <= 3; c++)
 
-                    index += 4;
-                    count += weight;
-
-                    newPtX += T00;
-                    newPtY += T10;
-                    newPtZ += T20;
-                }
-            }
-        }
-
-        double lsq = 0;
-
-        if (count > 1000) {
-            lsq = sum / count;
-        } else {
-            lsq = Double.MAX_VALUE;
-        }
-
-        return lsq;
-    }
-
-    /**
-     * Least squares cost function with weighting.
-     * 
-     * @param tMatrix DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private double leastSquaresSmoothedWgt(final TransMatrix tMatrix) {
-
-        int x, y, z;
-        double tmpZ1, tmpZ2, tmpZ3;
-        double tmpY1, tmpY2, tmpY3;
-        int indexZ;
-        int indexY;
-        int index;
-        double smoothX, smoothY, smoothZ;
-        double invSmoothX, invSmoothY, invSmoothZ;
-        double weight;
-        int position1, position2, position1x, position2x;
-        int position11, position21, position11x, position21x;
-        int intX, intY, intZ;
-        double dx, dy, dz, dx1, dy1;
-        double b1, b2;
-
-        double value, wValue, valueR, valueI;
-        double sum = 0.0;
-        double count = 0.0;
-
-        smoothX = smoothSize;
-        smoothY = smoothSize;
-        smoothZ = smoothSize;
-
-        invSmoothX = 1.0 / smoothX;
-        invSmoothY = 1.0 / smoothY;
-        invSmoothZ = 1.0 / smoothZ;
-
-        final double T00 = tMatrix.M00;
-        final double T01 = tMatrix.M01;
-        final double T02 = tMatrix.M02;
-        final double T03 = tMatrix.M03;
-        final double T10 = tMatrix.M10;
-        final double T11 = tMatrix.M11;
-        final double T12 = tMatrix.M12;
-        final double T13 = tMatrix.M13;
-        final double T20 = tMatrix.M20;
-        final double T21 = tMatrix.M21;
-        final double T22 = tMatrix.M22;
-        final double T23 = tMatrix.M23;
-
-        // the next variable are used in the "findRangeX" method. They are calculated only once to
-        // speed up the cost function calculation
-        double aT00 = T00;
-        double aT10 = T10;
-        double aT20 = T20;
-        double newPtX, newPtY, newPtZ;
-
-        if (aT00 < 0) {
-            aT00 = -aT00;
-        }
-
-        if (aT10 < 0) {
-            aT10 = -aT10;
-        }
-
-        if (aT20 < 0) {
-            aT20 = -aT20;
-        }
-
-        for (z = zStart; z <= zEnd; z++) {
-            tmpZ1 = (z * T02) + T03;
-            tmpZ2 = (z * T12) + T13;
-            tmpZ3 = (z * T22) + T23;
-            indexZ = z * refSliceSize;
-
-            for (y = yStart; y <= yEnd; y++) {
-            	tmpY1 = (y * T01) + tmpZ1;
-                tmpY2 = (y * T11) + tmpZ2;
-                tmpY3 = (y * T21) + tmpZ3;
-                indexY = indexZ + y * refImage.xDim;
-                
-                for (x = xStart; x <= xEnd; x++) {
-                    newPtX = (x * T00) + tmpY1;
-                    if ( (0.0 <= newPtX) && (newPtX <= xEnd2)) {
-                        newPtY = (x * T10) + tmpY2;
-                        if ( (0.0 <= newPtY) && (newPtY <= yEnd2)) {
-                            newPtZ = (x * T20) + tmpY3;
-                            if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2)) {
-                                index = indexY + x;
-
-			                    intX = (int) newPtX;
-			                    intY = (int) newPtY;
-			                    intZ = (int) newPtZ;
-			
-			                    dx = newPtX - intX;
-			                    dy = newPtY - intY;
-			                    dz = newPtZ - intZ;
-			
-			                    dx1 = 1 - dx;
-			                    dy1 = 1 - dy;
-			
-			                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-			                    position1x = position1 + xDim;
-			                    position2 = position1 + sliceSize;
-			                    position2x = position2 + xDim;
-			                    position11 = position1 + 1;
-			                    position11x = position11 + xDim;
-			                    position21 = position2 + 1;
-			                    position21x = position21 + xDim;
-			
-			                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-			                            + (dy * ( (dx1 * inputImage.data[position1x]) + (dx * inputImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-			                            + (dy * ( (dx1 * inputImage.data[position2x]) + (dx * inputImage.data[position21x])));
-			                    value = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    b1 = (dy1 * ( (dx1 * inputWgtImage.data[position1]) + (dx * inputWgtImage.data[position11])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position1x]) + (dx * inputWgtImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputWgtImage.data[position2]) + (dx * inputWgtImage.data[position21])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position2x]) + (dx * inputWgtImage.data[position21x])));
-			                    wValue = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    weight = wValue * refWgtImage.data[index];
-			
-			                    if (newPtX < smoothX) {
-			                        weight *= newPtX * invSmoothX;
-			                    } else if ( (xEnd2 - newPtX) < smoothX) {
-			                        weight *= (xEnd2 - newPtX) * invSmoothX;
-			                    }
-			
-			                    if (newPtY < smoothY) {
-			                        weight *= newPtY * invSmoothY;
-			                    } else if ( (yEnd2 - newPtY) < smoothY) {
-			                        weight *= (yEnd2 - newPtY) * invSmoothY;
-			                    }
-			
-			                    if (newPtZ < smoothZ) {
-			                        weight *= newPtZ * invSmoothZ;
-			                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-			                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-			                    }
-			
-			                    if (weight < 0.0) {
-			                        weight = 0.0;
-			                    }
-			
-			                    valueR = refImage.data[index] - refImage.min;
-			                    valueI = value - inputImage.min;
-			                    count += weight;
-			                    sum += weight * (valueR - valueI) * (valueR - valueI);
-                            } // if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2))
-                        } // if ( (0.0 <= newPtY) && (newPtY <= yEnd2))
-                    } // if ( (0.0 <= newPtX) && (newPtX <= xEnd2))
+                    index += 4;
+                    count += weight;
+
+                    newPtX += T00;
+                    newPtY += T10;
+                    newPtZ += T20;
                 }
             }
         }
 
         double lsq = 0;
 
-        if (count > 1.0) {
+        if (count > 1000) {
             lsq = sum / count;
         } else {
             lsq = Double.MAX_VALUE;
@@ -5254,30 +2154,27 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
     }
     
     /**
-     * Least squares cost function with weighting.
+     * Least squares cost function.
      * 
      * @param tMatrix DOCUMENT ME!
      * 
      * @return DOCUMENT ME!
      */
-    private double leastSquaresSmoothedWgt(final TransMatrixd tMatrix) {
+    private double leastSquaresSmoothedColor(final TransMatrixd tMatrix) {
 
-        int x, y, z;
+        int x, y, z, c;
         double tmpZ1, tmpZ2, tmpZ3;
-        double tmpY1, tmpY2, tmpY3;
         int indexZ;
-        int indexY;
         int index;
         double smoothX, smoothY, smoothZ;
         double invSmoothX, invSmoothY, invSmoothZ;
         double weight;
-        int position1, position2, position1x, position2x;
-        int position11, position21, position11x, position21x;
+        int position1, position2;
         int intX, intY, intZ;
         double dx, dy, dz, dx1, dy1;
         double b1, b2;
 
-        double value, wValue, valueR, valueI;
+        double valueR, valueI;
         double sum = 0.0;
         double count = 0.0;
 
@@ -5307,6 +2204,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         double aT00 = T00;
         double aT10 = T10;
         double aT20 = T20;
+        double iT00, iT10, iT20;
         double newPtX, newPtY, newPtZ;
 
         if (aT00 < 0) {
@@ -5321,99 +2219,116 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
             aT20 = -aT20;
         }
 
-        for (z = zStart; z <= zEnd; z++) {
+        if (aT00 >= 1.0e-8) {
+            iT00 = 1 / T00;
+        } else {
+            iT00 = Double.MAX_VALUE;
+        }
+
+        if (aT10 >= 1.0e-8) {
+            iT10 = 1 / T10;
+        } else {
+            iT10 = Double.MAX_VALUE;
+        }
+
+        if (aT20 >= 1.0e-8) {
+            iT20 = 1 / T20;
+        } else {
+            iT20 = Double.MAX_VALUE;
+        }
+
+        final Point minMaxPt = new Point();
+
+        for (z = 0; z <= zEnd; z++) {
             tmpZ1 = (z * T02) + T03;
             tmpZ2 = (z * T12) + T13;
             tmpZ3 = (z * T22) + T23;
             indexZ = z * refSliceSize;
 
-            for (y = yStart; y <= yEnd; y++) {
-            	tmpY1 = (y * T01) + tmpZ1;
-                tmpY2 = (y * T11) + tmpZ2;
-                tmpY3 = (y * T21) + tmpZ3;
-                indexY = indexZ + y * refImage.xDim;
-                
-                for (x = xStart; x <= xEnd; x++) {
-                    newPtX = (x * T00) + tmpY1;
-                    if ( (0.0 <= newPtX) && (newPtX <= xEnd2)) {
-                        newPtY = (x * T10) + tmpY2;
-                        if ( (0.0 <= newPtY) && (newPtY <= yEnd2)) {
-                            newPtZ = (x * T20) + tmpY3;
-                            if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2)) {
-                                index = indexY + x;
+            for (y = 0; y <= yEnd; y++) {
 
-			                    intX = (int) newPtX;
-			                    intY = (int) newPtY;
-			                    intZ = (int) newPtZ;
-			
-			                    dx = newPtX - intX;
-			                    dy = newPtY - intY;
-			                    dz = newPtZ - intZ;
-			
-			                    dx1 = 1 - dx;
-			                    dy1 = 1 - dy;
-			
-			                    position1 = (intZ * sliceSize) + (intY * xDim) + intX;
-			                    position1x = position1 + xDim;
-			                    position2 = position1 + sliceSize;
-			                    position2x = position2 + xDim;
-			                    position11 = position1 + 1;
-			                    position11x = position11 + xDim;
-			                    position21 = position2 + 1;
-			                    position21x = position21 + xDim;
-			
-			                    b1 = (dy1 * ( (dx1 * inputImage.data[position1]) + (dx * inputImage.data[position11])))
-			                            + (dy * ( (dx1 * inputImage.data[position1x]) + (dx * inputImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputImage.data[position2]) + (dx * inputImage.data[position21])))
-			                            + (dy * ( (dx1 * inputImage.data[position2x]) + (dx * inputImage.data[position21x])));
-			                    value = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    b1 = (dy1 * ( (dx1 * inputWgtImage.data[position1]) + (dx * inputWgtImage.data[position11])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position1x]) + (dx * inputWgtImage.data[position11x])));
-			
-			                    b2 = (dy1 * ( (dx1 * inputWgtImage.data[position2]) + (dx * inputWgtImage.data[position21])))
-			                            + (dy * ( (dx1 * inputWgtImage.data[position2x]) + (dx * inputWgtImage.data[position21x])));
-			                    wValue = ( (1 - dz) * b1) + (dz * b2);
-			
-			                    weight = wValue * refWgtImage.data[index];
-			
-			                    if (newPtX < smoothX) {
-			                        weight *= newPtX * invSmoothX;
-			                    } else if ( (xEnd2 - newPtX) < smoothX) {
-			                        weight *= (xEnd2 - newPtX) * invSmoothX;
-			                    }
-			
-			                    if (newPtY < smoothY) {
-			                        weight *= newPtY * invSmoothY;
-			                    } else if ( (yEnd2 - newPtY) < smoothY) {
-			                        weight *= (yEnd2 - newPtY) * invSmoothY;
-			                    }
-			
-			                    if (newPtZ < smoothZ) {
-			                        weight *= newPtZ * invSmoothZ;
-			                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
-			                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
-			                    }
-			
-			                    if (weight < 0.0) {
-			                        weight = 0.0;
-			                    }
-			
-			                    valueR = refImage.data[index] - refImage.min;
-			                    valueI = value - inputImage.min;
-			                    count += weight;
-			                    sum += weight * (valueR - valueI) * (valueR - valueI);
-                            } // if ( (0.0 <= newPtZ) && (newPtZ <= zEnd2))
-                        } // if ( (0.0 <= newPtY) && (newPtY <= yEnd2))
-                    } // if ( (0.0 <= newPtX) && (newPtX <= xEnd2))
+                newPtX = (y * T01) + tmpZ1;
+                newPtY = (y * T11) + tmpZ2;
+                newPtZ = (y * T21) + tmpZ3;
+
+                // determine range
+                findRangeX(minMaxPt, newPtX, newPtY, newPtZ, aT00, aT10, aT20, iT00, iT10, iT20);
+
+                newPtX += minMaxPt.x * T00;
+                newPtY += minMaxPt.x * T10;
+                newPtZ += minMaxPt.x * T20;
+
+                index = 4 * (indexZ + (y * (xEnd + 1)) + minMaxPt.x);
+
+                for (x = minMaxPt.x; x <= minMaxPt.y; x++) {
+
+                    intX = (int) newPtX;
+                    intY = (int) newPtY;
+                    intZ = (int) newPtZ;
+
+                    dx = newPtX - intX;
+                    dy = newPtY - intY;
+                    dz = newPtZ - intZ;
+
+                    dx1 = 1 - dx;
+                    dy1 = 1 - dy;
+
+                    position1 = 4 * ( (intZ * sliceSize) + (intY * xDim) + intX);
+                    position2 = position1 + (4 * sliceSize);
+
+                    weight = 1.0;
+
+                    if (newPtX < smoothX) {
+                        weight *= newPtX * invSmoothX;
+                    } else if ( (xEnd2 - newPtX) < smoothX) {
+                        weight *= (xEnd2 - newPtX) * invSmoothX;
+                    }
+
+                    if (newPtY < smoothY) {
+                        weight *= newPtY * invSmoothY;
+                    } else if ( (yEnd2 - newPtY) < smoothY) {
+                        weight *= (yEnd2 - newPtY) * invSmoothY;
+                    }
+
+                    if (newPtZ < smoothZ) {
+                        weight *= newPtZ * invSmoothZ;
+                    } else if ( (zEnd2 - newPtZ) < smoothZ) {
+                        weight *= (zEnd2 - newPtZ) * invSmoothZ;
+                    }
+
+                    if (weight < 0.0) {
+                        weight = 0.0;
+                    }
+
+                    for (c = 1; c <= 3; c++) {
+                        b1 = (dy1 * ( (dx1 * inputImage.data[position1 + c]) + (dx * inputImage.data[position1 + 4 + c])))
+                                + (dy * ( (dx1 * inputImage.data[position1 + (4 * xDim) + c]) + (dx * inputImage.data[position1
+                                        + (4 * xDim) + 4 + c])));
+
+                        b2 = (dy1 * ( (dx1 * inputImage.data[position2 + c]) + (dx * inputImage.data[position2 + 4 + c])))
+                                + (dy * ( (dx1 * inputImage.data[position2 + (4 * xDim) + c]) + (dx * inputImage.data[position2
+                                        + (4 * xDim) + 4 + c])));
+
+                        valueI = ( (1 - dz) * b1) + (dz * b2);
+
+                        valueR = refImage.data[index + c];
+
+                        sum += weight * (valueR - valueI) * (valueR - valueI);
+                    } // for (c = 1; c <= 3; c++)
+
+                    index += 4;
+                    count += weight;
+
+                    newPtX += T00;
+                    newPtY += T10;
+                    newPtZ += T20;
                 }
             }
         }
 
         double lsq = 0;
 
-        if (count > 1.0) {
+        if (count > 1000) {
             lsq = sum / count;
         } else {
             lsq = Double.MAX_VALUE;
@@ -5422,6 +2337,18 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         return lsq;
     }
 
+    /**
+     * Least squares cost function with weighting.
+     * 
+     * @param t the transformation matrix, row by row
+     * 
+     * @return the cost
+     */
+    private double leastSquaresSmoothedWgt(final double[] t) {
+        return leastSquares(accumulate(t, AlgorithmCostFunctions.SUMS_LEAST_SQUARES,
+                AlgorithmCostFunctions.WEIGHT_SMOOTHED_WGT), 1.0);
+    }
+
     /**
      * Least squares cost function with weighting.
      * 
@@ -5785,7 +2712,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropy(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropy(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         return ( (1 - (margEntropyR[0] + margEntropyI[0] - jointEntropy[0])));
     }
@@ -5803,7 +2730,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropy(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropy(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         return ( (1 - (margEntropyR[0] + margEntropyI[0] - jointEntropy[0])));
     }
@@ -5821,7 +2748,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropySmoothed(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropySmoothed(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         return ( (1 - (margEntropyR[0] + margEntropyI[0] - jointEntropy[0])));
     }
@@ -5839,7 +2766,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropySmoothed(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropySmoothed(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         return ( (1 - (margEntropyR[0] + margEntropyI[0] - jointEntropy[0])));
     }
@@ -5858,7 +2785,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropy(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropy(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         if (Math.abs(jointEntropy[0]) < 1e-9) {
             normalizedMI = 1.0;
@@ -5883,7 +2810,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropy(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropy(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         if (Math.abs(jointEntropy[0]) < 1e-9) {
             normalizedMI = 1.0;
@@ -5908,7 +2835,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropySmoothed(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropySmoothed(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         if (Math.abs(jointEntropy[0]) < 1e-9) { // if joint entropy is tiny, assume work cost function value, 1
             normalizedMI = 1.0;
@@ -5933,7 +2860,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropySmoothed(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropySmoothed(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         if (Math.abs(jointEntropy[0]) < 1e-9) { // if joint entropy is tiny, assume work cost function value, 1
             normalizedMI = 1.0;
@@ -5958,7 +2885,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropySmoothedWgt(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropySmoothedWgt(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         if (Math.abs(jointEntropy[0]) < 1e-9) {
             normalizedMI = 1.0;
@@ -5983,7 +2910,7 @@ public class AlgorithmCostFunctions implements AlgorithmOptimizeFunctionBase {
         final double[] margEntropyR = {0.0};
         final double[] margEntropyI = {0.0};
 
-        calcEntropySmoothedWgt(tMatrix, jointEntropy, margEntropyR, margEntropyI);
+        calcEntropySmoothedWgt(coefficients(tMatrix), jointEntropy, margEntropyR, margEntropyI);
 
         if (Math.abs(jointEntropy[0]) < 1e-9) {
             normalizedMI = 1.0;
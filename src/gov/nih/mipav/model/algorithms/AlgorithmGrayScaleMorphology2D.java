@@ -2628,6 +2628,34 @@ public class AlgorithmGrayScaleMorphology2D extends AlgorithmBase {
         setCompleted(true);
     }*/
 
+    /**
+     * Runs one erosion or dilation iteration with line segments when the kernel can be decomposed into them (see
+     * SeparableMorphology), which costs a few comparisons per row of the kernel instead of one per kernel element.
+     * The result is placed in processBuffer. Pixels outside the mask keep their values.
+     *
+     * @param  dilation  true for a dilation, false for an erosion
+     */
+    private void filterSeparable(boolean dilation) {
+        int[] extents = srcImage.getExtents();
+        int nTasks = multiThreadingEnabled ? nthreads : 1;
+
+        if (dilation) {
+            SeparableMorphology.dilate(imgBuffer, processBuffer, extents, kernel, kDim, kDim, 1, nTasks);
+        } else {
+            SeparableMorphology.erode(imgBuffer, processBuffer, extents, kernel, kDim, kDim, 1, nTasks);
+        }
+
+        if (!entireImage) {
+
+            for (int pix = 0; pix < processBuffer.length; pix++) {
+
+                if (!mask.get(pix)) {
+                    processBuffer[pix] = imgBuffer[pix];
+                }
+            }
+        }
+    }
+
     /**
      * Dilates an image using the indicated kernel and the indicated number of
      * executions.  The grayscale dilation is the maximum value over the reflected kernel region.
@@ -2660,6 +2688,8 @@ public class AlgorithmGrayScaleMorphology2D extends AlgorithmBase {
         int stepY = kDim * xDim;
         double[] tempBuffer;
 
+        boolean separable = SeparableMorphology.isDecomposable(kernel, kDim, kDim, 1);
+
         fireProgressStateChanged("Dilating image ...");
         fireProgressStateChanged(0);
 
@@ -2667,65 +2697,71 @@ public class AlgorithmGrayScaleMorphology2D extends AlgorithmBase {
 
         for (c = 0; (c < iters) && !threadStopped; c++) {
 
-            for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
+            if (separable) {
+                filterSeparable(true);
+                fireProgressStateChanged(Math.round((c + 1) / (float) iters * 100));
+            } else {
 
-                try {
+                for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
 
-                    if (((((c * sliceSize) + pix) % mod) == 0)) {
-                        fireProgressStateChanged(Math.round((pix + 1 + (c * sliceSize)) / (iters * (float) sliceSize) *
-                                                                100));
-                    }
-                } catch (NullPointerException npe) {
+                    try {
 
-                    if (threadStopped) {
-                        Preferences.debug("somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
-                                          Preferences.DEBUG_ALGORITHM);
+                        if (((((c * sliceSize) + pix) % mod) == 0)) {
+                            fireProgressStateChanged(Math.round((pix + 1 + (c * sliceSize)) / (iters * (float) sliceSize) *
+                                                                    100));
+                        }
+                    } catch (NullPointerException npe) {
+
+                        if (threadStopped) {
+                            Preferences.debug("somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
+                                              Preferences.DEBUG_ALGORITHM);
+                        }
                     }
-                }
 
-                if (entireImage || mask.get(pix)) {
-                    processBuffer[pix] = imgBuffer[pix];
+                    if (entireImage || mask.get(pix)) {
+                        processBuffer[pix] = imgBuffer[pix];
 
-                    offsetX = (pix % xDim) - halfKDim;
-                    offsetXU = offsetX + kDim;
-                    offsetY = (pix / xDim) - halfKDim;
+                        offsetX = (pix % xDim) - halfKDim;
+                        offsetXU = offsetX + kDim;
+                        offsetY = (pix / xDim) - halfKDim;
 
-                    count = 0;
-                    startY = offsetY * xDim;
-                    endY = startY + stepY;
+                        count = 0;
+                        startY = offsetY * xDim;
+                        endY = startY + stepY;
 
-                    if (startY < 0) {
-                        startY = 0;
-                    }
+                        if (startY < 0) {
+                            startY = 0;
+                        }
 
-                    if (endY > sliceSize) {
-                        endY = sliceSize;
-                    }
+                        if (endY > sliceSize) {
+                            endY = sliceSize;
+                        }
 
-                    if (offsetX < 0) {
-                        offsetX = 0;
-                    }
+                        if (offsetX < 0) {
+                            offsetX = 0;
+                        }
 
-                    if (offsetXU > xDim) {
-                        offsetXU = xDim;
-                    }
+                        if (offsetXU > xDim) {
+                            offsetXU = xDim;
+                        }
 
-                    for (j = startY; j < endY; j += xDim) {
-                        startX = j + offsetX;
-                        endX = j + offsetXU;
+                        for (j = startY; j < endY; j += xDim) {
+                            startX = j + offsetX;
+                            endX = j + offsetXU;
 
-                        for (i = startX; i < endX; i++) {
+                            for (i = startX; i < endX; i++) {
 
-                            if (kernel.get(count) && (imgBuffer[i] > processBuffer[pix])) {
-                                processBuffer[pix] = imgBuffer[i];
-                            }
+                                if (kernel.get(count) && (imgBuffer[i] > processBuffer[pix])) {
+                                    processBuffer[pix] = imgBuffer[i];
+                                }
 
-                            count++;
+                                count++;
+                            }
                         }
-                    }
                        
-                } else {
-                    processBuffer[pix] = imgBuffer[pix];
+                    } else {
+                        processBuffer[pix] = imgBuffer[pix];
+                    }
                 }
             }
 
@@ -3140,6 +3176,8 @@ public class AlgorithmGrayScaleMorphology2D extends AlgorithmBase {
         int stepY = kDim * xDim;
         double[] tempBuffer;
 
+        boolean separable = SeparableMorphology.isDecomposable(kernel, kDim, kDim, 1);
+
         fireProgressStateChanged("Eroding image ...");
         fireProgressStateChanged(0);
 
@@ -3148,69 +3186,75 @@ public class AlgorithmGrayScaleMorphology2D extends AlgorithmBase {
 
         for (c = 0; (c < iters) && !threadStopped; c++) {
 
-            for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
+            if (separable) {
+                filterSeparable(false);
+                fireProgressStateChanged(Math.round((c + 1) / (float) iters * 100));
+            } else {
 
-                try {
+                for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
 
-                    if (((((c * sliceSize) + pix) % mod) == 0)) {
-                        fireProgressStateChanged(Math.round((pix + 1 + (c * sliceSize)) / (iters * (float) sliceSize) *
-                                                                100));
-                    }
-                } catch (NullPointerException npe) {
+                    try {
 
-                    if (threadStopped) {
-                        Preferences.debug("somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
-                                          Preferences.DEBUG_ALGORITHM);
+                        if (((((c * sliceSize) + pix) % mod) == 0)) {
+                            fireProgressStateChanged(Math.round((pix + 1 + (c * sliceSize)) / (iters * (float) sliceSize) *
+                                                                    100));
+                        }
+                    } catch (NullPointerException npe) {
+
+                        if (threadStopped) {
+                            Preferences.debug("somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
+                                              Preferences.DEBUG_ALGORITHM);
+                        }
                     }
-                }
 
-                if (entireImage || mask.get(pix)) {
-                    processBuffer[pix] = imgBuffer[pix];
+                    if (entireImage || mask.get(pix)) {
+                        processBuffer[pix] = imgBuffer[pix];
 
                     
-                    offsetX = (pix % xDim) - halfKDim;
-                    offsetXU = offsetX + kDim;
-                    offsetY = (pix / xDim) - halfKDim;
+                        offsetX = (pix % xDim) - halfKDim;
+                        offsetXU = offsetX + kDim;
+                        offsetY = (pix / xDim) - halfKDim;
 
-                    count = 0;
-                    startY = offsetY * xDim;
-                    endY = startY + stepY;
+                        count = 0;
+                        startY = offsetY * xDim;
+                        endY = startY + stepY;
 
-                    if (startY < 0) {
-                        startY = 0;
-                    }
+                        if (startY < 0) {
+                            startY = 0;
+                        }
 
-                    if (endY > sliceSize) {
-                        endY = sliceSize;
-                    }
+                        if (endY > sliceSize) {
+                            endY = sliceSize;
+                        }
 
-                    if (offsetX < 0) {
-                        offsetX = 0;
-                    }
+                        if (offsetX < 0) {
+                            offsetX = 0;
+                        }
 
-                    if (offsetXU > xDim) {
-                        offsetXU = xDim;
-                    }
+                        if (offsetXU > xDim) {
+                            offsetXU = xDim;
+                        }
 
 
-                    for (j = startY; j < endY; j += xDim) {
-                        startX = j + offsetX;
-                        endX = j + offsetXU;
+                        for (j = startY; j < endY; j += xDim) {
+                            startX = j + offsetX;
+                            endX = j + offsetXU;
 
-                        for (i = startX; i < endX; i++) {
+                            for (i = startX; i < endX; i++) {
 
-                            if (kernel.get(count) && (imgBuffer[i] < processBuffer[pix])) {
-                                processBuffer[pix] = imgBuffer[i];
+                                if (kernel.get(count) && (imgBuffer[i] < processBuffer[pix])) {
+                                    processBuffer[pix] = imgBuffer[i];
 
-                            }
+                                }
 
-                            count++;
+                                count++;
+                            }
                         }
-                    }
 
-                } else {
+                    } else {
 
-                    processBuffer[pix] = imgBuffer[pix];
+                        processBuffer[pix] = imgBuffer[pix];
+                    }
                 }
             }
 
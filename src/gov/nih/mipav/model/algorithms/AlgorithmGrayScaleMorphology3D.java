@@ -724,6 +724,34 @@ public class AlgorithmGrayScaleMorphology3D extends AlgorithmBase {
     
     
 
+    /**
+     * Runs one erosion or dilation iteration with line segments when the kernel can be decomposed into them (see
+     * SeparableMorphology), which costs a few comparisons per row of the kernel instead of one per kernel element.
+     * The result is placed in processBuffer. Voxels outside the mask keep their values.
+     *
+     * @param  dilation  true for a dilation, false for an erosion
+     */
+    private void filterSeparable(boolean dilation) {
+        int[] extents = srcImage.getExtents();
+        int nTasks = multiThreadingEnabled ? nthreads : 1;
+
+        if (dilation) {
+            SeparableMorphology.dilate(imgBuffer, processBuffer, extents, kernel, kDimXY, kDimXY, kDimZ, nTasks);
+        } else {
+            SeparableMorphology.erode(imgBuffer, processBuffer, extents, kernel, kDimXY, kDimXY, kDimZ, nTasks);
+        }
+
+        if (!entireImage) {
+
+            for (int pix = 0; pix < processBuffer.length; pix++) {
+
+                if (!mask.get(pix)) {
+                    processBuffer[pix] = imgBuffer[pix];
+                }
+            }
+        }
+    }
+
     /**
      * Dilates an image using the indicated kernel and the indicated number of
      * iterations.  The grayscale dilation is the maximum value over the reflected kernel region.
@@ -768,6 +796,8 @@ public class AlgorithmGrayScaleMorphology3D extends AlgorithmBase {
         int tmpSize = 0;
         int mod = totalSize / 100;
 
+        boolean separable = SeparableMorphology.isDecomposable(kernel, kDimXY, kDimXY, kDimZ);
+
         fireProgressStateChanged("Dilating image ...");
 
         int length = xDim * yDim * zDim;
@@ -779,81 +809,87 @@ public class AlgorithmGrayScaleMorphology3D extends AlgorithmBase {
         for (c = 0; (c < iters) && !threadStopped; c++) {
             tmpSize = c * imgSize;
 
-            for (pix = 0; (pix < imgSize) && !threadStopped; pix++) {
+            if (separable) {
+                filterSeparable(true);
+                fireProgressStateChanged(Math.round((float) (tmpSize + imgSize) / totalSize * 100));
+            } else {
 
-                if (((tmpSize + pix) % mod) == 0) {
-                    fireProgressStateChanged(Math.round((float) (tmpSize + pix) / totalSize * 100));
-                }
+                for (pix = 0; (pix < imgSize) && !threadStopped; pix++) {
 
-                if (entireImage || mask.get(pix)) {
-                    processBuffer[pix] = imgBuffer[pix];
+                    if (((tmpSize + pix) % mod) == 0) {
+                        fireProgressStateChanged(Math.round((float) (tmpSize + pix) / totalSize * 100));
+                    }
 
-                    offsetX = (pix % xDim) - halfKDim;
-                    offsetXU = offsetX + kDimXY;
-                    offsetY = ((pix / xDim) % yDim) - halfKDim;
-                    offsetZ = (pix / (sliceSize)) - halfKDimZ;
+                    if (entireImage || mask.get(pix)) {
+                        processBuffer[pix] = imgBuffer[pix];
 
-                    count = 0;
-                    indexY = offsetY * xDim;
-                    indexYU = indexY + stepY;
-                    startZ = offsetZ * sliceSize;
-                    endZ = startZ + stepZ;
+                        offsetX = (pix % xDim) - halfKDim;
+                        offsetXU = offsetX + kDimXY;
+                        offsetY = ((pix / xDim) % yDim) - halfKDim;
+                        offsetZ = (pix / (sliceSize)) - halfKDimZ;
 
-                    if (startZ < 0) {
-                        startZ = 0;
-                    }
+                        count = 0;
+                        indexY = offsetY * xDim;
+                        indexYU = indexY + stepY;
+                        startZ = offsetZ * sliceSize;
+                        endZ = startZ + stepZ;
 
-                    if (endZ > imgSize) {
-                        endZ = imgSize;
-                    }
+                        if (startZ < 0) {
+                            startZ = 0;
+                        }
 
-                    if (indexY < 0) {
-                        indexY = 0;
-                    }
+                        if (endZ > imgSize) {
+                            endZ = imgSize;
+                        }
 
-                    if (indexYU > sliceSize) {
-                        indexYU = sliceSize;
-                    }
+                        if (indexY < 0) {
+                            indexY = 0;
+                        }
 
-                    if (offsetX < 0) {
-                        offsetX = 0;
-                    }
+                        if (indexYU > sliceSize) {
+                            indexYU = sliceSize;
+                        }
 
-                    if (offsetXU > xDim) {
-                        offsetXU = xDim;
-                    }
+                        if (offsetX < 0) {
+                            offsetX = 0;
+                        }
 
-                    for (k = startZ; k < endZ; k += sliceSize) {
+                        if (offsetXU > xDim) {
+                            offsetXU = xDim;
+                        }
 
-                        // only work on valid pixels
-                        // essentially process only the overlap between
-                        // valid image and kernel slices
-                        if (k >= 0) {
-                            startY = k + indexY;
-                            endY = k + indexYU;
+                        for (k = startZ; k < endZ; k += sliceSize) {
 
-                            for (j = startY; j < endY; j += xDim) {
-                                startX = j + offsetX;
-                                endX = j + offsetXU;
+                            // only work on valid pixels
+                            // essentially process only the overlap between
+                            // valid image and kernel slices
+                            if (k >= 0) {
+                                startY = k + indexY;
+                                endY = k + indexYU;
 
-                                for (i = startX; i < endX; i++) {
+                                for (j = startY; j < endY; j += xDim) {
+                                    startX = j + offsetX;
+                                    endX = j + offsetXU;
 
-                                    if (kernel.get(count) && (imgBuffer[i] > processBuffer[pix])) {
-                                        processBuffer[pix] = imgBuffer[i];
-                                    }
+                                    for (i = startX; i < endX; i++) {
 
-                                    count++;
-                                }
-                            }
-                        } else {
+                                        if (kernel.get(count) && (imgBuffer[i] > processBuffer[pix])) {
+                                            processBuffer[pix] = imgBuffer[i];
+                                        }
 
-                            // jump to the next kernel slice as the current slice
-                            // overlaps invalid image slices
-                            count += kDimXY * kDimXY;
-                        } // end if (k > 0) {} else {}
-                    } // end for (k = startZ; ...)
-                } else {
-                    processBuffer[pix] = imgBuffer[pix];
+                                        count++;
+                                    }
+                                }
+                            } else {
+
+                                // jump to the next kernel slice as the current slice
+                                // overlaps invalid image slices
+                                count += kDimXY * kDimXY;
+                            } // end if (k > 0) {} else {}
+                        } // end for (k = startZ; ...)
+                    } else {
+                        processBuffer[pix] = imgBuffer[pix];
+                    }
                 }
             }
 
@@ -1092,90 +1128,98 @@ public class AlgorithmGrayScaleMorphology3D extends AlgorithmBase {
         int totalSize = imgSize * iters;
         int tmpSize = 0;
         int mod = totalSize / 100;
+        boolean separable = SeparableMorphology.isDecomposable(kernel, kDimXY, kDimXY, kDimZ);
+
         fireProgressStateChanged("Eroding image ...");
 
         for (c = 0; (c < iters) && !threadStopped; c++) {
             tmpSize = c * imgSize;
 
-            for (pix = 0; (pix < imgSize) && !threadStopped; pix++) {
+            if (separable) {
+                filterSeparable(false);
+                fireProgressStateChanged(Math.round((float) (tmpSize + imgSize) / totalSize * 100));
+            } else {
 
-                if ((((tmpSize + pix) % mod) == 0)) {
-                    fireProgressStateChanged(Math.round((float) (tmpSize + pix) / totalSize * 100));
-                }
+                for (pix = 0; (pix < imgSize) && !threadStopped; pix++) {
+
+                    if ((((tmpSize + pix) % mod) == 0)) {
+                        fireProgressStateChanged(Math.round((float) (tmpSize + pix) / totalSize * 100));
+                    }
 
                 
-                if (entireImage || mask.get(pix)) {
-                    processBuffer[pix] = imgBuffer[pix];
+                    if (entireImage || mask.get(pix)) {
+                        processBuffer[pix] = imgBuffer[pix];
                     
-                    offsetX = (pix % xDim) - halfKDim;
-                    offsetXU = offsetX + kDimXY;
-                    offsetY = ((pix / xDim) % yDim) - halfKDim;
-                    offsetZ = (pix / (sliceSize)) - halfKDimZ;
-
-                    count = 0;
-                    indexY = offsetY * xDim;
-                    indexYU = indexY + stepY;
-                    startZ = offsetZ * sliceSize;
-                    endZ = startZ + stepZ;
-
-                    // Took this out and check it later.  This caused the a subtle error by setting
-                    // a pixel on an incorrect slice
-                    // if (startZ < 0) {
-                    // startZ = 0;
-                    // }
-
-                    if (endZ > imgSize) {
-                        endZ = imgSize;
-                    }
+                        offsetX = (pix % xDim) - halfKDim;
+                        offsetXU = offsetX + kDimXY;
+                        offsetY = ((pix / xDim) % yDim) - halfKDim;
+                        offsetZ = (pix / (sliceSize)) - halfKDimZ;
+
+                        count = 0;
+                        indexY = offsetY * xDim;
+                        indexYU = indexY + stepY;
+                        startZ = offsetZ * sliceSize;
+                        endZ = startZ + stepZ;
+
+                        // Took this out and check it later.  This caused the a subtle error by setting
+                        // a pixel on an incorrect slice
+                        // if (startZ < 0) {
+                        // startZ = 0;
+                        // }
+
+                        if (endZ > imgSize) {
+                            endZ = imgSize;
+                        }
 
-                    if (indexY < 0) {
-                        indexY = 0;
-                    }
+                        if (indexY < 0) {
+                            indexY = 0;
+                        }
 
-                    if (indexYU > sliceSize) {
-                        indexYU = sliceSize;
-                    }
+                        if (indexYU > sliceSize) {
+                            indexYU = sliceSize;
+                        }
 
-                    if (offsetX < 0) {
-                        offsetX = 0;
-                    }
+                        if (offsetX < 0) {
+                            offsetX = 0;
+                        }
 
-                    if (offsetXU > xDim) {
-                        offsetXU = xDim;
-                    }
+                        if (offsetXU > xDim) {
+                            offsetXU = xDim;
+                        }
 
-                    for (k = startZ; k < endZ; k += sliceSize) {
+                        for (k = startZ; k < endZ; k += sliceSize) {
 
-                        // only process on valid image slices
-                        // essentially process only the overlap between
-                        // valid image and kernel slices
-                        if (k >= 0) {
-                            startY = k + indexY;
-                            endY = k + indexYU;
+                            // only process on valid image slices
+                            // essentially process only the overlap between
+                            // valid image and kernel slices
+                            if (k >= 0) {
+                                startY = k + indexY;
+                                endY = k + indexYU;
 
-                            for (j = startY; j < endY; j += xDim) {
-                                startX = j + offsetX;
-                                endX = j + offsetXU;
+                                for (j = startY; j < endY; j += xDim) {
+                                    startX = j + offsetX;
+                                    endX = j + offsetXU;
 
-                                for (i = startX; i < endX; i++) {
+                                    for (i = startX; i < endX; i++) {
 
-                                    if ((kernel.get(count) == true) && (imgBuffer[i] < processBuffer[pix])) {
-                                        processBuffer[pix] = imgBuffer[i];
-                                    }
+                                        if ((kernel.get(count) == true) && (imgBuffer[i] < processBuffer[pix])) {
+                                            processBuffer[pix] = imgBuffer[i];
+                                        }
 
-                                    count++;
+                                        count++;
+                                    }
                                 }
-                            }
-                        } else {
+                            } else {
 
-                            // jump to the next kernel slice as the current
-                            // image slice overlaps invalid image slices
-                            count += kDimXY * kDimXY;
-                        } // end if (k > 0) {} else {}
-                    }
+                                // jump to the next kernel slice as the current
+                                // image slice overlaps invalid image slices
+                                count += kDimXY * kDimXY;
+                            } // end if (k > 0) {} else {}
+                        }
 
-                } else {
-                    processBuffer[pix] = imgBuffer[pix];
+                    } else {
+                        processBuffer[pix] = imgBuffer[pix];
+                    }
                 }
             }
 
@@ -376,7 +376,6 @@ public class AlgorithmHistogram extends AlgorithmBase {
         int length = 1;
         int volume;
         int bins = 1;
-        double[] imgBuffer;
         int nVOI;
         ViewVOIVector VOIs = null;
         int groupNum;
@@ -477,12 +476,9 @@ public class AlgorithmHistogram extends AlgorithmBase {
                 return;
             }
     
-            int z, zStop;
-            int t, tStop;
-            int value;
+            int zStop;
+            int tStop;
             double imageMax, imageMin;
-            double divisor;
-            double factor;
     
             switch (image.getType()) {
     
@@ -529,7 +525,6 @@ public class AlgorithmHistogram extends AlgorithmBase {
             }
     
             length = image.getSliceSize();
-            imgBuffer = new double[length];
             
             if (image.getNDims() > 3) {
                 tStop = image.getExtents()[3];
@@ -552,65 +547,23 @@ public class AlgorithmHistogram extends AlgorithmBase {
                 return;
             }
     
-            for (t = 0; t < tStop; t++) {
-	            for (z = 0; z < zStop; z++) {
-	    
-	                try {
-	    
-	                    if (image.isComplexImage()) {
-	                        image.exportMagData(2 * t * volume + 2 * z * length, length, imgBuffer);
-	                    } else if (image.isColorImage()) {
-	                        image.exportRGBDataNoLock(RGBOffset, 4 * t * volume + 4 * z * length, length, imgBuffer);
-	                    } else {
-	                        image.exportDataNoLock(t * volume + z * length, length, imgBuffer);
-	                    }
-	                } catch (IOException error) {
-	                    errorCleanUp("Algorithm Histogram: image bounds exceeded", false);
-	                    image.releaseLock();
-	    
-	                    return;
-	                }
-	    
-	                if ((image.isComplexImage()) && (image.getLogMagDisplay() == true)) {
-	    
-	                    for (i = 0; i < length; i++) {
-	                        imgBuffer[i] =  (0.4342944819 * java.lang.Math.log(1 + imgBuffer[i]));
-	                    }
-	                }
-	    
-	                divisor = imageMax - imageMin;
-	    
-	                if (divisor == 0) {
-	                    divisor = 1;
-	                }
-	    
-	                factor = (bins - 1) / divisor;
-	    
-	                // This is the part that actually calculates the histogram
-	                if (entireImage == false) {
-	    
-	                    for (i = 0; i < length; i++) {
-	    
-	                        if (mask.get((z * length) + i)) { // just calc. for VOI
-	                            value = (int) (((imgBuffer[i] - imageMin) * factor) + 0.5);
-	                            histoBuffer[value]++;
-	                        }
-	                    }
-	                } else {
-	    
-	                    // Calculate for the entire image
-	                    for (i = 0; i < length; i++) {
-	                        value = (int) (((imgBuffer[i] - imageMin) * factor) + 0.5);
-	    
-	                        // System.out.println( "histoBuffer[value] = " + histoBuffer[value]);
-	                        histoBuffer[value]++;
-	                    }
-	                }
-	    
-	                fireProgressStateChanged(Math.round((float) (t*zStop + z + presentRun*zStop*tStop) / (tStop * zStop * numRuns) * 100));
-	            }
+            // This is the part that actually calculates the histogram, on the magnitude of complex images and on
+            // one channel of color images
+            try {
+                int[] counts = ImageStatistics.histogram(image, RGBOffset, image.getLogMagDisplay(), bins, imageMin,
+                        imageMax, entireImage ? null : mask, volume);
+
+                for (i = 0; i < bins; i++) {
+                    histoBuffer[i] += counts[i];
+                }
+            } catch (IOException error) {
+                errorCleanUp("Algorithm Histogram: image bounds exceeded", false);
+                image.releaseLock();
+    
+                return;
             }
     
+            fireProgressStateChanged(Math.round((float) (presentRun + 1) / numRuns * 100));
             image.releaseLock();
     
             try {
@@ -661,7 +614,6 @@ public class AlgorithmHistogram extends AlgorithmBase {
         } // for (presentRun = 0; presentRun < numRuns; presentRun++)
         
         setCompleted(true);
-        imgBuffer = null;
 //        System.gc();
     }
 
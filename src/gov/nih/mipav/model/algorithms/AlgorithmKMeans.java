@@ -3,6 +3,8 @@ package gov.nih.mipav.model.algorithms;
 
 import gov.nih.mipav.model.structures.*;
 
+import gov.nih.mipav.util.ThreadUtil;
+
 import gov.nih.mipav.view.*;
 
 import java.awt.Color;
@@ -14,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
 import Jama.Matrix;
 import de.jtem.numericalMethods.algebra.linear.decompose.Eigenvalue;
 
@@ -203,6 +206,9 @@ public class AlgorithmKMeans extends AlgorithmBase {
 	
 	public static final int FAST_GLOBAL_K_MEANS = 2;
 	
+	// Mini-batch k-means, only with EUCLIDEAN_SQUARED
+	public static final int MINI_BATCH_K_MEANS = 3;
+	
 	public static final int EUCLIDEAN_SQUARED = 0;
 	
 	public static final int CITY_BLOCK = 1;
@@ -297,6 +303,12 @@ public class AlgorithmKMeans extends AlgorithmBase {
     
     // If true, three dimensional color segmenting in RGB.  If false, two dimensional color segmenting in CIELAB
     private boolean colorSegmentInRGB = true;
+    
+    // Number of points drawn for each iteration of mini-batch k-means
+    private int miniBatchSize = 1000;
+    
+    // Number of iterations of mini-batch k-means
+    private int miniBatchIterations = 100;
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
 
@@ -339,6 +351,16 @@ public class AlgorithmKMeans extends AlgorithmBase {
 
     //~ Methods --------------------------------------------------------------------------------------------------------
 
+    /**
+     * Sets the batch size and the number of iterations of MINI_BATCH_K_MEANS.
+     * @param batchSize number of points drawn for each iteration
+     * @param iterations number of iterations
+     */
+    public void setMiniBatch(int batchSize, int iterations) {
+    	miniBatchSize = Math.max(1, batchSize);
+    	miniBatchIterations = Math.max(0, iterations);
+    }
+    
     /**
      * Prepares this class for destruction.
      */
@@ -775,6 +797,11 @@ public class AlgorithmKMeans extends AlgorithmBase {
     	
     	nDims = pos.length;
     	nPoints = pos[0].length;
+    	if ((algoSelection == MINI_BATCH_K_MEANS) && (distanceMeasure != EUCLIDEAN_SQUARED)) {
+    		MipavUtil.displayError("Mini-batch k-means requires Euclidean squared distances");
+    		setCompleted(false);
+    		return;
+    	}
     	switch(distanceMeasure) {
     	case EUCLIDEAN_SQUARED:
             EuclideanSquared();
@@ -1104,6 +1131,13 @@ public class AlgorithmKMeans extends AlgorithmBase {
 	    		}
 	    		dataString += "Algorithm selection = fast global k-means\n";
 	    		break;
+	    	case MINI_BATCH_K_MEANS:
+	    		if (haveCSV) {
+	    			dataString += "#";
+	    		}
+	    		dataString += "Algorithm selection = mini-batch k-means with " + miniBatchIterations +
+	    				" iterations of " + miniBatchSize + " points\n";
+	    		break;
 	    	}
 	    	switch(distanceMeasure) {
 	    	case EUCLIDEAN_SQUARED:
@@ -1343,8 +1377,10 @@ public class AlgorithmKMeans extends AlgorithmBase {
         double totalWeightAdded;
         double bestTotalWeightAdded = 0.0;
         double distSquaredReduced = 0.0;
+        double minDistSquaredSum[] = new double[1];
 		switch(algoSelection) {
     	case K_MEANS:
+    	case MINI_BATCH_K_MEANS:
     
     	
     	switch(initSelection) {
@@ -2105,39 +2141,9 @@ public class AlgorithmKMeans extends AlgorithmBase {
     			groupNum[i] = -1;
     		}
     		// Obtain the 2 point furtherest apart as seeds
-    		maxDistSquared = 0.0;
-    		if (equalScale) {
-    			for (i = 0; i < nPoints-1; i++) {
-	    			for (j = i+1; j <= nPoints-1; j++) {
-	    			    distSquared = 0.0;
-	    			    for (k = 0; k < nDims; k++) {
-	    			    	diff = pos[k][i] - pos[k][j];
-	    			    	distSquared += diff*diff;
-	    			    } // for (k = 0; k < nDims; k++)
-	    			    if (distSquared > maxDistSquared) {
-	    			    	maxDistSquared = distSquared;
-	    			    	bestFirstIndex = i;
-	    			    	bestSecondIndex = j;
-	    			    }
-	    			} // for (j = i+1; j <= nPoints-1; j++)
-	    		} // for (i = 0; i < nPoints-1; i++)	
-    		} // if (equalScale)
-    		else { // not equalScale
-	    		for (i = 0; i < nPoints-1; i++) {
-	    			for (j = i+1; j <= nPoints-1; j++) {
-	    			    distSquared = 0.0;
-	    			    for (k = 0; k < nDims; k++) {
-	    			    	diff = pos[k][i] - pos[k][j];
-	    			    	distSquared += scale2[k]*diff*diff;
-	    			    } // for (k = 0; k < nDims; k++)
-	    			    if (distSquared > maxDistSquared) {
-	    			    	maxDistSquared = distSquared;
-	    			    	bestFirstIndex = i;
-	    			    	bestSecondIndex = j;
-	    			    }
-	    			} // for (j = i+1; j <= nPoints-1; j++)
-	    		} // for (i = 0; i < nPoints-1; i++)
-    		} // else not equalScale
+    		int farthest[] = farthestPair();
+    		bestFirstIndex = farthest[0];
+    		bestSecondIndex = farthest[1];
     		for (i = 0; i < nDims; i++) {
     			centroidPos[i][0] = pos[i][bestFirstIndex];
     			centroidPos[i][1] = pos[i][bestSecondIndex];
@@ -2211,126 +2217,20 @@ public class AlgorithmKMeans extends AlgorithmBase {
     		break;
     	} // switch(initSelection)
     	
-    	changeOccurred = true;
     	iteration = 1;
     	Preferences.debug("\n", Preferences.DEBUG_ALGORITHM);
-    	while (changeOccurred) {
-    		fireProgressStateChanged("Iteration = " + iteration);
-    		Preferences.debug("Iteration = " + iteration + "\n", Preferences.DEBUG_ALGORITHM);
-    		iteration++;
-    		changeOccurred = false;
-    		for (i = 0; i < numberClusters; i++) {
-    			totalWeight[i] = 0.0;
-    			for (j = 0; j < numberClusters; j++) {
-    				centroidDistances[i][j] = 0.0;
-    			}
+    	if (algoSelection == MINI_BATCH_K_MEANS) {
+    		iteration = miniBatchEuclidean(iteration);
+    	}
+    	else {
+    		iteration = batchEuclidean(numberClusters, iteration, true, Integer.MAX_VALUE, null);
+    	}
+    	clustersWithoutPoints = 0;
+    	for (i = 0; i < numberClusters; i++) {
+    		if (totalWeight[i] <= 1.0E-10) {
+    			clustersWithoutPoints++;
     		}
-    		if (equalScale) {
-    			for (i = 0; i < numberClusters; i++) {
-    				for (j = i+1; j < numberClusters; j++) {
-    					for (k = 0; k < nDims; k++) {
-    						diff = centroidPos[k][i] - centroidPos[k][j];
-    						centroidDistances[i][j] += diff*diff;
-    					} // for (k = 0; k < nDims; k++)
-    					centroidDistances[i][j] /= 4.0;
-    				} // for (j = i+1; j < numberClusters; j++)
-    			} // for (i = 0; i < numberClusters; i++)
-    			for (i = 0; i < nPoints; i++) {
-		    	    minDistSquared = 0.0;
-		    	    originalGroupNum = groupNum[i];
-	    	    	for (k = 0; k < nDims; k++) {
-	    	    		diff = pos[k][i] - centroidPos[k][0];
-	    	    	    minDistSquared = minDistSquared + diff*diff;
-	    	    	}
-	    	    	groupNum[i] = 0;
-		    	    for (j = 1; j < numberClusters; j++) {
-		    	    	// Use triangle inequality to avoid unnecessary calculations
-		    	    	if (minDistSquared > centroidDistances[groupNum[i]][j]) {
-			    	    	distSquared = 0.0;
-			    	    	for (k = 0; k < nDims; k++) {
-			    	    		diff = pos[k][i] - centroidPos[k][j];
-			    	    	    distSquared = distSquared + diff*diff;
-			    	    	}
-			    	    	if (distSquared < minDistSquared) {
-			    	    		minDistSquared = distSquared;
-			    	    		groupNum[i] = j;
-			    	    	}
-		    	    	} // if (minDistSquared > centroidDistances[groupNum[i]][j]))
-		    	    } // for (j = 1; j < numberClusters; j++)
-		    	    totalWeight[groupNum[i]] += weight[i];
-		    	    if (originalGroupNum != groupNum[i]) {
-		    	    	changeOccurred = true;
-		    	    }
-		    	} // for (i = 0; i < nPoints; i++)	
-    		} // if (equalScale)
-    		else { // not equalScale
-    			for (i = 0; i < numberClusters; i++) {
-    				for (j = i+1; j < numberClusters; j++) {
-    					for (k = 0; k < nDims; k++) {
-    						diff = centroidPos[k][i] - centroidPos[k][j];
-    						centroidDistances[i][j] += scale2[k]*diff*diff;
-    					} // for (k = 0; k < nDims; k++)
-    					centroidDistances[i][j] /= 4.0;
-    				} // for (j = i+1; j < numberClusters; j++)
-    			} // for (i = 0; i < numberClusters; i++)
-		    	for (i = 0; i < nPoints; i++) {
-		    		minDistSquared = 0.0;
-		    	    originalGroupNum = groupNum[i];
-	    	    	for (k = 0; k < nDims; k++) {
-	    	    		diff = pos[k][i] - centroidPos[k][0];
-	    	    	    minDistSquared = minDistSquared + scale2[k]*diff*diff;
-	    	    	}
-	    	    	groupNum[i] = 0;
-		    	    for (j = 1; j < numberClusters; j++) {
-		    	    	// Use triangle inequality to avoid unnecessary calculations
-		    	    	if (minDistSquared > centroidDistances[groupNum[i]][j]) {
-			    	    	distSquared = 0.0;
-			    	    	for (k = 0; k < nDims; k++) {
-			    	    		diff = pos[k][i] - centroidPos[k][j];
-			    	    	    distSquared = distSquared + scale2[k]*diff*diff;
-			    	    	}
-			    	    	if (distSquared < minDistSquared) {
-			    	    		minDistSquared = distSquared;
-			    	    		groupNum[i] = j;
-			    	    	}
-		    	    	} // if (minDistSquared > centroidDistances[groupNum[i]][j]))
-		    	    } // for (j = 1; j < numberClusters; j++)
-		    	    totalWeight[groupNum[i]] += weight[i];
-		    	    if (originalGroupNum != groupNum[i]) {
-		    	    	changeOccurred = true;
-		    	    }
-		    	} // for (i = 0; i < nPoints; i++)
-    		} // else not equalScale
-	    	for (i = 0; i < numberClusters; i++) {
-	    		for (j = 0; j < nDims; j++) {
-	    			centroidPos[j][i] = 0.0;
-	    		}
-	    	}
-    	    for (i = 0; i < numberClusters; i++) {
-    	    	totalWeight[i] = 0.0;
-    	    }
-    		for (i = 0; i < nPoints; i++) {
-    			totalWeight[groupNum[i]] += weight[i];
-	    		for (j = 0; j < nDims; j++) {
-	    			centroidPos[j][groupNum[i]] += pos[j][i]*weight[i];
-	    		}
-	    	}
-	    	clustersWithoutPoints = 0;
-	    	for (i = 0; i < numberClusters; i++) {
-	    		if (totalWeight[i] <= 1.0E-10) {
-	    			Preferences.debug("Cluster centroid " + (i+1) + " has no points\n", Preferences.DEBUG_ALGORITHM);
-	    			clustersWithoutPoints++;
-	    		}
-	    		else {
-		    		Preferences.debug("Cluster centroid " + (i+1) + ":\n", Preferences.DEBUG_ALGORITHM);
-		    		for (j = 0; j < nDims; j++) {
-		    			centroidPos[j][i] = centroidPos[j][i]/totalWeight[i];
-		    			Preferences.debug("Dimension " + (j+1) + " at " + centroidPos[j][i] + "\n", 
-		    					Preferences.DEBUG_ALGORITHM);
-		    		}
-	    		} // else
-	    	}	
-    	} // while (changeOccurred)
+    	}
     	Preferences.debug("There are " + clustersWithoutPoints + " clusters without points\n", Preferences.DEBUG_ALGORITHM);
     	break;
     	case GLOBAL_K_MEANS:
@@ -2358,7 +2258,6 @@ public class AlgorithmKMeans extends AlgorithmBase {
 	    		fireProgressStateChanged("Present cluster number = " + presentClusters);
 	    		bestTotalMinDistSquared = Double.MAX_VALUE;
 	    	    for (initialClusterLocation = 0; initialClusterLocation < nPoints; initialClusterLocation++) {
-	    	    	changeOccurred = true;
 	    	    	iteration = 1;
 	    	    	for (i = 0; i < nDims; i++) {
 	    	    		for (j = 0; j < presentClusters-1; j++) {
@@ -2367,122 +2266,15 @@ public class AlgorithmKMeans extends AlgorithmBase {
 	    	    		// No weight since just one point is being assigned
 	    	    		centroidPos[i][presentClusters-1] = pos[i][initialClusterLocation];
 	    	    	}
-	    	    	while (changeOccurred) {
-	    	    		iteration++;
-	    	    		changeOccurred = false;
-	    	    		totalMinDistSquared = 0.0;
-	    	    		for (i = 0; i < presentClusters; i++) {
-	    	    			totalWeight[i] = 0.0;
-	    	    			for (j = 0; j < presentClusters; j++) {
-	    	    				centroidDistances[i][j] = 0.0;
-	    	    			}
+	    	    	iteration = batchEuclidean(presentClusters, iteration, false, Integer.MAX_VALUE,
+	    	    			minDistSquaredSum);
+	    	    	totalMinDistSquared = minDistSquaredSum[0];
+	    	    	clustersWithoutPoints = 0;
+	    	    	for (i = 0; i < presentClusters; i++) {
+	    	    		if (totalWeight[i] <= 1.0E-10) {
+	    	    			clustersWithoutPoints++;
 	    	    		}
-	    	    		if (equalScale) {
-	    	    			for (i = 0; i < presentClusters; i++) {
-	    	    				for (j = i+1; j < presentClusters; j++) {
-	    	    					for (k = 0; k < nDims; k++) {
-	    	    						diff = centroidPos[k][i] - centroidPos[k][j];
-	    	    						centroidDistances[i][j] += diff*diff;
-	    	    					} // for (k = 0; k < nDims; k++)
-	    	    					centroidDistances[i][j] /= 4.0;
-	    	    				} // for (j = i+1; j < presentClusters; j++)
-	    	    			} // for (i = 0; i < presentClusters; i++)
-	    	    			for (i = 0; i < nPoints; i++) {
-	    			    	    minDistSquared = 0.0;
-	    			    	    originalGroupNum = groupNum[i];
-	    		    	    	for (k = 0; k < nDims; k++) {
-	    		    	    		diff = pos[k][i] - centroidPos[k][0];
-	    		    	    	    minDistSquared = minDistSquared + diff*diff;
-	    		    	    	}
-	    		    	    	groupNum[i] = 0;
-	    			    	    for (j = 1; j < presentClusters; j++) {
-	    			    	    	// Use triangle inequality to avoid unnecessary calculations
-	    			    	    	if (minDistSquared > centroidDistances[groupNum[i]][j]) {
-	    				    	    	distSquared = 0.0;
-	    				    	    	for (k = 0; k < nDims; k++) {
-	    				    	    		diff = pos[k][i] - centroidPos[k][j];
-	    				    	    	    distSquared = distSquared + diff*diff;
-	    				    	    	}
-	    				    	    	if (distSquared < minDistSquared) {
-	    				    	    		minDistSquared = distSquared;
-	    				    	    		groupNum[i] = j;
-	    				    	    	}
-	    			    	    	} // if (minDistSquared > centroidDistances[groupNum[i]][j]))
-	    			    	    } // for (j = 1; j < presentClusters; j++)
-	    			    	    totalWeight[groupNum[i]] += weight[i];
-	    			    	    if (originalGroupNum != groupNum[i]) {
-	    			    	    	changeOccurred = true;
-	    			    	    }
-	    			    	    totalMinDistSquared += minDistSquared;
-	    			    	} // for (i = 0; i < nPoints; i++)	
-	    	    		} // if (equalScale)
-	    	    		else { // not equalScale
-	    	    			for (i = 0; i < presentClusters; i++) {
-	    	    				for (j = i+1; j < presentClusters; j++) {
-	    	    					for (k = 0; k < nDims; k++) {
-	    	    						diff = centroidPos[k][i] - centroidPos[k][j];
-	    	    						centroidDistances[i][j] += scale2[k]*diff*diff;
-	    	    					} // for (k = 0; k < nDims; k++)
-	    	    					centroidDistances[i][j] /= 4.0;
-	    	    				} // for (j = i+1; j < presentClusters; j++)
-	    	    			} // for (i = 0; i < presentClusters; i++)
-	    			    	for (i = 0; i < nPoints; i++) {
-	    			    		minDistSquared = 0.0;
-	    			    	    originalGroupNum = groupNum[i];
-	    		    	    	for (k = 0; k < nDims; k++) {
-	    		    	    		diff = pos[k][i] - centroidPos[k][0];
-	    		    	    	    minDistSquared = minDistSquared + scale2[k]*diff*diff;
-	    		    	    	}
-	    		    	    	groupNum[i] = 0;
-	    			    	    for (j = 1; j < presentClusters; j++) {
-	    			    	    	// Use triangle inequality to avoid unnecessary calculations
-	    			    	    	if (minDistSquared > centroidDistances[groupNum[i]][j]) {
-	    				    	    	distSquared = 0.0;
-	    				    	    	for (k = 0; k < nDims; k++) {
-	    				    	    		diff = pos[k][i] - centroidPos[k][j];
-	    				    	    	    distSquared = distSquared + scale2[k]*diff*diff;
-	    				    	    	}
-	    				    	    	if (distSquared < minDistSquared) {
-	    				    	    		minDistSquared = distSquared;
-	    				    	    		groupNum[i] = j;
-	    				    	    	}
-	    			    	    	} // if (minDistSquared > centroidDistances[groupNum[i]][j]))
-	    			    	    } // for (j = 1; j < presentClusters; j++)
-	    			    	    totalWeight[groupNum[i]] += weight[i];
-	    			    	    if (originalGroupNum != groupNum[i]) {
-	    			    	    	changeOccurred = true;
-	    			    	    }
-	    			    	    totalMinDistSquared += minDistSquared;
-	    			    	} // for (i = 0; i < nPoints; i++)
-	    	    		} // else not equalScale
-	    		    	for (i = 0; i < presentClusters; i++) {
-	    		    		for (j = 0; j < nDims; j++) {
-	    		    			centroidPos[j][i] = 0.0;
-	    		    		}
-	    		    	}
-    		    	    for (i = 0; i < presentClusters; i++) {
-    		    	    	totalWeight[i] = 0.0;
-    		    	    }
-    		    		for (i = 0; i < nPoints; i++) {
-    		    			totalWeight[groupNum[i]] += weight[i];
-    			    		for (j = 0; j < nDims; j++) {
-    			    			centroidPos[j][groupNum[i]] += pos[j][i]*weight[i];
-    			    		}
-    			    	}
-    			    	clustersWithoutPoints = 0;
-    			    	for (i = 0; i < presentClusters; i++) {
-    			    		if (totalWeight[i] <= 1.0E-10) {
-    			    			Preferences.debug("Cluster centroid " + (i+1) + " has no points\n", 
-    			    					Preferences.DEBUG_ALGORITHM);
-    			    			clustersWithoutPoints++;
-    			    		}
-    			    		else {
-    				    		for (j = 0; j < nDims; j++) {
-    				    			centroidPos[j][i] = centroidPos[j][i]/totalWeight[i];
-    				    		}
-    			    		} // else
-    			    	}	
-	    	    	} // while (changeOccurred)
+	    	    	}
 	    	    	Preferences.debug("There are " + clustersWithoutPoints + " clusters without points\n", 
 	    	    			Preferences.DEBUG_ALGORITHM);	
 	    	    	if (totalMinDistSquared < bestTotalMinDistSquared) {
@@ -2545,169 +2337,36 @@ public class AlgorithmKMeans extends AlgorithmBase {
 	    	for (presentClusters = 2; presentClusters <= numberClusters; presentClusters++) {
 	    		Preferences.debug("Present cluster number = " + presentClusters + "\n", Preferences.DEBUG_ALGORITHM);
 	    		fireProgressStateChanged("Present cluster number = " + presentClusters);
-	    		bnMax = -Double.MAX_VALUE;
-	    	    for (initialClusterLocation = 0; initialClusterLocation < nPoints; initialClusterLocation++) {
-	    	        bn = 0.0;
-	    	        if (equalScale) {
-		    	        for (i = 0; i < nPoints; i++) {
-		    	        	distSquared = 0.0;
-		    	        	for (j = 0; j < nDims; j++) {
-		    	        		diff = pos[j][initialClusterLocation] - pos[j][i];
-		    	        		distSquared += diff * diff;
-		    	        	}
-		    	        	bn += Math.max(distSquaredToNearestCluster[i] - distSquared, 0.0);
-		    	        } // for (i = 0; i < nPoints; i++)
-	    	        }
-	    	        else { // not equal scale
-	    	        	for (i = 0; i < nPoints; i++) {
-		    	        	distSquared = 0.0;
-		    	        	for (j = 0; j < nDims; j++) {
-		    	        		diff = pos[j][initialClusterLocation] - pos[j][i];
-		    	        		distSquared += diff * diff * scale2[j];
-		    	        	}
-		    	        	bn += Math.max(distSquaredToNearestCluster[i] - distSquared, 0.0);
-		    	        } // for (i = 0; i < nPoints; i++)	
-	    	        } // not equalScale
-	    	        if (bn > bnMax) {
-		    	    	bnMax = bn;
-		    	    	for (i = 0; i < nDims; i++) {
-		    	    		centroidPos[i][presentClusters-1] = pos[i][initialClusterLocation];
-		    	    	}
-		    	    }
-	    	    } // for (initialClusterLocation = 0; initialClusterLocation < nPoints; initialClusterLocation++)
-	    	    changeOccurred = true;
+	    		initialClusterLocation = bestNewCentroidLocation(distSquaredToNearestCluster);
+	    		for (i = 0; i < nDims; i++) {
+	    			centroidPos[i][presentClusters-1] = pos[i][initialClusterLocation];
+	    		}
 	        	iteration = 1;
-	        	while (changeOccurred) {
-	        		iteration++;
-	        		changeOccurred = false;
-	        		for (i = 0; i < presentClusters; i++) {
-	        			totalWeight[i] = 0.0;
-	        			for (j = 0; j < presentClusters; j++) {
-	        				centroidDistances[i][j] = 0.0;
-	        			}
+	        	iteration = batchEuclidean(presentClusters, iteration, false, Integer.MAX_VALUE, null);
+	        	clustersWithoutPoints = 0;
+	        	for (i = 0; i < presentClusters; i++) {
+	        		if (totalWeight[i] <= 1.0E-10) {
+	        			clustersWithoutPoints++;
 	        		}
-	        		if (equalScale) {
-	        			for (i = 0; i < presentClusters; i++) {
-	        				for (j = i+1; j < presentClusters; j++) {
-	        					for (k = 0; k < nDims; k++) {
-	        						diff = centroidPos[k][i] - centroidPos[k][j];
-	        						centroidDistances[i][j] += diff*diff;
-	        					} // for (k = 0; k < nDims; k++)
-	        					centroidDistances[i][j] /= 4.0;
-	        				} // for (j = i+1; j < presentClusters; j++)
-	        			} // for (i = 0; i < presentClusters; i++)
-	        			for (i = 0; i < nPoints; i++) {
-	    		    	    minDistSquared = 0.0;
-	    		    	    originalGroupNum = groupNum[i];
-	    	    	    	for (k = 0; k < nDims; k++) {
-	    	    	    		diff = pos[k][i] - centroidPos[k][0];
-	    	    	    	    minDistSquared = minDistSquared + diff*diff;
-	    	    	    	}
-	    	    	    	groupNum[i] = 0;
-	    		    	    for (j = 1; j < presentClusters; j++) {
-	    		    	    	// Use triangle inequality to avoid unnecessary calculations
-	    		    	    	if (minDistSquared > centroidDistances[groupNum[i]][j]) {
-	    			    	    	distSquared = 0.0;
-	    			    	    	for (k = 0; k < nDims; k++) {
-	    			    	    		diff = pos[k][i] - centroidPos[k][j];
-	    			    	    	    distSquared = distSquared + diff*diff;
-	    			    	    	}
-	    			    	    	if (distSquared < minDistSquared) {
-	    			    	    		minDistSquared = distSquared;
-	    			    	    		groupNum[i] = j;
-	    			    	    	}
-	    		    	    	} // if (minDistSquared > centroidDistances[groupNum[i]][j]))
-	    		    	    } // for (j = 1; j < presentClusters; j++)
-	    		    	    totalWeight[groupNum[i]] += weight[i];
-	    		    	    if (originalGroupNum != groupNum[i]) {
-	    		    	    	changeOccurred = true;
-	    		    	    }
-	    		    	} // for (i = 0; i < nPoints; i++)	
-	        		} // if (equalScale)
-	        		else { // not equalScale
-	        			for (i = 0; i < presentClusters; i++) {
-	        				for (j = i+1; j < presentClusters; j++) {
-	        					for (k = 0; k < nDims; k++) {
-	        						diff = centroidPos[k][i] - centroidPos[k][j];
-	        						centroidDistances[i][j] += scale2[k]*diff*diff;
-	        					} // for (k = 0; k < nDims; k++)
-	        					centroidDistances[i][j] /= 4.0;
-	        				} // for (j = i+1; j < presentClusters; j++)
-	        			} // for (i = 0; i < presentClusters; i++)
-	    		    	for (i = 0; i < nPoints; i++) {
-	    		    		minDistSquared = 0.0;
-	    		    	    originalGroupNum = groupNum[i];
-	    	    	    	for (k = 0; k < nDims; k++) {
-	    	    	    		diff = pos[k][i] - centroidPos[k][0];
-	    	    	    	    minDistSquared = minDistSquared + scale2[k]*diff*diff;
-	    	    	    	}
-	    	    	    	groupNum[i] = 0;
-	    		    	    for (j = 1; j < presentClusters; j++) {
-	    		    	    	// Use triangle inequality to avoid unnecessary calculations
-	    		    	    	if (minDistSquared > centroidDistances[groupNum[i]][j]) {
-	    			    	    	distSquared = 0.0;
-	    			    	    	for (k = 0; k < nDims; k++) {
-	    			    	    		diff = pos[k][i] - centroidPos[k][j];
-	    			    	    	    distSquared = distSquared + scale2[k]*diff*diff;
-	    			    	    	}
-	    			    	    	if (distSquared < minDistSquared) {
-	    			    	    		minDistSquared = distSquared;
-	    			    	    		groupNum[i] = j;
-	    			    	    	}
-	    		    	    	} // if (minDistSquared > centroidDistances[groupNum[i]][j]))
-	    		    	    } // for (j = 1; j < presentClusters; j++)
-	    		    	    totalWeight[groupNum[i]] += weight[i];
-	    		    	    if (originalGroupNum != groupNum[i]) {
-	    		    	    	changeOccurred = true;
-	    		    	    }
-	    		    	} // for (i = 0; i < nPoints; i++)
-	        		} // else not equalScale
-	    	    	for (i = 0; i < presentClusters; i++) {
+	        	}
+	    	    if (equalScale) {
+	    	    	for (i = 0; i < nPoints; i++) {
+	    	    		distSquaredToNearestCluster[i] = 0.0;
 	    	    		for (j = 0; j < nDims; j++) {
-	    	    			centroidPos[j][i] = 0.0;
+	    	    			diff = pos[j][i] - centroidPos[j][groupNum[i]];
+	    	    			distSquaredToNearestCluster[i] += diff * diff;
 	    	    		}
 	    	    	}
-    	    	    for (i = 0; i < presentClusters; i++) {
-    	    	    	totalWeight[i] = 0.0;
-    	    	    }
-    	    		for (i = 0; i < nPoints; i++) {
-    	    			totalWeight[groupNum[i]] += weight[i];
-    		    		for (j = 0; j < nDims; j++) {
-    		    			centroidPos[j][groupNum[i]] += pos[j][i]*weight[i];
-    		    		}
-    		    	}
-    		    	clustersWithoutPoints = 0;
-    		    	for (i = 0; i < presentClusters; i++) {
-    		    		if (totalWeight[i] <= 1.0E-10) {
-    		    			Preferences.debug("Cluster centroid " + (i+1) + " has no points\n", 
-    		    					Preferences.DEBUG_ALGORITHM);
-    		    			clustersWithoutPoints++;
-    		    		}
-    		    		else {
-    			    		for (j = 0; j < nDims; j++) {
-    			    			centroidPos[j][i] = centroidPos[j][i]/totalWeight[i];
-    			    		}
-    		    		} // else
-    		    	}	
-	    	    	if (equalScale) {
-		    	    	for (i = 0; i < nPoints; i++) {
-		    	    		distSquaredToNearestCluster[i] = 0.0;
-		    	    		for (j = 0; j < nDims; j++) {
-		    	    			diff = pos[j][i] - centroidPos[j][groupNum[i]];
-		    	    			distSquaredToNearestCluster[i] += diff * diff;
-		    	    		}
-		    	    	}
-	    	    	} // if (equalScale)
-	    	    	else {
-	    	    		for (i = 0; i < nPoints; i++) {
-		    	    		distSquaredToNearestCluster[i] = 0.0;
-		    	    		for (j = 0; j < nDims; j++) {
-		    	    			diff = pos[j][i] - centroidPos[j][groupNum[i]];
-		    	    			distSquaredToNearestCluster[i] += diff * diff * scale2[j];
-		    	    		}
-		    	    	}	
-	    	    	}
-	        	} // while (changeOccurred)
+	    	    } // if (equalScale)
+	    	    else {
+	    	    	for (i = 0; i < nPoints; i++) {
+	    	    		distSquaredToNearestCluster[i] = 0.0;
+	    	    		for (j = 0; j < nDims; j++) {
+	    	    			diff = pos[j][i] - centroidPos[j][groupNum[i]];
+	    	    			distSquaredToNearestCluster[i] += diff * diff * scale2[j];
+	    	    		}
+	    	    	}	
+	    	    }
 	        	Preferences.debug("There are " + clustersWithoutPoints + " clusters without points\n", 
 	        			Preferences.DEBUG_ALGORITHM);
 	    	    
@@ -2867,6 +2526,424 @@ public class AlgorithmKMeans extends AlgorithmBase {
 		} // if (followBatchWithIncremental)
 	}// EuclideanSquared
 	
+	/**
+	 * Runs batch k-means iterations with Euclidean squared distances until no point changes cluster or
+	 * maxIterations passes have been made.  Each pass assigns every point to its nearest centroid and then
+	 * moves every centroid to the weighted mean of its points.  A centroid without points is placed at the origin.
+	 * 
+	 * The assignment keeps for each point an upper bound on the distance to its own centroid and a lower bound on
+	 * the distance to every other centroid, and updates both by how far the centroids move.  A point is only
+	 * compared with all the centroids when the bounds no longer show that its centroid is still the nearest, as in
+	 * G. Hamerly, "Making k-means even faster", Proceedings of the 2010 SIAM International Conference on Data Mining,
+	 * pp. 130-140.  The points are split among threads, and the centroid sums of the threads are added in order.
+	 * @param presentClusters number of clusters
+	 * @param iteration number of the first iteration, for the progress messages
+	 * @param reportIterations if true, report each iteration and the centroid positions
+	 * @param maxIterations largest number of passes
+	 * @param totalMinDistSquared if not null, receives the sum of the distances squared of the points to their centroids
+	 * @return the number of the iteration after the last one
+	 */
+	private int batchEuclidean(final int presentClusters, int iteration, boolean reportIterations, int maxIterations,
+			double totalMinDistSquared[]) {
+		int i, j, k;
+		double diff;
+		final double upper[] = new double[nPoints];
+		final double lower[] = new double[nPoints];
+		// Half the distance from each centroid to the nearest other centroid
+		final double halfNearest[] = new double[presentClusters];
+		// Distance each centroid moved in the last update
+		final double move[] = new double[presentClusters];
+		final double oldCentroidPos[][] = new double[nDims][presentClusters];
+		final int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, nPoints / 10000)) : 1;
+		final boolean taskChanged[] = new boolean[nTasks];
+		final double taskCentroidSum[][][] = new double[nTasks][nDims][presentClusters];
+		final double taskWeight[][] = new double[nTasks][presentClusters];
+		boolean changeOccurred = true;
+		boolean firstPass = true;
+		int passes = 0;
+		while (changeOccurred && (passes < maxIterations)) {
+			if (reportIterations) {
+				fireProgressStateChanged("Iteration = " + iteration);
+	    		Preferences.debug("Iteration = " + iteration + "\n", Preferences.DEBUG_ALGORITHM);
+			}
+			iteration++;
+			passes++;
+			for (i = 0; i < presentClusters; i++) {
+				halfNearest[i] = Double.MAX_VALUE;
+			}
+			for (i = 0; i < presentClusters; i++) {
+				for (j = i+1; j < presentClusters; j++) {
+					double distSquared = 0.0;
+					for (k = 0; k < nDims; k++) {
+						diff = centroidPos[k][i] - centroidPos[k][j];
+						distSquared += equalScale ? diff*diff : scale2[k]*diff*diff;
+					}
+					double halfDist = 0.5 * Math.sqrt(distSquared);
+					halfNearest[i] = Math.min(halfNearest[i], halfDist);
+					halfNearest[j] = Math.min(halfNearest[j], halfDist);
+				}
+			}
+			// How much the lower bounds drop: the largest move of any other centroid
+			int largestMoveCluster = 0;
+			double largestMove = 0.0;
+			double secondLargestMove = 0.0;
+			for (i = 0; i < presentClusters; i++) {
+				if (move[i] > largestMove) {
+					secondLargestMove = largestMove;
+					largestMove = move[i];
+					largestMoveCluster = i;
+				}
+				else if (move[i] > secondLargestMove) {
+					secondLargestMove = move[i];
+				}
+			}
+			final boolean fullPass = firstPass;
+			final int maxMoveCluster = largestMoveCluster;
+			final double maxMove = largestMove;
+			final double secondMaxMove = secondLargestMove;
+			runOverPoints(nTasks, new PointRangeTask() {
+				public void run(int task, int start, int end) {
+					boolean changed = false;
+					for (int i = start; i < end; i++) {
+						int group = groupNum[i];
+						if (!fullPass) {
+							upper[i] += move[group];
+							lower[i] -= (group == maxMoveCluster) ? secondMaxMove : maxMove;
+							double bound = Math.max(halfNearest[group], lower[i]);
+							if (upper[i] <= bound) {
+								continue;
+							}
+							upper[i] = Math.sqrt(distSquaredToCentroid(i, group));
+							if (upper[i] <= bound) {
+								continue;
+							}
+						}
+						double minDistSquared = distSquaredToCentroid(i, 0);
+						double secondDistSquared = Double.MAX_VALUE;
+						int nearest = 0;
+						for (int j = 1; j < presentClusters; j++) {
+							double distSquared = distSquaredToCentroid(i, j);
+							if (distSquared < minDistSquared) {
+								secondDistSquared = minDistSquared;
+								minDistSquared = distSquared;
+								nearest = j;
+							}
+							else if (distSquared < secondDistSquared) {
+								secondDistSquared = distSquared;
+							}
+						}
+						upper[i] = Math.sqrt(minDistSquared);
+						lower[i] = Math.sqrt(secondDistSquared);
+						if (nearest != group) {
+							groupNum[i] = nearest;
+							changed = true;
+						}
+					} // for (int i = start; i < end; i++)
+					taskChanged[task] = changed;
+				}
+			});
+			firstPass = false;
+			changeOccurred = false;
+			for (i = 0; i < nTasks; i++) {
+				changeOccurred |= taskChanged[i];
+			}
+			
+			// Move the centroids to the means of their points
+			for (i = 0; i < presentClusters; i++) {
+				for (j = 0; j < nDims; j++) {
+					oldCentroidPos[j][i] = centroidPos[j][i];
+				}
+			}
+			runOverPoints(nTasks, new PointRangeTask() {
+				public void run(int task, int start, int end) {
+					double sum[][] = taskCentroidSum[task];
+					double weightSum[] = taskWeight[task];
+					for (int i = 0; i < presentClusters; i++) {
+						weightSum[i] = 0.0;
+						for (int j = 0; j < nDims; j++) {
+							sum[j][i] = 0.0;
+						}
+					}
+					for (int i = start; i < end; i++) {
+						weightSum[groupNum[i]] += weight[i];
+						for (int j = 0; j < nDims; j++) {
+							sum[j][groupNum[i]] += pos[j][i]*weight[i];
+						}
+					}
+				}
+			});
+			for (i = 0; i < presentClusters; i++) {
+				totalWeight[i] = taskWeight[0][i];
+				for (j = 0; j < nDims; j++) {
+					centroidPos[j][i] = taskCentroidSum[0][j][i];
+				}
+				for (k = 1; k < nTasks; k++) {
+					totalWeight[i] += taskWeight[k][i];
+					for (j = 0; j < nDims; j++) {
+						centroidPos[j][i] += taskCentroidSum[k][j][i];
+					}
+				}
+			}
+			for (i = 0; i < presentClusters; i++) {
+	    		if (totalWeight[i] <= 1.0E-10) {
+	    			Preferences.debug("Cluster centroid " + (i+1) + " has no points\n", Preferences.DEBUG_ALGORITHM);
+	    			for (j = 0; j < nDims; j++) {
+	    				centroidPos[j][i] = 0.0;
+	    			}
+	    		}
+	    		else {
+	    			if (reportIterations) {
+	    				Preferences.debug("Cluster centroid " + (i+1) + ":\n", Preferences.DEBUG_ALGORITHM);
+	    			}
+		    		for (j = 0; j < nDims; j++) {
+		    			centroidPos[j][i] = centroidPos[j][i]/totalWeight[i];
+		    			if (reportIterations) {
+			    			Preferences.debug("Dimension " + (j+1) + " at " + centroidPos[j][i] + "\n", 
+			    					Preferences.DEBUG_ALGORITHM);
+		    			}
+		    		}
+	    		} // else
+	    		double distSquared = 0.0;
+	    		for (j = 0; j < nDims; j++) {
+	    			diff = centroidPos[j][i] - oldCentroidPos[j][i];
+	    			distSquared += equalScale ? diff*diff : scale2[j]*diff*diff;
+	    		}
+	    		move[i] = Math.sqrt(distSquared);
+	    	}
+		} // while (changeOccurred && (passes < maxIterations))
+		
+		if (totalMinDistSquared != null) {
+			totalMinDistSquared[0] = 0.0;
+			for (i = 0; i < nPoints; i++) {
+				totalMinDistSquared[0] += distSquaredToCentroid(i, groupNum[i]);
+			}
+		}
+		return iteration;
+	}
+	
+	/**
+	 * Runs mini-batch k-means with Euclidean squared distances, starting from the present centroids.  Each iteration
+	 * draws miniBatchSize random points, finds the nearest centroid of each, and moves each centroid toward its points
+	 * with a step of the point weight over the total weight the centroid has received, as in D. Sculley, "Web-scale
+	 * k-means clustering", Proceedings of the 19th International Conference on World Wide Web, 2010, pp. 1177-1178.
+	 * A final batch pass then assigns every point and moves the centroids to the means of their points.
+	 * @param iteration number of the first iteration, for the progress messages
+	 * @return the number of the iteration after the last one
+	 */
+	private int miniBatchEuclidean(int iteration) {
+		int i, j, k;
+		int batchSize = Math.min(miniBatchSize, nPoints);
+		int sample[] = new int[batchSize];
+		int nearest[] = new int[batchSize];
+		double centroidWeight[] = new double[numberClusters];
+		RandomNumberGen randomGen = new RandomNumberGen();
+		for (int batch = 0; batch < miniBatchIterations; batch++) {
+			fireProgressStateChanged("Mini-batch iteration = " + (batch+1));
+			for (i = 0; i < batchSize; i++) {
+				sample[i] = randomGen.genUniformRandomNum(0, nPoints - 1);
+			}
+			// Assign the whole batch to the centroids before any of them moves
+			for (i = 0; i < batchSize; i++) {
+				double minDistSquared = distSquaredToCentroid(sample[i], 0);
+				nearest[i] = 0;
+				for (j = 1; j < numberClusters; j++) {
+					double distSquared = distSquaredToCentroid(sample[i], j);
+					if (distSquared < minDistSquared) {
+						minDistSquared = distSquared;
+						nearest[i] = j;
+					}
+				}
+			}
+			for (i = 0; i < batchSize; i++) {
+				int point = sample[i];
+				int group = nearest[i];
+				centroidWeight[group] += weight[point];
+				if (centroidWeight[group] <= 0.0) {
+					continue;
+				}
+				double eta = weight[point]/centroidWeight[group];
+				for (k = 0; k < nDims; k++) {
+					centroidPos[k][group] = (1.0 - eta)*centroidPos[k][group] + eta*pos[k][point];
+				}
+			}
+		} // for (int batch = 0; batch < miniBatchIterations; batch++)
+		return batchEuclidean(numberClusters, iteration, true, 1, null);
+	}
+	
+	/**
+	 * Returns the Euclidean squared distance, scaled by scale2 when the scales differ, from a point to a centroid.
+	 */
+	private double distSquaredToCentroid(int point, int cluster) {
+		double distSquared = 0.0;
+		double diff;
+		if (equalScale) {
+			for (int k = 0; k < nDims; k++) {
+				diff = pos[k][point] - centroidPos[k][cluster];
+				distSquared = distSquared + diff*diff;
+			}
+		}
+		else {
+			for (int k = 0; k < nDims; k++) {
+				diff = pos[k][point] - centroidPos[k][cluster];
+				distSquared = distSquared + scale2[k]*diff*diff;
+			}
+		}
+		return distSquared;
+	}
+	
+	/**
+	 * Splits the points into ranges and runs a task on each range, on the thread pool when there is more than one
+	 * task.
+	 */
+	private void runOverPoints(final int nTasks, final PointRangeTask rangeTask) {
+		final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+		for (int t = 0; t < nTasks; t++) {
+			final int task = t;
+			final int start = (int)((long)nPoints * t / nTasks);
+			final int end = (int)((long)nPoints * (t + 1) / nTasks);
+			Runnable runnable = new Runnable() {
+				public void run() {
+					try {
+						rangeTask.run(task, start, end);
+					}
+					finally {
+						doneSignal.countDown();
+					}
+				}
+			};
+			if (nTasks == 1) {
+				runnable.run();
+			}
+			else {
+				ThreadUtil.mipavThreadPool.execute(runnable);
+			}
+		}
+		try {
+			doneSignal.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Work on a range of points.
+	 */
+	private interface PointRangeTask {
+		void run(int task, int start, int end);
+	}
+	
+	/**
+	 * Finds the 2 points furthest apart for the maxmin initialization.  The rows of the pairwise search are split
+	 * among threads into ranges holding about the same number of pairs.
+	 * @return indices of the 2 points; the first pair in search order if several are equally far apart
+	 */
+	private int[] farthestPair() {
+		final int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, nPoints / 1000)) : 1;
+		final double taskMax[] = new double[nTasks];
+		final int taskPair[][] = new int[nTasks][2];
+		runOverPoints(nTasks, new PointRangeTask() {
+			public void run(int task, int start, int end) {
+				// Row i pairs with the nPoints-1-i rows after it, so map the even split onto the triangle
+				int firstRow = (int)Math.round(nPoints - Math.sqrt((double)nPoints * (nPoints - start)));
+				int lastRow = (int)Math.round(nPoints - Math.sqrt((double)nPoints * (nPoints - end)));
+				double maxDistSquared = 0.0;
+				double distSquared;
+				double diff;
+				for (int i = firstRow; i < lastRow; i++) {
+					for (int j = i+1; j < nPoints; j++) {
+						distSquared = 0.0;
+						if (equalScale) {
+							for (int k = 0; k < nDims; k++) {
+								diff = pos[k][i] - pos[k][j];
+								distSquared += diff*diff;
+							}
+						}
+						else {
+							for (int k = 0; k < nDims; k++) {
+								diff = pos[k][i] - pos[k][j];
+								distSquared += scale2[k]*diff*diff;
+							}
+						}
+						if (distSquared > maxDistSquared) {
+							maxDistSquared = distSquared;
+							taskPair[task][0] = i;
+							taskPair[task][1] = j;
+						}
+					}
+				}
+				taskMax[task] = maxDistSquared;
+			}
+		});
+		int pair[] = new int[2];
+		double maxDistSquared = 0.0;
+		for (int t = 0; t < nTasks; t++) {
+			if (taskMax[t] > maxDistSquared) {
+				maxDistSquared = taskMax[t];
+				pair = taskPair[t];
+			}
+		}
+		return pair;
+	}
+	
+	/**
+	 * Finds the point that, taken as a new centroid, most reduces the sum of the distances squared of the points to
+	 * their nearest centroids, for fast global k-means.  The candidate points are split among threads.
+	 * @param distSquaredToNearestCluster distance squared of each point to its nearest present centroid
+	 * @return index of the best new centroid point; the first one if several are equally good
+	 */
+	private int bestNewCentroidLocation(final double distSquaredToNearestCluster[]) {
+		final int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, nPoints / 1000)) : 1;
+		final double taskBnMax[] = new double[nTasks];
+		final int taskBest[] = new int[nTasks];
+		runOverPoints(nTasks, new PointRangeTask() {
+			public void run(int task, int start, int end) {
+				double bnMax = -Double.MAX_VALUE;
+				int best = start;
+				double distSquared;
+				double diff;
+				for (int initialClusterLocation = start; initialClusterLocation < end; initialClusterLocation++) {
+		    	    double bn = 0.0;
+		    	    if (equalScale) {
+			    	    for (int i = 0; i < nPoints; i++) {
+			    	       	distSquared = 0.0;
+			    	       	for (int j = 0; j < nDims; j++) {
+			    	       		diff = pos[j][initialClusterLocation] - pos[j][i];
+			    	       		distSquared += diff * diff;
+			    	       	}
+			    	       	bn += Math.max(distSquaredToNearestCluster[i] - distSquared, 0.0);
+			    	    } // for (int i = 0; i < nPoints; i++)
+		    	    }
+		    	    else { // not equal scale
+		    	       	for (int i = 0; i < nPoints; i++) {
+			    	       	distSquared = 0.0;
+			    	       	for (int j = 0; j < nDims; j++) {
+			    	       		diff = pos[j][initialClusterLocation] - pos[j][i];
+			    	       		distSquared += diff * diff * scale2[j];
+			    	       	}
+			    	       	bn += Math.max(distSquaredToNearestCluster[i] - distSquared, 0.0);
+			    	    } // for (int i = 0; i < nPoints; i++)	
+		    	    } // not equalScale
+		    	    if (bn > bnMax) {
+			    	   	bnMax = bn;
+			    	   	best = initialClusterLocation;
+			    	}
+		    	} // for (initialClusterLocation = start; initialClusterLocation < end; initialClusterLocation++)
+				taskBnMax[task] = bnMax;
+				taskBest[task] = best;
+			}
+		});
+		int best = taskBest[0];
+		double bnMax = taskBnMax[0];
+		for (int t = 1; t < nTasks; t++) {
+			if (taskBnMax[t] > bnMax) {
+				bnMax = taskBnMax[t];
+				best = taskBest[t];
+			}
+		}
+		return best;
+	}
+	
 	private void cityBlock() {
 		int startingPointIndex[];
     	int i, j, k, m, n;
@@ -2313,17 +2313,13 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
             return;
         }
 
-        int pix, i;
+        int pix;
         int xDim = srcImage.getExtents()[0];
         int yDim = srcImage.getExtents()[1];
         int sliceSize = xDim * yDim;
-        int x1, x2, y1, y2;
-        float distance;
-        float dist;
 
         float[] distBuffer;
-        int[] pointArray;
-        int pointIndex = 0;
+        BitSet edgePoints;
 
 
         fireProgressStateChanged("Distance image ...");
@@ -2332,7 +2328,7 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
 
 
         try {
-            pointArray = new int[sliceSize / 2];
+            edgePoints = new BitSet(sliceSize);
             distBuffer = new float[sliceSize];
         } catch (OutOfMemoryError e) {
             displayError("Algorithm Morphology2D.distanceMap: Out of memory");
@@ -2365,78 +2361,31 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
             if ((imgBuffer[pix] == 0) &&
                     ((imgBuffer[pix - xDim] != 0) || (imgBuffer[pix + 1] != 0) || (imgBuffer[pix + xDim] != 0) ||
                          (imgBuffer[pix - 1] != 0))) {
-                pointArray[pointIndex] = pix;
-                pointIndex++;
+                edgePoints.set(pix);
             }
         }
 
-        int mod = sliceSize / 50; // mod is 2 percent of length
-
-        float xRes = srcImage.getFileInfo(0).getResolutions()[0];
-        float xResSquared = xRes * xRes;
-        float yRes = srcImage.getFileInfo(0).getResolutions()[1];
-        float yResSquared = yRes * yRes;
-
         if (threadStopped) {
             finalize();
 
             return;
         }
 
-        for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
-
-            try {
+        float[] squaredDistance = edgeSquaredDistance(edgePoints);
 
-                if (((pix % mod) == 0)) {
-                    fireProgressStateChanged(Math.round((pix + 1) / ((float) sliceSize) * 100));
-                }
-            } catch (NullPointerException npe) {
+        fireProgressStateChanged(90);
 
-                if (threadStopped) {
-                    Preferences.debug("somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
-                                      Preferences.DEBUG_ALGORITHM);
-                }
-            }
+        for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
 
             if (entireImage || mask.get(pix)) {
                 if (imgBuffer[pix] > 0) {
-                    distance = 100000;
-                    x1 = pix % xDim;
-                    y1 = pix / xDim;
-
-                    for (i = 0; i < pointIndex; i++) {
-                        x2 = pointArray[i] % xDim;
-                        y2 = pointArray[i] / xDim;
-                        dist = ((x2 - x1) * (x2 - x1) * xResSquared) + ((y2 - y1) * (y2 - y1) * yResSquared);
-
-                        if (dist < distance) {
-                            distance = dist;
-                        }
-                    }
-
-                    distBuffer[pix] = -(float) Math.sqrt(distance);
-                }else {
-                    //distBuffer[pix] = processBuffer[pix];
-                	distance = 100000;
-                    x1 = pix % xDim;
-                    y1 = pix / xDim;
-
-                    for (i = 0; i < pointIndex; i++) {
-                        x2 = pointArray[i] % xDim;
-                        y2 = pointArray[i] / xDim;
-                        dist = ((x2 - x1) * (x2 - x1) * xResSquared) + ((y2 - y1) * (y2 - y1) * yResSquared);
-
-                        if (dist < distance) {
-                            distance = dist;
-                        }
-                    }
-
-                    distBuffer[pix] = (float) Math.sqrt(distance);
+                    distBuffer[pix] = -(float) Math.sqrt(Math.min(squaredDistance[pix], 100000));
+                } else {
+                    distBuffer[pix] = (float) Math.sqrt(Math.min(squaredDistance[pix], 100000));
                 }
-            }else {
+            } else {
                 distBuffer[pix] = imgBuffer[pix];
             }
-            
         }
 
         if (returnFlag == true) {
@@ -2485,17 +2434,13 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
             return;
         }
 
-        int pix, i;
+        int pix;
         int xDim = srcImage.getExtents()[0];
         int yDim = srcImage.getExtents()[1];
         int sliceSize = xDim * yDim;
-        int x1, x2, y1, y2;
-        float distance;
-        float dist;
 
         float[] distBuffer;
-        int[] pointArray;
-        int pointIndex = 0;
+        BitSet edgePoints;
 
 
         fireProgressStateChanged("Distance image ...");
@@ -2504,7 +2449,7 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
 
 
         try {
-            pointArray = new int[sliceSize / 2];
+            edgePoints = new BitSet(sliceSize);
             distBuffer = new float[sliceSize];
         } catch (OutOfMemoryError e) {
             displayError("Algorithm Morphology2D.distanceMap: Out of memory");
@@ -2537,57 +2482,26 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
             if ((imgBuffer[pix] == 0) &&
                     ((imgBuffer[pix - xDim] != 0) || (imgBuffer[pix + 1] != 0) || (imgBuffer[pix + xDim] != 0) ||
                          (imgBuffer[pix - 1] != 0))) {
-                pointArray[pointIndex] = pix;
-                pointIndex++;
+                edgePoints.set(pix);
             }
         }
 
-        int mod = sliceSize / 50; // mod is 2 percent of length
-
-        float xRes = srcImage.getFileInfo(0).getResolutions()[0];
-        float xResSquared = xRes * xRes;
-        float yRes = srcImage.getFileInfo(0).getResolutions()[1];
-        float yResSquared = yRes * yRes;
-
         if (threadStopped) {
             finalize();
 
             return;
         }
 
-        for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
-
-            try {
+        float[] squaredDistance = edgeSquaredDistance(edgePoints);
 
-                if (((pix % mod) == 0)) {
-                    fireProgressStateChanged(Math.round((pix + 1) / ((float) sliceSize) * 100));
-                }
-            } catch (NullPointerException npe) {
+        fireProgressStateChanged(90);
 
-                if (threadStopped) {
-                    Preferences.debug("somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
-                                      Preferences.DEBUG_ALGORITHM);
-                }
-            }
+        for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
 
             if (entireImage || mask.get(pix)) {
 
                 if (imgBuffer[pix] > 0) {
-                    distance = 100000;
-                    x1 = pix % xDim;
-                    y1 = pix / xDim;
-
-                    for (i = 0; i < pointIndex; i++) {
-                        x2 = pointArray[i] % xDim;
-                        y2 = pointArray[i] / xDim;
-                        dist = ((x2 - x1) * (x2 - x1) * xResSquared) + ((y2 - y1) * (y2 - y1) * yResSquared);
-
-                        if (dist < distance) {
-                            distance = dist;
-                        }
-                    }
-
-                    distBuffer[pix] = (float) Math.sqrt(distance);
+                    distBuffer[pix] = (float) Math.sqrt(Math.min(squaredDistance[pix], 100000));
                 }
             }
             else {
@@ -3323,24 +3237,20 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
             return;
         }
 
-        int pix, i;
+        int pix;
         int xDim = srcImage.getExtents()[0];
         int yDim = srcImage.getExtents()[1];
         int sliceSize = xDim * yDim;
-        int x1, x2, y1, y2;
-        float distance;
-        float dist;
 
         float[] distBuffer;
-        int[] pointArray;
-        int pointIndex = 0;
+        BitSet edgePoints;
 
         fireProgressStateChanged("Distance image ...");
         fireProgressStateChanged(0);
 
 
         try {
-            pointArray = new int[sliceSize / 2];
+            edgePoints = new BitSet(sliceSize);
             distBuffer = new float[sliceSize];
         } catch (OutOfMemoryError e) {
             displayError("Algorithm Morphology2D.distanceMap: Out of memory");
@@ -3355,71 +3265,36 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
         for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
 
             if ((pix < xDim) && (imgBuffer[pix] > 0)) {
-                pointArray[pointIndex] = pix;
-                pointIndex++;
+                edgePoints.set(pix);
             } else if (((pix % xDim) == (xDim - 1)) && (imgBuffer[pix] > 0)) {
-                pointArray[pointIndex] = pix;
-                pointIndex++;
+                edgePoints.set(pix);
             } else if (((pix % xDim) == 0) && (imgBuffer[pix] > 0)) {
-                pointArray[pointIndex] = pix;
-                pointIndex++;
+                edgePoints.set(pix);
             } else if ((pix > (sliceSize - xDim)) && (imgBuffer[pix] > 0)) {
-                pointArray[pointIndex] = pix;
-                pointIndex++;
+                edgePoints.set(pix);
             } else if ((pix > (xDim + 1)) && (pix < end) && (imgBuffer[pix] == 0) &&
                            ((imgBuffer[pix - xDim] != 0) || (imgBuffer[pix + 1] != 0) || (imgBuffer[pix + xDim] != 0) ||
                                 (imgBuffer[pix - 1] != 0))) {
-                pointArray[pointIndex] = pix;
-                pointIndex++;
+                edgePoints.set(pix);
             }
         }
 
-        int mod = sliceSize / 50; // mod is 2 percent of length
-
-        float xRes = srcImage.getFileInfo(0).getResolutions()[0];
-        float xResSquared = xRes * xRes;
-        float yRes = srcImage.getFileInfo(0).getResolutions()[1];
-        float yResSquared = yRes * yRes;
-
         if (threadStopped) {
             finalize();
 
             return;
         }
 
-        for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
-
-            try {
+        float[] squaredDistance = edgeSquaredDistance(edgePoints);
 
-                if (((pix % mod) == 0)) {
-                    fireProgressStateChanged(Math.round((pix + 1) / ((float) sliceSize) * 100));
-                }
-            } catch (NullPointerException npe) {
+        fireProgressStateChanged(90);
 
-                if (threadStopped) {
-                    Preferences.debug("somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
-                                      Preferences.DEBUG_ALGORITHM);
-                }
-            }
+        for (pix = 0; (pix < sliceSize) && !threadStopped; pix++) {
 
             if (entireImage || mask.get(pix)) {
 
                 if (imgBuffer[pix] > 0) {
-                    distance = 100000;
-                    x1 = pix % xDim;
-                    y1 = pix / xDim;
-
-                    for (i = 0; i < pointIndex; i++) {
-                        x2 = pointArray[i] % xDim;
-                        y2 = pointArray[i] / xDim;
-                        dist = ((x2 - x1) * (x2 - x1) * xResSquared) + ((y2 - y1) * (y2 - y1) * yResSquared);
-
-                        if (dist < distance) {
-                            distance = dist;
-                        }
-                    }
-
-                    distBuffer[pix] = (float) Math.sqrt(distance);
+                    distBuffer[pix] = (float) Math.sqrt(Math.min(squaredDistance[pix], 100000));
                 }
             }
             else {
@@ -3460,6 +3335,20 @@ public class AlgorithmMorphology2D extends AlgorithmBase {
         setCompleted(true);
     }
 
+    /**
+     * Computes the squared distance from every pixel to the nearest edge pixel with EuclideanDistanceTransform, using
+     * the pixel resolutions of the source image.
+     *
+     * @param   edgePoints  the edge pixels
+     *
+     * @return  the squared distances, infinite when there are no edge pixels
+     */
+    private float[] edgeSquaredDistance(BitSet edgePoints) {
+        return EuclideanDistanceTransform.squaredDistance(edgePoints, srcImage.getExtents(),
+                                                          srcImage.getFileInfo(0).getResolutions(), null,
+                                                          multiThreadingEnabled ? nthreads : 1);
+    }
+
     /**
      * Erodes a boolean or unsigned byte or unsigned short image using the indicated kernel and the indicated number of
      * executions.
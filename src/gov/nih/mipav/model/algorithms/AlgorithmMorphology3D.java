@@ -534,49 +534,8 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
             return;
         }
 
-        int pix;
-        final int xDim = srcImage.getExtents()[0];
-        final int yDim = srcImage.getExtents()[1];
-        final int zDim = srcImage.getExtents()[2];
-        final int imageLength = xDim * yDim * zDim;
-        short floodValue = 1;
-        int count = 0;
-
-        final int[] progressValues = getProgressValues();
-
-        this.setMaxProgressValue(ViewJProgressBar.getProgressFromInt(progressValues[0], progressValues[1], 95));
         deleteObjects(min, max, true);
 
-        this.setProgressValues(progressValues);
-
-        fireProgressStateChanged("Identifying objects ...");
-
-        final int mod = imageLength / 50;
-
-        // objects.removeAllElements();
-        for (pix = 0; (pix < imageLength) && !threadStopped; pix++) {
-
-            if ( ( (pix % mod) == 0)) {
-                fireProgressStateChanged(95 + Math.round( (pix + 1) / ((float) imageLength) * 5));
-            }
-
-            if (entireImage == true) {
-
-                if (imgBuffer[pix] > 0) {
-                    count = floodFill(processBuffer, pix, floodValue, imgBuffer[pix]);
-                    objects.addElement(new intObject(pix, floodValue, count));
-                    floodValue++;
-                }
-            } else if (mask.get(pix) == true) {
-
-                if (imgBuffer[pix] > 0) {
-                    count = floodFill(processBuffer, pix, floodValue, imgBuffer[pix]);
-                    objects.addElement(new intObject(pix, floodValue, count));
-                    floodValue++;
-                }
-            }
-        }
-
         if (threadStopped) {
             setCompleted(false);
             finalize();
@@ -1312,20 +1271,15 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
             return;
         }
 
-        int pix, i;
+        int pix;
         final int xDim = srcImage.getExtents()[0];
         final int yDim = srcImage.getExtents()[1];
         final int zDim = srcImage.getExtents()[2];
         final int sliceSize = xDim * yDim;
         final int volSize = xDim * yDim * zDim;
-        float distance;
-        float dist;
-        Point3D pt;
-        int diffx, diffy, diffz;
-        int x, y, z;
 
         float[] minDistanceBuffer;
-        final Vector<Point3D> edgePoints = new Vector<Point3D>();
+        final BitSet edgePoints = new BitSet(volSize);
 
         fireProgressStateChanged("Bg. distance image ...");
         fireProgressStateChanged(0);
@@ -1358,7 +1312,7 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
                     && ( (imgBuffer[pix - xDim] != 0) || (imgBuffer[pix + 1] != 0) || (imgBuffer[pix + xDim] != 0)
                             || (imgBuffer[pix - 1] != 0) || (imgBuffer[pix - sliceSize] != 0) || (imgBuffer[pix
                             + sliceSize] != 0))) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             }
         }
 
@@ -1370,92 +1324,21 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
             return;
         }
 
-        final int edgeLength = edgePoints.size();
-
-        final int mod = volSize / 50; // mod is 2 percent of length
+        final float[] squaredDistance = edgeSquaredDistance(edgePoints);
 
-        final float xRes = srcImage.getFileInfo(0).getResolutions()[0];
-        final float xResSquared = xRes * xRes;
-        final float yRes = srcImage.getFileInfo(0).getResolutions()[1];
-        final float yResSquared = yRes * yRes;
-        final float zRes = srcImage.getFileInfo(0).getResolutions()[2];
-        final float zResSquared = zRes * zRes;
-
-        pix = 0;
-
-        for (z = 0; (z < zDim) && !threadStopped; z++) {
+        fireProgressStateChanged(90);
 
-            for (y = 0; (y < yDim) && !threadStopped; y++) {
-
-                for (x = 0; (x < xDim) && !threadStopped; x++) {
-
-                    try {
-
-                        if ( ( (pix % mod) == 0)) {
-                            fireProgressStateChanged(Math.round( (pix + 1) / ((float) volSize) * 100));
-                        }
-                    } catch (final NullPointerException npe) {
-
-                        if (threadStopped) {
-                            Preferences
-                                    .debug(
-                                            "somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
-                                            Preferences.DEBUG_ALGORITHM);
-                        }
-                    }
-
-                    if (entireImage || mask.get(pix)) {
-
-                        if (imgBuffer[pix] > 0) {
-                            distance = 10000000;
-
-                            // Test the distace from point(x1, y1, z1) to all edge points and
-                            // put the min. distance into the distance buffer
-                            for (i = 0; i < edgeLength; i++) {
-                                pt = (Point3D) (edgePoints.elementAt(i));
-
-                                diffx = pt.x - x;
-                                diffy = pt.y - y;
-                                diffz = pt.z - z;
-
-                                dist = (diffx * diffx * xResSquared) + (diffy * diffy * yResSquared)
-                                        + (diffz * diffz * zResSquared);
-
-                                if (dist < distance) {
-                                    distance = dist;
-                                }
-                            }
-
-                            minDistanceBuffer[pix] = -(float) Math.sqrt(distance);
-                        }
-                    } // if (entireImage || mask.get(pix))
-                    else {
-                        distance = 10000000;
-
-                        // Test the distace from point(x1, y1, z1) to all edge points and
-                        // put the min. distance into the distance buffer
-                        for (i = 0; i < edgeLength; i++) {
-                            pt = (Point3D) (edgePoints.elementAt(i));
-
-                            diffx = pt.x - x;
-                            diffy = pt.y - y;
-                            diffz = pt.z - z;
-
-                            dist = (diffx * diffx * xResSquared) + (diffy * diffy * yResSquared)
-                                    + (diffz * diffz * zResSquared);
-
-                            if (dist < distance) {
-                                distance = dist;
-                            }
-                        } // for (i = 0; i < edgeLength; i++)
+        for (pix = 0; (pix < volSize) && !threadStopped; pix++) {
 
-                        minDistanceBuffer[pix] = (float) Math.sqrt(distance);
-                    }
+            if (entireImage || mask.get(pix)) {
 
-                    pix++;
+                if (imgBuffer[pix] > 0) {
+                    minDistanceBuffer[pix] = -(float) Math.sqrt(Math.min(squaredDistance[pix], 10000000));
                 }
+            } // if (entireImage || mask.get(pix))
+            else {
+                minDistanceBuffer[pix] = (float) Math.sqrt(Math.min(squaredDistance[pix], 10000000));
             }
-
         }
 
         if (returnFlag == true) {
@@ -1507,20 +1390,15 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
             return;
         }
 
-        int pix, i;
+        int pix;
         final int xDim = srcImage.getExtents()[0];
         final int yDim = srcImage.getExtents()[1];
         final int zDim = srcImage.getExtents()[2];
         final int sliceSize = xDim * yDim;
         final int volSize = xDim * yDim * zDim;
-        float distance;
-        float dist;
-        Point3D pt;
-        int diffx, diffy, diffz;
-        int x, y, z;
 
         float[] minDistanceBuffer;
-        final Vector<Point3D> edgePoints = new Vector<Point3D>();
+        final BitSet edgePoints = new BitSet(volSize);
 
         fireProgressStateChanged("Bg. distance image ...");
         fireProgressStateChanged(0);
@@ -1553,7 +1431,7 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
                     && ( (imgBuffer[pix - xDim] != 0) || (imgBuffer[pix + 1] != 0) || (imgBuffer[pix + xDim] != 0)
                             || (imgBuffer[pix - 1] != 0) || (imgBuffer[pix - sliceSize] != 0) || (imgBuffer[pix
                             + sliceSize] != 0))) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             }
         }
 
@@ -1565,73 +1443,21 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
             return;
         }
 
-        final int edgeLength = edgePoints.size();
-
-        final int mod = volSize / 50; // mod is 2 percent of length
-
-        final float xRes = srcImage.getFileInfo(0).getResolutions()[0];
-        final float xResSquared = xRes * xRes;
-        final float yRes = srcImage.getFileInfo(0).getResolutions()[1];
-        final float yResSquared = yRes * yRes;
-        final float zRes = srcImage.getFileInfo(0).getResolutions()[2];
-        final float zResSquared = zRes * zRes;
-
-        pix = 0;
-
-        for (z = 0; (z < zDim) && !threadStopped; z++) {
+        final float[] squaredDistance = edgeSquaredDistance(edgePoints);
 
-            for (y = 0; (y < yDim) && !threadStopped; y++) {
-
-                for (x = 0; (x < xDim) && !threadStopped; x++) {
-
-                    try {
-
-                        if ( ( (pix % mod) == 0)) {
-                            fireProgressStateChanged(Math.round( (pix + 1) / ((float) volSize) * 100));
-                        }
-                    } catch (final NullPointerException npe) {
-
-                        if (threadStopped) {
-                            Preferences
-                                    .debug(
-                                            "somehow you managed to cancel the algorithm and dispose the progressbar between checking for threadStopping and using it.",
-                                            Preferences.DEBUG_ALGORITHM);
-                        }
-                    }
+        fireProgressStateChanged(90);
 
-                    if (entireImage || mask.get(pix)) {
-
-                        if (imgBuffer[pix] > 0) {
-                            distance = 10000000;
-
-                            // Test the distace from point(x1, y1, z1) to all edge points and
-                            // put the min. distance into the distance buffer
-                            for (i = 0; i < edgeLength; i++) {
-                                pt = (Point3D) (edgePoints.elementAt(i));
-
-                                diffx = pt.x - x;
-                                diffy = pt.y - y;
-                                diffz = pt.z - z;
-
-                                dist = (diffx * diffx * xResSquared) + (diffy * diffy * yResSquared)
-                                        + (diffz * diffz * zResSquared);
-
-                                if (dist < distance) {
-                                    distance = dist;
-                                }
-                            }
+        for (pix = 0; (pix < volSize) && !threadStopped; pix++) {
 
-                            minDistanceBuffer[pix] = (float) Math.sqrt(distance);
-                        }
-                    } // if (entireImage || mask.get(pix))
-                    else {
-                        minDistanceBuffer[pix] = processBuffer[pix];
-                    }
+            if (entireImage || mask.get(pix)) {
 
-                    pix++;
+                if (imgBuffer[pix] > 0) {
+                    minDistanceBuffer[pix] = (float) Math.sqrt(Math.min(squaredDistance[pix], 10000000));
                 }
+            } // if (entireImage || mask.get(pix))
+            else {
+                minDistanceBuffer[pix] = processBuffer[pix];
             }
-
         }
 
         if (returnFlag == true) {
@@ -1685,40 +1511,20 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
         }
 
         int i, pix;
-        int count;
         final int xDim = srcImage.getExtents()[0];
         final int yDim = srcImage.getExtents()[1];
         final int zDim = srcImage.getExtents()[2];
         final int volumeLength = xDim * yDim * zDim;
-        short floodValue = 1;
-        short[] tmpBuffer;
 
         fireProgressStateChanged("Removing objects ...");
 
         objects.removeAllElements();
 
-        for (pix = 0; (pix < volumeLength) && !threadStopped; pix++) {
-
-            if (entireImage == true) {
-
-                if (imgBuffer[pix] > 0) {
-                    count = floodFill(processBuffer, pix, floodValue, imgBuffer[pix]);
-                    objects.addElement(new intObject(pix, floodValue, count));
-                    floodValue++;
-                }
-            } else if (mask.get(pix) == true) {
-
-                if (imgBuffer[pix] > 0) {
-                    count = floodFill(processBuffer, pix, floodValue, imgBuffer[pix]);
-                    objects.addElement(new intObject(pix, floodValue, count));
-                    floodValue++;
-                }
-            }
-        }
-
-        tmpBuffer = imgBuffer;
-        imgBuffer = processBuffer;
-        processBuffer = tmpBuffer;
+        // 6 connected objects of equal value, as the flood fills found them
+        final ConnectedComponents components = ConnectedComponents.labelObjects(imgBuffer, new int[] {xDim, yDim,
+                zDim}, 6, multiThreadingEnabled ? nthreads : 1);
+        final int[] labels = components.getLabels();
+        final int numComponents = components.getNumComponents();
 
         if (threadStopped) {
             setCompleted(false);
@@ -1728,53 +1534,60 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
             return;
         }
 
-        fireProgressStateChanged(10);
+        fireProgressStateChanged(55);
+
+        // Objects are numbered in the order of their first voxel, or of their first voxel inside the mask. Objects
+        // with no voxel inside the mask are left alone.
+        final int[] seeds = new int[numComponents];
+        int numSeeds = 0;
 
-        for (i = 0; i < objects.size(); i++) {
-            fireProgressStateChanged(Math.round(10 + ( (i + 1) / ((float) objects.size()) * 45)));
+        if (entireImage == true) {
 
-            if (entireImage == true) {
+            for (pix = 0; (pix < volumeLength) && (numSeeds < numComponents); pix++) {
 
-                if ( ( ((intObject) (objects.elementAt(i))).size < min)
-                        || ( ((intObject) (objects.elementAt(i))).size > max)) {
-                    floodFill(processBuffer, ((intObject) (objects.elementAt(i))).index, (short) 0,
-                            ((intObject) (objects.elementAt(i))).id);
-                    objects.removeElementAt(i);
-                    i--;
+                if (labels[pix] == (numSeeds + 1)) {
+                    seeds[numSeeds++] = pix;
                 }
-            } else if (mask.get( ((intObject) (objects.elementAt(i))).index) == true) {
-
-                if ( ( ((intObject) (objects.elementAt(i))).size < min)
-                        || ( ((intObject) (objects.elementAt(i))).size > max)) {
-                    floodFill(processBuffer, ((intObject) (objects.elementAt(i))).index, (short) 0,
-                            ((intObject) (objects.elementAt(i))).id);
-                    objects.removeElementAt(i);
-                    i--;
+            }
+        } else {
+            final boolean[] seeded = new boolean[numComponents + 1];
+
+            for (pix = mask.nextSetBit(0); (pix >= 0) && (pix < volumeLength); pix = mask.nextSetBit(pix + 1)) {
+
+                if ( (labels[pix] > 0) && !seeded[labels[pix]]) {
+                    seeded[labels[pix]] = true;
+                    seeds[numSeeds++] = pix;
                 }
             }
         }
 
-        if (threadStopped) {
-            setCompleted(false);
+        // new value of each component: its number among the objects kept, 0 if deleted, -1 if left alone
+        final int[] newValue = new int[numComponents + 1];
+        Arrays.fill(newValue, -1);
 
-            finalize();
+        for (i = 0; i < numSeeds; i++) {
+            final int label = labels[seeds[i]];
+            final int size = components.getVoxelCount(label);
 
-            return;
+            if ( (size < min) || (size > max)) {
+                newValue[label] = 0;
+            } else {
+                newValue[label] = objects.size() + 1;
+                objects.addElement(new intObject(seeds[i], (short) (objects.size() + 1), size));
+            }
         }
 
-        // relabel objects in order
-        for (i = 0; i < objects.size(); i++) {
-            fireProgressStateChanged(Math.round(55 + ( (i + 1) / ((float) objects.size()) * 45)));
+        for (pix = 0; pix < volumeLength; pix++) {
 
-            if (entireImage == true) {
-                floodFill(processBuffer, ((intObject) (objects.elementAt(i))).index, (short) (i + 1),
-                        ((intObject) (objects.elementAt(i))).id);
-            } else if (mask.get( ((intObject) (objects.elementAt(i))).index) == true) {
-                floodFill(processBuffer, ((intObject) (objects.elementAt(i))).index, (short) (i + 1),
-                        ((intObject) (objects.elementAt(i))).id);
+            if (newValue[labels[pix]] >= 0) {
+                processBuffer[pix] = (short) newValue[labels[pix]];
+            } else {
+                processBuffer[pix] = imgBuffer[pix];
             }
         }
 
+        fireProgressStateChanged(100);
+
         if (threadStopped) {
             setCompleted(false);
 
@@ -2417,20 +2230,15 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
             return;
         }
 
-        int pix, i;
+        int pix;
         final int xDim = srcImage.getExtents()[0];
         final int yDim = srcImage.getExtents()[1];
         final int zDim = srcImage.getExtents()[2];
         final int sliceSize = xDim * yDim;
         final int volSize = xDim * yDim * zDim;
-        float distance;
-        float dist;
-        int diffx, diffy, diffz;
-        int x, y, z;
-        Point3D pt;
 
         float[] minDistanceBuffer;
-        final Vector<Point3D> edgePoints = new Vector<Point3D>();
+        final BitSet edgePoints = new BitSet(volSize);
         fireProgressStateChanged("Distance image ...");
 
         try {
@@ -2448,24 +2256,24 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
         for (pix = 0; (pix < volSize) && !threadStopped; pix++) {
 
             if ( (pix < (sliceSize + xDim)) && (imgBuffer[pix] > 0)) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             } else if ( ( (pix % xDim) == (xDim - 1)) && (imgBuffer[pix] > 0)) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             } else if ( ( (pix % xDim) == 0) && (imgBuffer[pix] > 0)) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             } else if ( ( (pix % sliceSize) < xDim) && (imgBuffer[pix] > 0)) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             } else if ( ( (pix % sliceSize) > (sliceSize - xDim)) && (imgBuffer[pix] > 0)) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             } else if ( (pix > (volSize - sliceSize - 1)) && (imgBuffer[pix] > 0)) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             } else if ( (pix > (sliceSize + 1))
                     && (pix < end)
                     && (imgBuffer[pix] == 0)
                     && ( (imgBuffer[pix - xDim] != 0) || (imgBuffer[pix + 1] != 0) || (imgBuffer[pix + xDim] != 0)
                             || (imgBuffer[pix - 1] != 0) || (imgBuffer[pix - sliceSize] != 0) || (imgBuffer[pix
                             + sliceSize] != 0))) {
-                edgePoints.addElement(new Point3D(pix % xDim, (pix % sliceSize) / xDim, pix / sliceSize));
+                edgePoints.set(pix);
             }
         }
 
@@ -2477,69 +2285,20 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
             return;
         }
 
-        final int edgeLength = edgePoints.size();
+        final float[] squaredDistance = edgeSquaredDistance(edgePoints);
 
-        final int mod = volSize / 50; // mod is 2 percent of length
+        fireProgressStateChanged(90);
 
-        final float xRes = srcImage.getFileInfo(0).getResolutions()[0];
-        final float xResSquared = xRes * xRes;
-        final float yRes = srcImage.getFileInfo(0).getResolutions()[1];
-        final float yResSquared = yRes * yRes;
-        final float zRes = srcImage.getFileInfo(0).getResolutions()[2];
-        final float zResSquared = zRes * zRes;
-
-        pix = 0;
-
-        for (z = 0; (z < zDim) && !threadStopped; z++) {
-
-            for (y = 0; (y < yDim) && !threadStopped; y++) {
-
-                for (x = 0; (x < xDim) && !threadStopped; x++) {
-
-                    if ( ( (pix % mod) == 0)) {
-                        fireProgressStateChanged(Math.round( (pix + 1) / ((float) volSize) * 100));
-                    }
-
-                    /*
-                     * try {
-                     * 
-                     * if (((pix % mod) == 0)) { fireProgressStateChanged(Math.round((pix + 1) / ((float) volSize) *
-                     * 100)); } } catch (NullPointerException npe) {
-                     * 
-                     * if (threadStopped) { Preferences.debug("somehow you managed to cancel the algorithm and dispose
-                     * the progressbar between checking for threadStopping and using it.", Preferences.DEBUG_ALGORITHM); } }
-                     */
-                    if (entireImage || mask.get(pix)) {
-
-                        if (imgBuffer[pix] > 0) {
-                            distance = 10000000;
-
-                            // Test the distace from point(x1, y1, z1) to all edge points and
-                            // put the min. distance into the distance buffer
-                            for (i = 0; i < edgeLength; i++) {
-                                pt = (Point3D) (edgePoints.elementAt(i));
-
-                                diffx = pt.x - x;
-                                diffy = pt.y - y;
-                                diffz = pt.z - z;
-
-                                dist = (diffx * diffx * xResSquared) + (diffy * diffy * yResSquared)
-                                        + (diffz * diffz * zResSquared);
-
-                                if (dist < distance) {
-                                    distance = dist;
-                                }
-                            } // for (i = 0; i < edgeLength; i++)
+        for (pix = 0; (pix < volSize) && !threadStopped; pix++) {
 
-                            minDistanceBuffer[pix] = (float) Math.sqrt(distance);
-                        } // if (imgBuffer[pix] > 0)
-                    } // if (entireImage || mask.get(pix))
-                    else {
-                        minDistanceBuffer[pix] = imgBuffer[pix];
-                    }
+            if (entireImage || mask.get(pix)) {
 
-                    pix++;
+                if (imgBuffer[pix] > 0) {
+                    minDistanceBuffer[pix] = (float) Math.sqrt(Math.min(squaredDistance[pix], 10000000));
                 }
+            } // if (entireImage || mask.get(pix))
+            else {
+                minDistanceBuffer[pix] = imgBuffer[pix];
             }
         }
 
@@ -2576,6 +2335,19 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
         setCompleted(true);
     }
 
+    /**
+     * Computes the squared distance from every voxel to the nearest edge voxel with EuclideanDistanceTransform, using
+     * the voxel resolutions of the source image.
+     * 
+     * @param edgePoints the edge voxels
+     * 
+     * @return the squared distances, infinite when there are no edge voxels
+     */
+    private float[] edgeSquaredDistance(final BitSet edgePoints) {
+        return EuclideanDistanceTransform.squaredDistance(edgePoints, srcImage.getExtents(), srcImage.getFileInfo(0)
+                .getResolutions(), null, multiThreadingEnabled ? nthreads : 1);
+    }
+
     /**
      * Erodes a boolean, unsigned byte, or unsigned short image using the indicated kernel and the indicated number of
      * iterations.
@@ -2977,105 +2749,6 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
         }
     }
 
-    /**
-     * 3D flood fill that forms a short mask.
-     * 
-     * @param idBuffer buffer to store flooding results
-     * @param stIndex starting index indicating the starting location of the flood fill
-     * @param floodValue the value to flood the area with
-     * @param objValue DOCUMENT ME!
-     * 
-     * @return DOCUMENT ME!
-     */
-    private int floodFill(final short[] idBuffer, final int stIndex, final short floodValue, final short objValue) {
-        final int xDim = srcImage.getExtents()[0];
-        final int yDim = srcImage.getExtents()[1];
-        final int zDim = srcImage.getExtents()[2];
-        final int sliceSize = xDim * yDim;
-        int x, y, z;
-        int indexZ, indexY;
-        int pixCount = 0;
-
-        Point3D pt;
-        Point3D tempPt;
-        final Point3D seed3DPt = new Point3D( (stIndex % sliceSize) % xDim, (stIndex % sliceSize) / xDim,
-                (stIndex / sliceSize));
-        final Stack<Point3D> stack = new Stack<Point3D>();
-
-        if (imgBuffer[ (seed3DPt.z * sliceSize) + (seed3DPt.y * xDim) + seed3DPt.x] > 0) {
-            stack.push(seed3DPt);
-            imgBuffer[ (seed3DPt.z * sliceSize) + (seed3DPt.y * xDim) + seed3DPt.x] = 0;
-
-            while ( !stack.empty()) {
-                pt = (Point3D) stack.pop();
-                x = pt.x;
-                y = pt.y;
-                z = pt.z;
-
-                indexZ = z * sliceSize;
-                indexY = y * xDim;
-                idBuffer[indexZ + indexY + x] = floodValue;
-                pixCount++;
-
-                if ( (x + 1) < xDim) {
-
-                    if (imgBuffer[indexZ + indexY + x + 1] == objValue) {
-                        tempPt = new Point3D(x + 1, y, z);
-                        stack.push(tempPt);
-                        imgBuffer[indexZ + indexY + tempPt.x] = 0;
-                    }
-                }
-
-                if ( (x - 1) >= 0) {
-
-                    if (imgBuffer[indexZ + indexY + x - 1] == objValue) {
-                        tempPt = new Point3D(x - 1, y, z);
-                        stack.push(tempPt);
-                        imgBuffer[indexZ + indexY + tempPt.x] = 0;
-                    }
-                }
-
-                if ( (y + 1) < yDim) {
-
-                    if (imgBuffer[indexZ + ( (y + 1) * xDim) + x] == objValue) {
-                        tempPt = new Point3D(x, y + 1, z);
-                        stack.push(tempPt);
-                        imgBuffer[indexZ + (tempPt.y * xDim) + x] = 0;
-                    }
-                }
-
-                if ( (y - 1) >= 0) {
-
-                    if (imgBuffer[indexZ + ( (y - 1) * xDim) + x] == objValue) {
-                        tempPt = new Point3D(x, y - 1, z);
-                        stack.push(tempPt);
-                        imgBuffer[indexZ + (tempPt.y * xDim) + x] = 0;
-                    }
-                }
-
-                if ( (z + 1) < zDim) {
-
-                    if (imgBuffer[ ( (z + 1) * sliceSize) + indexY + x] == objValue) {
-                        tempPt = new Point3D(x, y, z + 1);
-                        stack.push(tempPt);
-                        imgBuffer[ (tempPt.z * sliceSize) + indexY + x] = 0;
-                    }
-                }
-
-                if ( (z - 1) >= 0) {
-
-                    if (imgBuffer[ ( (z - 1) * sliceSize) + indexY + x] == objValue) {
-                        tempPt = new Point3D(x, y, z - 1);
-                        stack.push(tempPt);
-                        imgBuffer[ (tempPt.z * sliceSize) + indexY + x] = 0;
-                    }
-                }
-            }
-        }
-
-        return pixCount;
-    }
-
     /**
      * This method returns whether or not pix is the index of an endpoint in tmpBuffer (it is assumed that location pix
      * is not the intensity of the background in tmpBuffer).
@@ -3815,9 +3488,6 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
 
         final int sliceSize = xDim * yDim;
         final int volSize = xDim * yDim * zDim;
-        float distance;
-        float dist;
-        float diffx, diffy;
         int z;
         int indexMax = 0;
         Vector3f pt = null;
@@ -3827,7 +3497,7 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
         float max;
         float cPt;
         float xRes, xResSquared, yRes, yResSquared;
-        Vector<Vector3f> edgePointsSlice = null;
+        final BitSet edgePointsSlice = new BitSet(sliceSize);
         Vector<Vector3f> uPointsSlice = null;
         Vector<Vector3f> uPointsSliceOrdered = null;
 
@@ -3836,7 +3506,6 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
 
         try {
             minDistanceBuffer = new float[sliceSize];
-            edgePointsSlice = new Vector<Vector3f>();
             uPointsSlice = new Vector<Vector3f>();
             uPointsSliceOrdered = new Vector<Vector3f>();
             maxPt = new Vector3f();
@@ -3914,53 +3583,39 @@ public class AlgorithmMorphology3D extends AlgorithmBase {
 
         // We have choosen to find ult. points on a slice by slice basis
         for (z = 0; (z < zDim) && !threadStopped; z++) {
-            edgePointsSlice.removeAllElements();
+            edgePointsSlice.clear();
 
             for (vox = z * sliceSize; vox < ( (z + 1) * sliceSize); vox++) {
 
                 if ( ( (vox % xDim) == 0) && (imgBuffer[vox] > 0)) {
-                    edgePointsSlice.addElement(new Vector3f(vox % xDim, (vox % sliceSize) / xDim, zDim));
+                    edgePointsSlice.set(vox % sliceSize);
                 } else if ( ( (vox % xDim) == (xDim - 1)) && (imgBuffer[vox] > 0)) {
-                    edgePointsSlice.addElement(new Vector3f(vox % xDim, (vox % sliceSize) / xDim, zDim));
+                    edgePointsSlice.set(vox % sliceSize);
                 } else if ( ( (vox % sliceSize) == (sliceSize - 1)) && (imgBuffer[vox] > 0)) {
-                    edgePointsSlice.addElement(new Vector3f(vox % xDim, (vox % sliceSize) / xDim, zDim));
+                    edgePointsSlice.set(vox % sliceSize);
                 } else if ( ( (vox % sliceSize) < xDim) && (imgBuffer[vox] > 0)) {
-                    edgePointsSlice.addElement(new Vector3f(vox % xDim, (vox % sliceSize) / xDim, zDim));
+                    edgePointsSlice.set(vox % sliceSize);
                 } else if ( ( (vox % sliceSize) > (sliceSize - xDim)) && (imgBuffer[vox] > 0)) {
-                    edgePointsSlice.addElement(new Vector3f(vox % xDim, (vox % sliceSize) / xDim, zDim));
+                    edgePointsSlice.set(vox % sliceSize);
                 } else if ( (vox > xDim)
                         && (vox < (volSize - sliceSize - xDim))
                         && (imgBuffer[vox] == 0)
                         && ( (imgBuffer[vox - xDim] != 0) || (imgBuffer[vox + 1] != 0) || (imgBuffer[vox + xDim] != 0) || (imgBuffer[vox - 1] != 0))) {
-                    edgePointsSlice.addElement(new Vector3f(vox % xDim, (vox % sliceSize) / xDim, zDim));
+                    edgePointsSlice.set(vox % sliceSize);
                 }
             }
 
             // calculate distance image of objects based on edge pixels
+            final float[] squaredDistance = EuclideanDistanceTransform.squaredDistance(edgePointsSlice, new int[] {
+                    xDim, yDim}, srcImage.getFileInfo(0).getResolutions(), null, multiThreadingEnabled ? nthreads : 1);
+
             for (voxel = z * sliceSize, vox = 0; vox < sliceSize; voxel++, vox++) {
                 minDistanceBuffer[vox] = 0;
 
                 if (entireImage || mask.get(vox)) {
 
                     if (imgBuffer[voxel] > 0) {
-                        distance = 10000000;
-
-                        // Test the distace from point(x1, y1) to all edge points and
-                        // put the min. distance into the distance buffer
-                        for (i = 0; i < edgePointsSlice.size(); i++) {
-                            pt = (Vector3f) (edgePointsSlice.elementAt(i));
-
-                            diffx = pt.X - (vox % xDim);
-                            diffy = pt.Y - (vox / xDim);
-
-                            dist = (diffx * diffx * xResSquared) + (diffy * diffy * yResSquared);
-
-                            if (dist < distance) {
-                                distance = dist;
-                            }
-                        }
-
-                        minDistanceBuffer[vox] = (float) Math.sqrt(distance);
+                        minDistanceBuffer[vox] = (float) Math.sqrt(Math.min(squaredDistance[vox], 10000000));
                     }
                 }
             }
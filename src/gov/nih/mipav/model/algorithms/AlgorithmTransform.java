@@ -139,9 +139,6 @@ public class AlgorithmTransform extends AlgorithmBase {
     /** DOCUMENT ME! */
     private double[] imgBuf = null;
 
-    /** DOCUMENT ME! */
-    private float[] imgBuf2 = null;
-
     /** DOCUMENT ME! */
     private int imgLength, imgLength2; // length of buffers used for import and export Data
 
@@ -4539,7 +4536,6 @@ public class AlgorithmTransform extends AlgorithmBase {
         destImage = null;
         maskImage = null;
         imgBuf = null;
-        imgBuf2 = null;
         System.gc();
     }
 
@@ -5207,6 +5203,216 @@ public class AlgorithmTransform extends AlgorithmBase {
         }
     }
 
+    /**
+     * Creates the resampler of the output for a transformation: of a volume, or of a slice for 2D images and 2.5D
+     * transformations.
+     * 
+     * @param kTM transformation from output millimeters to input millimeters
+     * 
+     * @return the resampler
+     */
+    private VolumeResampler newResampler(final TransMatrix kTM) {
+
+        if ( (DIM == 2) || do25D) {
+            return new VolumeResampler(new int[] {oXdim, oYdim}, new float[] {oXres, oYres},
+                    pad ? AlgorithmTransform.margins : null, new float[] {iXres, iYres}, kTM);
+        }
+
+        return new VolumeResampler(new int[] {oXdim, oYdim, oZdim}, new float[] {oXres, oYres, oZres},
+                pad ? AlgorithmTransform.margins : null, new float[] {iXres, iYres, iZres}, kTM);
+    }
+
+    /**
+     * Returns the number of output voxels resampled at a time: those of a volume, or of a slice for 2D images and 2.5D
+     * transformations.
+     * 
+     * @return the number of voxels
+     */
+    private int getResampledLength() {
+
+        if ( (DIM == 2) || do25D) {
+            return oXdim * oYdim;
+        }
+
+        return oXdim * oYdim * oZdim;
+    }
+
+    /**
+     * Returns the number of volumes, or of slices for 2D images and 2.5D transformations, resampled one after the
+     * other.
+     * 
+     * @return the number of volumes or slices
+     */
+    private int getResampledCount() {
+
+        if (DIM == 2) {
+            return 1;
+        } else if (do25D) {
+            return (DIM == 4) ? (oZdim * oTdim) : oZdim;
+        }
+
+        return (DIM == 4) ? oTdim : 1;
+    }
+
+    /**
+     * Exports a volume, or a slice for 2D images and 2.5D transformations, of the source image into the input buffer
+     * and prepares the interpolation kernel for it. The first one was exported by transform().
+     * 
+     * @param imgBuf input buffer
+     * @param setup prepares the interpolation kernel, or null if it needs no preparation
+     * @param volume index of the volume or slice
+     * 
+     * @throws IOException if the source image cannot be exported
+     */
+    private void loadResampled(final double[] imgBuf, final Runnable setup, final int volume) throws IOException {
+
+        if (volume > 0) {
+            srcImage.exportData(volume * imgLength, imgLength, imgBuf);
+        }
+
+        if (setup != null) {
+            setup.run();
+        }
+    }
+
+    /**
+     * Resamples the output one volume, or one slice for 2D images and 2.5D transformations, at a time with an
+     * interpolation kernel, splitting it among threads, and stores it in the destination image.
+     * 
+     * @param imgBuf input buffer read by the interpolation kernel
+     * @param interpolator the interpolation kernel
+     * @param setup prepares the interpolation kernel for each volume or slice in imgBuf, or null if it needs no
+     *            preparation
+     * @param kTM transformation from output millimeters to input millimeters
+     */
+    private void resample(final double[] imgBuf, final VolumeResampler.Interpolator interpolator,
+            final Runnable setup, final TransMatrix kTM) {
+        final int outLength = getResampledLength();
+        final double[] tempBuf = new double[outLength];
+
+        try {
+            newResampler(kTM).resampleSeries(interpolator, tempBuf, getResampledCount(),
+                    new VolumeResampler.Series() {
+                        public void load(final int volume) throws IOException {
+                            loadResampled(imgBuf, setup, volume);
+                        }
+
+                        public void store(final int volume) throws IOException {
+                            destImage.importData(volume * outLength, tempBuf, false);
+                        }
+                    }, multiThreadingEnabled ? nthreads : 1, this, !suppressProgressBar);
+        } catch (final IOException error) {
+            displayError("AlgorithmTransform: IOException on image data.");
+
+            setCompleted(false);
+        }
+    }
+
+    /**
+     * Resamples the output of a color image one volume, or one slice for 2D images and 2.5D transformations, at a time
+     * with an interpolation kernel, splitting it among threads, and stores it in the destination image.
+     * 
+     * @param imgBuf input buffer read by the interpolation kernel
+     * @param interpolator the interpolation kernel
+     * @param setup prepares the interpolation kernel for each volume or slice in imgBuf, or null if it needs no
+     *            preparation
+     * @param kTM transformation from output millimeters to input millimeters
+     */
+    private void resampleC(final double[] imgBuf, final VolumeResampler.ColorInterpolator interpolator,
+            final Runnable setup, final TransMatrix kTM) {
+        final int outLength = 4 * getResampledLength();
+        final float[] tempBuf = new float[outLength];
+
+        try {
+            newResampler(kTM).resampleSeries(interpolator, tempBuf, getResampledCount(),
+                    new VolumeResampler.Series() {
+                        public void load(final int volume) throws IOException {
+                            loadResampled(imgBuf, setup, volume);
+                        }
+
+                        public void store(final int volume) throws IOException {
+                            destImage.importData(volume * outLength, tempBuf, false);
+                        }
+                    }, multiThreadingEnabled ? nthreads : 1, this, !suppressProgressBar);
+        } catch (final IOException error) {
+            displayError("AlgorithmTransform: IOException on image data.");
+
+            setCompleted(false);
+
+            return;
+        }
+
+        destImage.calcMinMax();
+    }
+
+    /**
+     * Finds the range of each channel of an input buffer.
+     * 
+     * @param imgBuf input buffer, with the channels of a voxel one after the other
+     * @param min receives the minimum of each channel
+     * @param max receives the maximum of each channel
+     */
+    private static void findRange(final double[] imgBuf, final double[] min, final double[] max) {
+        final int nChannels = min.length;
+
+        for (int c = 0; c < nChannels; c++) {
+            min[c] = Float.MAX_VALUE;
+            max[c] = -Float.MAX_VALUE;
+        }
+
+        for (int i = 0; i < imgBuf.length; i += nChannels) {
+
+            for (int c = 0; c < nChannels; c++) {
+
+                if (imgBuf[i + c] > max[c]) {
+                    max[c] = imgBuf[i + c];
+                }
+
+                if (imgBuf[i + c] < min[c]) {
+                    min[c] = imgBuf[i + c];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the largest value of a color channel of the source image, for the setup of the color interpolation
+     * kernels.
+     * 
+     * @return the largest value of a channel
+     */
+    private float argbMax() {
+        return (srcImage.getType() == ModelStorageBase.ARGB_USHORT) ? 65535.0f : 255.0f;
+    }
+
+    /**
+     * Stores the interpolated channels of a color voxel.
+     * 
+     * @param dest output buffer
+     * @param index index in dest of the alpha channel
+     * @param value the interpolated channels
+     */
+    private static void setColor(final float[] dest, final int index, final double[] value) {
+        dest[index] = (float) value[0];
+        dest[index + 1] = (float) value[1];
+        dest[index + 2] = (float) value[2];
+        dest[index + 3] = (float) value[3];
+    }
+
+    /**
+     * Stores the same value in all the channels of a color voxel.
+     * 
+     * @param dest output buffer
+     * @param index index in dest of the alpha channel
+     * @param value the value of the channels
+     */
+    private static void setColor(final float[] dest, final int index, final float value) {
+        dest[index] = value;
+        dest[index + 1] = value;
+        dest[index + 2] = value;
+        dest[index + 3] = value;
+    }
+
     /**
      * Creates buffer for new image, prepares transformation matrix, and calls transform function for interpolation
      * specified.
@@ -5280,18 +5486,9 @@ public class AlgorithmTransform extends AlgorithmBase {
                 srcImage.exportData(0, imgLength, imgBuf);
             }
 
-            if (bufferFactor == 4) {
-
-                if ( (DIM >= 3) && ( !do25D)) {
-                    if (srcImage.getType() == ModelStorageBase.ARGB) {
-                        // Reduce needed memory by a factor of 4
-                        byteBuf2 = new byte[4 * oXdim * oYdim * oZdim];
-                    } else {
-                        imgBuf2 = new float[4 * oXdim * oYdim * oZdim];
-                    }
-                } else {
-                    imgBuf2 = new float[4 * oXdim * oYdim];
-                }
+            if ( (byteBuf != null) && (DIM >= 3) && ( !do25D)) {
+                // Reduce needed memory by a factor of 4
+                byteBuf2 = new byte[4 * oXdim * oYdim * oZdim];
             }
 
             if (!suppressProgressBar) {
@@ -5319,26 +5516,26 @@ public class AlgorithmTransform extends AlgorithmBase {
             if ( (do25D) && (DIM == 4)) {
 
                 if (interp == AlgorithmTransform.NEAREST_NEIGHBOR) {
-                    transformNearestNeighbor4Dim2D(imgBuf, xfrm);
+                    transformNearestNeighbor2D(imgBuf, xfrm);
                 } else if (interp == AlgorithmTransform.BILINEAR) {
-                    transformBilinear4D(imgBuf, xfrm);
+                    transformBilinear3D(imgBuf, xfrm);
                 } else if (interp == AlgorithmTransform.BSPLINE3) {
                     transformAlgorithmBspline2D(imgBuf, xfrm, 3);
                 } else if (interp == AlgorithmTransform.BSPLINE4) {
                     transformAlgorithmBspline2D(imgBuf, xfrm, 4);
                 } else if (interp == AlgorithmTransform.CUBIC_LAGRANGIAN) {
-                    transformCubicLagrangian4Dim2D(imgBuf, xfrm, clip);
+                    transformCubicLagrangian2D(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.QUINTIC_LAGRANGIAN) {
-                    transformQuinticLagrangian4Dim2D(imgBuf, xfrm, clip);
+                    transformQuinticLagrangian2D(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.HEPTIC_LAGRANGIAN) {
-                    transformHepticLagrangian4Dim2D(imgBuf, xfrm, clip);
+                    transformHepticLagrangian2D(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.WSINC) {
-                    transformWSinc4Dim2D(imgBuf, xfrm, clip);
+                    transformWSinc2D(imgBuf, xfrm, clip);
                 }
             } else if ( (do25D) && (DIM == 3)) {
 
                 if (interp == AlgorithmTransform.NEAREST_NEIGHBOR) {
-                    transformNearestNeighbor3Dim2D(imgBuf, xfrm);
+                    transformNearestNeighbor2D(imgBuf, xfrm);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
@@ -5358,22 +5555,22 @@ public class AlgorithmTransform extends AlgorithmBase {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.CUBIC_LAGRANGIAN) {
-                    transformCubicLagrangian3Dim2D(imgBuf, xfrm, clip);
+                    transformCubicLagrangian2D(imgBuf, xfrm, clip);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.QUINTIC_LAGRANGIAN) {
-                    transformQuinticLagrangian3Dim2D(imgBuf, xfrm, clip);
+                    transformQuinticLagrangian2D(imgBuf, xfrm, clip);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.HEPTIC_LAGRANGIAN) {
-                    transformHepticLagrangian3Dim2D(imgBuf, xfrm, clip);
+                    transformHepticLagrangian2D(imgBuf, xfrm, clip);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.WSINC) {
-                    transformWSinc3Dim2D(imgBuf, xfrm, clip);
+                    transformWSinc2D(imgBuf, xfrm, clip);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
@@ -5381,21 +5578,21 @@ public class AlgorithmTransform extends AlgorithmBase {
             } else if (DIM == 4) {
 
                 if (interp == AlgorithmTransform.TRILINEAR) {
-                    transformTrilinear4D(imgBuf, xfrm);
+                    transformTrilinear(imgBuf, xfrm);
                 } else if (interp == AlgorithmTransform.BSPLINE3) {
-                    transformAlgorithmBspline4D(imgBuf, xfrm, 3);
+                    transformAlgorithmBspline3D(imgBuf, xfrm, 3);
                 } else if (interp == AlgorithmTransform.BSPLINE4) {
-                    transformAlgorithmBspline4D(imgBuf, xfrm, 4);
+                    transformAlgorithmBspline3D(imgBuf, xfrm, 4);
                 } else if (interp == AlgorithmTransform.NEAREST_NEIGHBOR) {
-                    transformNearestNeighbor4D(imgBuf, xfrm);
+                    transformNearestNeighbor3D(imgBuf, xfrm);
                 } else if (interp == AlgorithmTransform.CUBIC_LAGRANGIAN) {
-                    transformCubicLagrangian4D(imgBuf, xfrm, clip);
+                    transformCubicLagrangian3D(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.QUINTIC_LAGRANGIAN) {
-                    transformQuinticLagrangian4D(imgBuf, xfrm, clip);
+                    transformQuinticLagrangian3D(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.HEPTIC_LAGRANGIAN) {
-                    transformHepticLagrangian4D(imgBuf, xfrm, clip);
+                    transformHepticLagrangian3D(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.WSINC) {
-                    transformWSinc4D(imgBuf, xfrm, clip);
+                    transformWSinc3D(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.BILINEAR) {
                     displayError("Cannot select bilinear interpolation for 4D");
 
@@ -5518,33 +5715,33 @@ public class AlgorithmTransform extends AlgorithmBase {
             if ( (do25D) && (DIM == 4)) {
 
                 if (interp == AlgorithmTransform.NEAREST_NEIGHBOR) {
-                    transformNearestNeighbor4Dim2DC(imgBuf, imgBuf2, xfrm);
+                    transformNearestNeighbor2DC(imgBuf, xfrm);
                 } else if (interp == AlgorithmTransform.BILINEAR) {
-                    transformBilinear4DC(imgBuf, imgBuf2, xfrm);
+                    transformBilinearC(imgBuf, xfrm);
                 } else if (interp == AlgorithmTransform.BSPLINE3) {
                     transformAlgorithmBspline2DC(imgBuf, xfrm, 3);
                 } else if (interp == AlgorithmTransform.BSPLINE4) {
                     transformAlgorithmBspline2DC(imgBuf, xfrm, 4);
                 } else if (interp == AlgorithmTransform.CUBIC_LAGRANGIAN) {
-                    transformCubicLagrangian4Dim2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformCubicLagrangian2DC(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.QUINTIC_LAGRANGIAN) {
-                    transformQuinticLagrangian4Dim2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformQuinticLagrangian2DC(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.HEPTIC_LAGRANGIAN) {
-                    transformHepticLagrangian4Dim2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformHepticLagrangian2DC(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.WSINC) {
-                    transformWSinc4Dim2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformWSinc2DC(imgBuf, xfrm, clip);
                 }
             } else if ( (do25D) && (DIM == 3)) {
 
                 if (interp == AlgorithmTransform.NEAREST_NEIGHBOR) {
-                    transformNearestNeighbor3Dim2DC(imgBuf, imgBuf2, xfrm);
+                    transformNearestNeighbor2DC(imgBuf, xfrm);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 }
 
                 else if (interp == AlgorithmTransform.BILINEAR) {
-                    transformBilinear3DC(imgBuf, imgBuf2, xfrm);
+                    transformBilinearC(imgBuf, xfrm);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
@@ -5559,22 +5756,22 @@ public class AlgorithmTransform extends AlgorithmBase {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.CUBIC_LAGRANGIAN) {
-                    transformCubicLagrangian3Dim2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformCubicLagrangian2DC(imgBuf, xfrm, clip);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.QUINTIC_LAGRANGIAN) {
-                    transformQuinticLagrangian3Dim2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformQuinticLagrangian2DC(imgBuf, xfrm, clip);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.HEPTIC_LAGRANGIAN) {
-                    transformHepticLagrangian3Dim2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformHepticLagrangian2DC(imgBuf, xfrm, clip);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.WSINC) {
-                    transformWSinc3Dim2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformWSinc2DC(imgBuf, xfrm, clip);
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform25DVOI(srcImage, imgBuf, xfrm);
                     }
@@ -5585,22 +5782,22 @@ public class AlgorithmTransform extends AlgorithmBase {
                         // Save a factor of 4 in memory
                         transformTrilinear4DByteC(byteBuf, byteBuf2, xfrm);
                     } else {
-                        transformTrilinear4DC(imgBuf, imgBuf2, xfrm);
+                        transformTrilinearC(imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.BSPLINE3) {
-                    transformAlgorithmBspline4DC(imgBuf, xfrm, 3);
+                    transformAlgorithmBspline3DC(imgBuf, xfrm, 3);
                 } else if (interp == AlgorithmTransform.BSPLINE4) {
-                    transformAlgorithmBspline4DC(imgBuf, xfrm, 4);
+                    transformAlgorithmBspline3DC(imgBuf, xfrm, 4);
                 } else if (interp == AlgorithmTransform.NEAREST_NEIGHBOR) {
-                    transformNearestNeighbor4DC(imgBuf, imgBuf2, xfrm);
+                    transformNearestNeighbor3DC(imgBuf, xfrm);
                 } else if (interp == AlgorithmTransform.CUBIC_LAGRANGIAN) {
-                    transformCubicLagrangian4DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformCubicLagrangian3DC(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.QUINTIC_LAGRANGIAN) {
-                    transformQuinticLagrangian4DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformQuinticLagrangian3DC(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.HEPTIC_LAGRANGIAN) {
-                    transformHepticLagrangian4DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformHepticLagrangian3DC(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.WSINC) {
-                    transformWSinc4DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformWSinc3DC(imgBuf, xfrm, clip);
                 } else if (interp == AlgorithmTransform.BILINEAR) {
                     displayError("Cannot specify bilinear interpolation for 4D");
 
@@ -5617,7 +5814,7 @@ public class AlgorithmTransform extends AlgorithmBase {
                             transform3DVOIByte(srcImage, byteBuf, xfrm);
                         }
                     } else {
-                        transformTrilinearC(imgBuf, imgBuf2, xfrm);
+                        transformTrilinearC(imgBuf, xfrm);
 
                         if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                             transform3DVOI(srcImage, imgBuf, xfrm);
@@ -5636,31 +5833,31 @@ public class AlgorithmTransform extends AlgorithmBase {
                         transform3DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.NEAREST_NEIGHBOR) {
-                    transformNearestNeighbor3DC(imgBuf, imgBuf2, xfrm);
+                    transformNearestNeighbor3DC(imgBuf, xfrm);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform3DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.CUBIC_LAGRANGIAN) {
-                    transformCubicLagrangian3DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformCubicLagrangian3DC(imgBuf, xfrm, clip);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform3DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.QUINTIC_LAGRANGIAN) {
-                    transformQuinticLagrangian3DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformQuinticLagrangian3DC(imgBuf, xfrm, clip);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform3DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.HEPTIC_LAGRANGIAN) {
-                    transformHepticLagrangian3DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformHepticLagrangian3DC(imgBuf, xfrm, clip);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform3DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.WSINC) {
-                    transformWSinc3DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformWSinc3DC(imgBuf, xfrm, clip);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform3DVOI(srcImage, imgBuf, xfrm);
@@ -5673,13 +5870,13 @@ public class AlgorithmTransform extends AlgorithmBase {
             } else if (DIM == 2) {
 
                 if (interp == AlgorithmTransform.BILINEAR) {
-                    transformBilinearC(imgBuf, imgBuf2, xfrm);
+                    transformBilinearC(imgBuf, xfrm);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform2DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.NEAREST_NEIGHBOR) {
-                    transformNearestNeighbor2DC(imgBuf, imgBuf2, xfrm);
+                    transformNearestNeighbor2DC(imgBuf, xfrm);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform2DVOI(srcImage, imgBuf, xfrm);
@@ -5697,25 +5894,25 @@ public class AlgorithmTransform extends AlgorithmBase {
                         transform2DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.CUBIC_LAGRANGIAN) {
-                    transformCubicLagrangian2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformCubicLagrangian2DC(imgBuf, xfrm, clip);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform2DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.QUINTIC_LAGRANGIAN) {
-                    transformQuinticLagrangian2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformQuinticLagrangian2DC(imgBuf, xfrm, clip);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform2DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.HEPTIC_LAGRANGIAN) {
-                    transformHepticLagrangian2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformHepticLagrangian2DC(imgBuf, xfrm, clip);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform2DVOI(srcImage, imgBuf, xfrm);
                     }
                 } else if (interp == AlgorithmTransform.WSINC) {
-                    transformWSinc2DC(imgBuf, imgBuf2, xfrm, clip);
+                    transformWSinc2DC(imgBuf, xfrm, clip);
 
                     if ( (transformVOI == true) && (srcImage.getVOIs().size() != 0)) {
                         transform2DVOI(srcImage, imgBuf, xfrm);
@@ -6694,7650 +6891,934 @@ public class AlgorithmTransform extends AlgorithmBase {
     }
 
     /**
-     * Transforms and resamples volume using bilinear interpolation.
+     * Transforms and resamples a 2D image using bilinear interpolation.
      * 
      * @param imgBuf Image array
-     * @param kTM Matrix to be applied
+     * @param kTM Transformation matrix to be applied
      */
     private void transformBilinear(final double[] imgBuf, final TransMatrix kTM) {
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        int x0, y0;
-        double j1, j2;
-        double value;
-        double imm, jmm;
-        int deltaX, deltaY;
-
-        final int mod = Math.max(1, oYdim / 25);
-
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
+        resample(imgBuf, new VolumeResampler.Trilinear(imgBuf, new int[] {iXdim, iYdim, 1}, fillValue), null, kTM);
+    }
 
-        int position;
-        double dx, dy, dx1, dy1;
+    /**
+     * Transforms and resamples each slice of a 3D or 4D image using bilinear interpolation.
+     * 
+     * @param imgBuf Image array
+     * @param kTM Transformation matrix to be applied
+     */
+    private void transformBilinear3D(final double[] imgBuf, final TransMatrix kTM) {
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
 
-        int index = 0;
+                    if ( (X >= (iXdim - 1)) || (Y >= (iYdim - 1))) { // cannot interpolate on last X or Y
+                        return imgBuf[ (Math.min((int) (Y + 0.5), iYdim - 1) * iXdim)
+                                + Math.min((int) (X + 0.5), iXdim - 1)];
+                    }
 
-        for (j = 0; (j < oYdim) && !threadStopped; j++) {
+                    final double x0 = X - (int) X;
+                    final double y0 = Y - (int) Y;
+                    final double x1 = 1 - x0;
+                    final double y1 = 1 - y0;
+                    final int X0pos = (int) X;
+                    final int Y0pos = (int) Y * iXdim;
+                    final int X1pos = X0pos + 1;
+                    final int Y1pos = Y0pos + iXdim;
 
-            if ((!suppressProgressBar) && ( (j % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) j / oYdim * 100) + 0.5f));
-            }
+                    return (x1 * y1 * imgBuf[Y0pos + X0pos]) + (x0 * y1 * imgBuf[Y0pos + X1pos])
+                            + (x1 * y0 * imgBuf[Y1pos + X0pos]) + (x0 * y0 * imgBuf[Y1pos + X1pos]);
+                }
 
-            if (pad) {
-                jAdj = j - AlgorithmTransform.margins[1];
-            } else {
-                jAdj = j;
+                return fillValue; // if voxel is transformed out of bounds
             }
+        }, null, kTM);
+    }
 
-            jmm = jAdj * oYres;
-            j1 = (jmm * T01) + T02;
-            j2 = (jmm * T11) + T12;
+    /**
+     * Transforms and resamples a 2D color image, or each slice of a 3D or 4D color image, using bilinear
+     * interpolation.
+     * 
+     * @param imgBuf Input image array
+     * @param kTM Transformation matrix to be applied
+     */
+    private void transformBilinearC(final double[] imgBuf, final TransMatrix kTM) {
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
+                if ( ! ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim))) {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
 
-                // transform i,j,k
-                value = fillValue; // if voxel is transformed out of bounds
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
+                    return;
                 }
 
-                imm = iAdj * oXres;
-                X = (j1 + (imm * T00)) * invXRes;
+                if ( (X >= (iXdim - 1)) || (Y >= (iYdim - 1))) { // cannot interpolate on last X or Y
+                    final int position = 4 * ( (Math.min((int) (Y + 0.5), iYdim - 1) * iXdim) + Math.min(
+                            (int) (X + 0.5), iXdim - 1));
 
-                if ( (X > -0.5) && (X < iXdim)) {
-                    Y = (j2 + (imm * T10)) * invYRes;
+                    for (int c = 0; c < 4; c++) {
+                        dest[index + c] = (float) imgBuf[position + c];
+                    }
 
-                    if ( (Y > -0.5) && (Y < iYdim)) {
+                    return;
+                }
 
-                        if (X <= 0) {
-                            x0 = 0;
-                            dx = 0;
-                            deltaX = 0;
-                        } else if (X >= (iXdim - 1)) {
-                            x0 = iXdim - 1;
-                            dx = 0;
-                            deltaX = 0;
-                        } else {
-                            x0 = (int) X;
-                            dx = X - x0;
-                            deltaX = 1;
-                        }
+                final double x0 = X - (int) X;
+                final double y0 = Y - (int) Y;
+                final double x1 = 1 - x0;
+                final double y1 = 1 - y0;
+                final int X0pos = (int) X;
+                final int Y0pos = (int) Y * iXdim;
+                final int X1pos = X0pos + 1;
+                final int Y1pos = Y0pos + iXdim;
+                final int temp5 = 4 * (Y0pos + X0pos);
+                final int temp6 = 4 * (Y0pos + X1pos);
+                final int temp7 = 4 * (Y1pos + X0pos);
+                final int temp8 = 4 * (Y1pos + X1pos);
+                final double x1y1 = x1 * y1;
+                final double x0y1 = x0 * y1;
+                final double x1y0 = x1 * y0;
+                final double x0y0 = x0 * y0;
+
+                for (int c = 0; c < 4; c++) {
+                    dest[index + c] = (float) ( (x1y1 * imgBuf[temp5 + c]) + (x0y1 * imgBuf[temp6 + c])
+                            + (x1y0 * imgBuf[temp7 + c]) + (x0y0 * imgBuf[temp8 + c]));
+                }
+            }
+        }, null, kTM);
+    }
 
-                        if (Y <= 0) {
-                            y0 = 0;
-                            dy = 0;
-                            deltaY = 0;
-                        } else if (Y >= (iYdim - 1)) {
-                            y0 = iYdim - 1;
-                            dy = 0;
-                            deltaY = 0;
-                        } else {
-                            y0 = (int) Y;
-                            dy = Y - y0;
-                            deltaY = iXdim;
-                        }
+    /**
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using Bspline interpolation.
+     * 
+     * @param imgBuf image array
+     * @param kTM transformation matrix to be applied
+     * @param degree degree of polynomial
+     */
+    private void transformAlgorithmBspline2D(final double[] imgBuf, final TransMatrix kTM, final int degree) {
+        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
+        final double[] sliceMin = new double[1];
+        final double[] sliceMax = new double[1];
 
-                        dx1 = 1 - dx;
-                        dy1 = 1 - dy;
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-                        position = (y0 * iXdim) + x0;
+                if ( (X > -0.5f) && (X < iXdim) && (Y > -0.5f) && (Y < iYdim)) {
+                    final double value = Bspline.bSpline2D(0, 0, X, Y);
 
-                        value = (dy1 * ( (dx1 * imgBuf[position]) + (dx * imgBuf[position + deltaX])))
-                                + (dy * ( (dx1 * imgBuf[position + deltaY]) + (dx * imgBuf[position + deltaY + deltaX])));
-                    } // end if Y in bounds
-                } // end if X in bounds
+                    return Math.max(sliceMin[0], Math.min(value, sliceMax[0]));
+                }
 
-                destImage.set(index++, value);
-            } // end for i
-        } // end for j
+                return fillValue; // if voxel is transformed out of bounds
+            }
+        }, new Runnable() {
+            public void run() {
+                findRange(imgBuf, sliceMin, sliceMax);
+                Bspline.setup2DBSpline(imgBuf, new int[] {iXdim, iYdim}, degree);
+            }
+        }, kTM);
+
+        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
     }
 
     /**
-     * Transforms and resamples volume using bilinear interpolation. Used as a slice-only algorithm on 3D images.
+     * Transforms and resamples a 2D color image, or each slice of a 2.5D transformation, using Bspline interpolation.
      * 
-     * @param imgBuf Image array
-     * @param kTM Matrix to be applied
+     * @param imgBuf image array
+     * @param kTM transformation matrix to be applied
+     * @param degree degree of polynomial
      */
-    private void transformBilinear3D(final double[] imgBuf, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj;
-        int X0pos, Y0pos;
-        int X1pos, Y1pos;
-        double X, Y;
-        double x0, y0;
-        double x1, y1;
-        double value;
-        double imm, jmm;
-        int roundX, roundY;
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
+    private void transformAlgorithmBspline2DC(final double[] imgBuf, final TransMatrix kTM, final int degree) {
+        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
+        final double[] sliceMin = new double[4];
+        final double[] sliceMax = new double[4];
 
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged(Math.round((float) k / oZdim * 100));
-            }
+                if ( (X > -0.5f) && (X < iXdim) && (Y > -0.5f) && (Y < iYdim)) {
+                    final double[] value = Bspline.bSpline2DC(0, 0, X, Y);
 
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
+                    for (int c = 0; c < 4; c++) {
+                        dest[index + c] = (float) Math.max(sliceMin[c], Math.min(value[c], sliceMax[c]));
+                    }
                 } else {
-                    iAdj = i;
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
                 }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
+            }
+        }, new Runnable() {
+            public void run() {
+                findRange(imgBuf, sliceMin, sliceMax);
+                Bspline.setup2DBSplineC(imgBuf, new int[] {iXdim, iYdim}, degree);
+            }
+        }, kTM);
 
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
+        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
+    }
 
-                    // transform i,j
-                    value = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    X = (temp1 + (jmm * T01)) / iXres;
-                    roundX = (int) (X + 0.5);
+    /**
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using Bspline interpolation.
+     * 
+     * @param imgBuf image array
+     * @param kTM transformation matrix to be applied
+     * @param degree degree of polynomial
+     */
+    private void transformAlgorithmBspline3D(final double[] imgBuf, final TransMatrix kTM, final int degree) {
+        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
+        final double[] volMin = new double[1];
+        final double[] volMax = new double[1];
 
-                    if ( (X >= 0) && (X < iXdim)) {
-                        Y = (temp2 + (jmm * T11)) / iYres;
-                        roundY = (int) (Y + 0.5);
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-                        if ( (Y >= 0) && (Y < iYdim)) {
+                if ( (X > -0.5f) && (X < iXdim) && (Y > -0.5f) && (Y < iYdim) && (Z > -0.5f) && (Z < iZdim)) {
+                    final double value = Bspline.bSpline3D(0, 0, 0, X, Y, Z);
 
-                            if ( (X >= (iXdim - 1)) || (Y >= (iYdim - 1))) { // cannot interpolate on last X
-                                // or Y
-                                X0pos = Math.min(roundX, iXdim - 1);
-                                Y0pos = Math.min(roundY, iYdim - 1) * iXdim;
-                                value = imgBuf[Y0pos + X0pos];
-                            } else {
+                    return Math.max(volMin[0], Math.min(value, volMax[0]));
+                }
 
-                                // set intensity of i,j,k to new transformed coordinate if
-                                // x,y,z is w/in dimensions of image
-                                x0 = X - (int) X;
-                                y0 = Y - (int) Y;
-                                x1 = 1 - x0;
-                                y1 = 1 - y0;
-                                X0pos = (int) X;
-                                Y0pos = (int) Y * iXdim;
-                                X1pos = X0pos + 1;
-                                Y1pos = Y0pos + iXdim;
-                                value = (x1 * y1 * imgBuf[Y0pos + X0pos]) + (x0 * y1 * imgBuf[Y0pos + X1pos])
-                                        + (x1 * y0 * imgBuf[Y1pos + X0pos]) + (x0 * y0 * imgBuf[Y1pos + X1pos]);
-                            }
-                        } // end if Y in bounds
-                    } // end if X in bounds
+                return fillValue; // if voxel is transformed out of bounds
+            }
+        }, new Runnable() {
+            public void run() {
+                findRange(imgBuf, volMin, volMax);
+                Bspline.setup3DBSpline(imgBuf, new int[] {iXdim, iYdim, iZdim}, degree);
+            }
+        }, kTM);
 
-                    destImage.set(i, j, k, value);
-                } // end for j
-            } // end for i
+        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
+    }
 
-            if (threadStopped) {
-                return;
-            }
+    /**
+     * Transforms and resamples a 3D color volume, or each volume of a 4D color image, using Bspline interpolation.
+     * 
+     * @param imgBuf image array
+     * @param kTM transformation matrix to be applied
+     * @param degree degree of polynomial
+     */
+    private void transformAlgorithmBspline3DC(final double[] imgBuf, final TransMatrix kTM, final int degree) {
+        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
+        final double[] volMin = new double[4];
+        final double[] volMax = new double[4];
 
-            if (k < (oZdim - 1)) {
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
+                if ( (X > -0.5f) && (X < iXdim) && (Y > -0.5f) && (Y < iYdim) && (Z > -0.5f) && (Z < iZdim)) {
+                    final double[] value = Bspline.bSpline3DC(0, 0, 0, X, Y, Z);
 
-                    return;
+                    for (int c = 0; c < 4; c++) {
+                        dest[index + c] = (float) Math.max(volMin[c], Math.min(value[c], volMax[c]));
+                    }
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
                 }
-            } // end if (k < (oZdim - 1))
-        } // end for k
+            }
+        }, new Runnable() {
+            public void run() {
+                findRange(imgBuf, volMin, volMax);
+                Bspline.setup3DBSplineC(imgBuf, new int[] {iXdim, iYdim, iZdim}, degree);
+            }
+        }, kTM);
+
+        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
     }
 
     /**
-     * Transforms and resamples volume using bilinear interpolation (2.5D) This version used with color images. This
-     * alogorithm used on a slice by slice basis on 3D images.
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using cubic Lagrangian
+     * interpolation.
      * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Matrix to be applied
+     * @param imgBuf Image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformBilinear3DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj;
-        int X0pos, Y0pos;
-        int X1pos, Y1pos;
-        double X, Y;
-        double x0, y0;
-        double x1, y1;
-        double imm, jmm;
-
-        final int mod = Math.max(1, oXdim / 50);
-
-        int roundX, roundY;
-        double x1y1, x0y1, x1y0, x0y0;
-        double temp1, temp2;
-        int temp3, temp4, temp5, temp6, temp7, temp8;
-        double T00, T01, T02, T10, T11, T12;
+    private void transformCubicLagrangian2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
 
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
+                    return CLag.cubicLagrangian2D(X, Y);
+                }
 
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
+                return fillValue; // if voxel is transformed out of bounds
+            }
+        }, new Runnable() {
+            public void run() {
+                CLag.setup2DCubicLagrangian(imgBuf, new int[] {iXdim, iYdim}, clip);
             }
+        }, kTM);
 
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
+        CLag.finalize();
+        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
+    }
 
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    temp3 = 4 * (i + (j * oXdim));
-                    imgBuf2[temp3] = fillValue; // if voxel is transformed out of bounds
-                    imgBuf2[temp3 + 1] = fillValue;
-                    imgBuf2[temp3 + 2] = fillValue;
-                    imgBuf2[temp3 + 3] = fillValue;
-                    // transform i,j
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
+    /**
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using cubic Lagrangian
+     * interpolation. This version used with color images.
+     * 
+     * @param imgBuf Input image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformCubicLagrangian2DC(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
 
-                    jmm = jAdj * oYres;
-                    X = (temp1 + (jmm * T01)) / iXres;
-                    roundX = (int) (X + 0.5);
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-                    if ( (X >= 0) && (X < iXdim)) {
-                        Y = (temp2 + (jmm * T11)) / iYres;
-                        roundY = (int) (Y + 0.5);
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
+                    setColor(dest, index, CLag.cubicLagrangian2DC(X, Y));
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
+                }
+            }
+        }, new Runnable() {
+            public void run() {
+                CLag.setup2DCubicLagrangianC(imgBuf, new int[] {iXdim, iYdim}, argbMax(), clip);
+            }
+        }, kTM);
 
-                        if ( (Y >= 0) && (Y < iYdim)) {
+        CLag.finalize();
+        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
+    }
 
-                            if ( (X >= (iXdim - 1)) || (Y >= (iYdim - 1))) { // cannot interpolate on last X
-                                // or Y
-                                X0pos = Math.min(roundX, iXdim - 1);
-                                Y0pos = Math.min(roundY, iYdim - 1) * iXdim;
-                                temp4 = 4 * (Y0pos + X0pos);
-                                imgBuf2[4 * (i + (j * oXdim))] = (float) imgBuf[temp4];
-                                imgBuf2[ (4 * (i + (j * oXdim))) + 1] = (float) imgBuf[temp4 + 1];
-                                imgBuf2[ (4 * (i + (j * oXdim))) + 2] = (float) imgBuf[temp4 + 2];
-                                imgBuf2[ (4 * (i + (j * oXdim))) + 3] = (float) imgBuf[temp4 + 3];
-                            } else {
+    /**
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using cubic Lagrangian interpolation.
+     * 
+     * @param imgBuf Image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformCubicLagrangian3D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
 
-                                // set intensity of i,j,k to new transformed coordinate if
-                                // x,y,z is w/in dimensions of image
-                                x0 = X - (int) X;
-                                y0 = Y - (int) Y;
-                                x1 = 1 - x0;
-                                y1 = 1 - y0;
-                                X0pos = (int) X;
-                                Y0pos = (int) Y * iXdim;
-                                X1pos = X0pos + 1;
-                                Y1pos = Y0pos + iXdim;
-                                temp5 = 4 * (Y0pos + X0pos);
-                                temp6 = 4 * (Y0pos + X1pos);
-                                temp7 = 4 * (Y1pos + X0pos);
-                                temp8 = 4 * (Y1pos + X1pos);
-                                x1y1 = x1 * y1;
-                                x0y1 = x0 * y1;
-                                x1y0 = x1 * y0;
-                                x0y0 = x0 * y0;
-                                imgBuf2[temp3] = (float) ( (x1y1 * imgBuf[temp5]) + (x0y1 * imgBuf[temp6])
-                                        + (x1y0 * imgBuf[temp7]) + (x0y0 * imgBuf[temp8]));
-                                imgBuf2[temp3 + 1] = (float) ( (x1y1 * imgBuf[temp5 + 1]) + (x0y1 * imgBuf[temp6 + 1])
-                                        + (x1y0 * imgBuf[temp7 + 1]) + (x0y0 * imgBuf[temp8 + 1]));
-                                imgBuf2[temp3 + 2] = (float) ( (x1y1 * imgBuf[temp5 + 2]) + (x0y1 * imgBuf[temp6 + 2])
-                                        + (x1y0 * imgBuf[temp7 + 2]) + (x0y0 * imgBuf[temp8 + 2]));
-                                imgBuf2[temp3 + 3] = (float) ( (x1y1 * imgBuf[temp5 + 3]) + (x0y1 * imgBuf[temp6 + 3])
-                                        + (x1y0 * imgBuf[temp7 + 3]) + (x0y0 * imgBuf[temp8 + 3]));
-                            }
-                        } // end if Y in bounds
-                    } // end if X in bounds
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-                } // end for j
-            } // end for i
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim) && (Z >= 0) && (Z < iZdim)) {
+                    return CLag.cubicLagrangian3D(X, Y, Z);
+                }
 
-            try {
-                destImage.importData(4 * k * oXdim * oYdim, imgBuf2, true);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
+                return fillValue; // if voxel is transformed out of bounds
             }
+        }, new Runnable() {
+            public void run() {
+                CLag.setup3DCubicLagrangian(imgBuf, new int[] {iXdim, iYdim, iZdim}, clip);
+            }
+        }, kTM);
+
+        CLag.finalize();
+        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
+    }
 
-            if (k < (oZdim - 1)) {
+    /**
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using cubic Lagrangian interpolation. This
+     * version used with color images.
+     * 
+     * @param imgBuf Input image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformCubicLagrangian3DC(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
 
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: IOException Error on exportData");
-                    setCompleted(false);
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-                    return;
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim) && (Z >= 0) && (Z < iZdim)) {
+                    setColor(dest, index, CLag.cubicLagrangian3DC(X, Y, Z));
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
                 }
-            } // end if (k < (oZdim - 1))
-        } // end for k
+            }
+        }, new Runnable() {
+            public void run() {
+                CLag.setup3DCubicLagrangianC(imgBuf, new int[] {iXdim, iYdim, iZdim}, argbMax(), clip);
+            }
+        }, kTM);
+
+        CLag.finalize();
+        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
     }
 
     /**
-     * Transforms and resamples volume using bilinear interpolation (2.5D) Used as a slice only algorithm on 3D images.
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using heptic Lagrangian
+     * interpolation.
      * 
      * @param imgBuf Image array
      * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformBilinear4D(final double[] imgBuf, final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj;
-        int X0pos, Y0pos;
-        int X1pos, Y1pos;
-        double X, Y;
-        double x0, y0;
-        double x1, y1;
-        double value;
-        float imm, jmm;
-        int roundX, roundY;
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
+    private void transformHepticLagrangian2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
 
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
+                    return HLag.hepticLagrangian2D(X, Y);
+                }
 
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
+                return fillValue; // if voxel is transformed out of bounds
+            }
+        }, new Runnable() {
+            public void run() {
+                HLag.setup2DHepticLagrangian(imgBuf, new int[] {iXdim, iYdim}, clip);
+            }
+        }, kTM);
 
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
+        HLag.finalize();
+        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
+    }
 
-                        // transform i,j
-                        value = fillValue; // if voxel is transformed out of bounds
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-                        X = (temp1 + (jmm * T01)) / iXres;
-                        roundX = (int) (X + 0.5);
+    /**
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using heptic Lagrangian
+     * interpolation. This version used with color images.
+     * 
+     * @param imgBuf Input image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformHepticLagrangian2DC(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
 
-                        if ( (X >= 0) && (X < iXdim)) {
-                            Y = (temp2 + (jmm * T11)) / iYres;
-                            roundY = (int) (Y + 0.5);
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-                            if ( (Y >= 0) && (Y < iYdim)) {
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
+                    setColor(dest, index, HLag.hepticLagrangian2DC(X, Y));
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
+                }
+            }
+        }, new Runnable() {
+            public void run() {
+                HLag.setup2DHepticLagrangianC(imgBuf, new int[] {iXdim, iYdim}, argbMax(), clip);
+            }
+        }, kTM);
 
-                                if ( (X >= (iXdim - 1)) || (Y >= (iYdim - 1))) { // cannot interpolate on last
-                                    // X or Y
-                                    X0pos = Math.min(roundX, iXdim - 1);
-                                    Y0pos = Math.min(roundY, iYdim - 1) * iXdim;
-                                    value = imgBuf[Y0pos + X0pos];
-                                } else {
+        HLag.finalize();
+        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
+    }
 
-                                    // set intensity of i,j,k to new transformed coordinate if
-                                    // x,y,z is w/in dimensions of image
-                                    x0 = X - (int) X;
-                                    y0 = Y - (int) Y;
-                                    x1 = 1 - x0;
-                                    y1 = 1 - y0;
-                                    X0pos = (int) X;
-                                    Y0pos = (int) Y * iXdim;
-                                    X1pos = X0pos + 1;
-                                    Y1pos = Y0pos + iXdim;
-                                    value = (x1 * y1 * imgBuf[Y0pos + X0pos]) + (x0 * y1 * imgBuf[Y0pos + X1pos])
-                                            + (x1 * y0 * imgBuf[Y1pos + X0pos]) + (x0 * y0 * imgBuf[Y1pos + X1pos]);
-                                }
-                            } // end if Y in bounds
-                        } // end if X in bounds
+    /**
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using heptic Lagrangian interpolation.
+     * 
+     * @param imgBuf Image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformHepticLagrangian3D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
 
-                        destImage.set(i, j, k, l, value);
-                    } // end for j
-                } // end for i
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim) && (Z >= 0) && (Z < iZdim)) {
+                    return HLag.hepticLagrangian3D(X, Y, Z);
+                }
 
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: Image(s) locked");
-                        setCompleted(false);
+                return fillValue; // if voxel is transformed out of bounds
+            }
+        }, new Runnable() {
+            public void run() {
+                HLag.setup3DHepticLagrangian(imgBuf, new int[] {iXdim, iYdim, iZdim}, clip);
+            }
+        }, kTM);
 
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
+        HLag.finalize();
+        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
     }
 
     /**
-     * Transforms and resamples volume using bilinear interpolation This version used with color images This alogorithm
-     * used on a slice by slice basis on 4D images.
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using heptic Lagrangian interpolation. This
+     * version used with color images.
      * 
      * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Matrix to be applied
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformBilinear4DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj;
-        int X0pos, Y0pos;
-        int X1pos, Y1pos;
-        double X, Y;
-        double x0, y0;
-        double x1, y1;
-        double imm, jmm;
-        int roundX, roundY;
-        double x1y1, x0y1, x1y0, x0y0;
-        double temp1, temp2;
-        int temp3, temp4, temp5, temp6, temp7, temp8;
-        double T00, T01, T02, T10, T11, T12;
+    private void transformHepticLagrangian3DC(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
 
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
-
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // transform i,j
-                        temp3 = 4 * (i + (j * oXdim));
-                        imgBuf2[temp3] = fillValue; // if voxel is transformed out of bounds
-                        imgBuf2[temp3 + 1] = fillValue;
-                        imgBuf2[temp3 + 2] = fillValue;
-                        imgBuf2[temp3 + 3] = fillValue;
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-
-                        jmm = jAdj * oYres;
-                        X = (temp1 + (jmm * T01)) / iXres;
-                        roundX = (int) (X + 0.5);
-
-                        if ( (X >= 0) && (X < iXdim)) {
-                            Y = (temp2 + (jmm * T11)) / iYres;
-                            roundY = (int) (Y + 0.5);
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-
-                                if ( (X >= (iXdim - 1)) || (Y >= (iYdim - 1))) { // cannot interpolate on last
-                                    // X or Y
-                                    X0pos = Math.min(roundX, iXdim - 1);
-                                    Y0pos = Math.min(roundY, iYdim - 1) * iXdim;
-                                    temp4 = 4 * (Y0pos + X0pos);
-                                    imgBuf2[temp3] = (float) imgBuf[temp4];
-                                    imgBuf2[temp3 + 1] = (float) imgBuf[temp4 + 1];
-                                    imgBuf2[temp3 + 2] = (float) imgBuf[temp4 + 2];
-                                    imgBuf2[temp3 + 3] = (float) imgBuf[temp4 + 3];
-                                } else {
-
-                                    // set intensity of i,j,k to new transformed coordinate if
-                                    // x,y,z is w/in dimensions of image
-                                    x0 = X - (int) X;
-                                    y0 = Y - (int) Y;
-                                    x1 = 1 - x0;
-                                    y1 = 1 - y0;
-                                    X0pos = (int) X;
-                                    Y0pos = (int) Y * iXdim;
-                                    X1pos = X0pos + 1;
-                                    Y1pos = Y0pos + iXdim;
-                                    temp5 = 4 * (Y0pos + X0pos);
-                                    temp6 = 4 * (Y0pos + X1pos);
-                                    temp7 = 4 * (Y1pos + X0pos);
-                                    temp8 = 4 * (Y1pos + X1pos);
-                                    x1y1 = x1 * y1;
-                                    x0y1 = x0 * y1;
-                                    x1y0 = x1 * y0;
-                                    x0y0 = x0 * y0;
-                                    imgBuf2[temp3] = (float) ( (x1y1 * imgBuf[temp5]) + (x0y1 * imgBuf[temp6])
-                                            + (x1y0 * imgBuf[temp7]) + (x0y0 * imgBuf[temp8]));
-                                    imgBuf2[temp3 + 1] = (float) ( (x1y1 * imgBuf[temp5 + 1])
-                                            + (x0y1 * imgBuf[temp6 + 1]) + (x1y0 * imgBuf[temp7 + 1]) + (x0y0 * imgBuf[temp8 + 1]));
-                                    imgBuf2[temp3 + 2] = (float) ( (x1y1 * imgBuf[temp5 + 2])
-                                            + (x0y1 * imgBuf[temp6 + 2]) + (x1y0 * imgBuf[temp7 + 2]) + (x0y0 * imgBuf[temp8 + 2]));
-                                    imgBuf2[temp3 + 3] = (float) ( (x1y1 * imgBuf[temp5 + 3])
-                                            + (x0y1 * imgBuf[temp6 + 3]) + (x1y0 * imgBuf[temp7 + 3]) + (x0y0 * imgBuf[temp8 + 3]));
-                                }
-                            } // end if Y in bounds
-                        } // end if X in bounds
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-                    } // end for j
-                } // end for i
-
-                try {
-                    destImage.importData( (4 * l * oXdim * oYdim * oZdim) + (4 * k * oXdim * oYdim), imgBuf2, true);
-                } catch (final IOException error) {
-                    MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim) && (Z >= 0) && (Z < iZdim)) {
+                    setColor(dest, index, HLag.hepticLagrangian3DC(X, Y, Z));
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
                 }
+            }
+        }, new Runnable() {
+            public void run() {
+                HLag.setup3DHepticLagrangianC(imgBuf, new int[] {iXdim, iYdim, iZdim}, argbMax(), clip);
+            }
+        }, kTM);
 
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: IOException Error on exportData");
-                        setCompleted(false);
+        HLag.finalize();
+        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
+    }
 
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
+    /**
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using nearest neighbor
+     * interpolation.
+     * 
+     * @param imgBuf Image array
+     * @param kTM Transformation matrix to be applied
+     */
+    private void transformNearestNeighbor2D(final double[] imgBuf, final TransMatrix kTM) {
+        resample(imgBuf, new VolumeResampler.NearestNeighbor(imgBuf, new int[] {iXdim, iYdim, 1}, fillValue), null,
+                kTM);
     }
 
     /**
-     * Transforms and resamples volume using bilinear interpolation. This version used with color images
+     * Transforms and resamples a 2D color image, or each slice of a 2.5D transformation, using nearest neighbor
+     * interpolation.
      * 
      * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Matrix to be applied
+     * @param kTM Transformation matrix to be applied
      */
-    private void transformBilinearC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM) {
-        int i, j;
-        int iAdj, jAdj;
-        int X0pos, Y0pos;
-        int X1pos, Y1pos;
-        double X, Y;
-        double x0, y0;
-        double x1, y1;
-        double imm, jmm;
-
-        final int mod = Math.max(1, oXdim / 50);
-
-        int roundX, roundY;
-        double x1y1, x0y1, x1y0, x0y0;
-        double temp1, temp2;
-        int temp3, temp4, temp5, temp6, temp7, temp8;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // transform i,j
-                temp3 = 4 * (i + (j * oXdim));
-                imgBuf2[temp3] = fillValue; // if voxel is transformed out of bounds
-                imgBuf2[temp3 + 1] = fillValue;
-                imgBuf2[temp3 + 2] = fillValue;
-                imgBuf2[temp3 + 3] = fillValue;
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-
-                jmm = jAdj * oYres;
-
-                X = (temp1 + (jmm * T01)) / iXres;
-                roundX = (int) (X + 0.5);
-
-                if ( (X >= 0) && (X < iXdim)) {
-                    Y = (temp2 + (jmm * T11)) / iYres;
-                    roundY = (int) (Y + 0.5);
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-
-                        if ( (X >= (iXdim - 1)) || (Y >= (iYdim - 1))) { // cannot interpolate on last X or Y
-                            X0pos = Math.min(roundX, iXdim - 1);
-                            Y0pos = Math.min(roundY, iYdim - 1) * iXdim;
-                            temp4 = 4 * (Y0pos + X0pos);
-                            imgBuf2[temp3] = (float) imgBuf[temp4];
-                            imgBuf2[temp3 + 1] = (float) imgBuf[temp4 + 1];
-                            imgBuf2[temp3 + 2] = (float) imgBuf[temp4 + 2];
-                            imgBuf2[temp3 + 3] = (float) imgBuf[temp4 + 3];
-                        } else {
-
-                            // set intensity of i,j,k to new transformed coordinate if
-                            // x,y,z is w/in dimensions of image
-                            x0 = X - (int) X;
-                            y0 = Y - (int) Y;
-                            x1 = 1 - x0;
-                            y1 = 1 - y0;
-                            X0pos = (int) X;
-                            Y0pos = (int) Y * iXdim;
-                            X1pos = X0pos + 1;
-                            Y1pos = Y0pos + iXdim;
-                            temp5 = 4 * (Y0pos + X0pos);
-                            temp6 = 4 * (Y0pos + X1pos);
-                            temp7 = 4 * (Y1pos + X0pos);
-                            temp8 = 4 * (Y1pos + X1pos);
-                            x1y1 = x1 * y1;
-                            x0y1 = x0 * y1;
-                            x1y0 = x1 * y0;
-                            x0y0 = x0 * y0;
-                            imgBuf2[temp3] = (float) ( (x1y1 * imgBuf[temp5]) + (x0y1 * imgBuf[temp6])
-                                    + (x1y0 * imgBuf[temp7]) + (x0y0 * imgBuf[temp8]));
-                            imgBuf2[temp3 + 1] = (float) ( (x1y1 * imgBuf[temp5 + 1]) + (x0y1 * imgBuf[temp6 + 1])
-                                    + (x1y0 * imgBuf[temp7 + 1]) + (x0y0 * imgBuf[temp8 + 1]));
-                            imgBuf2[temp3 + 2] = (float) ( (x1y1 * imgBuf[temp5 + 2]) + (x0y1 * imgBuf[temp6 + 2])
-                                    + (x1y0 * imgBuf[temp7 + 2]) + (x0y0 * imgBuf[temp8 + 2]));
-                            imgBuf2[temp3 + 3] = (float) ( (x1y1 * imgBuf[temp5 + 3]) + (x0y1 * imgBuf[temp6 + 3])
-                                    + (x1y0 * imgBuf[temp7 + 3]) + (x0y0 * imgBuf[temp8 + 3]));
-                        }
-                    } // end if Y in bounds
-                } // end if X in bounds
-
-            } // end for j
-        } // end for i
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
+    private void transformNearestNeighbor2DC(final double[] imgBuf, final TransMatrix kTM) {
+        resampleC(imgBuf, new VolumeResampler.ColorNearestNeighbor(imgBuf, new int[] {iXdim, iYdim, 1}, fillValue),
+                null, kTM);
     }
 
     /**
-     * Transforms and resamples volume using Bspline interpolation.
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using nearest neighbor interpolation.
      * 
      * @param imgBuf image array
      * @param kTM transformation matrix to be applied
-     * @param degree degree of polynomial
      */
-    private void transformAlgorithmBspline2D(final double[] imgBuf, final TransMatrix kTM, final int degree) {
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int mod = Math.max(1, oYdim / 50);
-
-        double j1, j2;
-        double T00, T01, T02, T10, T11, T12;
-        int nz;
-        int x, y, z;
-        double sliceMin;
-        double sliceMax;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        if (srcImage.getNDims() == 2) {
-            nz = 1;
-        } else if (srcImage.getNDims() == 3) {
-            nz = srcImage.getExtents()[2];
-        } else {
-            nz = srcImage.getExtents()[2] * srcImage.getExtents()[3];
-        }
-
-        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
-
-        final float invXRes = 1 / iXres;
-        final float invYRes = 1 / iYres;
-
-        int index = 0;
-
-        for (z = 0; z < nz; z++) {
-
-            if (z >= 1) {
-
-                try {
-                    srcImage.exportData(z * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            }
-
-            sliceMin = Float.MAX_VALUE;
-            sliceMax = -Float.MAX_VALUE;
-
-            for (y = 0; y < iYdim; y++) {
-                for (x = 0; x < iXdim; x++) {
-                    if (imgBuf[x + (iXdim * y)] > sliceMax) {
-                        sliceMax = imgBuf[x + (iXdim * y)];
-                    }
-                    if (imgBuf[x + (iXdim * y)] < sliceMin) {
-                        sliceMin = imgBuf[x + (iXdim * y)];
-                    }
-                }
-            }
-
-            Bspline.setup2DBSpline(imgBuf, new int[] {iXdim, iYdim}, degree);
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                if ((!suppressProgressBar) && ( (j % mod) == 0)) {
-                    fireProgressStateChanged((int) ( ( ((float) z / nz * 100) + ((float) j / (oYdim * nz) * 100)) + 0.5f));
-                }
-
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + T02;
-                j2 = (jmm * T11) + T12;
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                    // transform i,j,z
-                    value = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    X = (j1 + (imm * T00)) * invXRes;
-
-                    if ( (X > -0.5f) && (X < iXdim)) {
-                        Y = (j2 + (imm * T10)) * invYRes;
-
-                        if ( (Y > -0.5f) && (Y < iYdim)) {
-                            value = Bspline.bSpline2D(0, 0, X, Y);
-
-                            if (value > sliceMax) {
-                                value = sliceMax;
-                            } else if (value < sliceMin) {
-                                value = sliceMin;
-                            }
-                        }
-                    }
-
-                    destImage.set(index++, value);
-                }
-            }
-        }
-
-        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
-
+    private void transformNearestNeighbor3D(final double[] imgBuf, final TransMatrix kTM) {
+        resample(imgBuf, new VolumeResampler.NearestNeighbor(imgBuf, new int[] {iXdim, iYdim, iZdim}, fillValue), null,
+                kTM);
     }
 
     /**
-     * Transforms and resamples volume using Bspline interpolation.
+     * Transforms and resamples a 3D color volume, or each volume of a 4D color image, using nearest neighbor
+     * interpolation.
      * 
-     * @param imgBuf image array
+     * @param imgBuf input image array
      * @param kTM transformation matrix to be applied
-     * @param degree degree of polynomial
      */
-    private void transformAlgorithmBspline2DC(final double[] imgBuf, final TransMatrix kTM, final int degree) {
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int mod = Math.max(1, oYdim / 50);
-
-        double j1, j2;
-        double T00, T01, T02, T10, T11, T12;
-        int nz;
-        int x, y, z;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        if (srcImage.getNDims() == 2) {
-            nz = 1;
-        } else if (srcImage.getNDims() == 3) {
-            nz = srcImage.getExtents()[2];
-        } else {
-            nz = srcImage.getExtents()[2] * srcImage.getExtents()[3];
-        }
-
-        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-
-        final int[] index = new int[4];
-        index[0] = 0;
-        index[1] = 1;
-        index[2] = 2;
-        index[3] = 3;
-
-        final double[] imageMin = new double[4];
-        final double[] imageMax = new double[4];
-
-        for (z = 0; z < nz; z++) {
-
-            if (z >= 1) {
-
-                try {
-                    srcImage.exportData(z * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            }
-            for (int c = 0; c < 4; c++) {
-                imageMin[c] = Float.MAX_VALUE;
-                imageMax[c] = Float.MIN_VALUE;
-            }
-
-            for (y = 0; y < iYdim; y++) {
-                for (x = 0; x < iXdim; x++) {
-                    for (int c = 0; c < 4; c++) {
-                        if (imgBuf[4 * (y * iXdim + x) + c] > imageMax[c]) {
-                            imageMax[c] = imgBuf[4 * (y * iXdim + x) + c];
-                        }
-                        if (imgBuf[4 * (y * iXdim + x) + c] < imageMin[c]) {
-                            imageMin[c] = imgBuf[4 * (y * iXdim + x) + c];
-                        }
-                    }
-                }
-            }
-
-            Bspline.setup2DBSplineC(imgBuf, new int[] {iXdim, iYdim}, degree);
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                if ((!suppressProgressBar) && ( (j % mod) == 0)) {
-                    fireProgressStateChanged((int) ( ( ((float) z / nz * 100) + ((float) j / (oYdim * nz) * 100)) + 0.5f));
-                }
-
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + T02;
-                j2 = (jmm * T11) + T12;
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                    // transform i,j,z
-                    value[0] = fillValue; // if voxel is transformed out of bounds
-                    value[1] = fillValue; // if voxel is transformed out of bounds
-                    value[2] = fillValue; // if voxel is transformed out of bounds
-                    value[3] = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    X = (j1 + (imm * T00)) * invXRes;
-
-                    if ( (X > -0.5f) && (X < iXdim)) {
-                        Y = (j2 + (imm * T10)) * invYRes;
-
-                        if ( (Y > -0.5f) && (Y < iYdim)) {
-                            value = Bspline.bSpline2DC(0, 0, X, Y);
-
-                            for (int c = 0; c < 4; c++) {
-                                if (value[c] > imageMax[c]) {
-                                    value[c] = imageMax[c];
-                                } else if (value[c] < imageMin[c]) {
-                                    value[c] = imageMin[c];
-                                }
-                            }
-                        }
-                    }
-
-                    for (int c = 0; c < 4; c++) {
-                        destImage.set(index[c], value[c]);
-                        index[c] += 4;
-                    }
-                }
-            }
-        }
-
-        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using Bspline interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     * @param degree degree of polynomial
-     */
-    private void transformAlgorithmBspline3D(final double[] imgBuf, final TransMatrix kTM, final int degree) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        final int mod = Math.max(1, oZdim / 50);
-        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
-        double imageMin;
-        double imageMax;
-
-        srcImage.calcMinMax();
-        imageMin = srcImage.getMin();
-        imageMax = srcImage.getMax();
-
-        double k1, k2, k3, j1, j2, j3;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        Bspline.setup3DBSpline(imgBuf, new int[] {iXdim, iYdim, iZdim}, degree);
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        int index = 0;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5f));
-            }
-
-            if (pad) {
-                kAdj = k - AlgorithmTransform.margins[2];
-            } else {
-                kAdj = k;
-            }
-
-            kmm = kAdj * oZres;
-            k1 = (kmm * T02) + T03;
-            k2 = (kmm * T12) + T13;
-            k3 = (kmm * T22) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + k1;
-                j2 = (jmm * T11) + k2;
-                j3 = (jmm * T21) + k3;
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                    // transform i,j,k
-                    value = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    X = (j1 + (imm * T00)) * invXRes;
-
-                    if ( (X > -0.5f) && (X < iXdim)) {
-                        Y = (j2 + (imm * T10)) * invYRes;
-
-                        if ( (Y > -0.5f) && (Y < iYdim)) {
-                            Z = (j3 + (imm * T20)) * invZRes;
-
-                            if ( (Z > -0.5f) && (Z < iZdim)) {
-                                // value = splineAlg.interpolatedValue(image, X, Y, Z, iXdim, iYdim, iZdim, degree);
-                                value = Bspline.bSpline3D(0, 0, 0, X, Y, Z);
-
-                                if (value > imageMax) {
-                                    value = imageMax;
-                                } else if (value < imageMin) {
-                                    value = imageMin;
-                                }
-                            }
-                        }
-                    }
-
-                    destImage.set(index++, value);
-                }
-            }
-        }
-
-        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using Bspline interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     * @param degree degree of polynomial
-     * */
-    private void transformAlgorithmBspline3DC(final double[] imgBuf, final TransMatrix kTM, final int degree) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double[] value = new double[4];
-        double imm, jmm, kmm;
-        final int mod = Math.max(1, oZdim / 50);
-        final double[] imageMin = new double[4];
-        final double[] imageMax = new double[4];
-
-        double k1, k2, k3, j1, j2, j3;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        final int[] index = new int[4];
-        index[0] = 0;
-        index[1] = 1;
-        index[2] = 2;
-        index[3] = 3;
-
-        imageMin[0] = srcImage.getMinA();
-        imageMin[1] = srcImage.getMinR();
-        imageMin[2] = srcImage.getMinG();
-        imageMin[3] = srcImage.getMinB();
-        imageMax[0] = srcImage.getMaxA();
-        imageMax[1] = srcImage.getMaxR();
-        imageMax[2] = srcImage.getMaxG();
-        imageMax[3] = srcImage.getMaxB();
-
-        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
-        Bspline.setup3DBSplineC(imgBuf, new int[] {iXdim, iYdim, iZdim}, degree);
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5f));
-            }
-
-            if (pad) {
-                kAdj = k - AlgorithmTransform.margins[2];
-            } else {
-                kAdj = k;
-            }
-
-            kmm = kAdj * oZres;
-            k1 = (kmm * T02) + T03;
-            k2 = (kmm * T12) + T13;
-            k3 = (kmm * T22) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + k1;
-                j2 = (jmm * T11) + k2;
-                j3 = (jmm * T21) + k3;
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                    // transform i,j,k
-                    value[0] = fillValue; // if voxel is transformed out of bounds
-                    value[1] = fillValue; // if voxel is transformed out of bounds
-                    value[2] = fillValue; // if voxel is transformed out of bounds
-                    value[3] = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    X = (j1 + (imm * T00)) * invXRes;
-
-                    if ( (X > -0.5f) && (X < iXdim)) {
-                        Y = (j2 + (imm * T10)) * invYRes;
-
-                        if ( (Y > -0.5f) && (Y < iYdim)) {
-                            Z = (j3 + (imm * T20)) * invZRes;
-
-                            if ( (Z > -0.5f) && (Z < iZdim)) {
-                                value = Bspline.bSpline3DC(0, 0, 0, X, Y, Z);
-                                for (int c = 0; c < 4; c++) {
-                                    if (value[c] > imageMax[c]) {
-                                        value[c] = imageMax[c];
-                                    } else if (value[c] < imageMin[c]) {
-                                        value[c] = imageMin[c];
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    for (int c = 0; c < 4; c++) {
-                        destImage.set(index[c], value[c]);
-                        index[c] += 4;
-                    }
-                }
-            }
-        }
-
-        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using Bspline interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     * @param degree degree of polynomial
-     */
-    private void transformAlgorithmBspline4D(final double[] imgBuf, final TransMatrix kTM, final int degree) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        int x, y, z;
-        double volMin;
-        double volMax;
-        int t;
-
-        double k1, k2, k3, j1, j2, j3;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        int index = 0;
-
-        final int iProgress = iTdim * oZdim;
-        for (t = 0; t < iTdim; t++) {
-
-            if ( (t >= 1)) {
-
-                try {
-                    srcImage.exportData(t * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            }
-
-            volMin = Float.MAX_VALUE;
-            volMax = -Float.MAX_VALUE;
-
-            for (z = 0; z < iZdim; z++) {
-                for (y = 0; y < iYdim; y++) {
-                    for (x = 0; x < iXdim; x++) {
-                        if (imgBuf[x + (iXdim * y) + (iXdim * iYdim * z)] > volMax) {
-                            volMax = imgBuf[x + (iXdim * y) + (iXdim * iYdim * z)];
-                        }
-                        if (imgBuf[x + (iXdim * y) + (iXdim * iYdim * z)] < volMin) {
-                            volMin = imgBuf[x + (iXdim * y) + (iXdim * iYdim * z)];
-                        }
-                    }
-                }
-            }
-
-            Bspline.setup3DBSpline(imgBuf, new int[] {iXdim, iYdim, iZdim}, degree);
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                if (!suppressProgressBar) {
-                    fireProgressStateChanged((int) ( ((float) (t * oZdim + k) / iProgress * 100) + 0.5));
-                }
-                if (pad) {
-                    kAdj = k - AlgorithmTransform.margins[2];
-                } else {
-                    kAdj = k;
-                }
-                kmm = kAdj * oZres;
-                k1 = (kmm * T02) + T03;
-                k2 = (kmm * T12) + T13;
-                k3 = (kmm * T22) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = (jmm * T01) + k1;
-                    j2 = (jmm * T11) + k2;
-                    j3 = (jmm * T21) + k3;
-
-                    for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                        // transform i,j,k
-                        value = fillValue; // if voxel is transformed out of bounds
-                        if (pad) {
-                            iAdj = i - AlgorithmTransform.margins[0];
-                        } else {
-                            iAdj = i;
-                        }
-                        imm = iAdj * oXres;
-                        X = (j1 + (imm * T00)) * invXRes;
-
-                        if ( (X > -0.5f) && (X < iXdim)) {
-                            Y = (j2 + (imm * T10)) * invYRes;
-
-                            if ( (Y > -0.5f) && (Y < iYdim)) {
-                                Z = (j3 + (imm * T20)) * invZRes;
-
-                                if ( (Z > -0.5f) && (Z < iZdim)) {
-                                    value = Bspline.bSpline3D(0, 0, 0, X, Y, Z);
-                                    if (value > volMax) {
-                                        value = volMax;
-                                    } else if (value < volMin) {
-                                        value = volMin;
-                                    }
-                                }
-                            }
-                        }
-
-                        destImage.set(index++, value);
-                    }
-                }
-            }
-        }
-
-        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples color volume using Bspline interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     * @param degree degree of polynomial
-     */
-    private void transformAlgorithmBspline4DC(final double[] imgBuf, final TransMatrix kTM, final int degree) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double[] value = new double[4];
-        double imm, jmm, kmm;
-        int x, y, z, c;
-        final double volMin[] = new double[4];
-        final double volMax[] = new double[4];
-        int t;
-
-        double k1, k2, k3, j1, j2, j3;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        final AlgorithmBSpline Bspline = new AlgorithmBSpline();
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        final int index[] = new int[4];
-        index[0] = 0;
-        index[1] = 1;
-        index[2] = 2;
-        index[3] = 3;
-
-        final int iProgress = iTdim * oZdim;
-        for (t = 0; t < iTdim; t++) {
-
-            if ( (t >= 1)) {
-
-                try {
-                    srcImage.exportData(t * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            }
-
-            for (c = 0; c < 4; c++) {
-                volMin[c] = Float.MAX_VALUE;
-                volMax[c] = -Float.MAX_VALUE;
-            }
-            for (z = 0; z < iZdim; z++) {
-                for (y = 0; y < iYdim; y++) {
-                    for (x = 0; x < iXdim; x++) {
-                        for (c = 0; c < 4; c++) {
-                            if (imgBuf[4 * (x + (iXdim * y) + (iXdim * iYdim * z)) + c] > volMax[c]) {
-                                volMax[c] = imgBuf[4 * (x + (iXdim * y) + (iXdim * iYdim * z)) + c];
-                            }
-
-                            if (imgBuf[4 * (x + (iXdim * y) + (iXdim * iYdim * z)) + c] < volMin[c]) {
-                                volMin[c] = imgBuf[4 * (x + (iXdim * y) + (iXdim * iYdim * z)) + c];
-                            }
-                        }
-                    }
-                }
-            }
-
-            Bspline.setup3DBSplineC(imgBuf, new int[] {iXdim, iYdim, iZdim}, degree);
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                if (!suppressProgressBar) {
-                    fireProgressStateChanged((int) ( ((float) (t * oZdim + k) / iProgress * 100) + 0.5));
-                }
-
-                if (pad) {
-                    kAdj = k - AlgorithmTransform.margins[2];
-                } else {
-                    kAdj = k;
-                }
-                kmm = kAdj * oZres;
-                k1 = (kmm * T02) + T03;
-                k2 = (kmm * T12) + T13;
-                k3 = (kmm * T22) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = (jmm * T01) + k1;
-                    j2 = (jmm * T11) + k2;
-                    j3 = (jmm * T21) + k3;
-
-                    for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                        // transform i,j,k
-                        value[0] = fillValue; // if voxel is transformed out of bounds
-                        value[1] = fillValue; // if voxel is transformed out of bounds
-                        value[2] = fillValue; // if voxel is transformed out of bounds
-                        value[3] = fillValue; // if voxel is transformed out of bounds
-                        if (pad) {
-                            iAdj = i - AlgorithmTransform.margins[0];
-                        } else {
-                            iAdj = i;
-                        }
-                        imm = iAdj * oXres;
-                        X = (j1 + (imm * T00)) * invXRes;
-
-                        if ( (X > -0.5f) && (X < iXdim)) {
-                            Y = (j2 + (imm * T10)) * invYRes;
-
-                            if ( (Y > -0.5f) && (Y < iYdim)) {
-                                Z = (j3 + (imm * T20)) * invZRes;
-
-                                if ( (Z > -0.5f) && (Z < iZdim)) {
-                                    value = Bspline.bSpline3DC(0, 0, 0, X, Y, Z);
-                                    for (c = 0; c < 4; c++) {
-                                        if (value[c] > volMax[c]) {
-                                            value[c] = volMax[c];
-                                        } else if (value[c] < volMin[c]) {
-                                            value[c] = volMin[c];
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                        for (c = 0; c < 4; c++) {
-                            destImage.set(index[c], value[c]);
-                            index[c] += 4;
-                        }
-                    }
-                }
-            }
-        }
-        Preferences.debug("finished Bspline", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using cubic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip if <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-        final int mod = Math.max(1, oXdim / 50);
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        CLag.setup2DCubicLagrangian(imgBuf, inVolExtents, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // convert to mm
-                value = fillValue; // if voxel is transformed out of bounds
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-
-                // transform i,j
-                X = (temp1 + (jmm * T01)) / iXres;
-
-                if ( (X >= 0) && (X < iXdim)) { // check bounds
-                    Y = (temp2 + (jmm * T11)) / iYres;
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-                        value = CLag.cubicLagrangian2D(X, Y);
-                    }
-                }
-
-                destImage.set(i, j, value);
-            }
-        }
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using cubic Lagrangian interpolation. This version used with color images
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip if true clip output values to be within input range
-     */
-    private void transformCubicLagrangian2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-        final int mod = Math.max(1, oXdim / 50);
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        CLag.setup2DCubicLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // convert to mm
-                value[0] = fillValue; // if voxel is transformed out of bounds
-                value[1] = fillValue;
-                value[2] = fillValue;
-                value[3] = fillValue;
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-
-                // transform i,j
-                X = (temp1 + (jmm * T01)) / iXres;
-
-                if ( (X >= 0) && (X < iXdim)) { // check bounds
-                    Y = (temp2 + (jmm * T11)) / iYres;
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-                        value = CLag.cubicLagrangian2DC(X, Y);
-                    }
-                }
-
-                temp3 = 4 * (i + (j * oXdim));
-                imgBuf2[temp3] = (float) value[0];
-                imgBuf2[temp3 + 1] = (float) value[1];
-                imgBuf2[temp3 + 2] = (float) value[2];
-                imgBuf2[temp3 + 3] = (float) value[3];
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using cubic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian3D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oXdim / 50);
-
-        double k1, k2, k3, j1, j2, j3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        CLag.setup3DCubicLagrangian(imgBuf, inVolExtents, clip);
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        int index = 0;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5f));
-            }
-
-            if (pad) {
-                kAdj = k - AlgorithmTransform.margins[2];
-            } else {
-                kAdj = k;
-            }
-
-            kmm = kAdj * oZres;
-            k1 = (kmm * T02) + T03;
-            k2 = (kmm * T12) + T13;
-            k3 = (kmm * T22) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + k1;
-                j2 = (jmm * T11) + k2;
-                j3 = (jmm * T21) + k3;
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                    // transform i,j,k
-                    value = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    X = (j1 + (imm * T00)) * invXRes;
-
-                    if ( (X >= 0) && (X < iXdim)) {
-                        Y = (j2 + (imm * T10)) * invYRes;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            Z = (j3 + (imm * T20)) * invZRes;
-
-                            if ( (Z >= 0) && (Z < iZdim)) {
-                                value = CLag.cubicLagrangian3D(X, Y, Z);
-                            }
-                        }
-                    }
-
-                    destImage.set(index++, value);
-                }
-            }
-        }
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using cubic Lagrangian interpolation. This version used with color images
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian3DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double[] value = new double[4];
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oXdim / 50);
-
-        final int osliceSize = oXdim * oYdim;
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        int temp4;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        CLag.setup3DCubicLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = jmm * T01;
-                j2 = jmm * T11;
-                j3 = jmm * T21;
-                temp1 = i3 + j3;
-                temp2 = i2 + j2;
-                temp3 = i1 + j1;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // convert to mm
-                    value[0] = fillValue; // if voxel is tranformed out of bounds
-                    value[1] = fillValue;
-                    value[2] = fillValue;
-                    value[3] = fillValue;
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
-
-                    // transform i,j,k
-                    X = (temp3 + (kmm * T02)) / iXres;
-
-                    // convert back to pixels
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (kmm * T12)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            Z = (temp1 + (kmm * T22)) / iZres;
-
-                            if ( (Z >= 0) && (Z < iZdim)) {
-                                value = CLag.cubicLagrangian3DC(X, Y, Z);
-                            }
-                        }
-                    }
-
-                    temp4 = 4 * (i + (j * oXdim) + (k * osliceSize));
-                    imgBuf2[temp4] = (float) value[0];
-                    imgBuf2[temp4 + 1] = (float) value[1];
-                    imgBuf2[temp4 + 2] = (float) value[2];
-                    imgBuf2[temp4 + 3] = (float) value[3];
-                }
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using cubic Lagrangian interpolation Does a slice by slice cubic Lagrangian
-     * interpolation on a 3 dimensional object.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian3Dim2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        final int mod = Math.max(1, oZdim / 50);
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
-
-            CLag.setup2DCubicLagrangian(imgBuf, inVolExtents, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // convert to mm
-                    value = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-
-                    // transform i,j
-                    X = (temp1 + (jmm * T01)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (jmm * T11)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            value = CLag.cubicLagrangian2D(X, Y);
-                        }
-                    }
-
-                    destImage.set(i, j, k, value);
-                }
-            }
-
-            if (k < (oZdim - 1)) {
-
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (k < (oZdim - 1))
-        } // end for k
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using cubic Lagrangian interpolation This version used with color images This
-     * version performs a slice by slice algorithm on a 3 dimensional object.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian3Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        final int mod = Math.max(1, oZdim / 50);
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
-
-            if (srcImage.getType() == ModelStorageBase.ARGB) {
-                argbMax = 255.0f;
-            } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-                argbMax = 65535.0f;
-            }
-
-            CLag.setup2DCubicLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // convert to mm
-                    value[0] = fillValue; // if voxel is transformed out of bounds
-                    value[1] = fillValue;
-                    value[2] = fillValue;
-                    value[3] = fillValue;
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-
-                    // transform i,j
-                    X = (temp1 + (jmm * T01)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (jmm * T11)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            value = CLag.cubicLagrangian2DC(X, Y);
-                        }
-                    }
-
-                    temp3 = 4 * (i + (j * oXdim));
-                    imgBuf2[temp3] = (float) value[0];
-                    imgBuf2[temp3 + 1] = (float) value[1];
-                    imgBuf2[temp3 + 2] = (float) value[2];
-                    imgBuf2[temp3 + 3] = (float) value[3];
-                } // for i
-            } // for j
-
-            try {
-                destImage.importData(4 * k * oXdim * oYdim, imgBuf2, true);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-            }
-
-            if (k < (oZdim - 1)) {
-
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: IOException Error on importData");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (k < (oZdim - 1))
-        } // end for k
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional object using 3D cubic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip if <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian4D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        float imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oTdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-
-            if ((!suppressProgressBar) && ( (l % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + .5));
-            }
-
-            CLag.setup3DCubicLagrangian(imgBuf, inVolExtents, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = jmm * T01;
-                    j2 = jmm * T11;
-                    j3 = jmm * T21;
-                    temp1 = i3 + j3;
-                    temp2 = i2 + j2;
-                    temp3 = i1 + j1;
-
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // convert to mm
-                        value = fillValue; // if voxel is transformed out of bounds
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
-
-                        // transform i,j,k
-                        X = (temp3 + (kmm * T02)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (kmm * T12)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                Z = (temp1 + (kmm * T22)) / iZres;
-
-                                if ( (Z >= 0) && (Z < iZdim)) {
-                                    value = CLag.cubicLagrangian3D(X, Y, Z);
-                                }
-                            }
-                        }
-
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional object using 3D cubic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param imgBuffer2
-     * @param kTM Transformation matrix to be applied
-     * @param clip if <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian4DC(final double[] imgBuf, final float imgBuffer2[], final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value[] = new double[4];
-        int temp4;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        int oSliceSize;
-        int oVolSize;
-        final int mod = Math.max(1, oTdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        oSliceSize = oXdim * oYdim;
-        oVolSize = oSliceSize * oZdim;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-
-            if ((!suppressProgressBar) && ( (l % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + .5));
-            }
-
-            CLag.setup3DCubicLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = jmm * T01;
-                    j2 = jmm * T11;
-                    j3 = jmm * T21;
-                    temp1 = i3 + j3;
-                    temp2 = i2 + j2;
-                    temp3 = i1 + j1;
-
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // convert to mm
-                        value[0] = fillValue; // if voxel is transformed out of bounds
-                        value[1] = fillValue;
-                        value[2] = fillValue;
-                        value[3] = fillValue;
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
-
-                        // transform i,j,k
-                        X = (temp3 + (kmm * T02)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (kmm * T12)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                Z = (temp1 + (kmm * T22)) / iZres;
-
-                                if ( (Z >= 0) && (Z < iZdim)) {
-                                    value = CLag.cubicLagrangian3DC(X, Y, Z);
-                                }
-                            }
-                        }
-
-                        temp4 = 4 * (i + (j * oXdim) + (k * oSliceSize));
-                        imgBuffer2[temp4] = (float) value[0];
-                        imgBuffer2[temp4 + 1] = (float) value[1];
-                        imgBuffer2[temp4 + 2] = (float) value[2];
-                        imgBuffer2[temp4 + 3] = (float) value[3];
-                    }
-                }
-            }
-
-            try {
-                destImage.importData(4 * l * oVolSize, imgBuffer2, false);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException on destImage.importData");
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-
-        destImage.calcMinMax();
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using cubic Lagrangian interpolation Does a slice by slice cubic Lagrangian
-     * interpolation on a 4 dimensional object.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian4Dim2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                CLag.setup2DCubicLagrangian(imgBuf, inVolExtents, clip);
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
-
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // convert to mm
-                        value = fillValue; // if voxel is transformed out of bounds
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-
-                        // transform i,j
-                        X = (temp1 + (jmm * T01)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (jmm * T11)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                value = CLag.cubicLagrangian2D(X, Y);
-                            }
-                        }
-
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: Image(s) locked");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using cubic Lagrangian interpolation This version used with color images This
-     * version performs a slice by slice algorithm on a 4 dimensional object.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformCubicLagrangian4Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmCubicLagrangian CLag = new AlgorithmCubicLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                if (srcImage.getType() == ModelStorageBase.ARGB) {
-                    argbMax = 255.0f;
-                } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-                    argbMax = 65535.0f;
-                }
-
-                CLag.setup2DCubicLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
-
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // convert to mm
-                        value[0] = fillValue; // if voxel is transformed out of bounds
-                        value[1] = fillValue;
-                        value[2] = fillValue;
-                        value[3] = fillValue;
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-
-                        // transform i,j
-                        X = (temp1 + (jmm * T01)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (jmm * T11)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                value = CLag.cubicLagrangian2DC(X, Y);
-                            }
-                        }
-
-                        temp3 = 4 * (i + (j * oXdim));
-                        imgBuf2[temp3] = (float) value[0];
-                        imgBuf2[temp3 + 1] = (float) value[1];
-                        imgBuf2[temp3 + 2] = (float) value[2];
-                        imgBuf2[temp3 + 3] = (float) value[3];
-                    } // for i
-                } // for j
-
-                try {
-                    destImage.importData( (4 * l * oXdim * oYdim * oZdim) + (4 * k * oXdim * oYdim), imgBuf2, true);
-                } catch (final IOException error) {
-                    MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-                }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: IOException Error on importData");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
-
-        CLag.finalize();
-        CLag = null;
-        Preferences.debug("finished cubic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using heptic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformHepticLagrangian2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-        final int mod = Math.max(1, oXdim / 50);
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        HLag.setup2DHepticLagrangian(imgBuf, inVolExtents, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // convert to mm
-                value = fillValue; // if voxel is tranformed out of bounds
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-
-                // transform i,j
-                X = (temp1 + (jmm * T01)) / iXres;
-
-                if ( (X >= 0) && (X < iXdim)) { // check bounds
-                    Y = (temp2 + (jmm * T11)) / iYres;
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-                        value = HLag.hepticLagrangian2D(X, Y);
-                    }
-                }
-
-                destImage.set(i, j, value);
-            }
-        }
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using heptic Lagrangian interpolation This version used with color images.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformHepticLagrangian2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-        final int mod = Math.max(1, oXdim / 50);
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        HLag.setup2DHepticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // convert to mm
-                value[0] = fillValue; // if voxel is transformed out of bounds
-                value[1] = fillValue;
-                value[2] = fillValue;
-                value[3] = fillValue;
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-
-                // transform i,j
-                X = (temp1 + (jmm * T01)) / iXres;
-
-                if ( (X >= 0) && (X < iXdim)) { // check bounds
-                    Y = (temp2 + (jmm * T11)) / iYres;
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-                        value = HLag.hepticLagrangian2DC(X, Y);
-                    }
-                }
-
-                temp3 = 4 * (i + (j * oXdim));
-                imgBuf2[temp3] = (float) value[0];
-                imgBuf2[temp3 + 1] = (float) value[1];
-                imgBuf2[temp3 + 2] = (float) value[2];
-                imgBuf2[temp3 + 3] = (float) value[3];
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using heptic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformHepticLagrangian3D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oXdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        HLag.setup3DHepticLagrangian(imgBuf, inVolExtents, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + i1;
-                j2 = (jmm * T11) + i2;
-                j3 = (jmm * T21) + i3;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // convert to mm
-                    value = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
-
-                    // transform i,j,k
-                    X = (j1 + (kmm * T02)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (j2 + (kmm * T12)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            Z = (j3 + (kmm * T22)) / iZres;
-
-                            if ( (Z >= 0) && (Z < iZdim)) {
-                                value = HLag.hepticLagrangian3D(X, Y, Z);
-                            }
-                        }
-                    }
-
-                    destImage.set(i, j, k, value);
-                }
-            }
-        }
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using heptic Lagrangian interpolation This version used with color images.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformHepticLagrangian3DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double[] value = new double[4];
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oXdim / 50);
-
-        final int osliceSize = oXdim * oYdim;
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        int temp4;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        HLag.setup3DHepticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = jmm * T01;
-                j2 = jmm * T11;
-                j3 = jmm * T21;
-                temp1 = i3 + j3;
-                temp2 = i2 + j2;
-                temp3 = i1 + j1;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // convert to mm
-                    value[0] = fillValue; // if voxel is transformed out of bounds
-                    value[1] = fillValue;
-                    value[2] = fillValue;
-                    value[3] = fillValue;
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
-
-                    // transform i,j,k
-                    X = (temp3 + (kmm * T02)) / iXres;
-
-                    // convert back to pixels
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (kmm * T12)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            Z = (temp1 + (kmm * T22)) / iZres;
-
-                            if ( (Z >= 0) && (Z < iZdim)) {
-                                value = HLag.hepticLagrangian3DC(X, Y, Z);
-                            }
-                        }
-                    }
-
-                    temp4 = 4 * (i + (j * oXdim) + (k * osliceSize));
-                    imgBuf2[temp4] = (float) value[0];
-                    imgBuf2[temp4 + 1] = (float) value[1];
-                    imgBuf2[temp4 + 2] = (float) value[2];
-                    imgBuf2[temp4 + 3] = (float) value[3];
-                }
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using heptic Lagrangian interpolation Does a slice by slice heptic Lagrangian
-     * interpolation on a 3 dimensional object.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformHepticLagrangian3Dim2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        final int mod = Math.max(1, oZdim / 50);
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
-
-            HLag.setup2DHepticLagrangian(imgBuf, inVolExtents, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // convert to mm
-                    value = fillValue; // if voxel is transformed out of bounds
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-
-                    // transform i,j
-                    X = (temp1 + (jmm * T01)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (jmm * T11)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            value = HLag.hepticLagrangian2D(X, Y);
-                        }
-                    }
-
-                    destImage.set(i, j, k, value);
-                }
-            }
-
-            if (k < (oZdim - 1)) {
-
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (k < (oZdim - 1))
-        } // end for k
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using heptic Lagrangian interpolation This version used with color images This
-     * version performs a slice by slice algorithm on a 3 dimensional object.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformHepticLagrangian3Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        final int mod = Math.max(1, oZdim / 50);
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
-
-            if (srcImage.getType() == ModelStorageBase.ARGB) {
-                argbMax = 255.0f;
-            } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-                argbMax = 65535.0f;
-            }
-
-            HLag.setup2DHepticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // convert to mm
-                    value[0] = fillValue; // if voxel is transformed out of bounds
-                    value[1] = fillValue;
-                    value[2] = fillValue;
-                    value[3] = fillValue;
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-
-                    // transform i,j
-                    X = (temp1 + (jmm * T01)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (jmm * T11)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            value = HLag.hepticLagrangian2DC(X, Y);
-                        }
-                    }
-
-                    temp3 = 4 * (i + (j * oXdim));
-                    imgBuf2[temp3] = (float) value[0];
-                    imgBuf2[temp3 + 1] = (float) value[1];
-                    imgBuf2[temp3 + 2] = (float) value[2];
-                    imgBuf2[temp3 + 3] = (float) value[3];
-                } // for i
-            } // for j
-
-            try {
-                destImage.importData(4 * k * oXdim * oYdim, imgBuf2, true);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-            }
-
-            if (k < (oZdim - 1)) {
-
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: IOException Error on importData");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (k < (oZdim - 1))
-        } // end for k
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * transforms and resamples 4 dimensional object using 3D heptic Lagrangian interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     * @param clip if true clip output values to be within input range
-     */
-    private void transformHepticLagrangian4D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oTdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-
-            if ((!suppressProgressBar) && ( (l % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + .5));
-            }
-
-            HLag.setup3DHepticLagrangian(imgBuf, inVolExtents, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = jmm * T01;
-                    j2 = jmm * T11;
-                    j3 = jmm * T21;
-                    temp1 = i3 + j3;
-                    temp2 = i2 + j2;
-                    temp3 = i1 + j1;
-
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // convert to mm
-                        value = fillValue; // if voxel transformed out of bounds
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
-
-                        // transform i,j,k
-                        X = (temp3 + (kmm * T02)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (kmm * T12)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                Z = (temp1 + (kmm * T22)) / iZres;
-
-                                if ( (Z >= 0) && (Z < iZdim)) {
-                                    value = HLag.hepticLagrangian3D(X, Y, Z);
-                                }
-                            }
-                        }
-
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * transforms and resamples 4 dimensional object using 3D heptic Lagrangian interpolation.
-     * 
-     * @param imgBuf image array
-     * @param imgBuffer2
-     * @param kTM transformation matrix to be applied
-     * @param clip if true clip output values to be within input range
-     */
-    private void transformHepticLagrangian4DC(final double[] imgBuf, final float imgBuffer2[], final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value[] = new double[4];
-        int temp4;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        int oSliceSize;
-        int oVolSize;
-        final int mod = Math.max(1, oTdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        oSliceSize = oXdim * oYdim;
-        oVolSize = oSliceSize * oZdim;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-
-            if ((!suppressProgressBar) && ( (l % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + .5));
-            }
-
-            HLag.setup3DHepticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = jmm * T01;
-                    j2 = jmm * T11;
-                    j3 = jmm * T21;
-                    temp1 = i3 + j3;
-                    temp2 = i2 + j2;
-                    temp3 = i1 + j1;
-
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // convert to mm
-                        value[0] = fillValue; // if voxel transformed out of bounds
-                        value[1] = fillValue;
-                        value[2] = fillValue;
-                        value[3] = fillValue;
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
-
-                        // transform i,j,k
-                        X = (temp3 + (kmm * T02)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (kmm * T12)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                Z = (temp1 + (kmm * T22)) / iZres;
-
-                                if ( (Z >= 0) && (Z < iZdim)) {
-                                    value = HLag.hepticLagrangian3DC(X, Y, Z);
-                                }
-                            }
-                        }
-
-                        temp4 = 4 * (i + (j * oXdim) + (k * oSliceSize));
-                        imgBuffer2[temp4] = (float) value[0];
-                        imgBuffer2[temp4 + 1] = (float) value[1];
-                        imgBuffer2[temp4 + 2] = (float) value[2];
-                        imgBuffer2[temp4 + 3] = (float) value[3];
-                    }
-                }
-            }
-
-            try {
-                destImage.importData(4 * l * oVolSize, imgBuffer2, false);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException on destImage.importData");
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-
-        destImage.calcMinMax();
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using heptic Lagrangian interpolation Does a slice by slice heptic Lagrangian
-     * interpolation on a 4 dimensional object.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformHepticLagrangian4Dim2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                HLag.setup2DHepticLagrangian(imgBuf, inVolExtents, clip);
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
-
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // convert to mm
-                        value = fillValue; // if voxel transformed out of bounds
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-
-                        // transform i,j
-                        X = (temp1 + (jmm * T01)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (jmm * T11)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                value = HLag.hepticLagrangian2D(X, Y);
-                            }
-                        }
-
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: Image(s) locked");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using heptic Lagrangian interpolation This version used with color images This
-     * version performs a slice by slice algorithm on a 4 dimensional object.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformHepticLagrangian4Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmHepticLagrangian HLag = new AlgorithmHepticLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                if (srcImage.getType() == ModelStorageBase.ARGB) {
-                    argbMax = 255.0f;
-                } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-                    argbMax = 65535.0f;
-                }
-
-                HLag.setup2DHepticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
-
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // convert to mm
-                        value[0] = fillValue; // if voxel transformed out of bounds
-                        value[1] = fillValue;
-                        value[2] = fillValue;
-                        value[3] = fillValue;
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-
-                        // transform i,j
-                        X = (temp1 + (jmm * T01)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (jmm * T11)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                value = HLag.hepticLagrangian2DC(X, Y);
-                            }
-                        }
-
-                        temp3 = 4 * (i + (j * oXdim));
-                        imgBuf2[temp3] = (float) value[0];
-                        imgBuf2[temp3 + 1] = (float) value[1];
-                        imgBuf2[temp3 + 2] = (float) value[2];
-                        imgBuf2[temp3 + 3] = (float) value[3];
-                    } // for i
-                } // for j
-
-                try {
-                    destImage.importData( (4 * l * oXdim * oYdim * oZdim) + (4 * k * oXdim * oYdim), imgBuf2, true);
-                } catch (final IOException error) {
-                    MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-                }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: IOException Error on importData");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
-
-        HLag.finalize();
-        HLag = null;
-        Preferences.debug("finished heptic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using nearest neighbor interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor2D(final double[] imgBuf, final TransMatrix kTM) {
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        int roundX, roundY;
-        int xOffset, yOffset;
-        double value;
-        double imm, jmm;
-        double i1, i2;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final int mod = Math.max(1, oXdim / 50);
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T02;
-            i2 = (imm * T10) + T12;
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // transform i,j
-
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                value = fillValue;
-                X = (jmm * T01) + i1;
-                X = X * invXRes;
-                if ( (X >= -0.5) && (X < iXdim)) {
-                    Y = (jmm * T11) + i2;
-                    Y = Y * invYRes;
-                    if ( (Y >= -0.5) && (Y < iYdim)) {
-                        roundX = (int) (X + 0.5);
-                        roundY = (int) (Y + 0.5);
-
-                        xOffset = Math.min(roundX, iXdim - 1);
-                        yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                        value = imgBuf[xOffset + yOffset];
-                    } // if ((Y >= -0.5) && (Y < iYdim))
-                } // if ((X >= -0.5) && (X < iXdim))
-
-                destImage.set(i, j, value);
-            }
-        }
-    }
-
-    /**
-     * Transforms and resamples volume using nearest neighbor interpolation.
-     * 
-     * @param imgBuf input image array
-     * @param imgBuf2 output image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM) {
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        int roundX, roundY;
-        int xOffset, yOffset;
-        double imm, jmm;
-        double i1, i2;
-        float aValue;
-        float rValue;
-        float gValue;
-        float bValue;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        int inputSum;
-        int outputSum;
-        final int mod = Math.max(1, oXdim / 50);
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T02;
-            i2 = (imm * T10) + T12;
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // transform i,j
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                aValue = fillValue;
-                rValue = fillValue;
-                gValue = fillValue;
-                bValue = fillValue;
-                X = (jmm * T01) + i1;
-                X = X * invXRes;
-                if ( (X >= -0.5) && (X < iXdim)) {
-                    Y = (jmm * T11) + i2;
-                    Y = Y * invYRes;
-                    if ( (Y >= -0.5) && (Y < iYdim)) {
-                        roundX = (int) (X + 0.5);
-                        roundY = (int) (Y + 0.5);
-
-                        xOffset = Math.min(roundX, iXdim - 1);
-                        yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                        inputSum = 4 * (xOffset + yOffset);
-                        aValue = (float) imgBuf[inputSum];
-                        rValue = (float) imgBuf[inputSum + 1];
-                        gValue = (float) imgBuf[inputSum + 2];
-                        bValue = (float) imgBuf[inputSum + 3];
-                    } // if ((Y >= -0.5) && (Y < iYdim))
-                } // if ((X >= -0.5) && (X < iXdim))
-                outputSum = 4 * (i + (oXdim * j));
-                imgBuf2[outputSum] = aValue;
-                imgBuf2[outputSum + 1] = rValue;
-                imgBuf2[outputSum + 2] = gValue;
-                imgBuf2[outputSum + 3] = bValue;
-
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-    }
-
-    /**
-     * Transforms and resamples volume using nearest neighbor interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor3D(final double[] imgBuf, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        int xOffset, yOffset, zOffset;
-        double value;
-        int sliceSize;
-        int roundX, roundY, roundZ;
-        double imm, jmm, kmm;
-        double i1, i2, i3, j1, j2, j3;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        final int mod = Math.max(1, oXdim / 50);
-
-        sliceSize = iXdim * iYdim;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + i1;
-                j2 = (jmm * T11) + i2;
-                j3 = (jmm * T21) + i3;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // transform i,j,k
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
-                    value = fillValue;
-                    X = (kmm * T02) + j1;
-                    X = X * invXRes;
-                    if ( (X >= -0.5) && (X < iXdim)) {
-                        Y = (kmm * T12) + j2;
-                        Y = Y * invYRes;
-                        if ( (Y >= -0.5) && (Y < iYdim)) {
-                            Z = (kmm * T22) + j3;
-                            Z = Z * invZRes;
-                            if ( (Z >= -0.5) && (Z < iZdim)) {
-
-                                roundX = (int) (X + 0.5);
-                                roundY = (int) (Y + 0.5);
-                                roundZ = (int) (Z + 0.5);
-
-                                xOffset = Math.min(roundX, iXdim - 1);
-                                yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                                zOffset = Math.min(roundZ, iZdim - 1) * sliceSize;
-                                value = imgBuf[xOffset + yOffset + zOffset];
-                            } // if ((Z >= -0.5) && (Z < iZdim))
-                        } // if ((Y >= -0.5) && (Y < iYdim))
-                    } // if ((X >= -0.5) && (X < iXdim))
-
-                    destImage.set(i, j, k, value);
-                }
-            }
-        }
-    }
-
-    /**
-     * Transforms and resamples volume using nearest neighbor interpolation.
-     * 
-     * @param imgBuf input image array
-     * @param imgBuf2 output image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor3DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        int roundX, roundY, roundZ;
-        int xOffset, yOffset, zOffset;
-        int sliceSize;
-        int outSliceSize;
-        double imm, jmm, kmm;
-        double i1, i2, i3, j1, j2, j3;
-        float aValue;
-        float rValue;
-        float gValue;
-        float bValue;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-        int inputSum;
-        int outputSum;
-        final int mod = Math.max(1, oXdim / 50);
-
-        sliceSize = iXdim * iYdim;
-        outSliceSize = oXdim * oYdim;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + i1;
-                j2 = (jmm * T11) + i2;
-                j3 = (jmm * T21) + i3;
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // transform i,j,k
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
-                    aValue = fillValue;
-                    rValue = fillValue;
-                    gValue = fillValue;
-                    bValue = fillValue;
-                    X = (kmm * T02) + j1;
-                    X = X * invXRes;
-                    if ( (X >= -0.5) && (X < iXdim)) {
-                        Y = (kmm * T12) + j2;
-                        Y = Y * invYRes;
-                        if ( (Y >= -0.5) && (Y < iYdim)) {
-                            Z = (kmm * T22) + j3;
-                            Z = Z * invZRes;
-                            if ( (Z >= -0.5) && (Z < iZdim)) {
-                                roundX = (int) (X + 0.5);
-                                roundY = (int) (Y + 0.5);
-                                roundZ = (int) (Z + 0.5);
-
-                                xOffset = Math.min(roundX, iXdim - 1);
-                                yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                                zOffset = Math.min(roundZ, iZdim - 1) * sliceSize;
-                                inputSum = 4 * (xOffset + yOffset + zOffset);
-                                aValue = (float) imgBuf[inputSum];
-                                rValue = (float) imgBuf[inputSum + 1];
-                                gValue = (float) imgBuf[inputSum + 2];
-                                bValue = (float) imgBuf[inputSum + 3];
-                            } // if ((Z >= -0.5) && (Z < iZdim))
-                        } // if ((Y >= -0.5) && (Y < iYdim))
-                    } // if ((X >= -0.5) && (X < iXdim))
-                    outputSum = 4 * (i + (oXdim * j) + (outSliceSize * k));
-                    imgBuf2[outputSum] = aValue;
-                    imgBuf2[outputSum + 1] = rValue;
-                    imgBuf2[outputSum + 2] = gValue;
-                    imgBuf2[outputSum + 3] = bValue;
-                }
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-    }
-
-    /**
-     * Transforms and resamples volume using nearest neighbor interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor3Dim2D(final double[] imgBuf, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        int roundX, roundY;
-        int xOffset, yOffset;
-        double value;
-        double imm, jmm;
-        double i1, i2;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged(Math.round((float) k / oZdim * 100));
-            }
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T02;
-                i2 = (imm * T10) + T12;
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // transform i,j
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    value = fillValue;
-                    X = (jmm * T01) + i1;
-                    X = X * invXRes;
-                    if ( (X >= -0.5) && (X < iXdim)) {
-                        Y = (jmm * T11) + i2;
-                        Y = Y * invYRes;
-                        if ( (Y >= -0.5) && (Y < iYdim)) {
-                            roundX = (int) (X + 0.5);
-                            roundY = (int) (Y + 0.5);
-
-                            xOffset = Math.min(roundX, iXdim - 1);
-                            yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                            value = imgBuf[xOffset + yOffset];
-                        } // if ((Y >= -0.5) && (Y < iYdim))
-                    } // if ((X >= -0.5) && (X < iXdim))
-
-                    destImage.set(i, j, k, value);
-                }
-            }
-
-            if (threadStopped) {
-                return;
-            }
-
-            if (k < (oZdim - 1)) {
-
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm transform: Image(s) is locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // if (k < (oZdim - 1))
-        } // for (k = 0; k < oZdim && !threadStopped; k++)
-    }
-
-    /**
-     * Transforms and resamples volume using nearest neighbor interpolation.
-     * 
-     * @param imgBuf input image array
-     * @param imgBuf2 output image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor3Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        int roundX, roundY;
-        int xOffset, yOffset;
-        double imm, jmm;
-        double i1, i2;
-        float aValue;
-        float rValue;
-        float gValue;
-        float bValue;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        int inputSum;
-        int outputSum;
-        final int oSliceSize = oXdim * oYdim;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T02;
-                i2 = (imm * T10) + T12;
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // transform i,j
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    aValue = fillValue;
-                    rValue = fillValue;
-                    gValue = fillValue;
-                    bValue = fillValue;
-                    X = (jmm * T01) + i1;
-                    X = X * invXRes;
-                    if ( (X >= -0.5) && (X < iXdim)) {
-                        Y = (jmm * T11) + i2;
-                        Y = Y * invYRes;
-                        if ( (Y >= -0.5) && (Y < iYdim)) {
-                            roundX = (int) (X + 0.5);
-                            roundY = (int) (Y + 0.5);
-
-                            xOffset = Math.min(roundX, iXdim - 1);
-                            yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                            inputSum = 4 * (xOffset + yOffset);
-                            aValue = (float) imgBuf[inputSum];
-                            rValue = (float) imgBuf[inputSum + 1];
-                            gValue = (float) imgBuf[inputSum + 2];
-                            bValue = (float) imgBuf[inputSum + 3];
-                        } // if ((Y >= -0.5) && (Y < iYdim))
-                    } // if ((X >= -0.5) && (X < iXdim))
-                    outputSum = 4 * (i + (oXdim * j));
-                    imgBuf2[outputSum] = aValue;
-                    imgBuf2[outputSum + 1] = rValue;
-                    imgBuf2[outputSum + 2] = gValue;
-                    imgBuf2[outputSum + 3] = bValue;
-                }
-            }
-
-            try {
-                destImage.importData(4 * k * oSliceSize, imgBuf2, true);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-                setCompleted(false);
-
-                return;
-            }
-
-            if (k < (oZdim - 1)) {
-
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    MipavUtil.displayError("AlgorithmTransform: IOException Error on exportData");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // if (k < (oZdim - 1)
-        } // for (k = 0; k < oZdim && !threadStopped; k++)
-
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional object using 3D algorithm using nearest neighbor interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor4D(final double[] imgBuf, final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        int xOffset, yOffset, zOffset;
-        double value;
-        int sliceSize;
-        int roundX, roundY, roundZ;
-        double imm, jmm, kmm;
-        double i1, i2, i3, j1, j2, j3;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        sliceSize = iXdim * iYdim;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = (jmm * T01) + i1;
-                    j2 = (jmm * T11) + i2;
-                    j3 = (jmm * T21) + i3;
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // transform i,j,k
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
-                        value = fillValue;
-                        X = (kmm * T02) + j1;
-                        X = X * invXRes;
-                        if ( (X >= -0.5) && (X < iXdim)) {
-                            Y = (kmm * T12) + j2;
-                            Y = Y * invYRes;
-                            if ( (Y >= -0.5) && (Y < iYdim)) {
-                                Z = (kmm * T22) + j3;
-                                Z = Z * invZRes;
-                                if ( (Z >= -0.5) && (Z < iZdim)) {
-
-                                    roundX = (int) (X + 0.5);
-                                    roundY = (int) (Y + 0.5);
-                                    roundZ = (int) (Z + 0.5);
-
-                                    xOffset = Math.min(roundX, iXdim - 1);
-                                    yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                                    zOffset = Math.min(roundZ, iZdim - 1) * sliceSize;
-                                    value = imgBuf[xOffset + yOffset + zOffset];
-                                } // if ((Z >= -0.5) && (Z < iZdim))
-                            } // if ((Y >= -0.5) && (Y < iYdim))
-                        } // if ((X >= -0.5) && (X < iXdim))
-
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-            } // for i
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional object using 3D algorithm using nearest neighbor interpolation.
-     * 
-     * @param imgBuf image array
-     * @param imgBufffer2
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor4DC(final double[] imgBuf, final float imgBuffer2[], final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        int xOffset, yOffset, zOffset;
-        int sliceSize;
-        int oSliceSize;
-        int oVolSize;
-        int roundX, roundY, roundZ;
-        double imm, jmm, kmm;
-        double i1, i2, i3, j1, j2, j3;
-        float aValue;
-        float rValue;
-        float gValue;
-        float bValue;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-        int inputSum;
-        int outputSum;
-
-        sliceSize = iXdim * iYdim;
-        oSliceSize = oXdim * oYdim;
-        oVolSize = oSliceSize * oZdim;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = (jmm * T01) + i1;
-                    j2 = (jmm * T11) + i2;
-                    j3 = (jmm * T21) + i3;
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // transform i,j,k
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
-                        aValue = fillValue;
-                        rValue = fillValue;
-                        gValue = fillValue;
-                        bValue = fillValue;
-                        X = (kmm * T02) + j1;
-                        X = X * invXRes;
-                        if ( (X >= -0.5) && (X < iXdim)) {
-                            Y = (kmm * T12) + j2;
-                            Y = Y * invYRes;
-                            if ( (Y >= -0.5) && (Y < iYdim)) {
-                                Z = (kmm * T22) + j3;
-                                Z = Z * invZRes;
-                                if ( (Z >= -0.5) && (Z < iZdim)) {
-                                    roundX = (int) (X + 0.5);
-                                    roundY = (int) (Y + 0.5);
-                                    roundZ = (int) (Z + 0.5);
-
-                                    xOffset = Math.min(roundX, iXdim - 1);
-                                    yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                                    zOffset = Math.min(roundZ, iZdim - 1) * sliceSize;
-                                    inputSum = 4 * (xOffset + yOffset + zOffset);
-                                    aValue = (float) imgBuf[inputSum];
-                                    rValue = (float) imgBuf[inputSum + 1];
-                                    gValue = (float) imgBuf[inputSum + 2];
-                                    bValue = (float) imgBuf[inputSum + 3];
-                                } // if ((Z >= -0.5) && (Z < iZdim))
-                            } // if ((Y >= -0.5) && (Y < iYdim))
-                        } // if ((X >= -0.5) && (X < iXdim))
-                        outputSum = 4 * (i + (oXdim * j) + (oSliceSize * k));
-                        imgBuffer2[outputSum] = aValue;
-                        imgBuffer2[outputSum + 1] = rValue;
-                        imgBuffer2[outputSum + 2] = gValue;
-                        imgBuffer2[outputSum + 3] = bValue;
-                    }
-                }
-            } // for i
-
-            try {
-                destImage.importData(4 * l * oVolSize, imgBuffer2, false);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException on destImage.importData");
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-        destImage.calcMinMax();
-    }
-
-    /**
-     * Transforms and resamples volume using nearest neighbor interpolation.
-     * 
-     * @param imgBuf image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor4Dim2D(final double[] imgBuf, final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        int roundX, roundY;
-        int xOffset, yOffset;
-        double value;
-        double imm, jmm;
-        double i1, i2;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    i1 = (imm * T00) + T02;
-                    i2 = (imm * T10) + T12;
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // transform i,j
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-                        value = fillValue;
-                        X = (jmm * T01) + i1;
-                        X = X * invXRes;
-                        if ( (X >= -0.5) && (X < iXdim)) {
-                            Y = (jmm * T11) + i2;
-                            Y = Y * invYRes;
-                            if ( (Y >= -0.5) && (Y < iYdim)) {
-                                roundX = (int) (X + 0.5);
-                                roundY = (int) (Y + 0.5);
-
-                                xOffset = Math.min(roundX, iXdim - 1);
-                                yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                                value = imgBuf[xOffset + yOffset];
-                            } // if ((Y >= -0.5) && (Y < iYdim))
-                        } // if ((X >= -0.5) && (X < iXdim))
-
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: Image(s) locked");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // for k
-        } // for l
-
-    }
-
-    /**
-     * Transforms and resamples volume using nearest neighbor interpolation.
-     * 
-     * @param imgBuf input image array
-     * @param imgBuf2 output image array
-     * @param kTM transformation matrix to be applied
-     */
-    private void transformNearestNeighbor4Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        int roundX, roundY;
-        int xOffset, yOffset;
-        double imm, jmm;
-        double i1, i2;
-        float aValue;
-        float rValue;
-        float gValue;
-        float bValue;
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        int inputSum;
-        int outputSum;
-        final int oSliceSize = oXdim * oYdim;
-        final int oVolSize = oSliceSize * oZdim;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    i1 = (imm * T00) + T02;
-                    i2 = (imm * T10) + T12;
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // transform i,j
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-                        aValue = fillValue;
-                        rValue = fillValue;
-                        gValue = fillValue;
-                        bValue = fillValue;
-                        X = (jmm * T01) + i1;
-                        X = X * invXRes;
-                        if ( (X >= -0.5) && (X < iXdim)) {
-                            Y = (jmm * T11) + i2;
-                            Y = Y * invYRes;
-                            if ( (Y >= -0.5) && (Y < iYdim)) {
-                                roundX = (int) (X + 0.5);
-                                roundY = (int) (Y + 0.5);
-
-                                xOffset = Math.min(roundX, iXdim - 1);
-                                yOffset = Math.min(roundY, iYdim - 1) * iXdim;
-                                inputSum = 4 * (xOffset + yOffset);
-                                aValue = (float) imgBuf[inputSum];
-                                rValue = (float) imgBuf[inputSum + 1];
-                                gValue = (float) imgBuf[inputSum + 2];
-                                bValue = (float) imgBuf[inputSum + 3];
-                            } // if ((Y >= -0.5) && (Y < iYdim))
-                        } // if ((X >= -0.5) && (X < iXdim))
-                        outputSum = 4 * (i + (oXdim * j));
-                        imgBuf2[outputSum] = aValue;
-                        imgBuf2[outputSum + 1] = rValue;
-                        imgBuf2[outputSum + 2] = gValue;
-                        imgBuf2[outputSum + 3] = bValue;
-                    }
-                }
-
-                try {
-                    destImage.importData( (4 * l * oVolSize) + (4 * k * oSliceSize), imgBuf2, true);
-                } catch (final IOException error) {
-                    MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-                }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: IOException Error on exportData");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // for k
-        } // for l
-
-    }
-
-    /**
-     * Transforms and resamples volume using quintic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-        final int mod = Math.max(1, oXdim / 50);
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        QLag.setup2DQuinticLagrangian(imgBuf, inVolExtents, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // convert to mm
-                value = fillValue; // if voxel transformed out of bounds
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-
-                // transform i,j
-                X = (temp1 + (jmm * T01)) / iXres;
-
-                if ( (X >= 0) && (X < iXdim)) { // check bounds
-                    Y = (temp2 + (jmm * T11)) / iYres;
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-                        value = QLag.quinticLagrangian2D(X, Y);
-                    }
-                }
-
-                destImage.set(i, j, value);
-            }
-        }
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using quintic Lagrangian interpolation This version used with color images.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-        final int mod = Math.max(1, oXdim / 50);
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        QLag.setup2DQuinticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // convert to mm
-                value[0] = fillValue; // if voxel transforms out of bounds
-                value[1] = fillValue;
-                value[2] = fillValue;
-                value[3] = fillValue;
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-
-                // transform i,j
-                X = (temp1 + (jmm * T01)) / iXres;
-
-                if ( (X >= 0) && (X < iXdim)) { // check bounds
-                    Y = (temp2 + (jmm * T11)) / iYres;
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-                        value = QLag.quinticLagrangian2DC(X, Y);
-                    }
-                }
-
-                temp3 = 4 * (i + (j * oXdim));
-                imgBuf2[temp3] = (float) value[0];
-                imgBuf2[temp3 + 1] = (float) value[1];
-                imgBuf2[temp3 + 2] = (float) value[2];
-                imgBuf2[temp3 + 3] = (float) value[3];
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using quintic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian3D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oXdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        QLag.setup3DQuinticLagrangian(imgBuf, inVolExtents, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + i1;
-                j2 = (jmm * T11) + i2;
-                j3 = (jmm * T21) + i3;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // convert to mm
-                    value = fillValue; // if voxel transforms out of bounds
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
-
-                    // transform i,j,k
-                    X = (j1 + (kmm * T02)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (j2 + (kmm * T12)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            Z = (j3 + (kmm * T22)) / iZres;
-
-                            if ( (Z >= 0) && (Z < iZdim)) {
-                                value = QLag.quinticLagrangian3D(X, Y, Z);
-                            }
-                        }
-                    }
-
-                    destImage.set(i, j, k, value);
-                }
-            }
-        }
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using quintic Lagrangian interpolation This version used with color images.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian3DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double[] value = new double[4];
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oXdim / 50);
-
-        final int osliceSize = oXdim * oYdim;
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        int temp4;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        QLag.setup3DQuinticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = jmm * T01;
-                j2 = jmm * T11;
-                j3 = jmm * T21;
-                temp1 = i3 + j3;
-                temp2 = i2 + j2;
-                temp3 = i1 + j1;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // convert to mm
-                    value[0] = fillValue; // if voxel transforms out of bounds
-                    value[1] = fillValue;
-                    value[2] = fillValue;
-                    value[3] = fillValue;
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
-
-                    // transform i,j,k
-                    X = (temp3 + (kmm * T02)) / iXres;
-
-                    // convert back to pixels
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (kmm * T12)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            Z = (temp1 + (kmm * T22)) / iZres;
-
-                            if ( (Z >= 0) && (Z < iZdim)) {
-                                value = QLag.quinticLagrangian3DC(X, Y, Z);
-                            }
-                        }
-                    }
-
-                    temp4 = 4 * (i + (j * oXdim) + (k * osliceSize));
-                    imgBuf2[temp4] = (float) value[0];
-                    imgBuf2[temp4 + 1] = (float) value[1];
-                    imgBuf2[temp4 + 2] = (float) value[2];
-                    imgBuf2[temp4 + 3] = (float) value[3];
-                }
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using quintic Lagrangian interpolation Does a slice by slice quintic Lagrangian
-     * interpolation on a 3 dimensional object.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian3Dim2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        final int mod = Math.max(1, oZdim / 50);
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
-
-            QLag.setup2DQuinticLagrangian(imgBuf, inVolExtents, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // convert to mm
-                    value = fillValue; // if voxel transforms out of bounds
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-
-                    // transform i,j
-                    X = (temp1 + (jmm * T01)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (jmm * T11)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            value = QLag.quinticLagrangian2D(X, Y);
-                        }
-                    }
-
-                    destImage.set(i, j, k, value);
-                }
-            }
-
-            if (k < (oZdim - 1)) {
-
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (k < (oZdim - 1))
-        } // end for k
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using quintic Lagrangian interpolation This version used with color images This
-     * version performs a slice by slice algorithm on a 3 dimensional object.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian3Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        final int mod = Math.max(1, oZdim / 50);
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
-
-            if (srcImage.getType() == ModelStorageBase.ARGB) {
-                argbMax = 255.0f;
-            } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-                argbMax = 65535.0f;
-            }
-
-            QLag.setup2DQuinticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // convert to mm
-                    value[0] = fillValue; // if voxel transforms out of bounds
-                    value[1] = fillValue;
-                    value[2] = fillValue;
-                    value[3] = fillValue;
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-
-                    // transform i,j
-                    X = (temp1 + (jmm * T01)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (jmm * T11)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            value = QLag.quinticLagrangian2DC(X, Y);
-                        }
-                    }
-
-                    temp3 = 4 * (i + (j * oXdim));
-                    imgBuf2[temp3] = (float) value[0];
-                    imgBuf2[temp3 + 1] = (float) value[1];
-                    imgBuf2[temp3 + 2] = (float) value[2];
-                    imgBuf2[temp3 + 3] = (float) value[3];
-                } // for i
-            } // for j
-
-            if (threadStopped) {
-                return;
-            }
-
-            try {
-                destImage.importData(4 * k * oXdim * oYdim, imgBuf2, true);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-            }
-
-            if (k < (oZdim - 1)) {
-
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: IOException Error on importData");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (k < (oZdim - 1))
-        } // end for k
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional color object using 3D quintic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param imgBuf2
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian4DC(final double[] imgBuf, final float[] imgBuffer2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value[] = new double[4];
-        int temp4;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        int oSliceSize;
-        int oVolSize;
-        final int mod = Math.max(1, oTdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        oSliceSize = oXdim * oYdim;
-        oVolSize = oSliceSize * oZdim;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-
-            if ((!suppressProgressBar) && ( (l % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + .5));
-            }
-
-            QLag.setup3DQuinticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = jmm * T01;
-                    j2 = jmm * T11;
-                    j3 = jmm * T21;
-                    temp1 = i3 + j3;
-                    temp2 = i2 + j2;
-                    temp3 = i1 + j1;
-
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // convert to mm
-                        value[0] = fillValue; // if voxel transforms out of bounds
-                        value[1] = fillValue;
-                        value[2] = fillValue;
-                        value[3] = fillValue;
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
-
-                        // transform i,j,k
-                        X = (temp3 + (kmm * T02)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (kmm * T12)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                Z = (temp1 + (kmm * T22)) / iZres;
-
-                                if ( (Z >= 0) && (Z < iZdim)) {
-                                    value = QLag.quinticLagrangian3DC(X, Y, Z);
-                                }
-                            }
-                        }
-
-                        temp4 = 4 * (i + (j * oXdim) + (k * oSliceSize));
-                        imgBuffer2[temp4] = (float) value[0];
-                        imgBuffer2[temp4 + 1] = (float) value[1];
-                        imgBuffer2[temp4 + 2] = (float) value[2];
-                        imgBuffer2[temp4 + 3] = (float) value[3];
-                    }
-                }
-            }
-
-            try {
-                destImage.importData(4 * l * oVolSize, imgBuffer2, false);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException on destImage.importData");
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-
-        destImage.calcMinMax();
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional object using 3D quintic Lagrangian interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian4D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oTdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-
-            if ((!suppressProgressBar) && ( (l % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + .5));
-            }
-
-            QLag.setup3DQuinticLagrangian(imgBuf, inVolExtents, clip);
-
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = jmm * T01;
-                    j2 = jmm * T11;
-                    j3 = jmm * T21;
-                    temp1 = i3 + j3;
-                    temp2 = i2 + j2;
-                    temp3 = i1 + j1;
-
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // convert to mm
-                        value = fillValue; // if voxel transforms out of bounds
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
-
-                        // transform i,j,k
-                        X = (temp3 + (kmm * T02)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (kmm * T12)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                Z = (temp1 + (kmm * T22)) / iZres;
-
-                                if ( (Z >= 0) && (Z < iZdim)) {
-                                    value = QLag.quinticLagrangian3D(X, Y, Z);
-                                }
-                            }
-                        }
-
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using quintic Lagrangian interpolation Does a slice by slice quintic Lagrangian
-     * interpolation on a 4 dimensional object.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian4Dim2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                QLag.setup2DQuinticLagrangian(imgBuf, inVolExtents, clip);
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
-
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // convert to mm
-                        value = fillValue; // if voxel transforms out of bounds
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-
-                        // transform i,j
-                        X = (temp1 + (jmm * T01)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (jmm * T11)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                value = QLag.quinticLagrangian2D(X, Y);
-                            }
-                        }
-
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: Image(s) locked");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-
-    }
-
-    /**
-     * Transforms and resamples volume using quintic Lagrangian interpolation This version used with color images This
-     * version performs a slice by slice algorithm on a 4 dimensional object.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip if <code>true</code> clip output values to be within input range
-     */
-    private void transformQuinticLagrangian4Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                if (srcImage.getType() == ModelStorageBase.ARGB) {
-                    argbMax = 255.0f;
-                } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-                    argbMax = 65535.0f;
-                }
-
-                QLag.setup2DQuinticLagrangianC(imgBuf, inVolExtents, argbMax, clip);
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
-
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // convert to mm
-                        value[0] = fillValue; // if voxel transforms out of bounds
-                        value[1] = fillValue;
-                        value[2] = fillValue;
-                        value[3] = fillValue;
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-
-                        // transform i,j
-                        X = (temp1 + (jmm * T01)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (jmm * T11)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                value = QLag.quinticLagrangian2DC(X, Y);
-                            }
-                        }
-
-                        temp3 = 4 * (i + (j * oXdim));
-                        imgBuf2[temp3] = (float) value[0];
-                        imgBuf2[temp3 + 1] = (float) value[1];
-                        imgBuf2[temp3 + 2] = (float) value[2];
-                        imgBuf2[temp3 + 3] = (float) value[3];
-                    } // for j
-                } // for i
-
-                try {
-                    destImage.importData( (4 * l * oXdim * oYdim * oZdim) + (4 * k * oXdim * oYdim), imgBuf2, true);
-                } catch (final IOException error) {
-                    MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-                }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: IOException Error on importData");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
-
-        QLag.finalize();
-        QLag = null;
-        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples a 3D volume using trilinear interpolation.
-     * 
-     * @param imgBuffer Image array
-     * @param kTM Transformation matrix to be applied
-     */
-    private void transformTrilinear(final double[] imgBuffer, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double[] tempBuf;
-        double X, Y, Z;
-        int x0, y0, z0;
-        double value;
-        double imm, jmm, kmm;
-        double k1, k2, k3, j1, j2, j3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        int deltaX, deltaY, deltaZ;
-
-        int sliceSize;
-        sliceSize = iXdim * iYdim;
-
-        imgLength2 = oXdim * oYdim * oZdim;
-        tempBuf = new double[imgLength2];
-
-        final int mod = Math.max(1, oZdim / 50);
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-        // T30 = (float)xfrm[3][0]; T31 = (float)xfrm[3][1]; T32 = (float)xfrm[3][2]; T33 = (float)xfrm[3][3];
-
-        int position1, position2;
-        double b1, b2;
-        double dx, dy, dz, dx1, dy1;
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        int index = 0;
-
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-            if ((!suppressProgressBar) &&  ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5f));
-            }
-
-            if (pad) {
-                kAdj = k - AlgorithmTransform.margins[2];
-            } else {
-                kAdj = k;
-            }
-
-            kmm = kAdj * oZres;
-            k1 = (kmm * T02) + T03;
-            k2 = (kmm * T12) + T13;
-            k3 = (kmm * T22) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + k1;
-                j2 = (jmm * T11) + k2;
-                j3 = (jmm * T21) + k3;
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                    // transform i,j,k
-                    value = fillValue; // if voxel transforms out of bounds
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-
-                    imm = iAdj * oXres;
-                    X = (j1 + (imm * T00)) * invXRes;
-
-                    if ( (X > -0.5) && (X < iXdim)) {
-                        Y = (j2 + (imm * T10)) * invYRes;
-                        if ( (Y > -0.5) && (Y < iYdim)) {
-                            Z = (j3 + (imm * T20)) * invZRes;
-                            
-                            if ( (Z > -0.5) && (Z < iZdim)) {
-
-                                if (X <= 0) {
-                                    x0 = 0;
-                                    dx = 0;
-                                    deltaX = 0;
-                                } else if (X >= (iXdim - 1)) {
-                                    x0 = iXdim - 1;
-                                    dx = 0;
-                                    deltaX = 0;
-                                } else {
-                                    x0 = (int) X;
-                                    dx = X - x0;
-                                    deltaX = 1;
-                                }
-
-                                if (Y <= 0) {
-                                    y0 = 0;
-                                    dy = 0;
-                                    deltaY = 0;
-                                } else if (Y >= (iYdim - 1)) {
-                                    y0 = iYdim - 1;
-                                    dy = 0;
-                                    deltaY = 0;
-                                } else {
-                                    y0 = (int) Y;
-                                    dy = Y - y0;
-                                    deltaY = iXdim;
-                                }
-
-                                if (Z <= 0) {
-                                    z0 = 0;
-                                    dz = 0;
-                                    deltaZ = 0;
-                                } else if (Z >= (iZdim - 1)) {
-                                    z0 = iZdim - 1;
-                                    dz = 0;
-                                    deltaZ = 0;
-                                } else {
-                                    z0 = (int) Z;
-                                    dz = Z - z0;
-                                    deltaZ = sliceSize;
-                                }
-
-                                dx1 = 1 - dx;
-                                dy1 = 1 - dy;
-
-                                position1 = (z0 * sliceSize) + (y0 * iXdim) + x0;
-                                position2 = position1 + deltaZ;
-
-                                b1 = (dy1 * ( (dx1 * imgBuffer[position1]) + (dx * imgBuffer[position1 + deltaX])))
-                                        + (dy * ( (dx1 * imgBuffer[position1 + deltaY]) + (dx * imgBuffer[position1
-                                                + deltaY + deltaX])));
-
-                                b2 = (dy1 * ( (dx1 * imgBuffer[position2]) + (dx * imgBuffer[position2 + deltaX])))
-                                        + (dy * ( (dx1 * imgBuffer[position2 + deltaY]) + (dx * imgBuffer[position2
-                                                + deltaY + deltaX])));
-
-                                value = ( (1 - dz) * b1) + (dz * b2);
-
-                            } // end if Z in bounds
-                        } // end if Y in bounds
-                    } // end if X in bounds
-
-                    tempBuf[index++] = value;
-                } // end for i
-            } // end for j
-        } // end for k
-
-        try {
-            destImage.importData(0, tempBuf, false);
-            tempBuf = null;
-        } catch (final IOException error) {
-            displayError("AlgorithmTransform: IOException on destImage.importdata(0,imgBUf2, false).");
-
-            setCompleted(false);
-
-            return;
-        }
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional object using trilinear interpolation.
-     * 
-     * @param imgBuffer Image array
-     * @param kTM Transformation matrix to be applied
-     */
-    private void transformTrilinear4D(final double[] imgBuffer, final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        int x0, y0, z0;
-        double value;
-        int sliceSize;
-        double imm, jmm, kmm;
-        double k1, k2, k3, j1, j2, j3;
-
-        sliceSize = iXdim * iYdim;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        int deltaX, deltaY, deltaZ;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        int position1, position2;
-        double b1, b2;
-        double dx, dy, dz, dx1, dy1;
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        int index = 0;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged(Math.round((float) l / oTdim * 100));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                if (pad) {
-                    kAdj = k - AlgorithmTransform.margins[2];
-                } else {
-                    kAdj = k;
-                }
-                kmm = kAdj * oZres;
-                k1 = (kmm * T02) + T03;
-                k2 = (kmm * T12) + T13;
-                k3 = (kmm * T22) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = (jmm * T01) + k1;
-                    j2 = (jmm * T11) + k2;
-                    j3 = (jmm * T21) + k3;
-
-                    for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                        // transform i,j,k
-                        value = fillValue; // if voxel is transformed out of bounds
-                        if (pad) {
-                            iAdj = i - AlgorithmTransform.margins[0];
-                        } else {
-                            iAdj = i;
-                        }
-                        imm = iAdj * oXres;
-                        X = (j1 + (imm * T00)) * invXRes;
-
-                        if ( (X > -0.5) && (X < iXdim)) {
-                            Y = (j2 + (imm * T10)) * invYRes;
-
-                            if ( (Y > -0.5) && (Y < iYdim)) {
-                                Z = (j3 + (imm * T20)) * invZRes;
-
-                                if ( (Z > -0.5) && (Z < iZdim)) {
-
-                                    if (X <= 0) {
-                                        x0 = 0;
-                                        dx = 0;
-                                        deltaX = 0;
-                                    } else if (X >= (iXdim - 1)) {
-                                        x0 = iXdim - 1;
-                                        dx = 0;
-                                        deltaX = 0;
-                                    } else {
-                                        x0 = (int) X;
-                                        dx = X - x0;
-                                        deltaX = 1;
-                                    }
-
-                                    if (Y <= 0) {
-                                        y0 = 0;
-                                        dy = 0;
-                                        deltaY = 0;
-                                    } else if (Y >= (iYdim - 1)) {
-                                        y0 = iYdim - 1;
-                                        dy = 0;
-                                        deltaY = 0;
-                                    } else {
-                                        y0 = (int) Y;
-                                        dy = Y - y0;
-                                        deltaY = iXdim;
-                                    }
-
-                                    if (Z <= 0) {
-                                        z0 = 0;
-                                        dz = 0;
-                                        deltaZ = 0;
-                                    } else if (Z >= (iZdim - 1)) {
-                                        z0 = iZdim - 1;
-                                        dz = 0;
-                                        deltaZ = 0;
-                                    } else {
-                                        z0 = (int) Z;
-                                        dz = Z - z0;
-                                        deltaZ = sliceSize;
-                                    }
-
-                                    dx1 = 1 - dx;
-                                    dy1 = 1 - dy;
-
-                                    position1 = (z0 * sliceSize) + (y0 * iXdim) + x0;
-                                    position2 = position1 + deltaZ;
-
-                                    b1 = (dy1 * ( (dx1 * imgBuffer[position1]) + (dx * imgBuffer[position1 + deltaX])))
-                                            + (dy * ( (dx1 * imgBuffer[position1 + deltaY]) + (dx * imgBuffer[position1
-                                                    + deltaY + deltaX])));
-
-                                    b2 = (dy1 * ( (dx1 * imgBuffer[position2]) + (dx * imgBuffer[position2 + deltaX])))
-                                            + (dy * ( (dx1 * imgBuffer[position2 + deltaY]) + (dx * imgBuffer[position2
-                                                    + deltaY + deltaX])));
-
-                                    value = ( (1 - dz) * b1) + (dz * b2);
-                                } // end if Z in bounds
-                            } // end if Y in bounds
-                        } // end if X in bounds
-
-                        destImage.set(index++, value);
-                    } // end for i
-                } // end for j
-            } // end for k
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // end for l
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional color ARGB object using trilinear interpolation.
-     * 
-     * @param imgBuffer Image array
-     * @param imgBuf2
-     * @param kTM Transformation matrix to be applied Byte buffers are used to reduce memory requirements by a factor of
-     *            4
-     */
-    private void transformTrilinear4DByteC(final byte[] imgBuffer, final byte[] imgBuffer2, final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        float X, Y, Z;
-        int x0, y0, z0;
-        int temp;
-        int sliceSize;
-        int oSliceSize;
-        int oVolSize;
-        float imm, jmm, kmm;
-        float k1, k2, k3, j1, j2, j3;
-        byte byteFillValue;
-
-        if (fillValue > 255.0f) {
-            byteFillValue = (byte) 255;
-        } else if (fillValue < 0.0f) {
-            byteFillValue = 0;
-        } else {
-            byteFillValue = (byte) (fillValue + 0.5f);
-        }
-
-        sliceSize = iXdim * iYdim;
-        oSliceSize = oXdim * oYdim;
-        oVolSize = oSliceSize * oZdim;
-
-        float T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        int deltaX, deltaY, deltaZ;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        int position1, position2;
-        float b1, b2;
-        float dx, dy, dz, dx1, dy1;
-
-        final float invXRes = 1 / iXres;
-        final float invYRes = 1 / iYres;
-        final float invZRes = 1 / iZres;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged(Math.round((float) l / oTdim * 100));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                if (pad) {
-                    kAdj = k - AlgorithmTransform.margins[2];
-                } else {
-                    kAdj = k;
-                }
-                kmm = kAdj * oZres;
-                k1 = (kmm * T02) + T03;
-                k2 = (kmm * T12) + T13;
-                k3 = (kmm * T22) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = (jmm * T01) + k1;
-                    j2 = (jmm * T11) + k2;
-                    j3 = (jmm * T21) + k3;
-
-                    for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                        // transform i,j,k
-                        temp = 4 * (i + (j * oXdim) + (k * oSliceSize));
-                        imgBuffer2[temp] = byteFillValue; // if voxel is transformed out of bounds
-                        imgBuffer2[temp + 1] = byteFillValue;
-                        imgBuffer2[temp + 2] = byteFillValue;
-                        imgBuffer2[temp + 3] = byteFillValue;
-                        if (pad) {
-                            iAdj = i - AlgorithmTransform.margins[0];
-                        } else {
-                            iAdj = i;
-                        }
-                        imm = iAdj * oXres;
-                        X = (j1 + (imm * T00)) * invXRes;
-
-                        if ( (X > -0.5f) && (X < iXdim)) {
-                            Y = (j2 + (imm * T10)) * invYRes;
-
-                            if ( (Y > -0.5f) && (Y < iYdim)) {
-                                Z = (j3 + (imm * T20)) * invZRes;
-
-                                if ( (Z > -0.5f) && (Z < iZdim)) {
-
-                                    if (X <= 0) {
-                                        x0 = 0;
-                                        dx = 0;
-                                        deltaX = 0;
-                                    } else if (X >= (iXdim - 1)) {
-                                        x0 = iXdim - 1;
-                                        dx = 0;
-                                        deltaX = 0;
-                                    } else {
-                                        x0 = (int) X;
-                                        dx = X - x0;
-                                        deltaX = 1;
-                                    }
-
-                                    if (Y <= 0) {
-                                        y0 = 0;
-                                        dy = 0;
-                                        deltaY = 0;
-                                    } else if (Y >= (iYdim - 1)) {
-                                        y0 = iYdim - 1;
-                                        dy = 0;
-                                        deltaY = 0;
-                                    } else {
-                                        y0 = (int) Y;
-                                        dy = Y - y0;
-                                        deltaY = iXdim;
-                                    }
-
-                                    if (Z <= 0) {
-                                        z0 = 0;
-                                        dz = 0;
-                                        deltaZ = 0;
-                                    } else if (Z >= (iZdim - 1)) {
-                                        z0 = iZdim - 1;
-                                        dz = 0;
-                                        deltaZ = 0;
-                                    } else {
-                                        z0 = (int) Z;
-                                        dz = Z - z0;
-                                        deltaZ = sliceSize;
-                                    }
-
-                                    dx1 = 1 - dx;
-                                    dy1 = 1 - dy;
-
-                                    position1 = (z0 * sliceSize) + (y0 * iXdim) + x0;
-                                    position2 = position1 + deltaZ;
-
-                                    b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX)] & 0xff))))
-                                            + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY)] & 0xff)) + (dx * (imgBuffer[4 * (position1
-                                                    + deltaY + deltaX)] & 0xff))));
-
-                                    b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX)] & 0xff))))
-                                            + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY)] & 0xff)) + (dx * (imgBuffer[4 * (position2
-                                                    + deltaY + deltaX)] & 0xff))));
-
-                                    imgBuffer2[temp] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
-
-                                    b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 1] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 1] & 0xff))))
-                                            + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 1] & 0xff)) + (dx * (imgBuffer[4 * (position1
-                                                    + deltaY + deltaX) + 1] & 0xff))));
-
-                                    b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 1] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 1] & 0xff))))
-                                            + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 1] & 0xff)) + (dx * (imgBuffer[4 * (position2
-                                                    + deltaY + deltaX) + 1] & 0xff))));
-
-                                    imgBuffer2[temp + 1] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
-
-                                    b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 2] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 2] & 0xff))))
-                                            + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 2] & 0xff)) + (dx * (imgBuffer[4 * (position1
-                                                    + deltaY + deltaX) + 2] & 0xff))));
-
-                                    b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 2] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 2] & 0xff))))
-                                            + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 2] & 0xff)) + (dx * (imgBuffer[4 * (position2
-                                                    + deltaY + deltaX) + 2] & 0xff))));
-
-                                    imgBuffer2[temp + 2] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
-
-                                    b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 3] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 3] & 0xff))))
-                                            + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 3] & 0xff)) + (dx * (imgBuffer[4 * (position1
-                                                    + deltaY + deltaX) + 3] & 0xff))));
-
-                                    b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 3] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 3] & 0xff))))
-                                            + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 3] & 0xff)) + (dx * (imgBuffer[4 * (position2
-                                                    + deltaY + deltaX) + 3] & 0xff))));
-
-                                    imgBuffer2[temp + 3] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
-                                } // end if Z in bounds
-                            } // end if Y in bounds
-                        } // end if X in bounds
-                    } // end for i
-                } // end for j
-            } // end for k
-
-            try {
-                destImage.importData(4 * l * oVolSize, imgBuffer2, false);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException on destImage.importData");
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // end for l
-        destImage.calcMinMax();
-    }
-
-    /**
-     * Transforms and resamples 4 dimensional color object using trilinear interpolation.
-     * 
-     * @param imgBuffer Image array
-     * @param imgBuf2
-     * @param kTM Transformation matrix to be applied
-     */
-    private void transformTrilinear4DC(final double[] imgBuffer, final float[] imgBuffer2, final TransMatrix kTM) {
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        int x0, y0, z0;
-        int temp;
-        int sliceSize;
-        int oSliceSize;
-        int oVolSize;
-        double imm, jmm, kmm;
-        double k1, k2, k3, j1, j2, j3;
-
-        sliceSize = iXdim * iYdim;
-        oSliceSize = oXdim * oYdim;
-        oVolSize = oSliceSize * oZdim;
-
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        int deltaX, deltaY, deltaZ;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        int position1, position2;
-        double b1, b2;
-        double dx, dy, dz, dx1, dy1;
-
-        final double invXRes = 1.0 / iXres;
-        final double invYRes = 1.0 / iYres;
-        final double invZRes = 1.0 / iZres;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged(Math.round((float) l / oTdim * 100));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                if (pad) {
-                    kAdj = k - AlgorithmTransform.margins[2];
-                } else {
-                    kAdj = k;
-                }
-                kmm = kAdj * oZres;
-                k1 = (kmm * T02) + T03;
-                k2 = (kmm * T12) + T13;
-                k3 = (kmm * T22) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = (jmm * T01) + k1;
-                    j2 = (jmm * T11) + k2;
-                    j3 = (jmm * T21) + k3;
-
-                    for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-                        // transform i,j,k
-                        temp = 4 * (i + (j * oXdim) + (k * oSliceSize));
-                        imgBuffer2[temp] = fillValue; // if voxel is transformed out of bounds
-                        imgBuffer2[temp + 1] = fillValue;
-                        imgBuffer2[temp + 2] = fillValue;
-                        imgBuffer2[temp + 3] = fillValue;
-                        if (pad) {
-                            iAdj = i - AlgorithmTransform.margins[0];
-                        } else {
-                            iAdj = i;
-                        }
-                        imm = iAdj * oXres;
-                        X = (j1 + (imm * T00)) * invXRes;
-
-                        if ( (X > -0.5) && (X < iXdim)) {
-                            Y = (j2 + (imm * T10)) * invYRes;
-
-                            if ( (Y > -0.5) && (Y < iYdim)) {
-                                Z = (j3 + (imm * T20)) * invZRes;
-
-                                if ( (Z > -0.5) && (Z < iZdim)) {
-
-                                    if (X <= 0) {
-                                        x0 = 0;
-                                        dx = 0;
-                                        deltaX = 0;
-                                    } else if (X >= (iXdim - 1)) {
-                                        x0 = iXdim - 1;
-                                        dx = 0;
-                                        deltaX = 0;
-                                    } else {
-                                        x0 = (int) X;
-                                        dx = X - x0;
-                                        deltaX = 1;
-                                    }
-
-                                    if (Y <= 0) {
-                                        y0 = 0;
-                                        dy = 0;
-                                        deltaY = 0;
-                                    } else if (Y >= (iYdim - 1)) {
-                                        y0 = iYdim - 1;
-                                        dy = 0;
-                                        deltaY = 0;
-                                    } else {
-                                        y0 = (int) Y;
-                                        dy = Y - y0;
-                                        deltaY = iXdim;
-                                    }
-
-                                    if (Z <= 0) {
-                                        z0 = 0;
-                                        dz = 0;
-                                        deltaZ = 0;
-                                    } else if (Z >= (iZdim - 1)) {
-                                        z0 = iZdim - 1;
-                                        dz = 0;
-                                        deltaZ = 0;
-                                    } else {
-                                        z0 = (int) Z;
-                                        dz = Z - z0;
-                                        deltaZ = sliceSize;
-                                    }
-
-                                    dx1 = 1 - dx;
-                                    dy1 = 1 - dy;
-
-                                    position1 = (z0 * sliceSize) + (y0 * iXdim) + x0;
-                                    position2 = position1 + deltaZ;
-
-                                    b1 = (dy1 * ( (dx1 * imgBuffer[4 * position1]) + (dx * imgBuffer[4 * (position1 + deltaX)])))
-                                            + (dy * ( (dx1 * imgBuffer[4 * (position1 + deltaY)]) + (dx * imgBuffer[4 * (position1
-                                                    + deltaY + deltaX)])));
-
-                                    b2 = (dy1 * ( (dx1 * imgBuffer[4 * position2]) + (dx * imgBuffer[4 * (position2 + deltaX)])))
-                                            + (dy * ( (dx1 * imgBuffer[4 * (position2 + deltaY)]) + (dx * imgBuffer[4 * (position2
-                                                    + deltaY + deltaX)])));
-
-                                    imgBuffer2[temp] = (float) ( ( (1 - dz) * b1) + (dz * b2));
-
-                                    b1 = (dy1 * ( (dx1 * imgBuffer[4 * position1 + 1]) + (dx * imgBuffer[4 * (position1 + deltaX) + 1])))
-                                            + (dy * ( (dx1 * imgBuffer[4 * (position1 + deltaY) + 1]) + (dx * imgBuffer[4 * (position1
-                                                    + deltaY + deltaX) + 1])));
-
-                                    b2 = (dy1 * ( (dx1 * imgBuffer[4 * position2 + 1]) + (dx * imgBuffer[4 * (position2 + deltaX) + 1])))
-                                            + (dy * ( (dx1 * imgBuffer[4 * (position2 + deltaY) + 1]) + (dx * imgBuffer[4 * (position2
-                                                    + deltaY + deltaX) + 1])));
-
-                                    imgBuffer2[temp + 1] = (float) ( ( (1 - dz) * b1) + (dz * b2));
-
-                                    b1 = (dy1 * ( (dx1 * imgBuffer[4 * position1 + 2]) + (dx * imgBuffer[4 * (position1 + deltaX) + 2])))
-                                            + (dy * ( (dx1 * imgBuffer[4 * (position1 + deltaY) + 2]) + (dx * imgBuffer[4 * (position1
-                                                    + deltaY + deltaX) + 2])));
-
-                                    b2 = (dy1 * ( (dx1 * imgBuffer[4 * position2 + 2]) + (dx * imgBuffer[4 * (position2 + deltaX) + 2])))
-                                            + (dy * ( (dx1 * imgBuffer[4 * (position2 + deltaY) + 2]) + (dx * imgBuffer[4 * (position2
-                                                    + deltaY + deltaX) + 2])));
-
-                                    imgBuffer2[temp + 2] = (float) ( ( (1 - dz) * b1) + (dz * b2));
-
-                                    b1 = (dy1 * ( (dx1 * imgBuffer[4 * position1 + 3]) + (dx * imgBuffer[4 * (position1 + deltaX) + 3])))
-                                            + (dy * ( (dx1 * imgBuffer[4 * (position1 + deltaY) + 3]) + (dx * imgBuffer[4 * (position1
-                                                    + deltaY + deltaX) + 3])));
-
-                                    b2 = (dy1 * ( (dx1 * imgBuffer[4 * position2 + 3]) + (dx * imgBuffer[4 * (position2 + deltaX) + 3])))
-                                            + (dy * ( (dx1 * imgBuffer[4 * (position2 + deltaY) + 3]) + (dx * imgBuffer[4 * (position2
-                                                    + deltaY + deltaX) + 3])));
-
-                                    imgBuffer2[temp + 3] = (float) ( ( (1 - dz) * b1) + (dz * b2));
-                                } // end if Z in bounds
-                            } // end if Y in bounds
-                        } // end if X in bounds
-                    } // end for i
-                } // end for j
-            } // end for k
-
-            try {
-                destImage.importData(4 * l * oVolSize, imgBuffer2, false);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException on destImage.importData");
-            }
-
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // end for l
-        destImage.calcMinMax();
-    }
-
-    /**
-     * Transforms and resamples volume using trilinear interpolation This version is used with color images.
-     * 
-     * @param imgBuffer Input image array
-     * @param imgBuffer2 Output image array
-     * @param kTM Transformation matrix to be applied
-     */
-    private void transformTrilinearC(final double[] imgBuffer, final float[] imgBuffer2, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        int x0, y0, z0;
-        int sliceSize, osliceSize;
-        double imm, jmm, kmm;
-        double temp1, temp2, temp3;
-        int temp8;
-        int deltaX, deltaY, deltaZ;
-        int position1, position2;
-        double b1, b2;
-        double dx, dy, dz, dx1, dy1;
-
-        sliceSize = iXdim * iYdim;
-        osliceSize = oXdim * oYdim;
-
-        double i1, i2, i3, j1, j2, j3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged(Math.round((float) i / (oXdim) * 100));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-
-                jmm = jAdj * oYres;
-                j1 = jmm * T01;
-                j2 = jmm * T11;
-                j3 = jmm * T21;
-                temp1 = i3 + j3;
-                temp2 = i2 + j2;
-                temp3 = i1 + j1;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // transform i,j,k
-                    temp8 = 4 * (i + (j * oXdim) + (k * osliceSize));
-                    imgBuffer2[temp8] = fillValue; // if voxel is transformed out of bounds
-                    imgBuffer2[temp8 + 1] = fillValue;
-                    imgBuffer2[temp8 + 2] = fillValue;
-                    imgBuffer2[temp8 + 3] = fillValue;
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-
-                    kmm = kAdj * oZres;
-                    X = (temp3 + (kmm * T02)) / iXres;
-
-                    if ( (X > -0.5) && (X < iXdim)) {
-                        Y = (temp2 + (kmm * T12)) / iYres;
-
-                        if ( (Y > -0.5) && (Y < iYdim)) {
-                            Z = (temp1 + (kmm * T22)) / iZres;
-
-                            if ( (Z > -0.5) && (Z < iZdim)) {
-                                if (X <= 0) {
-                                    x0 = 0;
-                                    dx = 0;
-                                    deltaX = 0;
-                                } else if (X >= (iXdim - 1)) {
-                                    x0 = iXdim - 1;
-                                    dx = 0;
-                                    deltaX = 0;
-                                } else {
-                                    x0 = (int) X;
-                                    dx = X - x0;
-                                    deltaX = 1;
-                                }
-
-                                if (Y <= 0) {
-                                    y0 = 0;
-                                    dy = 0;
-                                    deltaY = 0;
-                                } else if (Y >= (iYdim - 1)) {
-                                    y0 = iYdim - 1;
-                                    dy = 0;
-                                    deltaY = 0;
-                                } else {
-                                    y0 = (int) Y;
-                                    dy = Y - y0;
-                                    deltaY = iXdim;
-                                }
-
-                                if (Z <= 0) {
-                                    z0 = 0;
-                                    dz = 0;
-                                    deltaZ = 0;
-                                } else if (Z >= (iZdim - 1)) {
-                                    z0 = iZdim - 1;
-                                    dz = 0;
-                                    deltaZ = 0;
-                                } else {
-                                    z0 = (int) Z;
-                                    dz = Z - z0;
-                                    deltaZ = sliceSize;
-                                }
-
-                                dx1 = 1 - dx;
-                                dy1 = 1 - dy;
-
-                                position1 = (z0 * sliceSize) + (y0 * iXdim) + x0;
-                                position2 = position1 + deltaZ;
-
-                                b1 = (dy1 * ( (dx1 * imgBuffer[4 * position1]) + (dx * imgBuffer[4 * (position1 + deltaX)])))
-                                        + (dy * ( (dx1 * imgBuffer[4 * (position1 + deltaY)]) + (dx * imgBuffer[4 * (position1
-                                                + deltaY + deltaX)])));
-
-                                b2 = (dy1 * ( (dx1 * imgBuffer[4 * position2]) + (dx * imgBuffer[4 * (position2 + deltaX)])))
-                                        + (dy * ( (dx1 * imgBuffer[4 * (position2 + deltaY)]) + (dx * imgBuffer[4 * (position2
-                                                + deltaY + deltaX)])));
-
-                                imgBuffer2[temp8] = (float) ( ( (1 - dz) * b1) + (dz * b2));
-
-                                b1 = (dy1 * ( (dx1 * imgBuffer[4 * position1 + 1]) + (dx * imgBuffer[4 * (position1 + deltaX) + 1])))
-                                        + (dy * ( (dx1 * imgBuffer[4 * (position1 + deltaY) + 1]) + (dx * imgBuffer[4 * (position1
-                                                + deltaY + deltaX) + 1])));
-
-                                b2 = (dy1 * ( (dx1 * imgBuffer[4 * position2 + 1]) + (dx * imgBuffer[4 * (position2 + deltaX) + 1])))
-                                        + (dy * ( (dx1 * imgBuffer[4 * (position2 + deltaY) + 1]) + (dx * imgBuffer[4 * (position2
-                                                + deltaY + deltaX) + 1])));
-
-                                imgBuffer2[temp8 + 1] = (float) ( ( (1 - dz) * b1) + (dz * b2));
-
-                                b1 = (dy1 * ( (dx1 * imgBuffer[4 * position1 + 2]) + (dx * imgBuffer[4 * (position1 + deltaX) + 2])))
-                                        + (dy * ( (dx1 * imgBuffer[4 * (position1 + deltaY) + 2]) + (dx * imgBuffer[4 * (position1
-                                                + deltaY + deltaX) + 2])));
-
-                                b2 = (dy1 * ( (dx1 * imgBuffer[4 * position2 + 2]) + (dx * imgBuffer[4 * (position2 + deltaX) + 2])))
-                                        + (dy * ( (dx1 * imgBuffer[4 * (position2 + deltaY) + 2]) + (dx * imgBuffer[4 * (position2
-                                                + deltaY + deltaX) + 2])));
-
-                                imgBuffer2[temp8 + 2] = (float) ( ( (1 - dz) * b1) + (dz * b2));
-
-                                b1 = (dy1 * ( (dx1 * imgBuffer[4 * position1 + 3]) + (dx * imgBuffer[4 * (position1 + deltaX) + 3])))
-                                        + (dy * ( (dx1 * imgBuffer[4 * (position1 + deltaY) + 3]) + (dx * imgBuffer[4 * (position1
-                                                + deltaY + deltaX) + 3])));
-
-                                b2 = (dy1 * ( (dx1 * imgBuffer[4 * position2 + 3]) + (dx * imgBuffer[4 * (position2 + deltaX) + 3])))
-                                        + (dy * ( (dx1 * imgBuffer[4 * (position2 + deltaY) + 3]) + (dx * imgBuffer[4 * (position2
-                                                + deltaY + deltaX) + 3])));
-
-                                imgBuffer2[temp8 + 3] = (float) ( ( (1 - dz) * b1) + (dz * b2));
-
-                            } // end if Z in bounds
-                        } // end if Y in bounds
-                    } // end if X in bounds
-                } // end for k
-            } // end for j
-        } // end for i
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuffer2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-    }
-
-    /**
-     * Transforms and resamples volume using trilinear interpolation This version is used with ARGB color images. Use
-     * byte[] rather than float[] to save memory
-     * 
-     * @param imgBuffer Input image array
-     * @param imgBuffer2 Output image array
-     * @param kTM Transformation matrix to be applied
-     */
-    private void transformTrilinearByteC(final byte[] imgBuffer, final byte[] imgBuffer2, final TransMatrix kTM) {
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        float X, Y, Z;
-        int x0, y0, z0;
-        int sliceSize, osliceSize;
-        float imm, jmm, kmm;
-        float temp1, temp2, temp3;
-        int temp8;
-        int deltaX, deltaY, deltaZ;
-        int position1, position2;
-        float b1, b2;
-        float dx, dy, dz, dx1, dy1;
-        byte byteFillValue;
-
-        if (fillValue > 255.0f) {
-            byteFillValue = (byte) 255;
-        } else if (fillValue < 0.0f) {
-            byteFillValue = 0;
-        } else {
-            byteFillValue = (byte) (fillValue + 0.5f);
-        }
-
-        sliceSize = iXdim * iYdim;
-        osliceSize = oXdim * oYdim;
-
-        float i1, i2, i3, j1, j2, j3;
-        float T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged(Math.round((float) i / (oXdim) * 100));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-
-                jmm = jAdj * oYres;
-                j1 = jmm * T01;
-                j2 = jmm * T11;
-                j3 = jmm * T21;
-                temp1 = i3 + j3;
-                temp2 = i2 + j2;
-                temp3 = i1 + j1;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // transform i,j,k
-                    temp8 = 4 * (i + (j * oXdim) + (k * osliceSize));
-                    imgBuffer2[temp8] = byteFillValue; // if voxel is transformed out of bounds
-                    imgBuffer2[temp8 + 1] = byteFillValue;
-                    imgBuffer2[temp8 + 2] = byteFillValue;
-                    imgBuffer2[temp8 + 3] = byteFillValue;
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-
-                    kmm = kAdj * oZres;
-                    X = (temp3 + (kmm * T02)) / iXres;
-
-                    if ( (X > -0.5f) && (X < iXdim)) {
-                        Y = (temp2 + (kmm * T12)) / iYres;
-
-                        if ( (Y > -0.5f) && (Y < iYdim)) {
-                            Z = (temp1 + (kmm * T22)) / iZres;
-
-                            if ( (Z > -0.5f) && (Z < iZdim)) {
-                                if (X <= 0) {
-                                    x0 = 0;
-                                    dx = 0;
-                                    deltaX = 0;
-                                } else if (X >= (iXdim - 1)) {
-                                    x0 = iXdim - 1;
-                                    dx = 0;
-                                    deltaX = 0;
-                                } else {
-                                    x0 = (int) X;
-                                    dx = X - x0;
-                                    deltaX = 1;
-                                }
-
-                                if (Y <= 0) {
-                                    y0 = 0;
-                                    dy = 0;
-                                    deltaY = 0;
-                                } else if (Y >= (iYdim - 1)) {
-                                    y0 = iYdim - 1;
-                                    dy = 0;
-                                    deltaY = 0;
-                                } else {
-                                    y0 = (int) Y;
-                                    dy = Y - y0;
-                                    deltaY = iXdim;
-                                }
-
-                                if (Z <= 0) {
-                                    z0 = 0;
-                                    dz = 0;
-                                    deltaZ = 0;
-                                } else if (Z >= (iZdim - 1)) {
-                                    z0 = iZdim - 1;
-                                    dz = 0;
-                                    deltaZ = 0;
-                                } else {
-                                    z0 = (int) Z;
-                                    dz = Z - z0;
-                                    deltaZ = sliceSize;
-                                }
-
-                                dx1 = 1 - dx;
-                                dy1 = 1 - dy;
-
-                                position1 = (z0 * sliceSize) + (y0 * iXdim) + x0;
-                                position2 = position1 + deltaZ;
-
-                                b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX)] & 0xff))))
-                                        + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY)] & 0xff)) + (dx * (imgBuffer[4 * (position1
-                                                + deltaY + deltaX)] & 0xff))));
-
-                                b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX)] & 0xff))))
-                                        + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY)] & 0xff)) + (dx * (imgBuffer[4 * (position2
-                                                + deltaY + deltaX)] & 0xff))));
-
-                                imgBuffer2[temp8] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
-
-                                b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 1] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 1] & 0xff))))
-                                        + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 1] & 0xff)) + (dx * (imgBuffer[4 * (position1
-                                                + deltaY + deltaX) + 1] & 0xff))));
-
-                                b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 1] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 1] & 0xff))))
-                                        + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 1] & 0xff)) + (dx * (imgBuffer[4 * (position2
-                                                + deltaY + deltaX) + 1] & 0xff))));
-
-                                imgBuffer2[temp8 + 1] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
-
-                                b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 2] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 2] & 0xff))))
-                                        + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 2] & 0xff)) + (dx * (imgBuffer[4 * (position1
-                                                + deltaY + deltaX) + 2] & 0xff))));
-
-                                b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 2] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 2] & 0xff))))
-                                        + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 2] & 0xff)) + (dx * (imgBuffer[4 * (position2
-                                                + deltaY + deltaX) + 2] & 0xff))));
-
-                                imgBuffer2[temp8 + 2] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
-
-                                b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 3] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 3] & 0xff))))
-                                        + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 3] & 0xff)) + (dx * (imgBuffer[4 * (position1
-                                                + deltaY + deltaX) + 3] & 0xff))));
-
-                                b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 3] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 3] & 0xff))))
-                                        + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 3] & 0xff)) + (dx * (imgBuffer[4 * (position2
-                                                + deltaY + deltaX) + 3] & 0xff))));
-
-                                imgBuffer2[temp8 + 3] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
-
-                            } // end if Z in bounds
-                        } // end if Y in bounds
-                    } // end if X in bounds
-                } // end for k
-            } // end for j
-        } // end for i
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuffer2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-    }
-
-    /**
-     * Transforms and resamples volume using windowed sinc interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformWSinc2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-        final int mod = Math.max(1, oXdim / 50);
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        WSinc.setup2DWSinc(imgBuf, inVolExtents, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // convert to mm
-                value = fillValue; // if voxel transformed out of bounds
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-
-                // transform i,j
-                X = (temp1 + (jmm * T01)) / iXres;
-
-                if ( (X >= 0) && (X < iXdim)) { // check bounds
-                    Y = (temp2 + (jmm * T11)) / iYres;
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-                        value = WSinc.wSinc2D(X, Y);
-                    }
-                }
-
-                destImage.set(i, j, value);
-            }
-        }
-
-        WSinc.finalize();
-        WSinc = null;
-        Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
-    }
-
-    /**
-     * Transforms and resamples volume using windowed sinc interpolation This version used with color images.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformWSinc2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-        final int mod = Math.max(1, oXdim / 50);
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        WSinc.setup2DWSincC(imgBuf, inVolExtents, argbMax, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            temp1 = (imm * T00) + T02;
-            temp2 = (imm * T10) + T12;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                // convert to mm
-                value[0] = fillValue; // if voxel transformed out of bounds
-                value[1] = fillValue;
-                value[2] = fillValue;
-                value[3] = fillValue;
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-
-                // transform i,j
-                X = (temp1 + (jmm * T01)) / iXres;
-
-                if ( (X >= 0) && (X < iXdim)) { // check bounds
-                    Y = (temp2 + (jmm * T11)) / iYres;
-
-                    if ( (Y >= 0) && (Y < iYdim)) {
-                        value = WSinc.wSinc2DC(X, Y);
-                    }
-                }
-
-                temp3 = 4 * (i + (j * oXdim));
-                imgBuf2[temp3] = (float) value[0];
-                imgBuf2[temp3 + 1] = (float) value[1];
-                imgBuf2[temp3 + 2] = (float) value[2];
-                imgBuf2[temp3 + 3] = (float) value[3];
-            }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
-
-        WSinc.finalize();
-        WSinc = null;
-        Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
-    }
+    private void transformNearestNeighbor3DC(final double[] imgBuf, final TransMatrix kTM) {
+        resampleC(imgBuf, new VolumeResampler.ColorNearestNeighbor(imgBuf, new int[] {iXdim, iYdim, iZdim},
+                fillValue), null, kTM);
+    }
 
     /**
-     * Transforms and resamples volume using windowed sinc interpolation.
-     * 
-     * @param imgBuf Image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformWSinc3D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oXdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        WSinc.setup3DWSinc(imgBuf, inVolExtents, clip);
-
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
-            }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
-            }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
-
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = (jmm * T01) + i1;
-                j2 = (jmm * T11) + i2;
-                j3 = (jmm * T21) + i3;
-
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                    // convert to mm
-                    value = fillValue; // if voxel transformed out of bounds
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
-
-                    // transform i,j,k
-                    X = (j1 + (kmm * T02)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (j2 + (kmm * T12)) / iYres;
-
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            Z = (j3 + (kmm * T22)) / iZres;
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using quintic Lagrangian
+     * interpolation.
+     * 
+     * @param imgBuf Image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformQuinticLagrangian2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
 
-                            if ( (Z >= 0) && (Z < iZdim)) {
-                                value = WSinc.wSinc3D(X, Y, Z);
-                            }
-                        }
-                    }
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-                    destImage.set(i, j, k, value);
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
+                    return QLag.quinticLagrangian2D(X, Y);
                 }
+
+                return fillValue; // if voxel is transformed out of bounds
             }
-        }
+        }, new Runnable() {
+            public void run() {
+                QLag.setup2DQuinticLagrangian(imgBuf, new int[] {iXdim, iYdim}, clip);
+            }
+        }, kTM);
 
-        WSinc.finalize();
-        WSinc = null;
-        Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
+        QLag.finalize();
+        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
     }
 
     /**
-     * Transforms and resamples volume using windowed sinc interpolation This version used with color images.
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using quintic Lagrangian
+     * interpolation. This version used with color images.
      * 
      * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
      * @param kTM Transformation matrix to be applied
      * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformWSinc3DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j, k;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double[] value = new double[4];
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oXdim / 50);
-
-        final int osliceSize = oXdim * oYdim;
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        int temp4;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
+    private void transformQuinticLagrangian2DC(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
 
-        WSinc.setup3DWSincC(imgBuf, inVolExtents, argbMax, clip);
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-        for (i = 0; (i < oXdim) && !threadStopped; i++) {
-
-            if ((!suppressProgressBar) && ( (i % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) i / oXdim * 100) + 0.5));
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
+                    setColor(dest, index, QLag.quinticLagrangian2DC(X, Y));
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
+                }
             }
-
-            if (pad) {
-                iAdj = i - AlgorithmTransform.margins[0];
-            } else {
-                iAdj = i;
+        }, new Runnable() {
+            public void run() {
+                QLag.setup2DQuinticLagrangianC(imgBuf, new int[] {iXdim, iYdim}, argbMax(), clip);
             }
-            imm = iAdj * oXres;
-            i1 = (imm * T00) + T03;
-            i2 = (imm * T10) + T13;
-            i3 = (imm * T20) + T23;
+        }, kTM);
 
-            for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                if (pad) {
-                    jAdj = j - AlgorithmTransform.margins[1];
-                } else {
-                    jAdj = j;
-                }
-                jmm = jAdj * oYres;
-                j1 = jmm * T01;
-                j2 = jmm * T11;
-                j3 = jmm * T21;
-                temp1 = i3 + j3;
-                temp2 = i2 + j2;
-                temp3 = i1 + j1;
+        QLag.finalize();
+        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
+    }
 
-                for (k = 0; (k < oZdim) && !threadStopped; k++) {
+    /**
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using quintic Lagrangian interpolation.
+     * 
+     * @param imgBuf Image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformQuinticLagrangian3D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
 
-                    // convert to mm
-                    value[0] = fillValue; // if voxel transformed out of bounds
-                    value[1] = fillValue;
-                    value[2] = fillValue;
-                    value[3] = fillValue;
-                    if (pad) {
-                        kAdj = k - AlgorithmTransform.margins[2];
-                    } else {
-                        kAdj = k;
-                    }
-                    kmm = kAdj * oZres;
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-                    // transform i,j,k
-                    X = (temp3 + (kmm * T02)) / iXres;
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim) && (Z >= 0) && (Z < iZdim)) {
+                    return QLag.quinticLagrangian3D(X, Y, Z);
+                }
 
-                    // convert back to pixels
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (kmm * T12)) / iYres;
+                return fillValue; // if voxel is transformed out of bounds
+            }
+        }, new Runnable() {
+            public void run() {
+                QLag.setup3DQuinticLagrangian(imgBuf, new int[] {iXdim, iYdim, iZdim}, clip);
+            }
+        }, kTM);
 
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            Z = (temp1 + (kmm * T22)) / iZres;
+        QLag.finalize();
+        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
+    }
 
-                            if ( (Z >= 0) && (Z < iZdim)) {
-                                value = WSinc.wSinc3DC(X, Y, Z);
-                            }
-                        }
-                    }
+    /**
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using quintic Lagrangian interpolation. This
+     * version used with color images.
+     * 
+     * @param imgBuf Input image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformQuinticLagrangian3DC(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmQuinticLagrangian QLag = new AlgorithmQuinticLagrangian();
 
-                    temp4 = 4 * (i + (j * oXdim) + (k * osliceSize));
-                    imgBuf2[temp4] = (float) value[0];
-                    imgBuf2[temp4 + 1] = (float) value[1];
-                    imgBuf2[temp4 + 2] = (float) value[2];
-                    imgBuf2[temp4 + 3] = (float) value[3];
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
+
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim) && (Z >= 0) && (Z < iZdim)) {
+                    setColor(dest, index, QLag.quinticLagrangian3DC(X, Y, Z));
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
                 }
             }
-        }
-
-        if (threadStopped) {
-            return;
-        }
-
-        try {
-            destImage.importData(0, imgBuf2, true);
-        } catch (final IOException error) {
-            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
-        }
+        }, new Runnable() {
+            public void run() {
+                QLag.setup3DQuinticLagrangianC(imgBuf, new int[] {iXdim, iYdim, iZdim}, argbMax(), clip);
+            }
+        }, kTM);
 
-        WSinc.finalize();
-        WSinc = null;
-        Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
+        QLag.finalize();
+        Preferences.debug("finished quintic Lagrangian", Preferences.DEBUG_ALGORITHM);
     }
 
     /**
-     * Transforms and resamples volume using windowed sinc interpolation Does a slice by slice windowed sinc
-     * interpolation on a 3 dimensional object.
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using trilinear interpolation.
      * 
-     * @param imgBuf Image array
+     * @param imgBuffer Image array
      * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformWSinc3Dim2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
+    private void transformTrilinear(final double[] imgBuffer, final TransMatrix kTM) {
+        imgLength2 = oXdim * oYdim * oZdim;
+        resample(imgBuffer, new VolumeResampler.Trilinear(imgBuffer, new int[] {iXdim, iYdim, iZdim}, fillValue), null,
+                kTM);
+    }
 
-        final int mod = Math.max(1, oZdim / 50);
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
+    /**
+     * Transforms and resamples 4 dimensional color ARGB object using trilinear interpolation.
+     * 
+     * @param imgBuffer Image array
+     * @param imgBuf2
+     * @param kTM Transformation matrix to be applied Byte buffers are used to reduce memory requirements by a factor of
+     *            4
+     */
+    private void transformTrilinear4DByteC(final byte[] imgBuffer, final byte[] imgBuffer2, final TransMatrix kTM) {
+        int i, j, k, l;
+        int iAdj, jAdj, kAdj;
+        float X, Y, Z;
+        int x0, y0, z0;
+        int temp;
+        int sliceSize;
+        int oSliceSize;
+        int oVolSize;
+        float imm, jmm, kmm;
+        float k1, k2, k3, j1, j2, j3;
+        byte byteFillValue;
+
+        if (fillValue > 255.0f) {
+            byteFillValue = (byte) 255;
+        } else if (fillValue < 0.0f) {
+            byteFillValue = 0;
+        } else {
+            byteFillValue = (byte) (fillValue + 0.5f);
+        }
+
+        sliceSize = iXdim * iYdim;
+        oSliceSize = oXdim * oYdim;
+        oVolSize = oSliceSize * oZdim;
+
+        float T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
+        int deltaX, deltaY, deltaZ;
 
         T00 = kTM.M00;
         T01 = kTM.M01;
         T02 = kTM.M02;
+        T03 = kTM.M03;
         T10 = kTM.M10;
         T11 = kTM.M11;
         T12 = kTM.M12;
+        T13 = kTM.M13;
+        T20 = kTM.M20;
+        T21 = kTM.M21;
+        T22 = kTM.M22;
+        T23 = kTM.M23;
 
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
+        int position1, position2;
+        float b1, b2;
+        float dx, dy, dz, dx1, dy1;
 
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
+        final float invXRes = 1 / iXres;
+        final float invYRes = 1 / iYres;
+        final float invZRes = 1 / iZres;
 
-            WSinc.setup2DWSinc(imgBuf, inVolExtents, clip);
+        for (l = 0; (l < oTdim) && !threadStopped; l++) {
+            if (!suppressProgressBar) {
+                fireProgressStateChanged(Math.round((float) l / oTdim * 100));
+            }
 
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
+            for (k = 0; (k < oZdim) && !threadStopped; k++) {
                 if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
+                    kAdj = k - AlgorithmTransform.margins[2];
                 } else {
-                    iAdj = i;
+                    kAdj = k;
                 }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
+                kmm = kAdj * oZres;
+                k1 = (kmm * T02) + T03;
+                k2 = (kmm * T12) + T13;
+                k3 = (kmm * T22) + T23;
 
                 for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                    // convert to mm
-                    value = fillValue; // if voxel transformed out of bounds
                     if (pad) {
                         jAdj = j - AlgorithmTransform.margins[1];
                     } else {
                         jAdj = j;
                     }
                     jmm = jAdj * oYres;
+                    j1 = (jmm * T01) + k1;
+                    j2 = (jmm * T11) + k2;
+                    j3 = (jmm * T21) + k3;
 
-                    // transform i,j
-                    X = (temp1 + (jmm * T01)) / iXres;
-
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (jmm * T11)) / iYres;
+                    for (i = 0; (i < oXdim) && !threadStopped; i++) {
 
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            value = WSinc.wSinc2D(X, Y);
+                        // transform i,j,k
+                        temp = 4 * (i + (j * oXdim) + (k * oSliceSize));
+                        imgBuffer2[temp] = byteFillValue; // if voxel is transformed out of bounds
+                        imgBuffer2[temp + 1] = byteFillValue;
+                        imgBuffer2[temp + 2] = byteFillValue;
+                        imgBuffer2[temp + 3] = byteFillValue;
+                        if (pad) {
+                            iAdj = i - AlgorithmTransform.margins[0];
+                        } else {
+                            iAdj = i;
                         }
-                    }
+                        imm = iAdj * oXres;
+                        X = (j1 + (imm * T00)) * invXRes;
 
-                    destImage.set(i, j, k, value);
-                }
-            }
+                        if ( (X > -0.5f) && (X < iXdim)) {
+                            Y = (j2 + (imm * T10)) * invYRes;
 
-            if (k < (oZdim - 1)) {
+                            if ( (Y > -0.5f) && (Y < iYdim)) {
+                                Z = (j3 + (imm * T20)) * invZRes;
 
-                try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
+                                if ( (Z > -0.5f) && (Z < iZdim)) {
 
-                    return;
-                }
-            } // end if (k < (oZdim - 1))
-        } // end for k
+                                    if (X <= 0) {
+                                        x0 = 0;
+                                        dx = 0;
+                                        deltaX = 0;
+                                    } else if (X >= (iXdim - 1)) {
+                                        x0 = iXdim - 1;
+                                        dx = 0;
+                                        deltaX = 0;
+                                    } else {
+                                        x0 = (int) X;
+                                        dx = X - x0;
+                                        deltaX = 1;
+                                    }
 
-        WSinc.finalize();
-        WSinc = null;
-        Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
-    }
+                                    if (Y <= 0) {
+                                        y0 = 0;
+                                        dy = 0;
+                                        deltaY = 0;
+                                    } else if (Y >= (iYdim - 1)) {
+                                        y0 = iYdim - 1;
+                                        dy = 0;
+                                        deltaY = 0;
+                                    } else {
+                                        y0 = (int) Y;
+                                        dy = Y - y0;
+                                        deltaY = iXdim;
+                                    }
 
-    /**
-     * Transforms and resamples volume using windowed sinc interpolation This version used with color images This
-     * version performs a slice by slice algorithm on a 3 dimensional object.
-     * 
-     * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
-     * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
-     */
-    private void transformWSinc3Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j, k;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
+                                    if (Z <= 0) {
+                                        z0 = 0;
+                                        dz = 0;
+                                        deltaZ = 0;
+                                    } else if (Z >= (iZdim - 1)) {
+                                        z0 = iZdim - 1;
+                                        dz = 0;
+                                        deltaZ = 0;
+                                    } else {
+                                        z0 = (int) Z;
+                                        dz = Z - z0;
+                                        deltaZ = sliceSize;
+                                    }
 
-        final int mod = Math.max(1, oZdim / 50);
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
+                                    dx1 = 1 - dx;
+                                    dy1 = 1 - dy;
 
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
+                                    position1 = (z0 * sliceSize) + (y0 * iXdim) + x0;
+                                    position2 = position1 + deltaZ;
 
-        for (k = 0; (k < oZdim) && !threadStopped; k++) {
+                                    b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX)] & 0xff))))
+                                            + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY)] & 0xff)) + (dx * (imgBuffer[4 * (position1
+                                                    + deltaY + deltaX)] & 0xff))));
 
-            if ((!suppressProgressBar) && ( (k % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) k / oZdim * 100) + 0.5));
-            }
+                                    b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX)] & 0xff))))
+                                            + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY)] & 0xff)) + (dx * (imgBuffer[4 * (position2
+                                                    + deltaY + deltaX)] & 0xff))));
 
-            if (srcImage.getType() == ModelStorageBase.ARGB) {
-                argbMax = 255.0f;
-            } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-                argbMax = 65535.0f;
-            }
+                                    imgBuffer2[temp] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
 
-            WSinc.setup2DWSincC(imgBuf, inVolExtents, argbMax, clip);
+                                    b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 1] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 1] & 0xff))))
+                                            + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 1] & 0xff)) + (dx * (imgBuffer[4 * (position1
+                                                    + deltaY + deltaX) + 1] & 0xff))));
 
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
-                }
-                imm = iAdj * oXres;
-                temp1 = (imm * T00) + T02;
-                temp2 = (imm * T10) + T12;
+                                    b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 1] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 1] & 0xff))))
+                                            + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 1] & 0xff)) + (dx * (imgBuffer[4 * (position2
+                                                    + deltaY + deltaX) + 1] & 0xff))));
 
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
+                                    imgBuffer2[temp + 1] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
 
-                    // convert to mm
-                    value[0] = fillValue; // if voxel transformed out of bounds
-                    value[1] = fillValue;
-                    value[2] = fillValue;
-                    value[3] = fillValue;
+                                    b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 2] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 2] & 0xff))))
+                                            + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 2] & 0xff)) + (dx * (imgBuffer[4 * (position1
+                                                    + deltaY + deltaX) + 2] & 0xff))));
 
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
+                                    b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 2] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 2] & 0xff))))
+                                            + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 2] & 0xff)) + (dx * (imgBuffer[4 * (position2
+                                                    + deltaY + deltaX) + 2] & 0xff))));
 
-                    // transform i,j
-                    X = (temp1 + (jmm * T01)) / iXres;
+                                    imgBuffer2[temp + 2] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
 
-                    if ( (X >= 0) && (X < iXdim)) { // check bounds
-                        Y = (temp2 + (jmm * T11)) / iYres;
+                                    b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 3] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 3] & 0xff))))
+                                            + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 3] & 0xff)) + (dx * (imgBuffer[4 * (position1
+                                                    + deltaY + deltaX) + 3] & 0xff))));
 
-                        if ( (Y >= 0) && (Y < iYdim)) {
-                            value = WSinc.wSinc2DC(X, Y);
-                        }
-                    }
+                                    b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 3] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 3] & 0xff))))
+                                            + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 3] & 0xff)) + (dx * (imgBuffer[4 * (position2
+                                                    + deltaY + deltaX) + 3] & 0xff))));
 
-                    temp3 = 4 * (i + (j * oXdim));
-                    imgBuf2[temp3] = (float) value[0];
-                    imgBuf2[temp3 + 1] = (float) value[1];
-                    imgBuf2[temp3 + 2] = (float) value[2];
-                    imgBuf2[temp3 + 3] = (float) value[3];
-                } // for i
-            } // for j
+                                    imgBuffer2[temp + 3] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
+                                } // end if Z in bounds
+                            } // end if Y in bounds
+                        } // end if X in bounds
+                    } // end for i
+                } // end for j
+            } // end for k
 
             try {
-                destImage.importData(4 * k * oXdim * oYdim, imgBuf2, true);
+                destImage.importData(4 * l * oVolSize, imgBuffer2, false);
             } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
+                MipavUtil.displayError("AlgorithmTransform: IOException on destImage.importData");
             }
 
-            if (k < (oZdim - 1)) {
+            if (l < (oTdim - 1)) {
 
                 try {
-                    srcImage.exportData( (k + 1) * imgLength, imgLength, imgBuf);
+                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
                 } catch (final IOException error) {
-                    displayError("Algorithm Transform: IOException Error on importData");
+                    displayError("Algorithm Transform: Image(s) locked");
                     setCompleted(false);
 
                     return;
                 }
-            } // end if (k < (oZdim - 1))
-        } // end for k
+            } // end if (l < (oTdim - 1))
+        } // end for l
+        destImage.calcMinMax();
+    }
 
-        WSinc.finalize();
-        WSinc = null;
-        Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
+    /**
+     * Transforms and resamples a 3D color volume, or each volume of a 4D color image, using trilinear interpolation.
+     * 
+     * @param imgBuffer Input image array
+     * @param kTM Transformation matrix to be applied
+     */
+    private void transformTrilinearC(final double[] imgBuffer, final TransMatrix kTM) {
+        resampleC(imgBuffer, new VolumeResampler.ColorTrilinear(imgBuffer, new int[] {iXdim, iYdim, iZdim},
+                fillValue), null, kTM);
     }
 
     /**
-     * Transforms and resamples 4 dimensional object using 3D windowed sinc interpolation.
+     * Transforms and resamples volume using trilinear interpolation This version is used with ARGB color images. Use
+     * byte[] rather than float[] to save memory
      * 
-     * @param imgBuf Image array
+     * @param imgBuffer Input image array
+     * @param imgBuffer2 Output image array
      * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformWSinc4D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j, k, l;
+    private void transformTrilinearByteC(final byte[] imgBuffer, final byte[] imgBuffer2, final TransMatrix kTM) {
+        int i, j, k;
         int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        final int mod = Math.max(1, oTdim / 50);
+        float X, Y, Z;
+        int x0, y0, z0;
+        int sliceSize, osliceSize;
+        float imm, jmm, kmm;
+        float temp1, temp2, temp3;
+        int temp8;
+        int deltaX, deltaY, deltaZ;
+        int position1, position2;
+        float b1, b2;
+        float dx, dy, dz, dx1, dy1;
+        byte byteFillValue;
 
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
+        if (fillValue > 255.0f) {
+            byteFillValue = (byte) 255;
+        } else if (fillValue < 0.0f) {
+            byteFillValue = 0;
+        } else {
+            byteFillValue = (byte) (fillValue + 0.5f);
+        }
+
+        sliceSize = iXdim * iYdim;
+        osliceSize = oXdim * oYdim;
+
+        float i1, i2, i3, j1, j2, j3;
+        float T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
 
         T00 = kTM.M00;
         T01 = kTM.M01;
@@ -14352,435 +7833,285 @@ public class AlgorithmTransform extends AlgorithmBase {
         T22 = kTM.M22;
         T23 = kTM.M23;
 
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
+        for (i = 0; (i < oXdim) && !threadStopped; i++) {
+            if (!suppressProgressBar) {
+                fireProgressStateChanged(Math.round((float) i / (oXdim) * 100));
+            }
 
-            if ((!suppressProgressBar) && ( (l % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + .5));
+            if (pad) {
+                iAdj = i - AlgorithmTransform.margins[0];
+            } else {
+                iAdj = i;
             }
 
-            WSinc.setup3DWSinc(imgBuf, inVolExtents, clip);
+            imm = iAdj * oXres;
+            i1 = (imm * T00) + T03;
+            i2 = (imm * T10) + T13;
+            i3 = (imm * T20) + T23;
+
+            for (j = 0; (j < oYdim) && !threadStopped; j++) {
 
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
                 if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
+                    jAdj = j - AlgorithmTransform.margins[1];
                 } else {
-                    iAdj = i;
+                    jAdj = j;
                 }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
 
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
+                jmm = jAdj * oYres;
+                j1 = jmm * T01;
+                j2 = jmm * T11;
+                j3 = jmm * T21;
+                temp1 = i3 + j3;
+                temp2 = i2 + j2;
+                temp3 = i1 + j1;
+
+                for (k = 0; (k < oZdim) && !threadStopped; k++) {
+
+                    // transform i,j,k
+                    temp8 = 4 * (i + (j * oXdim) + (k * osliceSize));
+                    imgBuffer2[temp8] = byteFillValue; // if voxel is transformed out of bounds
+                    imgBuffer2[temp8 + 1] = byteFillValue;
+                    imgBuffer2[temp8 + 2] = byteFillValue;
+                    imgBuffer2[temp8 + 3] = byteFillValue;
                     if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
+                        kAdj = k - AlgorithmTransform.margins[2];
                     } else {
-                        jAdj = j;
+                        kAdj = k;
                     }
-                    jmm = jAdj * oYres;
-                    j1 = jmm * T01;
-                    j2 = jmm * T11;
-                    j3 = jmm * T21;
-                    temp1 = i3 + j3;
-                    temp2 = i2 + j2;
-                    temp3 = i1 + j1;
 
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
+                    kmm = kAdj * oZres;
+                    X = (temp3 + (kmm * T02)) / iXres;
 
-                        // convert to mm
-                        value = fillValue; // if voxel transformed out of bounds
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
+                    if ( (X > -0.5f) && (X < iXdim)) {
+                        Y = (temp2 + (kmm * T12)) / iYres;
+
+                        if ( (Y > -0.5f) && (Y < iYdim)) {
+                            Z = (temp1 + (kmm * T22)) / iZres;
+
+                            if ( (Z > -0.5f) && (Z < iZdim)) {
+                                if (X <= 0) {
+                                    x0 = 0;
+                                    dx = 0;
+                                    deltaX = 0;
+                                } else if (X >= (iXdim - 1)) {
+                                    x0 = iXdim - 1;
+                                    dx = 0;
+                                    deltaX = 0;
+                                } else {
+                                    x0 = (int) X;
+                                    dx = X - x0;
+                                    deltaX = 1;
+                                }
+
+                                if (Y <= 0) {
+                                    y0 = 0;
+                                    dy = 0;
+                                    deltaY = 0;
+                                } else if (Y >= (iYdim - 1)) {
+                                    y0 = iYdim - 1;
+                                    dy = 0;
+                                    deltaY = 0;
+                                } else {
+                                    y0 = (int) Y;
+                                    dy = Y - y0;
+                                    deltaY = iXdim;
+                                }
+
+                                if (Z <= 0) {
+                                    z0 = 0;
+                                    dz = 0;
+                                    deltaZ = 0;
+                                } else if (Z >= (iZdim - 1)) {
+                                    z0 = iZdim - 1;
+                                    dz = 0;
+                                    deltaZ = 0;
+                                } else {
+                                    z0 = (int) Z;
+                                    dz = Z - z0;
+                                    deltaZ = sliceSize;
+                                }
+
+                                dx1 = 1 - dx;
+                                dy1 = 1 - dy;
+
+                                position1 = (z0 * sliceSize) + (y0 * iXdim) + x0;
+                                position2 = position1 + deltaZ;
+
+                                b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX)] & 0xff))))
+                                        + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY)] & 0xff)) + (dx * (imgBuffer[4 * (position1
+                                                + deltaY + deltaX)] & 0xff))));
+
+                                b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX)] & 0xff))))
+                                        + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY)] & 0xff)) + (dx * (imgBuffer[4 * (position2
+                                                + deltaY + deltaX)] & 0xff))));
+
+                                imgBuffer2[temp8] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
+
+                                b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 1] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 1] & 0xff))))
+                                        + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 1] & 0xff)) + (dx * (imgBuffer[4 * (position1
+                                                + deltaY + deltaX) + 1] & 0xff))));
+
+                                b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 1] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 1] & 0xff))))
+                                        + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 1] & 0xff)) + (dx * (imgBuffer[4 * (position2
+                                                + deltaY + deltaX) + 1] & 0xff))));
 
-                        // transform i,j,k
-                        X = (temp3 + (kmm * T02)) / iXres;
+                                imgBuffer2[temp8 + 1] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
 
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (kmm * T12)) / iYres;
+                                b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 2] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 2] & 0xff))))
+                                        + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 2] & 0xff)) + (dx * (imgBuffer[4 * (position1
+                                                + deltaY + deltaX) + 2] & 0xff))));
 
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                Z = (temp1 + (kmm * T22)) / iZres;
+                                b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 2] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 2] & 0xff))))
+                                        + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 2] & 0xff)) + (dx * (imgBuffer[4 * (position2
+                                                + deltaY + deltaX) + 2] & 0xff))));
 
-                                if ( (Z >= 0) && (Z < iZdim)) {
-                                    value = WSinc.wSinc3D(X, Y, Z);
-                                }
-                            }
-                        }
+                                imgBuffer2[temp8 + 2] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
 
-                        destImage.set(i, j, k, l, value);
-                    }
-                }
-            }
+                                b1 = (dy1 * ( (dx1 * (imgBuffer[4 * position1 + 3] & 0xff)) + (dx * (imgBuffer[4 * (position1 + deltaX) + 3] & 0xff))))
+                                        + (dy * ( (dx1 * (imgBuffer[4 * (position1 + deltaY) + 3] & 0xff)) + (dx * (imgBuffer[4 * (position1
+                                                + deltaY + deltaX) + 3] & 0xff))));
 
-            if (l < (oTdim - 1)) {
+                                b2 = (dy1 * ( (dx1 * (imgBuffer[4 * position2 + 3] & 0xff)) + (dx * (imgBuffer[4 * (position2 + deltaX) + 3] & 0xff))))
+                                        + (dy * ( (dx1 * (imgBuffer[4 * (position2 + deltaY) + 3] & 0xff)) + (dx * (imgBuffer[4 * (position2
+                                                + deltaY + deltaX) + 3] & 0xff))));
 
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
+                                imgBuffer2[temp8 + 3] = (byte) ( ( (1 - dz) * b1) + (dz * b2) + 0.5f);
 
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
+                            } // end if Z in bounds
+                        } // end if Y in bounds
+                    } // end if X in bounds
+                } // end for k
+            } // end for j
+        } // end for i
 
-        WSinc.finalize();
-        WSinc = null;
-        Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
+        if (threadStopped) {
+            return;
+        }
+
+        try {
+            destImage.importData(0, imgBuffer2, true);
+        } catch (final IOException error) {
+            MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
+        }
     }
 
     /**
-     * Transforms and resamples 4 dimensional object using 3D windowed sinc interpolation.
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using windowed sinc interpolation.
      * 
      * @param imgBuf Image array
-     * @param imgBuffer2
      * @param kTM Transformation matrix to be applied
      * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformWSinc4DC(final double[] imgBuf, final float[] imgBuffer2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j, k, l;
-        int iAdj, jAdj, kAdj;
-        double X, Y, Z;
-        double value[] = new double[4];
-        int temp4;
-        double imm, jmm, kmm;
-        final int[] inVolExtents = {iXdim, iYdim, iZdim};
-        int oSliceSize;
-        int oVolSize;
-        final int mod = Math.max(1, oTdim / 50);
-
-        double i1, i2, i3, j1, j2, j3;
-        double temp1, temp2, temp3;
-        double T00, T01, T02, T03, T10, T11, T12, T13, T20, T21, T22, T23;
-
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T03 = kTM.M03;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-        T13 = kTM.M13;
-        T20 = kTM.M20;
-        T21 = kTM.M21;
-        T22 = kTM.M22;
-        T23 = kTM.M23;
-
-        oSliceSize = oXdim * oYdim;
-        oVolSize = oSliceSize * oZdim;
-
-        if (srcImage.getType() == ModelStorageBase.ARGB) {
-            argbMax = 255.0f;
-        } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-            argbMax = 65535.0f;
-        }
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-
-            if ((!suppressProgressBar) && ( (l % mod) == 0)) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + .5));
-            }
+    private void transformWSinc2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmWSinc WSinc = new AlgorithmWSinc();
 
-            WSinc.setup3DWSincC(imgBuf, inVolExtents, argbMax, clip);
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-            for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                if (pad) {
-                    iAdj = i - AlgorithmTransform.margins[0];
-                } else {
-                    iAdj = i;
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
+                    return WSinc.wSinc2D(X, Y);
                 }
-                imm = iAdj * oXres;
-                i1 = (imm * T00) + T03;
-                i2 = (imm * T10) + T13;
-                i3 = (imm * T20) + T23;
-
-                for (j = 0; (j < oYdim) && !threadStopped; j++) {
-                    if (pad) {
-                        jAdj = j - AlgorithmTransform.margins[1];
-                    } else {
-                        jAdj = j;
-                    }
-                    jmm = jAdj * oYres;
-                    j1 = jmm * T01;
-                    j2 = jmm * T11;
-                    j3 = jmm * T21;
-                    temp1 = i3 + j3;
-                    temp2 = i2 + j2;
-                    temp3 = i1 + j1;
-
-                    for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                        // convert to mm
-                        value[0] = fillValue; // if voxel transformed out of bounds
-                        value[1] = fillValue;
-                        value[2] = fillValue;
-                        value[3] = fillValue;
-                        if (pad) {
-                            kAdj = k - AlgorithmTransform.margins[2];
-                        } else {
-                            kAdj = k;
-                        }
-                        kmm = kAdj * oZres;
 
-                        // transform i,j,k
-                        X = (temp3 + (kmm * T02)) / iXres;
+                return fillValue; // if voxel is transformed out of bounds
+            }
+        }, new Runnable() {
+            public void run() {
+                WSinc.setup2DWSinc(imgBuf, new int[] {iXdim, iYdim}, clip);
+            }
+        }, kTM);
 
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (kmm * T12)) / iYres;
+        WSinc.finalize();
+        Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
+    }
 
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                Z = (temp1 + (kmm * T22)) / iZres;
+    /**
+     * Transforms and resamples a 2D image, or each slice of a 2.5D transformation, using windowed sinc interpolation.
+     * This version used with color images.
+     * 
+     * @param imgBuf Input image array
+     * @param kTM Transformation matrix to be applied
+     * @param clip If <code>true</code> clip output values to be within input range
+     */
+    private void transformWSinc2DC(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmWSinc WSinc = new AlgorithmWSinc();
 
-                                if ( (Z >= 0) && (Z < iZdim)) {
-                                    value = WSinc.wSinc3DC(X, Y, Z);
-                                }
-                            }
-                        }
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-                        temp4 = 4 * (i + (j * oXdim) + (k * oSliceSize));
-                        imgBuffer2[temp4] = (float) value[0];
-                        imgBuffer2[temp4 + 1] = (float) value[1];
-                        imgBuffer2[temp4 + 2] = (float) value[2];
-                        imgBuffer2[temp4 + 3] = (float) value[3];
-                    }
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim)) {
+                    setColor(dest, index, WSinc.wSinc2DC(X, Y));
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
                 }
             }
-
-            try {
-                destImage.importData(4 * l * oVolSize, imgBuffer2, false);
-            } catch (final IOException error) {
-                MipavUtil.displayError("AlgorithmTransform: IOException on destImage.importData");
+        }, new Runnable() {
+            public void run() {
+                WSinc.setup2DWSincC(imgBuf, new int[] {iXdim, iYdim}, argbMax(), clip);
             }
+        }, kTM);
 
-            if (l < (oTdim - 1)) {
-
-                try {
-                    srcImage.exportData( (l + 1) * imgLength, imgLength, imgBuf);
-                } catch (final IOException error) {
-                    displayError("Algorithm Transform: Image(s) locked");
-                    setCompleted(false);
-
-                    return;
-                }
-            } // end if (l < (oTdim - 1))
-        } // for l
-
-        destImage.calcMinMax();
         WSinc.finalize();
-        WSinc = null;
         Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
     }
 
     /**
-     * Transforms and resamples volume using windowed sinc interpolation Does a slice by slice windowed sinc
-     * interpolation on a 4 dimensional object.
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using windowed sinc interpolation.
      * 
      * @param imgBuf Image array
      * @param kTM Transformation matrix to be applied
-     * @param clip If <code>true</true> clip output values to be within input range</code>
+     * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformWSinc4Dim2D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        double value;
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        double temp1, temp2;
-        double T00, T01, T02, T10, T11, T12;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-                WSinc.setup2DWSinc(imgBuf, inVolExtents, clip);
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
-
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // convert to mm
-                        value = fillValue; // if voxel transformed out of bounds
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-
-                        // transform i,j
-                        X = (temp1 + (jmm * T01)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (jmm * T11)) / iYres;
+    private void transformWSinc3D(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmWSinc WSinc = new AlgorithmWSinc();
 
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                value = WSinc.wSinc2D(X, Y);
-                            }
-                        }
+        resample(imgBuf, new VolumeResampler.Interpolator() {
+            public double interpolate(final double X, final double Y, final double Z) {
 
-                        destImage.set(i, j, k, l, value);
-                    }
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim) && (Z >= 0) && (Z < iZdim)) {
+                    return WSinc.wSinc3D(X, Y, Z);
                 }
 
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: Image(s) locked");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
+                return fillValue; // if voxel is transformed out of bounds
+            }
+        }, new Runnable() {
+            public void run() {
+                WSinc.setup3DWSinc(imgBuf, new int[] {iXdim, iYdim, iZdim}, clip);
+            }
+        }, kTM);
 
         WSinc.finalize();
-        WSinc = null;
         Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
     }
 
     /**
-     * Transforms and resamples volume using windowed sinc interpolation This version used with color images This
-     * version performs a slice by slice algorithm on a 4 dimensional object.
+     * Transforms and resamples a 3D volume, or each volume of a 4D image, using windowed sinc interpolation. This
+     * version used with color images.
      * 
      * @param imgBuf Input image array
-     * @param imgBuf2 Output image array
      * @param kTM Transformation matrix to be applied
      * @param clip If <code>true</code> clip output values to be within input range
      */
-    private void transformWSinc4Dim2DC(final double[] imgBuf, final float[] imgBuf2, final TransMatrix kTM,
-            final boolean clip) {
-        AlgorithmWSinc WSinc = new AlgorithmWSinc();
-        int i, j, k, l;
-        int iAdj, jAdj;
-        double X, Y;
-        double[] value = new double[4];
-        double imm, jmm;
-        final int[] inVolExtents = {iXdim, iYdim};
-
-        double temp1, temp2;
-        int temp3;
-        double T00, T01, T02, T10, T11, T12;
-        float argbMax = 255.0f;
-
-        T00 = kTM.M00;
-        T01 = kTM.M01;
-        T02 = kTM.M02;
-        T10 = kTM.M10;
-        T11 = kTM.M11;
-        T12 = kTM.M12;
-
-        for (l = 0; (l < oTdim) && !threadStopped; l++) {
-            if (!suppressProgressBar) {
-                fireProgressStateChanged((int) ( ((float) l / oTdim * 100) + 0.5));
-            }
-
-            for (k = 0; (k < oZdim) && !threadStopped; k++) {
-
-                if (srcImage.getType() == ModelStorageBase.ARGB) {
-                    argbMax = 255.0f;
-                } else if (srcImage.getType() == ModelStorageBase.ARGB_USHORT) {
-                    argbMax = 65535.0f;
-                }
-
-                WSinc.setup2DWSincC(imgBuf, inVolExtents, argbMax, clip);
-
-                for (i = 0; (i < oXdim) && !threadStopped; i++) {
-                    if (pad) {
-                        iAdj = i - AlgorithmTransform.margins[0];
-                    } else {
-                        iAdj = i;
-                    }
-                    imm = iAdj * oXres;
-                    temp1 = (imm * T00) + T02;
-                    temp2 = (imm * T10) + T12;
+    private void transformWSinc3DC(final double[] imgBuf, final TransMatrix kTM, final boolean clip) {
+        final AlgorithmWSinc WSinc = new AlgorithmWSinc();
 
-                    for (j = 0; (j < oYdim) && !threadStopped; j++) {
-
-                        // convert to mm
-                        value[0] = fillValue; // if voxel transformed out of bounds
-                        value[1] = fillValue;
-                        value[2] = fillValue;
-                        value[3] = fillValue;
-                        if (pad) {
-                            jAdj = j - AlgorithmTransform.margins[1];
-                        } else {
-                            jAdj = j;
-                        }
-                        jmm = jAdj * oYres;
-
-                        // transform i,j
-                        X = (temp1 + (jmm * T01)) / iXres;
-
-                        if ( (X >= 0) && (X < iXdim)) { // check bounds
-                            Y = (temp2 + (jmm * T11)) / iYres;
-
-                            if ( (Y >= 0) && (Y < iYdim)) {
-                                value = WSinc.wSinc2DC(X, Y);
-                            }
-                        }
+        resampleC(imgBuf, new VolumeResampler.ColorInterpolator() {
+            public void interpolate(final double X, final double Y, final double Z, final float[] dest,
+                    final int index) {
 
-                        temp3 = 4 * (i + (j * oXdim));
-                        imgBuf2[temp3] = (float) value[0];
-                        imgBuf2[temp3 + 1] = (float) value[1];
-                        imgBuf2[temp3 + 2] = (float) value[2];
-                        imgBuf2[temp3 + 3] = (float) value[3];
-                    } // for i
-                } // for j
-
-                try {
-                    destImage.importData( (4 * l * oXdim * oYdim * oZdim) + (4 * k * oXdim * oYdim), imgBuf2, true);
-                } catch (final IOException error) {
-                    MipavUtil.displayError("AlgorithmTransform: IOException Error on importData");
+                if ( (X >= 0) && (X < iXdim) && (Y >= 0) && (Y < iYdim) && (Z >= 0) && (Z < iZdim)) {
+                    setColor(dest, index, WSinc.wSinc3DC(X, Y, Z));
+                } else {
+                    setColor(dest, index, fillValue); // if voxel is transformed out of bounds
                 }
-
-                if ( (k < (oZdim - 1)) || (l < (oTdim - 1))) {
-
-                    try {
-                        srcImage.exportData( (l * oZdim * imgLength) + ( (k + 1) * imgLength), imgLength, imgBuf);
-                    } catch (final IOException error) {
-                        displayError("Algorithm Transform: IOException Error on importData");
-                        setCompleted(false);
-
-                        return;
-                    }
-                } // end if ((k < (oZdim - 1))|| (l < (oTdim - 1)))
-            } // end for k
-        } // end for l
+            }
+        }, new Runnable() {
+            public void run() {
+                WSinc.setup3DWSincC(imgBuf, new int[] {iXdim, iYdim, iZdim}, argbMax(), clip);
+            }
+        }, kTM);
 
         WSinc.finalize();
-        WSinc = null;
         Preferences.debug("finished windowed sinc", Preferences.DEBUG_ALGORITHM);
     }
 
@@ -4,6 +4,7 @@ import gov.nih.mipav.model.structures.*;
 import gov.nih.mipav.view.*;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * 
@@ -30,8 +31,6 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
 	
 	int binNumber;
 	
-	int parentBuffer[];
-	
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
 	public AlgorithmUnionFindComponentLabelling(ModelImage destImage, ModelImage srcImage, int numNeighbor, boolean limitBins,
@@ -60,26 +59,13 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
     	int length;
     	double imgBuffer[];
     	int labelBuffer[] = null;
-    	int x;
-    	int y;
-    	int x2;
-    	int y2;
     	int z;
     	int t;
     	int i;
-    	int yi;
-    	int xi;
-    	int j;
-    	int r;
-    	int r2;
-    	int foundNeighbors;
-    	int neighbors[];
-    	int allNeighbors[][];
     	double minValue;
     	double maxValue;
     	double range;
     	double scale;
-    	int curlab;
     	
     	if (srcImage == null) {
             displayError("Source Image is null");
@@ -94,8 +80,6 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
         yDim = srcImage.getExtents()[1];
         length = xDim * yDim;
         nDims = srcImage.getNDims();
-    	
-        neighbors = new int[numNeighbor];
         
         if (nDims > 2) {
             zDim = srcImage.getExtents()[2];
@@ -111,44 +95,12 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
         
         try {
             imgBuffer = new double[length];
-            labelBuffer = new int[length];
-            parentBuffer = new int[length];
-            allNeighbors = new int[length][];
         } catch (OutOfMemoryError e) {
             displayError("Algorithm Union Find Component Labelling: Out of memory creating buffers");
             setCompleted(false);
 
             return;
         }
-        
-        for (i = 0; i < length; i++) {
-        	x = i % xDim;
-        	y = i / xDim;
-        	foundNeighbors = 0;
-        	// The neighbor must have either
-        	// 1.) A x value less than the original pixel x value
-        	// 2.) A x value equal to the original pixel x value and
-        	//     a y value less than the original pixel y value
-        	if (x > 0) {
-        		neighbors[foundNeighbors++] = i-1;
-        	}
-        	if (y > 0) {
-        		neighbors[foundNeighbors++] = i-xDim;
-        	}
-        	if (numNeighbor == 8) {
-        		if ((x > 0) && (y > 0)) {
-        			neighbors[foundNeighbors++] = i-xDim-1;
-        		}
-        		if ((x > 0) && (y < yDim-1)) {
-        			neighbors[foundNeighbors++] = i+xDim-1;
-        		}
-        	} // if (numNeighbor == 8)
-        	allNeighbors[i] = new int[foundNeighbors];
-        	for (j = 0; j < foundNeighbors; j++) {
-        		allNeighbors[i][j] = neighbors[j];
-        	}
-        }
-
 
         for (t = 0; t < tDim; t++) {
         for (z = 0; z < zDim; z++) {
@@ -183,55 +135,7 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
         	    }
             } // if (limitBins)
             
-            for (i = 0; i < length; i++) {
-            	parentBuffer[i] = i;
-            }
-            
-            // Initialize queue with pixels that have a lower neighbor
-            for (xi = 0; xi < xDim; xi++) {
-                for (yi = 0; yi < yDim; yi++) {
-            	    i = xi + yi * xDim;
-	            	r = i;
-	            	foundNeighbors = allNeighbors[i].length;
-	        	    for (j = 0; j < foundNeighbors; j++) {
-	        	    	if (imgBuffer[allNeighbors[i][j]] == imgBuffer[i]) {
-	        	    	   r2 =  findRoot(allNeighbors[i][j]);
-	        	    	   // Obtain the minimum of r and r2 with respect to lexicographical order
-	        	    	   x = r % xDim;
-	        	    	   y = r / xDim;
-	        	    	   x2 = r2 % xDim;
-	        	    	   y2 = r2 / xDim;
-	        	    	   if ((x2 < x) || ((x2 == x) && (y2 < y))) {
-	        	    		   r = r2;
-	        	    	   }
-	        	    	} // if (imgBuffer[allNeighbors[i][j]] == imgBuffer[i]) 
-	        	    } // for (j = 0; j < foundNeighbors; j++)
-	        	    parentBuffer[i] = r;
-	        	    for (j = 0; j < foundNeighbors; j++) {
-	        	    	if (imgBuffer[allNeighbors[i][j]] == imgBuffer[i]) {
-	        	    	    pathCompress(allNeighbors[i][j], r);	
-	        	    	} // if (imgBuffer[allNeighbors[i][j]] == imgBuffer[i])
-	        	    } // for (j = 0; j < foundNeighbors; j++)'
-                } // for (yi = 0; yi < yDim; yi++)
-            } // for (xi = 0; xi < xDim; xi++)
-            
-            // curlab is the current label
-            curlab = 1;
-            for (xi = 0; xi < xDim; xi++) {
-                for (yi = 0; yi < yDim; yi++) {
-            	    i = xi + yi * xDim;
-	            	if (parentBuffer[i] == i) {
-	            	    // i is a root pixel
-	            		labelBuffer[i] = curlab;
-	            		curlab++;
-	            	}
-	            	else {
-	            		// Resolve unresolved equivalences
-	            		parentBuffer[i] = parentBuffer[parentBuffer[i]];
-	            		labelBuffer[i] = labelBuffer[parentBuffer[i]];
-	            	}
-                } // for (yi = 0; yi < yDim; yi++)
-            } // for (xi = 0; xi < xDim; xi++)
+            labelBuffer = labelLevels(imgBuffer, new int[] {xDim, yDim});
             
             try {
 			    destImage.importData((z + t*zDim)*length, labelBuffer, false);
@@ -258,28 +162,12 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
     	int length;
     	double imgBuffer[];
     	int labelBuffer[] = null;
-    	int x;
-    	int y;
-    	int x2;
-    	int y2;
-    	int z2;
-    	int z;
     	int t;
     	int i;
-    	int zi;
-    	int yi;
-    	int xi;
-    	int j;
-    	int r;
-    	int r2;
-    	int foundNeighbors;
-    	int neighbors[];
-    	int allNeighbors[][];
     	double minValue;
     	double maxValue;
     	double range;
     	double scale;
-    	int curlab;
     	int sliceSize;
     	
     	if (srcImage == null) {
@@ -297,8 +185,6 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
         sliceSize = xDim * yDim;
         length = sliceSize * zDim;
         nDims = srcImage.getNDims();
-    	
-        neighbors = new int[numNeighbor];
         
         if (nDims > 3) {
         	tDim = srcImage.getExtents()[3];
@@ -309,77 +195,12 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
         
         try {
             imgBuffer = new double[length];
-            labelBuffer = new int[length];
-            parentBuffer = new int[length];
-            allNeighbors = new int[length][];
         } catch (OutOfMemoryError e) {
             displayError("Algorithm Union Find Component Labelling: Out of memory creating buffers");
             setCompleted(false);
 
             return;
         }
-        
-        for (i = 0; i < length; i++) {
-        	x = i % xDim;
-        	y = (i % sliceSize) / xDim;
-            z = i / sliceSize;
-        	foundNeighbors = 0;
-        	// The neighbor must have either
-        	// 1.) A x value less than the original pixel x value
-        	// 2.) A x value equal to the original pixel x value and
-        	//     a y value less than the original pixel y value
-        	// 3.) A x value equal to the original pixel x value,
-        	//     a y value equal to the original pixel y value
-        	//     a z value less than the original pixel z value.
-        	if (x > 0) {
-        		neighbors[foundNeighbors++] = i-1;
-        	}
-        	if (y > 0) {
-        		neighbors[foundNeighbors++] = i-xDim;
-        	}
-        	if (z > 0) {
-        		neighbors[foundNeighbors++] = i-sliceSize;
-        	}
-        	if (numNeighbor >= 18) {
-        		if ((x > 0) && (y > 0)) {
-        			neighbors[foundNeighbors++] = i-xDim-1;
-        		}
-        		if ((x > 0) && (y < yDim-1)) {
-        			neighbors[foundNeighbors++] = i+xDim-1;
-        		}
-        		if ((x > 0) && (z > 0)) {
-        			neighbors[foundNeighbors++] = i-sliceSize-1;
-        		}
-        		if ((x > 0) && (z < zDim-1)) {
-        			neighbors[foundNeighbors++] = i+sliceSize-1;
-        		}
-        		if ((y > 0) && (z > 0)) {
-        			neighbors[foundNeighbors++] = i - sliceSize - xDim;
-        		}
-        		if ((y > 0) && (z < zDim-1)) {
-        			neighbors[foundNeighbors++] = i + sliceSize - xDim;
-        		}
-        		if (numNeighbor == 26) {
-        			if ((x > 0) && (y > 0) && (z > 0)) {
-        				neighbors[foundNeighbors++] = i - sliceSize - xDim - 1;
-        			}
-        			if ((x > 0) && (y > 0) && (z < zDim-1)) {
-        				neighbors[foundNeighbors++] = i + sliceSize - xDim - 1;
-        			}
-        			if ((x > 0) && (y < yDim-1) && (z > 0)) {
-        				neighbors[foundNeighbors++] = i - sliceSize + xDim - 1;
-        			}
-        			if ((x > 0) && (y < yDim-1) && (z < zDim-1)) {
-        				neighbors[foundNeighbors++] = i + sliceSize + xDim - 1;
-        			}
-        		} // if (numNeighbor == 26)
-        	} // if (numNeighbor >= 18)
-        	allNeighbors[i] = new int[foundNeighbors];
-        	for (j = 0; j < foundNeighbors; j++) {
-        		allNeighbors[i][j] = neighbors[j];
-        	}
-        }
-
 
         for (t = 0; t < tDim; t++) {
 
@@ -413,61 +234,7 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
         	    }
             } // if (limitBins)
             
-            for (i = 0; i < length; i++) {
-            	parentBuffer[i] = i;
-            }
-            
-            // Initialize queue with pixels that have a lower neighbor
-            for (xi = 0; xi < xDim; xi++) {
-                for (yi = 0; yi < yDim; yi++) {
-                	for (zi = 0; zi < zDim; zi++) {
-	            	    i = xi + yi * xDim + zi * sliceSize;
-		            	r = i;
-		            	foundNeighbors = allNeighbors[i].length;
-		        	    for (j = 0; j < foundNeighbors; j++) {
-		        	    	if (imgBuffer[allNeighbors[i][j]] == imgBuffer[i]) {
-		        	    	   r2 =  findRoot(allNeighbors[i][j]);
-		        	    	   // Obtain the minimum of r and r2 with respect to lexicographical order
-		        	    	   x = r % xDim;
-		        	    	   y = (r % sliceSize) / xDim;
-		        	    	   z = r / sliceSize;
-		        	    	   x2 = r2 % xDim;
-		        	    	   y2 = (r2 % sliceSize) / xDim;
-		        	    	   z2 = r2 / sliceSize;
-		        	    	   if ((x2 < x) || ((x2 == x) && (y2 < y)) || ((x2 == x) && (y2 == y) && (z2 < z))) {
-		        	    		   r = r2;
-		        	    	   }
-		        	    	} // if (imgBuffer[allNeighbors[i][j]] == imgBuffer[i]) 
-		        	    } // for (j = 0; j < foundNeighbors; j++)
-		        	    parentBuffer[i] = r;
-		        	    for (j = 0; j < foundNeighbors; j++) {
-		        	    	if (imgBuffer[allNeighbors[i][j]] == imgBuffer[i]) {
-		        	    	    pathCompress(allNeighbors[i][j], r);	
-		        	    	} // if (imgBuffer[allNeighbors[i][j]] == imgBuffer[i])
-		        	    } // for (j = 0; j < foundNeighbors; j++)'
-                	} // for (zi = 0; zi < zDim; zi++)
-                } // for (yi = 0; yi < yDim; yi++)
-            } // for (xi = 0; xi < xDim; xi++)
-            
-            // curlab is the current label
-            curlab = 1;
-            for (xi = 0; xi < xDim; xi++) {
-                for (yi = 0; yi < yDim; yi++) {
-                	for (zi = 0; zi < zDim; zi++) {
-	            	    i = xi + yi * xDim + zi * sliceSize;
-		            	if (parentBuffer[i] == i) {
-		            	    // i is a root pixel
-		            		labelBuffer[i] = curlab;
-		            		curlab++;
-		            	}
-		            	else {
-		            		// Resolve unresolved equivalences
-		            		parentBuffer[i] = parentBuffer[parentBuffer[i]];
-		            		labelBuffer[i] = labelBuffer[parentBuffer[i]];
-		            	}
-                	} // for (zi = 0; zi < zDim; zi++)
-                } // for (yi = 0; yi < yDim; yi++)
-            } // for (xi = 0; xi < xDim; xi++)
+            labelBuffer = labelLevels(imgBuffer, new int[] {xDim, yDim, zDim});
             
             try {
 			    destImage.importData(t*length, labelBuffer, false);
@@ -484,21 +251,55 @@ public class AlgorithmUnionFindComponentLabelling extends AlgorithmBase {
         return;
 	}
 	
-	private int findRoot(int p) {
-		int r = p;
-		while (parentBuffer[p] != p) {
-		    r = parentBuffer[p];
-		    p = r;
+	/**
+	 * Labels the level components of a slice or volume.  The components are found by ConnectedComponents, whose slabs
+	 * are labelled on separate threads, and then numbered in the order of the scan-line algorithm, which visits the
+	 * pixels with x varying slowest: each component gets its number from its lexicographically smallest (x, y, z)
+	 * pixel.
+	 * @param imgBuffer the slice or volume
+	 * @param extents its extents
+	 * @return the labels, from 1
+	 */
+	private int[] labelLevels(double imgBuffer[], int extents[]) {
+		int xDim = extents[0];
+		int yDim = extents[1];
+		int zDim = (extents.length > 2) ? extents[2] : 1;
+		int x;
+		int y;
+		int z;
+		int i;
+		int label;
+		ConnectedComponents components = ConnectedComponents.labelLevels(imgBuffer, extents, numNeighbor,
+				multiThreadingEnabled ? nthreads : 1);
+		int labelBuffer[] = components.getLabels();
+		int numComponents = components.getNumComponents();
+		int firstKey[] = new int[numComponents + 1];
+		long order[] = new long[numComponents];
+		int newLabel[] = new int[numComponents + 1];
+		
+		Arrays.fill(firstKey, Integer.MAX_VALUE);
+		for (z = 0, i = 0; z < zDim; z++) {
+			for (y = 0; y < yDim; y++) {
+				for (x = 0; x < xDim; x++, i++) {
+					int key = (x * yDim + y) * zDim + z;
+					if (key < firstKey[labelBuffer[i]]) {
+						firstKey[labelBuffer[i]] = key;
+					}
+				}
+			}
 		}
-		return r;
-	}
-	
-	private void pathCompress(int p, int r) {
-		int h;
-		while (parentBuffer[p] != r) {
-		    h = parentBuffer[p];
-		    parentBuffer[p] = r;
-		    p = h;
+		
+		for (label = 1; label <= numComponents; label++) {
+			order[label - 1] = ((long)firstKey[label] << 31) | label;
+		}
+		Arrays.sort(order);
+		for (i = 0; i < numComponents; i++) {
+			newLabel[(int)(order[i] & Integer.MAX_VALUE)] = i + 1;
+		}
+		
+		for (i = 0; i < labelBuffer.length; i++) {
+			labelBuffer[i] = newLabel[labelBuffer[i]];
 		}
+		return labelBuffer;
 	}
-}
\ No newline at end of file
+}
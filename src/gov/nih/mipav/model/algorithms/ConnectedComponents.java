@@ -0,0 +1,644 @@
+package gov.nih.mipav.model.algorithms;
+
+
+import gov.nih.mipav.util.ThreadUtil;
+
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * Connected component labelling of 2D or 3D images, with the voxel count, bounding box and centroid of every
+ * component. Voxels are connected when they are neighbors under the chosen connectivity and have the same value.
+ * Components are numbered from 1 in the raster order of their first voxel; background voxels get label 0.
+ *
+ * <p>The image is cut into slabs of whole slices (rows for 2D images), one per thread. Each slab is labelled with a
+ * scan line union-find on its own, the union-find trees are joined across the faces between the slabs, and the roots
+ * are then numbered and the statistics collected in parallel again. The union-find parent of each voxel is stored in
+ * the label array itself, so apart from the statistics no memory is allocated beyond the labels.</p>
+ */
+public class ConnectedComponents {
+
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** Parent of a background voxel; never the negated label of a component. */
+    private static final int BACKGROUND = Integer.MIN_VALUE;
+
+    /** Smallest number of slices worth a thread of its own. */
+    private static final int MIN_SLAB_PLANES = 4;
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    /** Number of components. */
+    private final int numComponents;
+
+    /** Label of every voxel. */
+    private final int[] labels;
+
+    /** Number of voxels of each label; index 0 is unused. */
+    private final int[] voxelCount;
+
+    /** Smallest and largest x, y and z of each label, 6 values per label. */
+    private final int[] boundingBox;
+
+    /** Sum of the x, y and z coordinates of each label, 3 values per label. */
+    private final double[] coordinateSum;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Stores the results of a labelling.
+     *
+     * @param  numComponents  number of components
+     * @param  labels         label of every voxel
+     * @param  voxelCount     number of voxels of each label
+     * @param  boundingBox    smallest and largest coordinates of each label
+     * @param  coordinateSum  sum of the coordinates of each label
+     */
+    private ConnectedComponents(final int numComponents, final int[] labels, final int[] voxelCount,
+            final int[] boundingBox, final double[] coordinateSum) {
+        this.numComponents = numComponents;
+        this.labels = labels;
+        this.voxelCount = voxelCount;
+        this.boundingBox = boundingBox;
+        this.coordinateSum = coordinateSum;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Labels the objects of an image. Voxels with a value greater than 0 are object voxels; neighboring object voxels
+     * belong to the same component when their values are equal, as with the object flood fills of the morphology
+     * algorithms.
+     *
+     * @param   values        the image, indexed x + y * xDim + z * xDim * yDim
+     * @param   extents       the extents of the image, 2 or 3 values
+     * @param   connectivity  4 or 8 for in-plane neighbors only, 6, 18 or 26 for 3D neighbors
+     * @param   nthreads      number of threads to use, 1 to run on the calling thread only
+     *
+     * @return  the components
+     */
+    public static ConnectedComponents labelObjects(final short[] values, final int[] extents,
+            final int connectivity, final int nthreads) {
+        return label(new Voxels() {
+            public boolean isObject(final int i) {
+                return values[i] > 0;
+            }
+
+            public boolean connected(final int i, final int j) {
+                return values[i] == values[j];
+            }
+        }, extents, connectivity, nthreads);
+    }
+
+    /**
+     * Labels the level components of an image: every voxel belongs to a component, and neighboring voxels belong to
+     * the same one when their values are equal.
+     *
+     * @param   values        the image, indexed x + y * xDim + z * xDim * yDim
+     * @param   extents       the extents of the image, 2 or 3 values
+     * @param   connectivity  4 or 8 for in-plane neighbors only, 6, 18 or 26 for 3D neighbors
+     * @param   nthreads      number of threads to use, 1 to run on the calling thread only
+     *
+     * @return  the components
+     */
+    public static ConnectedComponents labelLevels(final double[] values, final int[] extents,
+            final int connectivity, final int nthreads) {
+        return label(new Voxels() {
+            public boolean isObject(final int i) {
+                return true;
+            }
+
+            public boolean connected(final int i, final int j) {
+                return values[i] == values[j];
+            }
+        }, extents, connectivity, nthreads);
+    }
+
+    /**
+     * Returns the number of components.
+     *
+     * @return  the number of components; the labels run from 1 to this number
+     */
+    public int getNumComponents() {
+        return numComponents;
+    }
+
+    /**
+     * Returns the label of every voxel, 0 for background voxels.
+     *
+     * @return  the labels, indexed like the image
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the number of voxels of a component.
+     *
+     * @param   label  the label of the component
+     *
+     * @return  its number of voxels
+     */
+    public int getVoxelCount(final int label) {
+        return voxelCount[label];
+    }
+
+    /**
+     * Returns the bounding box of a component.
+     *
+     * @param   label  the label of the component
+     *
+     * @return  the smallest x, largest x, smallest y, largest y, smallest z and largest z of its voxels
+     */
+    public int[] getBoundingBox(final int label) {
+        final int[] box = new int[6];
+        System.arraycopy(boundingBox, 6 * label, box, 0, 6);
+
+        return box;
+    }
+
+    /**
+     * Returns the centroid of a component.
+     *
+     * @param   label  the label of the component
+     *
+     * @return  the mean x, y and z of its voxels, in voxel coordinates
+     */
+    public double[] getCentroid(final int label) {
+        final double[] centroid = new double[3];
+
+        for (int k = 0; k < 3; k++) {
+            centroid[k] = coordinateSum[ (3 * label) + k] / voxelCount[label];
+        }
+
+        return centroid;
+    }
+
+    /**
+     * Labels the components of an image.
+     *
+     * @param   voxels        tells the object voxels and which neighbors are connected
+     * @param   extents       the extents of the image, 2 or 3 values
+     * @param   connectivity  number of neighbors of a voxel
+     * @param   nthreads      number of threads to use
+     *
+     * @return  the components
+     */
+    private static ConnectedComponents label(final Voxels voxels, final int[] extents, final int connectivity,
+            final int nthreads) {
+        final int xDim = extents[0];
+        final int yDim = extents[1];
+        final int zDim = (extents.length > 2) ? extents[2] : 1;
+        final int sliceSize = xDim * yDim;
+        final int length = sliceSize * zDim;
+        final int[][] neighbors = backwardNeighbors(connectivity, xDim, sliceSize, zDim > 1);
+        final int[] parent = new int[length];
+
+        // slabs of slices for volumes, of rows for single slices
+        final boolean slabsInZ = zDim > 1;
+        final int nPlanes = slabsInZ ? zDim : yDim;
+        final int planeSize = slabsInZ ? sliceSize : xDim;
+        final int nTasks = Math.max(1, Math.min(nthreads, nPlanes / MIN_SLAB_PLANES));
+        final int[] firstPlane = new int[nTasks + 1];
+
+        for (int t = 0; t <= nTasks; t++) {
+            firstPlane[t] = (int) ( (long) nPlanes * t / nTasks);
+        }
+
+        runTasks(nTasks, new SlabTask() {
+            public void run(final int task) {
+                labelSlab(voxels, parent, neighbors, xDim, yDim, firstPlane[task], firstPlane[task + 1], slabsInZ);
+            }
+        });
+
+        // join the trees across the faces between the slabs
+        for (int t = 1; t < nTasks; t++) {
+            final int start = firstPlane[t] * planeSize;
+
+            for (int i = start; i < (start + planeSize); i++) {
+
+                if (parent[i] == BACKGROUND) {
+                    continue;
+                }
+
+                final int x = i % xDim;
+                final int y = (i / xDim) % yDim;
+                final int z = i / sliceSize;
+
+                for (final int[] n : neighbors) {
+
+                    // only the neighbors in the previous slab
+                    if ( (slabsInZ ? n[2] : n[1]) == 0) {
+                        continue;
+                    }
+
+                    final int nx = x + n[0];
+                    final int ny = y + n[1];
+                    final int nz = z + n[2];
+
+                    if ( (nx < 0) || (nx >= xDim) || (ny < 0) || (ny >= yDim) || (nz < 0)) {
+                        continue;
+                    }
+
+                    final int j = i + n[3];
+
+                    if ( (parent[j] != BACKGROUND) && voxels.connected(i, j)) {
+                        union(parent, i, j);
+                    }
+                }
+            }
+        }
+
+        // every root is the first voxel of its component, so numbering the roots in raster order numbers the
+        // components in raster order
+        final int[] rootCount = new int[nTasks + 1];
+
+        runTasks(nTasks, new SlabTask() {
+            public void run(final int task) {
+                final int end = firstPlane[task + 1] * planeSize;
+                int count = 0;
+
+                for (int i = firstPlane[task] * planeSize; i < end; i++) {
+
+                    if (parent[i] == i) {
+                        count++;
+                    }
+                }
+
+                rootCount[task + 1] = count;
+            }
+        });
+
+        for (int t = 1; t <= nTasks; t++) {
+            rootCount[t] += rootCount[t - 1];
+        }
+
+        final int numComponents = rootCount[nTasks];
+
+        // final labels are stored negated, so they can be told from parent indices
+        runTasks(nTasks, new SlabTask() {
+            public void run(final int task) {
+                final int end = firstPlane[task + 1] * planeSize;
+                int label = rootCount[task];
+
+                for (int i = firstPlane[task] * planeSize; i < end; i++) {
+
+                    if (parent[i] == i) {
+                        parent[i] = -(++label);
+                    }
+                }
+            }
+        });
+
+        // Parents always have smaller indices, and a parent is either still an index or already a negated label
+        // when another slab reads it. Both lead to the label of the root.
+        runTasks(nTasks, new SlabTask() {
+            public void run(final int task) {
+                final int end = firstPlane[task + 1] * planeSize;
+
+                for (int i = firstPlane[task] * planeSize; i < end; i++) {
+                    int p = parent[i];
+
+                    while (p >= 0) {
+                        p = parent[p];
+                    }
+
+                    parent[i] = p;
+                }
+            }
+        });
+
+        final int[][] taskCount = new int[nTasks][];
+        final int[][] taskBox = new int[nTasks][];
+        final double[][] taskSum = new double[nTasks][];
+
+        // a slab only holds components whose roots are in it or in an earlier slab
+        runTasks(nTasks, new SlabTask() {
+            public void run(final int task) {
+                final int size = rootCount[task + 1] + 1;
+                final int[] count = new int[size];
+                final int[] box = new int[6 * size];
+                final double[] sum = new double[3 * size];
+                final int end = firstPlane[task + 1] * planeSize;
+
+                for (int i = firstPlane[task] * planeSize; i < end; i++) {
+
+                    if (parent[i] == BACKGROUND) {
+                        parent[i] = 0;
+
+                        continue;
+                    }
+
+                    final int label = -parent[i];
+                    final int x = i % xDim;
+                    final int y = (i / xDim) % yDim;
+                    final int z = i / sliceSize;
+                    parent[i] = label;
+
+                    if (count[label]++ == 0) {
+                        box[6 * label] = x;
+                        box[ (6 * label) + 1] = x;
+                        box[ (6 * label) + 2] = y;
+                        box[ (6 * label) + 3] = y;
+                        box[ (6 * label) + 4] = z;
+                        box[ (6 * label) + 5] = z;
+                    } else {
+                        box[6 * label] = Math.min(box[6 * label], x);
+                        box[ (6 * label) + 1] = Math.max(box[ (6 * label) + 1], x);
+                        box[ (6 * label) + 2] = Math.min(box[ (6 * label) + 2], y);
+                        box[ (6 * label) + 3] = Math.max(box[ (6 * label) + 3], y);
+                        box[ (6 * label) + 5] = z;
+                    }
+
+                    sum[3 * label] += x;
+                    sum[ (3 * label) + 1] += y;
+                    sum[ (3 * label) + 2] += z;
+                }
+
+                taskCount[task] = count;
+                taskBox[task] = box;
+                taskSum[task] = sum;
+            }
+        });
+
+        // merge the statistics of the slabs in slab order
+        final int[] voxelCount = new int[numComponents + 1];
+        final int[] boundingBox = new int[6 * (numComponents + 1)];
+        final double[] coordinateSum = new double[3 * (numComponents + 1)];
+
+        for (int t = 0; t < nTasks; t++) {
+
+            for (int label = 1; label <= rootCount[t + 1]; label++) {
+
+                if (taskCount[t][label] == 0) {
+                    continue;
+                }
+
+                if (voxelCount[label] == 0) {
+                    System.arraycopy(taskBox[t], 6 * label, boundingBox, 6 * label, 6);
+                } else {
+
+                    for (int k = 0; k < 6; k += 2) {
+                        boundingBox[ (6 * label) + k] = Math.min(boundingBox[ (6 * label) + k],
+                                taskBox[t][ (6 * label) + k]);
+                        boundingBox[ (6 * label) + k + 1] = Math.max(boundingBox[ (6 * label) + k + 1],
+                                taskBox[t][ (6 * label) + k + 1]);
+                    }
+                }
+
+                voxelCount[label] += taskCount[t][label];
+
+                for (int k = 0; k < 3; k++) {
+                    coordinateSum[ (3 * label) + k] += taskSum[t][ (3 * label) + k];
+                }
+            }
+        }
+
+        return new ConnectedComponents(numComponents, parent, voxelCount, boundingBox, coordinateSum);
+    }
+
+    /**
+     * Labels one slab with a scan line union-find, ignoring the neighbors outside the slab.
+     *
+     * @param  voxels      tells the object voxels and which neighbors are connected
+     * @param  parent      the union-find parents
+     * @param  neighbors   the neighbors that come before a voxel in raster order
+     * @param  xDim        x extent
+     * @param  yDim        y extent
+     * @param  first       first slice (row for 2D images) of the slab
+     * @param  end         slice after the last one of the slab
+     * @param  slabsInZ    whether the slab is made of slices rather than rows
+     */
+    private static void labelSlab(final Voxels voxels, final int[] parent, final int[][] neighbors, final int xDim,
+            final int yDim, final int first, final int end, final boolean slabsInZ) {
+        final int sliceSize = xDim * yDim;
+        final int zStart = slabsInZ ? first : 0;
+        final int zEnd = slabsInZ ? end : 1;
+        final int yStart = slabsInZ ? 0 : first;
+        final int yEnd = slabsInZ ? yDim : end;
+        final int minY = slabsInZ ? 0 : first;
+        final int minZ = slabsInZ ? first : 0;
+
+        for (int z = zStart; z < zEnd; z++) {
+
+            for (int y = yStart; y < yEnd; y++) {
+                int i = (z * sliceSize) + (y * xDim);
+
+                for (int x = 0; x < xDim; x++, i++) {
+
+                    if ( !voxels.isObject(i)) {
+                        parent[i] = BACKGROUND;
+
+                        continue;
+                    }
+
+                    parent[i] = i;
+
+                    final boolean interior = (x > 0) && (x < (xDim - 1)) && (y > minY) && (y < (yDim - 1))
+                            && ( !slabsInZ || (z > minZ));
+
+                    for (final int[] n : neighbors) {
+
+                        if ( !interior) {
+                            final int nx = x + n[0];
+                            final int ny = y + n[1];
+                            final int nz = z + n[2];
+
+                            if ( (nx < 0) || (nx >= xDim) || (ny < minY) || (ny >= yDim) || (nz < minZ)) {
+                                continue;
+                            }
+                        }
+
+                        final int j = i + n[3];
+
+                        if ( (parent[j] != BACKGROUND) && voxels.connected(i, j)) {
+                            union(parent, i, j);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the neighbors of a voxel that come before it in raster order.
+     *
+     * @param   connectivity  4, 8, 6, 18 or 26
+     * @param   xDim          x extent
+     * @param   sliceSize     number of voxels in a slice
+     * @param   volume        whether the image has more than one slice
+     *
+     * @return  x, y and z offsets and index offset of each neighbor
+     */
+    private static int[][] backwardNeighbors(final int connectivity, final int xDim, final int sliceSize,
+            final boolean volume) {
+        final int[][] offsets;
+
+        switch (connectivity) {
+
+            case 4:
+                offsets = new int[][] { {-1, 0, 0}, {0, -1, 0}};
+                break;
+
+            case 8:
+                offsets = new int[][] { {-1, 0, 0}, {0, -1, 0}, {-1, -1, 0}, {1, -1, 0}};
+                break;
+
+            case 6:
+                offsets = new int[][] { {-1, 0, 0}, {0, -1, 0}, {0, 0, -1}};
+                break;
+
+            case 18:
+                offsets = new int[][] { {-1, 0, 0}, {0, -1, 0}, {0, 0, -1}, {-1, -1, 0}, {1, -1, 0}, {-1, 0, -1},
+                        {1, 0, -1}, {0, -1, -1}, {0, 1, -1}};
+                break;
+
+            case 26:
+                offsets = new int[][] { {-1, 0, 0}, {0, -1, 0}, {0, 0, -1}, {-1, -1, 0}, {1, -1, 0}, {-1, 0, -1},
+                        {1, 0, -1}, {0, -1, -1}, {0, 1, -1}, {-1, -1, -1}, {1, -1, -1}, {-1, 1, -1}, {1, 1, -1}};
+                break;
+
+            default:
+                throw new IllegalArgumentException("Connectivity must be 4, 8, 6, 18 or 26, not " + connectivity);
+        }
+
+        int count = 0;
+
+        for (final int[] offset : offsets) {
+
+            if (volume || (offset[2] == 0)) {
+                count++;
+            }
+        }
+
+        // a single slice has no neighbors in z
+        final int[][] neighbors = new int[count][];
+        count = 0;
+
+        for (final int[] offset : offsets) {
+
+            if (volume || (offset[2] == 0)) {
+                neighbors[count++] = new int[] {
+                    offset[0], offset[1], offset[2], offset[0] + (offset[1] * xDim) + (offset[2] * sliceSize)
+                };
+            }
+        }
+
+        return neighbors;
+    }
+
+    /**
+     * Finds the root of a voxel, halving the path on the way.
+     *
+     * @param   parent  the union-find parents
+     * @param   i       the voxel
+     *
+     * @return  its root
+     */
+    private static int find(final int[] parent, int i) {
+
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Joins the trees of two voxels under the smaller of their roots, so that a root is always the first voxel of its
+     * tree.
+     *
+     * @param  parent  the union-find parents
+     * @param  i       a voxel
+     * @param  j       another voxel
+     */
+    private static void union(final int[] parent, final int i, final int j) {
+        final int ri = find(parent, i);
+        final int rj = find(parent, j);
+
+        if (ri < rj) {
+            parent[rj] = ri;
+        } else if (rj < ri) {
+            parent[ri] = rj;
+        }
+    }
+
+    /**
+     * Runs a task for every slab, on the thread pool when there is more than one slab.
+     *
+     * @param  nTasks    number of slabs
+     * @param  slabTask  the task
+     */
+    private static void runTasks(final int nTasks, final SlabTask slabTask) {
+
+        if (nTasks == 1) {
+            slabTask.run(0);
+
+            return;
+        }
+
+        final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+
+        for (int t = 0; t < nTasks; t++) {
+            final int task = t;
+
+            ThreadUtil.mipavThreadPool.execute(new Runnable() {
+                public void run() {
+
+                    try {
+                        slabTask.run(task);
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            doneSignal.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //~ Inner Interfaces -----------------------------------------------------------------------------------------------
+
+    /**
+     * Tells the object voxels and which neighboring voxels are connected.
+     */
+    private interface Voxels {
+
+        /**
+         * Returns whether a voxel belongs to a component.
+         *
+         * @param   i  the voxel
+         *
+         * @return  whether it is an object voxel
+         */
+        boolean isObject(int i);
+
+        /**
+         * Returns whether 2 neighboring object voxels belong to the same component.
+         *
+         * @param   i  a voxel
+         * @param   j  a neighbor
+         *
+         * @return  whether they are connected
+         */
+        boolean connected(int i, int j);
+    }
+
+    /**
+     * Work on one slab.
+     */
+    private interface SlabTask {
+
+        /**
+         * Runs the work.
+         *
+         * @param  task  the slab
+         */
+        void run(int task);
+    }
+}
@@ -0,0 +1,277 @@
+package gov.nih.mipav.model.algorithms;
+
+
+import gov.nih.mipav.util.ThreadUtil;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * Exact Euclidean distance transform of a 2D or 3D binary image in time linear in the number of voxels. For every
+ * voxel it finds the squared distance to the nearest feature voxel, taking the voxel resolutions into account, and
+ * optionally the index of that feature voxel.
+ *
+ * <p>The transform is separable: a one dimensional transform is run along every row, then along every column of the
+ * result, then along every line in z. Each one dimensional transform computes the lower envelope of the parabolas
+ * rooted at the samples of the line, as described in:</p>
+ *
+ * <p>P. F. Felzenszwalb and D. P. Huttenlocher, "Distance Transforms of Sampled Functions", Theory of Computing,
+ * Vol. 8, 2012, pp. 415-428.</p>
+ *
+ * <p>The lines of each pass are independent and are split among threads.</p>
+ */
+public class EuclideanDistanceTransform {
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * No instances; use the static methods.
+     */
+    private EuclideanDistanceTransform() { }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Computes the squared distance from every voxel to the nearest feature voxel.
+     *
+     * @param   features     the feature voxels, indexed x + y * xDim + z * xDim * yDim
+     * @param   extents      the extents of the image, 2 or 3 values
+     * @param   resolutions  the voxel resolutions, at least as many values as extents
+     * @param   nearest      if not null, receives for every voxel the index of its nearest feature voxel, or -1 when
+     *                       there are no feature voxels
+     * @param   nthreads     number of threads to use, 1 to run on the calling thread only
+     *
+     * @return  the squared distances, in the units of the resolutions; positive infinity when there are no feature
+     *          voxels
+     */
+    public static float[] squaredDistance(final BitSet features, final int[] extents, final float[] resolutions,
+            final int[] nearest, final int nthreads) {
+        final int xDim = extents[0];
+        final int yDim = extents[1];
+        final int zDim = (extents.length > 2) ? extents[2] : 1;
+        final int sliceSize = xDim * yDim;
+        final int length = sliceSize * zDim;
+        final float[] dist = new float[length];
+
+        for (int i = 0; i < length; i++) {
+            dist[i] = features.get(i) ? 0.0f : Float.POSITIVE_INFINITY;
+        }
+
+        if (nearest != null) {
+
+            for (int i = 0; i < length; i++) {
+                nearest[i] = features.get(i) ? i : -1;
+            }
+        }
+
+        // rows
+        transformLines(dist, nearest, yDim * zDim, xDim, 1, resolutions[0], nthreads, new LineStart() {
+            public int start(final int line) {
+                return line * xDim;
+            }
+        });
+
+        // columns
+        transformLines(dist, nearest, xDim * zDim, yDim, xDim, resolutions[1], nthreads, new LineStart() {
+            public int start(final int line) {
+                return ( (line / xDim) * sliceSize) + (line % xDim);
+            }
+        });
+
+        if (zDim > 1) {
+            transformLines(dist, nearest, sliceSize, zDim, sliceSize, resolutions[2], nthreads, new LineStart() {
+                public int start(final int line) {
+                    return line;
+                }
+            });
+        }
+
+        return dist;
+    }
+
+    /**
+     * Gives the index of the first voxel of a line of a pass.
+     */
+    private interface LineStart {
+
+        /**
+         * Returns the index of the first voxel of a line.
+         *
+         * @param   line  the line
+         *
+         * @return  the index of its first voxel
+         */
+        int start(int line);
+    }
+
+    /**
+     * Runs the one dimensional transform along a set of parallel lines, splitting them among threads.
+     *
+     * @param  dist        the squared distances, transformed in place
+     * @param  nearest     the nearest feature indices, updated in place, or null
+     * @param  nLines      number of lines
+     * @param  n           number of voxels in a line
+     * @param  stride      distance between neighboring voxels of a line in the arrays
+     * @param  resolution  voxel resolution along the lines
+     * @param  nthreads    number of threads
+     * @param  lineStart   gives the first voxel of each line
+     */
+    private static void transformLines(final float[] dist, final int[] nearest, final int nLines, final int n,
+            final int stride, final float resolution, final int nthreads, final LineStart lineStart) {
+        final double weight = (double) resolution * resolution;
+        final int nTasks = Math.max(1, Math.min(nthreads, nLines));
+
+        if (nTasks == 1) {
+            new LineTransform(dist, nearest, n, stride, weight).run(0, nLines, lineStart);
+
+            return;
+        }
+
+        final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+
+        for (int t = 0; t < nTasks; t++) {
+            final int first = (int) ((long) nLines * t / nTasks);
+            final int last = (int) ((long) nLines * (t + 1) / nTasks);
+
+            ThreadUtil.mipavThreadPool.execute(new Runnable() {
+                public void run() {
+
+                    try {
+                        new LineTransform(dist, nearest, n, stride, weight).run(first, last, lineStart);
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            doneSignal.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * The one dimensional transform, with the work arrays of one thread.
+     */
+    private static class LineTransform {
+
+        /** The squared distances of the image. */
+        private final float[] dist;
+
+        /** The nearest feature indices of the image, or null. */
+        private final int[] nearest;
+
+        /** Number of voxels in a line and distance between its voxels in the image arrays. */
+        private final int n, stride;
+
+        /** Square of the voxel resolution along the lines. */
+        private final double weight;
+
+        /** Values of the line being transformed. */
+        private final double[] f;
+
+        /** Nearest feature indices of the line being transformed. */
+        private final int[] fNearest;
+
+        /** Positions of the parabolas of the lower envelope. */
+        private final int[] v;
+
+        /** Boundaries between the parabolas of the lower envelope. */
+        private final double[] z;
+
+        /**
+         * Creates the work arrays.
+         *
+         * @param  dist     the squared distances of the image
+         * @param  nearest  the nearest feature indices of the image, or null
+         * @param  n        number of voxels in a line
+         * @param  stride   distance between neighboring voxels of a line in the arrays
+         * @param  weight   square of the voxel resolution along the lines
+         */
+        public LineTransform(final float[] dist, final int[] nearest, final int n, final int stride,
+                final double weight) {
+            this.dist = dist;
+            this.nearest = nearest;
+            this.n = n;
+            this.stride = stride;
+            this.weight = weight;
+            f = new double[n];
+            fNearest = (nearest != null) ? new int[n] : null;
+            v = new int[n];
+            z = new double[n + 1];
+        }
+
+        /**
+         * Transforms a range of lines.
+         *
+         * @param  first      first line
+         * @param  last       line after the last one
+         * @param  lineStart  gives the first voxel of each line
+         */
+        public void run(final int first, final int last, final LineStart lineStart) {
+
+            for (int line = first; line < last; line++) {
+                final int start = lineStart.start(line);
+                int k = -1;
+
+                for (int q = 0, i = start; q < n; q++, i += stride) {
+                    f[q] = dist[i];
+
+                    if (nearest != null) {
+                        fNearest[q] = nearest[i];
+                    }
+
+                    if (f[q] == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+
+                    // add the parabola rooted at q to the lower envelope
+                    double s = Double.NEGATIVE_INFINITY;
+
+                    while (k >= 0) {
+                        final int p = v[k];
+                        s = ( (f[q] + (weight * q * q)) - (f[p] + (weight * p * p))) / (2.0 * weight * (q - p));
+
+                        if (s > z[k]) {
+                            break;
+                        }
+
+                        k--;
+                    }
+
+                    k++;
+                    v[k] = q;
+                    z[k] = (k == 0) ? Double.NEGATIVE_INFINITY : s;
+                    z[k + 1] = Double.POSITIVE_INFINITY;
+                }
+
+                if (k < 0) {
+
+                    // no feature voxel reaches this line
+                    continue;
+                }
+
+                k = 0;
+
+                for (int q = 0, i = start; q < n; q++, i += stride) {
+
+                    while (z[k + 1] < q) {
+                        k++;
+                    }
+
+                    final int p = v[k];
+                    dist[i] = (float) ( (weight * (q - p) * (q - p)) + f[p]);
+
+                    if (nearest != null) {
+                        nearest[i] = fNearest[p];
+                    }
+                }
+            }
+        }
+    }
+}
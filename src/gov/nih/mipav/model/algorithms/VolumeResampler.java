@@ -0,0 +1,743 @@
+package gov.nih.mipav.model.algorithms;
+
+
+import gov.nih.mipav.model.structures.TransMatrix;
+
+import gov.nih.mipav.util.ThreadUtil;
+
+import java.io.IOException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Resamples a volume under an affine transformation, the inverse of the transformation that is applied to the volume,
+ * which maps output millimeters to input millimeters.
+ *
+ * <p>The position of an output voxel in the input volume is the sum of a term for its column, a term for its row and a
+ * term for its slice. The column and row terms are computed once when the resampler is created and the slice terms
+ * once per slice, so mapping a voxel costs one addition and one multiplication per axis, in the same order of
+ * operations as the loops of AlgorithmTransform. The geometry is kept between calls, so the volumes of a 4D image, or
+ * the slices of an image transformed slice by slice, are all resampled with it.</p>
+ *
+ * <p>The output rows are split into slabs that are resampled in parallel. The interpolation is left to an
+ * Interpolator, or to a ColorInterpolator for the four channels of ARGB images, which must be safe to call from several
+ * threads at once; the interpolators of AlgorithmTransform only read the volume and the tables prepared by their setup
+ * methods.</p>
+ */
+public class VolumeResampler {
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    /** Column terms of the mapping, in input millimeters. */
+    private final double[] colX, colY, colZ;
+
+    /** Reciprocals of the input voxel resolutions. */
+    private final double invXRes, invYRes, invZRes;
+
+    /** Output extents. */
+    private final int oXdim, oYdim, oZdim;
+
+    /** Row terms of the mapping, in input millimeters. */
+    private final double[] rowX, rowY, rowZ;
+
+    /** Slice terms of the mapping, in input millimeters, including the translation. */
+    private final double[] sliceX, sliceY, sliceZ;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Precomputes the geometry of a resampling. With 2 output extents the resampling is of a single slice: the
+     * transformation is then a 3 x 3 matrix of 2D homogeneous coordinates, and the interpolators are given a z position
+     * of 0.
+     *
+     * @param  outExtents  the extents of the output volume
+     * @param  outRes      the voxel resolutions of the output volume
+     * @param  margins     the number of voxels by which the output volume is padded before the origin along each axis,
+     *                     or null for none
+     * @param  inRes       the voxel resolutions of the input volume
+     * @param  kTM         the transformation from output millimeters to input millimeters
+     */
+    public VolumeResampler(final int[] outExtents, final float[] outRes, final int[] margins, final float[] inRes,
+            final TransMatrix kTM) {
+        final boolean planar = outExtents.length == 2;
+
+        oXdim = outExtents[0];
+        oYdim = outExtents[1];
+        oZdim = planar ? 1 : outExtents[2];
+
+        invXRes = 1.0 / inRes[0];
+        invYRes = 1.0 / inRes[1];
+        invZRes = planar ? 0.0 : (1.0 / inRes[2]);
+
+        final double T00 = kTM.M00;
+        final double T01 = kTM.M01;
+        final double T02 = kTM.M02;
+        final double T10 = kTM.M10;
+        final double T11 = kTM.M11;
+        final double T12 = kTM.M12;
+        final double T20 = planar ? 0.0 : kTM.M20;
+        final double T21 = planar ? 0.0 : kTM.M21;
+
+        colX = new double[oXdim];
+        colY = new double[oXdim];
+        colZ = new double[oXdim];
+
+        for (int i = 0; i < oXdim; i++) {
+            final double imm = (i - ( (margins != null) ? margins[0] : 0)) * outRes[0];
+
+            colX[i] = imm * T00;
+            colY[i] = imm * T10;
+            colZ[i] = imm * T20;
+        }
+
+        rowX = new double[oYdim];
+        rowY = new double[oYdim];
+        rowZ = new double[oYdim];
+
+        for (int j = 0; j < oYdim; j++) {
+            final double jmm = (j - ( (margins != null) ? margins[1] : 0)) * outRes[1];
+
+            rowX[j] = jmm * T01;
+            rowY[j] = jmm * T11;
+            rowZ[j] = jmm * T21;
+        }
+
+        sliceX = new double[oZdim];
+        sliceY = new double[oZdim];
+        sliceZ = new double[oZdim];
+
+        if (planar) {
+            sliceX[0] = T02;
+            sliceY[0] = T12;
+            sliceZ[0] = 0.0;
+
+            return;
+        }
+
+        final double T03 = kTM.M03;
+        final double T13 = kTM.M13;
+        final double T22 = kTM.M22;
+        final double T23 = kTM.M23;
+
+        for (int k = 0; k < oZdim; k++) {
+            final double kmm = (k - ( (margins != null) ? margins[2] : 0)) * outRes[2];
+
+            sliceX[k] = (kmm * T02) + T03;
+            sliceY[k] = (kmm * T12) + T13;
+            sliceZ[k] = (kmm * T22) + T23;
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Resamples the output volume.
+     *
+     * @param  interpolator  gives the value at a position of the input volume
+     * @param  dest          receives the output volume
+     * @param  destOffset    index in dest of the first output voxel
+     * @param  nthreads      number of threads to use, 1 to run on the calling thread only
+     * @param  owner         the algorithm to report progress to and to check for being stopped, or null
+     * @param  showProgress  whether to report the progress through the output to the owner
+     */
+    public void resample(final Interpolator interpolator, final double[] dest, final int destOffset,
+            final int nthreads, final AlgorithmBase owner, final boolean showProgress) {
+        resample(interpolator, dest, null, null, destOffset, nthreads, owner, showProgress);
+    }
+
+    /**
+     * Resamples the output volume of an ARGB image. The four channels of each output voxel are stored one after the
+     * other.
+     *
+     * @param  interpolator  gives the channels at a position of the input volume
+     * @param  dest          receives the output volume
+     * @param  destOffset    index in dest of the first channel of the first output voxel
+     * @param  nthreads      number of threads to use, 1 to run on the calling thread only
+     * @param  owner         the algorithm to report progress to and to check for being stopped, or null
+     * @param  showProgress  whether to report the progress through the output to the owner
+     */
+    public void resample(final ColorInterpolator interpolator, final float[] dest, final int destOffset,
+            final int nthreads, final AlgorithmBase owner, final boolean showProgress) {
+        resample(null, null, interpolator, dest, destOffset, nthreads, owner, showProgress);
+    }
+
+    /**
+     * Resamples a series of input volumes, such as the volumes of a 4D image, one after the other into the same output
+     * buffer. Each input volume is loaded before it is resampled and each output volume is stored before the next one
+     * overwrites it.
+     *
+     * @param   interpolator  gives the value at a position of the loaded input volume
+     * @param   dest          receives each output volume
+     * @param   nVolumes      number of volumes in the series
+     * @param   series        loads the input volumes and stores the output volumes
+     * @param   nthreads      number of threads to use, 1 to run on the calling thread only
+     * @param   owner         the algorithm to report progress to and to check for being stopped, or null
+     * @param   showProgress  whether to report the progress through the series to the owner
+     *
+     * @throws  IOException  if a volume cannot be loaded or stored
+     */
+    public void resampleSeries(final Interpolator interpolator, final double[] dest, final int nVolumes,
+            final Series series, final int nthreads, final AlgorithmBase owner, final boolean showProgress)
+            throws IOException {
+        resampleSeries(interpolator, dest, null, null, nVolumes, series, nthreads, owner, showProgress);
+    }
+
+    /**
+     * Resamples a series of ARGB input volumes one after the other into the same output buffer.
+     *
+     * @param   interpolator  gives the channels at a position of the loaded input volume
+     * @param   dest          receives each output volume, with the four channels of a voxel one after the other
+     * @param   nVolumes      number of volumes in the series
+     * @param   series        loads the input volumes and stores the output volumes
+     * @param   nthreads      number of threads to use, 1 to run on the calling thread only
+     * @param   owner         the algorithm to report progress to and to check for being stopped, or null
+     * @param   showProgress  whether to report the progress through the series to the owner
+     *
+     * @throws  IOException  if a volume cannot be loaded or stored
+     */
+    public void resampleSeries(final ColorInterpolator interpolator, final float[] dest, final int nVolumes,
+            final Series series, final int nthreads, final AlgorithmBase owner, final boolean showProgress)
+            throws IOException {
+        resampleSeries(null, null, interpolator, dest, nVolumes, series, nthreads, owner, showProgress);
+    }
+
+    /**
+     * Resamples the output volume with either a gray scale or a color interpolator, splitting its rows into slabs.
+     *
+     * @param  interpolator       gives the value at a position of the input volume, or null for color
+     * @param  dest               receives the gray scale output volume
+     * @param  colorInterpolator  gives the channels at a position of the input volume, or null for gray scale
+     * @param  colorDest          receives the color output volume
+     * @param  destOffset         index in the destination of the first output voxel
+     * @param  nthreads           number of threads to use, 1 to run on the calling thread only
+     * @param  owner              the algorithm to report progress to and to check for being stopped, or null
+     * @param  showProgress       whether to report the progress through the output to the owner
+     */
+    private void resample(final Interpolator interpolator, final double[] dest,
+            final ColorInterpolator colorInterpolator, final float[] colorDest, final int destOffset,
+            final int nthreads, final AlgorithmBase owner, final boolean showProgress) {
+        final int nRows = oZdim * oYdim;
+        final int nSlabs = Math.max(1, Math.min(nthreads, nRows));
+        final AtomicInteger rowsDone = new AtomicInteger(0);
+        final int mod = Math.max(1, nRows / 50);
+
+        if (nSlabs == 1) {
+            resample(interpolator, dest, colorInterpolator, colorDest, destOffset, 0, nRows, owner, showProgress,
+                    rowsDone, mod);
+
+            return;
+        }
+
+        final CountDownLatch doneSignal = new CountDownLatch(nSlabs);
+
+        for (int t = 0; t < nSlabs; t++) {
+            final int firstRow = (int) ((long) nRows * t / nSlabs);
+            final int endRow = (int) ((long) nRows * (t + 1) / nSlabs);
+
+            ThreadUtil.mipavThreadPool.execute(new Runnable() {
+                public void run() {
+
+                    try {
+                        resample(interpolator, dest, colorInterpolator, colorDest, destOffset, firstRow, endRow,
+                                owner, showProgress, rowsDone, mod);
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            doneSignal.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Resamples a slab of output rows. The rows of all the slices are numbered one after the other.
+     *
+     * @param  interpolator       gives the value at a position of the input volume, or null for color
+     * @param  dest               receives the gray scale output volume
+     * @param  colorInterpolator  gives the channels at a position of the input volume, or null for gray scale
+     * @param  colorDest          receives the color output volume
+     * @param  destOffset         index in the destination of the first output voxel
+     * @param  firstRow           first row of the slab
+     * @param  endRow             row after the last one
+     * @param  owner              the algorithm to report progress to and to check for being stopped, or null
+     * @param  showProgress       whether to report the progress through the output to the owner
+     * @param  rowsDone           number of rows done by all the slabs
+     * @param  mod                number of rows between progress reports
+     */
+    private void resample(final Interpolator interpolator, final double[] dest,
+            final ColorInterpolator colorInterpolator, final float[] colorDest, final int destOffset,
+            final int firstRow, final int endRow, final AlgorithmBase owner, final boolean showProgress,
+            final AtomicInteger rowsDone, final int mod) {
+        final int nRows = oZdim * oYdim;
+        double j1, j2, j3;
+        int index = firstRow * oXdim;
+
+        for (int row = firstRow; row < endRow; row++) {
+
+            if ( (owner != null) && owner.isThreadStopped()) {
+                return;
+            }
+
+            final int j = row % oYdim;
+            final int k = row / oYdim;
+
+            j1 = rowX[j] + sliceX[k];
+            j2 = rowY[j] + sliceY[k];
+            j3 = rowZ[j] + sliceZ[k];
+
+            if (interpolator != null) {
+
+                for (int i = 0; i < oXdim; i++) {
+                    dest[destOffset + index++] = interpolator.interpolate( (j1 + colX[i]) * invXRes,
+                            (j2 + colY[i]) * invYRes, (j3 + colZ[i]) * invZRes);
+                }
+            } else {
+
+                for (int i = 0; i < oXdim; i++) {
+                    colorInterpolator.interpolate( (j1 + colX[i]) * invXRes, (j2 + colY[i]) * invYRes,
+                            (j3 + colZ[i]) * invZRes, colorDest, destOffset + (4 * index++));
+                }
+            }
+
+            final int done = rowsDone.incrementAndGet();
+
+            if (showProgress && (owner != null) && ( (done % mod) == 0)) {
+                owner.fireProgressStateChanged((int) ( ((float) done / nRows * 100) + 0.5f));
+            }
+        }
+    }
+
+    /**
+     * Resamples a series of volumes with either a gray scale or a color interpolator. The progress is reported through
+     * the output of a single volume and through the volumes of a longer series.
+     *
+     * @param   interpolator       gives the value at a position of the input volume, or null for color
+     * @param   dest               receives the gray scale output volumes
+     * @param   colorInterpolator  gives the channels at a position of the input volume, or null for gray scale
+     * @param   colorDest          receives the color output volumes
+     * @param   nVolumes           number of volumes in the series
+     * @param   series             loads the input volumes and stores the output volumes
+     * @param   nthreads           number of threads to use, 1 to run on the calling thread only
+     * @param   owner              the algorithm to report progress to and to check for being stopped, or null
+     * @param   showProgress       whether to report the progress to the owner
+     *
+     * @throws  IOException  if a volume cannot be loaded or stored
+     */
+    private void resampleSeries(final Interpolator interpolator, final double[] dest,
+            final ColorInterpolator colorInterpolator, final float[] colorDest, final int nVolumes,
+            final Series series, final int nthreads, final AlgorithmBase owner, final boolean showProgress)
+            throws IOException {
+
+        for (int volume = 0; volume < nVolumes; volume++) {
+
+            if ( (owner != null) && owner.isThreadStopped()) {
+                return;
+            }
+
+            if (showProgress && (owner != null) && (nVolumes > 1)) {
+                owner.fireProgressStateChanged(Math.round((float) volume / nVolumes * 100));
+            }
+
+            series.load(volume);
+            resample(interpolator, dest, colorInterpolator, colorDest, 0, nthreads, owner,
+                    showProgress && (nVolumes == 1));
+
+            if ( (owner != null) && owner.isThreadStopped()) {
+                return;
+            }
+
+            series.store(volume);
+        }
+    }
+
+    //~ Inner Interfaces -----------------------------------------------------------------------------------------------
+
+    /**
+     * Interpolation kernel of a resampling.
+     */
+    public interface Interpolator {
+
+        /**
+         * Interpolates the input volume.
+         *
+         * @param   x  position along x, in input voxels
+         * @param   y  position along y, in input voxels
+         * @param   z  position along z, in input voxels
+         *
+         * @return  the interpolated value, or the fill value when the position is outside the volume
+         */
+        double interpolate(double x, double y, double z);
+    }
+
+    /**
+     * Interpolation kernel of a resampling of an ARGB image, whose input volume holds the four channels of each voxel
+     * one after the other.
+     */
+    public interface ColorInterpolator {
+
+        /**
+         * Interpolates the four channels of the input volume.
+         *
+         * @param  x      position along x, in input voxels
+         * @param  y      position along y, in input voxels
+         * @param  z      position along z, in input voxels
+         * @param  dest   receives the interpolated channels, or the fill value when the position is outside the volume
+         * @param  index  index in dest of the alpha channel
+         */
+        void interpolate(double x, double y, double z, float[] dest, int index);
+    }
+
+    /**
+     * Source and destination of the volumes of a series.
+     */
+    public interface Series {
+
+        /**
+         * Loads an input volume into the buffer read by the interpolator and prepares the interpolator for it.
+         *
+         * @param   volume  index of the volume in the series
+         *
+         * @throws  IOException  if the volume cannot be loaded
+         */
+        void load(int volume) throws IOException;
+
+        /**
+         * Stores an output volume from the destination buffer of the resampling.
+         *
+         * @param   volume  index of the volume in the series
+         *
+         * @throws  IOException  if the volume cannot be stored
+         */
+        void store(int volume) throws IOException;
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Nearest neighbor interpolation of an ARGB volume. Positions within half a voxel of the volume take the channels
+     * of the nearest voxel.
+     */
+    public static class ColorNearestNeighbor implements ColorInterpolator {
+
+        /** The input volume. */
+        private final double[] volume;
+
+        /** Input extents. */
+        private final int xDim, yDim, zDim;
+
+        /** Value of the channels of the positions outside the volume. */
+        private final float fillValue;
+
+        /**
+         * Creates the interpolator.
+         *
+         * @param  volume     the input volume
+         * @param  extents    the extents of the input volume
+         * @param  fillValue  value of the channels of the positions outside the volume
+         */
+        public ColorNearestNeighbor(final double[] volume, final int[] extents, final float fillValue) {
+            this.volume = volume;
+            xDim = extents[0];
+            yDim = extents[1];
+            zDim = extents[2];
+            this.fillValue = fillValue;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void interpolate(final double X, final double Y, final double Z, final float[] dest, final int index) {
+
+            if ( ! ( (X >= -0.5) && (X < xDim) && (Y >= -0.5) && (Y < yDim) && (Z >= -0.5) && (Z < zDim))) {
+                dest[index] = fillValue;
+                dest[index + 1] = fillValue;
+                dest[index + 2] = fillValue;
+                dest[index + 3] = fillValue;
+
+                return;
+            }
+
+            final int xOffset = Math.min((int) (X + 0.5), xDim - 1);
+            final int yOffset = Math.min((int) (Y + 0.5), yDim - 1) * xDim;
+            final int zOffset = Math.min((int) (Z + 0.5), zDim - 1) * xDim * yDim;
+            final int position = 4 * (xOffset + yOffset + zOffset);
+
+            dest[index] = (float) volume[position];
+            dest[index + 1] = (float) volume[position + 1];
+            dest[index + 2] = (float) volume[position + 2];
+            dest[index + 3] = (float) volume[position + 3];
+        }
+    }
+
+    /**
+     * Trilinear interpolation of an ARGB volume. Positions within half a voxel of the volume are clamped to its edge.
+     */
+    public static class ColorTrilinear implements ColorInterpolator {
+
+        /** The input volume. */
+        private final double[] volume;
+
+        /** Input extents. */
+        private final int xDim, yDim, zDim;
+
+        /** Number of voxels in an input slice. */
+        private final int sliceSize;
+
+        /** Value of the channels of the positions outside the volume. */
+        private final float fillValue;
+
+        /**
+         * Creates the interpolator.
+         *
+         * @param  volume     the input volume
+         * @param  extents    the extents of the input volume
+         * @param  fillValue  value of the channels of the positions outside the volume
+         */
+        public ColorTrilinear(final double[] volume, final int[] extents, final float fillValue) {
+            this.volume = volume;
+            xDim = extents[0];
+            yDim = extents[1];
+            zDim = extents[2];
+            sliceSize = xDim * yDim;
+            this.fillValue = fillValue;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void interpolate(final double X, final double Y, final double Z, final float[] dest, final int index) {
+
+            if ( ! ( (X > -0.5) && (X < xDim) && (Y > -0.5) && (Y < yDim) && (Z > -0.5) && (Z < zDim))) {
+                dest[index] = fillValue;
+                dest[index + 1] = fillValue;
+                dest[index + 2] = fillValue;
+                dest[index + 3] = fillValue;
+
+                return;
+            }
+
+            int x0, y0, z0;
+            double dx, dy, dz;
+            int deltaX, deltaY, deltaZ;
+
+            if (X <= 0) {
+                x0 = 0;
+                dx = 0;
+                deltaX = 0;
+            } else if (X >= (xDim - 1)) {
+                x0 = xDim - 1;
+                dx = 0;
+                deltaX = 0;
+            } else {
+                x0 = (int) X;
+                dx = X - x0;
+                deltaX = 1;
+            }
+
+            if (Y <= 0) {
+                y0 = 0;
+                dy = 0;
+                deltaY = 0;
+            } else if (Y >= (yDim - 1)) {
+                y0 = yDim - 1;
+                dy = 0;
+                deltaY = 0;
+            } else {
+                y0 = (int) Y;
+                dy = Y - y0;
+                deltaY = xDim;
+            }
+
+            if (Z <= 0) {
+                z0 = 0;
+                dz = 0;
+                deltaZ = 0;
+            } else if (Z >= (zDim - 1)) {
+                z0 = zDim - 1;
+                dz = 0;
+                deltaZ = 0;
+            } else {
+                z0 = (int) Z;
+                dz = Z - z0;
+                deltaZ = sliceSize;
+            }
+
+            final double dx1 = 1 - dx;
+            final double dy1 = 1 - dy;
+
+            final int position1 = (z0 * sliceSize) + (y0 * xDim) + x0;
+            final int position2 = position1 + deltaZ;
+
+            for (int c = 0; c < 4; c++) {
+                final double b1 = (dy1 * ( (dx1 * volume[4 * position1 + c])
+                        + (dx * volume[4 * (position1 + deltaX) + c])))
+                        + (dy * ( (dx1 * volume[4 * (position1 + deltaY) + c])
+                        + (dx * volume[4 * (position1 + deltaY + deltaX) + c])));
+
+                final double b2 = (dy1 * ( (dx1 * volume[4 * position2 + c])
+                        + (dx * volume[4 * (position2 + deltaX) + c])))
+                        + (dy * ( (dx1 * volume[4 * (position2 + deltaY) + c])
+                        + (dx * volume[4 * (position2 + deltaY + deltaX) + c])));
+
+                dest[index + c] = (float) ( ( (1 - dz) * b1) + (dz * b2));
+            }
+        }
+    }
+
+    /**
+     * Nearest neighbor interpolation. Positions within half a voxel of the volume take the value of the nearest voxel.
+     */
+    public static class NearestNeighbor implements Interpolator {
+
+        /** The input volume. */
+        private final double[] volume;
+
+        /** Input extents. */
+        private final int xDim, yDim, zDim;
+
+        /** Value of the positions outside the volume. */
+        private final double fillValue;
+
+        /**
+         * Creates the interpolator.
+         *
+         * @param  volume     the input volume
+         * @param  extents    the extents of the input volume
+         * @param  fillValue  value of the positions outside the volume
+         */
+        public NearestNeighbor(final double[] volume, final int[] extents, final double fillValue) {
+            this.volume = volume;
+            xDim = extents[0];
+            yDim = extents[1];
+            zDim = extents[2];
+            this.fillValue = fillValue;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public double interpolate(final double X, final double Y, final double Z) {
+
+            if ( ! ( (X >= -0.5) && (X < xDim) && (Y >= -0.5) && (Y < yDim) && (Z >= -0.5) && (Z < zDim))) {
+                return fillValue;
+            }
+
+            final int xOffset = Math.min((int) (X + 0.5), xDim - 1);
+            final int yOffset = Math.min((int) (Y + 0.5), yDim - 1) * xDim;
+            final int zOffset = Math.min((int) (Z + 0.5), zDim - 1) * xDim * yDim;
+
+            return volume[xOffset + yOffset + zOffset];
+        }
+    }
+
+    /**
+     * Trilinear interpolation. Positions within half a voxel of the volume are clamped to its edge.
+     */
+    public static class Trilinear implements Interpolator {
+
+        /** The input volume. */
+        private final double[] volume;
+
+        /** Input extents. */
+        private final int xDim, yDim, zDim;
+
+        /** Number of voxels in an input slice. */
+        private final int sliceSize;
+
+        /** Value of the positions outside the volume. */
+        private final double fillValue;
+
+        /**
+         * Creates the interpolator.
+         *
+         * @param  volume     the input volume
+         * @param  extents    the extents of the input volume
+         * @param  fillValue  value of the positions outside the volume
+         */
+        public Trilinear(final double[] volume, final int[] extents, final double fillValue) {
+            this.volume = volume;
+            xDim = extents[0];
+            yDim = extents[1];
+            zDim = extents[2];
+            sliceSize = xDim * yDim;
+            this.fillValue = fillValue;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public double interpolate(final double X, final double Y, final double Z) {
+
+            if ( ! ( (X > -0.5) && (X < xDim) && (Y > -0.5) && (Y < yDim) && (Z > -0.5) && (Z < zDim))) {
+                return fillValue;
+            }
+
+            int x0, y0, z0;
+            double dx, dy, dz;
+            int deltaX, deltaY, deltaZ;
+
+            if (X <= 0) {
+                x0 = 0;
+                dx = 0;
+                deltaX = 0;
+            } else if (X >= (xDim - 1)) {
+                x0 = xDim - 1;
+                dx = 0;
+                deltaX = 0;
+            } else {
+                x0 = (int) X;
+                dx = X - x0;
+                deltaX = 1;
+            }
+
+            if (Y <= 0) {
+                y0 = 0;
+                dy = 0;
+                deltaY = 0;
+            } else if (Y >= (yDim - 1)) {
+                y0 = yDim - 1;
+                dy = 0;
+                deltaY = 0;
+            } else {
+                y0 = (int) Y;
+                dy = Y - y0;
+                deltaY = xDim;
+            }
+
+            if (Z <= 0) {
+                z0 = 0;
+                dz = 0;
+                deltaZ = 0;
+            } else if (Z >= (zDim - 1)) {
+                z0 = zDim - 1;
+                dz = 0;
+                deltaZ = 0;
+            } else {
+                z0 = (int) Z;
+                dz = Z - z0;
+                deltaZ = sliceSize;
+            }
+
+            final double dx1 = 1 - dx;
+            final double dy1 = 1 - dy;
+
+            final int position1 = (z0 * sliceSize) + (y0 * xDim) + x0;
+            final int position2 = position1 + deltaZ;
+
+            final double b1 = (dy1 * ( (dx1 * volume[position1]) + (dx * volume[position1 + deltaX])))
+                    + (dy * ( (dx1 * volume[position1 + deltaY]) + (dx * volume[position1 + deltaY + deltaX])));
+
+            final double b2 = (dy1 * ( (dx1 * volume[position2]) + (dx * volume[position2 + deltaX])))
+                    + (dy * ( (dx1 * volume[position2 + deltaY]) + (dx * volume[position2 + deltaY + deltaX])));
+
+            return ( (1 - dz) * b1) + (dz * b2);
+        }
+    }
+}
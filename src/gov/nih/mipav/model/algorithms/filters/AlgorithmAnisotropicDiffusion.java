@@ -70,6 +70,9 @@ public class AlgorithmAnisotropicDiffusion extends AlgorithmBase implements Algo
 
     /** Standard deviations of the gaussian used to calculate the kernels. */
     private float[] sigmas;
+
+    /** Relative change of a volume at which the iterations stop early; 0 runs all the iterations. */
+    private double stopTolerance = 0;
     
     /** Receives output of AlgorithmConvolver */
     private float[] outputBuffer = null;
@@ -417,20 +420,16 @@ public class AlgorithmAnisotropicDiffusion extends AlgorithmBase implements Algo
      */
     private void calcInPlace3D() {
 
-        int i, n;
+        int i;
         int length;
         float[] imgBuffer;
         float[] resultBuffer;
-        float gmMax, gmMin;
-        float val, edgeFunct;
-        float mag;
         float imageMin;
         float imageMax;
         double typeMin;
         double typeMax;
         double a;
         double b;
-        AlgorithmConvolver convolver;
 
         try {
             length = srcImage.getSliceSize() * srcImage.getExtents()[2];
@@ -455,74 +454,7 @@ public class AlgorithmAnisotropicDiffusion extends AlgorithmBase implements Algo
 
         fireProgressStateChanged(0, srcImage.getImageName(), "Diffusing image ...");
         
-        for (n = 0; (n < iterations) && !threadStopped; n++) {
-            convolver = new AlgorithmConvolver(srcImage, GxData, GyData, GzData, kExtents,entireImage);
-            setLinkedProgressValues(n, convolver);
-            linkProgressToAlgorithm(convolver);
-            convolver.addListener(this);
-            if (!entireImage) {
-                convolver.setMask(mask);
-            }
-
-            convolver.run();
-            convolver.finalize();
-            // Normalize GM !!
-            for (i = 0, gmMax = 0, gmMin = Float.MAX_VALUE; i < length; i++) {
-
-                    if (outputBuffer[i] > gmMax) {
-                        gmMax = outputBuffer[i];
-                    } 
-                    if (outputBuffer[i] < gmMin) {
-                        gmMin = outputBuffer[i];
-                    }
-                    resultBuffer[i] = outputBuffer[i];
-            }
-
-            // two speed ups
-            // mult by 1/konsnt
-            float invK = 1 / konsnt;
-            float normMag = 100 / (gmMax - gmMin);
-            
-            convolver = new AlgorithmConvolver(srcImage, lapData, klapExtents,entireImage, image25D);
-            setLinkedProgressValues(n, convolver);
-            linkProgressToAlgorithm(convolver);
-            convolver.addListener(this);
-            if (!entireImage) {
-                convolver.setMask(mask);
-            }
-
-            convolver.run();
-            convolver.finalize();
-
-            for (i = 0; (i < length) && !threadStopped; i++) {
-               
-
-                if ((entireImage == true) || mask.get(i)) {
-
-                    // mag = ((gmBuffer[i]-gmMin)/(gmMax-gmMin)) * 100;
-                    mag = (resultBuffer[i] - gmMin) * normMag;
-
-                    // edgeFunct = (float)( 1/(1 + mag/konsnt * mag/konsnt));
-                    edgeFunct = (float) (1 / (1 + (mag * invK * mag * invK)));
-
-                    val = outputBuffer[i] * edgeFunct * 0.25f;
-                    imgBuffer[i] = val + imgBuffer[i];
-                } 
-            }
-
-            if (n != (iterations - 1)) {
-                try {
-                    srcImage.importData(0, imgBuffer, true);
-                }
-                catch (IOException error) {
-                    imgBuffer = null;
-                    resultBuffer = null;
-                    errorCleanUp("Anisotropic Diffusion: Image(s) locked", true);
-    
-                    return;
-                }
-            }
-        } // for (n = 0; (n < iterations) && !threadStopped; n++) {
+        imgBuffer = diffuseVolume(imgBuffer, resultBuffer);
 
         resultBuffer = null;
         System.gc();
@@ -867,20 +799,16 @@ public class AlgorithmAnisotropicDiffusion extends AlgorithmBase implements Algo
      * Calculates the diffused image and stores the resultant diffused image in the destination image model.
      */
     private void calcStoreInDest3D() {
-        int i, n;
+        int i;
         int length;
         float[] imgBuffer;
         float[] resultBuffer;
-        float gmMax, gmMin;
-        float val, edgeFunct;
-        float mag;
         float imageMin;
         float imageMax;
         double typeMin;
         double typeMax;
         double a;
         double b;
-        AlgorithmConvolver convolver;
 
         try {
             length = srcImage.getSliceSize() * srcImage.getExtents()[2];
@@ -916,74 +844,7 @@ public class AlgorithmAnisotropicDiffusion extends AlgorithmBase implements Algo
 
         fireProgressStateChanged(0, srcImage.getImageName(), "Diffusing image ...");
         
-        for (n = 0; (n < iterations) && !threadStopped; n++) {
-            convolver = new AlgorithmConvolver(destImage, GxData, GyData, GzData, kExtents,entireImage);
-            setLinkedProgressValues(n, convolver);
-            linkProgressToAlgorithm(convolver);
-            convolver.addListener(this);
-            if (!entireImage) {
-                convolver.setMask(mask);
-            }
-
-            convolver.run();
-            convolver.finalize();
-            // Normalize GM !!
-            for (i = 0, gmMax = 0, gmMin = Float.MAX_VALUE; i < length; i++) {
-
-                    if (outputBuffer[i] > gmMax) {
-                        gmMax = outputBuffer[i];
-                    } 
-                    if (outputBuffer[i] < gmMin) {
-                        gmMin = outputBuffer[i];
-                    }
-                    resultBuffer[i] = outputBuffer[i];
-            }
-
-            // two speed ups
-            // mult by 1/konsnt
-            float invK = 1 / konsnt;
-            float normMag = 100 / (gmMax - gmMin);
-            
-            convolver = new AlgorithmConvolver(destImage, lapData, klapExtents,entireImage, image25D);
-            setLinkedProgressValues(n, convolver);
-            linkProgressToAlgorithm(convolver);
-            convolver.addListener(this);
-            if (!entireImage) {
-                convolver.setMask(mask);
-            }
-
-            convolver.run();
-            convolver.finalize();
-
-            for (i = 0; (i < length) && !threadStopped; i++) {
-               
-
-                if ((entireImage == true) || mask.get(i)) {
-
-                    // mag = ((gmBuffer[i]-gmMin)/(gmMax-gmMin)) * 100;
-                    mag = (resultBuffer[i] - gmMin) * normMag;
-
-                    // edgeFunct = (float)( 1/(1 + mag/konsnt * mag/konsnt));
-                    edgeFunct = (float) (1 / (1 + (mag * invK * mag * invK)));
-
-                    val = outputBuffer[i] * edgeFunct * 0.25f;
-                    imgBuffer[i] = val + imgBuffer[i];
-                } 
-            }
-
-            if (n != (iterations - 1)) {
-                try {
-                    destImage.importData(0, imgBuffer, true);
-                }
-                catch (IOException error) {
-                    imgBuffer = null;
-                    resultBuffer = null;
-                    errorCleanUp("Anisotropic Diffusion: Image(s) locked", true);
-    
-                    return;
-                }
-            }
-        } // for (n = 0; (n < iterations) && !threadStopped; n++) {
+        imgBuffer = diffuseVolume(imgBuffer, resultBuffer);
 
         resultBuffer = null;
         System.gc();
@@ -1080,6 +941,83 @@ public class AlgorithmAnisotropicDiffusion extends AlgorithmBase implements Algo
         
     }
    
+    /**
+     * Runs the iterations of the diffusion of a volume on a buffer. Each iteration computes the gradient magnitude and
+     * then the Laplacian update of every voxel in the mask, with the slabs of the volume on several threads; the
+     * volume stays in memory between the iterations instead of going through an image and a new convolver each time.
+     *
+     * @param   imgBuffer  the volume to diffuse
+     * @param   gmBuffer   receives the gradient magnitude of the last iteration
+     *
+     * @return  the diffused volume, which is imgBuffer or a second buffer of the same size
+     */
+    private float[] diffuseVolume(float[] imgBuffer, final float[] gmBuffer) {
+        final int[] extents = srcImage.getExtents();
+        final DiffusionStepper stepper = new DiffusionStepper(extents, multiThreadingEnabled ? nthreads : 1);
+
+        // two speed ups
+        // mult by 1/konsnt
+        final float invK = 1 / konsnt;
+
+        stepper.setStopTolerance(stopTolerance);
+        stepper.setImage(imgBuffer);
+
+        for (int n = 0; (n < iterations) && !threadStopped; n++) {
+            fireProgressStateChanged(Math.min((100 * n) / iterations, 99));
+
+            final float[] image = stepper.getImage();
+
+            stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                    public void apply(int firstPlane, int endPlane) {
+
+                        for (int i = firstPlane * stepper.getPlaneSize(); i < (endPlane * stepper.getPlaneSize());
+                                 i++) {
+
+                            if ((entireImage == true) || mask.get(i)) {
+                                gmBuffer[i] = AlgorithmConvolver.convolve3DPtXYZ(i, extents, image, kExtents, GxData,
+                                                                                 GyData, GzData);
+                            } else {
+                                gmBuffer[i] = image[i];
+                            }
+                        }
+                    }
+                });
+
+            // Normalize GM !!
+            final float gmMin = stepper.minimum(gmBuffer);
+            final float normMag = 100 / (Math.max(0, stepper.maximum(gmBuffer)) - gmMin);
+
+            if (stepper.step(new DiffusionStepper.StepOperation() {
+                        public void apply(float[] current, float[] next, int firstPlane, int endPlane) {
+                            float mag, edgeFunct;
+
+                            for (int i = firstPlane * stepper.getPlaneSize(); i < (endPlane * stepper.getPlaneSize());
+                                     i++) {
+
+                                if ((entireImage == true) || mask.get(i)) {
+
+                                    // mag = ((gmBuffer[i]-gmMin)/(gmMax-gmMin)) * 100;
+                                    mag = (gmBuffer[i] - gmMin) * normMag;
+
+                                    // edgeFunct = (float)( 1/(1 + mag/konsnt * mag/konsnt));
+                                    edgeFunct = (float) (1 / (1 + (mag * invK * mag * invK)));
+
+                                    next[i] = (AlgorithmConvolver.convolve3DPt(i, extents, current, klapExtents,
+                                                                               lapData) * edgeFunct * 0.25f) +
+                                              current[i];
+                                } else {
+                                    next[i] = current[i];
+                                }
+                            }
+                        }
+                    })) {
+                break;
+            }
+        } // for (int n = 0; (n < iterations) && !threadStopped; n++) {
+
+        return stepper.getImage();
+    }
+
     /**
      * Creates the derivative kernels used to calculate the gradient magnitude and kernel for the diffusion process.
      */
@@ -1260,6 +1198,17 @@ public class AlgorithmAnisotropicDiffusion extends AlgorithmBase implements Algo
     	convolver.setMinProgressValue(Math.min((100 * n)/iterations, 98));
         convolver.setMaxProgressValue(Math.min((100 * n)/iterations+1,99));
     }
+
+    /**
+     * Sets the relative change of a volume, the root of the summed squared change of an iteration over the root of
+     * the summed squared volume, at which the iterations of a 3D diffusion stop before the number of iterations is
+     * reached.
+     *
+     * @param  tolerance  the relative change; 0 or less always runs all the iterations
+     */
+    public void setStopTolerance(double tolerance) {
+        stopTolerance = tolerance;
+    }
     
     public void algorithmPerformed(AlgorithmBase algorithm){
         if(!algorithm.isCompleted()){
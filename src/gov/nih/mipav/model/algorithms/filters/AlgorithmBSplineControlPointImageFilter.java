@@ -7,8 +7,10 @@ import gov.nih.mipav.model.structures.BSplineKernelFunction;
 import gov.nih.mipav.model.structures.CoxDeBoorBSplineKernelFunction;
 import gov.nih.mipav.model.structures.ModelImage;
 import gov.nih.mipav.model.structures.ModelStorageBase;
+import gov.nih.mipav.util.ThreadUtil;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 import Jama.Matrix;
 import gov.nih.mipav.view.MipavUtil;
@@ -86,6 +88,10 @@ import gov.nih.mipav.view.Preferences;
 		private double outputBuffer[] = null;
 		private ModelImage psiLattice = null;
 		private Matrix[] refinedLatticeCoefficients = null;
+		// Start and length, in output voxels, of the parametric domain along each dimension, or null when the
+		// domain covers the whole output
+		private double domainStart[] = null;
+		private double domainLength[] = null;
 	    
 	    public AlgorithmBSplineControlPointImageFilter(int nDims) {
 	    	this.nDims = nDims;
@@ -210,6 +216,18 @@ import gov.nih.mipav.view.Preferences;
 	    	}
 	    }
 	    
+	    /**
+	     * Maps the parametric domain of the lattice to part of the output instead of to the whole output, as when
+	     * the lattice was fitted on a subsampled image.  Output voxels outside the domain get the values at its
+	     * boundary.
+	     * @param start output voxel coordinate of the start of the domain along each dimension
+	     * @param length length of the domain along each dimension, in output voxels
+	     */
+	    public void setParametricDomain(double[] start, double[] length) {
+	    	domainStart = start;
+	    	domainLength = length;
+	    }
+	    
 	    public void generateData() {
 	    	beforeThreadedGenerateData();
 	    	threadedGenerateData();
@@ -242,8 +260,7 @@ import gov.nih.mipav.view.Preferences;
 	    }
 	    
 	    private void threadedGenerateData() {
-	    	double collapsedPhiLattices[][] = new double[nDims + 1][];
-	        int collapsedPhiLatticeIndex[][] = new int[nDims+1][];
+	        final int collapsedPhiLatticeIndex[][] = new int[nDims+1][];
 	        int size = 1;
 	        int it;
 	        for (int i = 0; i <= nDims; i++) {
@@ -259,10 +276,10 @@ import gov.nih.mipav.view.Preferences;
 	            	size *= inputImage.getExtents()[j];
 	            	collapsedPhiLatticeIndex[i][j] = inputImage.getExtents()[j];
 	            }
-	            collapsedPhiLattices[i] = new double[size];
 	        }
+	        final double lattice[] = new double[size];
 	        try {
-	        	inputImage.exportData(0, size, collapsedPhiLattices[nDims]);
+	        	inputImage.exportData(0, size, lattice);
 	        }
 	        catch(IOException e) {
 	        	MipavUtil.displayError("IOException on inputImage.exportData");
@@ -277,16 +294,92 @@ import gov.nih.mipav.view.Preferences;
 	        	    totalNumberOfSpans[i] = inputImage.getExtents()[i] - splineOrder[i];
 	        	}
 	        } // for (int i = 0; i < nDims; i++)
-	        double U[] = new double[nDims];
+	        
+	        // The parametric coordinate along a dimension only depends on the index along that dimension
+	        final double U[][] = new double[nDims][];
+	        for (int i = 0; i < nDims; i++) {
+	        	U[i] = new double[extents[i]];
+	        	for (it = 0; it < extents[i]; it++) {
+	        		if (domainStart != null) {
+	        			U[i][it] = totalNumberOfSpans[i] * (it - domainStart[i]) / domainLength[i];
+	        			U[i][it] = Math.max(0.0, Math.min(U[i][it], totalNumberOfSpans[i]));
+	        		}
+	        		else {
+	        			U[i][it] = ((double)(totalNumberOfSpans[i] * (it /* - startIndex[i] */)))/(double)(extents[i] - 1);
+	        		}
+	                //if (Math.abs(U[i] - totalNumberOfSpans[i]) <= BSplineEpsilon) {
+	                if ((Math.abs(U[i][it] - totalNumberOfSpans[i]))/totalNumberOfSpans[i] < 1.0E-6) {
+	                	U[i][it] = totalNumberOfSpans[i] - BSplineEpsilon;
+	                }
+	                if (U[i][it] >= totalNumberOfSpans[i]) {
+	                	MipavUtil.displayError("The collapse point component " + U[i][it] + 
+	                			" is outside the corresponding parametric domain of [0, " + totalNumberOfSpans[i] +
+	                			"].");
+	                	return;
+	                }
+	        	}
+	        } // for (int i = 0; i < nDims; i++)
+	        
+	        outputBuffer = new double[extentsLength];
+	        
+	        // The lines along x are split among threads, each collapsing the lattice into its own buffers
+	        final int numberOfLines = extentsLength / extents[0];
+	        final int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, numberOfLines)) : 1;
+	        final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+	        for (int t = 0; t < nTasks; t++) {
+	        	final int start = (int) ((long) numberOfLines * t / nTasks) * extents[0];
+	        	final int end = (int) ((long) numberOfLines * (t + 1) / nTasks) * extents[0];
+	        	Runnable task = new Runnable() {
+	        		public void run() {
+	        			try {
+	        				evaluateLattice(lattice, collapsedPhiLatticeIndex, U, start, end);
+	        			}
+	        			finally {
+	        				doneSignal.countDown();
+	        			}
+	        		}
+	        	};
+	        	if (nTasks == 1) {
+	        		task.run();
+	        	}
+	        	else {
+	        		ThreadUtil.mipavThreadPool.execute(task);
+	        	}
+	        }
+	        try {
+	        	doneSignal.await();
+	        }
+	        catch (InterruptedException e) {
+	        	Thread.currentThread().interrupt();
+	        }
+	    }
+	    
+	    /**
+	     * Evaluates the B-spline at a range of output voxels.
+	     * @param lattice the control point lattice
+	     * @param collapsedPhiLatticeIndex extents of the lattice collapsed along the dimensions above each dimension
+	     * @param U parametric coordinate of each index along each dimension
+	     * @param start first output voxel
+	     * @param end output voxel after the last one
+	     */
+	    private void evaluateLattice(double lattice[], int collapsedPhiLatticeIndex[][], double U[][], int start,
+	    		int end) {
+	    	double collapsedPhiLattices[][] = new double[nDims + 1][];
+	    	for (int i = 0; i < nDims; i++) {
+	    		int size = 1;
+	    		for (int j = 0; j < i; j++) {
+	    			size *= collapsedPhiLatticeIndex[i][j];
+	    		}
+	    		collapsedPhiLattices[i] = new double[size];
+	    	}
+	    	collapsedPhiLattices[nDims] = lattice;
 	        double currentU[] = new double[nDims];
 	        for (int i = 0; i < nDims; i++) {
 	        	currentU[i] = -1;
 	        }
 	        
-	        outputBuffer = new double[extentsLength];
-	        
 	        int idx[] = new int[nDims];
-	        for (it = 0; it < extentsLength; it++) {
+	        for (int it = start; it < end; it++) {
 	            idx[0] = it % extents[0];
 	            idx[1] = (it % extentsSlice) / extents[0];
 	            if (nDims > 2) {
@@ -295,31 +388,18 @@ import gov.nih.mipav.view.Preferences;
 	            		idx[3] = it / xyzExtents;
 	            	}
 	            }
-	            for (int i = 0; i < nDims; i++) {
-	                U[i] = ((double)(totalNumberOfSpans[i] * (idx[i] /* - startIndex[i] */)))/(double)(extents[i] - 1);
-	                //if (Math.abs(U[i] - totalNumberOfSpans[i]) <= BSplineEpsilon) {
-	                if ((Math.abs(U[i] - totalNumberOfSpans[i]))/totalNumberOfSpans[i] < 1.0E-6) {
-	                	U[i] = totalNumberOfSpans[i] - BSplineEpsilon;
-	                }
-	                if (U[i] >= totalNumberOfSpans[i]) {
-	                	MipavUtil.displayError("The collapse point component " + U[i] + 
-	                			" is outside the corresponding parametric domain of [0, " + totalNumberOfSpans[i] +
-	                			"].");
-	                	return;
-	                }
-	            } // for (int i = 0; i < nDims; i++)
 	            for (int i = nDims - 1; i >= 0; i--) {
-	                if (U[i] != currentU[i]) {
+	                if (U[i][idx[i]] != currentU[i]) {
 	                	for (int j = i; j >= 0; j--) {
 	                		collapsePhiLattice(collapsedPhiLattices[j+1],collapsedPhiLatticeIndex[j+1], collapsedPhiLattices[j],
-	                				collapsedPhiLatticeIndex[j], U[j], j);
-	                		currentU[j] = U[j];
+	                				collapsedPhiLatticeIndex[j], U[j][idx[j]], j);
+	                		currentU[j] = U[j][idx[j]];
 	                	}
 	                	break;
 	                }
 	            } // for (int i = nDims - 1; i >= 0; i--)
 	            outputBuffer[it] = collapsedPhiLattices[0][0];
-	        } // for (it = 0; it < extentsLength; it++)
+	        } // for (int it = start; it < end; it++)
 	    }
 	    
 	    private void collapsePhiLattice(double[] lattice, int latticeIndex[], double[] collapsedLattice, int collapsedLatticeIndex[],
@@ -661,7 +741,7 @@ import gov.nih.mipav.view.Preferences;
 		    			}
 	    		    } // while (!isEvenIndex && (it < sizeLength))
 	    		} // while (it < sizeLength)
-	    		psiLattice.disposeLocal();
+	    		psiLattice.disposeLocal(false);
 	    		psiLattice = null;
 	    		psiLattice = new ModelImage(ModelStorageBase.DOUBLE, size, "psiLattice");
 	    		try {
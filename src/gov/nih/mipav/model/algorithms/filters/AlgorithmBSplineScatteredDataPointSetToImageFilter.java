@@ -1,11 +1,13 @@
 	package gov.nih.mipav.model.algorithms.filters;
 	
+import gov.nih.mipav.util.ThreadUtil;
 import gov.nih.mipav.model.structures.BSplineKernelFunction;
 import gov.nih.mipav.model.structures.CoxDeBoorBSplineKernelFunction;
 import gov.nih.mipav.model.structures.ModelImage;
 import gov.nih.mipav.model.structures.ModelStorageBase;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 import java.util.Vector;
 
 import WildMagic.LibFoundation.Mathematics.Vector4d;
@@ -59,9 +61,14 @@ import gov.nih.mipav.view.Preferences;
 		private int maximumNumberOfLevels;
 		ModelImage phiLattice;
 		ModelImage psiLattice;
-		private Vector<Double> inputPointData;
-		private Vector<Double> outputPointData;
+		private double inputPointData[];
+		private double outputPointData[];
 		private Vector<Double> pointWeights;
+		// Coordinates of the points, nDims values per point, and their weights, as used by the fitting
+		private double pointCoordinates[];
+		private double pointWeightData[];
+		// Set when the points were given as arrays with setPoints()
+		private boolean usePointArrays;
 		private boolean usePointWeights;
 		// Machine epsilon is the smallest positive epsilon such that
         // (1.0 + epsilon) != 1.0.
@@ -86,8 +93,8 @@ import gov.nih.mipav.view.Preferences;
 		private Matrix[] refinedLatticeCoefficients;
 		private int currentLevel;
 		private int[] currentNumberOfControlPoints;
-		private ModelImage omegaLattice;
-		private ModelImage deltaLattice;
+		private double omegaLattice[];
+		private double deltaLattice[];
 	    
 	    public AlgorithmBSplineScatteredDataPointSetToImageFilter(int nDims) {
 	        super(nDims);
@@ -122,8 +129,6 @@ import gov.nih.mipav.view.Preferences;
 	        // itk only needs data type and extents to construct an image, but MIPAV needs extents[] as well.
 	        phiLattice = null;
 	        psiLattice = null;
-	        inputPointData = new Vector<Double>();
-	        outputPointData = new Vector<Double>();
 	        
 	        usePointWeights = false;
 	        pointWeights = new Vector<Double>();
@@ -155,31 +160,21 @@ import gov.nih.mipav.view.Preferences;
 	    	numberOfLevels = null;
 	    	phiLattice = null;
 	    	if (psiLattice != null) {
-	    		psiLattice.disposeLocal();
+	    		psiLattice.disposeLocal(false);
 	    		psiLattice = null;
 	    	}
-	    	if (inputPointData != null) {
-	    	    inputPointData.clear();
-	    	    inputPointData = null;
-	        }
-	    	if (outputPointData != null) {
-	    		outputPointData.clear();
-	    		outputPointData = null;
-	    	}
+	    	inputPointData = null;
+	    	outputPointData = null;
+	    	pointCoordinates = null;
+	    	pointWeightData = null;
 	    	if (pointWeights != null) {
 	    		pointWeights.clear();
 	    		pointWeights = null;
 	    	}
 	    	refinedLatticeCoefficients = null;
 	    	currentNumberOfControlPoints = null;
-	    	if (omegaLattice != null) {
-	    		omegaLattice.disposeLocal();
-	    		omegaLattice = null;	
-	    	}
-	    	if (deltaLattice != null) { 
-	    		deltaLattice.disposeLocal();
-	    	    deltaLattice = null;
-	    	};
+	    	omegaLattice = null;
+	    	deltaLattice = null;
 	        super.finalize();
 	    }
 	    
@@ -301,15 +296,40 @@ import gov.nih.mipav.view.Preferences;
 	    	}
 	    }
 	    
+	    /**
+	     * Sets the points as arrays, which avoids boxing every point for large point sets.  Replaces the points given
+	     * with setPointData(), setPointLocation() and setPointWeights().
+	     * @param coordinates coordinates of the points, nDims values per point
+	     * @param data the point data
+	     * @param weights the point weights, or null for weights of 1
+	     */
+	    public void setPoints(double[] coordinates, double[] data, double[] weights) {
+	    	usePointArrays = true;
+	    	usePointWeights = (weights != null);
+	    	pointCoordinates = coordinates;
+	    	inputPointData = data;
+	    	pointWeightData = weights;
+	    }
+	    
 	    public void generateData() {
 	    	// Uncomment to use the BSplineScatteredDataPointSetToImageFilterTest self test in AlgorithmN4MRIBiasFieldCorrectionFilter
 	    	//super.generateData();
 	    	// Perform some error checking on the input
-	    	if (pointData.size() != pointLocation.size()) {
+	    	if (usePointArrays) {
+	    		if (pointCoordinates.length != inputPointData.length * nDims) {
+	    			MipavUtil.displayError("pointData and pointLocation must have the same size");
+		    		return;
+	    		}
+	    		if (usePointWeights && (pointWeightData.length != inputPointData.length)) {
+	    			MipavUtil.displayError("pointsWeights and pointData must have the same size");
+		    		return;
+	    		}
+	    	}
+	    	else if (pointData.size() != pointLocation.size()) {
 	    		MipavUtil.displayError("pointData and pointLocation must have the same size");
 	    		return;
 	    	}
-	    	if (usePointWeights  && (pointWeights.size() != pointData.size())) {
+	    	else if (usePointWeights  && (pointWeights.size() != pointData.size())) {
 	    		System.err.println("pointWeights.size() = " + pointWeights.size());
 	    		System.err.println("pointData.size() = " + pointData.size());
 	    		MipavUtil.displayError("pointsWeights and pointData must have the same size");
@@ -336,18 +356,38 @@ import gov.nih.mipav.view.Preferences;
 	    	    BSplineEpsilon *= 10.0;	
 	    	}
 	    	
-	    	inputPointData.clear();
-	    	outputPointData.clear();
-	    	if (!usePointWeights) {
-	    		pointWeights.clear();
+	    	if (!usePointArrays) {
+	    		int numberOfPoints = pointData.size();
+	    		pointCoordinates = new double[numberOfPoints * nDims];
+	    		inputPointData = new double[numberOfPoints];
+	    		pointWeightData = usePointWeights ? new double[numberOfPoints] : null;
+	    		for (int i = 0; i < numberOfPoints; i++) {
+	    			Vector4d point = pointLocation.get(i);
+	    			pointCoordinates[i * nDims] = point.X;
+	    			pointCoordinates[i * nDims + 1] = point.Y;
+	    			if (nDims > 2) {
+	    				pointCoordinates[i * nDims + 2] = point.Z;
+	    				if (nDims > 3) {
+	    					pointCoordinates[i * nDims + 3] = point.W;
+	    				}
+	    			}
+	    			inputPointData[i] = pointData.get(i);
+	    			if (usePointWeights) {
+	    				pointWeightData[i] = pointWeights.get(i);
+	    			}
+	    		}
 	    	}
-	    	for (int i = 0; i < pointData.size(); i++) {
-	    	    if (!usePointWeights) {	
-	    	    	pointWeights.add(1.0);
-	    	    }
-	    	    inputPointData.add(pointData.get(i));
-	    	    outputPointData.add(pointData.get(i));
+	    	else {
+	    		// the fitting replaces the point data by its residuals at each level
+	    		inputPointData = inputPointData.clone();
 	    	}
+	    	if (!usePointWeights) {
+	    		pointWeightData = new double[inputPointData.length];
+	    		for (int i = 0; i < pointWeightData.length; i++) {
+	    			pointWeightData[i] = 1.0;
+	    		}
+	    	}
+	    	outputPointData = inputPointData.clone();
 	    	currentLevel = 0;
 	    	for (int i = 0; i < nDims; i++) {
 	    	    currentNumberOfControlPoints[i] = numberOfControlPoints[i];
@@ -355,7 +395,10 @@ import gov.nih.mipav.view.Preferences;
 	    	beforeThreadedGenerateData();
 	    	threadedGenerateData();
 	    	afterThreadedGenerateData();
-	    	updatePointSet();
+	    	if (doMultiLevel) {
+	    		// The values at the points are only needed for the residuals of later levels
+	    		updatePointSet();
+	    	}
 	    	
 	    	if (doMultiLevel) {
 	    		psiLattice = new ModelImage(ModelStorageBase.DOUBLE, phiLattice.getExtents(), "psiLattice");
@@ -387,14 +430,14 @@ import gov.nih.mipav.view.Preferences;
 	    	   double totalWeight = 0.0;
 	    	   
 	    	   int itin = 0;
-	    	   while (itin < inputPointData.size()) {
-	    		    inputPointData.set(itin,inputPointData.get(itin) - outputPointData.get(itin)); 
-    		    	double weight = pointWeights.get(itin);
-    		    	averageDifference += Math.abs(inputPointData.get(itin) - outputPointData.get(itin)) * weight;
+	    	   while (itin < inputPointData.length) {
+	    		    inputPointData[itin] = inputPointData[itin] - outputPointData[itin]; 
+    		    	double weight = pointWeightData[itin];
+    		    	averageDifference += Math.abs(inputPointData[itin] - outputPointData[itin]) * weight;
     		    	totalWeight += weight;
 	    		    
 	    		    itin++;
-	    	   } // while (itin < inputPointData.size())
+	    	   } // while (itin < inputPointData.length)
 	    	   
 	    	   if (totalWeight > 0) {
 	    		   Preferences.debug("The average weighted difference norm of the point set is " +
@@ -432,25 +475,17 @@ import gov.nih.mipav.view.Preferences;
 	    
 	    private void beforeThreadedGenerateData() {
 	        if (!isFittingComplete) {
-	        	int size[] = new int[nDims];
+	        	int latticeLength = 1;
 	        	for (int i = 0; i < nDims; i++) {
 	        		if (closeDimension[i] != 0) {
-	        			size[i] = currentNumberOfControlPoints[i] - splineOrder[i];
+	        			latticeLength *= currentNumberOfControlPoints[i] - splineOrder[i];
 	        		}
 	        		else {
-	        			size[i] = currentNumberOfControlPoints[i];
+	        			latticeLength *= currentNumberOfControlPoints[i];
 	        		}
 	        	}
-	        	if (omegaLattice != null) {
-	        		omegaLattice.disposeLocal();
-	        		omegaLattice = null;
-	        	}
-	        	omegaLattice = new ModelImage(ModelStorageBase.DOUBLE, size, "omegaLattice");
-	        	if (deltaLattice != null) {
-	        		deltaLattice.disposeLocal();
-	        		deltaLattice = null;
-	        	}
-	        	deltaLattice = new ModelImage(ModelStorageBase.DOUBLE, size, "deltaLattice");
+	        	omegaLattice = new double[latticeLength];
+	        	deltaLattice = new double[latticeLength];
 	        } // if (!isFittingComplete)
 	    }
 	    
@@ -465,10 +500,85 @@ import gov.nih.mipav.view.Preferences;
 	    }
 	    
 	    private void threadedGenerateDataForFitting() {
-	        int size[] = new int[nDims];
-	        int neighborhoodWeightArrayLength = 1;
+	        final int size[] = new int[nDims];
+	        final int latticeSize[] = new int[nDims];
 	        for (int i = 0; i < nDims; i++) {
 	            size[i] = splineOrder[i] + 1;
+	            if (closeDimension[i] != 0) {
+	            	latticeSize[i] = currentNumberOfControlPoints[i] - splineOrder[i];
+	            }
+	            else {
+	            	latticeSize[i] = currentNumberOfControlPoints[i];
+	            }
+	        }
+	        final double r[] = new double[nDims];
+	        for (int i = 0; i < nDims; i++) {
+	        	r[i] = (double)(currentNumberOfControlPoints[i] - splineOrder[i])/((extents[i] - 1.0) * resolutions[i]);
+	        }
+	        
+	        // Each task accumulates its points into its own omega and delta lattices.
+	        // These are added up in task order afterwards.
+	        final int numberOfPoints = inputPointData.length;
+	        final int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, numberOfPoints / 1000)) : 1;
+	        final double taskOmega[][] = new double[nTasks][];
+	        final double taskDelta[][] = new double[nTasks][];
+	        final String errorMessage[] = new String[nTasks];
+	        taskOmega[0] = omegaLattice;
+	        taskDelta[0] = deltaLattice;
+	        final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+	        for (int t = 0; t < nTasks; t++) {
+	        	final int task = t;
+	        	final int start = (int)((long)numberOfPoints * t / nTasks);
+	        	final int end = (int)((long)numberOfPoints * (t + 1) / nTasks);
+	        	if (t > 0) {
+	        		taskOmega[t] = new double[omegaLattice.length];
+	        		taskDelta[t] = new double[deltaLattice.length];
+	        	}
+	        	Runnable fit = new Runnable() {
+	        		public void run() {
+	        			try {
+	        				errorMessage[task] = fitPoints(start, end, size, latticeSize, r, taskOmega[task], taskDelta[task]);
+	        			}
+	        			finally {
+	        				doneSignal.countDown();
+	        			}
+	        		}
+	        	};
+	        	if (nTasks == 1) {
+	        		fit.run();
+	        	}
+	        	else {
+	        		ThreadUtil.mipavThreadPool.execute(fit);
+	        	}
+	        }
+	        try {
+	        	doneSignal.await();
+	        }
+	        catch (InterruptedException e) {
+	        	Thread.currentThread().interrupt();
+	        }
+	        for (int t = 0; t < nTasks; t++) {
+	        	if (errorMessage[t] != null) {
+	        		MipavUtil.displayError(errorMessage[t]);
+	        		return;
+	        	}
+	        }
+	        for (int t = 1; t < nTasks; t++) {
+	        	for (int i = 0; i < omegaLattice.length; i++) {
+	        		omegaLattice[i] += taskOmega[t][i];
+	        		deltaLattice[i] += taskDelta[t][i];
+	        	}
+	        }
+	    }
+	    
+	    /**
+	     * Accumulates a range of points into omega and delta lattices.
+	     * @return null, or an error message if a point is outside the parametric domain
+	     */
+	    private String fitPoints(int start, int end, int size[], int latticeSize[], double r[], double omega[],
+	    		double delta[]) {
+	        int neighborhoodWeightArrayLength = 1;
+	        for (int i = 0; i < nDims; i++) {
 	            neighborhoodWeightArrayLength *= size[i];
 	        }
 	        int neighborhoodWeightArraySliceSize = size[0]*size[1];
@@ -478,38 +588,68 @@ import gov.nih.mipav.view.Preferences;
 	        }
 	        double neighborhoodWeightArray[] = new double[neighborhoodWeightArrayLength];
 	        double p[] = new double[nDims];
-	        double r[] = new double[nDims];
+	        // Kernel values along each dimension; the weight of a neighbor is their product
+	        double B1D[][] = new double[nDims][];
 	        for (int i = 0; i < nDims; i++) {
-	        	r[i] = (double)(currentNumberOfControlPoints[i] - splineOrder[i])/((extents[i] - 1.0) * resolutions[i]);
+	        	B1D[i] = new double[size[i]];
 	        }
-	        
-	        for (int n = 0; n < pointLocation.size(); n++) {
-	        	double point[] = new double[nDims];
-	        	point[0] = pointLocation.get(n).X;
-	        	point[1] = pointLocation.get(n).Y;
-	        	if (nDims > 2) {
-	        	    point[2] = pointLocation.get(n).Z;
-	        	    if (nDims > 3) {
-	        	    	point[3] = pointLocation.get(n).W;
-	        	    }
+	        int idx[] = new int[nDims];
+	        // Lattice offsets of the neighbors of a point when no dimension is closed
+	        int neighborOffset[] = null;
+	        boolean closed = false;
+	        for (int i = 0; i < nDims; i++) {
+	        	if (closeDimension[i] != 0) {
+	        		closed = true;
 	        	}
+	        }
+	        if (!closed) {
+	        	neighborOffset = new int[neighborhoodWeightArrayLength];
+	        	for (int itw = 0; itw < neighborhoodWeightArrayLength; itw++) {
+	        		int rest = itw;
+	        		int stride = 1;
+	        		for (int i = 0; i < nDims; i++) {
+	        			neighborOffset[itw] += (rest % size[i]) * stride;
+	        			rest /= size[i];
+	        			stride *= latticeSize[i];
+	        		}
+	        	}
+	        }
+	        
+	        for (int n = start; n < end; n++) {
 	        	for (int i = 0; i < nDims; i++) {
 	        	    int totalNumberOfSpans = currentNumberOfControlPoints[i] - splineOrder[i];
 	        	    
-	        	    p[i] = (point[i] - origin[i]) * r[i];
+	        	    p[i] = (pointCoordinates[n * nDims + i] - origin[i]) * r[i];
 	        	    //if (Math.abs(p[i] - totalNumberOfSpans) <= BSplineEpsilon) {
 	        	    if ((Math.abs(p[i] - totalNumberOfSpans))/totalNumberOfSpans < 1.0E-6) {
 	        	    	p[i] = (double)(totalNumberOfSpans) - BSplineEpsilon;
 	        	    }
 	        	    if (p[i] >= totalNumberOfSpans) {
-	        	    	MipavUtil.displayError("The reparameterized point component p["+i+"] =" + p[i] + 
-	        	    			" is outside the corresponding parametric domain of [0, " + totalNumberOfSpans + "].");
-	        	    	return;
+	        	    	return "The reparameterized point component p["+i+"] =" + p[i] + 
+	        	    			" is outside the corresponding parametric domain of [0, " + totalNumberOfSpans + "].";
+	        	    }
+	        	    for (int k = 0; k < size[i]; k++) {
+	        	        double u  = (p[i] - (int)p[i] - k) + 0.5*(splineOrder[i] - 1);
+	        	        switch (splineOrder[i]) {
+	        	        case 0:
+	        	        	B1D[i][k] = kernelOrder0.evaluate(u);
+	        	        	break;
+	        	        case 1:
+	        	        	B1D[i][k] = kernelOrder1.evaluate(u);
+	        	        	break;
+	        	        case 2:
+	        	        	B1D[i][k] = kernelOrder2.evaluate(u);
+	        	        	break;
+	        	        case 3:
+	        	        	B1D[i][k] = kernelOrder3.evaluate(u);
+	        	        	break;
+	        	        default:
+	        	        	B1D[i][k] = kernel[i].evaluate(u);
+	        	        } // switch (splineOrder[i)
 	        	    }
 	        	} // for (int i = 0; i < nDims; i++)
 	        	
 	        	double w2Sum = 0.0;
-	        	int idx[] = new int[nDims];
 	        	for (int itw = 0; itw < neighborhoodWeightArrayLength; itw++) {
 	        	    double B = 1.0;
 	        	    idx[0] = itw % size[0];
@@ -521,28 +661,29 @@ import gov.nih.mipav.view.Preferences;
 	        	    	}
 	        	    }
 	        	    for (int i = 0; i < nDims; i++) {
-	        	        double u  = (p[i] - (int)p[i] - idx[i]) + 0.5*(splineOrder[i] - 1);
-	        	        switch (splineOrder[i]) {
-	        	        case 0:
-	        	        	B *= kernelOrder0.evaluate(u);
-	        	        	break;
-	        	        case 1:
-	        	        	B *= kernelOrder1.evaluate(u);
-	        	        	break;
-	        	        case 2:
-	        	        	B *= kernelOrder2.evaluate(u);
-	        	        	break;
-	        	        case 3:
-	        	        	B *= kernelOrder3.evaluate(u);
-	        	        	break;
-	        	        default:
-	        	        	B *= kernel[i].evaluate(u);
-	        	        } // switch (splineOrder[i)
+	        	        B *= B1D[i][idx[i]];
 	        	    } // for (int i = 0; i < nDims; i++)
 	        	    neighborhoodWeightArray[itw] = B;
 	        	    w2Sum += B * B;
 	        	} // for (int itw = 0; itw < neighborhoodWeightArrayLength; itw++)
 	        	
+	        	double wc = pointWeightData[n];
+	        	if (neighborOffset != null) {
+	        		// Points are inside the parametric domain, so all their neighbors are in the lattice
+	        		int base = (int)(p[0]);
+	        		int stride = 1;
+	        		for (int i = 1; i < nDims; i++) {
+	        			stride *= latticeSize[i - 1];
+	        			base += (int)(p[i]) * stride;
+	        		}
+	        		for (int itw = 0; itw < neighborhoodWeightArrayLength; itw++) {
+	        			double t = neighborhoodWeightArray[itw];
+	        			int index = base + neighborOffset[itw];
+	        			omega[index] += wc * t * t;
+	        			delta[index] += inputPointData[n] * (t * t * t * wc / w2Sum);
+	        		}
+	        		continue;
+	        	}
 	        	for (int itw = 0; itw < neighborhoodWeightArrayLength; itw++) {
 	        		idx[0] = itw % size[0];
 	        	    idx[1] = (itw % neighborhoodWeightArraySliceSize) / size[0];
@@ -558,37 +699,34 @@ import gov.nih.mipav.view.Preferences;
 	        	        	idx[i] %= size[i];
 	        	        }
 	        	    } // for (int i = 0; i < nDims; i++)
-	        	    double wc = pointWeights.get(n);
 	        	    double t = neighborhoodWeightArray[itw];
 	        	    int index;
 	        	    boolean okay = true;
 	        	    for (int i = 0; i < nDims; i++) {
-	        	    	if ((idx[i] < 0) || (idx[i] >= omegaLattice.getExtents()[i])) {
+	        	    	if ((idx[i] < 0) || (idx[i] >= latticeSize[i])) {
 	        	    		okay = false; 
 	        	    	}
 	        	    }
+	        	    if (!okay) {
+	        	    	continue;
+	        	    }
 	        	    if (nDims == 2) {
-	        	    	index = idx[0] + idx[1] * omegaLattice.getExtents()[0];
+	        	    	index = idx[0] + idx[1] * latticeSize[0];
 	        	    }
 	        	    else if (nDims == 3) {
-	        	    	index = idx[0] + idx[1] * omegaLattice.getExtents()[0] + 
-	        	    			idx[2] * omegaLattice.getExtents()[0] * omegaLattice.getExtents()[1];
+	        	    	index = idx[0] + idx[1] * latticeSize[0] + idx[2] * latticeSize[0] * latticeSize[1];
 	        	    }
 	        	    else {
-	        	    	index = idx[0] + idx[1] * omegaLattice.getExtents()[0] + 
-	        	    			idx[2] * omegaLattice.getExtents()[0] * omegaLattice.getExtents()[1] +
-	        	    			idx[3] * omegaLattice.getExtents()[0] * omegaLattice.getExtents()[1] * omegaLattice.getExtents()[2];
+	        	    	index = idx[0] + idx[1] * latticeSize[0] + idx[2] * latticeSize[0] * latticeSize[1] +
+	        	    			idx[3] * latticeSize[0] * latticeSize[1] * latticeSize[2];
 	        	    }
-	        	    if (okay) {
-	        	        omegaLattice.set(index, omegaLattice.getDouble(index) + wc * t * t);
-	        	    }
-	        	    double data = inputPointData.get(n);
+	        	    omega[index] += wc * t * t;
+	        	    double data = inputPointData[n];
 	        	    data *= (t * t * t * wc / w2Sum);
-	        	    if (okay) {
-	        	        deltaLattice.set(index, deltaLattice.getDouble(index) + data);
-	        	    }
+	        	    delta[index] += data;
 	        	} // for (int itw = 0; itw < neighborhoodWeightArrayLength; itw++)
-	        } // for (int n = 0; n < pointLocation.size(); n++)
+	        } // for (int n = start; n < end; n++)
+	        return null;
 	    }
 	    
 	    private void threadedGenerateDataForReconstruction() {
@@ -768,8 +906,8 @@ import gov.nih.mipav.view.Preferences;
 	    	  double latticeBuffer[] = new double[latticeLength];
 	    	  for (int itp = 0; itp < latticeLength; itp++) {
 	    		  double P = 0;
-	    		  if (omegaLattice.getDouble(itp) != 0) {
-	    			  P = deltaLattice.getDouble(itp) / omegaLattice.getDouble(itp);
+	    		  if (omegaLattice[itp] != 0) {
+	    			  P = deltaLattice[itp] / omegaLattice[itp];
 	    			  if ((Double.isNaN(P)) || (Double.isInfinite(P))) {
 	    				  P = 0;
 	    			  }
@@ -788,7 +926,6 @@ import gov.nih.mipav.view.Preferences;
 	    }
 	    
 	    private void updatePointSet() {
-	    	double collapsedPhiLattices[][] = new double[nDims + 1][];
 	        int collapsedPhiLatticeIndex[][] = new int[nDims+1][];
 	        int size = 1;
 	        for (int i = 0; i <= nDims; i++) {
@@ -804,16 +941,16 @@ import gov.nih.mipav.view.Preferences;
 	            	size *= phiLattice.getExtents()[j];
 	            	collapsedPhiLatticeIndex[i][j] = phiLattice.getExtents()[j];
 	            }
-	            collapsedPhiLattices[i] = new double[size];
 	        }
+	        final double lattice[] = new double[size];
 	        try {
-	        	phiLattice.exportData(0, size, collapsedPhiLattices[nDims]);
+	        	phiLattice.exportData(0, size, lattice);
 	        }
 	        catch(IOException e) {
 	        	MipavUtil.displayError("IOException on phiLattice.exportData");
 	        	return;
 	        }
-	        int totalNumberOfSpans[] = new int[nDims];
+	        final int totalNumberOfSpans[] = new int[nDims];
 	        for (int i = 0; i <  nDims; i++) {
 	        	if (closeDimension[i] != 0) {
 	        		totalNumberOfSpans[i] = phiLattice.getExtents()[i];
@@ -822,33 +959,80 @@ import gov.nih.mipav.view.Preferences;
 	        	    totalNumberOfSpans[i] = phiLattice.getExtents()[i] - splineOrder[i];
 	        	}
 	        } // for (int i = 0; i < nDims; i++)
+	        
+	        final int latticeIndex[][] = collapsedPhiLatticeIndex;
+	        final int numberOfPoints = inputPointData.length;
+	        final int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, numberOfPoints / 1000)) : 1;
+	        final String errorMessage[] = new String[nTasks];
+	        final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+	        for (int t = 0; t < nTasks; t++) {
+	        	final int task = t;
+	        	final int start = (int)((long)numberOfPoints * t / nTasks);
+	        	final int end = (int)((long)numberOfPoints * (t + 1) / nTasks);
+	        	Runnable update = new Runnable() {
+	        		public void run() {
+	        			try {
+	        				errorMessage[task] = evaluatePoints(start, end, lattice, latticeIndex, totalNumberOfSpans);
+	        			}
+	        			finally {
+	        				doneSignal.countDown();
+	        			}
+	        		}
+	        	};
+	        	if (nTasks == 1) {
+	        		update.run();
+	        	}
+	        	else {
+	        		ThreadUtil.mipavThreadPool.execute(update);
+	        	}
+	        }
+	        try {
+	        	doneSignal.await();
+	        }
+	        catch (InterruptedException e) {
+	        	Thread.currentThread().interrupt();
+	        }
+	        for (int t = 0; t < nTasks; t++) {
+	        	if (errorMessage[t] != null) {
+	        		MipavUtil.displayError(errorMessage[t]);
+	        		return;
+	        	}
+	        }
+	    }
+	    
+	    /**
+	     * Evaluates the phi lattice at a range of points into outputPointData.
+	     * @return null, or an error message if a point is outside the parametric domain
+	     */
+	    private String evaluatePoints(int start, int end, double lattice[], int collapsedPhiLatticeIndex[][],
+	    		int totalNumberOfSpans[]) {
+	    	double collapsedPhiLattices[][] = new double[nDims + 1][];
+	    	for (int i = 0; i < nDims; i++) {
+	    		int size = 1;
+	    		for (int j = 0; j < i; j++) {
+	    			size *= collapsedPhiLatticeIndex[i][j];
+	    		}
+	    		collapsedPhiLattices[i] = new double[size];
+	    	}
+	    	collapsedPhiLattices[nDims] = lattice;
 	        double U[] = new double[nDims];
 	        double currentU[] = new double[nDims];
 	        for (int i = 0; i < nDims; i++) {
 	        	currentU[i] = -1;
 	        }
 	        
-	        for (int itin = 0; itin < inputPointData.size(); itin++) {
-	        	double point[] = new double[nDims];
-	        	point[0] = pointLocation.get(itin).X;
-	        	point[1] = pointLocation.get(itin).Y;
-	            if (nDims > 2) {
-	            	point[2] = pointLocation.get(itin).Z;
-	            	if (nDims > 3) {
-	            		point[3] = pointLocation.get(itin).W;
-	            	}
-	            }
+	        for (int itin = start; itin < end; itin++) {
 	            for (int i = 0; i < nDims; i++) {
-	            	U[i] = totalNumberOfSpans[i] * (point[i] - origin[i])/((extents[i] - 1) * resolutions[i]);
+	            	U[i] = totalNumberOfSpans[i] * (pointCoordinates[itin * nDims + i] - origin[i])/
+	            			((extents[i] - 1) * resolutions[i]);
 	            	//if (Math.abs(U[i] - totalNumberOfSpans[i]) <= BSplineEpsilon) {
 	                if ((Math.abs(U[i] - totalNumberOfSpans[i]))/totalNumberOfSpans[i] < 1.0E-6) {
 	            		U[i] = totalNumberOfSpans[i] - BSplineEpsilon;
 	            	}
 	            	if (U[i] >= totalNumberOfSpans[i]) {
-	                	MipavUtil.displayError("The collapse point component " + U[i] + 
+	                	return "The collapse point component " + U[i] + 
 	                			" is outside the corresponding parametric domain of [0, " + totalNumberOfSpans[i] +
-	                			"].");
-	                	return;
+	                			"].";
 	                }
 	            } // for (int i = 0; i < nDims; i++)
 	            for (int i = nDims - 1; i >= 0; i--) {
@@ -861,9 +1045,9 @@ import gov.nih.mipav.view.Preferences;
 	                	break;
 	                }
 	            } // for (int i = nDims - 1; i >= 0; i--)
-	            outputPointData.set(itin,collapsedPhiLattices[0][0]);
-	        } // for (int itin = 0; itin < inputPointData.size(); itin++) 
-	        	
+	            outputPointData[itin] = collapsedPhiLattices[0][0];
+	        } // for (int itin = start; itin < end; itin++) 
+	        return null;
 	    }
 	    
 	    private void refineControlPointLattice() {
@@ -1033,7 +1217,7 @@ import gov.nih.mipav.view.Preferences;
 	            } // while (!isEvenIndex && it < sizeLength)
 	        } // (while it < sizeLength)
 	        
-	        psiLattice.disposeLocal();
+	        psiLattice.disposeLocal(false);
 	        psiLattice = null;
 	        psiLattice = new ModelImage(ModelStorageBase.DOUBLE, size, "psiLattice");
 	        try {
@@ -119,6 +119,12 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
     /** Width of the smoothing buffer. */
     private int skRadius;
 
+    /** Runs the passes of the iterations on slabs of the image in parallel. */
+    private DiffusionStepper stepper;
+
+    /** Relative change of the image at which the iterations stop early; 0 runs all the iterations. */
+    private double stopTolerance = 0;
+
     /** image dimensions. */
     private int xDim, yDim, zDim;
 
@@ -200,6 +206,7 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
     public void finalize() {
         srcImage = null;
         eigenSystemAlgo = null;
+        stepper = null;
         intermediateBuffer = null;
         dxKernelX = null;
         dxKernelY = null;
@@ -230,11 +237,14 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
 
         if ((srcImage.getNDims() == 2) || do25D) {
             timeStep = 0.2f;
+            stepper = new DiffusionStepper(new int[] {xDim, yDim}, multiThreadingEnabled ? nthreads : 1);
         } else {
             timeStep = 0.15f;
+            stepper = new DiffusionStepper(new int[] {xDim, yDim, zDim}, multiThreadingEnabled ? nthreads : 1);
         }
 
-        
+        stepper.setStopTolerance(stopTolerance);
+
 
         if (srcImage.isColorImage()) {
 
@@ -257,6 +267,17 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
         }
     } // end run()
 
+    /**
+     * Sets the relative change of the image, the root of the summed squared change of an iteration over the root of
+     * the summed squared image, at which the iterations of a grayscale image stop before the number of iterations is
+     * reached.
+     *
+     * @param  tolerance  the relative change; 0 or less always runs all the iterations
+     */
+    public void setStopTolerance(double tolerance) {
+        stopTolerance = tolerance;
+    }
+
     /**
      * Computes the maximum of two floating point numbers passed in.
      *
@@ -270,52 +291,152 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
     }
 
     /**
-     * DOCUMENT ME!
+     * Computes the diffusion tensor of every pixel of a slice inside the mask from its smoothed structure tensor. The
+     * rows of the slice are done in parallel.
      *
-     * @param  dx   float [] destination buffer
-     * @param  src  float [] source buffer
-     *
-     *              <P>Member function computes the derivative of the source buffer in the X-direction using the kernel
-     *              formulation as specified in the MATLAB paper. The function uses seperable convolution, which means
-     *              it first does a 1D convolution with the derivative of a Gaussian kernel in the X-direction and
-     *              stores the result in an intermediate buffer. Once the intermediate buffer is completely filled, a
-     *              smoothing in the Y-direction is performed using a 1D Gaussian kernel computed as in the MATLAB
-     *              paper.</P>
+     * @param  s11     float [] smoothed structure tensor element (1,1)
+     * @param  s12     float [] smoothed structure tensor element (1,2)
+     * @param  s22     float [] smoothed structure tensor element (2,2)
+     * @param  d11     float [] receives diffusion tensor element (1,1)
+     * @param  d12     float [] receives diffusion tensor element (1,2)
+     * @param  d22     float [] receives diffusion tensor element (2,2)
+     * @param  offset  int offset of the slice in the mask
      */
-    private void computeDx(float[] dx, float[] src) {
+    private void computeDiffusionTensor2D(final float[] s11, final float[] s12, final float[] s22, final float[] d11,
+                                          final float[] d12, final float[] d22, final int offset) {
+        stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                public void apply(int firstPlane, int endPlane) {
+                    float c2 = 0.01f;
+                    float epsilon = 0.0000001f;
+                    float alpha, lambdaOne, lambdaTwo, exponent, c1;
 
-        int idx;
-        float sum = 0.0f;
+                    for (int idx = firstPlane * xDim; idx < (endPlane * xDim); idx++) {
+
+                        if (entireImage || mask.get(offset + idx)) {
+                            alpha = (s11[idx] - s22[idx]) * (s11[idx] - s22[idx]);
+                            alpha += (4.0 * (s12[idx] * s12[idx]));
+                            alpha = (float) Math.sqrt(alpha);
 
-        // convolve in the x direction
-        int row, col;
+                            lambdaOne = 0.5f * (s11[idx] + s22[idx] + alpha);
+                            lambdaTwo = 0.5f * (s11[idx] + s22[idx] - alpha);
 
-        for (row = 0; row < yDim; row++) {
+                            exponent = ((lambdaOne - lambdaTwo) * (lambdaOne - lambdaTwo) / (float) k2);
 
-            for (col = 0; col < xDim; col++) {
-                sum = 0.0f;
+                            if (exponent == 0.0f) {
+                                c1 = 0.01f;
+                            } else {
+                                c1 = (float) (0.01 + ((1 - 0.01) * Math.exp(-1.0 / exponent)));
+                            }
 
-                for (idx = -kRadius; idx <= kRadius; idx++) {
-                    sum += (dxKernelX[idx + kRadius] * getVal(src, col + idx, row));
+                            d11[idx] = 0.5f * (c1 + c2 + ((c2 - c1) * (s11[idx] - s22[idx]) / (alpha + epsilon)));
+                            d12[idx] = (c2 - c1) * s12[idx] / (alpha + epsilon);
+                            d22[idx] = 0.5f * (c1 + c2 - ((c2 - c1) * (s11[idx] - s22[idx]) / (alpha + epsilon)));
+                        }
+                    }
                 }
+            });
+    } // end computeDiffusionTensor2D(...)
 
-                setVal(sum, intermediateBuffer, col, row);
-            } // end for (col = 0; ...)
-        } // end for (row = 0; ...)
+    /**
+     * Computes the diffusion tensor of every voxel of the volume inside the mask from its smoothed structure tensor.
+     * The slabs of the volume are done in parallel, each with its own eigensolver.
+     *
+     * @param  s  float [][] smoothed structure tensor elements (1,1), (1,2), (2,2), (1,3), (2,3), (3,3)
+     * @param  d  float [][] receive the diffusion tensor elements in the same order
+     */
+    private void computeDiffusionTensor3D(final float[][] s, final float[][] d) {
+        stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                public void apply(int firstPlane, int endPlane) {
+                    float[] s11 = s[0], s12 = s[1], s22 = s[2], s13 = s[3], s23 = s[4], s33 = s[5];
+                    float lambdaOne, lambdaTwo, lambdaThree, exponent, c1;
+                    float c2 = 0.01f;
+                    float c3 = 0.01f;
+
+                    // make a 3X3 eigenSolver
+                    Eigenf eigenSystem = new Eigenf(3);
+                    double[][] evecs = new double[3][3];
+                    Matrix rot, dMat;
+                    Matrix cMat = new Matrix(3, 3);
+
+                    // cArray is a reference to cMat's internal array.
+                    double[][] cArray = cMat.getArray();
+                    int sliceSize = stepper.getPlaneSize();
+
+                    for (int idx = firstPlane * sliceSize; idx < (endPlane * sliceSize); idx++) {
 
-        // convolve in the y direction
-        for (row = 0; row < yDim; row++) {
+                        if (entireImage || mask.get(idx)) {
+                            eigenSystem.SetData(0, 0, s11[idx]);
+                            eigenSystem.SetData(0, 1, s12[idx]);
+                            eigenSystem.SetData(0, 2, s13[idx]);
+
+                            eigenSystem.SetData(1, 0, s12[idx]);
+                            eigenSystem.SetData(1, 1, s22[idx]);
+                            eigenSystem.SetData(1, 2, s23[idx]);
+
+                            eigenSystem.SetData(2, 0, s13[idx]);
+                            eigenSystem.SetData(2, 1, s23[idx]);
+                            eigenSystem.SetData(2, 2, s33[idx]);
+
+                            // The eigenvalues are sorted in increasing order; lambdaOne is the largest.
+                            eigenSystem.IncrSortEigenStuff();
+                            lambdaOne = eigenSystem.GetEigenvalue(2);
+                            lambdaTwo = eigenSystem.GetEigenvalue(1);
+                            lambdaThree = eigenSystem.GetEigenvalue(0);
+
+                            for (int i = 0; i <= 2; i++) {
+                                evecs[i][0] = eigenSystem.GetEigenvector(i, 2);
+                                evecs[i][1] = eigenSystem.GetEigenvector(i, 1);
+                                evecs[i][2] = eigenSystem.GetEigenvector(i, 0);
+                            }
 
-            for (col = 0; col < xDim; col++) {
-                sum = 0.0f;
+                            // The columns of the rotation matrix are the eigenvectors
+                            // of the structure tensor.
+                            rot = new Matrix(evecs);
+
+                            exponent = ((((lambdaOne - lambdaTwo) * (lambdaOne - lambdaTwo)) +
+                                         ((lambdaOne - lambdaThree) * (lambdaOne - lambdaThree)) +
+                                         ((lambdaTwo - lambdaThree) * (lambdaTwo - lambdaThree))) / (float) k2);
 
-                for (idx = -kRadius; idx <= kRadius; idx++) {
-                    sum += (dxKernelY[idx + kRadius] * getVal(intermediateBuffer, col, row + idx));
+                            if (exponent == 0.0f) {
+                                c1 = 0.01f;
+                            } else {
+                                c1 = (float) (0.01 + ((1 - 0.01) * Math.exp(-1.0 / exponent)));
+                            }
+
+                            cArray[0][0] = c1;
+                            cArray[1][1] = c2;
+                            cArray[2][2] = c3;
+
+                            dMat = (rot.transpose().times(cMat)).times(rot);
+
+                            d[0][idx] = (float) dMat.get(0, 0);
+                            d[1][idx] = (float) dMat.get(0, 1);
+                            d[2][idx] = (float) dMat.get(1, 1);
+                            d[3][idx] = (float) dMat.get(0, 2);
+                            d[4][idx] = (float) dMat.get(1, 2);
+                            d[5][idx] = (float) dMat.get(2, 2);
+                        }
+                    }
                 }
+            });
+    } // end computeDiffusionTensor3D(...)
 
-                setVal(sum, dx, col, row);
-            } // end for (col = 0; ...)
-        } // end for (row = 0; ...)
+    /**
+     * DOCUMENT ME!
+     *
+     * @param  dx   float [] destination buffer
+     * @param  src  float [] source buffer
+     *
+     *              <P>Member function computes the derivative of the source buffer in the X-direction using the kernel
+     *              formulation as specified in the MATLAB paper. The function uses seperable convolution, which means
+     *              it first does a 1D convolution with the derivative of a Gaussian kernel in the X-direction and
+     *              stores the result in an intermediate buffer. Once the intermediate buffer is completely filled, a
+     *              smoothing in the Y-direction is performed using a 1D Gaussian kernel computed as in the MATLAB
+     *              paper.</P>
+     */
+    private void computeDx(float[] dx, float[] src) {
+        convolveLines(src, intermediateBuffer, dxKernelX, kRadius, 0);
+        convolveLines(intermediateBuffer, dx, dxKernelY, kRadius, 1);
     } // end computeDx(...)
 
     /**
@@ -333,62 +454,9 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
      *              final result is placed in dx.</P>
      */
     private void computeDx3D(float[] dx, float[] src) {
-
-        int idx;
-        float sum = 0.0f;
-
-        // convolve in the x direction
-        int slice, row, col;
-
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dxKernelX[idx + kRadius] * getVal(src, col + idx, row, slice));
-                    }
-
-                    setVal(sum, dx, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
-
-        // convolve in the y direction
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dxKernelY[idx + kRadius] * getVal(dx, col, row + idx, slice));
-                    }
-
-                    setVal(sum, intermediateBuffer, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
-
-        // convolve in the z direction
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dxKernelZ[idx + kRadius] * getVal(intermediateBuffer, col, row, slice + idx));
-                    }
-
-                    setVal(sum, dx, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
+        convolveLines(src, dx, dxKernelX, kRadius, 0);
+        convolveLines(dx, intermediateBuffer, dxKernelY, kRadius, 1);
+        convolveLines(intermediateBuffer, dx, dxKernelZ, kRadius, 2);
     } // end computeDx(...)
 
     /**
@@ -404,39 +472,8 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
      *              Y-direction is performed using a 1D Gaussian derivative kernel computed as in the MATLAB paper.</P>
      */
     private void computeDy(float[] dy, float[] src) {
-
-        int idx;
-        float sum = 0.0f;
-
-        // convolve in the x direction
-        int row, col;
-
-        for (row = 0; row < yDim; row++) {
-
-            for (col = 0; col < xDim; col++) {
-                sum = 0.0f;
-
-                for (idx = -kRadius; idx <= kRadius; idx++) {
-                    sum += (dyKernelX[idx + kRadius] * getVal(src, col + idx, row));
-                }
-
-                setVal(sum, intermediateBuffer, col, row);
-            } // end for (col = 0; ...)
-        } // end for (row = 0; ...)
-
-        // convolve in the y direction
-        for (row = 0; row < yDim; row++) {
-
-            for (col = 0; col < xDim; col++) {
-                sum = 0.0f;
-
-                for (idx = -kRadius; idx <= kRadius; idx++) {
-                    sum += (dyKernelY[idx + kRadius] * getVal(intermediateBuffer, col, row + idx));
-                }
-
-                setVal(sum, dy, col, row);
-            } // end for (col = 0; ...)
-        } // end for (row = 0; ...)
+        convolveLines(src, intermediateBuffer, dyKernelX, kRadius, 0);
+        convolveLines(intermediateBuffer, dy, dyKernelY, kRadius, 1);
     } // end computeDy(...)
 
     /**
@@ -454,63 +491,9 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
      *              performed and the final result is placed in dy.</P>
      */
     private void computeDy3D(float[] dy, float[] src) {
-
-
-        int idx;
-        float sum = 0.0f;
-
-        // convolve in the x direction
-        int slice, row, col;
-
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dyKernelX[idx + kRadius] * getVal(src, col + idx, row, slice));
-                    }
-
-                    setVal(sum, dy, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
-
-        // convolve in the y direction
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dyKernelY[idx + kRadius] * getVal(dy, col, row + idx, slice));
-                    }
-
-                    setVal(sum, intermediateBuffer, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
-
-        // convolve in the z direction
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dyKernelZ[idx + kRadius] * getVal(intermediateBuffer, col, row, slice + idx));
-                    }
-
-                    setVal(sum, dy, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
+        convolveLines(src, dy, dyKernelX, kRadius, 0);
+        convolveLines(dy, intermediateBuffer, dyKernelY, kRadius, 1);
+        convolveLines(intermediateBuffer, dy, dyKernelZ, kRadius, 2);
     } // end computeDy(...)
 
     /**
@@ -528,65 +511,221 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
      *              performed and the final result is placed in dz.</P>
      */
     private void computeDz(float[] dz, float[] src) {
+        convolveLines(src, dz, dzKernelX, kRadius, 0);
+        convolveLines(dz, intermediateBuffer, dzKernelY, kRadius, 1);
+        convolveLines(intermediateBuffer, dz, dzKernelZ, kRadius, 2);
+    } // end computeDz(...)
 
-        int idx;
-        float sum = 0.0f;
+  
+    /**
+     * Convolves every line of an image along one axis with a 1D kernel, repeating the border voxels beyond the ends of
+     * the lines. The slabs of the image are convolved in parallel.
+     *
+     * @param  src     float [] source buffer
+     * @param  dest    float [] destination buffer, which may not be src
+     * @param  kernel  float [] the kernel, of length 2 * radius + 1
+     * @param  radius  int radius of the kernel
+     * @param  axis    int 0, 1 or 2 to convolve along x, y or z
+     */
+    private void convolveLines(final float[] src, final float[] dest, final float[] kernel, final int radius,
+                               final int axis) {
+        final int sliceSize = xDim * yDim;
+        final int stride = (axis == 0) ? 1 : ((axis == 1) ? xDim : sliceSize);
+        final int n = (axis == 0) ? xDim : ((axis == 1) ? yDim : zDim);
+
+        stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                public void apply(int firstPlane, int endPlane) {
+                    int end = endPlane * stepper.getPlaneSize();
+                    int pos, lineStart, p, idx;
+                    float sum;
+
+                    for (int i = firstPlane * stepper.getPlaneSize(); i < end; i++) {
+                        pos = (axis == 0) ? (i % xDim) : ((axis == 1) ? ((i % sliceSize) / xDim) : (i / sliceSize));
+                        lineStart = i - (pos * stride);
+                        sum = 0.0f;
+
+                        for (idx = -radius; idx <= radius; idx++) {
+                            p = pos + idx;
+
+                            if (p < 0) {
+                                p = 0;
+                            } else if (p >= n) {
+                                p = n - 1;
+                            }
 
-        // convolve in the x direction
-        int slice, row, col;
+                            sum += (kernel[idx + radius] * src[lineStart + (p * stride)]);
+                        }
 
-        for (slice = 0; slice < zDim; slice++) {
+                        dest[i] = sum;
+                    }
+                }
+            });
+    } // end convolveLines(...)
 
-            for (row = 0; row < yDim; row++) {
+    /**
+     * Runs one diffusion step of a slice with the diffusion tensor of the current image. The tensor is complete before
+     * the step starts, so every pixel is updated from the same tensor whatever the order of the rows.
+     *
+     * @param   a       float [] diffusion tensor element (1,1)
+     * @param   b       float [] diffusion tensor element (1,2)
+     * @param   c       float [] diffusion tensor element (2,2)
+     * @param   offset  int offset of the slice in the mask
+     *
+     * @return  true when the stop tolerance is reached
+     */
+    private boolean diffuse2D(final float[] a, final float[] b, final float[] c, final int offset) {
+        return stepper.step(new DiffusionStepper.StepOperation() {
+                    public void apply(float[] current, float[] next, int firstPlane, int endPlane) {
+                        float Lpc, Lpp, Lcp, Lmp, Lmc, Lmm, Lcm, Lpm;
+                        float amc, apc, bmc, bcm, bpc, bcp, ccp, ccm;
+                        float r;
+                        int idx = firstPlane * xDim;
 
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
+                        for (int y = firstPlane; y < endPlane; y++) {
 
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dzKernelX[idx + kRadius] * getVal(src, col + idx, row, slice));
-                    }
+                            for (int x = 0; x < xDim; x++, idx++) {
 
-                    setVal(sum, dz, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
+                                if (!entireImage && !mask.get(offset + idx)) {
+                                    next[idx] = current[idx];
 
-        // convolve in the y direction
-        for (slice = 0; slice < zDim; slice++) {
+                                    continue;
+                                }
 
-            for (row = 0; row < yDim; row++) {
+                                Lpc = getVal(current, x + 1, y);
+                                Lpp = getVal(current, x + 1, y + 1);
+                                Lcp = getVal(current, x, y + 1);
 
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
+                                Lmp = getVal(current, x - 1, y + 1);
+                                Lmc = getVal(current, x - 1, y);
+                                Lmm = getVal(current, x - 1, y - 1);
 
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dzKernelY[idx + kRadius] * getVal(dz, col, row + idx, slice));
-                    }
+                                Lcm = getVal(current, x, y - 1);
+                                Lpm = getVal(current, x + 1, y - 1);
 
-                    setVal(sum, intermediateBuffer, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
+                                amc = getVal(a, x - 1, y);
+                                apc = getVal(a, x + 1, y);
 
-        // convolve in the z direction
-        for (slice = 0; slice < zDim; slice++) {
+                                bmc = getVal(b, x - 1, y);
+                                bcm = getVal(b, x, y - 1);
+                                bpc = getVal(b, x + 1, y);
+                                bcp = getVal(b, x, y + 1);
 
-            for (row = 0; row < yDim; row++) {
+                                ccp = getVal(c, x, y + 1);
+                                ccm = getVal(c, x, y - 1);
 
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
+                                r = (-0.25f * (bmc + bcp) * Lmp) + (0.50f * (ccp + c[idx]) * Lcp) +
+                                    (0.25f * (bpc + bcp) * Lpp) + (0.50f * (amc + a[idx]) * Lmc) -
+                                    (0.50f * (amc + (2 * a[idx]) + apc + ccm + (2 * c[idx]) + ccp) * current[idx]) +
+                                    (0.50f * (apc + a[idx]) * Lpc) + (0.25f * (bmc + bcm) * Lmm) +
+                                    (0.50f * (ccm + c[idx]) * Lcm) - (0.25f * (bpc + bcm) * Lpm);
 
-                    for (idx = -kRadius; idx <= kRadius; idx++) {
-                        sum += (dzKernelZ[idx + kRadius] * getVal(intermediateBuffer, col, row, slice + idx));
+                                next[idx] = current[idx] + (timeStep * r);
+                            }
+                        }
                     }
+                });
+    } // end diffuse2D(...)
 
-                    setVal(sum, dz, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
-    } // end computeDz(...)
+    /**
+     * Runs one diffusion step of the volume with the diffusion tensor of the current image.
+     *
+     * @param   t  float [][] diffusion tensor elements (1,1), (1,2), (2,2), (1,3), (2,3), (3,3)
+     *
+     * @return  true when the stop tolerance is reached
+     */
+    private boolean diffuse3D(final float[][] t) {
+        return stepper.step(new DiffusionStepper.StepOperation() {
+                    public void apply(float[] current, float[] next, int firstPlane, int endPlane) {
+                        float[] a = t[0], b = t[1], d = t[2], c = t[3], e = t[4], f = t[5];
+                        float Lcpm, Lmcm, Lccm, Lpcm, Lcmm, Lmpc, Lcpc, Lppc, Lmcc, Lpcc;
+                        float Lmmc, Lcmc, Lpmc, Lcpp, Lmcp, Lccp, Lpcp, Lcmp;
+                        float amcc, apcc;
+                        float bmcc, bcpc, bpcc, bcmc;
+                        float cmcc, cccm, cpcc, cccp;
+                        float dcpc, dcmc;
+                        float ecpc, eccm, ecmc, eccp;
+                        float fccm, fccp;
+                        float r;
+                        int idx = firstPlane * xDim * yDim;
+
+                        for (int z = firstPlane; z < endPlane; z++) {
+
+                            for (int y = 0; y < yDim; y++) {
+
+                                for (int x = 0; x < xDim; x++, idx++) {
+
+                                    if (!entireImage && !mask.get(idx)) {
+                                        next[idx] = current[idx];
+
+                                        continue;
+                                    }
+
+                                    Lcpm = getVal(current, x, y + 1, z - 1);
+                                    Lmcm = getVal(current, x - 1, y, z - 1);
+                                    Lccm = getVal(current, x, y, z - 1);
+                                    Lpcm = getVal(current, x + 1, y, z - 1);
+                                    Lcmm = getVal(current, x, y - 1, z - 1);
+
+                                    Lmpc = getVal(current, x - 1, y + 1, z);
+                                    Lcpc = getVal(current, x, y + 1, z);
+                                    Lppc = getVal(current, x + 1, y + 1, z);
+                                    Lmcc = getVal(current, x - 1, y, z);
+                                    Lpcc = getVal(current, x + 1, y, z);
+                                    Lmmc = getVal(current, x - 1, y - 1, z);
+                                    Lcmc = getVal(current, x, y - 1, z);
+                                    Lpmc = getVal(current, x + 1, y - 1, z);
+
+                                    Lcpp = getVal(current, x, y + 1, z + 1);
+                                    Lmcp = getVal(current, x - 1, y, z + 1);
+                                    Lccp = getVal(current, x, y, z + 1);
+                                    Lpcp = getVal(current, x + 1, y, z + 1);
+                                    Lcmp = getVal(current, x, y - 1, z + 1);
+
+                                    amcc = getVal(a, x - 1, y, z);
+                                    apcc = getVal(a, x + 1, y, z);
+
+                                    bmcc = getVal(b, x - 1, y, z);
+                                    bcpc = getVal(b, x, y + 1, z);
+                                    bpcc = getVal(b, x + 1, y, z);
+                                    bcmc = getVal(b, x, y - 1, z);
+
+                                    cmcc = getVal(c, x - 1, y, z);
+                                    cccm = getVal(c, x, y, z - 1);
+                                    cpcc = getVal(c, x + 1, y, z);
+                                    cccp = getVal(c, x, y, z + 1);
+
+                                    dcpc = getVal(d, x, y + 1, z);
+                                    dcmc = getVal(d, x, y - 1, z);
+
+                                    ecpc = getVal(e, x, y + 1, z);
+                                    eccm = getVal(e, x, y, z - 1);
+                                    ecmc = getVal(e, x, y - 1, z);
+                                    eccp = getVal(e, x, y, z + 1);
+
+                                    fccm = getVal(f, x, y, z - 1);
+                                    fccp = getVal(f, x, y, z + 1);
+
+                                    r = (-0.25f * (ecpc + eccm) * Lcpm) + (0.25f * (cmcc + cccm) * Lmcm) +
+                                        (0.50f * (fccm + f[idx]) * Lccm) - (0.25f * (cpcc + cccm) * Lpcm) +
+                                        (0.25f * (ecmc + eccm) * Lcmm) - (0.25f * (bmcc + bcpc) * Lmpc) +
+                                        (0.50f * (d[idx] + dcpc) * Lcpc) + (0.25f * (bpcc + bcpc) * Lppc) +
+                                        (0.50f * (amcc + a[idx]) * Lmcc) -
+                                        (0.50f *
+                                             (apcc + amcc + (2 * a[idx]) + dcpc + dcmc + (2 * d[idx]) + fccp + fccm +
+                                                  (2 * f[idx])) * current[idx]) + (0.50f * (a[idx] + apcc) * Lpcc) +
+                                        (0.25f * (bmcc + bcmc) * Lmmc) + (0.50f * (d[idx] + dcmc) * Lcmc) -
+                                        (0.25f * (bpcc + bcmc) * Lpmc) + (0.25f * (ecpc + eccp) * Lcpp) -
+                                        (0.25f * (cmcc + cccp) * Lmcp) + (0.50f * (f[idx] + fccp) * Lccp) +
+                                        (0.25f * (cpcc + cccp) * Lpcp) - (0.25f * (ecmc + eccp) * Lcmp);
+
+                                    next[idx] = current[idx] + (timeStep * r);
+                                }
+                            }
+                        }
+                    }
+                });
+    } // end diffuse3D(...)
 
-  
     /**
      * DOCUMENT ME!
      *
@@ -600,39 +739,8 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
      *              Y-direction is performed using a 1D Gaussian kernel.</P>
      */
     private void gaussianSmooth(float[] gs, float[] src) {
-
-        int idx;
-        float sum = 0.0f;
-
-        // convolve in the x direction
-        int row, col;
-
-        for (row = 0; row < yDim; row++) {
-
-            for (col = 0; col < xDim; col++) {
-                sum = 0.0f;
-
-                for (idx = -skRadius; idx <= skRadius; idx++) {
-                    sum += (skernelX[idx + skRadius] * getVal(src, col + idx, row));
-                }
-
-                setVal(sum, intermediateBuffer, col, row);
-            } // end for (col = 0; ...)
-        } // end for (row = 0; ...)
-
-        // convolve in the y direction
-        for (row = 0; row < yDim; row++) {
-
-            for (col = 0; col < xDim; col++) {
-                sum = 0.0f;
-
-                for (idx = -skRadius; idx <= skRadius; idx++) {
-                    sum += (skernelY[idx + skRadius] * getVal(intermediateBuffer, col, row + idx));
-                }
-
-                setVal(sum, gs, col, row);
-            } // end for (col = 0; ...)
-        } // end for (row = 0; ...)
+        convolveLines(src, intermediateBuffer, skernelX, skRadius, 0);
+        convolveLines(intermediateBuffer, gs, skernelY, skRadius, 1);
     } // end gaussianSmooth(...)
 
     /**
@@ -650,62 +758,9 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
      *              the result is placed in gs.</P>
      */
     private void gaussianSmooth3D(float[] gs, float[] src) {
-
-        // convolve in the x direction
-        int row, col, slice;
-        int idx;
-        float sum;
-
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -skRadius; idx <= skRadius; idx++) {
-                        sum += (skernelX[idx + skRadius] * getVal(src, col + idx, row, slice));
-                    }
-
-                    setVal(sum, gs, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
-
-        // convolve in the y direction
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -skRadius; idx <= skRadius; idx++) {
-                        sum += (skernelY[idx + skRadius] * getVal(gs, col, row + idx, slice));
-                    }
-
-                    setVal(sum, intermediateBuffer, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
-
-        // Convolve in the z direction
-        for (slice = 0; slice < zDim; slice++) {
-
-            for (row = 0; row < yDim; row++) {
-
-                for (col = 0; col < xDim; col++) {
-                    sum = 0.0f;
-
-                    for (idx = -skRadius; idx <= skRadius; idx++) {
-                        sum += (skernelZ[idx + skRadius] * getVal(intermediateBuffer, col, row, slice + idx));
-                    }
-
-                    setVal(sum, gs, col, row, slice);
-                } // end for (col = 0; ...)
-            } // end for (row = 0; ...)
-        } // for (slice = 0; slice < zDim; slice++)
-
+        convolveLines(src, gs, skernelX, skRadius, 0);
+        convolveLines(gs, intermediateBuffer, skernelY, skRadius, 1);
+        convolveLines(intermediateBuffer, gs, skernelZ, skRadius, 2);
     } // end gaussianSmooth(...)
 
     /**
@@ -885,6 +940,25 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
         }
     }
 
+    /**
+     * Multiplies two buffers voxel by voxel, in parallel slabs.
+     *
+     * @param  dest  float [] receives the products; may be one of the factors
+     * @param  u     float [] first factor
+     * @param  v     float [] second factor
+     */
+    private void multiply(final float[] dest, final float[] u, final float[] v) {
+        stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                public void apply(int firstPlane, int endPlane) {
+
+                    for (int idx = firstPlane * stepper.getPlaneSize(); idx < (endPlane * stepper.getPlaneSize());
+                             idx++) {
+                        dest[idx] = u[idx] * v[idx];
+                    }
+                }
+            });
+    } // end multiply(...)
+
     /**
      * Starts the algorithm for 2D images.
      *
@@ -903,18 +977,13 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
         length = xDim * yDim;
 
         // buffers for the image data
-        float[] resultBuffer;
-        float[] iterationBuffer;
+        float[] sliceBuffer;
         float[] dx2, dy2, dxdy; // derivative squared buffers
         float[] s11, s12, s22; // structure matrix buffers
-        float lambdaOne, lambdaTwo; // eigenvalues
-        float c1; // conductance (diffusion coefficient) in coherence direction
         float[] d11, d12, d22; // diffusion tensor
-        float[] a, b, c; // references to the diffusion tensor
 
         try {
-            resultBuffer = new float[length];
-            iterationBuffer = new float[length];
+            sliceBuffer = new float[length];
             dx2 = new float[length];
             dy2 = new float[length];
             dxdy = new float[length];
@@ -924,11 +993,9 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
             d11 = new float[length];
             d12 = new float[length];
             d22 = new float[length];
-            a = d11;
-            b = d12;
-            c = d22;
+            stepper.setImage(sliceBuffer);
         } catch (OutOfMemoryError e) {
-            resultBuffer = iterationBuffer = null;
+            sliceBuffer = null;
             dx2 = dy2 = dxdy = s11 = s12 = s22 = null;
             d11 = d12 = d22 = null;
             errorCleanUp("AlgorithmCoherenceEnhancingDiffusion: Out of memory when creating image buffers", true);
@@ -940,14 +1007,14 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
         fireProgressStateChanged(0, srcImage.getImageName(), "Coherence-Enhancing Diffusion ...");
         
         // processing each slice starts here
-        for (int imgNum = 0; imgNum < numImages; imgNum++) {
+        for (int imgNum = 0; (imgNum < numImages) && !threadStopped; imgNum++) {
             sliceOffset = imgNum * length;
 
-            // initialize iterationBuffer with data for the appropriate slice
+            // initialize the current buffer of the stepper with data for the appropriate slice
             try {
-                srcImage.exportData(sliceOffset, length, iterationBuffer);
+                srcImage.exportData(sliceOffset, length, stepper.getImage());
             } catch (IOException error) {
-                resultBuffer = iterationBuffer = null;
+                sliceBuffer = null;
                 dx2 = dy2 = dxdy = s11 = s12 = s22 = null;
                 d11 = d12 = d22 = null;
                 errorCleanUp("AlgorithmCoherenceEnhancingDiffusion: could NOT export source image", true);
@@ -955,23 +1022,18 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
                 return;
             } // end try{}-catch{}
 
-            // copy the iterationBuffer to the resultBuffer to initialize the first iteration update
-            System.arraycopy(iterationBuffer, 0, resultBuffer, 0, length);
-
             // iterate diffusion for each slice
-            for (int iterNum = 1; iterNum <= numIterations; iterNum++) {
+            for (int iterNum = 1; (iterNum <= numIterations) && !threadStopped; iterNum++) {
                 
                 fireProgressStateChanged(((float)(computationCount++) / (totalComputation - 1)), null, null);
                 
-                computeDx(dx2, iterationBuffer);
-                computeDy(dy2, iterationBuffer);
+                computeDx(dx2, stepper.getImage());
+                computeDy(dy2, stepper.getImage());
 
                 // compute all elements of the structure tensor
-                for (int idx = 0; idx < dx2.length; idx++) {
-                    dxdy[idx] = dx2[idx] * dy2[idx];
-                    dx2[idx] *= dx2[idx];
-                    dy2[idx] *= dy2[idx];
-                } // end for (int idx = 0; ...)
+                multiply(dxdy, dx2, dy2);
+                multiply(dx2, dx2, dx2);
+                multiply(dy2, dy2, dy2);
 
                 // gaussian smooth the structure tensor
                 gaussianSmooth(s11, dx2);
@@ -986,83 +1048,20 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
                 // +--       --+
 
                 // Compute the eigenvalues of the structure tensor and elements of the
-                // diffusion tensor
-                float exponent;
-                float c2 = 0.01f;
-                float epsilon = 0.0000001f;
-                float alpha;
-                int idx = 0;
-                float Lpc, Lpp, Lcp, Lmp, Lmc, Lmm, Lcm, Lpm;
-                float amc, apc, bmc, bcm, bpc, bcp, ccp, ccm;
-                float r;
-
-                for (int y = 0; y < yDim; y++) {
-
-                    for (int x = 0; x < xDim; x++, idx++) {
-
-                        if (entireImage || mask.get(sliceOffset + idx)) {
-
-                            alpha = (s11[idx] - s22[idx]) * (s11[idx] - s22[idx]);
-                            alpha += (4.0 * (s12[idx] * s12[idx]));
-                            alpha = (float) Math.sqrt(alpha);
-
-                            lambdaOne = 0.5f * (s11[idx] + s22[idx] + alpha);
-                            lambdaTwo = 0.5f * (s11[idx] + s22[idx] - alpha);
-
-                            exponent = ((lambdaOne - lambdaTwo) * (lambdaOne - lambdaTwo) / (float) k2);
+                // diffusion tensor, then diffuse once the whole tensor is known
+                computeDiffusionTensor2D(s11, s12, s22, d11, d12, d22, sliceOffset);
 
-                            if (exponent == 0.0f) {
-                            	c1 = 0.01f;
-                            }
-                            else {
-                            	c1 = (float)(0.01 + (1 - 0.01)*Math.exp(-1.0/exponent));
-                            }
-
-                            d11[idx] = 0.5f * (c1 + c2 + ((c2 - c1) * (s11[idx] - s22[idx]) / (alpha + epsilon)));
-                            d12[idx] = (c2 - c1) * s12[idx] / (alpha + epsilon);
-                            d22[idx] = 0.5f * (c1 + c2 - ((c2 - c1) * (s11[idx] - s22[idx]) / (alpha + epsilon)));
-
-                            Lpc = getVal(iterationBuffer, x + 1, y);
-                            Lpp = getVal(iterationBuffer, x + 1, y + 1);
-                            Lcp = getVal(iterationBuffer, x, y + 1);
+                if (diffuse2D(d11, d12, d22, sliceOffset)) {
+                    computationCount += numIterations - iterNum;
 
-                            Lmp = getVal(iterationBuffer, x - 1, y + 1);
-                            Lmc = getVal(iterationBuffer, x - 1, y);
-                            Lmm = getVal(iterationBuffer, x - 1, y - 1);
-
-                            Lcm = getVal(iterationBuffer, x, y - 1);
-                            Lpm = getVal(iterationBuffer, x + 1, y - 1);
-
-                            amc = getVal(a, x - 1, y);
-                            apc = getVal(a, x + 1, y);
-
-                            bmc = getVal(b, x - 1, y);
-                            bcm = getVal(b, x, y - 1);
-                            bpc = getVal(b, x + 1, y);
-                            bcp = getVal(b, x, y + 1);
-
-                            ccp = getVal(c, x, y + 1);
-                            ccm = getVal(c, x, y - 1);
-
-                            r = (-0.25f * (bmc + bcp) * Lmp) + (0.50f * (ccp + c[idx]) * Lcp) +
-                                (0.25f * (bpc + bcp) * Lpp) + (0.50f * (amc + a[idx]) * Lmc) -
-                                (0.50f * (amc + (2 * a[idx]) + apc + ccm + (2 * c[idx]) + ccp) * iterationBuffer[idx]) +
-                                (0.50f * (apc + a[idx]) * Lpc) + (0.25f * (bmc + bcm) * Lmm) +
-                                (0.50f * (ccm + c[idx]) * Lcm) - (0.25f * (bpc + bcm) * Lpm);
-
-                            resultBuffer[idx] += (timeStep * r);
-                        }
-                    }
+                    break;
                 }
-
-                // update the iterationBuffer for the next pass
-                System.arraycopy(resultBuffer, 0, iterationBuffer, 0, length);
             } // end for (int iterNum = 1; ...)
 
             try {
-                destImage.importData(sliceOffset, resultBuffer, true);
+                destImage.importData(sliceOffset, stepper.getImage(), true);
             } catch (IOException error) {
-                resultBuffer = iterationBuffer = null;
+                sliceBuffer = null;
                 dx2 = dy2 = dxdy = s11 = s12 = s22 = null;
                 d11 = d12 = d22 = null;
                 errorCleanUp("AlgorithmCoherenceEnhancingDiffusion: could NOT import dest image", true);
@@ -1578,26 +1577,18 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
         int length = xDim * yDim * zDim;
 
         // buffers for the image data
-        float[] resultBuffer;
-        float[] iterationBuffer;
+        float[] imageBuffer;
         float[] dx2, dy2, dxdy; // derivative squared buffers
         float[] dz2, dxdz, dydz;
         float[] s11, s12, s22; // structure matrix buffers
         float[] s13, s23, s33;
-        float lambdaOne, lambdaTwo; // eigenvalues
-        float lambdaThree;
-        float c1; // conductance (diffusion coefficient) in coherence direction
-        float[] d11, d12, d22; // diffusion tensor
-        float[] d13, d23, d33;
-        float[] a, b, c; // references to the diffusion tensor
-        float[] d, e, f;
+        float[][] d; // diffusion tensor d11, d12, d22, d13, d23, d33
 
         fireProgressStateChanged(0, srcImage.getImageName(), "Coherence-Enhancing Diffusion ...");
         
         
         try {
-            resultBuffer = new float[length];
-            iterationBuffer = new float[length];
+            imageBuffer = new float[length];
             dx2 = new float[length];
             dy2 = new float[length];
             dxdy = new float[length];
@@ -1610,60 +1601,46 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
             s13 = new float[length];
             s23 = new float[length];
             s33 = new float[length];
-            d11 = new float[length];
-            d12 = new float[length];
-            d22 = new float[length];
-            d13 = new float[length];
-            d23 = new float[length];
-            d33 = new float[length];
-            a = d11;
-            b = d12;
-            c = d13;
-            d = d22;
-            e = d23;
-            f = d33;
+            d = new float[6][length];
+            stepper.setImage(imageBuffer);
         } catch (OutOfMemoryError er) {
-            resultBuffer = iterationBuffer = null;
+            imageBuffer = null;
             dx2 = dy2 = dxdy = dz2 = dxdz = dydz = null;
             s11 = s12 = s22 = s13 = s23 = s33 = null;
-            d11 = d12 = d22 = d13 = d23 = d33 = null;
+            d = null;
             errorCleanUp("AlgorithmCoherenceEnhancingDiffusion: Out of memory when creating image buffers", true);
 
             return;
         } // end try{}-catch{}
 
-        // initialize iterationBuffer with data
+        // initialize the current buffer of the stepper with data
         try {
-            srcImage.exportData(0, length, iterationBuffer);
+            srcImage.exportData(0, length, stepper.getImage());
         } catch (IOException error) {
-            resultBuffer = iterationBuffer = null;
+            imageBuffer = null;
             dx2 = dy2 = dxdy = dz2 = dxdz = dydz = null;
             s11 = s12 = s22 = s13 = s23 = s33 = null;
-            d11 = d12 = d22 = d13 = d23 = d33 = null;
+            d = null;
             errorCleanUp("AlgorithmCoherenceEnhancingDiffusion: could NOT export source image", true);
 
             return;
         } // end try{}-catch{}
 
-        // copy the iterationBuffer to the resultBuffer to initialize the first iteration update
-        System.arraycopy(iterationBuffer, 0, resultBuffer, 0, length);
-
         // iterate diffusion
-        for (int iterNum = 1; iterNum <= numIterations; iterNum++) {
+        for (int iterNum = 1; (iterNum <= numIterations) && !threadStopped; iterNum++) {
+            fireProgressStateChanged(((iterNum - 1) * 100 / numIterations), null, null);
 
-            computeDx3D(dx2, iterationBuffer);
-            computeDy3D(dy2, iterationBuffer);
-            computeDz(dz2, iterationBuffer);
+            computeDx3D(dx2, stepper.getImage());
+            computeDy3D(dy2, stepper.getImage());
+            computeDz(dz2, stepper.getImage());
 
             // compute all elements of the structure tensor
-            for (int idx = 0; idx < length; idx++) {
-                dxdy[idx] = dx2[idx] * dy2[idx];
-                dxdz[idx] = dx2[idx] * dz2[idx];
-                dydz[idx] = dy2[idx] * dz2[idx];
-                dx2[idx] *= dx2[idx];
-                dy2[idx] *= dy2[idx];
-                dz2[idx] *= dz2[idx];
-            } // end for (int idx = 0; ...)
+            multiply(dxdy, dx2, dy2);
+            multiply(dxdz, dx2, dz2);
+            multiply(dydz, dy2, dz2);
+            multiply(dx2, dx2, dx2);
+            multiply(dy2, dy2, dy2);
+            multiply(dz2, dz2, dz2);
 
             // gaussian smooth the structure tensor
             gaussianSmooth3D(s11, dx2);
@@ -1683,189 +1660,21 @@ public class AlgorithmCoherenceEnhancingDiffusion extends AlgorithmBase {
             // +--             --+
 
             // Compute the eigenvalues of the structure tensor and elements of the
-            // diffusion tensor
-            float exponent;
-            float c2 = 0.01f;
-            float c3 = 0.01f;
-            int idx = 0;
-            float Lcpm, Lmcm, Lccm, Lpcm, Lcmm, Lmpc, Lcpc, Lppc, Lmcc, Lpcc;
-            float Lmmc, Lcmc, Lpmc, Lcpp, Lmcp, Lccp, Lpcp, Lcmp;
-            float amcc, apcc;
-            float bmcc, bcpc, bpcc, bcmc;
-            float cmcc, cccm, cpcc, cccp;
-            float dcpc, dcmc;
-            float ecpc, eccm, ecmc, eccp;
-            float fccm, fccp;
-            float r;
-
-            // make a 3X3 eigenSolver
-            eigenSystemAlgo = new Eigenf(3);
+            // diffusion tensor, then diffuse once the whole tensor is known
+            computeDiffusionTensor3D(new float[][] { s11, s12, s22, s13, s23, s33 }, d);
 
-            double[][] evecs = new double[3][3];
-            Matrix rot;
-            Matrix cMat = new Matrix(3, 3);
-            // cArray is a reference to cMat's internal array.
-            double[][] cArray = cMat.getArray();
-
-            for (int i = 0; i <= 2; i++) {
-
-                for (int j = 0; j <= 2; j++) {
-                    cArray[i][j] = 0.0;
-                }
+            if (diffuse3D(d)) {
+                break;
             }
-
-            Matrix dMat;
-
-            for (int z = 0; z < zDim; z++) {
-                fireProgressStateChanged(((((iterNum - 1) * zDim) + z) * 100 / (numIterations * zDim)), null, null);
-                
-                for (int y = 0; y < yDim; y++) {
-
-                    for (int x = 0; x < xDim; x++, idx++) {
-
-                        if (entireImage || mask.get(idx)) {                          
-                            eigenSystemAlgo.SetData(0, 0, s11[idx]);
-                            eigenSystemAlgo.SetData(0, 1, s12[idx]);
-                            eigenSystemAlgo.SetData(0, 2, s13[idx]);
-
-                            eigenSystemAlgo.SetData(1, 0, s12[idx]);
-                            eigenSystemAlgo.SetData(1, 1, s22[idx]);
-                            eigenSystemAlgo.SetData(1, 2, s23[idx]);
-
-                            eigenSystemAlgo.SetData(2, 0, s13[idx]);
-                            eigenSystemAlgo.SetData(2, 1, s23[idx]);
-                            eigenSystemAlgo.SetData(2, 2, s33[idx]);
-
-                            // OK, solve the eigen system
-                            eigenSystemAlgo.IncrSortEigenStuff();
-
-                            // extract the eigen values from the AlgorithmEigensolver
-                            // The eigenvalues are stored in increasing order and may be
-                            // accessed by getEigenvalue(i).  The corresponding eigenvectors
-                            // are stored as columns of a matrix.  The eigenvector for the
-                            // i-th eigenvalue is stored in the i-th column of the matrix.
-                            // Eigenvectors are accessed by getEigenvector(iRow,iCol).
-                            // The eigenvectors are normalized to unit length.
-                            // lambdaOne is the largest eigenvalue.
-                            lambdaOne = eigenSystemAlgo.GetEigenvalue(2);
-                            lambdaTwo = eigenSystemAlgo.GetEigenvalue(1);
-                            lambdaThree = eigenSystemAlgo.GetEigenvalue(0);
-
-                            evecs[0][0] = eigenSystemAlgo.GetEigenvector(0, 2);
-                            evecs[1][0] = eigenSystemAlgo.GetEigenvector(1, 2);
-                            evecs[2][0] = eigenSystemAlgo.GetEigenvector(2, 2);
-
-                            evecs[0][1] = eigenSystemAlgo.GetEigenvector(0, 1);
-                            evecs[1][1] = eigenSystemAlgo.GetEigenvector(1, 1);
-                            evecs[2][1] = eigenSystemAlgo.GetEigenvector(2, 1);
-
-                            evecs[0][2] = eigenSystemAlgo.GetEigenvector(0, 0);
-                            evecs[1][2] = eigenSystemAlgo.GetEigenvector(1, 0);
-                            evecs[2][2] = eigenSystemAlgo.GetEigenvector(2, 0);
-                            	
-
-                            // The columns of the rotation matrix are the eigenvectors
-                            // of the structure tensor.
-                            rot = new Matrix(evecs);
-
-                            exponent = ((((lambdaOne - lambdaTwo) * (lambdaOne - lambdaTwo)) +
-                                         ((lambdaOne - lambdaThree) * (lambdaOne - lambdaThree)) +
-                                         ((lambdaTwo - lambdaThree) * (lambdaTwo - lambdaThree))) / (float) k2);
-
-                            if (exponent == 0.0f) {
-                            	c1 = 0.01f;
-                            }
-                            else {
-                            	c1 = (float)(0.01 + (1 - 0.01)*Math.exp(-1.0/exponent));
-                            }
-                            cArray[0][0] = c1;
-                            cArray[1][1] = c2;
-                            cArray[2][2] = c3;
-
-                            dMat = (rot.transpose().times(cMat)).times(rot);
-
-                            d11[idx] = (float) dMat.get(0, 0);
-                            d12[idx] = (float) dMat.get(0, 1);
-                            d22[idx] = (float) dMat.get(1, 1);
-                            d13[idx] = (float) dMat.get(0, 2);
-                            d23[idx] = (float) dMat.get(1, 2);
-                            d33[idx] = (float) dMat.get(2, 2);
-
-                            Lcpm = getVal(iterationBuffer, x, y + 1, z - 1);
-                            Lmcm = getVal(iterationBuffer, x - 1, y, z - 1);
-                            Lccm = getVal(iterationBuffer, x, y, z - 1);
-                            Lpcm = getVal(iterationBuffer, x + 1, y, z - 1);
-                            Lcmm = getVal(iterationBuffer, x, y - 1, z - 1);
-
-                            Lmpc = getVal(iterationBuffer, x - 1, y + 1, z);
-                            Lcpc = getVal(iterationBuffer, x, y + 1, z);
-                            Lppc = getVal(iterationBuffer, x + 1, y + 1, z);
-                            Lmcc = getVal(iterationBuffer, x - 1, y, z);
-                            Lpcc = getVal(iterationBuffer, x + 1, y, z);
-                            Lmmc = getVal(iterationBuffer, x - 1, y - 1, z);
-                            Lcmc = getVal(iterationBuffer, x, y - 1, z);
-                            Lpmc = getVal(iterationBuffer, x + 1, y - 1, z);
-
-                            Lcpp = getVal(iterationBuffer, x, y + 1, z + 1);
-                            Lmcp = getVal(iterationBuffer, x - 1, y, z + 1);
-                            Lccp = getVal(iterationBuffer, x, y, z + 1);
-                            Lpcp = getVal(iterationBuffer, x + 1, y, z + 1);
-                            Lcmp = getVal(iterationBuffer, x, y - 1, z + 1);
-
-                            amcc = getVal(a, x - 1, y, z);
-                            apcc = getVal(a, x + 1, y, z);
-
-                            bmcc = getVal(b, x - 1, y, z);
-                            bcpc = getVal(b, x, y + 1, z);
-                            bpcc = getVal(b, x + 1, y, z);
-                            bcmc = getVal(b, x, y - 1, z);
-
-                            cmcc = getVal(c, x - 1, y, z);
-                            cccm = getVal(c, x, y, z - 1);
-                            cpcc = getVal(c, x + 1, y, z);
-                            cccp = getVal(c, x, y, z + 1);
-
-                            dcpc = getVal(d, x, y + 1, z);
-                            dcmc = getVal(d, x, y - 1, z);
-
-                            ecpc = getVal(e, x, y + 1, z);
-                            eccm = getVal(e, x, y, z - 1);
-                            ecmc = getVal(e, x, y - 1, z);
-                            eccp = getVal(e, x, y, z + 1);
-
-                            fccm = getVal(f, x, y, z - 1);
-                            fccp = getVal(f, x, y, z + 1);
-
-                            r = (-0.25f * (ecpc + eccm) * Lcpm) + (0.25f * (cmcc + cccm) * Lmcm) +
-                                (0.50f * (fccm + f[idx]) * Lccm) - (0.25f * (cpcc + cccm) * Lpcm) +
-                                (0.25f * (ecmc + eccm) * Lcmm) - (0.25f * (bmcc + bcpc) * Lmpc) +
-                                (0.50f * (d[idx] + dcpc) * Lcpc) + (0.25f * (bpcc + bcpc) * Lppc) +
-                                (0.50f * (amcc + a[idx]) * Lmcc) -
-                                (0.50f *
-                                     (apcc + amcc + (2 * a[idx]) + dcpc + dcmc + (2 * d[idx]) + fccp + fccm +
-                                          (2 * f[idx])) * iterationBuffer[idx]) + (0.50f * (a[idx] + apcc) * Lpcc) +
-                                (0.25f * (bmcc + bcmc) * Lmmc) + (0.50f * (d[idx] + dcmc) * Lcmc) -
-                                (0.25f * (bpcc + bcmc) * Lpmc) + (0.25f * (ecpc + eccp) * Lcpp) -
-                                (0.25f * (cmcc + cccp) * Lmcp) + (0.50f * (f[idx] + fccp) * Lccp) +
-                                (0.25f * (cpcc + cccp) * Lpcp) - (0.25f * (ecmc + eccp) * Lcmp);
-
-                            resultBuffer[idx] += (timeStep * r);
-                        }
-                    }
-                }
-            }
-
-            // update the iterationBuffer for the next pass
-            System.arraycopy(resultBuffer, 0, iterationBuffer, 0, length);
         } // end for (int iterNum = 1; ...)
 
         try {
-            destImage.importData(0, resultBuffer, true);
+            destImage.importData(0, stepper.getImage(), true);
         } catch (IOException error) {
-            resultBuffer = iterationBuffer = null;
+            imageBuffer = null;
             dx2 = dy2 = dxdy = dz2 = dxdz = dydz = null;
             s11 = s12 = s22 = s13 = s23 = s33 = null;
-            d11 = d12 = d22 = d13 = d23 = d33 = null;
+            d = null;
             errorCleanUp("AlgorithmCoherenceEnhancingDiffusion: could NOT import dest image", true);
 
             return;
@@ -4,9 +4,14 @@ package gov.nih.mipav.model.algorithms.filters;
 import gov.nih.mipav.model.algorithms.*;
 import gov.nih.mipav.model.structures.*;
 
+import gov.nih.mipav.util.ThreadUtil;
+
 import gov.nih.mipav.view.*;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -37,6 +42,12 @@ import java.io.*;
  *           <p>The calculations start with the creation of a gray level co-occurrence matrix for each pixel position
  *           interior to the outer band for each direction. This matrix gives the probability for each pair of 2 pixels
  *           within the square window.</p>
+ *
+ *           <p>The matrices are not rebuilt for every pixel. Along a row the window slides one pixel at a time, so
+ *           the pairs of the column leaving the window are removed and the pairs of the column entering it are added.
+ *           Together with the counts the matrix keeps its difference and sum histograms, marginal, sum of squared
+ *           counts and count entropy, so every feature is found in time linear in the number of grey levels. The rows
+ *           of a slice are divided among threads.</p>
  *           
  *           Data should be rescaled so that the Grey-Level Co-occurrence Matrix is of the appropriate size.  Eight bit data
  *           has 256 possible values, so the GLCM would be a 256 x 256 matrix, with 65,536 cells.  16 bit data would give a
@@ -352,12 +363,6 @@ public class AlgorithmHaralickTexture extends AlgorithmBase {
         int yDim = srcImage.getExtents()[1];
         int sliceSize = xDim * yDim;
         int zDim;
-        boolean doneNS = false;
-        boolean doneNESW = false;
-        boolean doneEW = false;
-        boolean doneSENW = false;
-        boolean doneInvariant = false;
-        int iDir;
         double imageMin;
         double imageMax;
         srcImage.calcMinMax();
@@ -369,14 +374,6 @@ public class AlgorithmHaralickTexture extends AlgorithmBase {
         double[] sourceBuffer = new double[sliceSize];
         byte[]  byteBuffer = new byte[sliceSize];
         float[] floatBuffer;
-        int[][] nsBuffer = null;
-        int[][] neswBuffer = null;
-        int[][] ewBuffer = null;
-        int[][] senwBuffer = null;
-        int[][] invariantDirBuffer = null;
-
-        // gray level co-occurrence matrix
-        float[][] glcm = null;
         int matrixSize;
         int halfWin = (windowSize - 1) / 2;
         int xStart = halfWin;
@@ -386,21 +383,12 @@ public class AlgorithmHaralickTexture extends AlgorithmBase {
         int numValues = (xEnd - xStart + 1) * (yEnd - yStart + 1);
         int x, y;
         int i, j;
-        int index;
         int resultNumber;
-        float matrixSum;
         float[][] resultBuffer = null;
-        int currentResult;
         int pos;
-        float glcmMean = 0.0f;
-        float glcmVariance = 0.0f;
-        float glcmASM = 0.0f;
-        boolean skip;
         boolean rescale = false;
         double range = imageMax - imageMin;
         double factor = (greyLevels - 1)/range;
-        float sum;
-        float product;
         int z;
         double total;
         double totalSquared;
@@ -507,27 +495,6 @@ public class AlgorithmHaralickTexture extends AlgorithmBase {
             matrixSize = (int)Math.round(range) + 1;
         }
 
-        if (ns || invariantDir) {
-            nsBuffer = new int[matrixSize][matrixSize];
-        }
-
-        if (nesw || invariantDir) {
-            neswBuffer = new int[matrixSize][matrixSize];
-        }
-
-        if (ew || invariantDir) {
-            ewBuffer = new int[matrixSize][matrixSize];
-        }
-
-        if (senw || invariantDir) {
-            senwBuffer = new int[matrixSize][matrixSize];
-        }
-
-        if (invariantDir) {
-            invariantDirBuffer = new int[matrixSize][matrixSize];
-        }
-
-        glcm = new float[matrixSize][matrixSize];
         resultBuffer = new float[resultNumber][sliceSize];
 
 
@@ -577,454 +544,591 @@ public class AlgorithmHaralickTexture extends AlgorithmBase {
         }
 
         
-        for (y = yStart; (y <= yEnd) && !threadStopped; y++) {
-            
-            fireProgressStateChanged(((int)((z * 100.0f/zDim) + ((y - yStart) * (100.0f / (zDim*(yEnd - yStart)))))), null, null);
-            
-            for (x = xStart; x <= xEnd; x++) {
-                pos = x + (y * xDim);
-                doneNS = false;
-                doneNESW = false;
-                doneEW = false;
-                doneSENW = false;
-                doneInvariant = false;
-                currentResult = 0;
+        calculateRows(byteBuffer, resultBuffer, matrixSize, z, zDim);
+        
+        if (zscore) {
+            for (i = 0; i < resultNumber; i++) {
+                total = 0.0;
+                totalSquared = 0.0;
+                //zStdDev = 0.0;
+                for (y = yStart; y <= yEnd; y++) {
+                    for (x = xStart; x <= xEnd; x++) {
+                        pos = x + (y * xDim);
+                        value = resultBuffer[i][pos];
+                        total += value;
+                        totalSquared += (value * value);
+                    }
+                } // for (y = yStart; y <= yEnd; y++)
+                zMean = total/numValues;
+                //for (y = yStart; y <= yEnd; y++) {
+                    //for (x = xStart; x <= xEnd; x++) {
+                        //pos = x + (y * xDim);
+                        //value = resultBuffer[i][pos];
+                        //zStdDev += ((value - zMean)*(value - zMean));
+                    //}
+                //}
+                //zStdDev = Math.sqrt(zStdDev/(numValues - 1));
+                zStdDev = Math.sqrt((totalSquared - total * total/numValues)/(numValues - 1));
+                for (y = yStart; y <= yEnd; y++) {
+                    for (x = xStart; x <= xEnd; x++) {
+                        pos = x + (y * xDim);
+                        value = resultBuffer[i][pos];
+                        resultBuffer[i][pos] = (float)((value - zMean)/zStdDev);
+                    }
+                } // for (y = yStart; y <= yEnd; y++)
+            } // for (i = 0; i < resultNumber; i++)
+        } // if (zscore)
 
-                for (iDir = 0; iDir < numDirections; iDir++) {
-                    skip = false;
+        if (threadStopped) {
+            finalize();
 
-                    if ((ns || invariantDir) && (!doneNS)) {
-                        doneNS = true;
+            return;
+        }
 
-                        for (i = 0; i < matrixSize; i++) {
+        if (concatenate) {
+            try {
+                destImage[0].importData(z*sliceSize, sourceBuffer, false);
+            } catch (IOException error) {
+                MipavUtil.displayError("" +
+                        "AlgorithmHaralickTexture: IOException on destImage[0].importData(0, sourceBuffer, true)");
+               setCompleted(false);
 
-                            for (j = 0; j < matrixSize; j++) {
-                                nsBuffer[i][j] = 0;
-                            }
-                        }
+               return;
+           }
+            for (i = 0; i < resultNumber; i++) {
+                
+                try {
+                    destImage[0].importData((i+1)*zDim*sliceSize + z*sliceSize, resultBuffer[i], false);
+                } catch (IOException error) {
+                    MipavUtil.displayError("AlgorithmHaralickTexture: IOException on destImage[" + i +
+                                           "].importData(0,resultBuffer[" + i + "],false)");
+                    setCompleted(false);
+    
+                    return;
+                }
+            } // for (i = 0; i < resultNumber; i++)
+        } // if (concatenate)
+        else { // !concatenate
+            for (i = 0; i < resultNumber; i++) {
+    
+                try {
+                    destImage[i].importData(z*sliceSize, resultBuffer[i], false);
+                } catch (IOException error) {
+                    MipavUtil.displayError("AlgorithmHaralickTexture: IOException on destImage[" + i +
+                                           "].importData(0,resultBuffer[" + i + "],false)");
+                    setCompleted(false);
+    
+                    return;
+                }
+            } // for (i = 0; i < resultNumber; i++)
+        } // else !concatenate
+        } // for (z = 0; z < zDim; z++)
+        
+        if (concatenate) {
+            destImage[0].calcMinMax();
+        }
+        else {
+            for (i = 0; i < resultNumber; i++) {
+                destImage[i].calcMinMax();
+            }
+        }
 
-                        for (j = y - halfWin; j <= (y + halfWin - offsetDistance); j++) {
+        setCompleted(true);
 
-                            for (i = x - halfWin; i <= (x + halfWin); i++) {
-                                index = i + (j * xDim);
-                                nsBuffer[byteBuffer[index]][byteBuffer[index + xDim]]++;
-                                nsBuffer[byteBuffer[index + xDim]][byteBuffer[index]]++;
-                            }
-                        }
+        return;
+    }
 
-                        if (ns) {
-                            matrixSum = 2.0f * (windowSize - offsetDistance) * windowSize;
 
-                            for (i = 0; i < matrixSize; i++) {
+    /**
+     * Calculates the features of the interior rows of a slice, dividing the rows among threads.
+     *
+     * @param  byteBuffer    grey levels of the slice
+     * @param  resultBuffer  receives the features, one buffer per direction and operator
+     * @param  matrixSize    number of grey levels
+     * @param  z             the slice
+     * @param  zDim          number of slices
+     */
+    private void calculateRows(final byte[] byteBuffer, final float[][] resultBuffer, final int matrixSize,
+                               final int z, final int zDim) {
+        int halfWin = (windowSize - 1) / 2;
+        final int yStart = halfWin;
+        final int yEnd = srcImage.getExtents()[1] - 1 - halfWin;
+        final int numRows = yEnd - yStart + 1;
+        final AtomicInteger rowsDone = new AtomicInteger();
+        final int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, numRows)) : 1;
 
-                                for (j = 0; j < matrixSize; j++) {
-                                    glcm[i][j] = nsBuffer[i][j] / matrixSum;
-                                }
-                            }
+        if (nTasks == 1) {
+            calculateRows(byteBuffer, resultBuffer, matrixSize, yStart, yEnd, rowsDone, z, zDim);
+
+            return;
+        }
+
+        final CountDownLatch doneSignal = new CountDownLatch(nTasks);
 
-                            skip = true;
-                        } // if (ns)
+        for (int t = 0; t < nTasks; t++) {
+            final int first = yStart + (int) ((long) numRows * t / nTasks);
+            final int last = yStart + (int) ((long) numRows * (t + 1) / nTasks) - 1;
+
+            ThreadUtil.mipavThreadPool.execute(new Runnable() {
+                public void run() {
+
+                    try {
+                        calculateRows(byteBuffer, resultBuffer, matrixSize, first, last, rowsDone, z, zDim);
+                    } finally {
+                        doneSignal.countDown();
                     }
+                }
+            });
+        }
 
-                    if ((nesw || invariantDir) && (!doneNESW) && (!skip)) {
-                        doneNESW = true;
+        try {
+            doneSignal.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                        for (i = 0; i < matrixSize; i++) {
+    /**
+     * Calculates the features of a range of rows. The co-occurrence matrices are built for the first window of each
+     * row and then updated as the window slides along the row.
+     *
+     * @param  byteBuffer    grey levels of the slice
+     * @param  resultBuffer  receives the features, one buffer per direction and operator
+     * @param  matrixSize    number of grey levels
+     * @param  firstRow      first row
+     * @param  lastRow       last row
+     * @param  rowsDone      number of rows of the slice finished so far, for the progress bar
+     * @param  z             the slice
+     * @param  zDim          number of slices
+     */
+    private void calculateRows(byte[] byteBuffer, float[][] resultBuffer, int matrixSize, int firstRow, int lastRow,
+                               AtomicInteger rowsDone, int z, int zDim) {
+        int xDim = srcImage.getExtents()[0];
+        int yDim = srcImage.getExtents()[1];
+        int halfWin = (windowSize - 1) / 2;
+        int xStart = halfWin;
+        int xEnd = xDim - 1 - halfWin;
+        int numRows = yDim - (2 * halfWin);
+        int near = windowSize - offsetDistance;
+        int x, y, i, j, d;
+        int index;
+        int currentResult;
+        int pos;
+        int done;
+
+        // The four directions in the order of the result images. For each direction the pairs counted are the
+        // pixels at columns colStart to colEnd and rows y - halfWin to y + halfWin - rowEnd relative to the window,
+        // paired with the pixel partner further on in the slice.
+        int[] colStart = {0, offsetDistance, 0, 0};
+        int[] colEnd = {0, 0, offsetDistance, offsetDistance};
+        int[] rowEnd = {offsetDistance, offsetDistance, 0, offsetDistance};
+        int[] partner = {xDim, xDim - 1, 1, xDim + 1};
+        boolean[] used = {ns || invariantDir, nesw || invariantDir, ew || invariantDir, senw || invariantDir};
+        boolean[] output = {ns, nesw, ew, senw};
+        float[] matrixSum = {
+            2.0f * near * windowSize, 2.0f * near * near, 2.0f * near * windowSize, 2.0f * near * near
+        };
+        float invariantSum = (4.0f * near * near) + (4.0f * near * windowSize);
+
+        // the largest count of a cell, which is reached by a diagonal cell of the invariant matrix
+        int maxCount = 8 * windowSize * windowSize;
+        double[] countLogCount = new double[maxCount + 1];
+
+        for (i = 1; i <= maxCount; i++) {
+            countLogCount[i] = i * Math.log(i);
+        }
 
-                            for (j = 0; j < matrixSize; j++) {
-                                neswBuffer[i][j] = 0;
-                            }
-                        }
+        CooccurrenceMatrix[] glcm = new CooccurrenceMatrix[4];
+        CooccurrenceMatrix invariantGlcm = null;
 
-                        for (j = y - halfWin; j <= (y + halfWin - offsetDistance); j++) {
+        for (d = 0; d < 4; d++) {
 
-                            for (i = x - halfWin + offsetDistance; i <= (x + halfWin); i++) {
-                                index = i + (j * xDim);
-                                neswBuffer[byteBuffer[index]][byteBuffer[index + xDim - 1]]++;
-                                neswBuffer[byteBuffer[index + xDim - 1]][byteBuffer[index]]++;
-                            }
-                        }
+            if (output[d]) {
+                glcm[d] = new CooccurrenceMatrix(matrixSize, countLogCount);
+            }
+        }
 
-                        if (nesw) {
-                            matrixSum = 2.0f * (windowSize - offsetDistance) * (windowSize - offsetDistance);
+        if (invariantDir) {
+            invariantGlcm = new CooccurrenceMatrix(matrixSize, countLogCount);
+        }
 
-                            for (i = 0; i < matrixSize; i++) {
+        for (y = firstRow; (y <= lastRow) && !threadStopped; y++) {
 
-                                for (j = 0; j < matrixSize; j++) {
-                                    glcm[i][j] = neswBuffer[i][j] / matrixSum;
-                                }
-                            }
+            for (d = 0; d < 4; d++) {
 
-                            skip = true;
-                        } // if (nesw)
-                    }
+                if (glcm[d] != null) {
+                    glcm[d].clear();
+                }
+            }
 
-                    if ((ew || invariantDir) && (!doneEW) && (!skip)) {
-                        doneEW = true;
+            if (invariantGlcm != null) {
+                invariantGlcm.clear();
+            }
 
-                        for (i = 0; i < matrixSize; i++) {
+            for (x = xStart; x <= xEnd; x++) {
 
-                            for (j = 0; j < matrixSize; j++) {
-                                ewBuffer[i][j] = 0;
-                            }
-                        }
+                for (d = 0; d < 4; d++) {
 
-                        for (j = y - halfWin; j <= (y + halfWin); j++) {
+                    if (!used[d]) {
+                        continue;
+                    }
 
-                            for (i = x - halfWin; i <= (x + halfWin - offsetDistance); i++) {
+                    for (j = y - halfWin; j <= (y + halfWin - rowEnd[d]); j++) {
+
+                        if (x == xStart) {
+
+                            // first window of the row
+                            for (i = x - halfWin + colStart[d]; i <= (x + halfWin - colEnd[d]); i++) {
                                 index = i + (j * xDim);
-                                ewBuffer[byteBuffer[index]][byteBuffer[index + 1]]++;
-                                ewBuffer[byteBuffer[index + 1]][byteBuffer[index]]++;
+                                addPair(glcm[d], invariantGlcm, byteBuffer[index], byteBuffer[index + partner[d]], 1);
                             }
-                        }
+                        } else {
 
-                        if (ew) {
-                            matrixSum = 2.0f * (windowSize - offsetDistance) * windowSize;
+                            // remove the column leaving the window and add the column entering it
+                            index = (x - 1 - halfWin + colStart[d]) + (j * xDim);
+                            addPair(glcm[d], invariantGlcm, byteBuffer[index], byteBuffer[index + partner[d]], -1);
+                            index = (x + halfWin - colEnd[d]) + (j * xDim);
+                            addPair(glcm[d], invariantGlcm, byteBuffer[index], byteBuffer[index + partner[d]], 1);
+                        }
+                    }
+                }
 
-                            for (i = 0; i < matrixSize; i++) {
+                pos = x + (y * xDim);
+                currentResult = 0;
 
-                                for (j = 0; j < matrixSize; j++) {
-                                    glcm[i][j] = ewBuffer[i][j] / matrixSum;
-                                }
-                            }
+                for (d = 0; d < 4; d++) {
 
-                            skip = true;
-                        } // if (ew)
+                    if (output[d]) {
+                        currentResult = writeFeatures(glcm[d], matrixSum[d], resultBuffer, currentResult, pos);
                     }
+                }
 
-                    if ((senw || invariantDir) && (!doneSENW) && (!skip)) {
-                        doneSENW = true;
+                if (invariantDir) {
+                    writeFeatures(invariantGlcm, invariantSum, resultBuffer, currentResult, pos);
+                }
+            } // for (x = xStart; x <= xEnd; x++)
 
-                        for (i = 0; i < matrixSize; i++) {
+            done = rowsDone.incrementAndGet();
+            fireProgressStateChanged(((int) ((z * 100.0f / zDim) + (done * (100.0f / (zDim * numRows))))), null,
+                                     null);
+        } // for (y = firstRow; (y <= lastRow) && !threadStopped; y++)
+    }
 
-                            for (j = 0; j < matrixSize; j++) {
-                                senwBuffer[i][j] = 0;
-                            }
-                        }
+    /**
+     * Counts a pair of grey levels in both orders in the matrix of a direction and in the spatially invariant matrix.
+     *
+     * @param  glcm           matrix of the direction, null if the direction has no result images
+     * @param  invariantGlcm  spatially invariant matrix, null if not calculated
+     * @param  a              grey level of the first pixel
+     * @param  b              grey level of the second pixel
+     * @param  delta          1 to add the pair, -1 to remove it
+     */
+    private static void addPair(CooccurrenceMatrix glcm, CooccurrenceMatrix invariantGlcm, byte a, byte b,
+                                int delta) {
 
-                        for (j = y - halfWin; j <= (y + halfWin - offsetDistance); j++) {
+        if (glcm != null) {
+            glcm.add(a & 0xff, b & 0xff, delta);
+        }
 
-                            for (i = x - halfWin; i <= (x + halfWin - offsetDistance); i++) {
-                                index = i + (j * xDim);
-                                senwBuffer[byteBuffer[index]][byteBuffer[index + xDim + 1]]++;
-                                senwBuffer[byteBuffer[index + xDim + 1]][byteBuffer[index]]++;
-                            }
-                        }
+        if (invariantGlcm != null) {
+            invariantGlcm.add(a & 0xff, b & 0xff, delta);
+        }
+    }
 
-                        if (senw) {
-                            matrixSum = 2.0f * (windowSize - offsetDistance) * (windowSize - offsetDistance);
+    /**
+     * Stores the selected features of a co-occurrence matrix.
+     *
+     * @param   glcm           the co-occurrence matrix
+     * @param   matrixSum      number of counts in the matrix, used to turn the counts into probabilities
+     * @param   resultBuffer   receives the features, one buffer per direction and operator
+     * @param   currentResult  buffer of the first feature
+     * @param   pos            position of the pixel in the slice
+     *
+     * @return  the buffer after the last feature stored
+     */
+    private int writeFeatures(CooccurrenceMatrix glcm, float matrixSum, float[][] resultBuffer, int currentResult,
+                              int pos) {
+        int levels = glcm.levels;
+        int[] diffCounts = glcm.diffCounts;
+        int[] sumCounts = glcm.sumCounts;
+        int[] marginal = glcm.marginal;
+        double n = matrixSum;
+        double glcmASM;
+        double glcmMean = 0.0;
+        double glcmVariance = 0.0;
+        double sum;
+        double moment;
+        double diffSquared;
+        int i;
 
-                            for (i = 0; i < matrixSize; i++) {
+        if (contrast) {
+            sum = 0.0;
 
-                                for (j = 0; j < matrixSize; j++) {
-                                    glcm[i][j] = senwBuffer[i][j] / matrixSum;
-                                }
-                            }
+            for (i = 0; i < levels; i++) {
+                sum += (double) i * i * diffCounts[i];
+            }
 
-                            skip = true;
-                        } // if (senw)
-                    }
+            resultBuffer[currentResult++][pos] = (float) (sum / n);
+        } // if (contrast)
 
-                    if (invariantDir && (!doneInvariant) && (!skip)) {
-                        doneInvariant = true;
+        if (dissimilarity) {
+            sum = 0.0;
 
-                        for (i = 0; i < matrixSize; i++) {
+            for (i = 0; i < levels; i++) {
+                sum += (double) i * diffCounts[i];
+            }
 
-                            for (j = 0; j < matrixSize; j++) {
-                                invariantDirBuffer[i][j] = nsBuffer[i][j] + neswBuffer[i][j] + ewBuffer[i][j] +
-                                                           senwBuffer[i][j];
-                            }
-                        }
+            resultBuffer[currentResult++][pos] = (float) (sum / n);
+        } // if (dissimilarity)
 
-                        matrixSum = (4.0f * (windowSize - offsetDistance) * (windowSize - offsetDistance)) +
-                                    (4.0f * (windowSize - offsetDistance) * windowSize);
+        if (homogeneity) {
+            sum = 0.0;
 
-                        for (i = 0; i < matrixSize; i++) {
+            for (i = 0; i < levels; i++) {
+                sum += diffCounts[i] / (1.0 + ((double) i * i));
+            }
 
-                            for (j = 0; j < matrixSize; j++) {
-                                glcm[i][j] = invariantDirBuffer[i][j] / matrixSum;
-                            }
-                        }
-                    } // else if (invariantDir && (!doneInvariant)
+            resultBuffer[currentResult++][pos] = (float) (sum / n);
+        } // if (homogeneity)
 
-                    if (contrast) {
+        if (inverseOrder1) {
+            sum = 0.0;
 
-                        for (i = 0; i < matrixSize; i++) {
+            for (i = 0; i < levels; i++) {
+                sum += diffCounts[i] / (1.0 + i);
+            }
 
-                            for (j = 0; j < matrixSize; j++) {
-                                resultBuffer[currentResult][pos] += (i - j) * (i - j) * glcm[i][j];
-                            }
-                        }
+            resultBuffer[currentResult++][pos] = (float) (sum / n);
+        } // if (inverseOrder1)
 
-                        currentResult++;
-                    } // if (contrast)
+        if (asm || energy) {
+            glcmASM = glcm.sumOfSquares / (n * n);
 
-                    if (dissimilarity) {
+            if (asm) {
+                resultBuffer[currentResult++][pos] = (float) glcmASM;
+            }
 
-                        for (i = 0; i < matrixSize; i++) {
+            if (energy) {
+                resultBuffer[currentResult++][pos] = (float) Math.sqrt(glcmASM);
+            }
+        } // if (asm || energy)
 
-                            for (j = 0; j < matrixSize; j++) {
-                                resultBuffer[currentResult][pos] += Math.abs(i - j) * glcm[i][j];
-                            }
-                        }
+        if (maxProbability) {
+            resultBuffer[currentResult++][pos] = (float) (glcm.maxCount / n);
+        } // if (maxProbability)
 
-                        currentResult++;
-                    } // if (dissimilarity)
+        if (entropy) {
 
-                    if (homogeneity) {
+            // -Sum of p*log(p) with p = count/n
+            resultBuffer[currentResult++][pos] = (float) (((glcm.total * Math.log(n)) - glcm.sumCountLogCount) / n);
+        } // if (entropy)
 
-                        for (i = 0; i < matrixSize; i++) {
+        if (mean || variance || standardDeviation || correlation || shade || promenance) {
+            sum = 0.0;
 
-                            for (j = 0; j < matrixSize; j++) {
-                                resultBuffer[currentResult][pos] += glcm[i][j] / (1.0f + ((i - j) * (i - j)));
-                            }
-                        }
+            for (i = 0; i < levels; i++) {
+                sum += (double) i * marginal[i];
+            }
 
-                        currentResult++;
-                    } // if (homogeneity)
+            glcmMean = sum / n;
 
-                    if (inverseOrder1) {
+            if (mean) {
+                resultBuffer[currentResult++][pos] = (float) glcmMean;
+            }
+        } // if (mean || variance || standardDeviation || correlation || shade || promenance)
 
-                        for (i = 0; i < matrixSize; i++) {
+        if (variance || standardDeviation || correlation) {
+            sum = 0.0;
 
-                            for (j = 0; j < matrixSize; j++) {
-                                resultBuffer[currentResult][pos] += glcm[i][j] / (1.0f + Math.abs(i - j));
-                            }
-                        }
+            for (i = 0; i < levels; i++) {
+                sum += marginal[i] * (i - glcmMean) * (i - glcmMean);
+            }
 
-                        currentResult++;
-                    } // if (inverseOrder1)
+            glcmVariance = sum / n;
 
-                    if (asm || energy) {
-                        glcmASM = 0.0f;
+            if (variance) {
+                resultBuffer[currentResult++][pos] = (float) glcmVariance;
+            }
 
-                        for (i = 0; i < matrixSize; i++) {
+            if (standardDeviation) {
+                resultBuffer[currentResult++][pos] = (float) Math.sqrt(glcmVariance);
+            }
+        } // if (variance || standardDeviation || correlation)
 
-                            for (j = 0; j < matrixSize; j++) {
-                                glcmASM += glcm[i][j] * glcm[i][j];
-                            }
-                        }
+        if (correlation) {
 
-                        if (!energy) {
-                            resultBuffer[currentResult][pos] = glcmASM;
-                            currentResult++;
-                        } else if (!asm) {
-                            resultBuffer[currentResult][pos] = (float) Math.sqrt(glcmASM);
-                            currentResult++;
-                        } else {
-                            resultBuffer[currentResult][pos] = glcmASM;
-                            currentResult++;
-                            resultBuffer[currentResult][pos] = (float) Math.sqrt(glcmASM);
-                            currentResult++;
-                        }
-                    } // if (asm || energy)
+            if (glcmVariance != 0) {
 
-                    if (maxProbability) {
+                // Sum of count*i*j follows from (i + j)**2 - (i - j)**2 = 4*i*j, and Sum of count*(i + j) from the
+                // sum histogram.
+                sum = 0.0;
+                moment = 0.0;
 
-                        for (i = 0; i < matrixSize; i++) {
+                for (i = 0; i < sumCounts.length; i++) {
+                    sum += (double) i * i * sumCounts[i];
+                    moment += (double) i * sumCounts[i];
+                }
 
-                            for (j = 0; j < matrixSize; j++) {
+                diffSquared = 0.0;
 
-                                if (glcm[i][j] > resultBuffer[currentResult][pos]) {
-                                    resultBuffer[currentResult][pos] = glcm[i][j];
-                                }
-                            }
-                        }
+                for (i = 0; i < levels; i++) {
+                    diffSquared += (double) i * i * diffCounts[i];
+                }
 
-                        currentResult++;
-                    } // if (maxProbability)
+                sum = ((sum - diffSquared) / 4.0) - (glcmMean * moment) + (glcmMean * glcmMean * glcm.total);
+                resultBuffer[currentResult][pos] = (float) (sum / n / glcmVariance);
+            } // if (glcmVariance != 0)
+            else {
+                // When an image area is completely uniform, the GLCM variance is zero, just as the first-order
+                // image variance is zero.  As a result, the denominator of the correlation equation becomes 0,
+                // and the correlation becomes undefined.  The undefined value is set to 1, as the correlation
+                // among the original pixel values is perfect
+                resultBuffer[currentResult][pos] = 1.0f;
+            }
 
-                    if (entropy) {
+            currentResult++;
+        } // if (correlation)
 
-                        for (i = 0; i < matrixSize; i++) {
+        if (shade) {
+            sum = 0.0;
 
-                            for (j = 0; j < matrixSize; j++) {
+            for (i = 0; i < sumCounts.length; i++) {
+                moment = i - (2 * glcmMean);
+                sum += sumCounts[i] * moment * moment * moment;
+            }
 
-                                if (glcm[i][j] > 0.0f) {
-                                    resultBuffer[currentResult][pos] -= glcm[i][j] * Math.log(glcm[i][j]);
-                                }
-                            }
-                        }
+            resultBuffer[currentResult++][pos] = (float) (sum / n);
+        } // if (shade)
 
-                        currentResult++;
-                    } // if (entropy)
+        if (promenance) {
+            sum = 0.0;
 
-                    if (mean || variance || standardDeviation || correlation || shade || promenance) {
-                        glcmMean = 0.0f;
+            for (i = 0; i < sumCounts.length; i++) {
+                moment = i - (2 * glcmMean);
+                moment *= moment;
+                sum += sumCounts[i] * moment * moment;
+            }
 
-                        for (i = 0; i < matrixSize; i++) {
+            resultBuffer[currentResult++][pos] = (float) (sum / n);
+        } // if (promenance)
 
-                            for (j = 0; j < matrixSize; j++) {
-                                glcmMean += i * glcm[i][j];
-                            }
-                        }
+        return currentResult;
+    }
 
-                        if (mean) {
-                            resultBuffer[currentResult][pos] = glcmMean;
-                            currentResult++;
-                        }
-                    } // if (mean || variance || standardDeviation || correlation)
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
 
-                    if (variance || standardDeviation || correlation) {
-                        glcmVariance = 0.0f;
+    /**
+     * Symmetric grey level co-occurrence matrix of a window that can be updated one pair at a time. Besides the counts
+     * it keeps the summaries the features are calculated from: the histograms of the differences and sums of the grey
+     * levels of the counted pairs, the marginal, the sum of the squared counts, the sum of count * log(count) and the
+     * largest count.
+     */
+    private static class CooccurrenceMatrix {
 
-                        for (i = 0; i < matrixSize; i++) {
+        /** Number of grey levels. */
+        private final int levels;
 
-                            for (j = 0; j < matrixSize; j++) {
-                                glcmVariance += glcm[i][j] * (i - glcmMean) * (i - glcmMean);
-                            }
-                        }
+        /** The counts, indexed a * levels + b. */
+        private final int[] counts;
 
-                        if ((!standardDeviation) && variance) {
-                            resultBuffer[currentResult][pos] = glcmVariance;
-                            currentResult++;
-                        } else if ((!variance) && standardDeviation) {
-                            resultBuffer[currentResult][pos] = (float) Math.sqrt(glcmVariance);
-                            currentResult++;
-                        } else if (variance && standardDeviation) {
-                            resultBuffer[currentResult][pos] = glcmVariance;
-                            currentResult++;
-                            resultBuffer[currentResult][pos] = (float) Math.sqrt(glcmVariance);
-                            currentResult++;
-                        }
-                    } // if (variance || standardDeviation || correlation)
+        /** Counts of the cells with |a - b| equal to the index. */
+        private final int[] diffCounts;
 
-                    if (correlation) {
+        /** Counts of the cells with a + b equal to the index. */
+        private final int[] sumCounts;
 
-                        if (glcmVariance != 0) {
-                            for (i = 0; i < matrixSize; i++) {
-    
-                                for (j = 0; j < matrixSize; j++) {
-                                    resultBuffer[currentResult][pos] += glcm[i][j] * (i - glcmMean) * (j - glcmMean) /
-                                                                            glcmVariance;
-                                }
-                            }
-                        } // if (glcmVariance != 0)
-                        else {
-                            // When an image area is completely uniform, the GLCM variance is zero, just as the first-order
-                            // image variance is zero.  As a result, the denominator of the correlation equation becomes 0,
-                            // and the correlation becomes undefined.  The undefined value is set to 1, as the correlation
-                            // among the original pixel values is perfect
-                            resultBuffer[currentResult][pos] = 1.0f;
-                        }
+        /** Row sums of the counts. */
+        private final int[] marginal;
 
-                        currentResult++;
-                    } // if (correlation)
-                    
-                    if (shade) {
-                        for (i = 0; i < matrixSize; i++) {
-                            for (j = 0; j < matrixSize; j++) {
-                                sum = (i + j - 2 * glcmMean);
-                                resultBuffer[currentResult][pos] += glcm[i][j] * sum * sum * sum;
-                            }
-                        }
-                        currentResult++;
-                    } // if (shade)
-                    
-                    if (promenance) {
-                        for (i = 0; i < matrixSize; i++) {
-                            for (j = 0; j < matrixSize; j++) {
-                                sum = (i + j - 2 * glcmMean);
-                                product = sum * sum;
-                                resultBuffer[currentResult][pos] += glcm[i][j] * product * product;
-                            }
-                        }
-                        currentResult++;    
-                    } // if (promenance)
-                } // for (iDir = 0; iDir < numDirections; iDir++)
-            } // for (x = xStart; x <= xEnd; x++)
-        } // for (y = yStart; y <= yEnd && !threadStopped; y++)
-        
-        if (zscore) {
-            for (i = 0; i < resultNumber; i++) {
-                total = 0.0;
-                totalSquared = 0.0;
-                //zStdDev = 0.0;
-                for (y = yStart; y <= yEnd; y++) {
-                    for (x = xStart; x <= xEnd; x++) {
-                        pos = x + (y * xDim);
-                        value = resultBuffer[i][pos];
-                        total += value;
-                        totalSquared += (value * value);
-                    }
-                } // for (y = yStart; y <= yEnd; y++)
-                zMean = total/numValues;
-                //for (y = yStart; y <= yEnd; y++) {
-                    //for (x = xStart; x <= xEnd; x++) {
-                        //pos = x + (y * xDim);
-                        //value = resultBuffer[i][pos];
-                        //zStdDev += ((value - zMean)*(value - zMean));
-                    //}
-                //}
-                //zStdDev = Math.sqrt(zStdDev/(numValues - 1));
-                zStdDev = Math.sqrt((totalSquared - total * total/numValues)/(numValues - 1));
-                for (y = yStart; y <= yEnd; y++) {
-                    for (x = xStart; x <= xEnd; x++) {
-                        pos = x + (y * xDim);
-                        value = resultBuffer[i][pos];
-                        resultBuffer[i][pos] = (float)((value - zMean)/zStdDev);
-                    }
-                } // for (y = yStart; y <= yEnd; y++)
-            } // for (i = 0; i < resultNumber; i++)
-        } // if (zscore)
+        /** Number of cells holding each count. */
+        private final int[] countFrequency;
 
-        if (threadStopped) {
-            finalize();
+        /** count * log(count) for every possible count, shared by the matrices of a thread. */
+        private final double[] countLogCount;
 
-            return;
-        }
+        /** Sum of the counts. */
+        private long total;
 
-        if (concatenate) {
-            try {
-                destImage[0].importData(z*sliceSize, sourceBuffer, false);
-            } catch (IOException error) {
-                MipavUtil.displayError("" +
-                        "AlgorithmHaralickTexture: IOException on destImage[0].importData(0, sourceBuffer, true)");
-               setCompleted(false);
+        /** Sum of the squared counts. */
+        private long sumOfSquares;
 
-               return;
-           }
-            for (i = 0; i < resultNumber; i++) {
-                
-                try {
-                    destImage[0].importData((i+1)*zDim*sliceSize + z*sliceSize, resultBuffer[i], false);
-                } catch (IOException error) {
-                    MipavUtil.displayError("AlgorithmHaralickTexture: IOException on destImage[" + i +
-                                           "].importData(0,resultBuffer[" + i + "],false)");
-                    setCompleted(false);
-    
-                    return;
-                }
-            } // for (i = 0; i < resultNumber; i++)
-        } // if (concatenate)
-        else { // !concatenate
-            for (i = 0; i < resultNumber; i++) {
-    
-                try {
-                    destImage[i].importData(z*sliceSize, resultBuffer[i], false);
-                } catch (IOException error) {
-                    MipavUtil.displayError("AlgorithmHaralickTexture: IOException on destImage[" + i +
-                                           "].importData(0,resultBuffer[" + i + "],false)");
-                    setCompleted(false);
-    
-                    return;
-                }
-            } // for (i = 0; i < resultNumber; i++)
-        } // else !concatenate
-        } // for (z = 0; z < zDim; z++)
-        
-        if (concatenate) {
-            destImage[0].calcMinMax();
+        /** Sum of count * log(count). */
+        private double sumCountLogCount;
+
+        /** The largest count. */
+        private int maxCount;
+
+        /**
+         * Creates an empty matrix.
+         *
+         * @param  levels         number of grey levels
+         * @param  countLogCount  count * log(count) for every possible count
+         */
+        public CooccurrenceMatrix(int levels, double[] countLogCount) {
+            this.levels = levels;
+            this.countLogCount = countLogCount;
+            counts = new int[levels * levels];
+            diffCounts = new int[levels];
+            sumCounts = new int[(2 * levels) - 1];
+            marginal = new int[levels];
+            countFrequency = new int[countLogCount.length];
+            clear();
         }
-        else {
-            for (i = 0; i < resultNumber; i++) {
-                destImage[i].calcMinMax();
-            }
+
+        /**
+         * Removes all the counts.
+         */
+        public void clear() {
+            Arrays.fill(counts, 0);
+            Arrays.fill(diffCounts, 0);
+            Arrays.fill(sumCounts, 0);
+            Arrays.fill(marginal, 0);
+            Arrays.fill(countFrequency, 0);
+            countFrequency[0] = counts.length;
+            total = 0;
+            sumOfSquares = 0;
+            sumCountLogCount = 0.0;
+            maxCount = 0;
         }
 
-        setCompleted(true);
+        /**
+         * Adds or removes a pair of grey levels, counting it in both orders.
+         *
+         * @param  a      first grey level
+         * @param  b      second grey level
+         * @param  delta  1 to add the pair, -1 to remove it
+         */
+        public void add(int a, int b, int delta) {
+            addCell((a * levels) + b, delta);
+            addCell((b * levels) + a, delta);
+            diffCounts[Math.abs(a - b)] += 2 * delta;
+            sumCounts[a + b] += 2 * delta;
+            marginal[a] += delta;
+            marginal[b] += delta;
+            total += 2 * delta;
+        }
 
-        return;
+        /**
+         * Changes the count of one cell by 1.
+         *
+         * @param  cell   the cell
+         * @param  delta  1 or -1
+         */
+        private void addCell(int cell, int delta) {
+            int count = counts[cell];
+            int newCount = count + delta;
+
+            counts[cell] = newCount;
+            sumOfSquares += ((long) newCount * newCount) - ((long) count * count);
+            sumCountLogCount += countLogCount[newCount] - countLogCount[count];
+            countFrequency[count]--;
+            countFrequency[newCount]++;
+
+            if (newCount > maxCount) {
+                maxCount = newCount;
+            } else if ((count == maxCount) && (countFrequency[count] == 0)) {
+                maxCount = newCount;
+            }
+        }
     }
-
 }
@@ -4,9 +4,13 @@ package gov.nih.mipav.model.algorithms.filters;
 import gov.nih.mipav.model.algorithms.*;
 import gov.nih.mipav.model.structures.*;
 
+import gov.nih.mipav.util.ThreadUtil;
+
 import java.io.*;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -42,6 +46,10 @@ import java.util.*;
  * See "Suppression of Noise in Historical Photographs Using a Fuzzy Truncated-Median Filter" by Michael Wirth and
  * Bruce Bobier, Image Analysis and Recognition, Lecture Notes in Computer Science, Volume 4633, 2007, pp. 1206-1216.
  * 
+ * The standard filter of black and white images does not sort the kernel values of every pixel. The rows are divided
+ * among threads and along a row the kernel values are kept in a histogram, or in a sorted array for data that is not
+ * integer valued, which is updated with the values leaving and entering the kernel as it moves one pixel.
+ * 
  *
  * @version  1.0; 17 February 2000
  * @author   David Parsons (parsonsd)
@@ -89,6 +97,9 @@ public class AlgorithmMedian extends AlgorithmBase {
     
     public static final int SYMMETRICAL_TRIANGULAR_FUZZY_TRUNCATED_MEDIAN = 4;
 
+    /** Largest range of integer values that the standard filter counts in a histogram. */
+    private static final int HISTOGRAM_MAX_BINS = 1 << 16;
+
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     /** Border buffer number of slices. */
@@ -2921,8 +2932,21 @@ public class AlgorithmMedian extends AlgorithmBase {
         float[] maskedList;
         
         float average; // arithmetic mean
-        float sigma; // standard deviation
-        int kCenter = maskCenter[0]; // to find the middle pixel of the kernel-mask
+
+        if (filterType == STANDARD) {
+
+            for (pass = 0; (pass < iterations) && !threadStopped; pass++) {
+                standardFilterRows(srcBdrBuffer, destBuffer, srcBdrBufferOffset, destBufferStartingPoint, 1, true,
+                                   showProgress, pass);
+
+                if (pass < (iterations - 1)) {
+                    copyDestBufferToBdrBuffer(destBuffer, srcBdrBuffer, destBufferStartingPoint, srcBdrBufferOffset,
+                                              1);
+                }
+            }
+
+            return;
+        }
         
         for (pass = 0; (pass < iterations) && !threadStopped; pass++) {
             destBufferIdx = destBufferStartingPoint;
@@ -3039,28 +3063,6 @@ public class AlgorithmMedian extends AlgorithmBase {
                                 } // else wmm != 0
                             } // else filterType == SYMMETRICAL_TRIANGULAR_FUZZY_TRUNCATED_MEDIAN
                         } // else if ((filterType == TRUNCATED_MEDIAN) || (filterType == SYMMETRICAL_TRIANGULAR_FUZZY_TRUNCATED_MEDIAN))
-	                    else { // filterType == STANDARD
-	                    	
-	                        maskedList = getBorderBufferNeighborList(0, srcBdrBufferIdx, srcBdrBuffer, true);
-	                        
-	                        //verify that this element is an outlier
-	                        if (stdDevLimit == 0.0) { // anything is an outlier
-	                        	Arrays.sort(maskedList);
-	                            destBuffer[destBufferIdx] = median(maskedList);
-	                        } else { // look for outlierness
-	                            average = mean(maskedList);
-	                            sigma = standardDeviation(maskedList, average);
-	
-	                            if ((maskedList[kCenter] > (average + (stdDevLimit * sigma))) ||
-	                                    (maskedList[kCenter] < (average - (stdDevLimit * sigma)))) {
-	                            	Arrays.sort(maskedList);
-	                                destBuffer[destBufferIdx] = median(maskedList);
-	                            } else { // if element was not an outlier, pixel is fine.
-	                                destBuffer[destBufferIdx] = srcBdrBuffer[srcBdrBufferIdx];
-	                            }
-	                        }
-	                        
-	                    } // else not adaptiveSize
 	                } else {
 	                    destBuffer[destBufferIdx] = srcBdrBuffer[srcBdrBufferIdx];
 	                }
@@ -3978,6 +3980,21 @@ public class AlgorithmMedian extends AlgorithmBase {
         int srcBdrBufferSliceLength = bdrBufferWidth * bdrBufferHeight;
         int srcBdrBufferIdx, srcBdrBufferSliceOffset;
         int destSlice, destRow, destCol, destBufferIdx;
+
+        if (filterType == STANDARD) {
+
+            for (pass = 0; (pass < iterations) && !threadStopped; pass++) {
+                standardFilterRows(srcBdrBuffer, destBuffer, srcBrdBufferKernelOffset, 0, srcBufferDepth, false, true,
+                                   pass);
+
+                if (pass < (iterations - 1)) {
+                    copyDestBufferToBdrBuffer(destBuffer, srcBdrBuffer, 0, srcBrdBufferKernelOffset, srcBufferDepth);
+                }
+            }
+
+            return;
+        }
+
         for (pass = 0; (pass < iterations) && !threadStopped; pass++) {
             destBufferIdx = 0;
 	        for (destSlice = 0; (destSlice < srcBufferDepth) && !threadStopped; destSlice++) {
@@ -4096,11 +4113,6 @@ public class AlgorithmMedian extends AlgorithmBase {
 	                                } // else wmm != 0
 	                            } // else filterType == SYMMETRICAL_TRIANGULAR_FUZZY_TRUNCATED_MEDIAN
 	                        } // else if ((filterType == TRUNCATED_MEDIAN) || (filterType == SYMMETRICAL_TRIANGULAR_FUZZY_TRUNCATED_MEDIAN))
-	                        else { // filterType == STANDARD
-	                            maskedList = getBorderBufferNeighborList(0, srcBdrBufferIdx, srcBdrBuffer, false);
-	                            Arrays.sort(maskedList);
-	                            destBuffer[destBufferIdx] = median(maskedList);
-	                        } // else not adaptiveSize
 	                    } else {
 	                        destBuffer[destBufferIdx] = srcBdrBuffer[srcBdrBufferIdx];
 	                    }
@@ -4120,4 +4132,449 @@ public class AlgorithmMedian extends AlgorithmBase {
         	}
         }
     }
+
+    /**
+     * Performs one pass of the standard median filter on the rows of a border buffer. The rows are divided among
+     * threads. Along a row the kernel values are kept in a rank window, so that moving the kernel one pixel only
+     * removes the values leaving the kernel and adds the values entering it. Integer valued data is counted in a
+     * histogram, other data is kept in a sorted array.
+     *
+     * @param  srcBdrBuffer        float[] Source border buffer.
+     * @param  destBuffer          float[] Destination buffer.
+     * @param  srcBdrBufferOffset  Index in the border buffer of the first pixel filtered.
+     * @param  destBufferOffset    Index in the destination buffer of the first pixel filtered.
+     * @param  numSlices           Number of slices filtered.
+     * @param  is2D                True to use the 2D kernel of slice filtering.
+     * @param  showProgress        True to update the progress bar.
+     * @param  pass                The current iteration.
+     */
+    private void standardFilterRows(final float[] srcBdrBuffer, final float[] destBuffer,
+                                    final int srcBdrBufferOffset, final int destBufferOffset, final int numSlices,
+                                    final boolean is2D, final boolean showProgress, final int pass) {
+        int n = halfK[0];
+        int bdrSliceLength = bdrBufferWidth * bdrBufferHeight;
+        int zRange = is2D ? 0 : n;
+        int dx, dy, dz;
+        int count = 0;
+        int nEntering = 0;
+        int nLeaving = 0;
+
+        // kernel elements in the order of getBorderBufferNeighborList
+        final int[] offsets = new int[kernelMask[0].length];
+        final int[] entering = new int[offsets.length];
+        final int[] leaving = new int[offsets.length];
+
+        for (dz = -zRange; dz <= zRange; dz++) {
+
+            for (dy = -n; dy <= n; dy++) {
+
+                for (dx = -n; dx <= n; dx++) {
+
+                    if (!inKernel(dx, dy, dz, is2D)) {
+                        continue;
+                    }
+
+                    offsets[count++] = dx + (dy * bdrBufferWidth) + (dz * bdrSliceLength);
+
+                    // elements that the previous kernel position did not cover
+                    if (!inKernel(dx + 1, dy, dz, is2D)) {
+                        entering[nEntering++] = dx + (dy * bdrBufferWidth) + (dz * bdrSliceLength);
+                    }
+
+                    // elements of the previous kernel position that are not covered anymore
+                    if (!inKernel(dx - 1, dy, dz, is2D)) {
+                        leaving[nLeaving++] = (dx - 1) + (dy * bdrBufferWidth) + (dz * bdrSliceLength);
+                    }
+                }
+            }
+        }
+
+        final int numEntering = nEntering;
+        final int numLeaving = nLeaving;
+
+        // the values of the buffer region read decide between a histogram and a sorted array
+        int first = srcBdrBufferOffset - (zRange * bdrSliceLength) - (n * bdrBufferWidth) - n;
+        int last = first + ((numSlices - 1 + (2 * zRange)) * bdrSliceLength) +
+                   ((srcBufferHeight - 1 + (2 * n)) * bdrBufferWidth) + srcBufferWidth - 1 + (2 * n);
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        boolean integers = true;
+
+        for (int i = first; (i <= last) && integers; i++) {
+            float value = srcBdrBuffer[i];
+
+            if (value != Math.rint(value)) {
+                integers = false;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+
+        final boolean useHistogram = integers && ((max - min) < HISTOGRAM_MAX_BINS);
+        final int histogramMin = (int) min;
+        final int histogramBins = (int) (max - min) + 1;
+        final int totalRows = numSlices * srcBufferHeight;
+        final AtomicInteger rowsDone = new AtomicInteger();
+        final boolean testOutliers = is2D && (stdDevLimit != 0.0);
+        final int testCenter = maskCenter[0];
+        int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, totalRows)) : 1;
+        final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+
+        for (int t = 0; t < nTasks; t++) {
+            final int firstRow = (int) ((long) totalRows * t / nTasks);
+            final int lastRow = (int) ((long) totalRows * (t + 1) / nTasks);
+            Runnable task = new Runnable() {
+                public void run() {
+
+                    try {
+                        RankWindow window = useHistogram ? new HistogramWindow(histogramMin, histogramBins)
+                                                         : new SortedWindow(offsets.length);
+                        float[] list = testOutliers ? new float[offsets.length] : null;
+                        float average;
+                        float sigma;
+                        int row, col, i;
+                        int srcBdrBufferIdx, destBufferIdx;
+
+                        for (row = firstRow; (row < lastRow) && !threadStopped; row++) {
+                            srcBdrBufferIdx = srcBdrBufferOffset + ((row / srcBufferHeight) * bdrBufferWidth *
+                                                                        bdrBufferHeight) +
+                                              ((row % srcBufferHeight) * bdrBufferWidth);
+                            destBufferIdx = destBufferOffset + (row * srcBufferWidth);
+                            window.clear();
+
+                            for (i = 0; i < offsets.length; i++) {
+                                window.add(srcBdrBuffer[srcBdrBufferIdx + offsets[i]]);
+                            }
+
+                            for (col = 0; col < srcBufferWidth; col++, srcBdrBufferIdx++, destBufferIdx++) {
+
+                                if (col > 0) {
+
+                                    for (i = 0; i < numLeaving; i++) {
+                                        window.remove(srcBdrBuffer[srcBdrBufferIdx + leaving[i]]);
+                                    }
+
+                                    for (i = 0; i < numEntering; i++) {
+                                        window.add(srcBdrBuffer[srcBdrBufferIdx + entering[i]]);
+                                    }
+                                }
+
+                                if (!entireImage && !mask.get(destBufferIdx)) {
+                                    destBuffer[destBufferIdx] = srcBdrBuffer[srcBdrBufferIdx];
+                                } else if (!testOutliers) {
+                                    destBuffer[destBufferIdx] = window.median();
+                                } else {
+
+                                    // verify that this element is an outlier
+                                    for (i = 0; i < offsets.length; i++) {
+                                        list[i] = srcBdrBuffer[srcBdrBufferIdx + offsets[i]];
+                                    }
+
+                                    average = mean(list);
+                                    sigma = standardDeviation(list, average);
+
+                                    if ((list[testCenter] > (average + (stdDevLimit * sigma))) ||
+                                            (list[testCenter] < (average - (stdDevLimit * sigma)))) {
+                                        destBuffer[destBufferIdx] = window.median();
+                                    } else { // if element was not an outlier, pixel is fine.
+                                        destBuffer[destBufferIdx] = srcBdrBuffer[srcBdrBufferIdx];
+                                    }
+                                }
+                            }
+
+                            if (showProgress) {
+                                fireProgressStateChanged(10 + ((80 * pass) / iterations) +
+                                                         (int) ((80L * rowsDone.incrementAndGet()) /
+                                                                    (iterations * totalRows)));
+                            }
+                        }
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            };
+
+            if (nTasks == 1) {
+                task.run();
+            } else {
+                ThreadUtil.mipavThreadPool.execute(task);
+            }
+        }
+
+        try {
+            doneSignal.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tells whether an element of the kernel is on.
+     *
+     * @param   dx    Column relative to the kernel center.
+     * @param   dy    Row relative to the kernel center.
+     * @param   dz    Slice relative to the kernel center, 0 for a 2D kernel.
+     * @param   is2D  True for the 2D kernel of slice filtering.
+     *
+     * @return  True if the element is inside the kernel and on.
+     */
+    private boolean inKernel(int dx, int dy, int dz, boolean is2D) {
+        int n = halfK[0];
+        int size = kernelSize[0];
+
+        if ((Math.abs(dx) > n) || (Math.abs(dy) > n) || (Math.abs(dz) > n)) {
+            return false;
+        }
+
+        if (is2D) {
+            return kernel[0][kernelCenter[0] + dx + (dy * size)] != 0;
+        }
+
+        return kernel[0][kernelCenter[0] + dx + (dy * size) + (dz * size * size)] != 0;
+    }
+
+    /**
+     * Copies the result of a pass back into the border buffer for the next pass.
+     *
+     * @param  destBuffer          float[] Destination buffer.
+     * @param  srcBdrBuffer        float[] Source border buffer.
+     * @param  destBufferOffset    Index in the destination buffer of the first pixel filtered.
+     * @param  srcBdrBufferOffset  Index in the border buffer of the first pixel filtered.
+     * @param  numSlices           Number of slices filtered.
+     */
+    private void copyDestBufferToBdrBuffer(float[] destBuffer, float[] srcBdrBuffer, int destBufferOffset,
+                                           int srcBdrBufferOffset, int numSlices) {
+        int x, y, z;
+
+        for (z = 0; z < numSlices; z++) {
+
+            for (y = 0; y < srcBufferHeight; y++) {
+
+                for (x = 0; x < srcBufferWidth; x++) {
+                    srcBdrBuffer[srcBdrBufferOffset + x + (bdrBufferWidth * y) +
+                                 (bdrBufferWidth * bdrBufferHeight * z)] = destBuffer[destBufferOffset + x +
+                                                                                      (srcBufferWidth * y) +
+                                                                                      (srcBufferWidth *
+                                                                                           srcBufferHeight * z)];
+                }
+            }
+        }
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * The values under the kernel, kept so that any rank can be found without sorting.
+     */
+    private abstract static class RankWindow {
+
+        /** Number of values in the window. */
+        protected int count = 0;
+
+        /**
+         * Removes all the values.
+         */
+        public abstract void clear();
+
+        /**
+         * Adds a value.
+         *
+         * @param  value  the value
+         */
+        public abstract void add(float value);
+
+        /**
+         * Removes a value that was added before.
+         *
+         * @param  value  the value
+         */
+        public abstract void remove(float value);
+
+        /**
+         * Returns the value of a rank.
+         *
+         * @param   rank  the rank, 0 for the smallest value
+         *
+         * @return  the value
+         */
+        public abstract float get(int rank);
+
+        /**
+         * Returns the median, the mean of the 2 middle values for an even number of values.
+         *
+         * @return  the median
+         */
+        public float median() {
+
+            if ((count % 2) == 1) {
+                return get(count / 2);
+            }
+
+            return (get((count / 2) - 1) + get(count / 2)) / 2;
+        }
+    }
+
+    /**
+     * Rank window for integer values, counted in a histogram of single values and a coarse histogram of groups of
+     * values, so a rank is found in time proportional to the square root of the range of the values.
+     */
+    private static class HistogramWindow extends RankWindow {
+
+        /** Smallest value that can be counted. */
+        private final int min;
+
+        /** Shift from a value bin to its group. */
+        private final int shift;
+
+        /** Counts of the groups of values. */
+        private final int[] coarse;
+
+        /** Counts of the values. */
+        private final int[] fine;
+
+        /**
+         * Creates an empty window.
+         *
+         * @param  min   smallest value that can be counted
+         * @param  bins  number of values that can be counted
+         */
+        public HistogramWindow(int min, int bins) {
+            int bits = 32 - Integer.numberOfLeadingZeros(bins - 1);
+
+            this.min = min;
+            shift = (bits + 1) / 2;
+            fine = new int[bins];
+            coarse = new int[((bins - 1) >> shift) + 1];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void clear() {
+            Arrays.fill(coarse, 0);
+            Arrays.fill(fine, 0);
+            count = 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void add(float value) {
+            int bin = (int) value - min;
+
+            fine[bin]++;
+            coarse[bin >> shift]++;
+            count++;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void remove(float value) {
+            int bin = (int) value - min;
+
+            fine[bin]--;
+            coarse[bin >> shift]--;
+            count--;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public float get(int rank) {
+            int group = 0;
+            int bin;
+            int below = 0;
+
+            while ((below + coarse[group]) <= rank) {
+                below += coarse[group++];
+            }
+
+            bin = group << shift;
+
+            while ((below + fine[bin]) <= rank) {
+                below += fine[bin++];
+            }
+
+            return bin + min;
+        }
+    }
+
+    /**
+     * Rank window for any values, kept in a sorted array.
+     */
+    private static class SortedWindow extends RankWindow {
+
+        /** The values in ascending order, as Arrays.sort orders them. */
+        private final float[] values;
+
+        /**
+         * Creates an empty window.
+         *
+         * @param  capacity  largest number of values
+         */
+        public SortedWindow(int capacity) {
+            values = new float[capacity];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void clear() {
+            count = 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void add(float value) {
+            int index = search(value);
+
+            System.arraycopy(values, index, values, index + 1, count - index);
+            values[index] = value;
+            count++;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void remove(float value) {
+            int index = search(value);
+
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            count--;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public float get(int rank) {
+            return values[rank];
+        }
+
+        /**
+         * Finds the first position whose value is not smaller than a value.
+         *
+         * @param   value  the value
+         *
+         * @return  the position
+         */
+        private int search(float value) {
+            int low = 0;
+            int high = count;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+
+                if (Float.compare(values[mid], value) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low;
+        }
+    }
 }
@@ -8,10 +8,13 @@ import gov.nih.mipav.model.structures.BSplineKernelFunction;
 import gov.nih.mipav.model.structures.CoxDeBoorBSplineKernelFunction;
 import gov.nih.mipav.model.structures.ModelImage;
 import gov.nih.mipav.model.structures.ModelStorageBase;
+import gov.nih.mipav.util.ThreadUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
 
 import WildMagic.LibFoundation.Mathematics.Vector3d;
 import WildMagic.LibFoundation.Mathematics.Vector4d;
@@ -117,6 +120,12 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 	
     private int latticeExtentsLength = 1;
 	
+	/** Factor by which the image is subsampled in each spatial dimension before fitting the bias field. */
+	private int shrinkFactor = 1;
+	
+	/** Extents of the image on which the bias field is fitted. */
+	private int fittingExtents[];
+	
 	private boolean selfTest = false;
 	
 	private boolean CoxDeBoorBSplineKernelFunctionTest = false;
@@ -170,6 +179,18 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 	// ~ Methods
 	// --------------------------------------------------------------------------------------------------------
 
+	/**
+	 * Sets the factor by which the image is subsampled in each spatial dimension before the bias field is fitted.
+	 * The fitted field is then evaluated at every voxel of the full resolution image.  Dimensions that would have
+	 * fewer than 2 voxels after subsampling are not subsampled.
+	 * 
+	 * @param shrinkFactor
+	 *            the subsampling factor, 1 for no subsampling
+	 */
+	public void setShrinkFactor(int shrinkFactor) {
+		this.shrinkFactor = Math.max(1, shrinkFactor);
+	}
+
 	/**
 	 * Prepares this class for destruction.
 	 */
@@ -188,6 +209,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		maskIndex = null;
 		maskLargest = null;
 		maskExtents = null;
+		fittingExtents = null;
 		super.finalize();
 	}
 
@@ -222,6 +244,15 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		double currentConvergenceMeasurement = Double.MAX_VALUE;
 		double dirLength;
 		double direction[][];
+		int fullLength;
+		int factor[];
+		int offset[];
+		double fullBuffer[];
+		BitSet fullMask;
+		double fullConfidence[];
+		float fullOrigin[];
+		float fullResolutions[];
+		long levelStartTime;
 
 		if (srcImage == null) {
 			displayError("Source Image is null");
@@ -572,8 +603,6 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 			xyzSize *= srcImage.getExtents()[2];
 		}
 		buffer = new double[length];
-		logFilter = new double[length];
-		logUncorrected = new double[length];
 
 		try {
 			srcImage.exportData(0, length, buffer); // locks and releases lock
@@ -608,6 +637,74 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 			}
 		}
 
+		// Fit the bias field on an image subsampled by shrinkFactor in each spatial dimension,
+		// taking the voxel nearest the center of each block of voxels
+		fullLength = length;
+		fullBuffer = buffer;
+		fullMask = mask;
+		fullConfidence = confidence;
+		fullOrigin = origin;
+		fullResolutions = resolutions;
+		fittingExtents = srcImage.getExtents().clone();
+		factor = new int[nDims];
+		offset = new int[nDims];
+		for (i = 0; i < nDims; i++) {
+			factor[i] = 1;
+			if ((i < 3) && (fittingExtents[i] / shrinkFactor >= 2)) {
+				factor[i] = shrinkFactor;
+			}
+			offset[i] = (factor[i] - 1) / 2;
+			fittingExtents[i] = fittingExtents[i] / factor[i];
+		}
+		if (shrinkFactor > 1) {
+			origin = new float[nDims];
+			resolutions = new float[nDims];
+			length = 1;
+			for (i = 0; i < nDims; i++) {
+				origin[i] = fullOrigin[i] + fullResolutions[i] * offset[i];
+				resolutions[i] = fullResolutions[i] * factor[i];
+				length *= fittingExtents[i];
+			}
+			xDim = fittingExtents[0];
+			sliceSize = fittingExtents[0] * fittingExtents[1];
+			xyzSize = sliceSize;
+			if (nDims > 2) {
+				xyzSize *= fittingExtents[2];
+			}
+			int fullXDim = srcImage.getExtents()[0];
+			int fullSliceSize = fullXDim * srcImage.getExtents()[1];
+			int fullXYZSize = fullSliceSize;
+			if (nDims > 2) {
+				fullXYZSize *= srcImage.getExtents()[2];
+			}
+			buffer = new double[length];
+			if (fullMask != null) {
+				mask = new BitSet(length);
+			}
+			if (fullConfidence != null) {
+				confidence = new double[length];
+			}
+			for (i = 0; i < length; i++) {
+				x = i % xDim;
+				y = (i % sliceSize) / xDim;
+				z = (i % xyzSize) / sliceSize;
+				t = i / xyzSize;
+				int fullIndex = (x * factor[0] + offset[0]) + (y * factor[1] + offset[1]) * fullXDim + t * fullXYZSize;
+				if (nDims > 2) {
+					fullIndex += (z * factor[2] + offset[2]) * fullSliceSize;
+				}
+				buffer[i] = fullBuffer[fullIndex];
+				if (fullMask != null) {
+					mask.set(i, fullMask.get(fullIndex));
+				}
+				if (fullConfidence != null) {
+					confidence[i] = fullConfidence[fullIndex];
+				}
+			}
+		} // if (shrinkFactor > 1)
+		logFilter = new double[length];
+		logUncorrected = new double[length];
+
 		smallestX = Integer.MAX_VALUE;
 		smallestY = Integer.MAX_VALUE;
 		smallestZ = Integer.MAX_VALUE;
@@ -691,8 +788,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		// Calculate the log of the input image
 		// Set NaNs, infinities, and negatives to zero
 		for (i = 0; i < length; i++) {
-			if (entireImage || (mask.get(i) && (confidence == null))
-					|| ((confidence != null) && (confidence[i] > 0.0))) {
+			if (isFitted(i)) {
 				logFilter[i] = Math.log(buffer[i]);
 				if ((Double.isNaN(logFilter[i]))
 						|| (Double.isInfinite(logFilter[i]))
@@ -722,6 +818,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		}
 		for (currentLevel = 0; currentLevel < maximumNumberOfLevels; currentLevel++) {
 			elapsedIterations = 0;
+			levelStartTime = System.currentTimeMillis();
 			
 			currentConvergenceMeasurement = Double.MAX_VALUE;
 			while ((elapsedIterations++ < maximumNumberOfIterations[currentLevel])
@@ -730,8 +827,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 				// Sharpen the current estimate of the uncorrected image
 				logSharpened = sharpen(logUncorrected);
 				for (i = 0; i < length; i++) {
-					if (entireImage || (mask.get(i) && (confidence == null))
-							|| ((confidence != null) && (confidence[i] > 0.0))) {
+					if (isFitted(i)) {
 						subtracter1[i] = logUncorrected[i] - logSharpened[i];
 					}
 				}
@@ -745,8 +841,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 						Preferences.DEBUG_ALGORITHM);
 				logBiasField = newLogBiasField;
 				for (i = 0; i < length; i++) {
-					if (entireImage || (mask.get(i) && (confidence == null))
-							|| ((confidence != null) && (confidence[i] > 0.0))) {
+					if (isFitted(i)) {
 						logUncorrected[i] = logFilter[i] - logBiasField[i];
 					}
 				}
@@ -757,7 +852,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		    reconstructer.setOrigin(origin);
 		    reconstructer.setResolutions(resolutions);
 		    reconstructer.setDirection(direction);
-		    reconstructer.setExtents(srcImage.getExtents());
+		    reconstructer.setExtents(fittingExtents);
 		    reconstructer.generateData();
 		    int numberOfLevels[] = new int[nDims];
 		    for (i = 0; i < nDims; i++) {
@@ -771,13 +866,43 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		    logBiasFieldControlPointLattice = reconstructer.refineControlPointLattice(numberOfLevels);
 		    reconstructer.finalize();
 		    reconstructer = null;
+		    Preferences.debug("N4 level " + currentLevel + " took " + (elapsedIterations - 1) + " iterations and " +
+		    		(System.currentTimeMillis() - levelStartTime) + " ms\n", Preferences.DEBUG_ALGORITHM);
 		} // for (currentLevel = 0; currentLevel < maximumNumberOfLevels;
 			// currentLevel++)
 		
+		if (shrinkFactor > 1) {
+			// Evaluate the fitted bias field at every voxel of the full resolution image.
+			// The parametric domain of the lattice runs from the first to the last subsampled voxel.
+			double domainStart[] = new double[nDims];
+			double domainLength[] = new double[nDims];
+			for (i = 0; i < nDims; i++) {
+				domainStart[i] = offset[i];
+				domainLength[i] = factor[i] * (fittingExtents[i] - 1.0);
+			}
+			AlgorithmBSplineControlPointImageFilter reconstructer = new AlgorithmBSplineControlPointImageFilter(nDims);
+			reconstructer.setInput(logBiasFieldControlPointLattice);
+			reconstructer.setOrigin(fullOrigin);
+			reconstructer.setResolutions(fullResolutions);
+			reconstructer.setDirection(direction);
+			reconstructer.setExtents(srcImage.getExtents());
+			reconstructer.setParametricDomain(domainStart, domainLength);
+			reconstructer.generateData();
+			logBiasField = reconstructer.getOutputBuffer();
+			reconstructer.finalize();
+			reconstructer = null;
+			
+			length = fullLength;
+			buffer = fullBuffer;
+			mask = fullMask;
+			confidence = fullConfidence;
+			origin = fullOrigin;
+			resolutions = fullResolutions;
+		} // if (shrinkFactor > 1)
+		
 		double expFilter[] = new double[logBiasField.length];
 		for (i = 0; i < expFilter.length; i++) {
-			if (entireImage || (mask.get(i) && (confidence == null))
-					|| ((confidence != null) && (confidence[i] > 0.0))) {
+			if (isFitted(i)) {
 			    expFilter[i] = Math.exp(logBiasField[i]);
 			}
 		}
@@ -785,8 +910,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		// Divide the input image by the bias field to get the final image
 		double outputBuffer[] = new double[buffer.length];
 		for (i = 0; i < buffer.length; i++) {
-			if (entireImage || (mask.get(i) && (confidence == null))
-					|| ((confidence != null) && (confidence[i] > 0.0))) {
+			if (isFitted(i)) {
 			outputBuffer[i] = buffer[i]/expFilter[i];
 			}
 		}
@@ -827,21 +951,17 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		return;
 	}
 
-	private double[] sharpen(double[] unsharpened) {
-		double sharpened[] = new double[unsharpened.length];
+	private double[] sharpen(final double[] unsharpened) {
+		final double sharpened[] = new double[unsharpened.length];
 		// Build the histogram for the uncorrected image.
 		// Note that variables in real space are denoted by a single
 		// upper case letter whereas their frequency counterparts are
 		// indicated by a trailing lower case 'f'.
 		double binMaximum = -Double.MAX_VALUE;
 		double binMinimum = Double.MAX_VALUE;
-		double pixel;
 		int i;
 		double histogramSlope;
-		double H[] = new double[numberOfHistogramBins];
-		double cidx;
-		int idx;
-		double offset;
+		double H[];
 		double exponent;
 		int paddedHistogramSize;
 		int histogramOffset;
@@ -870,44 +990,70 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		double denominatorR[];
 		double denominatorI[];
 		double E[];
-		double correctedPixel;
 
-		for (i = 0; i < length; i++) {
-			if (entireImage || (mask.get(i) && (confidence == null))
-					|| ((confidence != null) && (confidence[i] > 0.0))) {
-				pixel = unsharpened[i];
-				if (pixel > binMaximum) {
-					binMaximum = pixel;
-				}
-				if (pixel < binMinimum) {
-					binMinimum = pixel;
-				}
-			} // if (entireImage || mask.get(i) || ((confidence != null) &&
-				// (confidence[i] > 0.0))) {
-		} // for (i = 0; i < length; i++)
+		// Each task finds the range and builds the histogram of its part of the image.
+		// The histograms are added up in task order.
+		final int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, length / 10000)) : 1;
+		final double taskMinimum[] = new double[nTasks];
+		final double taskMaximum[] = new double[nTasks];
+		final double taskH[][] = new double[nTasks][];
+		runTasks(nTasks, new RangeTask() {
+			public void run(int task, int start, int end) {
+				double minimum = Double.MAX_VALUE;
+				double maximum = -Double.MAX_VALUE;
+				for (int i = start; i < end; i++) {
+					if (isFitted(i)) {
+						double pixel = unsharpened[i];
+						if (pixel > maximum) {
+							maximum = pixel;
+						}
+						if (pixel < minimum) {
+							minimum = pixel;
+						}
+					} // if (isFitted(i))
+				} // for (int i = start; i < end; i++)
+				taskMinimum[task] = minimum;
+				taskMaximum[task] = maximum;
+			}
+		});
+		for (i = 0; i < nTasks; i++) {
+			binMinimum = Math.min(binMinimum, taskMinimum[i]);
+			binMaximum = Math.max(binMaximum, taskMaximum[i]);
+		}
 
 		histogramSlope = (binMaximum - binMinimum)
 				/ (double) (numberOfHistogramBins - 1);
+		final double histogramMinimum = binMinimum;
+		final double histogramBinWidth = histogramSlope;
 		// Create the intensity profile (within the masked region, if
 		// applicable)
 		// using a triangular parzen windowing scheme
-		for (i = 0; i < length; i++) {
-			if (entireImage || (mask.get(i) && (confidence == null))
-					|| ((confidence != null) && (confidence[i] > 0.0))) {
-				pixel = unsharpened[i];
-				cidx = (pixel - binMinimum) / histogramSlope;
-				idx = (int) Math.floor(cidx);
-				offset = cidx - idx;
-
-				if (offset == 0.0) {
-					H[idx] += 1.0;
-				} else if (idx < numberOfHistogramBins - 1) {
-					H[idx] += 1.0 - offset;
-					H[idx + 1] += offset;
-				}
-			} // if (entireImage || mask.get(i) || ((confidence != null) &&
-				// (confidence[i] > 0.0)))
-		} // for (i = 0; i < length; i++)
+		runTasks(nTasks, new RangeTask() {
+			public void run(int task, int start, int end) {
+				double H[] = new double[numberOfHistogramBins];
+				for (int i = start; i < end; i++) {
+					if (isFitted(i)) {
+						double cidx = (unsharpened[i] - histogramMinimum) / histogramBinWidth;
+						int idx = (int) Math.floor(cidx);
+						double offset = cidx - idx;
+
+						if (offset == 0.0) {
+							H[idx] += 1.0;
+						} else if (idx < numberOfHistogramBins - 1) {
+							H[idx] += 1.0 - offset;
+							H[idx + 1] += offset;
+						}
+					} // if (isFitted(i))
+				} // for (int i = start; i < end; i++)
+				taskH[task] = H;
+			}
+		});
+		H = taskH[0];
+		for (i = 1; i < nTasks; i++) {
+			for (n = 0; n < numberOfHistogramBins; n++) {
+				H[n] += taskH[i][n];
+			}
+		}
 
 		// Determine information about the intensity histogram and zero-pad
 		// histogram to a power of 2.
@@ -1050,24 +1196,66 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		}
 
 		// Sharpen the image with the new mapping, E(u|v)
-		for (i = 0; i < length; i++) {
-			if (entireImage || (mask.get(i) && (confidence == null))
-					|| ((confidence != null) && (confidence[i] > 0.0))) {
-				cidx = (unsharpened[i] - binMinimum) / histogramSlope;
-				idx = (int) Math.floor(cidx);
-
-				if (idx < E.length - 1) {
-					correctedPixel = E[idx] + (E[idx + 1] - E[idx])
-							* (cidx - idx);
-				} else {
-					correctedPixel = E[E.length - 1];
+		final double mapping[] = E;
+		runTasks(nTasks, new RangeTask() {
+			public void run(int task, int start, int end) {
+				for (int i = start; i < end; i++) {
+					if (isFitted(i)) {
+						double cidx = (unsharpened[i] - histogramMinimum) / histogramBinWidth;
+						int idx = (int) Math.floor(cidx);
+
+						if (idx < mapping.length - 1) {
+							sharpened[i] = mapping[idx] + (mapping[idx + 1] - mapping[idx])
+									* (cidx - idx);
+						} else {
+							sharpened[i] = mapping[mapping.length - 1];
+						}
+					}
 				}
-				sharpened[i] = correctedPixel;
 			}
-		}
+		});
 		return sharpened;
 	}
 
+	/**
+	 * Splits the voxels of the image the bias field is fitted on into ranges and runs a task on each range, on the
+	 * thread pool when there is more than one task.
+	 */
+	private void runTasks(final int nTasks, final RangeTask rangeTask) {
+		final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+		for (int t = 0; t < nTasks; t++) {
+			final int task = t;
+			final int start = (int) ((long) length * t / nTasks);
+			final int end = (int) ((long) length * (t + 1) / nTasks);
+			Runnable runnable = new Runnable() {
+				public void run() {
+					try {
+						rangeTask.run(task, start, end);
+					} finally {
+						doneSignal.countDown();
+					}
+				}
+			};
+			if (nTasks == 1) {
+				runnable.run();
+			} else {
+				ThreadUtil.mipavThreadPool.execute(runnable);
+			}
+		}
+		try {
+			doneSignal.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Work on a range of voxels.
+	 */
+	private interface RangeTask {
+		void run(int task, int start, int end);
+	}
+
 	private double[] updateBiasFieldEstimate(double[] fieldEstimate) {
     	double smoothField[] = new double[fieldEstimate.length];
     	double maxAbsValue;
@@ -1078,19 +1266,19 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
     	double pixel;
     	double direction[][] = new double[nDims][nDims];
     	double dirLength;
-    	Vector<Vector4d> pointLocation = new Vector<Vector4d>();
-    	Vector<Double> pointData = new Vector<Double>();
+    	double pointLocation[];
+    	double pointData[];
+    	int numberOfPoints;
     	int index;
     	int x;
     	int y;
     	int z;
     	int t;
-    	Vector4d point;
     	double confidenceWeight;
     	double sigmoidWeight;
     	double alpha;
     	double beta;
-    	Vector<Double> weights = new Vector<Double>();
+    	double weights[];
     	AlgorithmBSplineScatteredDataPointSetToImageFilter bspliner;
     	// Use maskOrigin for parametricOrigin
     	// Calculate min/max for sigmoid weighting.  Calculate mean for offsetting
@@ -1099,8 +1287,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
     	minAbsValue = Double.MAX_VALUE;
     	if (sigmoidNormalizedAlpha > 0.0) {
 	    	for (i = 0; i < length; i++) {
-	    		if (entireImage || (mask.get(i) && (confidence == null))
-	    				||  ((confidence != null) && (confidence[i] > 0.0))) {
+	    		if (isFitted(i)) {
 	    			pixel = Math.abs(fieldEstimate[i]);
 	    			if (pixel > maxAbsValue) {
 	    				maxAbsValue = pixel;
@@ -1108,7 +1295,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 	    			if (pixel < minAbsValue) {
 	    				minAbsValue = pixel;
 	    			}
-	    		} // if (entireImage || mask.get(i) || ((confidence != null) && (confidence[i] > 0.0)))	
+	    		} // if (isFitted(i))
 	        } // for (i = 0; i < length; i++)
     	} // if (sigmoidNormalizedAlpha > 0.0)
     	
@@ -1121,10 +1308,18 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
     	for (i = 0; i < Math.min(nDims,3); i++) {
     		direction[i][i] = 1;
     	}
+    	numberOfPoints = 0;
+    	for (i = 0; i < length; i++) {
+    		if (isFitted(i)) {
+    			numberOfPoints++;
+    		}
+    	}
+    	pointLocation = new double[numberOfPoints * nDims];
+    	pointData = new double[numberOfPoints];
+    	weights = new double[numberOfPoints];
     	index = 0;
     	for (i = 0; i < length; i++) {
-    		if (entireImage || (mask.get(i) && (confidence == null)) || 
-    				((confidence != null) && (confidence[i] > 0.0))) {
+    		if (isFitted(i)) {
     			x = i  % xDim;
     			y = (i % sliceSize) / xDim;
     			z = (i % xyzSize)/sliceSize;
@@ -1138,10 +1333,15 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
     					tComp = t*resolutions[3] + origin[3];
     				}
     			}
-    			point = new Vector4d(x*resolutions[0] + origin[0], y*resolutions[1] + origin[1], 
-    					zComp, tComp);
-    			pointData.add(index, fieldEstimate[i]);
-    			pointLocation.add(index, point);
+    			pointLocation[index * nDims] = x*resolutions[0] + origin[0];
+    			pointLocation[index * nDims + 1] = y*resolutions[1] + origin[1];
+    			if (nDims > 2) {
+    				pointLocation[index * nDims + 2] = zComp;
+    				if (nDims > 3) {
+    					pointLocation[index * nDims + 3] = tComp;
+    				}
+    			}
+    			pointData[index] = fieldEstimate[i];
     			confidenceWeight = 1.0;
     			if (confidence != null) {
     				confidenceWeight = confidence[i];
@@ -1152,7 +1352,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
     			    beta = minAbsValue + (maxAbsValue - minAbsValue) * sigmoidNormalizedBeta;
     			    sigmoidWeight = 1.0 / (1.0 + Math.exp(-(fieldEstimate[i] - beta)/alpha));
     			} // if (sigmoidNormalizedAlpha > 0.0)
-    			weights.insertElementAt(sigmoidWeight * confidenceWeight, index);
+    			weights[index] = sigmoidWeight * confidenceWeight;
     			index++;
     		}
     	}
@@ -1192,9 +1392,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
         bspliner.setNumberOfLevels(numberOfFittingLevels);
         bspliner.setSplineOrder(splineOrder);
         bspliner.setNumberOfControlPoints(numberOfControlPoints);
-        bspliner.setPointData(pointData);
-        bspliner.setPointLocation(pointLocation);
-        bspliner.setPointWeights(weights);
+        bspliner.setPoints(pointLocation, pointData, weights);
         bspliner.generateData();
         
         latticeExtentsLength = 1;
@@ -1213,7 +1411,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
         				                               bspliner.getPhiLattice().getDouble(i));
         	}
             ModelImage temp = bspliner.getPhiLattice();
-            temp.disposeLocal();
+            temp.disposeLocal(false);
             temp = null;
         }
         bspliner.finalize();
@@ -1224,7 +1422,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
         reconstructer.setOrigin(origin);
         reconstructer.setResolutions(resolutions);
         reconstructer.setDirection(direction);
-        reconstructer.setExtents(srcImage.getExtents());
+        reconstructer.setExtents(fittingExtents);
         reconstructer.generateData();
         
         smoothField = reconstructer.getOutputBuffer();
@@ -1239,8 +1437,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		int i;
 		double subtracter[] = new double[fieldEstimate1.length];
 		for (i = 0; i < length; i++) {
-			if (entireImage || (mask.get(i) && (confidence == null))
-					|| ((confidence != null) && (confidence[i] > 0.0))) {
+			if (isFitted(i)) {
 				subtracter[i] = fieldEstimate1[i] - fieldEstimate2[i];
 			}
 		}
@@ -1251,8 +1448,7 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		double N = 0.0;
 
 		for (i = 0; i < length; i++) {
-			if (entireImage || (mask.get(i) && (confidence == null))
-					|| ((confidence != null) && (confidence[i] > 0.0))) {
+			if (isFitted(i)) {
 				double pixel = Math.exp(subtracter[i]);
 				N += 1.0;
 
@@ -1267,6 +1463,14 @@ public class AlgorithmN4MRIBiasFieldCorrectionFilter extends AlgorithmBase {
 		return (sigma / mu);
 	}
 	
+	/**
+	 * Returns whether a voxel of the image the bias field is fitted on is used: every voxel when the entire image is
+	 * processed, else the voxels in the mask, or those with a positive confidence when there is a confidence image.
+	 */
+	private boolean isFitted(int i) {
+		return entireImage || (mask.get(i) && (confidence == null)) || ((confidence != null) && (confidence[i] > 0.0));
+	}
+	
 	private void selfTest() {
 	  // Create an image where the illumination doubles across x
 	  double outputBuffer[] = new double[sliceSize];
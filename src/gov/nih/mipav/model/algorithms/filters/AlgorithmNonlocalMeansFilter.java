@@ -6,7 +6,11 @@ import gov.nih.mipav.model.structures.*;
 
 import gov.nih.mipav.view.*;
 
+import gov.nih.mipav.util.ThreadUtil;
+
 import java.io.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -23,9 +27,20 @@ import java.io.*;
  Image and Video Processing, Vol. 7, Issue 6, pp. 1211-1227, 2013. (doi: 10.1007/s11760-012-0389-y)
  unbiased nonlocal means (value) = sqrt((nonlocal means (value))**2 - 2* sigma**2)
  For Rician noise standard deviation = sqrt(background mean/2)
+ 
+ The similarity window distances are not computed window by window.  For each offset of the search window, the squared
+ differences between the image and its shifted copy are summed into an integral image, from which the distance
+ between any two windows at that offset is read with a few lookups.  Each distance serves both of its voxels, and the
+ slices or slabs of the image are filtered on separate threads.  Volumes are compared with 3D windows unless
+ slice by slice filtering is selected.
  */
 public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
 
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** Largest number of elements of the integral volume of a slab. */
+    private static final int MAX_SLAB_SIZE = 1 << 22;
+
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     /** Side of the learning window of pixels which will be averaged.  Sizes generally range from about 
@@ -156,8 +171,6 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
     }
     
     private void run2D() {
-        int x;
-        int y;
         int z;
         int xDim;
         int yDim;
@@ -166,39 +179,15 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
         double input[];
         double inputOriginal[] = null;
         double inputDiff[] = null;
-        double kernel[];
         int halfSimilarity;
-        double input2[];
-        int padXDim;
-        int padYDim;
-        int d;
-        double value;
         int i;
-        int j;
-        int r;
-        int s;
-        int i1;
-        int j1;
-        double W1[];
-        double W2[];
-        double kernelSum;
-        double wmax;
-        double average;
-        double sweight;
-        int rmin;
-        int rmax;
-        int smin;
-        int smax;
         int halfSearch;
-        int k;
-        double dsum;
-        double w12;
-        double w;
         long time;
         double filterParameter;
         int extents[] = null;
         ModelImage sliceImage = null;
         double noiseStd[] = null;
+        PatchSearch search;
         
         time = System.currentTimeMillis();
         fireProgressStateChanged(0, srcImage.getImageName(), "Nonlocal means filter");
@@ -225,30 +214,6 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
         }
         halfSimilarity = (similarityWindowSide - 1)/2;
         halfSearch = (searchWindowSide - 1)/2;
-        padXDim = xDim + 2 * halfSimilarity;
-        padYDim = yDim + 2 * halfSimilarity;
-        input2 = new double[padXDim * padYDim];
-        kernel = new double[similarityWindowSide * similarityWindowSide];
-        W1 = new double[similarityWindowSide * similarityWindowSide];
-        W2 = new double[similarityWindowSide * similarityWindowSide];
-        for (d = 1; d <= halfSimilarity; d++) {
-            value = 2*d + 1;
-            value = value * value;
-            value = 1.0/value;
-            for (y = -d; y <= d; y++) {
-                for (x = -d; x <= d; x++) {
-                    kernel[halfSimilarity - x + similarityWindowSide * (halfSimilarity - y)] += value;
-                }
-            }
-        } // for (d = 1; d <= halfSimilarity; d++)
-        kernelSum = 0.0;
-        for (i = 0; i < kernel.length; i++) {
-            kernelSum += kernel[i];
-        }
-        for (i = 0; i < kernel.length; i++) {
-            kernel[i] /= kernelSum;
-        }
-        
         
         for (z = 0; z < zDim; z++) {
             try {
@@ -287,98 +252,11 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
             
             filterParameter = noiseStandardDeviation * noiseStandardDeviation;
             
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < xDim; x++) {
-                    input2[x + halfSimilarity + padXDim*(y + halfSimilarity)] = input[x + y * xDim];
-                }
-            }
-            
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left side mirror reflection
-                    input2[x + padXDim*(y + halfSimilarity)] = input[(halfSimilarity - 1 - x) + xDim * y];
-                    // right side mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * y];
-                }
-            }
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < xDim; x++) {
-                    // top side mirror reflection
-                    input2[x + halfSimilarity + padXDim * y] = input[x + xDim * (halfSimilarity - 1 - y)];
-                    // bottom side mirror reflection
-                    input2[x + halfSimilarity + padXDim * (y + yDim + halfSimilarity)] =
-                    input[x + xDim * (yDim - 1 - y)];
-                }
-            }
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left top mirror reflection
-                    input2[x + padXDim * y] = input[(halfSimilarity - 1 - x) + xDim * (halfSimilarity - 1 - y)];
-                    // left bottom mirror reflection
-                    input2[x + padXDim * (y + yDim + halfSimilarity)] = 
-                    input[(halfSimilarity - 1 - x) + xDim * (yDim - 1 - y)];
-                    // right top mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * y] =
-                    input[xDim - 1 - x + xDim * (halfSimilarity - 1 - y)];
-                    // right bottom mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + yDim + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (yDim - 1 - y)];
-                }
-            }
-            for (i = 1; i <= yDim; i++) {
-                fireProgressStateChanged(100 * (z*yDim + (i - 1)) /(yDim * zDim));
-                i1 = i + halfSimilarity;
-                rmin = Math.max(i1 - halfSearch, halfSimilarity + 1);
-                rmax = Math.min(i1 + halfSearch, yDim + halfSimilarity);
-                for (j = 1; j <= xDim; j++) {  
-                    j1 = j + halfSimilarity;
-                    for (y = 0; y < similarityWindowSide; y++) {
-                        for (x = 0; x < similarityWindowSide; x++) {
-                            W1[x + y * similarityWindowSide] = 
-                            input2[j1 - halfSimilarity - 1 + x + padXDim*(i1 - halfSimilarity - 1 + y)];
-                        }
-                    }
-                    
-                    wmax = 0.0;
-                    average = 0.0;
-                    sweight = 0.0;
-                    
-                    smin = Math.max(j1 - halfSearch, halfSimilarity + 1);
-                    smax = Math.min(j1 + halfSearch, xDim + halfSimilarity);
-                    for (r = rmin; r <= rmax; r++) {
-                        for (s = smin; s <= smax; s++) {
-                            if ((r == i1) && (s == j1)) {
-                                continue;
-                            }
-                            for (y = 0; y < similarityWindowSide; y++) {
-                                for (x = 0; x < similarityWindowSide; x++) {
-                                    W2[x + y * similarityWindowSide] = 
-                                    input2[s - halfSimilarity - 1 + x + padXDim*(r - halfSimilarity - 1 + y)];
-                                }
-                            }
-                            
-                            dsum = 0.0;
-                            for (k = 0; k < kernel.length; k++) {
-                                w12 = W1[k] - W2[k];
-                                dsum += (kernel[k] * w12 * w12);
-                            }
-                            w = Math.exp(-dsum/filterParameter);
-                            if (w > wmax) {
-                                wmax = w;
-                            }
-                            sweight = sweight + w;
-                            average = average + w * input2[s - 1 + padXDim * (r - 1)];
-                        } // for (s = smin; s <= smax; s++)
-                    } // for (r = rmin; r <= rmax; r++)
-                    average = average + wmax * input2[j1 - 1 + padXDim * (i1 - 1)];
-                    sweight = sweight + wmax;
-                    
-                    if (sweight > 0) {
-                        input[j - 1 + xDim * (i - 1)] = (float)(average / sweight);
-                    }
-                } // for (j = 1; j <= xDim; j++)
-            } // for (i = 1; i <= yDim; i++) 
+            // The slice is searched as a volume one voxel high, so that its rows are split among the threads
+            search = new PatchSearch(input, new int[] {xDim, 1, yDim}, new int[] {halfSimilarity, 0, halfSimilarity},
+                                     new int[] {halfSearch, 0, halfSearch}, false, filterParameter,
+                                     (100 * z) / zDim, (100 * (z + 1)) / zDim);
+            input = search.filter();
             
             if (doBayesShrinkThresholdComputation) {
             	for (i = 0; i < length; i++) {
@@ -482,59 +360,25 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
     }
     
     private void run2DRician() {
-        int x;
-        int y;
         int z;
         int xDim;
         int yDim;
         int zDim;
         int length;
-        float input[];
-        float output[];
-        double kernel[];
+        double input[];
+        double output[];
         int halfSimilarity;
-        double input2[];
-        double aux[];
-        int padXDim;
-        int padYDim;
-        int d;
-        double value;
-        int i;
-        int j;
-        int r;
-        int s;
-        int i1;
-        int j1;
-        double W1[];
-        double W2[];
-        double kernelSum;
-        double sweight[];
-        int rmax;
-        int smin;
-        int smax;
         int halfSearch;
-        int k;
-        double dsum;
-        double w12;
-        double w;
         long time;
         double filterParameter;
-        double s2;
-        int ym1;
-        int yp1;
-        int xm1;
-        int xp1;
-        double avConstant = 1.0/9.0;
-        int pos;
+        PatchSearch search;
         
         time = System.currentTimeMillis();
         fireProgressStateChanged(0, srcImage.getImageName(), "Nonlocal means filter");
         xDim = srcImage.getExtents()[0];
         yDim = srcImage.getExtents()[1];
         length = xDim * yDim;
-        input = new float[length];
-        output = new float[length];
-        sweight = new double[length];
+        input = new double[length];
         if (srcImage.getNDims() == 3) {
             zDim = srcImage.getExtents()[2];
         }
@@ -543,34 +387,9 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
         }
         halfSimilarity = (similarityWindowSide - 1)/2;
         halfSearch = (searchWindowSide - 1)/2;
-        padXDim = xDim + 2 * halfSimilarity;
-        padYDim = yDim + 2 * halfSimilarity;
-        input2 = new double[padXDim * padYDim];
-        aux = new double[padXDim * padYDim];
-        kernel = new double[similarityWindowSide * similarityWindowSide];
-        W1 = new double[similarityWindowSide * similarityWindowSide];
-        W2 = new double[similarityWindowSide * similarityWindowSide];
-        for (d = 1; d <= halfSimilarity; d++) {
-            value = 2*d + 1;
-            value = value * value;
-            value = 1.0/value;
-            for (y = -d; y <= d; y++) {
-                for (x = -d; x <= d; x++) {
-                    kernel[halfSimilarity - x + similarityWindowSide * (halfSimilarity - y)] += value;
-                }
-            }
-        } // for (d = 1; d <= halfSimilarity; d++)
-        kernelSum = 0.0;
-        for (i = 0; i < kernel.length; i++) {
-            kernelSum += kernel[i];
-        }
-        for (i = 0; i < kernel.length; i++) {
-            kernel[i] /= kernelSum;
-        }
         
         filterParameter = noiseStandardDeviation * degreeOfFiltering;
         filterParameter = filterParameter * filterParameter;
-        s2 = 2.0 * noiseStandardDeviation * noiseStandardDeviation;
         
         for (z = 0; z < zDim; z++) {
             try {
@@ -582,136 +401,11 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
                 return;
             }
             
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < xDim; x++) {
-                    input2[x + halfSimilarity + padXDim*(y + halfSimilarity)] = input[x + y * xDim];
-                }
-            }
-            
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left side mirror reflection
-                    input2[x + padXDim*(y + halfSimilarity)] = input[(halfSimilarity - 1 - x) + xDim * y];
-                    // right side mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * y];
-                }
-            }
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < xDim; x++) {
-                    // top side mirror reflection
-                    input2[x + halfSimilarity + padXDim * y] = input[x + xDim * (halfSimilarity - 1 - y)];
-                    // bottom side mirror reflection
-                    input2[x + halfSimilarity + padXDim * (y + yDim + halfSimilarity)] =
-                    input[x + xDim * (yDim - 1 - y)];
-                }
-            }
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left top mirror reflection
-                    input2[x + padXDim * y] = input[(halfSimilarity - 1 - x) + xDim * (halfSimilarity - 1 - y)];
-                    // left bottom mirror reflection
-                    input2[x + padXDim * (y + yDim + halfSimilarity)] = 
-                    input[(halfSimilarity - 1 - x) + xDim * (yDim - 1 - y)];
-                    // right top mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * y] =
-                    input[xDim - 1 - x + xDim * (halfSimilarity - 1 - y)];
-                    // right bottom mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + yDim + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (yDim - 1 - y)];
-                }
-            }
-            
-            for (y = 0; y < padYDim; y++) {
-                if (y == 0) {
-                    ym1 = y;
-                }
-                else {
-                    ym1 = y - 1;
-                }
-                if (y == (padYDim - 1)) {
-                    yp1 = y;
-                }
-                else {
-                    yp1 = y + 1;
-                }
-                for (x = 0; x < padXDim; x++) {
-                    if (x == 0) {
-                        xm1 = x;
-                    }
-                    else {
-                        xm1 = x - 1;
-                    }
-                    if (x == (padXDim - 1)) {
-                        xp1 = x;
-                    }
-                    else {
-                        xp1 = x + 1;
-                    }
-                    aux[x + y * padXDim] = avConstant * 
-                    (input2[xm1 + ym1 * padXDim] + input2[x + ym1 * padXDim] + input2[xp1 + ym1 * padXDim] +
-                     input2[xm1 + y * padXDim] + input2[x + y * padXDim] + input2[xp1 + y * padXDim] +
-                     input2[xm1 + yp1 * padXDim] + input2[x + yp1 * padXDim] + input2[xp1 + yp1 * padXDim]);
-                }
-            }
-            for (i = 1; i <= yDim; i++) {
-                fireProgressStateChanged(100 * (z*yDim + (i - 1)) /(yDim * zDim));
-                i1 = i + halfSimilarity;
-                rmax = Math.min(i1 + halfSearch, yDim + halfSimilarity);
-                for (j = 1; j <= xDim; j++) {  
-                    j1 = j + halfSimilarity;
-                    for (y = 0; y < similarityWindowSide; y++) {
-                        for (x = 0; x < similarityWindowSide; x++) {
-                            W1[x + y * similarityWindowSide] = 
-                            input2[j1 - halfSimilarity - 1 + x + padXDim*(i1 - halfSimilarity - 1 + y)];
-                        }
-                    }
-                    
-                    smin = Math.max(j1 - halfSearch, halfSimilarity + 1);
-                    smax = Math.min(j1 + halfSearch, xDim + halfSimilarity);
-                    for (r = i1; r <= rmax; r++) {
-                        for (s = smin; s <= smax; s++) {
-                            // Processing symmetrically the window so only have the distances have to be explored
-                            if ((s <= j1) && (r == i1)) {
-                                continue;
-                            }
-                            
-                            if (Math.abs(aux[j1 - 1 + padXDim * (i1 - 1)] - aux[s - 1 + padXDim * (r - 1)]) > 
-                                    noiseStandardDeviation) {
-                                continue;
-                            }
-                            for (y = 0; y < similarityWindowSide; y++) {
-                                for (x = 0; x < similarityWindowSide; x++) {
-                                    W2[x + y * similarityWindowSide] = 
-                                    input2[s - halfSimilarity - 1 + x + padXDim*(r - halfSimilarity - 1 + y)];
-                                }
-                            }
-                            
-                            dsum = 0.0;
-                            for (k = 0; k < kernel.length; k++) {
-                                w12 = W1[k] - W2[k];
-                                dsum += (kernel[k] * w12 * w12);
-                            }
-                            dsum = dsum / filterParameter;
-                            w = 1.0/(1.0 + dsum * dsum);
-                            
-                            sweight[j - 1 + xDim * (i - 1)]  += w;
-                            output[j - 1 + xDim * (i - 1)] += 
-                            w * input2[s - 1 + padXDim * (r - 1)] * input2[s - 1 + padXDim * (r - 1)];
-                            
-                            sweight[s - halfSimilarity - 1 + xDim * (r - halfSimilarity - 1)] += w;
-                            output[s - halfSimilarity - 1 + xDim * (r - halfSimilarity - 1)] +=
-                            w * input2[j1 - 1 + padXDim * (i1 - 1)] * input2[j1 - 1 + padXDim * (i1 - 1)];
-                        } // for (s = smin; s <= smax; s++)
-                    } // for (r = rmin; r <= rmax; r++)
-                    pos = j - 1 + xDim * (i - 1);
-                    sweight[pos] += 0.5;
-                    output[pos] += 0.5 * input[pos] * input[pos];
-                    
-                    // Rician correction
-                    output[pos] = (float)Math.sqrt(Math.max(0, output[pos]/sweight[pos] - s2));
-                } // for (j = 1; j <= xDim; j++)
-            } // for (i = 1; i <= yDim; i++) 
+            // The slice is searched as a volume one voxel high, so that its rows are split among the threads
+            search = new PatchSearch(input, new int[] {xDim, 1, yDim}, new int[] {halfSimilarity, 0, halfSimilarity},
+                                     new int[] {halfSearch, 0, halfSearch}, true, filterParameter,
+                                     (100 * z) / zDim, (100 * (z + 1)) / zDim);
+            output = search.filter();
             try {
                 if (destImage != null) {
                     destImage.importData(z*length, output, false);
@@ -742,100 +436,31 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
     }
     
     private void run3D() {
-        int x;
-        int y;
-        int z;
         int xDim;
         int yDim;
         int zDim;
-        int sliceSize;
         int length;
         double input[];
         double inputOriginal[] = null;
-        double kernel[];
         int halfSimilarity;
-        int similaritySquared;
-        int similarityCubed;
-        double input2[];
-        int padXDim;
-        int padYDim;
-        int padZDim;
-        int padSliceSize;
-        int d;
-        double value;
-        int h;
         int i;
-        int j;
-        int q;
-        int r;
-        int s;
-        int h1;
-        int i1;
-        int j1;
-        double W1[];
-        double W2[];
-        double kernelSum;
-        double wmax;
-        double average;
-        double sweight;
-        int qmin;
-        int qmax;
-        int rmin;
-        int rmax;
-        int smin;
-        int smax;
         int halfSearch;
-        int k;
-        double dsum;
-        double w12;
-        double w;
         long time;
         double filterParameter;
-        
+        PatchSearch search;
         
         time = System.currentTimeMillis();
         fireProgressStateChanged(0, srcImage.getImageName(), "Nonlocal means filter");
         xDim = srcImage.getExtents()[0];
         yDim = srcImage.getExtents()[1];
         zDim = srcImage.getExtents()[2];
-        sliceSize = xDim * yDim;
-        length = sliceSize * zDim;
+        length = xDim * yDim * zDim;
         input = new double[length];
         halfSimilarity = (similarityWindowSide - 1)/2;
-        similaritySquared = similarityWindowSide * similarityWindowSide;
-        similarityCubed = similaritySquared * similarityWindowSide;
         halfSearch = (searchWindowSide - 1)/2;
-        padXDim = xDim + 2 * halfSimilarity;
-        padYDim = yDim + 2 * halfSimilarity;
-        padZDim = zDim + 2 * halfSimilarity;
-        padSliceSize = padXDim * padYDim;
-        input2 = new double[padSliceSize * padZDim];
-        kernel = new double[similarityCubed];
-        W1 = new double[similarityCubed];
-        W2 = new double[similarityCubed];
         if (doBayesShrinkThresholdComputation) {
         	inputOriginal = new double[length];
         }
-        for (d = 1; d <= halfSimilarity; d++) {
-            value = 2*d + 1;
-            value = value * value;
-            value = 1.0/value;
-            for (z = -d; z <= d; z++) {
-                for (y = -d; y <= d; y++) {
-                    for (x = -d; x <= d; x++) {
-                        kernel[halfSimilarity - x + similarityWindowSide * (halfSimilarity - y) +
-                               similaritySquared * (halfSimilarity - z)] += value;
-                    }
-                }
-            }
-        } // for (d = 1; d <= halfSimilarity; d++)
-        kernelSum = 0.0;
-        for (i = 0; i < kernel.length; i++) {
-            kernelSum += kernel[i];
-        }
-        for (i = 0; i < kernel.length; i++) {
-            kernel[i] /= kernelSum;
-        }
         
         filterParameter = noiseStandardDeviation * noiseStandardDeviation;
         try {
@@ -854,213 +479,10 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
         	}
         }
         
-        for (z = 0; z < zDim; z++) {
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < xDim; x++) {
-                    input2[x + halfSimilarity + padXDim*(y + halfSimilarity) + padSliceSize*(z + halfSimilarity)] =
-                    input[x + y * xDim + z * sliceSize];
-                }
-            }
-        }
-        
-        for (z = 0; z < zDim; z++) {
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left side mirror reflection
-                    input2[x + padXDim*(y + halfSimilarity) + padSliceSize*(z + halfSimilarity)] = 
-                    input[(halfSimilarity - 1 - x) + xDim * y + sliceSize * z];
-                    // right side mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + halfSimilarity) + padSliceSize*(z + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * y + sliceSize * z];
-                }
-            }
-        }
-        
-        for (z = 0; z < zDim; z++) {
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < xDim; x++) {
-                    // top side mirror reflection
-                    input2[x + halfSimilarity + padXDim * y + padSliceSize*(z + halfSimilarity)] =
-                    input[x + xDim * (halfSimilarity - 1 - y) + sliceSize * z];
-                    // bottom side mirror reflection
-                    input2[x + halfSimilarity + padXDim * (y + yDim + halfSimilarity) + padSliceSize*(z + halfSimilarity)] =
-                    input[x + xDim * (yDim - 1 - y) + sliceSize * z];
-                }
-            }
-        }
-        
-        for (z = 0; z < halfSimilarity; z++) {
-            for (y = 0; y < xDim; y++) {
-                for (x = 0; x < xDim; x++) {
-                    // front side mirror reflection
-                    input2[x + halfSimilarity + padXDim*(y + halfSimilarity) + padSliceSize * z] =
-                    input[x + xDim * y + sliceSize * (halfSimilarity - 1 - z)];
-                    // back side mirror reflection
-                    input2[x + halfSimilarity + padXDim*(y + halfSimilarity) + padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[x + xDim * y + sliceSize * (zDim - 1 - z)];
-                }
-            }
-        }
-        
-        for (z = 0; z < zDim; z++) {
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left top mirror reflection
-                    input2[x + padXDim * y + padSliceSize * (z + halfSimilarity)] = 
-                    input[(halfSimilarity - 1 - x) + xDim * (halfSimilarity - 1 - y) + sliceSize * z ];
-                    // left bottom mirror reflection
-                    input2[x + padXDim * (y + yDim + halfSimilarity) + padSliceSize * (z + halfSimilarity)] = 
-                    input[(halfSimilarity - 1 - x) + xDim * (yDim - 1 - y) + sliceSize * z];
-                    // right top mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * y + padSliceSize * (z + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * z];
-                    // right bottom mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + yDim + halfSimilarity)
-                           + padSliceSize * (z + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (yDim - 1 - y) + sliceSize * z];
-                }
-            }
-        }
-        
-        for (z = 0; z < halfSimilarity; z++) {
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left front mirror reflection
-                    input2[x + padXDim * (y + halfSimilarity) + padSliceSize * z] =
-                    input[(halfSimilarity - 1 - x) + xDim * y + sliceSize * (halfSimilarity - 1 - z)];
-                    // left back mirror reflection
-                    input2[x + padXDim *(y + halfSimilarity) + padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[(halfSimilarity - 1 - x) + xDim * y + sliceSize * (zDim - 1 - z)];
-                    // right front mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + halfSimilarity) + padSliceSize * z] =
-                    input[xDim - 1 - x + xDim * y + sliceSize * (halfSimilarity - 1 - z)];
-                    // right back mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim *(y + halfSimilarity) + 
-                           padSliceSize * (z + zDim + halfSimilarity)] =
-                     input[xDim - 1 - x + xDim * y + sliceSize * (zDim - 1 - z)];
-                }
-            }
-        }
-        
-        for (z = 0; z < halfSimilarity; z++) {
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < xDim; x++) {
-                    // top front mirror reflection
-                    input2[x + halfSimilarity + padXDim * y + padSliceSize * z] =
-                    input[x + xDim * (halfSimilarity - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // top back mirror reflection
-                    input2[x + halfSimilarity + padXDim * y + padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[x + xDim * (halfSimilarity - 1 - y) + sliceSize * (zDim - 1 - z)];
-                    // bottom front mirror reflection
-                    input2[x + halfSimilarity + padXDim * (y + yDim + halfSimilarity) + padSliceSize * z] =
-                    input[x + xDim * (yDim - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // bottom back mirror reflection
-                    input2[x + halfSimilarity + padXDim * (y + yDim + halfSimilarity) +
-                    padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[x + xDim * (yDim - 1 - y) + sliceSize * (zDim - 1 - z)];
-                }
-            }
-        }
-        
-        
-        for (z = 0; z < halfSimilarity; z++) {
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left top front reflection
-                    input2[x + padXDim * y + padSliceSize * z] = 
-                    input[halfSimilarity - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // left top back reflection
-                    input2[x + padXDim * y + padSliceSize * (z + zDim + halfSimilarity)] = 
-                    input[halfSimilarity - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * (zDim - 1 - z)];
-                    // left bottom front reflection
-                    input2[x + padXDim * (y + yDim + halfSimilarity) + padSliceSize * z] = 
-                    input[halfSimilarity - 1 - x + xDim * (yDim - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // left bottom back reflection
-                    input2[x + padXDim * (y + yDim + halfSimilarity) + padSliceSize * (z + zDim + halfSimilarity)] = 
-                    input[halfSimilarity - 1 - x + xDim * (yDim - 1 - y) + sliceSize * (zDim - 1 - z)];
-                    // right top front reflection
-                    input2[x + xDim + halfSimilarity + padXDim * y + padSliceSize * z] =
-                    input[xDim - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // right top back reflection
-                    input2[x + xDim + halfSimilarity + padXDim * y + padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * (zDim - 1 - z)];
-                    // right bottom front reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + yDim + halfSimilarity) + padSliceSize * z] =
-                    input[xDim - 1 - x + xDim * (yDim - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // right bottom back reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + yDim + halfSimilarity) + 
-                    padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (yDim - 1 - y) + sliceSize * (zDim - 1 - z)];
-                }
-            }
-        }
-        
-        for (h = 1; h <= zDim; h++) {
-            fireProgressStateChanged(100 * (h - 1) /zDim);
-            h1 = h + halfSimilarity;
-            qmin = Math.max(h1 - halfSearch, halfSimilarity + 1);
-            qmax = Math.min(h1 + halfSearch, zDim + halfSimilarity);
-            for (i = 1; i <= yDim; i++) {
-                i1 = i + halfSimilarity;
-                rmin = Math.max(i1 - halfSearch, halfSimilarity + 1);
-                rmax = Math.min(i1 + halfSearch, yDim + halfSimilarity);
-                for (j = 1; j <= xDim; j++) {  
-                    j1 = j + halfSimilarity;
-                    for (z = 0; z < similarityWindowSide; z++) {
-                        for (y = 0; y < similarityWindowSide; y++) {
-                            for (x = 0; x < similarityWindowSide; x++) {
-                                W1[x + y * similarityWindowSide + z * similaritySquared] = 
-                                input2[j1 - halfSimilarity - 1 + x + padXDim*(i1 - halfSimilarity - 1 + y) +
-                                       padSliceSize * (h1 - halfSimilarity - 1 + z)];
-                            }
-                        }
-                    }
-                    
-                    wmax = 0.0;
-                    average = 0.0;
-                    sweight = 0.0;
-                    
-                    smin = Math.max(j1 - halfSearch, halfSimilarity + 1);
-                    smax = Math.min(j1 + halfSearch, xDim + halfSimilarity);
-                    for (q = qmin; q <= qmax; q++) {
-                        for (r = rmin; r <= rmax; r++) {
-                            for (s = smin; s <= smax; s++) {
-                                if ((q == h1) && (r == i1) && (s == j1)) {
-                                    continue;
-                                }
-                                for (z = 0; z < similarityWindowSide; z++) {
-                                    for (y = 0; y < similarityWindowSide; y++) {
-                                        for (x = 0; x < similarityWindowSide; x++) {
-                                            W2[x + y * similarityWindowSide + z * similaritySquared] = 
-                                            input2[s - halfSimilarity - 1 + x + padXDim*(r - halfSimilarity - 1 + y) +
-                                                   padSliceSize * (q - halfSimilarity - 1 + z)];
-                                        }
-                                    }
-                                }
-                                
-                                dsum = 0.0;
-                                for (k = 0; k < kernel.length; k++) {
-                                    w12 = W1[k] - W2[k];
-                                    dsum += (kernel[k] * w12 * w12);
-                                }
-                                w = Math.exp(-dsum/filterParameter);
-                                if (w > wmax) {
-                                    wmax = w;
-                                }
-                                sweight = sweight + w;
-                                average = average + w * input2[s - 1 + padXDim * (r - 1) + padSliceSize * (q - 1)];
-                            } // for (s = smin; s <= smax; s++)
-                        } // for (r = rmin; r <= rmax; r++)
-                    } // for (q = qmin; q <= qmax; q++)
-                    average = average + wmax * input2[j1 - 1 + padXDim * (i1 - 1) + padSliceSize * (h1 - 1)];
-                    sweight = sweight + wmax;
-                    
-                    if (sweight > 0) {
-                        input[j - 1 + xDim * (i - 1) + sliceSize * (h - 1)] = (float)(average / sweight);
-                    }
-                } // for (j = 1; j <= xDim; j++)
-            } // for (i = 1; i <= yDim; i++) 
-        } // for (h = 1; j <= zDim; h++)
+        search = new PatchSearch(input, new int[] {xDim, yDim, zDim},
+                                 new int[] {halfSimilarity, halfSimilarity, halfSimilarity},
+                                 new int[] {halfSearch, halfSearch, halfSearch}, false, filterParameter, 0, 100);
+        input = search.filter();
         if (doBayesShrinkThresholdComputation) {
         	double inputDiff[] = new double[length];
         	for (i = 0; i < length; i++) {
@@ -1157,109 +579,30 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
     }
 
     private void run3DRician() {
-        int x;
-        int y;
-        int z;
         int xDim;
         int yDim;
         int zDim;
-        int sliceSize;
         int length;
-        float input[];
-        float output[];
-        double kernel[];
+        double input[];
+        double output[];
         int halfSimilarity;
-        int similaritySquared;
-        int similarityCubed;
-        double input2[];
-        double aux[];
-        int padXDim;
-        int padYDim;
-        int padZDim;
-        int padSliceSize;
-        int d;
-        double value;
-        int h;
-        int i;
-        int j;
-        int q;
-        int r;
-        int s;
-        int h1;
-        int i1;
-        int j1;
-        double W1[];
-        double W2[];
-        double kernelSum;
-        double sweight[];
-        int qmax;
-        int rmax;
-        int smin;
-        int smax;
         int halfSearch;
-        int k;
-        double dsum;
-        double w12;
-        double w;
         long time;
         double filterParameter;
-        double s2;
-        int zm1;
-        int zp1;
-        int ym1;
-        int yp1;
-        int xm1;
-        int xp1;
-        double avConstant = 1.0/27.0;
-        int pos;
+        PatchSearch search;
         
         time = System.currentTimeMillis();
         fireProgressStateChanged(0, srcImage.getImageName(), "Nonlocal means filter");
         xDim = srcImage.getExtents()[0];
         yDim = srcImage.getExtents()[1];
         zDim = srcImage.getExtents()[2];
-        sliceSize = xDim * yDim;
-        length = sliceSize * zDim;
-        input = new float[length];
-        output = new float[length];
-        sweight = new double[length];
+        length = xDim * yDim * zDim;
+        input = new double[length];
         halfSimilarity = (similarityWindowSide - 1)/2;
-        similaritySquared = similarityWindowSide * similarityWindowSide;
-        similarityCubed = similaritySquared * similarityWindowSide;
         halfSearch = (searchWindowSide - 1)/2;
-        padXDim = xDim + 2 * halfSimilarity;
-        padYDim = yDim + 2 * halfSimilarity;
-        padZDim = zDim + 2 * halfSimilarity;
-        padSliceSize = padXDim * padYDim;
-        input2 = new double[padSliceSize * padZDim];
-        aux = new double[padSliceSize * padZDim];
-        kernel = new double[similarityCubed];
-        W1 = new double[similarityCubed];
-        W2 = new double[similarityCubed];
-        for (d = 1; d <= halfSimilarity; d++) {
-            value = 2*d + 1;
-            value = value * value;
-            value = 1.0/value;
-            for (z = -d; z <= d; z++) {
-                for (y = -d; y <= d; y++) {
-                    for (x = -d; x <= d; x++) {
-                        kernel[halfSimilarity - x + similarityWindowSide * (halfSimilarity - y) +
-                               similaritySquared * (halfSimilarity - z)] += value;
-                    }
-                }
-            }
-        } // for (d = 1; d <= halfSimilarity; d++)
-        kernelSum = 0.0;
-        for (i = 0; i < kernel.length; i++) {
-            kernelSum += kernel[i];
-        }
-        for (i = 0; i < kernel.length; i++) {
-            kernel[i] /= kernelSum;
-        }
         
         filterParameter = noiseStandardDeviation * degreeOfFiltering;
         filterParameter = filterParameter * filterParameter;
-        s2 = 2.0 * noiseStandardDeviation * noiseStandardDeviation;
         try {
             srcImage.exportData(0, length, input);
         }
@@ -1269,318 +612,489 @@ public class AlgorithmNonlocalMeansFilter extends AlgorithmBase {
             return;
         }
         
-        for (z = 0; z < zDim; z++) {
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < xDim; x++) {
-                    input2[x + halfSimilarity + padXDim*(y + halfSimilarity) + padSliceSize*(z + halfSimilarity)] =
-                    input[x + y * xDim + z * sliceSize];
-                }
+        search = new PatchSearch(input, new int[] {xDim, yDim, zDim},
+                                 new int[] {halfSimilarity, halfSimilarity, halfSimilarity},
+                                 new int[] {halfSearch, halfSearch, halfSearch}, true, filterParameter, 0, 100);
+        output = search.filter();
+        try {
+            if (destImage != null) {
+                destImage.importData(0, output, true);
             }
-        }
-        
-        for (z = 0; z < zDim; z++) {
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left side mirror reflection
-                    input2[x + padXDim*(y + halfSimilarity) + padSliceSize*(z + halfSimilarity)] = 
-                    input[(halfSimilarity - 1 - x) + xDim * y + sliceSize * z];
-                    // right side mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + halfSimilarity) + padSliceSize*(z + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * y + sliceSize * z];
-                }
+            else {
+                srcImage.importData(0, output, true);
             }
         }
-        
-        for (z = 0; z < zDim; z++) {
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < xDim; x++) {
-                    // top side mirror reflection
-                    input2[x + halfSimilarity + padXDim * y + padSliceSize*(z + halfSimilarity)] =
-                    input[x + xDim * (halfSimilarity - 1 - y) + sliceSize * z];
-                    // bottom side mirror reflection
-                    input2[x + halfSimilarity + padXDim * (y + yDim + halfSimilarity) + padSliceSize*(z + halfSimilarity)] =
-                    input[x + xDim * (yDim - 1 - y) + sliceSize * z];
-                }
-            }
+        catch(IOException e) {
+            MipavUtil.displayError("IOException on importData(0, output, true");
+            setCompleted(false);
+            return;
         }
+     
         
-        for (z = 0; z < halfSimilarity; z++) {
-            for (y = 0; y < xDim; y++) {
-                for (x = 0; x < xDim; x++) {
-                    // front side mirror reflection
-                    input2[x + halfSimilarity + padXDim*(y + halfSimilarity) + padSliceSize * z] =
-                    input[x + xDim * y + sliceSize * (halfSimilarity - 1 - z)];
-                    // back side mirror reflection
-                    input2[x + halfSimilarity + padXDim*(y + halfSimilarity) + padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[x + xDim * y + sliceSize * (zDim - 1 - z)];
+        fireProgressStateChanged(100);
+        time = System.currentTimeMillis() - time;
+        Preferences.debug("Seconds elapsed in AlgorithmNonlocalMeansFilter = " + (time/1000.0) + "\n", 
+        		Preferences.DEBUG_ALGORITHM);
+        setCompleted(true);
+        return;    
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Nonlocal means search over a volume. The distance between two similarity windows is a weighted sum of the
+     * squared differences of their voxels, where the weights are those of a sum of nested boxes. Instead of comparing
+     * the windows voxel by voxel, the squared differences between the volume and its shift by one offset of the search
+     * window are summed once into an integral volume, from which the sum over each box is read in constant time. The
+     * volume is processed in slabs of planes, so that the integral volumes stay small, and the slabs are split among
+     * the threads.
+     */
+    private class PatchSearch {
+
+        /** The voxels of the volume. */
+        private final double[] input;
+
+        /** The volume padded by mirror reflection with the similarity window half sizes. */
+        private final double[] padded;
+
+        /** Means of the 3 x 3 (x 3) neighborhoods of the voxels, used to skip dissimilar voxels, or null. */
+        private final double[] neighborhoodMeans;
+
+        /** Extents of the volume. */
+        private final int xDim, yDim, zDim;
+
+        /** Extents of the padded volume. */
+        private final int padXDim, padYDim, padZDim;
+
+        /** Similarity window half sizes. */
+        private final int halfX, halfY, halfZ;
+
+        /** Search window half sizes. */
+        private final int searchX, searchY, searchZ;
+
+        /** Weight in the window distance of the box of each radius up to the largest similarity window half size. */
+        private final double[] boxWeights;
+
+        /** Smallest radius of a box of the window distance, 0 only for windows of a single voxel. */
+        private final int firstBox;
+
+        /** Offsets of the corners of each box in the integral volume, relative to the box center. */
+        private final int[][] corners;
+
+        /** If true, use the Rician weights and bias correction, otherwise the Gaussian weights. */
+        private final boolean rician;
+
+        /** Filtering parameter dividing the window distances. */
+        private final double filterParameter;
+
+        /** Number of planes in a slab. */
+        private final int slabPlanes;
+
+        /** Progress reported when the search starts and ends. */
+        private final int progressStart, progressEnd;
+
+        /** Number of planes searched with one offset so far, over all threads. */
+        private final AtomicLong planesDone = new AtomicLong();
+
+        /**
+         * Creates a search.
+         *
+         * @param  input            the voxels of the volume
+         * @param  extents          the three extents of the volume
+         * @param  halfSimilarity   the similarity window half sizes along each axis
+         * @param  halfSearch       the search window half sizes along each axis
+         * @param  rician           if true, use the Rician weights and bias correction
+         * @param  filterParameter  filtering parameter dividing the window distances
+         * @param  progressStart    progress reported when the search starts
+         * @param  progressEnd      progress reported when the search ends
+         */
+        public PatchSearch(double[] input, int[] extents, int[] halfSimilarity, int[] halfSearch, boolean rician,
+                           double filterParameter, int progressStart, int progressEnd) {
+            int x, y, z, d;
+            this.input = input;
+            this.rician = rician;
+            this.filterParameter = filterParameter;
+            this.progressStart = progressStart;
+            this.progressEnd = progressEnd;
+            xDim = extents[0];
+            yDim = extents[1];
+            zDim = extents[2];
+            halfX = halfSimilarity[0];
+            halfY = halfSimilarity[1];
+            halfZ = halfSimilarity[2];
+            searchX = halfSearch[0];
+            searchY = halfSearch[1];
+            searchZ = halfSearch[2];
+            padXDim = xDim + 2 * halfX;
+            padYDim = yDim + 2 * halfY;
+            padZDim = zDim + 2 * halfZ;
+            padded = new double[padXDim * padYDim * padZDim];
+
+            for (z = 0; z < padZDim; z++) {
+                for (y = 0; y < padYDim; y++) {
+                    for (x = 0; x < padXDim; x++) {
+                        padded[x + padXDim * (y + padYDim * z)] = input[mirror(x - halfX, xDim) +
+                                                  xDim * (mirror(y - halfY, yDim) + yDim * mirror(z - halfZ, zDim))];
+                    }
                 }
             }
-        }
-        
-        for (z = 0; z < zDim; z++) {
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left top mirror reflection
-                    input2[x + padXDim * y + padSliceSize * (z + halfSimilarity)] = 
-                    input[(halfSimilarity - 1 - x) + xDim * (halfSimilarity - 1 - y) + sliceSize * z ];
-                    // left bottom mirror reflection
-                    input2[x + padXDim * (y + yDim + halfSimilarity) + padSliceSize * (z + halfSimilarity)] = 
-                    input[(halfSimilarity - 1 - x) + xDim * (yDim - 1 - y) + sliceSize * z];
-                    // right top mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * y + padSliceSize * (z + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * z];
-                    // right bottom mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + yDim + halfSimilarity)
-                           + padSliceSize * (z + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (yDim - 1 - y) + sliceSize * z];
-                }
+
+            // The kernel adds 1/(2d+1)^2 over the box of radius d for every d from 1 to the half size.  A window
+            // of a single voxel compares the voxels themselves.
+            int maxHalf = Math.max(halfX, Math.max(halfY, halfZ));
+            double kernelSum = 0.0;
+            boxWeights = new double[maxHalf + 1];
+            firstBox = (maxHalf == 0) ? 0 : 1;
+            for (d = firstBox; d <= maxHalf; d++) {
+                boxWeights[d] = 1.0 / ((2*d + 1) * (2*d + 1));
+                kernelSum += boxWeights[d] * (2*Math.min(d, halfX) + 1) * (2*Math.min(d, halfY) + 1) *
+                             (2*Math.min(d, halfZ) + 1);
             }
-        }
-        
-        for (z = 0; z < halfSimilarity; z++) {
-            for (y = 0; y < yDim; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left front mirror reflection
-                    input2[x + padXDim * (y + halfSimilarity) + padSliceSize * z] =
-                    input[(halfSimilarity - 1 - x) + xDim * y + sliceSize * (halfSimilarity - 1 - z)];
-                    // left back mirror reflection
-                    input2[x + padXDim *(y + halfSimilarity) + padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[(halfSimilarity - 1 - x) + xDim * y + sliceSize * (zDim - 1 - z)];
-                    // right front mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + halfSimilarity) + padSliceSize * z] =
-                    input[xDim - 1 - x + xDim * y + sliceSize * (halfSimilarity - 1 - z)];
-                    // right back mirror reflection
-                    input2[x + xDim + halfSimilarity + padXDim *(y + halfSimilarity) + 
-                           padSliceSize * (z + zDim + halfSimilarity)] =
-                     input[xDim - 1 - x + xDim * y + sliceSize * (zDim - 1 - z)];
-                }
+            for (d = firstBox; d <= maxHalf; d++) {
+                boxWeights[d] /= kernelSum;
             }
-        }
-        
-        for (z = 0; z < halfSimilarity; z++) {
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < xDim; x++) {
-                    // top front mirror reflection
-                    input2[x + halfSimilarity + padXDim * y + padSliceSize * z] =
-                    input[x + xDim * (halfSimilarity - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // top back mirror reflection
-                    input2[x + halfSimilarity + padXDim * y + padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[x + xDim * (halfSimilarity - 1 - y) + sliceSize * (zDim - 1 - z)];
-                    // bottom front mirror reflection
-                    input2[x + halfSimilarity + padXDim * (y + yDim + halfSimilarity) + padSliceSize * z] =
-                    input[x + xDim * (yDim - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // bottom back mirror reflection
-                    input2[x + halfSimilarity + padXDim * (y + yDim + halfSimilarity) +
-                    padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[x + xDim * (yDim - 1 - y) + sliceSize * (zDim - 1 - z)];
+
+            if (rician) {
+                int xm1, xp1, ym1, yp1, zm1, zp1;
+                neighborhoodMeans = new double[xDim * yDim * zDim];
+                for (z = 0; z < zDim; z++) {
+                    zm1 = Math.max(z + halfZ - 1, 0);
+                    zp1 = Math.min(z + halfZ + 1, padZDim - 1);
+                    for (y = 0; y < yDim; y++) {
+                        ym1 = Math.max(y + halfY - 1, 0);
+                        yp1 = Math.min(y + halfY + 1, padYDim - 1);
+                        for (x = 0; x < xDim; x++) {
+                            xm1 = Math.max(x + halfX - 1, 0);
+                            xp1 = Math.min(x + halfX + 1, padXDim - 1);
+                            neighborhoodMeans[x + xDim * (y + yDim * z)] =
+                            (planeSum(xm1, x + halfX, xp1, ym1, y + halfY, yp1, zm1) +
+                             planeSum(xm1, x + halfX, xp1, ym1, y + halfY, yp1, z + halfZ) +
+                             planeSum(xm1, x + halfX, xp1, ym1, y + halfY, yp1, zp1)) / 27.0;
+                        }
+                    }
                 }
             }
-        }
-        
-        
-        for (z = 0; z < halfSimilarity; z++) {
-            for (y = 0; y < halfSimilarity; y++) {
-                for (x = 0; x < halfSimilarity; x++) {
-                    // left top front reflection
-                    input2[x + padXDim * y + padSliceSize * z] = 
-                    input[halfSimilarity - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // left top back reflection
-                    input2[x + padXDim * y + padSliceSize * (z + zDim + halfSimilarity)] = 
-                    input[halfSimilarity - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * (zDim - 1 - z)];
-                    // left bottom front reflection
-                    input2[x + padXDim * (y + yDim + halfSimilarity) + padSliceSize * z] = 
-                    input[halfSimilarity - 1 - x + xDim * (yDim - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // left bottom back reflection
-                    input2[x + padXDim * (y + yDim + halfSimilarity) + padSliceSize * (z + zDim + halfSimilarity)] = 
-                    input[halfSimilarity - 1 - x + xDim * (yDim - 1 - y) + sliceSize * (zDim - 1 - z)];
-                    // right top front reflection
-                    input2[x + xDim + halfSimilarity + padXDim * y + padSliceSize * z] =
-                    input[xDim - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // right top back reflection
-                    input2[x + xDim + halfSimilarity + padXDim * y + padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (halfSimilarity - 1 - y) + sliceSize * (zDim - 1 - z)];
-                    // right bottom front reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + yDim + halfSimilarity) + padSliceSize * z] =
-                    input[xDim - 1 - x + xDim * (yDim - 1 - y) + sliceSize * (halfSimilarity - 1 - z)];
-                    // right bottom back reflection
-                    input2[x + xDim + halfSimilarity + padXDim * (y + yDim + halfSimilarity) + 
-                    padSliceSize * (z + zDim + halfSimilarity)] =
-                    input[xDim - 1 - x + xDim * (yDim - 1 - y) + sliceSize * (zDim - 1 - z)];
+            else {
+                neighborhoodMeans = null;
+            }
+
+            // Offsets of the corners of each box in the integral volume, relative to the box center.  When the
+            // volume is a single row high, the corners before the row are in the zero border and are left out.
+            int integralRow = padXDim + 1;
+            int integralSlice = integralRow * (padYDim + 1);
+            boolean flat = (padYDim == 1);
+            corners = new int[maxHalf + 1][];
+            for (d = firstBox; d <= maxHalf; d++) {
+                int rx = Math.min(d, halfX);
+                int ry = Math.min(d, halfY);
+                int rz = Math.min(d, halfZ);
+                corners[d] = new int[flat ? 4 : 8];
+                for (int c = 0; c < corners[d].length; c++) {
+                    corners[d][c] = (((c & 1) != 0) ? (rx + 1) : -rx) +
+                                    integralSlice * (((c & 2) != 0) ? (rz + 1) : -rz) +
+                                    integralRow * ((flat || ((c & 4) != 0)) ? (ry + 1) : -ry);
                 }
             }
+
+            slabPlanes = Math.max(1, Math.min(zDim, MAX_SLAB_SIZE / integralSlice - searchZ - 2 * halfZ));
         }
-        
-        for (z = 0; z < padZDim; z++) {
-            if (z == 0) {
-                zm1 = z;
+
+        /**
+         * Filters the volume.
+         *
+         * @return  the filtered voxels
+         */
+        public double[] filter() {
+            final double[] output = new double[input.length];
+            int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, zDim)) : 1;
+            final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+
+            for (int t = 0; t < nTasks; t++) {
+                final int firstPlane = (int) ((long) zDim * t / nTasks);
+                final int lastPlane = (int) ((long) zDim * (t + 1) / nTasks);
+                Runnable task = new Runnable() {
+                    public void run() {
+                        try {
+                            int planes = Math.min(slabPlanes, lastPlane - firstPlane);
+                            double[] integral = new double[(planes + searchZ + 2 * halfZ + 1) * (padYDim + 1) *
+                                                           (padXDim + 1)];
+                            double[] weightSum = new double[planes * xDim * yDim];
+                            double[] valueSum = new double[planes * xDim * yDim];
+                            double[] maxWeight = rician ? null : new double[planes * xDim * yDim];
+                            for (int z0 = firstPlane; z0 < lastPlane; z0 += planes) {
+                                filterSlab(z0, Math.min(z0 + planes, lastPlane), output, integral, weightSum,
+                                           valueSum, maxWeight);
+                            }
+                        }
+                        finally {
+                            doneSignal.countDown();
+                        }
+                    }
+                };
+
+                if (nTasks == 1) {
+                    task.run();
+                }
+                else {
+                    ThreadUtil.mipavThreadPool.execute(task);
+                }
             }
-            else {
-                zm1 = z - 1;
+
+            try {
+                doneSignal.await();
             }
-            if (z == (padZDim - 1)) {
-                zp1 = z;
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            else {
-                zp1 = z + 1;
+
+            return output;
+        }
+
+        /**
+         * Filters a slab of planes. The distance between the windows of two voxels is used for both of them, so only
+         * the offsets of one half of the search window are searched, and the windows of the planes before the slab
+         * are compared with the windows of the slab for the other half.
+         *
+         * @param  z0         first plane of the slab
+         * @param  z1         plane after the last plane of the slab
+         * @param  output     receives the filtered voxels
+         * @param  integral   work array for the integral volume of the squared differences
+         * @param  weightSum  work array for the sums of the weights of the voxels of the slab
+         * @param  valueSum   work array for the weighted sums of the voxels of the slab
+         * @param  maxWeight  work array for the largest weights of the voxels of the slab, null for Rician filtering
+         */
+        private void filterSlab(int z0, int z1, double[] output, double[] integral, double[] weightSum,
+                                double[] valueSum, double[] maxWeight) {
+            int slabSize = (z1 - z0) * xDim * yDim;
+            long totalPlanes = (long) zDim * ((2*searchX + 1) * (2*searchY + 1) * (2*searchZ + 1) - 1) / 2;
+            int dx, dy, dz, zLo, zHi, k, pos;
+            double value;
+
+            for (k = 0; k < slabSize; k++) {
+                weightSum[k] = 0.0;
+                valueSum[k] = 0.0;
+                if (maxWeight != null) {
+                    maxWeight[k] = 0.0;
+                }
             }
-            for (y = 0; y < padYDim; y++) {
-                if (y == 0) {
-                    ym1 = y;
+
+            for (dz = 0; dz <= searchZ; dz++) {
+                for (dy = (dz == 0) ? 0 : -searchY; dy <= searchY; dy++) {
+                    for (dx = ((dz == 0) && (dy == 0)) ? 1 : -searchX; dx <= searchX; dx++) {
+
+                        // Planes of the voxels whose windows are compared with the windows dz planes further
+                        zLo = Math.max(0, z0 - dz);
+                        zHi = Math.min(z1, zDim - dz);
+                        if (zLo < zHi) {
+                            integrateSquaredDifferences(dx, dy, dz, zLo, zHi, integral);
+                            compareWindows(dx, dy, dz, zLo, zHi, z0, z1, integral, weightSum, valueSum, maxWeight);
+                        }
+
+                        fireProgressStateChanged(progressStart + (int) ((progressEnd - progressStart) *
+                                                 planesDone.addAndGet(z1 - z0) / totalPlanes));
+                    }
                 }
-                else {
-                    ym1 = y - 1;
+            }
+
+            double s2 = 2.0 * noiseStandardDeviation * noiseStandardDeviation;
+            for (k = 0, pos = xDim * yDim * z0; k < slabSize; k++, pos++) {
+                value = input[pos];
+                if (rician) {
+                    // The voxel itself is weighted 0.5, then the Rician bias is removed
+                    output[pos] = Math.sqrt(Math.max(0, (valueSum[k] + 0.5 * value * value) / (weightSum[k] + 0.5) -
+                                                        s2));
                 }
-                if (y == (padYDim - 1)) {
-                    yp1 = y;
+                else if (weightSum[k] > 0) {
+                    // The voxel itself is weighted as its most similar voxel
+                    output[pos] = (valueSum[k] + maxWeight[k] * value) / (weightSum[k] + maxWeight[k]);
                 }
                 else {
-                    yp1 = y + 1;
+                    output[pos] = value;
                 }
-                for (x = 0; x < padXDim; x++) {
-                    if (x == 0) {
-                        xm1 = x;
-                    }
-                    else {
-                        xm1 = x - 1;
-                    }
-                    if (x == (padXDim - 1)) {
-                        xp1 = x;
-                    }
-                    else {
-                        xp1 = x + 1;
+            }
+        }
+
+        /**
+         * Sums the squared differences between the padded volume and its shift by an offset into an integral volume,
+         * over the planes covered by the windows of a range of planes.
+         *
+         * @param  dx        offset along x
+         * @param  dy        offset along y
+         * @param  dz        offset along z
+         * @param  zLo       first plane of the range
+         * @param  zHi       plane after the last plane of the range
+         * @param  integral  receives the integral volume, with a zero first plane, row and column
+         */
+        private void integrateSquaredDifferences(int dx, int dy, int dz, int zLo, int zHi, double[] integral) {
+            int integralRow = padXDim + 1;
+            int integralSlice = integralRow * (padYDim + 1);
+            int padSliceSize = padXDim * padYDim;
+            int shift = dx + padXDim * dy + padSliceSize * dz;
+            int xLo = Math.max(0, -dx);
+            int xHi = Math.min(padXDim, padXDim - dx);
+            int yLo = Math.max(0, -dy);
+            int yHi = Math.min(padYDim, padYDim - dy);
+            int integralPlanes = zHi - zLo + 2 * halfZ;
+            int px, py, pz, src, dst;
+            double rowSum, diff;
+
+            for (pz = 0; pz < integralPlanes; pz++) {
+                for (py = 0; py < padYDim; py++) {
+                    src = padXDim * py + padSliceSize * (zLo + pz);
+                    dst = 1 + integralRow * (py + 1) + integralSlice * (pz + 1);
+                    rowSum = 0.0;
+                    for (px = 0; px < padXDim; px++) {
+                        if ((px >= xLo) && (px < xHi) && (py >= yLo) && (py < yHi)) {
+                            diff = padded[src + px] - padded[src + px + shift];
+                            rowSum += diff * diff;
+                        }
+                        integral[dst + px] = rowSum + integral[dst + px - integralRow] +
+                                             integral[dst + px - integralSlice] -
+                                             integral[dst + px - integralRow - integralSlice];
                     }
-                    aux[x + y * padXDim + z * padSliceSize] = avConstant * 
-                    (input2[xm1 + ym1 * padXDim + zm1 * padSliceSize] +
-                     input2[x + ym1 * padXDim + zm1 * padSliceSize] +
-                     input2[xp1 + ym1 * padXDim + zm1 * padSliceSize] +
-                     input2[xm1 + y * padXDim + zm1 * padSliceSize] + 
-                     input2[x + y * padXDim + zm1 * padSliceSize] + 
-                     input2[xp1 + y * padXDim + zm1 * padSliceSize] +
-                     input2[xm1 + yp1 * padXDim + zm1 * padSliceSize] + 
-                     input2[x + yp1 * padXDim + zm1 * padSliceSize] + 
-                     input2[xp1 + yp1 * padXDim + zm1 * padSliceSize] +
-                     input2[xm1 + ym1 * padXDim + z * padSliceSize] +
-                     input2[x + ym1 * padXDim + z * padSliceSize] + 
-                     input2[xp1 + ym1 * padXDim + z * padSliceSize] +
-                     input2[xm1 + y * padXDim + z * padSliceSize] + 
-                     input2[x + y * padXDim + z * padSliceSize] + 
-                     input2[xp1 + y * padXDim + z * padSliceSize] +
-                     input2[xm1 + yp1 * padXDim + z * padSliceSize] + 
-                     input2[x + yp1 * padXDim + z * padSliceSize] +
-                     input2[xp1 + yp1 * padXDim + z * padSliceSize] +
-                     input2[xm1 + ym1 * padXDim + zp1 * padSliceSize] +
-                     input2[x + ym1 * padXDim + zp1 * padSliceSize] + 
-                     input2[xp1 + ym1 * padXDim + zp1 * padSliceSize] +
-                     input2[xm1 + y * padXDim + zp1 * padSliceSize] +
-                     input2[x + y * padXDim + zp1 * padSliceSize] +
-                     input2[xp1 + y * padXDim + zp1 * padSliceSize] +
-                     input2[xm1 + yp1 * padXDim + zp1 * padSliceSize] +
-                     input2[x + yp1 * padXDim + zp1 * padSliceSize] + 
-                     input2[xp1 + yp1 * padXDim + zp1 * padSliceSize]
-                     );
                 }
             }
         }
-        
-        for (h = 1; h <= zDim; h++) {
-            fireProgressStateChanged(100 * (h - 1) /zDim);
-            h1 = h + halfSimilarity;
-            qmax = Math.min(h1 + halfSearch, zDim + halfSimilarity);
-            for (i = 1; i <= yDim; i++) {
-                i1 = i + halfSimilarity;
-                rmax = Math.min(i1 + halfSearch, yDim + halfSimilarity);
-                for (j = 1; j <= xDim; j++) {  
-                    j1 = j + halfSimilarity;
-                    for (z = 0; z < similarityWindowSide; z++) {
-                        for (y = 0; y < similarityWindowSide; y++) {
-                            for (x = 0; x < similarityWindowSide; x++) {
-                                W1[x + y * similarityWindowSide + z * similaritySquared] = 
-                                input2[j1 - halfSimilarity - 1 + x + padXDim*(i1 - halfSimilarity - 1 + y) +
-                                       padSliceSize * (h1 - halfSimilarity - 1 + z)];
+
+        /**
+         * Compares the windows of the voxels of a range of planes with the windows of the voxels at an offset, and
+         * adds the weights of the comparisons to the voxels of both windows that are in the slab.
+         *
+         * @param  dx         offset along x
+         * @param  dy         offset along y
+         * @param  dz         offset along z
+         * @param  zLo        first plane of the range
+         * @param  zHi        plane after the last plane of the range
+         * @param  z0         first plane of the slab
+         * @param  z1         plane after the last plane of the slab
+         * @param  integral   the integral volume of the squared differences for the offset
+         * @param  weightSum  the sums of the weights of the voxels of the slab
+         * @param  valueSum   the weighted sums of the voxels of the slab
+         * @param  maxWeight  the largest weights of the voxels of the slab, null for Rician filtering
+         */
+        private void compareWindows(int dx, int dy, int dz, int zLo, int zHi, int z0, int z1, double[] integral,
+                                    double[] weightSum, double[] valueSum, double[] maxWeight) {
+            int sliceSize = xDim * yDim;
+            int slabSize = (z1 - z0) * sliceSize;
+            int integralRow = padXDim + 1;
+            int integralSlice = integralRow * (padYDim + 1);
+            int offset = dx + xDim * dy + sliceSize * dz;
+            int xLo = Math.max(0, -dx);
+            int xHi = Math.min(xDim, xDim - dx);
+            int yLo = Math.max(0, -dy);
+            int yHi = Math.min(yDim, yDim - dy);
+            int x, y, z, d, c, k, pos;
+            int[] corner;
+            double dist, w, value, partnerValue;
+
+            for (z = zLo; z < zHi; z++) {
+                for (y = yLo; y < yHi; y++) {
+                    for (x = xLo; x < xHi; x++) {
+                        pos = x + xDim * y + sliceSize * z;
+                        if ((neighborhoodMeans != null) &&
+                            (Math.abs(neighborhoodMeans[pos] - neighborhoodMeans[pos + offset]) >
+                             noiseStandardDeviation)) {
+                            continue;
+                        }
+
+                        c = (x + halfX) + integralRow * (y + halfY) + integralSlice * (z - zLo + halfZ);
+                        dist = 0.0;
+                        for (d = firstBox; d < boxWeights.length; d++) {
+                            corner = corners[d];
+                            if (corner.length == 4) {
+                                dist += boxWeights[d] * (integral[c + corner[3]] - integral[c + corner[2]] -
+                                                         integral[c + corner[1]] + integral[c + corner[0]]);
+                            }
+                            else {
+                                dist += boxWeights[d] * (integral[c + corner[7]] - integral[c + corner[6]] -
+                                                         integral[c + corner[5]] + integral[c + corner[4]] -
+                                                         integral[c + corner[3]] + integral[c + corner[2]] +
+                                                         integral[c + corner[1]] - integral[c + corner[0]]);
                             }
                         }
+
+                        if (rician) {
+                            dist = dist / filterParameter;
+                            w = 1.0 / (1.0 + dist * dist);
+                            value = input[pos + offset] * input[pos + offset];
+                            partnerValue = input[pos] * input[pos];
+                        }
+                        else {
+                            w = Math.exp(-dist / filterParameter);
+                            value = input[pos + offset];
+                            partnerValue = input[pos];
+                        }
+
+                        // The voxel and its partner, for those of them that are in the slab
+                        k = pos - sliceSize * z0;
+                        if (k >= 0) {
+                            accumulate(k, w, value, weightSum, valueSum, maxWeight);
+                        }
+                        if (k + offset < slabSize) {
+                            accumulate(k + offset, w, partnerValue, weightSum, valueSum, maxWeight);
+                        }
                     }
-                    
-                    smin = Math.max(j1 - halfSearch, halfSimilarity + 1);
-                    smax = Math.min(j1 + halfSearch, xDim + halfSimilarity);
-                    for (q = h1; q <= qmax; q++) {
-                        for (r = i1; r <= rmax; r++) {
-                            for (s = smin; s <= smax; s++) {
-                                // Processing symmetrically the window so only have the distances have to be explored
-                                if ((q == h1) && (r == i1) && (s <= j1)) {
-                                    continue;
-                                }
-                                
-                                if (Math.abs(aux[j1 - 1 + padXDim * (i1 - 1) + padSliceSize * (h1 - 1)] -
-                                    aux[s - 1 + padXDim * (r - 1) + padSliceSize * (q - 1)]) > 
-                                    noiseStandardDeviation) {
-                                        continue;
-                                }
-                                
-                                for (z = 0; z < similarityWindowSide; z++) {
-                                    for (y = 0; y < similarityWindowSide; y++) {
-                                        for (x = 0; x < similarityWindowSide; x++) {
-                                            W2[x + y * similarityWindowSide + z * similaritySquared] = 
-                                            input2[s - halfSimilarity - 1 + x + padXDim*(r - halfSimilarity - 1 + y) +
-                                                   padSliceSize * (q - halfSimilarity - 1 + z)];
-                                        }
-                                    }
-                                }
-                                
-                                dsum = 0.0;
-                                for (k = 0; k < kernel.length; k++) {
-                                    w12 = W1[k] - W2[k];
-                                    dsum += (kernel[k] * w12 * w12);
-                                }
-                                dsum = dsum / filterParameter;
-                                w = 1.0 / (1.0 + dsum * dsum);
-                                
-                                sweight[j - 1 + xDim * (i - 1) + sliceSize * (h - 1)]  += w;
-                                output[j - 1 + xDim * (i - 1) + sliceSize * (h - 1)] += 
-                                w * input2[s - 1 + padXDim * (r - 1) + padSliceSize * (q - 1)] *
-                                input2[s - 1 + padXDim * (r - 1) + padSliceSize * (q - 1)];
-                                
-                                sweight[s - halfSimilarity - 1 + xDim * (r - halfSimilarity - 1) +
-                                        sliceSize * (q - halfSimilarity - 1)] += w;
-                                output[s - halfSimilarity - 1 + xDim * (r - halfSimilarity - 1) +
-                                       sliceSize * (q - halfSimilarity - 1)] +=
-                                w * input2[j1 - 1 + padXDim * (i1 - 1) + padSliceSize * (h1 - 1)] *
-                                    input2[j1 - 1 + padXDim * (i1 - 1) + padSliceSize * (h1 - 1)];
-                                w = Math.exp(-dsum/filterParameter);
-                            } // for (s = smin; s <= smax; s++)
-                        } // for (r = rmin; r <= rmax; r++)
-                    } // for (q = qmin; q <= qmax; q++)
-                    pos = j - 1 + xDim * (i - 1) + sliceSize * (h - 1);
-                    sweight[pos] += 0.5;
-                    output[pos] += 0.5 * input[pos] * input[pos];
-                    
-                    // Rician correction
-                    output[pos] = (float)Math.sqrt(Math.max(0, output[pos]/sweight[pos] - s2));
-                } // for (j = 1; j <= xDim; j++)
-            } // for (i = 1; i <= yDim; i++) 
-        } // for (h = 1; j <= zDim; h++)
-        try {
-            if (destImage != null) {
-                destImage.importData(0, output, true);
-            }
-            else {
-                srcImage.importData(0, output, true);
+                }
             }
         }
-        catch(IOException e) {
-            MipavUtil.displayError("IOException on importData(0, output, true");
-            setCompleted(false);
-            return;
+
+        /**
+         * Adds a weighted voxel to the sums of a voxel of the slab.
+         *
+         * @param  k          index of the voxel in the slab
+         * @param  w          the weight
+         * @param  value      the value of the weighted voxel, squared for Rician filtering
+         * @param  weightSum  the sums of the weights of the voxels of the slab
+         * @param  valueSum   the weighted sums of the voxels of the slab
+         * @param  maxWeight  the largest weights of the voxels of the slab, null for Rician filtering
+         */
+        private void accumulate(int k, double w, double value, double[] weightSum, double[] valueSum,
+                                double[] maxWeight) {
+            weightSum[k] += w;
+            valueSum[k] += w * value;
+            if ((maxWeight != null) && (w > maxWeight[k])) {
+                maxWeight[k] = w;
+            }
         }
-     
-        
-        fireProgressStateChanged(100);
-        time = System.currentTimeMillis() - time;
-        Preferences.debug("Seconds elapsed in AlgorithmNonlocalMeansFilter = " + (time/1000.0) + "\n", 
-        		Preferences.DEBUG_ALGORITHM);
-        setCompleted(true);
-        return;    
-    }
 
+        /**
+         * Returns the sum of the 3 x 3 voxels of a plane of the padded volume around a voxel.
+         *
+         * @param   xm1  the column before the voxel
+         * @param   x    the column of the voxel
+         * @param   xp1  the column after the voxel
+         * @param   ym1  the row before the voxel
+         * @param   y    the row of the voxel
+         * @param   yp1  the row after the voxel
+         * @param   z    the plane
+         *
+         * @return  the sum
+         */
+        private double planeSum(int xm1, int x, int xp1, int ym1, int y, int yp1, int z) {
+            int plane = padXDim * padYDim * z;
+            return padded[xm1 + padXDim * ym1 + plane] + padded[x + padXDim * ym1 + plane] +
+                   padded[xp1 + padXDim * ym1 + plane] + padded[xm1 + padXDim * y + plane] +
+                   padded[x + padXDim * y + plane] + padded[xp1 + padXDim * y + plane] +
+                   padded[xm1 + padXDim * yp1 + plane] + padded[x + padXDim * yp1 + plane] +
+                   padded[xp1 + padXDim * yp1 + plane];
+        }
 
+        /**
+         * Maps a coordinate outside of an extent inside it by mirror reflection about the edges.
+         *
+         * @param   i    the coordinate
+         * @param   dim  the extent
+         *
+         * @return  the reflected coordinate
+         */
+        private int mirror(int i, int dim) {
+            if (i < 0) {
+                i = -1 - i;
+            }
+            if (i >= dim) {
+                i = 2 * dim - 1 - i;
+            }
+            return Math.max(0, Math.min(dim - 1, i));
+        }
+    }
 }
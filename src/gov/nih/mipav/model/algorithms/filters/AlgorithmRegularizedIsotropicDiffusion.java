@@ -66,6 +66,12 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
     /** Standard deviation used for the Gaussians. */
     private float stdDev = 1.0f;
 
+    /** Runs the iterations on slabs of the image in parallel. */
+    private DiffusionStepper stepper;
+
+    /** Relative change of the image at which the iterations stop early; 0 runs all the iterations. */
+    private double stopTolerance = 0;
+
     /** Storage location for the 1D gaussian kernels. */
     private float[] xDataRound = null;
 
@@ -107,6 +113,7 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
     public void finalize() {
         srcImage = null;
         sigmas = null;
+        stepper = null;
         xDataRound = null;
         yDataRound = null;
         zDataRound = null;
@@ -130,6 +137,15 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
             timeStep = 0.15f;
         }
 
+        int[] extents = srcImage.getExtents();
+
+        if ((srcImage.getNDims() == 2) || do25D) {
+            extents = new int[] {extents[0], extents[1]};
+        }
+
+        stepper = new DiffusionStepper(extents, multiThreadingEnabled ? nthreads : 1);
+        stepper.setStopTolerance(stopTolerance);
+
         if (srcImage.isColorImage()) {
 
             if (srcImage.getNDims() == 2) {
@@ -151,6 +167,17 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
         }
     } // end run()
 
+    /**
+     * Sets the relative change of the image, the root of the summed squared change of an iteration over the root of
+     * the summed squared image, at which the iterations of a grayscale image stop before the number of iterations is
+     * reached.
+     *
+     * @param  tolerance  the relative change; 0 or less always runs all the iterations
+     */
+    public void setStopTolerance(double tolerance) {
+        stopTolerance = tolerance;
+    }
+
     /**
      * Returns the weighting for values used in computing new (diffused) pixel values.
      *
@@ -244,12 +271,28 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
      * @param  img  float [] source buffer
      * @param  mag  float [] a buffer where the gradient magnitude will be placed
      */
-    private void gradientMagnitude(float[] img, float[] mag) {
+    private void gradientMagnitude(final float[] img, final float[] mag) {
+        stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                public void apply(int firstRow, int endRow) {
+                    gradientMagnitude(img, mag, firstRow, endRow);
+                }
+            });
+    } // end gradientMagnitude(...)
+
+    /**
+     * Computes the gradient magnitude of a range of rows of the buffer passed in.
+     *
+     * @param  img       float [] source buffer
+     * @param  mag       float [] a buffer where the gradient magnitude will be placed
+     * @param  firstRow  int first row
+     * @param  endRow    int row after the last one
+     */
+    private void gradientMagnitude(float[] img, float[] mag, int firstRow, int endRow) {
         int row, col, cIndex;
         float gradX;
         float gradY;
 
-        for (row = 0; row < yDim; row++) {
+        for (row = firstRow; row < endRow; row++) {
             cIndex = row * xDim;
 
             for (col = 0; col < xDim; cIndex++, col++) {
@@ -285,14 +328,30 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
      * @param  img  float [] source buffer
      * @param  mag  float [] a buffer where the gradient magnitude will be placed
      */
-    private void gradientMagnitude3D(float[] img, float[] mag) {
+    private void gradientMagnitude3D(final float[] img, final float[] mag) {
+        stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                public void apply(int firstSlice, int endSlice) {
+                    gradientMagnitude3D(img, mag, firstSlice, endSlice);
+                }
+            });
+    } // end gradientMagnitude3D(...)
+
+    /**
+     * Computes the gradient magnitude of a range of slices of the buffer passed in.
+     *
+     * @param  img         float [] source buffer
+     * @param  mag         float [] a buffer where the gradient magnitude will be placed
+     * @param  firstSlice  int first slice
+     * @param  endSlice    int slice after the last one
+     */
+    private void gradientMagnitude3D(float[] img, float[] mag, int firstSlice, int endSlice) {
         int slice, row, col, cIndex, sIndex;
         float gradX;
         float gradY;
         float gradZ;
         int sliceSize = yDim * xDim;
 
-        for (slice = 0; slice < zDim; slice++) {
+        for (slice = firstSlice; slice < endSlice; slice++) {
             sIndex = slice * sliceSize;
 
             for (row = 0; row < yDim; row++) {
@@ -431,19 +490,18 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
         yDim = extents[1];
         length = xDim * yDim;
 
-        // buffers for the image data
+        // buffers for the image data; the stepper holds the source and result buffers and swaps them every iteration
         float[] sourceBuffer;
         float[] resultBuffer;
         float[] gaussianBuffer;
-        float[] gradientBuffer;
+        final float[] gradientBuffer;
 
         // copy the image data into the sourceBuffer so we can access it
         try {
             sourceBuffer = new float[length];
-            resultBuffer = new float[length];
             gradientBuffer = new float[length];
+            stepper.setImage(sourceBuffer);
         } catch (OutOfMemoryError e) {
-            sourceBuffer = resultBuffer = gaussianBuffer = gradientBuffer = null;
             errorCleanUp("AlgorithmRegularizedIsotropicDiffusion: Out of memory when creating image buffer", true);
 
             return;
@@ -465,17 +523,17 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
         
         for (int imgNumber = 0; imgNumber < numImages; imgNumber++) {
             startIndex = imgNumber * length;
+            sourceBuffer = stepper.getImage();
 
             try {
                 srcImage.exportData(startIndex, length, sourceBuffer);
             } catch (IOException error) {
-                sourceBuffer = resultBuffer = gaussianBuffer = gradientBuffer = null;
                 errorCleanUp("AlgorithmRegularizedIsotropicDiffusion: could NOT export source image", true);
 
                 return;
             } // catch()
 
-            for (int iterNum = 0; iterNum < numIterations; iterNum++) {
+            for (int iterNum = 0; (iterNum < numIterations) && !threadStopped; iterNum++) {
             	progressValue +=stepProgressValue;
                 fireProgressStateChanged((int)progressValue);
                 // make the magnitude of the gradient image of the gaussian smoothed source image
@@ -484,32 +542,35 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
                 // MipavUtil.arrayCopy(srcBuffer, 0, inputBuffer, 0, srcBuffer.length);
                 // so having the constructor before the iteration loop would result in
                 // using the initial srcBuffer for each iteration.
-                algoSepConvolver = new AlgorithmSeparableConvolver(sourceBuffer, extents, new float[][]{xDataRound,
-                                                                   yDataRound}, srcImage.isColorImage());
+                algoSepConvolver = new AlgorithmSeparableConvolver(stepper.getImage(), extents,
+                                                                   new float[][]{xDataRound, yDataRound},
+                                                                   srcImage.isColorImage());
                 algoSepConvolver.run();
                 gaussianBuffer = algoSepConvolver.getOutputBuffer();
                 algoSepConvolver.finalize();
                 algoSepConvolver = null;
                 gradientMagnitude(gaussianBuffer, gradientBuffer);
-                upDateImage(resultBuffer, sourceBuffer, gradientBuffer);
+                lambda = contrast * stepper.maximum(gradientBuffer);
 
-                // copy resultBuffer to sourceBuffer for the next iteration
-                if (iterNum < (numIterations - 1)) {
+                if (stepper.step(new DiffusionStepper.StepOperation() {
+                            public void apply(float[] current, float[] next, int firstRow, int endRow) {
+                                upDateImage(next, current, gradientBuffer, firstRow, endRow);
+                            }
+                        })) {
+                    progressValue += stepProgressValue * (numIterations - iterNum - 1);
 
-                    for (int i = 0; i < length; i++) {
-                        sourceBuffer[i] = resultBuffer[i];
-                    }
+                    break;
                 }
-                
             } // end for (int iterNum = 0; ...)
 
-            // OK, the resultBuffer is filled with the results of the algorithm,
+            // OK, the result is in the current buffer of the stepper,
             // put this data into the destination image so it will be displayed in
             // in the ViewJFrameWizard
+            resultBuffer = stepper.getImage();
+
             try {
                 destImage.importData(startIndex, resultBuffer, true);
             } catch (IOException error) {
-                sourceBuffer = resultBuffer = gaussianBuffer = gradientBuffer = null;
                 errorCleanUp("AlgorithmRegularizedIsotropicDiffusion: Could NOT import resultBuffer to the image",
                              true);
 
@@ -846,20 +907,18 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
         zDim = extents[2];
         length = xDim * yDim * zDim;
 
-        // buffers for the image data
+        // buffers for the image data; the stepper holds the source and result buffers and swaps them every iteration
         float[] sourceBuffer;
         float[] resultBuffer;
         float[] gaussianBuffer;
-        float[] gradientBuffer;
+        final float[] gradientBuffer;
 
         // copy the image data into the sourceBuffer so we can access it
         try {
             sourceBuffer = new float[length];
-            resultBuffer = new float[length];
-            gaussianBuffer = new float[length];
             gradientBuffer = new float[length];
+            stepper.setImage(sourceBuffer);
         } catch (OutOfMemoryError e) {
-            sourceBuffer = resultBuffer = gaussianBuffer = gradientBuffer = null;
             errorCleanUp("AlgorithmRegularizedIsotropicDiffusion: Out of memory when creating image buffer", true);
 
             return;
@@ -877,7 +936,6 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
         try {
             srcImage.exportData(0, length, sourceBuffer);
         } catch (IOException error) {
-            sourceBuffer = resultBuffer = gaussianBuffer = gradientBuffer = null;
             errorCleanUp("AlgorithmRegularizedIsotropicDiffusion: could NOT export source image", true);
 
             return;
@@ -885,7 +943,7 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
 
         float stepProgressValue = ((float)100)/numIterations;
 
-        for (int iterNum = 0; iterNum < numIterations; iterNum++) {
+        for (int iterNum = 0; (iterNum < numIterations) && !threadStopped; iterNum++) {
             // make the magnitude of the gradient image of the gaussian smoothed
             // source image
             // A separate constructor AlgorithmSeparableConvolver call is needed for each iteration
@@ -893,7 +951,7 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
             // MipavUtil.arrayCopy(srcBuffer, 0, inputBuffer, 0, srcBuffer.length);
             // so having the constructor before the iteration loop would result in
             // using the initial srcBuffer for each iteration.
-            algoSepConvolver = new AlgorithmSeparableConvolver(sourceBuffer, extents, new float[][]{xDataRound, 
+            algoSepConvolver = new AlgorithmSeparableConvolver(stepper.getImage(), extents, new float[][]{xDataRound, 
                     yDataRound, zDataRound}, srcImage.isColorImage());
             linkProgressToAlgorithm(algoSepConvolver);
         	algoSepConvolver.setProgressValues(generateProgressValues(getMinProgressValue() + Math.round(stepProgressValue * iterNum),
@@ -904,26 +962,27 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
             algoSepConvolver = null;
 
             gradientMagnitude3D(gaussianBuffer, gradientBuffer);
-            upDateImage3D(resultBuffer, sourceBuffer, gradientBuffer);
+            lambda = contrast * stepper.maximum(gradientBuffer);
 
-            // copy resultBuffer to sourceBuffer for the next iteration
-            if (iterNum < (numIterations - 1)) {
-
-                for (int i = 0; i < length; i++) {
-                    sourceBuffer[i] = resultBuffer[i];
-                }
+            if (stepper.step(new DiffusionStepper.StepOperation() {
+                        public void apply(float[] current, float[] next, int firstSlice, int endSlice) {
+                            upDateImage3D(next, current, gradientBuffer, firstSlice, endSlice);
+                        }
+                    })) {
+                break;
             }
         } // end for (int iterNum = 0; ...)
 
         fireProgressStateChanged(100);
 
-        // OK, the resultBuffer is filled with the results of the algorithm,
+        // OK, the result is in the current buffer of the stepper,
         // put this data into the destination image so it will be displayed in
         // in the ViewJFrameWizard
+        resultBuffer = stepper.getImage();
+
         try {
             destImage.importData(0, resultBuffer, true);
         } catch (IOException error) {
-            sourceBuffer = resultBuffer = gaussianBuffer = gradientBuffer = null;
             errorCleanUp("AlgorithmRegularizedIsotropicDiffusion: Could NOT import resultBuffer to the image", true);
 
             return;
@@ -1236,25 +1295,32 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
      * @param  gradBuffer   float [] The initialized buffer containing the magnitude of the gradient of the Gaussian
      *                      blurred input image
      */
-    private void upDateImage(float[] resltBuffer, float[] srcBuffer, float[] gradBuffer) {
+    private void upDateImage(final float[] resltBuffer, final float[] srcBuffer, final float[] gradBuffer) {
+        lambda = contrast * stepper.maximum(gradBuffer);
+        stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                public void apply(int firstRow, int endRow) {
+                    upDateImage(resltBuffer, srcBuffer, gradBuffer, firstRow, endRow);
+                }
+            });
+    } // end upDateImage(...)
+
+    /**
+     * Computes a range of rows of the diffused image. lambda must have been set from the gradient magnitude.
+     *
+     * @param  resltBuffer  float [] The preallocated result buffer
+     * @param  srcBuffer    float [] The initialized source buffer containing the input image
+     * @param  gradBuffer   float [] The initialized buffer containing the magnitude of the gradient of the Gaussian
+     *                      blurred input image
+     * @param  firstRow     int first row
+     * @param  endRow       int row after the last one
+     */
+    private void upDateImage(float[] resltBuffer, float[] srcBuffer, float[] gradBuffer, int firstRow, int endRow) {
         int row, col, cIndex;
         float leftGradVal, rightGradVal, topGradVal, bottomGradVal, centerGradVal;
         float leftImgVal, rightImgVal, topImgVal, bottomImgVal, centerImgVal;
         float leftDiffVal, rightDiffVal, topDiffVal, bottomDiffVal, centerDiffVal;
-        float maxGrad = gradBuffer[0];
-        int length = yDim * xDim;
-
-        for (int idx = 1; idx < length; idx++) {
 
-            if (gradBuffer[idx] > maxGrad) {
-                maxGrad = gradBuffer[idx];
-            }
-        } // for (int idx = 1; ...)
-
-        lambda = contrast * maxGrad;
-
-
-        for (row = 0; row < yDim; row++) {
+        for (row = firstRow; row < endRow; row++) {
             cIndex = row * xDim;
 
             for (col = 0, cIndex += col; col < xDim; cIndex++, col++) {
@@ -1303,7 +1369,27 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
      * @param  gradBuffer   float [] The initialized buffer containing the magnitude of the gradient of the Gaussian
      *                      blurred input image
      */
-    private void upDateImage3D(float[] resltBuffer, float[] srcBuffer, float[] gradBuffer) {
+    private void upDateImage3D(final float[] resltBuffer, final float[] srcBuffer, final float[] gradBuffer) {
+        lambda = contrast * stepper.maximum(gradBuffer);
+        stepper.forEachSlab(new DiffusionStepper.SlabOperation() {
+                public void apply(int firstSlice, int endSlice) {
+                    upDateImage3D(resltBuffer, srcBuffer, gradBuffer, firstSlice, endSlice);
+                }
+            });
+    } // end upDateImage3D(...)
+
+    /**
+     * Computes a range of slices of the diffused image. lambda must have been set from the gradient magnitude.
+     *
+     * @param  resltBuffer  float [] The preallocated result buffer
+     * @param  srcBuffer    float [] The initialized source buffer containing the input image
+     * @param  gradBuffer   float [] The initialized buffer containing the magnitude of the gradient of the Gaussian
+     *                      blurred input image
+     * @param  firstSlice   int first slice
+     * @param  endSlice     int slice after the last one
+     */
+    private void upDateImage3D(float[] resltBuffer, float[] srcBuffer, float[] gradBuffer, int firstSlice,
+                               int endSlice) {
         int slice, row, col, sIndex, cIndex;
         float leftGradVal, rightGradVal, topGradVal, bottomGradVal, centerGradVal;
         float zLowGradVal, zHighGradVal;
@@ -1311,20 +1397,9 @@ public class AlgorithmRegularizedIsotropicDiffusion extends AlgorithmBase {
         float zLowImgVal, zHighImgVal;
         float leftDiffVal, rightDiffVal, topDiffVal, bottomDiffVal, centerDiffVal;
         float zLowDiffVal, zHighDiffVal;
-        float maxGrad = gradBuffer[0];
         int sliceSize = yDim * xDim;
-        int length = zDim * sliceSize;
-
-        for (int idx = 1; idx < length; idx++) {
-
-            if (gradBuffer[idx] > maxGrad) {
-                maxGrad = gradBuffer[idx];
-            }
-        } // for (int idx = 1; ...)
-
-        lambda = contrast * maxGrad;
 
-        for (slice = 0; slice < zDim; slice++) {
+        for (slice = firstSlice; slice < endSlice; slice++) {
             sIndex = slice * sliceSize;
 
             for (row = 0; row < yDim; row++) {
@@ -4,12 +4,12 @@ package gov.nih.mipav.model.algorithms.filters;
 import gov.nih.mipav.model.algorithms.*;
 import gov.nih.mipav.model.structures.*;
 
+import gov.nih.mipav.util.ThreadUtil;
+
 import gov.nih.mipav.view.*;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
 /*
  * This is a port of the GITHUB code BM3D_py-master.
  * The README.md file has:
@@ -75,8 +75,6 @@ import java.util.Comparator;
  */
 import java.util.Vector;
 
-import Jama.Matrix;
-
 public class BM3D extends AlgorithmBase {
 	
 	// destImage[0] is output of stage 1 with hard thresholding
@@ -155,6 +153,7 @@ public class BM3D extends AlgorithmBase {
 		this.estimateNoiseStandardDeviation = estimateNoiseStandardDeviation;
 		this.sigma = sigma;
 		this.n_H = n_H;
+		this.N_H = N_H;
 		this.p_H = p_H;
 		this.useSD_H = useSD_H;
 		this.tau_2D_H = tau_2D_H;
@@ -217,6 +216,11 @@ public class BM3D extends AlgorithmBase {
 		ModelImage noisy_im_p = symetrize(srcImage, n_H);
 		
 		double img_basic_pad[][] = bm3d_1st_step(sigma, noisy_im_p, n_H, k_H, N_H, p_H, lambda3D_H, tauMatch_H, useSD_H, tau_2D_H);
+		if (img_basic_pad == null) {
+			noisy_im_p.disposeLocal();
+			setCompleted(false);
+			return;
+		}
 		double img_basic_arr[] = new double[srcImage.getExtents()[1]*srcImage.getExtents()[0]];
 		for (y = n_H; y < noisy_im_p.getExtents()[1] - n_H; y++) {
 			for (x = n_H; x < noisy_im_p.getExtents()[0] - n_H; x++) {
@@ -244,6 +248,12 @@ public class BM3D extends AlgorithmBase {
 		noisy_im_p = null;
 		noisy_im_p = symetrize(srcImage, n_W);
 		double img_denoised_pad[][] = bm3d_2nd_step(sigma, noisy_im_p, img_basic_p, n_W, k_W, N_W, p_W, tauMatch_W, useSD_W, tau_2D_W);
+		if (img_denoised_pad == null) {
+			noisy_im_p.disposeLocal();
+			img_basic_p.disposeLocal();
+			setCompleted(false);
+			return;
+		}
 		double img_denoised_arr[] = new double[srcImage.getExtents()[1]*srcImage.getExtents()[0]];
 		for (y = n_W; y < noisy_im_p.getExtents()[1] - n_W; y++) {
 			for (x = n_W; x < noisy_im_p.getExtents()[0] - n_W; x++) {
@@ -271,382 +281,452 @@ public class BM3D extends AlgorithmBase {
 	
 	private double[][] bm3d_2nd_step(double sigma, ModelImage img_noisy, ModelImage img_basic, int nWien, int kWien, 
 			int NWien, int pWien, double tauMatch, boolean useSD, String tau_2D) {
-		int ii,jj,h,i,j,k,m,n,w,x,y;
-		int acc_pointer, i_r, j_r, nSx_r;
-		int ni,nj;
-		double group_3D_img[][][];
-		double group_3D_est[][][];
-		double group_3D[][][];
-		double group_3D_transpose[][][];
-		double weight[] = new double[1];
-	    int height = img_noisy.getExtents()[1];
-	    int width = img_noisy.getExtents()[0];
-	    int row_ind[] = ind_initialize(height - kWien + 1, nWien, pWien);
-	    int column_ind[] = ind_initialize(width - kWien + 1, nWien, pWien);
-	    
-	    double kaiserWindow[][] = get_kaiserWindow(kWien);
-	    int threshold_count[][] = new int[height][width];
-	    int ri_rj_N__ni_nj[][][][] = precompute_BM(img_basic, kWien, NWien, nWien, tauMatch, threshold_count);
-	    int group_len = 0;
-	    for (h = 0; h < height; h++) {
-	    	for (w = 0; w < width; w++) {
-	    		group_len += threshold_count[h][w];
-	    	}
+		int height = img_noisy.getExtents()[1];
+		int width = img_noisy.getExtents()[0];
+		int row_ind[] = ind_initialize(height - kWien + 1, nWien, pWien);
+		int column_ind[] = ind_initialize(width - kWien + 1, nWien, pWien);
+		double noisy_buf[] = image2buffer(img_noisy);
+		double basic_buf[] = image2buffer(img_basic);
+		if ((noisy_buf == null) || (basic_buf == null)) {
+			return null;
+		}
+		
+		// The patches are transformed once and shared by all the groups they are in
+		PatchTransform transform = new PatchTransform(tau_2D, kWien);
+		double fre_noisy_patches[][] = transform.forwardAll(noisy_buf, width, height);
+		double fre_basic_patches[][] = transform.forwardAll(basic_buf, width, height);
+		
+		return aggregate(basic_buf, fre_noisy_patches, fre_basic_patches, width, height, row_ind, column_ind, kWien,
+				NWien, nWien, tauMatch, sigma, 0.0, useSD, transform);
+	}
+	
+	private double[][] bm3d_1st_step(double sigma, ModelImage img_noisy, int nHard, int kHard, int NHard, int pHard, double lambdaHard3D,
+			double tauMatch, boolean useSD, String tau_2D) {
+		int width = img_noisy.getExtents()[0];
+		int height = img_noisy.getExtents()[1];
+		int row_ind[] = ind_initialize(height - kHard + 1, nHard, pHard);
+		int column_ind[] = ind_initialize(width - kHard + 1, nHard, pHard);
+		double noisy_buf[] = image2buffer(img_noisy);
+		if (noisy_buf == null) {
+			return null;
+		}
+		
+		// The patches are transformed once and shared by all the groups they are in
+		PatchTransform transform = new PatchTransform(tau_2D, kHard);
+		double fre_all_patches[][] = transform.forwardAll(noisy_buf, width, height);
+		
+		return aggregate(noisy_buf, fre_all_patches, null, width, height, row_ind, column_ind, kHard, NHard, nHard,
+				tauMatch, sigma, lambdaHard3D, useSD, transform);
+	}
+	
+	private double[][] aggregate(final double match_buf[], final double fre_patches[][],
+			final double fre_basic_patches[][], final int width, final int height, final int row_ind[],
+			final int column_ind[], final int kHW, final int NHW, final int nHW, final double tauMatch,
+			final double sigma, final double lambdaHard3D, final boolean useSD, final PatchTransform transform) {
+		// Block matching, collaborative filtering and aggregation of the groups of the reference patches.
+		// The rows of reference patches are split into bands, one per thread.  Each band aggregates into its own
+		// numerator and denominator covering the rows its groups can reach, which are added to the image ones at
+		// the end in band order.
+		// fre_basic_patches: null for the hard thresholding step, the basic estimate patches for the Wiener step
+		int h, w, t, i;
+		int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, row_ind.length)) : 1;
+		final double kaiserWindow[] = new double[kHW * kHW];
+		double kaiser2D[][] = get_kaiserWindow(kHW);
+		for (h = 0; h < kHW; h++) {
+			for (w = 0; w < kHW; w++) {
+				kaiserWindow[h*kHW + w] = kaiser2D[h][w];
+			}
+		}
+		final GroupFilter bands[] = new GroupFilter[nTasks];
+		final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+		for (t = 0; t < nTasks; t++) {
+			final int first = (int) ((long) row_ind.length * t / nTasks);
+			final int last = (int) ((long) row_ind.length * (t + 1) / nTasks);
+			bands[t] = new GroupFilter(match_buf, fre_patches, fre_basic_patches, width, height, kHW, NHW, nHW,
+					tauMatch, sigma, lambdaHard3D, useSD, transform, kaiserWindow, row_ind[first] - nHW,
+					row_ind[last - 1] + kHW + nHW);
+			final GroupFilter band = bands[t];
+			Runnable task = new Runnable() {
+				public void run() {
+					try {
+						band.run(row_ind, first, last, column_ind);
+					}
+					finally {
+						doneSignal.countDown();
+					}
+				}
+			};
+			if (nTasks == 1) {
+				task.run();
+			}
+			else {
+				ThreadUtil.mipavThreadPool.execute(task);
+			}
+		}
+		try {
+			doneSignal.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		double numerator[][] = new double[height][width];
+		double denominator[][] = new double[height][width];
+		for (h = 0; h < height; h++) {
+			for (w = 0; w < width; w++) {
+				if ((h < nHW) || (h >= height - nHW) || (w < nHW) || (w >= width - nHW)) {
+					denominator[h][w] = 1.0;
+				}
+			}
+		}
+		for (t = 0; t < nTasks; t++) {
+			GroupFilter band = bands[t];
+			for (h = band.firstRow, i = 0; h < band.lastRow; h++) {
+				for (w = 0; w < width; w++, i++) {
+					numerator[h][w] += band.numerator[i];
+					denominator[h][w] += band.denominator[i];
+				}
+			}
+		}
+		double img_aggregated[][] = new double[height][width];
+		for (h = 0; h < height; h++) {
+			for (w = 0; w < width; w++) {
+				img_aggregated[h][w] = numerator[h][w]/denominator[h][w];
+			}
+		}
+		return img_aggregated;
+	}
+	
+	private class GroupFilter {
+		// Block matching, filtering and aggregation of the groups of a band of rows of reference patches, with the
+		// work arrays of one thread
+		private final double match_buf[];
+		private final double fre_patches[][];
+		private final double fre_basic_patches[][];
+		private final int width;
+		private final int height;
+		private final int kHW;
+		private final int NHW;
+		private final int nHW;
+		private final double threshold;
+		private final double sigma;
+		private final double lambdaHard3D;
+		private final boolean useSD;
+		private final PatchTransform transform;
+		private final double kaiserWindow[];
+		// rows of the image covered by the numerator and denominator of the band
+		private final int firstRow;
+		private final int lastRow;
+		private final double numerator[];
+		private final double denominator[];
+		
+		public GroupFilter(double match_buf[], double fre_patches[][], double fre_basic_patches[][], int width,
+				int height, int kHW, int NHW, int nHW, double tauMatch, double sigma, double lambdaHard3D,
+				boolean useSD, PatchTransform transform, double kaiserWindow[], int firstRow, int lastRow) {
+			this.match_buf = match_buf;
+			this.fre_patches = fre_patches;
+			this.fre_basic_patches = fre_basic_patches;
+			this.width = width;
+			this.height = height;
+			this.kHW = kHW;
+			this.NHW = NHW;
+			this.nHW = nHW;
+			this.threshold = tauMatch * kHW * kHW;
+			this.sigma = sigma;
+			this.lambdaHard3D = lambdaHard3D;
+			this.useSD = useSD;
+			this.transform = transform;
+			this.kaiserWindow = kaiserWindow;
+			this.firstRow = Math.max(0, firstRow);
+			this.lastRow = Math.min(height, lastRow);
+			numerator = new double[(this.lastRow - this.firstRow) * width];
+			denominator = new double[(this.lastRow - this.firstRow) * width];
+		}
+		
+		public void run(int row_ind[], int first, int last, int column_ind[]) {
+			int i, j, n, s, c, ni, nj, i_r, j_r, nSx_r;
+			int Ns = 2 * nHW + 1;
+			int kk = kHW * kHW;
+			int numColumns = column_ind.length;
+			int near_offsets[] = new int[(last - first) * numColumns * NHW];
+			int threshold_count[] = new int[(last - first) * numColumns];
+			double group_3D[] = new double[kk * NHW];
+			double group_3D_est[] = (fre_basic_patches != null) ? new double[kk * NHW] : null;
+			double patch[] = new double[kk];
+			double work[] = new double[kk];
+			double weight;
+			
+			precompute_BM(row_ind, first, last, column_ind, near_offsets, threshold_count);
+			threshold_count = closest_power_of_2(threshold_count, NHW);
+			
+			for (i = first; i < last; i++) {
+				i_r = row_ind[i];
+				for (j = 0; j < numColumns; j++) {
+					j_r = column_ind[j];
+					n = (i - first) * numColumns + j;
+					nSx_r = threshold_count[n];
+					
+					// stack the frequency patches into a 3D group, coefficient c of patch s at c*nSx_r + s
+					for (s = 0; s < nSx_r; s++) {
+						ni = i_r + near_offsets[n*NHW + s] / Ns - nHW;
+						nj = j_r + near_offsets[n*NHW + s] % Ns - nHW;
+						double fre_patch[] = fre_patches[ni];
+						double fre_basic_patch[] = (fre_basic_patches != null) ? fre_basic_patches[ni] : null;
+						for (c = 0; c < kk; c++) {
+							group_3D[c*nSx_r + s] = fre_patch[nj*kk + c];
+							if (fre_basic_patch != null) {
+								group_3D_est[c*nSx_r + s] = fre_basic_patch[nj*kk + c];
+							}
+						}
+					}
+					
+					if (fre_basic_patches == null) {
+						weight = ht_filtering_hadamard(group_3D, nSx_r, kk, sigma, lambdaHard3D, !useSD);
+					}
+					else {
+						weight = wiener_filtering_hadamard(group_3D, group_3D_est, nSx_r, kk, sigma, !useSD);
+					}
+					if (useSD) {
+						weight = sd_weighting(group_3D, nSx_r * kk);
+					}
+					
+					// aggregation part
+					for (s = 0; s < nSx_r; s++) {
+						ni = i_r + near_offsets[n*NHW + s] / Ns - nHW;
+						nj = j_r + near_offsets[n*NHW + s] % Ns - nHW;
+						transform.inverse(group_3D, s, nSx_r, work, patch);
+						for (int k = 0; k < kHW; k++) {
+							int pos = (ni + k - firstRow) * width + nj;
+							for (int m = 0; m < kHW; m++) {
+								numerator[pos + m] += patch[k*kHW + m] * kaiserWindow[k*kHW + m] * weight;
+								denominator[pos + m] += kaiserWindow[k*kHW + m] * weight;
+							}
+						}
+					}
+				} // for (j = 0; j < numColumns; j++)
+			} // for (i = first; i < last; i++)
+		}
+		
+		private void precompute_BM(int row_ind[], int first, int last, int column_ind[], int near_offsets[],
+				int threshold_count[]) {
+			// search for similar patches
+			// For every offset of the search window the squared differences between the image and its translation
+			// are summed into an integral image, from which the distance between each reference patch and the patch
+			// at the offset is read.  The NHW closest patches of each reference are kept in a bounded max heap of
+			// offset indices, ordered by distance and then by offset index.
+			// near_offsets: for each reference the offset indices (di + nHW) * Ns + (dj + nHW) of its NHW most
+			// similar patches, the reference patch itself first
+			// threshold_count: for each reference how many patches are closer than the threshold
+			int Ns = 2 * nHW + 1;
+			int numColumns = column_ind.length;
+			int numRefs = (last - first) * numColumns;
+			int top = row_ind[first];
+			int left = column_ind[0];
+			int rows = row_ind[last - 1] + kHW - top;
+			int cols = column_ind[numColumns - 1] + kHW - left;
+			int stride = cols + 1;
+			double integral[] = new double[(rows + 1) * stride];
+			double heap_dist[] = new double[numRefs * NHW];
+			int heap_size[] = new int[numRefs];
+			int di, dj, o, y, x, i, j, n, src, dst, base, size;
+			double diff, rowSum, dist;
+			
+			for (di = -nHW, o = 0; di <= nHW; di++) {
+				for (dj = -nHW; dj <= nHW; dj++, o++) {
+					for (y = 0; y < rows; y++) {
+						src = (top + y) * width + left;
+						dst = (y + 1) * stride + 1;
+						rowSum = 0.0;
+						for (x = 0; x < cols; x++) {
+							diff = match_buf[src + x] - match_buf[src + x + di * width + dj];
+							rowSum += diff * diff;
+							integral[dst + x] = rowSum + integral[dst + x - stride];
+						}
+					}
+					for (i = first, n = 0; i < last; i++) {
+						y = row_ind[i] - top;
+						for (j = 0; j < numColumns; j++, n++) {
+							x = column_ind[j] - left;
+							dist = integral[(y + kHW) * stride + x + kHW] - integral[y * stride + x + kHW] -
+									integral[(y + kHW) * stride + x] + integral[y * stride + x];
+							if (dist < threshold) {
+								threshold_count[n]++;
+							}
+							// Offsets come in increasing index order, so an equal distance never displaces a kept one
+							base = n * NHW;
+							size = heap_size[n];
+							if (size < NHW) {
+								heap_size[n] = size + 1;
+								heap_sift_up(heap_dist, near_offsets, base, size, dist, o);
+							}
+							else if (dist < heap_dist[base]) {
+								heap_sift_down(heap_dist, near_offsets, base, NHW, dist, o);
+							}
+						}
+					}
+				} // for (dj = -nHW; dj <= nHW; dj++, o++)
+			} // for (di = -nHW, o = 0; di <= nHW; di++)
+			
+			for (n = 0; n < numRefs; n++) {
+				// order the kept patches by distance and then offset index, and put the reference patch first
+				base = n * NHW;
+				for (size = heap_size[n]; size > 1; size--) {
+					dist = heap_dist[base + size - 1];
+					o = near_offsets[base + size - 1];
+					heap_dist[base + size - 1] = heap_dist[base];
+					near_offsets[base + size - 1] = near_offsets[base];
+					heap_sift_down(heap_dist, near_offsets, base, size - 1, dist, o);
+				}
+				near_offsets[base] = (Ns * Ns - 1)/2;
+			}
+		}
+	}
+	
+	private static boolean heap_before(double dist1, int index1, double dist2, int index2) {
+		// true if the first entry belongs above the second in the max heap, ordered by distance and then index
+		return (dist1 > dist2) || ((dist1 == dist2) && (index1 > index2));
+	}
+	
+	private static void heap_sift_up(double heap_dist[], int heap_index[], int base, int pos, double dist, int index) {
+		// inserts an entry at the end of a max heap of size pos
+		int parent;
+		while (pos > 0) {
+			parent = (pos - 1) / 2;
+			if (!heap_before(dist, index, heap_dist[base + parent], heap_index[base + parent])) {
+				break;
+			}
+			heap_dist[base + pos] = heap_dist[base + parent];
+			heap_index[base + pos] = heap_index[base + parent];
+			pos = parent;
+		}
+		heap_dist[base + pos] = dist;
+		heap_index[base + pos] = index;
+	}
+	
+	private static void heap_sift_down(double heap_dist[], int heap_index[], int base, int size, double dist, int index) {
+		// replaces the top entry of a max heap of the given size
+		int pos = 0;
+		int child;
+		while ((child = 2 * pos + 1) < size) {
+			if ((child + 1 < size) && heap_before(heap_dist[base + child + 1], heap_index[base + child + 1],
+					heap_dist[base + child], heap_index[base + child])) {
+				child++;
+			}
+			if (!heap_before(heap_dist[base + child], heap_index[base + child], dist, index)) {
+				break;
+			}
+			heap_dist[base + pos] = heap_dist[base + child];
+			heap_index[base + pos] = heap_index[base + child];
+			pos = child;
+		}
+		heap_dist[base + pos] = dist;
+		heap_index[base + pos] = index;
+	}
+	
+	private double sd_weighting(double group_3D[], int N) {
+		int i;
+	    double mean = 0.0;
+	    double std = 0.0;
+	    for (i = 0; i < N; i++) {
+	    	mean += group_3D[i];
+	    	std += (group_3D[i] * group_3D[i]);
 	    }
-	    double group_3D_table[][][] = new double[group_len][kWien][kWien];
-	    double weight_table[][] = new double[height][width];
-	    
-	    // i_j_ipatch_jpatch__v
-	    Vector<Vector<double[][]>>noisy_patches = image2patches(img_noisy, kWien, kWien);  
-	    // i_j_ipatch_jpatch__v
-	    Vector<Vector<double[][]>>basic_patches = image2patches(img_basic, kWien, kWien); 
-	    Vector<Vector<double[][]>>fre_noisy_patches = new Vector<Vector<double[][]>>();
-	    Vector<Vector<double[][]>>fre_basic_patches = new Vector<Vector<double[][]>>();
-	    for (ii = 0; ii < noisy_patches.size(); ii++) {
-	    	Vector<double[][]> subVector = noisy_patches.get(ii);
-	    	Vector<double[][]> subfreVector = new Vector<double[][]>();
-	    	for (jj = 0; jj < subVector.size(); jj++) {
-	            double current_patch[][] = subVector.get(jj);
-		    	if (tau_2D.equalsIgnoreCase("DCT")) {
-		    		// Forward 2D Discrete Cosine Transform
-		    		double new_patch_1[][] = new double[current_patch.length][current_patch[0].length];
-		    		double new_patch_2[][] = new double[current_patch.length][current_patch[0].length];
-		    		double yk;
-		    		for (i = 0; i < current_patch[0].length; i++) {
-		    			for (k = 0; k < current_patch.length; k++) {
-		    				yk = 0.0;
-		    			    for (n = 0; n < current_patch.length; n++) {
-		    			        yk += 2.0*current_patch[n][i]*Math.cos(Math.PI*k*(2*n+1)/(2.0*current_patch.length));
-		    			    }
-		    			    if (k == 0) {
-	    			        	yk = yk * Math.sqrt(1.0/(4.0*current_patch.length));
-	    			        }
-	    			        else {
-	    			        	yk = yk * Math.sqrt(1.0/(2.0*current_patch.length));
-	    			        }
-	    			        new_patch_1[k][i] = yk;
-		    			}
-		    		}
-		    		for (i = 0; i < current_patch.length; i++) {
-		    			for (k = 0; k < current_patch[0].length; k++) {
-		    				yk = 0;
-		    				for (n = 0; n < current_patch[0].length; n++) {
-		    					yk += 2.0*new_patch_1[i][n]*Math.cos(Math.PI*k*(2*n+1)/(2.0*current_patch[0].length));
-		    				}
-		    				if (k == 0) {
-	    			        	yk = yk * Math.sqrt(1.0/(4.0*current_patch[0].length));
-	    			        }
-	    			        else {
-	    			        	yk = yk * Math.sqrt(1.0/(2.0*current_patch[0].length));
-	    			        }
-	    			        new_patch_2[i][k] = yk;
-		    			}
-		    		}
-		    		subfreVector.add(new_patch_2);
-		    	} // if (tau_2D.equalsIgnoreCase("DCT"))
-		    	
-		    	else { // "BIOR"
-		    		if (current_patch.length != current_patch[0].length) {
-		    			System.err.println("current_patch.length != current_patch[0],length as required for BIOR");
-		    			return null;
-		    		}
-		    		int iter_max = (int)log2(current_patch.length);
-		    		PyWavelets py = new PyWavelets();
-		    		double coeffs[][][] = py.BM3Dwavedec2(current_patch, iter_max);
-		    		double waveim[][] = new double[current_patch.length][current_patch.length];
-		    		
-		    		int N = 1;
-		    		waveim[0][0] = coeffs[0][0][0];
-		    		for (i = 0; i < iter_max; i++) {
-		    			for (y = N; y < 2*N; y++) {
-		    				for (x = N; x < 2*N; x++) {
-		    					waveim[y][x] = coeffs[3*i+3][y-N][x-N];
-		    				}
-		    			}
-		    			for (y = 0; y < N; y++) {
-		    				for (x = N; x < 2*N; x++) {
-		    					waveim[y][x] = -coeffs[3*i+2][y][x-N];
-		    				}
-		    			}
-		    			for (y = N; y < 2*N; y++) {
-		    				for (x = 0; x < N; x++) {
-		    					waveim[y][x] = -coeffs[3*i+1][y-N][x];
-		    				}
-		    			}
-		    			N *= 2;
-		    		} // for (i = 0; i < iter_max; i++)
-		    	    subfreVector.add(waveim);
-		    	} // else "BIOR"
-	    	} // for (jj = 0; jj < subVector.size(); jj++)
-	    	fre_noisy_patches.add(subfreVector);
-	    } // for (ii = 0; ii < noisy_patches.size(); ii++)
-	    
-	    for (ii = 0; ii < basic_patches.size(); ii++) {
-	    	Vector<double[][]> subVector = basic_patches.get(ii);
-	    	Vector<double[][]> subfreVector = new Vector<double[][]>();
-	    	for (jj = 0; jj < subVector.size(); jj++) {
-	            double current_patch[][] = subVector.get(jj);
-		    	if (tau_2D.equalsIgnoreCase("DCT")) {
-		    		// Forward 2D Discrete Cosine Transform
-		    		double new_patch_1[][] = new double[current_patch.length][current_patch[0].length];
-		    		double new_patch_2[][] = new double[current_patch.length][current_patch[0].length];
-		    		double yk;
-		    		for (i = 0; i < current_patch[0].length; i++) {
-		    			for (k = 0; k < current_patch.length; k++) {
-		    				yk = 0.0;
-		    			    for (n = 0; n < current_patch.length; n++) {
-		    			        yk += 2.0*current_patch[n][i]*Math.cos(Math.PI*k*(2*n+1)/(2.0*current_patch.length));
-		    			    }
-		    			    if (k == 0) {
-	    			        	yk = yk * Math.sqrt(1.0/(4.0*current_patch.length));
-	    			        }
-	    			        else {
-	    			        	yk = yk * Math.sqrt(1.0/(2.0*current_patch.length));
-	    			        }
-	    			        new_patch_1[k][i] = yk;
-		    			}
-		    		}
-		    		for (i = 0; i < current_patch.length; i++) {
-		    			for (k = 0; k < current_patch[0].length; k++) {
-		    				yk = 0;
-		    				for (n = 0; n < current_patch[0].length; n++) {
-		    					yk += 2.0*new_patch_1[i][n]*Math.cos(Math.PI*k*(2*n+1)/(2.0*current_patch[0].length));
-		    				}
-		    				if (k == 0) {
-	    			        	yk = yk * Math.sqrt(1.0/(4.0*current_patch[0].length));
-	    			        }
-	    			        else {
-	    			        	yk = yk * Math.sqrt(1.0/(2.0*current_patch[0].length));
-	    			        }
-	    			        new_patch_2[i][k] = yk;
-		    			}
-		    		}
-		    		subfreVector.add(new_patch_2);
-		    	} // if (tau_2D.equalsIgnoreCase("DCT"))
-		    	
-		    	else { // "BIOR"
-		    		if (current_patch.length != current_patch[0].length) {
-		    			System.err.println("current_patch.length != current_patch[0],length as required for BIOR");
-		    			return null;
-		    		}
-		    		int iter_max = (int)log2(current_patch.length);
-		    		PyWavelets py = new PyWavelets();
-		    		double coeffs[][][] = py.BM3Dwavedec2(current_patch, iter_max);
-		    		double waveim[][] = new double[current_patch.length][current_patch.length];
-		    		
-		    		int N = 1;
-		    		waveim[0][0] = coeffs[0][0][0];
-		    		for (i = 0; i < iter_max; i++) {
-		    			for (y = N; y < 2*N; y++) {
-		    				for (x = N; x < 2*N; x++) {
-		    					waveim[y][x] = coeffs[3*i+3][y-N][x-N];
-		    				}
-		    			}
-		    			for (y = 0; y < N; y++) {
-		    				for (x = N; x < 2*N; x++) {
-		    					waveim[y][x] = -coeffs[3*i+2][y][x-N];
-		    				}
-		    			}
-		    			for (y = N; y < 2*N; y++) {
-		    				for (x = 0; x < N; x++) {
-		    					waveim[y][x] = -coeffs[3*i+1][y-N][x];
-		    				}
-		    			}
-		    			N *= 2;
-		    		} // for (i = 0; i < iter_max; i++)
-		    		
-		    	    subfreVector.add(waveim);
-		    	} // else "BIOR"
-	    	} // for (jj = 0; jj < subVector.size(); jj++)
-	    	fre_basic_patches.add(subfreVector);
-	    } // for (ii = 0; ii < basic_patches.size(); ii++)
-	    
-	    acc_pointer = 0;
-	    for (i = 0; i < row_ind.length; i++) {
-	    	i_r = row_ind[i];
-	    	for (j = 0; j < column_ind.length; j++) {
-	    		j_r = column_ind[j];
-	    		nSx_r = threshold_count[i_r][j_r];
-	    		group_3D_img = build_3D_group(fre_noisy_patches, ri_rj_N__ni_nj[i_r][j_r], nSx_r);
-	    		group_3D_est = build_3D_group(fre_basic_patches, ri_rj_N__ni_nj[i_r][j_r], nSx_r);
-	    		group_3D = wiener_filtering_hadamard(group_3D_img, group_3D_est, sigma, !useSD,weight);
-	    		group_3D_transpose = new double[nSx_r][group_3D.length][group_3D.length];
-	    		for (k = acc_pointer; k < acc_pointer + nSx_r; k++) {
-	    			for (m = 0; m < group_3D.length; m++) {
-	    				for (n = 0; n < group_3D.length; n++) {
-	    					group_3D_table[k][m][n] = group_3D[m][n][k-acc_pointer];
-	    					group_3D_transpose[k-acc_pointer][m][n] = group_3D[m][n][k-acc_pointer];
-	    				}
-	    			}
-	    		}
-	    		acc_pointer += nSx_r;
-	    		
-	    		if (useSD) {
-	                weight[0] = sd_weighting(group_3D_transpose);
-	    		}
-	    		
-	    		weight_table[i_r][j_r] = weight[0];
-	    	} // for (j = 0; j < column_ind.length; j++)
-	    } // for (i = 0; i < row_ind.length; i++)
-	    
-	   for (ii = 0; ii < group_len; ii++) {
-		    if (tau_2D.equalsIgnoreCase("DCT")) {
-	    		// Reverse 2D Discrete Cosine Transform
-	    		double new_patch_1[][] = new double[kWien][kWien];
-	    		double yk;
-	    		for (i = 0; i < kWien; i++) {
-	    			for (k = 0; k < kWien; k++) {
-	    				yk = group_3D_table[ii][0][i]/Math.sqrt(kWien);
-	    			    for (n = 1; n < kWien; n++) {
-	    			        yk += Math.sqrt(2.0/kWien) * group_3D_table[ii][n][i]*Math.cos(Math.PI*n*(2*k+1)/(2.0*kWien));  
-	    			    }
-				        new_patch_1[k][i] = yk;
-	    			}
-	    		}
-	    		for (i = 0; i < kWien; i++) {
-	    			for (k = 0; k < kWien; k++) {
-	    				yk = new_patch_1[i][0]/Math.sqrt(kWien);
-	    				for (n = 1; n < kWien; n++) {
-	    					yk += Math.sqrt(2.0/kWien) * new_patch_1[i][n]*Math.cos(Math.PI*n*(2*k+1)/(2.0*kWien));
-	    				}
-				        group_3D_table[ii][i][k] = yk;
-	    			}
-	    		}
-	    	} // if (tau_2D.equalsIgnoreCase("DCT"))
-	    	else { // "BIOR"
-	    		PyWavelets py = new PyWavelets();
-	    		int level = (int)log2(kWien);
-	    		double group_2D[][] = py.BM3Dwaverec2(group_3D_table[ii],level);
-	    		for (j = 0; j < kWien; j++) {
-	    			for (k = 0; k < kWien; k++) {
-	    				group_3D_table[ii][j][k] = group_2D[j][k];
-	    			}
-	    		}
-	    	} // else "BIOR"
-	   } // for (ii = 0; ii < group_len; ii++)
-	    
-	    // for i in range(1000):
-        //     patch = group_3D_table[i]
-        //     print(i, '----------------------------')
-        //     print(patch)
-        //     cv2.imshow('', patch.astype(np.uint8))
-        //     cv2.waitKey()
 
-        // aggregation part
-	    double numerator[][] = new double[height][width];
-	    double denominator[][] = new double[height][width];
-	    for (i = 0; i < nWien; i++) {
-	    	for (j = 0; j < width; j++) {
-	    		denominator[i][j] = 1.0;
-	    	}
+	    double res = (std - mean * mean / N) / (N - 1.0);
+	    double weight = 0.0;
+	    if (res > 0.0) {
+	    	weight = 1.0/Math.sqrt(res);
 	    }
-	    for (i = height - nWien; i < height; i++) {
-	    	for (j = 0; j < width; j++) {
-	    		denominator[i][j] = 1.0;
+	    return weight;
+	}
+	
+	private double ht_filtering_hadamard(double group_3D[], int nSx_r, int kk, double sigma, 
+			double lambdaHard3D, boolean doWeight) {
+		// hard threshold filtering after 1D hadamard transform, in place
+		// group_3D: coefficient c of patch s at c*nSx_r + s
+		// return the weight of the group
+		int c, i;
+		double coef_norm = Math.sqrt(nSx_r);
+	    double T = lambdaHard3D * sigma * coef_norm;
+	    double weight = 0.0;
+	    for (c = 0; c < kk; c++) {
+	    	hadamard(group_3D, c * nSx_r, nSx_r);
+	    	for (i = c * nSx_r; i < (c + 1) * nSx_r; i++) {
+	    		if (Math.abs(group_3D[i]) > T) {
+	    			weight += 1.0;
+	    		}
+	    		else {
+	    			group_3D[i] = 0.0;
+	    		}
 	    	}
-	    }
-	    for (i = nWien; i < height - nWien; i++) {
-	    	for (j = 0; j < nWien; j++) {
-	    		denominator[i][j] = 1.0;
+	    	hadamard(group_3D, c * nSx_r, nSx_r);
+	    	for (i = c * nSx_r; i < (c + 1) * nSx_r; i++) {
+	    		group_3D[i] = group_3D[i] / (double)nSx_r;
 	    	}
 	    }
 	    
-	    for (i = nWien; i < height - nWien; i++) {
-	    	for (j = width - nWien; j < width; j++) {
-	    		denominator[i][j] = 1.0;
-	    	}
-	    }
-	    acc_pointer = 0;
-	    double patch[][];
-	    for (i = 0; i < row_ind.length; i++) {
-	    	i_r = row_ind[i];
-	    	for (j = 0; j < column_ind.length; j++) {
-	    		j_r = column_ind[j];
-	    		nSx_r = threshold_count[i_r][j_r];
-	    		int N_ni_nj[][] = ri_rj_N__ni_nj[i_r][j_r];
-	    		group_3D = new double[nSx_r][kWien][kWien];
-	    		for (k = acc_pointer; k < acc_pointer + nSx_r; k++) {
-	    			for (m = 0; m < kWien; m++) {
-	    				for (n = 0; n < kWien; n++) {
-	    					group_3D[k-acc_pointer][m][n] = group_3D_table[k][m][n];
-	    				}
-	    			}
-	    		}
-	    		acc_pointer += nSx_r;
-	    		weight[0] = weight_table[i_r][j_r];
-	    		for (n = 0; n < nSx_r; n++) {
-	    			ni = N_ni_nj[n][0];
-	    			nj = N_ni_nj[n][1];
-	    			patch = group_3D[n];
-	    			
-	    			for (k = 0; k < kWien; k++) {
-	    				for (m = 0; m < kWien; m++) {
-	    					numerator[ni + k][nj + m] += patch[k][m] * kaiserWindow[k][m] * weight[0];
-	    					denominator[ni + k][nj + m] += kaiserWindow[k][m] * weight[0];
-	    				}
-	    			}
-	    			
-	    		} // for (n = 0; n < nSx_r; n++)
-	    	} // for (j = 0; j < column_ind.length; j++)
-	    } // for (i = 0; i < row_ind.length; i++)
-	    double img_denoised_pad[][] = new double[height][width];
-	    for (h = 0; h < height; h++) {
-	    	for (w = 0; w < width; w++) {
-	    		img_denoised_pad[h][w] = numerator[h][w]/denominator[h][w];
-	    	}
-	    }
-	    return img_denoised_pad;
+	    if (doWeight) {
+	        if (weight > 0.0) {
+	        	weight = 1. / (sigma * sigma * weight);	
+	        }
+	        else {
+	        	weight = 1.0;
+	        }
+	    } // if (doWeight)
+	    return weight;
 	}
 	
-	private double[][][] wiener_filtering_hadamard(double group_3D_img[][][], double group_3D_est[][][], double sigma,
-			boolean doWeight, double weight[]) {
-		// wiener_filtering after hadamard transform
-		int i,j,k;
+	private double wiener_filtering_hadamard(double group_3D_img[], double group_3D_est[], int nSx_r, int kk,
+			double sigma, boolean doWeight) {
+		// wiener_filtering after hadamard transform, the result replacing group_3D_img
+		// return the weight of the group
+		int c, i;
 		double value;
-		int n = group_3D_img.length;
-		int nSx_r = group_3D_img[0][0].length;
-		double group_3D_img_h[][][] = new double[n][n][];
-		double group_3D_est_h[][][] = new double[n][n][];
 	    double coef = 1.0 / nSx_r;
-	    WalshHadamardTransform3 wht3 = new WalshHadamardTransform3();
-	    
-        for (j = 0; j < n; j++) {
-        	for (k = 0; k < n; k++) {
-        		// false means don't multiply by 1.0/ nSx_r
-        		group_3D_img_h[j][k] = wht3.fhtnat(group_3D_img[j][k], false);
-        		group_3D_est_h[j][k] = wht3.fhtnat(group_3D_est[j][k], false);
-        	}
-        }
-	         
-	    // wiener filtering in this block
-	    weight[0] = 0.0;
-	    for (i = 0; i < nSx_r; i++) {
-	        for (j = 0; j < n; j++) {
-	        	for (k = 0; k < n; k++) {
-	        		value = group_3D_est_h[j][k][i] * group_3D_est_h[j][k][i] * coef;
-	        		value /= (value + sigma * sigma);
-	        		group_3D_est_h[j][k][i] = group_3D_img_h[j][k][i] * value * coef;
-	        		weight[0] += value;
-	        	}
-	        }
+	    double weight = 0.0;
+	    for (c = 0; c < kk; c++) {
+	    	hadamard(group_3D_img, c * nSx_r, nSx_r);
+	    	hadamard(group_3D_est, c * nSx_r, nSx_r);
+	    	// wiener filtering in this block
+	    	for (i = c * nSx_r; i < (c + 1) * nSx_r; i++) {
+	    		value = group_3D_est[i] * group_3D_est[i] * coef;
+	    		value /= (value + sigma * sigma);
+	    		group_3D_img[i] = group_3D_img[i] * value * coef;
+	    		weight += value;
+	    	}
+	    	hadamard(group_3D_img, c * nSx_r, nSx_r);
 	    }
 	    
-	    for (j = 0; j < n; j++) {
-        	for (k = 0; k < n; k++) {
-        		// false means don't multiply by 1.0/ nSx_r
-        		group_3D_est[j][k] = wht3.fhtnat(group_3D_est_h[j][k], false);
-        	}
-        }
-	    
 	    if (doWeight) {
-	        if (weight[0] > 0.0) {
-	        	weight[0] = 1. / (sigma * sigma * weight[0]);	
+	        if (weight > 0.0) {
+	        	weight = 1. / (sigma * sigma * weight);	
 	        }
 	        else {
-	        	weight[0] = 1.0;
+	        	weight = 1.0;
 	        }
 	    } // if (doWeight)
-	    return group_3D_est;	
+	    return weight;	
+	}
+	
+	private static void hadamard(double x[], int offset, int N) {
+		// unnormalized natural ordered fast Hadamard transform of x[offset] to x[offset + N - 1], N a power of 2,
+		// with the butterflies of WalshHadamardTransform3.fhtnat
+		int k1 = N, k2 = 1, k3 = N/2;
+		int i2, i3, i, L1;
+		double temp1, temp2;
+		while (k3 >= 1) {
+		    L1 = offset;
+		    for (i2 = 1; i2 <= k2; i2++) {
+		        for (i3 = 0; i3 < k3; i3++) {
+		            i = i3 + L1;
+		            temp1 = x[i]; temp2 = x[i + k3]; 
+		            x[i] = temp1 + temp2;
+		            x[i + k3] = temp1 - temp2;
+		        }
+		        L1 = L1 + k1;
+		    }
+		    k1 = k1/2;  k2 = k2*2;  k3 = k3/2;
+		}
 	}
 	
 	private ModelImage symetrize(ModelImage img, int pad) {
@@ -720,582 +800,10 @@ public class BM3D extends AlgorithmBase {
 		return padImage;
 	}
 	
-	private double[][] bm3d_1st_step(double sigma, ModelImage img_noisy, int nHard, int kHard, int NHard, int pHard, double lambdaHard3D,
-			double tauMatch, boolean useSD, String tau_2D) {
-		int i,ii,h,j,jj,k,m,n,w,acc_pointer, i_r, j_r,x,y;
-		int nSx_r;
-		int ni, nj;
-		double group_3D[][][];
-		double group_3D_transpose[][][];
-		double weight[] = new double[1];
-	    int width = img_noisy.getExtents()[0];
-	    int height = img_noisy.getExtents()[1];
-	    
-	    int row_ind[] = ind_initialize(height - kHard + 1, nHard, pHard);
-	    int column_ind[] = ind_initialize(width - kHard + 1, nHard, pHard);
-	    
-	    double kaiserWindow[][] = get_kaiserWindow(kHard);
-	    int threshold_count[][] = new int[height][width];
-	    int ri_rj_N__ni_nj[][][][] = precompute_BM(img_noisy, kHard, NHard, nHard, tauMatch, threshold_count);
-	    int group_len = 0;
-	    for (h = 0; h < height; h++) {
-	    	for (w = 0; w < width; w++) {
-	    		group_len += threshold_count[h][w];
-	    	}
-	    }
-	    double group_3D_table[][][] = new double[group_len][kHard][kHard];
-	    double weight_table[][] = new double[height][width];
-	    
-	    // i_j_ipatch_jpatch__v
-	    Vector<Vector<double[][]>>all_patches = image2patches(img_noisy, kHard, kHard);
-	    Vector<Vector<double[][]>>fre_all_patches = new Vector<Vector<double[][]>>();
-	    for (ii = 0; ii < all_patches.size(); ii++) {
-	    	Vector<double[][]> subVector = all_patches.get(ii);
-	    	Vector<double[][]> subfreVector = new Vector<double[][]>();
-	    	for (jj = 0; jj < subVector.size(); jj++) {
-	            double current_patch[][] = subVector.get(jj);
-		    	if (tau_2D.equalsIgnoreCase("DCT")) {
-		    		// Forward 2D Discrete Cosine Transform
-		    		double new_patch_1[][] = new double[current_patch.length][current_patch[0].length];
-		    		double new_patch_2[][] = new double[current_patch.length][current_patch[0].length];
-		    		double yk;
-		    		for (i = 0; i < current_patch[0].length; i++) {
-		    			for (k = 0; k < current_patch.length; k++) {
-		    				yk = 0.0;
-		    			    for (n = 0; n < current_patch.length; n++) {
-		    			        yk += 2.0*current_patch[n][i]*Math.cos(Math.PI*k*(2*n+1)/(2.0*current_patch.length));
-		    			    }
-		    			    if (k == 0) {
-	    			        	yk = yk * Math.sqrt(1.0/(4.0*current_patch.length));
-	    			        }
-	    			        else {
-	    			        	yk = yk * Math.sqrt(1.0/(2.0*current_patch.length));
-	    			        }
-	    			        new_patch_1[k][i] = yk;
-		    			}
-		    		}
-		    		for (i = 0; i < current_patch.length; i++) {
-		    			for (k = 0; k < current_patch[0].length; k++) {
-		    				yk = 0;
-		    				for (n = 0; n < current_patch[0].length; n++) {
-		    					yk += 2.0*new_patch_1[i][n]*Math.cos(Math.PI*k*(2*n+1)/(2.0*current_patch[0].length));
-		    				}
-		    				if (k == 0) {
-	    			        	yk = yk * Math.sqrt(1.0/(4.0*current_patch[0].length));
-	    			        }
-	    			        else {
-	    			        	yk = yk * Math.sqrt(1.0/(2.0*current_patch[0].length));
-	    			        }
-	    			        new_patch_2[i][k] = yk;
-		    			}
-		    		}
-		    		subfreVector.add(new_patch_2);
-		    	} // if (tau_2D.equalsIgnoreCase("DCT"))
-		    	
-		    	else { // "BIOR"
-		    		if (current_patch.length != current_patch[0].length) {
-		    			System.err.println("current_patch.length != current_patch[0],length as required for BIOR");
-		    			return null;
-		    		}
-		    		int iter_max = (int)log2(current_patch.length);
-		    		PyWavelets py = new PyWavelets();
-		    		double coeffs[][][] = py.BM3Dwavedec2(current_patch, iter_max);
-		    		double waveim[][] = new double[current_patch.length][current_patch.length];
-		    		
-		    		int N = 1;
-		    		waveim[0][0] = coeffs[0][0][0];
-		    		for (i = 0; i < iter_max; i++) {
-		    			for (y = N; y < 2*N; y++) {
-		    				for (x = N; x < 2*N; x++) {
-		    					waveim[y][x] = coeffs[3*i+3][y-N][x-N];
-		    				}
-		    			}
-		    			for (y = 0; y < N; y++) {
-		    				for (x = N; x < 2*N; x++) {
-		    					waveim[y][x] = -coeffs[3*i+2][y][x-N];
-		    				}
-		    			}
-		    			for (y = N; y < 2*N; y++) {
-		    				for (x = 0; x < N; x++) {
-		    					waveim[y][x] = -coeffs[3*i+1][y-N][x];
-		    				}
-		    			}
-		    			N *= 2;
-		    		} // for (i = 0; i < iter_max; i++)
-		    		
-		    	    subfreVector.add(waveim);
-		    	} // else "BIOR"
-	    	} // for (jj = 0; jj < subVector.size(); jj++)
-	    	fre_all_patches.add(subfreVector);
-	    } // for (ii = 0; ii < all_patches.size(); ii++)
-	    
-	    acc_pointer = 0;
-	    for (i = 0; i < row_ind.length; i++) {
-	    	i_r = row_ind[i];
-	    	for (j = 0; j < column_ind.length; j++) {
-	    		j_r = column_ind[j];
-	    		nSx_r = threshold_count[i_r][j_r];
-	    		group_3D = build_3D_group(fre_all_patches, ri_rj_N__ni_nj[i_r][j_r], nSx_r);
-	    		group_3D = ht_filtering_hadamard(group_3D, sigma, lambdaHard3D, !useSD, weight);
-	    		group_3D_transpose = new double[nSx_r][group_3D.length][group_3D.length];
-	    		for (k = acc_pointer; k < acc_pointer + nSx_r; k++) {
-	    			for (m = 0; m < group_3D.length; m++) {
-	    				for (n = 0; n < group_3D.length; n++) {
-	    					group_3D_table[k][m][n] = group_3D[m][n][k-acc_pointer];
-	    					group_3D_transpose[k-acc_pointer][m][n] = group_3D[m][n][k-acc_pointer];
-	    				}
-	    			}
-	    		}
-	    		acc_pointer += nSx_r;
-	    		
-	    		if (useSD) {
-	                weight[0] = sd_weighting(group_3D_transpose);
-	    		}
-	    		
-	    		weight_table[i_r][j_r] = weight[0];
-	    	} // for (j = 0; j < column_ind.length; j++)
-	    } // for (i = 0; i < row_ind.length; i++)
-	    
-	    
-	    for (ii = 0; ii < group_len; ii++) {	
-	        if (tau_2D.equalsIgnoreCase("DCT")) {
-	    		// Reverse 2D Discrete Cosine Transform
-	    		double new_patch_1[][] = new double[kHard][kHard];
-	    		double yk;
-	    		for (i = 0; i < kHard; i++) {
-	    			for (k = 0; k < kHard; k++) {
-	    				yk = group_3D_table[ii][0][i]/Math.sqrt(kHard);
-	    			    for (n = 1; n < kHard; n++) {
-	    			        yk += Math.sqrt(2.0/kHard) * group_3D_table[ii][n][i]*Math.cos(Math.PI*n*(2*k+1)/(2.0*kHard));  
-	    			    }
-    			        new_patch_1[k][i] = yk;
-	    			}
-	    		}
-	    		for (i = 0; i < kHard; i++) {
-	    			for (k = 0; k < kHard; k++) {
-	    				yk = new_patch_1[i][0]/Math.sqrt(kHard);
-	    				for (n = 1; n < kHard; n++) {
-	    					yk += Math.sqrt(2.0/kHard) * new_patch_1[i][n]*Math.cos(Math.PI*n*(2*k+1)/(2.0*kHard));
-	    				}
-    			        group_3D_table[ii][i][k] = yk;
-	    			}
-	    		}
-	    	} // if (tau_2D.equalsIgnoreCase("DCT"))
-	    	else { // "BIOR"
-	    		PyWavelets py = new PyWavelets();
-	    		int level = (int)log2(kHard);
-	    		double group_2D[][] = py.BM3Dwaverec2(group_3D_table[ii],level);
-	    		for (j = 0; j < kHard; j++) {
-	    			for (k = 0; k < kHard; k++) {
-	    				group_3D_table[ii][j][k] = group_2D[j][k];
-	    			}
-	    		}
-	    	} // else "BIOR"
-	    } // for (ii = 0; ii < group_len; ii++)
-	    	
-    	// group_3D_table = np.maximum(group_3D_table, 0)
-	    // for i in range(1000):
-	    //     patch = group_3D_table[i]
-	    //     print(i, '----------------------------')
-	    //     print(patch)
-	    //     print(np.min(patch))
-	    //     print(np.max(patch))
-	    //     print(np.sum(patch))
-	    //     cv2.imshow('', patch.astype(np.uint8))
-	    //     cv2.waitKey()
-
-	    // aggregation part
-	    double numerator[][] = new double[height][width];
-	    double denominator[][] = new double[height][width];
-	    for (i = 0; i < nHard; i++) {
-	    	for (j = 0; j < width; j++) {
-	    		denominator[i][j] = 1.0;
-	    	}
-	    }
-	    for (i = height - nHard; i < height; i++) {
-	    	for (j = 0; j < width; j++) {
-	    		denominator[i][j] = 1.0;
-	    	}
-	    }
-	    for (i = nHard; i < height - nHard; i++) {
-	    	for (j = 0; j < nHard; j++) {
-	    		denominator[i][j] = 1.0;
-	    	}
-	    }
-	    
-	    for (i = nHard; i < height - nHard; i++) {
-	    	for (j = width - nHard; j < width; j++) {
-	    		denominator[i][j] = 1.0;
-	    	}
-	    }
-	    acc_pointer = 0;
-	    double patch[][];
-	    for (i = 0; i < row_ind.length; i++) {
-	    	i_r = row_ind[i];
-	    	for (j = 0; j < column_ind.length; j++) {
-	    		j_r = column_ind[j];
-	    		nSx_r = threshold_count[i_r][j_r];
-	    		int N_ni_nj[][] = ri_rj_N__ni_nj[i_r][j_r];
-	    		group_3D = new double[nSx_r][kHard][kHard];
-	    		for (k = acc_pointer; k < acc_pointer + nSx_r; k++) {
-	    			for (m = 0; m < kHard; m++) {
-	    				for (n = 0; n < kHard; n++) {
-	    					group_3D[k-acc_pointer][m][n] = group_3D_table[k][m][n];
-	    				}
-	    			}
-	    		}
-	    		acc_pointer += nSx_r;
-	    		weight[0] = weight_table[i_r][j_r];
-	    		for (n = 0; n < nSx_r; n++) {
-	    			ni = N_ni_nj[n][0];
-	    			nj = N_ni_nj[n][1];
-	    			patch = group_3D[n];
-	    			
-	    			for (k = 0; k < kHard; k++) {
-	    				for (m = 0; m < kHard; m++) {
-	    					numerator[ni + k][nj + m] += patch[k][m] * kaiserWindow[k][m] * weight[0];
-	    					denominator[ni + k][nj + m] += kaiserWindow[k][m] * weight[0];
-	    				}
-	    			}
-	    			
-	    		} // for (n = 0; n < nSx_r; n++)
-	    	} // for (j = 0; j < column_ind.length; j++)
-	    } // for (i = 0; i < row_ind.length; i++)
-	    double img_basic[][] = new double[height][width];
-	    for (h = 0; h < height; h++) {
-	    	for (w = 0; w < width; w++) {
-	    		img_basic[h][w] = numerator[h][w]/denominator[h][w];
-	    	}
-	    }
-	    return img_basic;
-	}
-	
-	private double sd_weighting(double group_3D[][][]) {
-		int i,j,k;
-	    int N = group_3D.length * group_3D[0].length * group_3D[0][0].length;
-	    
-	    double mean = 0.0;
-	    double std = 0.0;
-	    for (i = 0; i < group_3D.length; i++) {
-	    	for (j = 0; j < group_3D[0].length; j++) {
-	    		for (k = 0; k < group_3D[0][0].length; k++) {
-	    			mean += group_3D[i][j][k];
-	    			std += (group_3D[i][j][k] * group_3D[i][j][k]);
-	    		}
-	    	}
-	    }
-
-	    double res = (std - mean * mean / N) / (N - 1.0);
-	    double weight = 0.0;
-	    if (res > 0.0) {
-	    	weight = 1.0/Math.sqrt(res);
-	    }
-	    return weight;
-	}
-	
-	private double[][][] ht_filtering_hadamard(double group_3D[][][], double sigma, 
-			double lambdaHard3D, boolean doWeight, double weight[]) {
-		// hard threshold filtering after 1D hadamard transform
-		// group_3D shape=(n*n, nSx_r)
-		int i,j,k;
-		int n = group_3D.length;
-		int nSx_r = group_3D[0][0].length;
-		double group_3D_h[][][] = new double[n][n][];
-		double coef_norm = Math.sqrt(nSx_r);
-	    WalshHadamardTransform3 wht3 = new WalshHadamardTransform3();
-	    
-        for (j = 0; j < n; j++) {
-        	for (k = 0; k < n; k++) {
-        		// false means don't multiply by 1.0/ nSX_r during transform 
-        		group_3D_h[j][k] = wht3.fhtnat(group_3D[j][k], false);
-        	}
-        }
-	    
-	    double T = lambdaHard3D * sigma * coef_norm;
-	    weight[0] = 0.0;
-	    for (i = 0; i < nSx_r; i++) {
-	        for (j = 0; j < n; j++) {
-	        	for (k = 0; k < n; k++) {
-	        		if (Math.abs(group_3D_h[j][k][i]) > T) {
-	        			weight[0] += 1.0;
-	        		}
-	        		else {
-	        			group_3D_h[j][k][i] = 0.0;
-	        		}
-	        	}
-	        }
-	    } // for (i = 0; i < nSx_r; i++)
-	    
-	    for (j = 0; j < n; j++) {
-        	for (k = 0; k < n; k++) {
-        		// true means multiply by 1.0/ nSX_r during transform
-        		group_3D[j][k] = wht3.fhtnat(group_3D_h[j][k], true);
-        	}
-        }
-	    
-	    if (doWeight) {
-	        if (weight[0] > 0.0) {
-	        	weight[0] = 1. / (sigma * sigma * weight[0]);	
-	        }
-	        else {
-	        	weight[0] = 1.0;
-	        }
-	    } // if (doWeight)
-	    return group_3D;
-	}
-	
-	private double[][][] build_3D_group(Vector<Vector<double[][]>> fre_all_patches, int N__ni_nj[][], int nSx_r) {
-		// stack frequency patches into a 3D block
-	    // fre_all_patches: all frequency patches
-	    // N__ni_nj: the position of the N most similar patches
-	    // nSx_r: how many similar patches according to threshold
-	    // return: the 3D block
-		int i, j, n, ni, nj;
-		int k = fre_all_patches.get(0).get(0).length;
-		for (i = 0; i < fre_all_patches.size(); i++) {
-			Vector<double[][]>subVector = fre_all_patches.get(i);
-			for (j = 0; j < subVector.size(); j++) {
-				double patch[][] = subVector.get(j);
-				if ((patch.length != k) || (patch[0].length != k)) {
-					System.err.println("In build_3D_group not all patch.length and patch[0].length are the same");
-					return null;
-				}
-			}
-		}
-		double group_3D[][][] = new double[nSx_r][][];
-		for (n = 0; n < nSx_r; n++) {
-			ni = N__ni_nj[n][0];
-			nj = N__ni_nj[n][1];
-			group_3D[n] = fre_all_patches.get(ni).get(nj);
-		}
-		double group_3D_transpose[][][] = new double[k][k][nSx_r];
-		for (i = 0; i < k; i++) {
-			for (j = 0; j < k; j++) {
-				for (n = 0; n < nSx_r; n++) {
-					group_3D_transpose[i][j][n] = group_3D[n][i][j];
-				}
-			}
-		}
-		return group_3D_transpose;
-	}
-	
 	private double log2(double x) {
     	return (Math.log(x)/Math.log(2));
     }
 	
-	private Vector<Vector<double[][]>> image2patches(ModelImage im, int patch_h, int patch_w) {
-	    
-	    // cut the image into patches
-		// BIOR requires square patches, that is patch_h = patch_w
-		
-		int i,j,k,m,r,s;
-	    int im_w = im.getExtents()[0];
-	    int im_h = im.getExtents()[1];
-	    int length = im_w * im_h;
-		double buf[] = new double[length];
-		try {
-			im.exportData(0, length, buf);
-		}
-		catch (IOException e) {
-			MipavUtil.displayError("IOException on im.exportData(0, length, buf) in image2patches");
-			System.exit(-1);
-		}
-		double img_buf[][] = new double[im_h][im_w];
-		for (i = 0; i < im_h; i++) {
-			for (j = 0; j < im_w; j++) {
-				img_buf[i][j] = buf[i*im_w + j];
-			}
-		}
-	    
-	    Vector<Vector<double[][]>> imVector= new Vector<Vector<double[][]>>();
-	    for (i = 0; i < (im_h - patch_h + 1); i++) {
-	    	Vector<double[][]> subVector = new Vector<double[][]>();
-	    	for (j = 0; j < (im_w - patch_w + 1); j++) {
-    				double patch[][] = new double[patch_h][patch_w];
-    				for (r = i; r < i+patch_h; r++) {
-    					for (s = j; s < j+patch_w; s++) {
-    						patch[r-i][s-j] = img_buf[r][s];
-    					}
-    				}
-    				subVector.add(patch);
-	    	}
-	    	imVector.add(subVector);
-	    }
-	    return imVector;
-	}
-	
-	private int[][][][] precompute_BM(ModelImage img, int kHW, int NHW, int nHW, double tauMatch, int[][] threshold_count) {
-		// search for similar patches
-	    // img: input image type ModelStorageBase.DOUBLE
-	    // kHW: length of side of patch
-	    // NHW: how many patches are stacked
-	    // nHW: length of side of search area
-	    // tauMatch: threshold determine whether two patches are similar
-	    // return ri_rj_N__ni_nj: The top N most similar patches to the referred patch
-	    // return threshold_count: according to tauMatch how many patches are similar to the referred one
-		int i,j,h,w,di,dj;
-		int width = img.getExtents()[0];
-		int height = img.getExtents()[1];
-		int length = width * height;
-		double buf[] = new double[length];
-		try {
-			img.exportData(0, length, buf);
-		}
-		catch (IOException e) {
-			MipavUtil.displayError("IOException on img.exportData(0, length, buf) in precompute_BM");
-			System.exit(-1);
-		}
-		double img_buf[][] = new double[height][width];
-		for (i = 0; i < height; i++) {
-			for (j = 0; j < width; j++) {
-				img_buf[i][j] = buf[i*width + j];
-			}
-		}
-		int Ns = 2 * nHW + 1;
-	    double threshold = tauMatch * kHW * kHW;
-	    // di, dj, ph, pw
-	    double sum_table[][][][] = new double[Ns][Ns][height][width];
-	    for (i = 0; i < Ns; i++) {
-	    	for (j = 0; j < Ns; j++) {
-	    		for (h = 0; h < height; h++) {
-	    			for (w = 0; w < width; w++) {
-	    				sum_table[i][j][h][w] = 2 * threshold;
-	    			}
-	    		}
-	    	}
-	    }
-	    double row_add_mat[][] = new double[height][height];
-	    double column_add_mat[][] = new double[width][width];
-	    get_add_patch_matrix(height, width, nHW, kHW, row_add_mat, column_add_mat);
-	    double diff_margin[][] = new double[height][width];
-	    for (i = nHW; i < height - nHW; i++) {
-	    	for (j = nHW; j < width - nHW; j++) {
-	    		diff_margin[i][j] = 1.0;
-	    	}
-	    }
-	    double sum_margin[][] = new double[height][width];
-	    for (i = 0; i < height; i++) {
-	    	for (j = 0; j < width; j++) {
-	    		sum_margin[i][j] = (1 - diff_margin[i][j]) * 2 * threshold;
-	    	}
-	    }
-	    
-	    double diff_table_2[][] = new double[height][width];
-	    double sum_diff_2[][];
-	    for (di = -nHW; di < nHW + 1; di++) {
-	        for (dj = -nHW; dj < nHW + 1; dj++) {
-	        	double t_img[][] = translation_2d_mat(img_buf, -dj, -di);
-	        	for (i = 0; i < height; i++) {
-	        		for (j = 0; j < width; j++) {
-	        			diff_table_2[i][j] = (img_buf[i][j]- t_img[i][j]) * (img_buf[i][j] - t_img[i][j]) * diff_margin[i][j];
-	        		}
-	        	}
-	        	
-	        	sum_diff_2 = (((new Matrix(row_add_mat)).times(new Matrix(diff_table_2))).times(new Matrix(column_add_mat))).getArray();
-	        	// # sum_table (2n+1, 2n+1, height, width)
-	        	for (i = 0; i < height; i++) {
-	        		for (j = 0; j < width; j++) {
-	        			sum_table[di + nHW][dj + nHW][i][j] = Math.max(sum_diff_2[i][j], sum_margin[i][j]);
-	        		}
-	        	}
-	        } // for (dj = -nHW; dj < nHW + 1; dj++)
-	    } // for (di = -nHW; di < nHW + 1; di++)
-	    // di_dj, ph_pw
-	    double sum_table_reshape[][] = new double[Ns * Ns][length];
-	    for (i = 0; i < Ns; i++) {
-	    	for (j = 0; j < Ns; j++) {
-	    		for (h = 0; h < height; h++) {
-	    			for (w = 0; w < width; w++) {
-	    				sum_table_reshape[i*Ns + j][h*width + w] = sum_table[i][j][h][w];
-	    			}
-	    		}
-	    	}
-	    }
-	    // ph_pw__di_dj
-	    double sum_table_T[][] = new double[length][Ns * Ns];
-	    for (i = 0; i < Ns * Ns; i++) {
-	    	for (j = 0; j < length; j++) {
-	    		sum_table_T[j][i] = sum_table_reshape[i][j];
-	    	}
-	    }
-	    int argsort[][] = new int[length][NHW];
-	    ArrayList <indexValueItem> indexValueList = new ArrayList<indexValueItem>();
-	    for (i = 0; i < length; i++) {
-	    	indexValueList.clear();
-	    	for (j = 0; j < Ns * Ns; j++) {
-	    		indexValueList.add(new indexValueItem(j, sum_table_T[i][j]));
-	    	}
-	    	Collections.sort(indexValueList, new indexValueComparator());
-	    	for (j = 0; j < NHW; j++) {
-	    		argsort[i][j] = indexValueList.get(j).getIndex();
-	    	}
-	    }
-	    for (i = 0; i < length; i++) {
-	    	argsort[i][0] = (Ns * Ns - 1)/2;
-	    }
-	    int argsort_di[][] = new int[length][NHW];
-	    for (i = 0; i < length; i++) {
-	    	for (j = 0; j < NHW; j++) {
-	    		argsort_di[i][j] = argsort[i][j] / Ns - nHW;
-	    	}
-	    }
-	    int argsort_dj[][] = new int[length][NHW];
-	    for (i = 0; i < length; i++) {
-	    	for (j = 0; j < NHW; j++) {
-	    		argsort_dj[i][j] = argsort[i][j] % Ns - nHW;
-	    	}
-	    }
-	    int near_pi[][][] = new int[height][width][NHW];
-	    for (h = 0; h < height; h++) {
-	    	for (w = 0; w < width; w++) {
-	    		for (i = 0; i < NHW; i++) {
-	    			near_pi[h][w][i] = argsort_di[h*width + w][i] + h;
-	    		}
-	    	}
-	    }
-	    int near_pj[][][] = new int[height][width][NHW];
-	    for (h = 0; h < height; h++) {
-	    	for (w = 0; w < width; w++) {
-	    		for (i = 0; i < NHW; i++) {
-	    			near_pj[h][w][i] = argsort_dj[h*width + w][i] + w;
-	    		}
-	    	}
-	    }
-	    int ri_rj_N__ni_nj[][][][] = new int[height][width][NHW][2];
-	    for (h = 0; h < height; h++) {
-	    	for (w = 0; w < width; w++) {
-	    		for (i = 0; i < NHW; i++) {
-	    		    ri_rj_N__ni_nj[h][w][i][0] = near_pi[h][w][i];
-	    		    ri_rj_N__ni_nj[h][w][i][1] = near_pj[h][w][i];
-	    		}
-	    	}
-	    }
-	    byte sum_filter[][] = new byte[length][Ns * Ns];
-	    for (i = 0; i < length; i++) {
-	    	for (j = 0; j < Ns * Ns; j++) {
-	    		if (sum_table_T[i][j] < threshold) {
-	    			sum_filter[i][j] = 1;
-	    		}
-	    		else {
-	    			sum_filter[i][j] = 0;
-	    		}
-	    	}
-	    }
-	    int threshold_count_init[] = new int[length];
-	    for (i = 0; i < length; i++) {
-	    	for (j = 0; j < Ns * Ns; j++) {
-	    	    threshold_count_init[i] += sum_filter[i][j];	
-	    	}
-	    }
-	    int threshold_count_2[] = closest_power_of_2(threshold_count_init, NHW);
-	    for (h = 0; h < height; h++) {
-	    	for (w = 0; w < width; w++) {
-	    		threshold_count[h][w] = threshold_count_2[h*width + w];
-	    	}
-	    }
-	    return ri_rj_N__ni_nj;
-	}
-	
 	private int[] closest_power_of_2(int[] M, int max_) {
 	    int i;
 	    int length = M.length;
@@ -1319,117 +827,6 @@ public class BM3D extends AlgorithmBase {
         return M_out;
 	}
 	
-	private class indexValueComparator implements Comparator<indexValueItem> {
-
-        /**
-         * DOCUMENT ME!
-         * 
-         * @param o1 DOCUMENT ME!
-         * @param o2 DOCUMENT ME!
-         * 
-         * @return DOCUMENT ME!
-         */
-        public int compare(indexValueItem o1, indexValueItem o2) {
-            double a = o1.getValue();
-            double b = o2.getValue();
-            int i = o1.getIndex();
-            int j = o2.getIndex();
-
-            if (a < b) {
-                return -1;
-            } else if (a > b) {
-                return 1;
-            } else if (i < j) {
-            	return -1;
-            } else if (i > j) {
-            	return 1;
-            } else {
-                return 0;
-            }
-        }
-
-    }
-	
-	private class indexValueItem {
-		private int index;
-		private double value;
-		
-		public indexValueItem(int index, double value) {
-			this.index = index;
-			this.value = value;
-		}
-		
-		public int getIndex() {
-			return index;
-		}
-		
-		public double getValue() {
-			return value;
-		}
-		
-		
-	}
-	
-	private void get_add_patch_matrix(int h, int w, int nHW, int kHW, double[][] row_add_mat, double[][] column_add_mat) {
-		int i, j, k;
-	    double row_add_pad[][] = new double[h][h];
-	    for (i = h; i < h - nHW; i++) {
-	    	row_add_pad[i][i] = 1.0;
-	    	row_add_mat[i][i] = 1.0;
-	    }
-	    for (k = 1; k < kHW; k++) {
-	    	double trans_mat[][] = translation_2d_mat(row_add_pad, k, 0);
-	    	for (i = 0; i < h; i++) {
-	    		for (j = 0; j < h; j++) {
-	    			row_add_mat[i][j] += trans_mat[i][j];
-	    		}
-	    	}
-	    } // for (k = 1; k < kHW; k++)
-	    
-	    double column_add_pad[][] = new double[w][w];
-	    for (i = w; i < w - nHW; i++) {
-	    	column_add_pad[i][i] = 1.0;
-	    	column_add_mat[i][i] = 1.0;
-	    }
-	    for (k = 1; k < kHW; k++) {
-	    	double trans_mat[][] = translation_2d_mat(column_add_pad, 0, k);
-	    	for (i = 0; i < w; i++) {
-	    		for (j = 0; j < w; j++) {
-	    			column_add_mat[i][j] += trans_mat[i][j];
-	    		}
-	    	}
-	    } // for (k = 1; k < kHW; k++)
-	}
-	
-	private double[][] translation_2d_mat(double mat[][], int right, int down) {
-		int i, j, iroll, jroll;
-		double roll_mat[][] = new double[mat.length][mat[0].length];
-		for (i = 0; i < mat.length; i++) {
-			if (down >= 0) {
-			    iroll = (i + down)%mat.length;
-			}
-			else {
-				iroll = i + down;
-				while (iroll < 0) {
-					iroll += mat.length;
-				}
-			}
-			for (j = 0; j < mat[0].length; j++) {
-				if (right >= 0) {
-				    jroll = (j + right)%mat[0].length;	
-				}
-				else {
-					jroll = j + right;
-					while (jroll < 0) {
-						jroll += mat[0].length;
-					}
-				}
-				roll_mat[iroll][jroll] = mat[i][j];
-			}
-		}
-		return roll_mat;
-	}
-	
 	private double[][] get_kaiserWindow(int kHW) {
 	    int i,j;
 	    double k[] = kaiser(kHW, 2);
@@ -1509,4 +906,216 @@ public class BM3D extends AlgorithmBase {
 	    vecInd.clear();
 	    return ind;
 	}
+	
+	private double[] image2buffer(ModelImage im) {
+		int length = im.getExtents()[0] * im.getExtents()[1];
+		double buf[] = new double[length];
+		try {
+			im.exportData(0, length, buf);
+		}
+		catch (IOException e) {
+			MipavUtil.displayError("IOException on im.exportData(0, length, buf) in image2buffer");
+			return null;
+		}
+		return buf;
+	}
+	
+	private class PatchTransform {
+		// The 2D transform of the kHW by kHW patches, set up once for all the patches of a step.
+		// The DCT is applied separably with a precomputed cosine matrix.  The BIOR wavelet transform in periodization
+		// mode is linear, so its forward and inverse transforms are kept as dense matrices built from the transforms
+		// of the unit patches.
+		// A transformed patch is stored as kHW*kHW coefficients, coefficient (h, w) at h*kHW + w.
+		private final int kHW;
+		private final boolean dct;
+		// DCT: dct_mat[k][n] is the weight of sample n in coefficient k
+		private double dct_mat[][];
+		// BIOR: forward_mat[c][p] is the weight of pixel p in coefficient c, inverse_mat[p][c] the reverse
+		private double forward_mat[][];
+		private double inverse_mat[][];
+		
+		public PatchTransform(String tau_2D, int kHW) {
+			int i, j, n;
+			this.kHW = kHW;
+			dct = tau_2D.equalsIgnoreCase("DCT");
+			if (dct) {
+				dct_mat = new double[kHW][kHW];
+				for (i = 0; i < kHW; i++) {
+					double scale = (i == 0) ? Math.sqrt(1.0/(4.0*kHW)) : Math.sqrt(1.0/(2.0*kHW));
+					for (n = 0; n < kHW; n++) {
+						dct_mat[i][n] = 2.0 * scale * Math.cos(Math.PI*i*(2*n+1)/(2.0*kHW));
+					}
+				}
+			}
+			else { // "BIOR"
+				int kk = kHW * kHW;
+				int level = (int)log2(kHW);
+				PyWavelets py = new PyWavelets();
+				double unit[][] = new double[kHW][kHW];
+				forward_mat = new double[kk][kk];
+				inverse_mat = new double[kk][kk];
+				for (i = 0; i < kk; i++) {
+					unit[i / kHW][i % kHW] = 1.0;
+					double waveim[][] = bior_forward(py, unit, level);
+					double patch[][] = py.BM3Dwaverec2(unit, level);
+					for (j = 0; j < kk; j++) {
+						forward_mat[j][i] = waveim[j / kHW][j % kHW];
+						inverse_mat[j][i] = patch[j / kHW][j % kHW];
+					}
+					unit[i / kHW][i % kHW] = 0.0;
+				}
+			}
+		}
+		
+		private double[][] bior_forward(PyWavelets py, double patch[][], int iter_max) {
+			int i, x, y;
+			double coeffs[][][] = py.BM3Dwavedec2(patch, iter_max);
+			double waveim[][] = new double[kHW][kHW];
+			
+			int N = 1;
+			waveim[0][0] = coeffs[0][0][0];
+			for (i = 0; i < iter_max; i++) {
+				for (y = N; y < 2*N; y++) {
+					for (x = N; x < 2*N; x++) {
+						waveim[y][x] = coeffs[3*i+3][y-N][x-N];
+					}
+				}
+				for (y = 0; y < N; y++) {
+					for (x = N; x < 2*N; x++) {
+						waveim[y][x] = -coeffs[3*i+2][y][x-N];
+					}
+				}
+				for (y = N; y < 2*N; y++) {
+					for (x = 0; x < N; x++) {
+						waveim[y][x] = -coeffs[3*i+1][y-N][x];
+					}
+				}
+				N *= 2;
+			} // for (i = 0; i < iter_max; i++)
+			return waveim;
+		}
+		
+		public double[][] forwardAll(final double buf[], final int width, final int height) {
+			// transforms all the patches of the image
+			// return: for patch row i the coefficients of the patch at column j from j*kHW*kHW
+			final int patch_h = height - kHW + 1;
+			final int patch_w = width - kHW + 1;
+			final double fre_patches[][] = new double[patch_h][patch_w * kHW * kHW];
+			int nTasks = multiThreadingEnabled ? Math.max(1, Math.min(nthreads, patch_h)) : 1;
+			final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+			for (int t = 0; t < nTasks; t++) {
+				final int first = (int) ((long) patch_h * t / nTasks);
+				final int last = (int) ((long) patch_h * (t + 1) / nTasks);
+				Runnable task = new Runnable() {
+					public void run() {
+						try {
+							double patch[] = new double[kHW * kHW];
+							double work[] = new double[kHW * kHW];
+							for (int i = first; i < last; i++) {
+								for (int j = 0; j < patch_w; j++) {
+									for (int h = 0; h < kHW; h++) {
+										System.arraycopy(buf, (i + h) * width + j, patch, h * kHW, kHW);
+									}
+									forward(patch, work, fre_patches[i], j * kHW * kHW);
+								}
+							}
+						}
+						finally {
+							doneSignal.countDown();
+						}
+					}
+				};
+				if (nTasks == 1) {
+					task.run();
+				}
+				else {
+					ThreadUtil.mipavThreadPool.execute(task);
+				}
+			}
+			try {
+				doneSignal.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return fre_patches;
+		}
+		
+		private void forward(double patch[], double work[], double out[], int offset) {
+			int i, j, n;
+			double sum;
+			if (dct) {
+				// along the columns, then along the rows
+				for (i = 0; i < kHW; i++) {
+					for (j = 0; j < kHW; j++) {
+						sum = 0.0;
+						for (n = 0; n < kHW; n++) {
+							sum += dct_mat[i][n] * patch[n*kHW + j];
+						}
+						work[i*kHW + j] = sum;
+					}
+				}
+				for (i = 0; i < kHW; i++) {
+					for (j = 0; j < kHW; j++) {
+						sum = 0.0;
+						for (n = 0; n < kHW; n++) {
+							sum += dct_mat[j][n] * work[i*kHW + n];
+						}
+						out[offset + i*kHW + j] = sum;
+					}
+				}
+			}
+			else {
+				multiply(forward_mat, patch, out, offset);
+			}
+		}
+		
+		public void inverse(double group_3D[], int s, int nSx_r, double work[], double patch[]) {
+			// inverse transform of patch s of a group, coefficient c at c*nSx_r + s
+			int i, j, n;
+			int kk = kHW * kHW;
+			double sum;
+			double coef[] = (dct) ? patch : work;
+			for (i = 0; i < kk; i++) {
+				coef[i] = group_3D[i*nSx_r + s];
+			}
+			if (dct) {
+				// along the columns, then along the rows
+				for (i = 0; i < kHW; i++) {
+					for (j = 0; j < kHW; j++) {
+						sum = 0.0;
+						for (n = 0; n < kHW; n++) {
+							sum += dct_mat[n][i] * coef[n*kHW + j];
+						}
+						work[i*kHW + j] = sum;
+					}
+				}
+				for (i = 0; i < kHW; i++) {
+					for (j = 0; j < kHW; j++) {
+						sum = 0.0;
+						for (n = 0; n < kHW; n++) {
+							sum += dct_mat[n][j] * work[i*kHW + n];
+						}
+						patch[i*kHW + j] = sum;
+					}
+				}
+			}
+			else {
+				multiply(inverse_mat, work, patch, 0);
+			}
+		}
+		
+		private void multiply(double mat[][], double in[], double out[], int offset) {
+			int i, j;
+			double sum;
+			for (i = 0; i < mat.length; i++) {
+				double row[] = mat[i];
+				sum = 0.0;
+				for (j = 0; j < row.length; j++) {
+					sum += row[j] * in[j];
+				}
+				out[offset + i] = sum;
+			}
+		}
+	}
 }
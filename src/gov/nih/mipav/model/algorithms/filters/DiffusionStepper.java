@@ -0,0 +1,342 @@
+package gov.nih.mipav.model.algorithms.filters;
+
+
+import gov.nih.mipav.util.ThreadUtil;
+
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * Runs the iterations of an explicit diffusion scheme on several threads. The image is split into slabs of whole
+ * planes, the slices of a volume or the rows of a 2D image, and each phase of an iteration runs on all the slabs in
+ * parallel. A phase ends only when every slab is done, so the next phase sees the planes that the neighboring slabs
+ * wrote along their borders; with shared memory that is all the halo exchange the slabs need.
+ *
+ * <p>The image is kept in two buffers that are allocated once. Each step reads the current buffer and writes the next
+ * one, and then the two are swapped. A step can also measure the relative change of the image, the root of the summed
+ * squared change over the root of the summed squared image, and report convergence once it falls to a tolerance so
+ * that callers can stop iterating early.</p>
+ */
+public class DiffusionStepper {
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    /** Number of voxels in a plane. */
+    private final int planeSize;
+
+    /** Number of planes. */
+    private final int nPlanes;
+
+    /** First plane of each slab, followed by the number of planes. */
+    private final int[] slabStarts;
+
+    /** The image at the current iteration. */
+    private float[] current;
+
+    /** Receives the image of the next iteration. */
+    private float[] next;
+
+    /** Relative change at or below which a step reports convergence; 0 never stops early. */
+    private double stopTolerance = 0;
+
+    /** Relative change of the last step, or NaN when it was not measured. */
+    private double lastChange = Double.NaN;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a stepper for an image.
+     *
+     * @param  extents   the extents of the image; the planes are the rows of a 2D image and the slices of a volume
+     * @param  nthreads  number of threads to use, 1 to run on the calling thread only
+     */
+    public DiffusionStepper(final int[] extents, final int nthreads) {
+
+        if (extents.length > 2) {
+            planeSize = extents[0] * extents[1];
+            nPlanes = extents[2];
+        } else {
+            planeSize = extents[0];
+            nPlanes = extents[1];
+        }
+
+        final int nSlabs = Math.max(1, Math.min(nthreads, nPlanes));
+        slabStarts = new int[nSlabs + 1];
+
+        for (int t = 0; t <= nSlabs; t++) {
+            slabStarts[t] = (int) ((long) nPlanes * t / nSlabs);
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of voxels in a plane.
+     *
+     * @return  the plane size
+     */
+    public int getPlaneSize() {
+        return planeSize;
+    }
+
+    /**
+     * Sets the relative change at or below which step() reports convergence.
+     *
+     * @param  tolerance  the tolerance; 0 or less never stops early
+     */
+    public void setStopTolerance(final double tolerance) {
+        stopTolerance = tolerance;
+    }
+
+    /**
+     * Returns the relative change of the image in the last step.
+     *
+     * @return  the relative change, or NaN if no stop tolerance is set
+     */
+    public double getLastChange() {
+        return lastChange;
+    }
+
+    /**
+     * Sets the image to diffuse. The buffer becomes the current buffer; the second buffer is only allocated when the
+     * size of the image changes, so the slices of a 2.5D image can be diffused one after another with the same
+     * buffers.
+     *
+     * @param  image  the image
+     */
+    public void setImage(final float[] image) {
+
+        if (next == image) {
+            next = current;
+        }
+
+        current = image;
+
+        if ( (next == null) || (next.length != image.length)) {
+            next = new float[image.length];
+        }
+    }
+
+    /**
+     * Returns the current image, which is the result once the iterations are done.
+     *
+     * @return  the current buffer
+     */
+    public float[] getImage() {
+        return current;
+    }
+
+    /**
+     * Runs an operation on all the slabs in parallel and waits for them.
+     *
+     * @param  operation  the operation
+     */
+    public void forEachSlab(final SlabOperation operation) {
+        runSlabs(new SlabTask() {
+            public void run(final int slab) {
+                operation.apply(slabStarts[slab], slabStarts[slab + 1]);
+            }
+        });
+    }
+
+    /**
+     * Runs one explicit step: the operation computes the next image of each slab from the current image, and then the
+     * buffers are swapped.
+     *
+     * @param   operation  the update of a slab
+     *
+     * @return  true when a stop tolerance is set and the relative change of the image reached it
+     */
+    public boolean step(final StepOperation operation) {
+        final float[] src = current;
+        final float[] dest = next;
+        final int nSlabs = slabStarts.length - 1;
+        final double[] changeSums = new double[nSlabs];
+        final double[] imageSums = new double[nSlabs];
+
+        runSlabs(new SlabTask() {
+            public void run(final int slab) {
+                operation.apply(src, dest, slabStarts[slab], slabStarts[slab + 1]);
+
+                if (stopTolerance > 0) {
+                    double change = 0;
+                    double sum = 0;
+
+                    for (int i = slabStarts[slab] * planeSize; i < (slabStarts[slab + 1] * planeSize); i++) {
+                        final double diff = dest[i] - src[i];
+                        change += diff * diff;
+                        sum += (double) dest[i] * dest[i];
+                    }
+
+                    changeSums[slab] = change;
+                    imageSums[slab] = sum;
+                }
+            }
+        });
+
+        current = dest;
+        next = src;
+
+        if (stopTolerance <= 0) {
+            lastChange = Double.NaN;
+
+            return false;
+        }
+
+        double change = 0;
+        double sum = 0;
+
+        for (int t = 0; t < nSlabs; t++) {
+            change += changeSums[t];
+            sum += imageSums[t];
+        }
+
+        lastChange = (sum > 0) ? Math.sqrt(change / sum) : Math.sqrt(change);
+
+        return lastChange <= stopTolerance;
+    }
+
+    /**
+     * Returns the largest value of a buffer covering the image.
+     *
+     * @param   values  the buffer
+     *
+     * @return  its largest value
+     */
+    public float maximum(final float[] values) {
+        return extreme(values, true);
+    }
+
+    /**
+     * Returns the smallest value of a buffer covering the image.
+     *
+     * @param   values  the buffer
+     *
+     * @return  its smallest value
+     */
+    public float minimum(final float[] values) {
+        return extreme(values, false);
+    }
+
+    /**
+     * Finds the largest or smallest value of a buffer, one slab per thread.
+     *
+     * @param   values  the buffer
+     * @param   max     true for the largest value
+     *
+     * @return  the value
+     */
+    private float extreme(final float[] values, final boolean max) {
+        final int nSlabs = slabStarts.length - 1;
+        final float[] partial = new float[nSlabs];
+
+        runSlabs(new SlabTask() {
+            public void run(final int slab) {
+                float value = max ? -Float.MAX_VALUE : Float.MAX_VALUE;
+
+                for (int i = slabStarts[slab] * planeSize; i < (slabStarts[slab + 1] * planeSize); i++) {
+
+                    if (max ? (values[i] > value) : (values[i] < value)) {
+                        value = values[i];
+                    }
+                }
+
+                partial[slab] = value;
+            }
+        });
+
+        float value = partial[0];
+
+        for (int t = 1; t < nSlabs; t++) {
+
+            if (max ? (partial[t] > value) : (partial[t] < value)) {
+                value = partial[t];
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Runs a task for every slab, on the thread pool when there are several.
+     *
+     * @param  task  the task
+     */
+    private void runSlabs(final SlabTask task) {
+        final int nSlabs = slabStarts.length - 1;
+
+        if (nSlabs == 1) {
+            task.run(0);
+
+            return;
+        }
+
+        final CountDownLatch doneSignal = new CountDownLatch(nSlabs);
+
+        for (int t = 0; t < nSlabs; t++) {
+            final int slab = t;
+
+            ThreadUtil.mipavThreadPool.execute(new Runnable() {
+                public void run() {
+
+                    try {
+                        task.run(slab);
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            doneSignal.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //~ Inner Interfaces -----------------------------------------------------------------------------------------------
+
+    /**
+     * A phase of an iteration that works on a range of planes.
+     */
+    public interface SlabOperation {
+
+        /**
+         * Runs the phase on a range of planes.
+         *
+         * @param  firstPlane  first plane
+         * @param  endPlane    plane after the last one
+         */
+        void apply(int firstPlane, int endPlane);
+    }
+
+    /**
+     * The update of an explicit step for a range of planes.
+     */
+    public interface StepOperation {
+
+        /**
+         * Computes the next image of a range of planes. Every voxel of the planes must be written.
+         *
+         * @param  current     the current image, which may be read anywhere
+         * @param  next        receives the next image
+         * @param  firstPlane  first plane
+         * @param  endPlane    plane after the last one
+         */
+        void apply(float[] current, float[] next, int firstPlane, int endPlane);
+    }
+
+    /**
+     * Work on one slab.
+     */
+    private interface SlabTask {
+
+        /**
+         * Runs the work.
+         *
+         * @param  slab  the slab
+         */
+        void run(int slab);
+    }
+}
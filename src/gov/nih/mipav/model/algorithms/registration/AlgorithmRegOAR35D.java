@@ -342,6 +342,15 @@ public class AlgorithmRegOAR35D extends AlgorithmBase {
     
     /** Turns the full version of Powell's algorithm on/off. When off the JTEM line minimization used.  */
     private boolean doJTEM = false;
+
+    /** Fraction of the reference voxels sampled by the cost functions; 1 samples every voxel. */
+    private float samplingFraction = 1.0f;
+
+    /** Seed of the random voxel sample of the cost functions. */
+    private long samplingSeed = 0;
+
+    /** Number of threads of a cost evaluation; 0 uses the available cores when multi-threading is on. */
+    private int numberOfThreads = 0;
     
     private boolean doMultiThread = false;
 
@@ -518,6 +527,42 @@ public class AlgorithmRegOAR35D extends AlgorithmBase {
     	doJTEM = bOn;
     }
 
+    /**
+     * Restricts the cost functions to a fixed random sample of the reference voxels at every level.
+     * 
+     * @param fraction the fraction of the reference voxels to sample; 1 samples every voxel
+     * @param seed the seed of the random sample
+     */
+    public void setSampling(final float fraction, final long seed) {
+        samplingFraction = fraction;
+        samplingSeed = seed;
+    }
+
+    /**
+     * Sets the number of threads over which a cost evaluation is split.
+     * 
+     * @param nthreads the number of threads; 0 uses the available cores when multi-threading is on
+     */
+    public void setNumberOfThreads(final int nthreads) {
+        numberOfThreads = nthreads;
+    }
+
+    /**
+     * Gives a cost function of a level the voxel sampling and the number of threads of this registration.
+     * 
+     * @param cost the cost function
+     */
+    private void setUpCost(final AlgorithmCostFunctions cost) {
+
+        if (numberOfThreads > 0) {
+            cost.setNumberOfThreads(numberOfThreads);
+        } else if ( !doMultiThread) {
+            cost.setNumberOfThreads(1);
+        }
+
+        cost.setSampling(samplingFraction, samplingSeed);
+    }
+
     /**
      * Calculates the center of mass (gravity) of a 3D image. In image space where the upper left hand corner of the
      * image is 0,0. The x axis goes left to right, y axis goes top to bottom and z axis goes into the screen. (i.e. the
@@ -3007,6 +3052,7 @@ public class AlgorithmRegOAR35D extends AlgorithmBase {
     @SuppressWarnings("unchecked")
     private Vector<MatrixListItem>[] levelEight(ModelSimpleImage ref, ModelSimpleImage input) {
         AlgorithmCostFunctions cost = new AlgorithmCostFunctions(ref, input, costChoice, 32, 1);
+        setUpCost(cost);
 
         /*
          * // To test the amount of time for a single cost evaluation at this level: timeNow =
@@ -3362,6 +3408,7 @@ public class AlgorithmRegOAR35D extends AlgorithmBase {
     private Vector<MatrixListItem> levelFour(ModelSimpleImage ref, ModelSimpleImage input, 
             Vector<MatrixListItem> minima, Vector<MatrixListItem> optMinima) {
         AlgorithmCostFunctions cost = new AlgorithmCostFunctions(ref, input, costChoice, 64, 1);
+        setUpCost(cost);
 
         /*
          * // To test the amount of time for a single cost evaluation at this level: timeNow =
@@ -3575,6 +3622,7 @@ public class AlgorithmRegOAR35D extends AlgorithmBase {
     private MatrixListItem levelOne(ModelSimpleImage ref, ModelSimpleImage input, MatrixListItem item, int maxIter) {
         MatrixListItem item2;
         AlgorithmCostFunctions cost = new AlgorithmCostFunctions(ref, input, costChoice, 256, 1);
+        setUpCost(cost);
 
         /*
          * // To test the amount of time for a single cost evaluation at this level: timeNow =
@@ -3648,6 +3696,7 @@ public class AlgorithmRegOAR35D extends AlgorithmBase {
   
     private MatrixListItem levelTwo(ModelSimpleImage ref, ModelSimpleImage input, Vector<MatrixListItem> minima) {
         AlgorithmCostFunctions cost = new AlgorithmCostFunctions(ref, input, costChoice, 128, 1);
+        setUpCost(cost);
 
         /*
          * // To test the amount of time for a single cost evaluation at this level: timeNow =
@@ -339,6 +339,15 @@ public class AlgorithmRegOAR3D extends AlgorithmBase implements AlgorithmInterfa
     private ImageRegistrationGPU m_kGPUCost = null;
     /** Turns the full version of Powell's algorithm on/off. When off the JTEM line minimization used.  */
     private boolean doJTEM;
+
+    /** Fraction of the reference voxels sampled by the cost functions; 1 samples every voxel. */
+    private float samplingFraction = 1.0f;
+
+    /** Seed of the random voxel sample of the cost functions. */
+    private long samplingSeed = 0;
+
+    /** Number of threads of a cost evaluation; 0 uses the available cores when multi-threading is on. */
+    private int numberOfThreads = 0;
     private CountDownLatch doneSignal;  
 
     // ~ Constructors
@@ -1802,6 +1811,42 @@ public class AlgorithmRegOAR3D extends AlgorithmBase implements AlgorithmInterfa
     	doJTEM = bOn;
     }
 
+    /**
+     * Restricts the cost functions to a fixed random sample of the reference voxels at every level.
+     * 
+     * @param fraction the fraction of the reference voxels to sample; 1 samples every voxel
+     * @param seed the seed of the random sample
+     */
+    public void setSampling(final float fraction, final long seed) {
+        samplingFraction = fraction;
+        samplingSeed = seed;
+    }
+
+    /**
+     * Sets the number of threads over which a cost evaluation is split.
+     * 
+     * @param nthreads the number of threads; 0 uses the available cores when multi-threading is on
+     */
+    public void setNumberOfThreads(final int nthreads) {
+        numberOfThreads = nthreads;
+    }
+
+    /**
+     * Gives a cost function of a level the voxel sampling and the number of threads of this registration.
+     * 
+     * @param cost the cost function
+     */
+    private void setUpCost(final AlgorithmCostFunctions cost) {
+
+        if (numberOfThreads > 0) {
+            cost.setNumberOfThreads(numberOfThreads);
+        } else if ( !doMultiThread) {
+            cost.setNumberOfThreads(1);
+        }
+
+        cost.setSampling(samplingFraction, samplingSeed);
+    }
+
     /**
      * Takes a simple image and subsamples it by 2, interpolating so that the new values are averages.
      * 
@@ -2098,6 +2143,7 @@ public class AlgorithmRegOAR3D extends AlgorithmBase implements AlgorithmInterfa
     public Vector<MatrixListItem>[] levelEight(final ModelSimpleImage ref, final ModelSimpleImage input,
             final float progressFrom, final float progressTo) {
         final AlgorithmCostFunctions cost = new AlgorithmCostFunctions(ref, input, costChoice, 32, 1);
+        setUpCost(cost);
         if ( (m_kGPUCost != null)
                 && ( (costChoice == AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_GPU) || (costChoice == AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_GPU_LM))) {
             // System.err.println( "Level 8 " );
@@ -2503,6 +2549,7 @@ public class AlgorithmRegOAR3D extends AlgorithmBase implements AlgorithmInterfa
             final Vector<MatrixListItem> minima, final Vector<MatrixListItem> optMinima, final float progressFrom,
             final float progressTo) {
         final AlgorithmCostFunctions cost = new AlgorithmCostFunctions(ref, input, costChoice, 64, 1);
+        setUpCost(cost);
         if ( (m_kGPUCost != null)
                 && ( (costChoice == AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_GPU) || (costChoice == AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_GPU_LM))) {
             // System.err.println( "Level 4 " );
@@ -2776,6 +2823,8 @@ public class AlgorithmRegOAR3D extends AlgorithmBase implements AlgorithmInterfa
         MatrixListItem item2;
 
         final AlgorithmCostFunctions cost = new AlgorithmCostFunctions(ref, input, costChoice, 256, 1);
+
+        setUpCost(cost);
         if ( (m_kGPUCost != null)
                 && ( (costChoice == AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_GPU) || (costChoice == AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_GPU_LM))) {
             // System.err.println( "Level 1 " );
@@ -2871,6 +2920,7 @@ public class AlgorithmRegOAR3D extends AlgorithmBase implements AlgorithmInterfa
             final Vector<MatrixListItem> minima, final float progressFrom, final float progressTo) {
         fireProgressStateChanged((int) progressFrom);
         final AlgorithmCostFunctions cost = new AlgorithmCostFunctions(ref, input, costChoice, 128, 1);
+        setUpCost(cost);
         if ( (m_kGPUCost != null)
                 && ( (costChoice == AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_GPU) || (costChoice == AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_GPU_LM))) {
             // System.err.println( "Level 2 " );
@@ -144,6 +144,16 @@ public class AlgorithmChangeType extends AlgorithmBase {
         }
     }
 
+    /**
+     * A new 3D or 4D image is made one slice at a time through the long position accessors, so that it works on paged
+     * images. The in place conversion exports the whole image and does not.
+     *
+     * @return  <code>true</code> if the converted image is stored in a 3D or 4D destination image
+     */
+    protected boolean supportsPagedImages() {
+        return (destImage != null) && (srcImage != null) && (srcImage.getNDims() > 2);
+    }
+
     /**
      * This function replaces the source image with the new type image and new data range.
      */
@@ -529,14 +539,15 @@ public class AlgorithmChangeType extends AlgorithmBase {
 
         fireProgressStateChanged(srcImage.getImageName(), "Changing new type image");
 
-        int mod = length * numSlices / 100;
+        long mod = (long) length * numSlices / 100;
 
 
         for (i = 0; i < numSlices; i++) {
+            final long index = (long) i * length;
 
             // export one slice at a time (so we don't have to allocate a huge buffer)
             try {
-                srcImage.exportData((i * length), length, buffer);
+                srcImage.exportData(index, length, buffer);
             } catch (IOException ex) {
                 buffer = null;
                 errorCleanUp("Algorithm Change type: Image(s) locked", true);
@@ -548,36 +559,35 @@ public class AlgorithmChangeType extends AlgorithmBase {
 
                 for (j = 0; (j < length) && !threadStopped; j++) {
 
-                    if (((((i * length) + j) % mod) == 0)) {
-                        fireProgressStateChanged(Math.round((float) ((i * length) + j) / ((numSlices * length) - 1) *
+                    if ((((index + j) % mod) == 0)) {
+                        fireProgressStateChanged(Math.round((float) (index + j) / (((long) numSlices * length) - 1) *
                                                                 100));
                     }
                     
                     if ((srcImage.getType() == ModelStorageBase.COMPLEX) || (srcImage.getType() == ModelStorageBase.DCOMPLEX)) {
-                        destImage.set((i * length) + j, buffer[j] * endRange2/endRange1);	
+                        destImage.set(index + j, buffer[j] * endRange2/endRange1);	
                     }
                     else {
 
 	                    if ((buffer[j] >= imMin) && (buffer[j] <= imMax)) {
 	                        if (imDiff != 0.0) {
-	                            destImage.set((i * length) + j, (((buffer[j] - imMin) / imDiff) * newDiff) + stRange2);
+	                            destImage.set(index + j, (((buffer[j] - imMin) / imDiff) * newDiff) + stRange2);
 	                        }
 	                        else if(imDiff == 0 && imMin == 0){
 	                            //destImage.set(index + j,(stRange2 + endRange2)/2.0);
-	                        	destImage.set((i * length) + j,0);
+	                        	destImage.set(index + j,0);
 	                        }else if(imDiff == 0 && imMin != 0) {
-	                        	destImage.set((i * length) + j,(stRange2 + endRange2)/2.0);
+	                        	destImage.set(index + j,(stRange2 + endRange2)/2.0);
 	                        }
 	                    } else if (buffer[j] < imMin) {
-	                        destImage.set((i * length) + j, stRange2);
+	                        destImage.set(index + j, stRange2);
 	                    } else if (buffer[j] > imMax) {
-	                        destImage.set((i * length) + j, endRange2);
+	                        destImage.set(index + j, endRange2);
 	                    }
                     }
                 }
             } // image will be processed slice independently
             else {
-                int index = length * i;
                 imMax = imMin = 0;
 
                 // find the new min and max
@@ -594,8 +604,8 @@ public class AlgorithmChangeType extends AlgorithmBase {
 
                 for (j = 0; j < length; j++) {
 
-                    if (((((i * length) + j) % mod) == 0)) {
-                        fireProgressStateChanged(Math.round((float) ((i * length) + j) / ((numSlices * length) - 1) *
+                    if ((((index + j) % mod) == 0)) {
+                        fireProgressStateChanged(Math.round((float) (index + j) / (((long) numSlices * length) - 1) *
                                                                 100));
                     }
                     
@@ -0,0 +1,285 @@
+package gov.nih.mipav.model.file;
+
+
+import gov.nih.mipav.util.ThreadUtil;
+
+import gov.nih.mipav.view.Preferences;
+
+import java.io.*;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * An output stream that writes gzip data as a series of independently compressed members of at most 64 KB, in the
+ * block gzip (BGZF) layout used by bgzip and samtools. Each member holds its compressed length in a "BC" extra field,
+ * so ParallelDecompressInputStream can inflate the members of the file on several threads. The blocks are compressed
+ * on the MIPAV thread pool while the caller keeps writing. Any gzip reader can read the file, since a series of gzip
+ * members is itself a valid gzip file.
+ */
+public class BlockGZIPOutputStream extends FilterOutputStream {
+
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** Uncompressed size of a block, small enough that a stored block still fits into a 64 KB member. */
+    private static final int BLOCK_SIZE = 0xff00;
+
+    /** Largest size of a member. */
+    private static final int MAX_MEMBER_SIZE = 0x10000;
+
+    /** Length of the member header, including the BC extra field. */
+    private static final int HEADER_LENGTH = 18;
+
+    /** Length of the member trailer: CRC32 and uncompressed size. */
+    private static final int TRAILER_LENGTH = 8;
+
+    /** The empty member that marks the end of a block gzip file. */
+    private static final byte[] EOF_BLOCK = {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    /** The block being filled. */
+    private byte[] block = new byte[BLOCK_SIZE];
+
+    /** Number of bytes in the block being filled. */
+    private int count = 0;
+
+    /** Compressing tasks whose members have not been written yet, in file order. */
+    private final LinkedList<FutureTask<byte[]>> pending = new LinkedList<FutureTask<byte[]>>();
+
+    /** Number of blocks that may be compressing at once. */
+    private final int window;
+
+    /** Whether blocks are handed to the thread pool. */
+    private final boolean multiThreaded;
+
+    /** Set once finish() has written the end of file block. */
+    private boolean finished = false;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a block gzip stream.
+     *
+     * @param  out  the stream to write the compressed data to
+     */
+    public BlockGZIPOutputStream(final OutputStream out) {
+        super(out);
+        multiThreaded = Preferences.isMultiThreadingEnabled() && (ThreadUtil.getAvailableCores() > 1);
+        window = multiThreaded ? (2 * ThreadUtil.getAvailableCores()) : 0;
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(final int b) throws IOException {
+        block[count++] = (byte) b;
+
+        if (count == BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(final byte[] b, int off, int len) throws IOException {
+
+        while (len > 0) {
+            final int n = Math.min(len, BLOCK_SIZE - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+
+            if (count == BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the members of all the data written so far. The partly filled block is written as a short member.
+     *
+     * @throws  IOException  if the data can not be written
+     */
+    public void flush() throws IOException {
+
+        if (count > 0) {
+            flushBlock();
+        }
+
+        writePending(0);
+        out.flush();
+    }
+
+    /**
+     * Writes all the remaining data and the end of file block, without closing the underlying stream.
+     *
+     * @throws  IOException  if the data can not be written
+     */
+    public void finish() throws IOException {
+
+        if (finished) {
+            return;
+        }
+
+        if (count > 0) {
+            flushBlock();
+        }
+
+        writePending(0);
+        out.write(EOF_BLOCK);
+        finished = true;
+    }
+
+    /**
+     * Finishes the gzip data and closes the underlying stream.
+     *
+     * @throws  IOException  if the data can not be written
+     */
+    public void close() throws IOException {
+
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Hands the filled block to a compressing task and starts a new block.
+     *
+     * @throws  IOException  if earlier members can not be written
+     */
+    private void flushBlock() throws IOException {
+        final byte[] data = block;
+        final int length = count;
+        final FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            public byte[] call() {
+                return compressBlock(data, length);
+            }
+        });
+
+        pending.add(task);
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+
+        if (multiThreaded) {
+            ThreadUtil.mipavThreadPool.execute(task);
+        }
+
+        writePending(window);
+    }
+
+    /**
+     * Writes the members of finished tasks until at most a number of tasks is left. A task that no pool thread has
+     * started yet is run on the calling thread.
+     *
+     * @param   keep  number of tasks that may be left pending
+     *
+     * @throws  IOException  if a member can not be written
+     */
+    private void writePending(final int keep) throws IOException {
+
+        while ( (pending.size() > keep) || ( !pending.isEmpty() && pending.getFirst().isDone())) {
+            final FutureTask<byte[]> task = pending.removeFirst();
+            task.run();
+
+            try {
+                out.write(task.get());
+            } catch (final InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while compressing");
+            } catch (final ExecutionException e) {
+                throw new IOException("Compression failed: " + e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Compresses a block into a complete gzip member.
+     *
+     * @param   data    the block
+     * @param   length  number of bytes in the block
+     *
+     * @return  the member
+     */
+    private static byte[] compressBlock(final byte[] data, final int length) {
+        final byte[] member = new byte[MAX_MEMBER_SIZE];
+        int level = Deflater.DEFAULT_COMPRESSION;
+        int size;
+
+        while (true) {
+            final Deflater deflater = new Deflater(level, true);
+
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                size = deflater.deflate(member, HEADER_LENGTH, MAX_MEMBER_SIZE - HEADER_LENGTH - TRAILER_LENGTH);
+
+                if (deflater.finished()) {
+                    break;
+                }
+            } finally {
+                deflater.end();
+            }
+
+            // data that does not compress is stored, which always fits
+            level = Deflater.NO_COMPRESSION;
+        }
+
+        final int memberSize = HEADER_LENGTH + size + TRAILER_LENGTH;
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+
+        member[0] = 0x1f;
+        member[1] = (byte) 0x8b;
+        member[2] = 8; // deflate
+        member[3] = 4; // extra field present
+        member[9] = (byte) 0xff; // unknown operating system
+        member[10] = 6; // extra field length
+        member[12] = 'B';
+        member[13] = 'C';
+        member[14] = 2;
+        putShortLE(member, 16, memberSize - 1);
+        putIntLE(member, HEADER_LENGTH + size, (int) crc.getValue());
+        putIntLE(member, HEADER_LENGTH + size + 4, length);
+
+        final byte[] result = new byte[memberSize];
+        System.arraycopy(member, 0, result, 0, memberSize);
+
+        return result;
+    }
+
+    /**
+     * Stores a little endian short.
+     *
+     * @param  buf    the buffer
+     * @param  index  index of the first byte
+     * @param  value  the value
+     */
+    private static void putShortLE(final byte[] buf, final int index, final int value) {
+        buf[index] = (byte) value;
+        buf[index + 1] = (byte) (value >>> 8);
+    }
+
+    /**
+     * Stores a little endian int.
+     *
+     * @param  buf    the buffer
+     * @param  index  index of the first byte
+     * @param  value  the value
+     */
+    private static void putIntLE(final byte[] buf, final int index, final int value) {
+        buf[index] = (byte) value;
+        buf[index + 1] = (byte) (value >>> 8);
+        buf[index + 2] = (byte) (value >>> 16);
+        buf[index + 3] = (byte) (value >>> 24);
+    }
+}
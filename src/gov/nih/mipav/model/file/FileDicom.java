@@ -320,6 +320,30 @@ public class FileDicom extends FileDicomBase {
         }
     }
 
+    /**
+     * DICOM reader constructor for another file of the series of a reader whose header has already been read. The new
+     * reader opens its own files on the same file, and takes over what was found in the header of the reference
+     * instead of parsing it again. Set the file to read with setFileName before using it. Readers created this way
+     * can be used on different threads from the reference.
+     * 
+     * @param reference a reader whose header has been read
+     * 
+     * @exception IOException if there is an error constructing the files.
+     */
+    public FileDicom(final FileDicom reference) throws IOException {
+        this(reference.fileName, reference.fileDir);
+
+        quiet = reference.quiet;
+        notDir = reference.notDir;
+        hasHeaderBeenRead = reference.hasHeaderBeenRead;
+        encapsulated = reference.encapsulated;
+        encapsulatedJP2 = reference.encapsulatedJP2;
+        lossy = reference.lossy;
+        isEnhanced = reference.isEnhanced;
+        haveFloatPixelData = reference.haveFloatPixelData;
+        haveDoublePixelData = reference.haveDoublePixelData;
+    }
+
     // ~ Methods
     // --------------------------------------------------------------------------------------------------------
 
@@ -3115,7 +3139,8 @@ public class FileDicom extends FileDicomBase {
     }
 
     /**
-     * Reads a length of the data and deposits it into a single Short or an array of Short as needed by the tag's VM.
+     * Reads a length of the data and deposits it into an array of bytes. The array is stored in the tag as it is and
+     * only boxed into a Byte[] when the tag value is first asked for.
      * 
      * @return Object
      * 
@@ -3132,10 +3157,10 @@ public class FileDicom extends FileDicomBase {
         Object readObject = null; // the Object we read in
 
         if (vm > 1) {
-            final Byte[] array = new Byte[length];
+            final byte[] array = new byte[length];
 
             while (len > 0) { // we should validate with VM here too
-                array[i] = Byte.valueOf((byte) getByte());
+                array[i] = (byte) getByte();
                 len -= 1;
                 i++;
             }
@@ -3146,20 +3171,20 @@ public class FileDicom extends FileDicomBase {
             // not a valid VM, but we don't initialise the VM to 1,
             // so we will use this fact to guess at valid data.
             // we actually do it as above.
-            final Byte[] array = new Byte[length];
+            final byte[] array = new byte[length];
 
             while (len > 0) { // we should validate with VM here too
-                array[i] = Byte.valueOf((byte) getByte());
+                array[i] = (byte) getByte();
                 len -= 1;
                 i++;
             }
 
             readObject = array;
         } else if (length > 0) {
-            final Byte[] array = new Byte[length];
+            final byte[] array = new byte[length];
 
             while (len > 0) { // we should validate with VM here too
-                array[i] = Byte.valueOf((byte) getByte());
+                array[i] = (byte) getByte();
                 len -= 1;
                 i++;
             }
@@ -3774,13 +3799,12 @@ public class FileDicom extends FileDicomBase {
      * Gets private tags or other tags where the type is unknown; does not change the data, so it may be written out
      * correctly.
      * 
-     * @return A Byte array of length elementLength with the data stored in it.
+     * @return A byte array of length elementLength with the data stored in it, boxed by the tag when first asked for.
      * 
      * @throws IOException DOCUMENT ME!
      */
     private Object readUnknownData() throws IOException {
         byte[] bytesValue;
-        Byte[] bytesV;
         Preferences.debug("Unknown data; length is " + elementLength + " fp = " + getFilePointer() + "\n", Preferences.DEBUG_FILEIO);
 
         if (elementLength < 0) {
@@ -3791,13 +3815,8 @@ public class FileDicom extends FileDicomBase {
 
         bytesValue = new byte[elementLength];
         read(bytesValue);
-        bytesV = new Byte[elementLength];
-
-        for (int k = 0; k < bytesValue.length; k++) {
-            bytesV[k] = Byte.valueOf(bytesValue[k]);
-        }
 
-        return bytesV;
+        return bytesValue;
     }
 
     /**
@@ -0,0 +1,832 @@
+package gov.nih.mipav.model.file;
+
+
+import gov.nih.mipav.model.file.FileDicomTagInfo.VR;
+import gov.nih.mipav.model.file.FileInfoDicom.VRtype;
+
+import gov.nih.mipav.view.*;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * An on-disk index of the DICOM headers in one directory, so that opening the same series again does not have to parse
+ * every header. Each entry is keyed by the file name and is only used while the size and modification time of the
+ * file are unchanged. An entry holds the tag values of the file and the pixel data offset, which is enough to rebuild
+ * the FileInfoDicom that FileDicom.readHeader() would have made.
+ *
+ * <p>
+ * Only plain public tags with string or numeric values are stored. Sequences, binary values and private tags are
+ * stored as a fingerprint, and are taken from the reference file of the series when it holds the same value; a file
+ * with such a tag that differs from the reference is always parsed. When a header is added, the rebuilt file info is
+ * checked against the parsed one and the entry is marked unusable if they differ, so a header that this class cannot
+ * reproduce exactly falls back to the parser.
+ * </p>
+ *
+ * <p>
+ * The index files are kept in the dicomIndex directory under the MIPAV preferences directory, one per image
+ * directory.
+ * </p>
+ */
+public class FileDicomHeaderIndex {
+
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** Identifies an index file. */
+    private static final int MAGIC = 0x4D444858;
+
+    /** Format version of the index file, bumped whenever the layout of an entry changes. */
+    private static final int VERSION = 1;
+
+    /** Longest string value that is stored, longer ones are treated like binary values. */
+    private static final int MAX_STRING_LENGTH = 16000;
+
+    /** Type codes of the stored tag values. */
+    private static final byte NULL_VALUE = 0, STRING_VALUE = 1, SHORT_VALUE = 2, INTEGER_VALUE = 3, LONG_VALUE = 4,
+            FLOAT_VALUE = 5, DOUBLE_VALUE = 6, ARRAY_VALUE = 16;
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    /** The image directory that this index describes. */
+    private final String directory;
+
+    /** The file that the index is kept in. */
+    private final File indexFile;
+
+    /** The entries of the index, keyed by file name. */
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+    /** Whether entries were added since the index was loaded. */
+    private boolean dirty = false;
+
+    /** The reference file info that the fingerprints in refFingerprints were taken from. */
+    private FileInfoDicom fingerprintRef = null;
+
+    /** Fingerprints of the tags of the reference file info, keyed by tag key. */
+    private HashMap<String, Integer> refFingerprints = null;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Opens the index of an image directory, loading the entries stored by earlier reads. A missing or unreadable index
+     * file gives an empty index.
+     *
+     * @param  directory  the image directory
+     */
+    public FileDicomHeaderIndex(final String directory) {
+        this.directory = new File(directory).getAbsolutePath();
+        this.indexFile = new File(Preferences.getPreferencesDir() + File.separator + "dicomIndex" + File.separator
+                + Integer.toHexString(this.directory.hashCode()) + ".idx");
+
+        if (indexFile.exists()) {
+
+            try {
+                load();
+            } catch (final IOException error) {
+                Preferences.debug("FileDicomHeaderIndex: unable to read " + indexFile + ": " + error + "\n",
+                        Preferences.DEBUG_FILEIO);
+                entries.clear();
+            }
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns whether a header read from a file may be added to the index. Only uncompressed single frame images are
+     * indexed.
+     *
+     * @param   fileInfo  the file info read from the file
+     *
+     * @return  whether the header can be stored
+     */
+    public static boolean isIndexable(final FileInfoDicom fileInfo) {
+        final Object syntax = fileInfo.getTagTable().getValue("0002,0010", false);
+
+        if ( !fileInfo.containsDICM || (syntax == null) || fileInfo.isMultiFrame() || fileInfo.isEnhancedDicom()) {
+            return false;
+        }
+
+        final String uid = syntax.toString().trim();
+
+        return uid.equals("1.2.840.10008.1.2") || uid.equals("1.2.840.10008.1.2.1")
+                || uid.equals("1.2.840.10008.1.2.2");
+    }
+
+    /**
+     * Rebuilds the file info of a file from the index.
+     *
+     * @param   fileName  the name of the file in the image directory
+     * @param   refInfo   the file info of the reference file of the series
+     *
+     * @return  the file info, or null if the file is not in the index, has changed since it was indexed or has tags
+     *          that cannot be rebuilt with this reference file
+     */
+    public FileInfoDicom lookup(final String fileName, final FileInfoDicom refInfo) {
+        final File file = new File(directory, fileName);
+        final Entry entry;
+
+        synchronized (this) {
+            entry = entries.get(fileName);
+        }
+
+        if ( (entry == null) || !entry.usable || (entry.size != file.length())
+                || (entry.modified != file.lastModified()) || !matchesReference(entry, refInfo)) {
+            return null;
+        }
+
+        return entry.createFileInfo(fileName, directory + File.separator, refInfo);
+    }
+
+    /**
+     * Adds the header of a file to the index. The entry is marked unusable if the file info rebuilt from it differs
+     * from the one that was parsed.
+     *
+     * @param  fileName  the name of the file in the image directory
+     * @param  fileInfo  the file info parsed from the file
+     * @param  refInfo   the file info of the reference file of the series
+     */
+    public void store(final String fileName, final FileInfoDicom fileInfo, final FileInfoDicom refInfo) {
+
+        if ( !isIndexable(fileInfo)) {
+            return;
+        }
+
+        final File file = new File(directory, fileName);
+        final Entry entry = new Entry(file.length(), file.lastModified());
+
+        entry.usable = entry.setFileInfo(fileInfo) && matchesReference(entry, refInfo);
+
+        if (entry.usable) {
+
+            try {
+                entry.usable = isSame(fileInfo, entry.createFileInfo(fileName, directory + File.separator, refInfo));
+            } catch (final RuntimeException error) {
+                entry.usable = false;
+            }
+        }
+
+        if ( !entry.usable) {
+            entry.tags = null;
+            entry.inherited = null;
+            Preferences.debug("FileDicomHeaderIndex: " + fileName + " will always be parsed\n",
+                    Preferences.DEBUG_FILEIO);
+        }
+
+        synchronized (this) {
+            entries.put(fileName, entry);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the index to disk if entries were added. Errors are only logged, since the index can always be rebuilt.
+     */
+    public synchronized void save() {
+
+        if ( !dirty) {
+            return;
+        }
+
+        final File tempFile = new File(indexFile.getPath() + ".tmp");
+
+        try {
+            indexFile.getParentFile().mkdirs();
+
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(directory);
+                out.writeInt(entries.size());
+
+                for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    e.getValue().write(out);
+                }
+            } finally {
+                out.close();
+            }
+
+            if ( (indexFile.exists() && !indexFile.delete()) || !tempFile.renameTo(indexFile)) {
+                throw new IOException("unable to replace " + indexFile);
+            }
+
+            dirty = false;
+        } catch (final IOException error) {
+            Preferences.debug("FileDicomHeaderIndex: unable to write " + indexFile + ": " + error + "\n",
+                    Preferences.DEBUG_FILEIO);
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Reads the entries of the index file.
+     *
+     * @throws  IOException  if the index file cannot be read or is not an index of this directory
+     */
+    private void load() throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+
+        try {
+
+            if ( (in.readInt() != MAGIC) || (in.readInt() != VERSION) || !in.readUTF().equals(directory)) {
+                throw new IOException("not an index of " + directory);
+            }
+
+            final int nEntries = in.readInt();
+
+            for (int i = 0; i < nEntries; i++) {
+                final String name = in.readUTF();
+
+                entries.put(name, Entry.read(in));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Checks that the tags an entry takes from the reference file have the same value in the given reference file.
+     *
+     * @param   entry    an index entry
+     * @param   refInfo  the file info of the reference file of the series
+     *
+     * @return  whether the entry can be rebuilt with this reference file
+     */
+    private boolean matchesReference(final Entry entry, final FileInfoDicom refInfo) {
+
+        if (entry.inherited.isEmpty()) {
+            return true;
+        }
+
+        final HashMap<String, Integer> fingerprints;
+
+        synchronized (this) {
+
+            if (fingerprintRef != refInfo) {
+                refFingerprints = new HashMap<String, Integer>();
+
+                for (final FileDicomTag tag : refInfo.getTagTable().getTagListCopy().values()) {
+                    refFingerprints.put(tag.getKey().toString(),
+                            Integer.valueOf(FileDicomHeaderIndex.fingerprint(tag)));
+                }
+
+                fingerprintRef = refInfo;
+            }
+
+            fingerprints = refFingerprints;
+        }
+
+        for (final Map.Entry<String, Integer> e : entry.inherited.entrySet()) {
+
+            if ( !e.getValue().equals(fingerprints.get(e.getKey()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a hash of the value of a tag, used to check that a tag has the same value in two files.
+     *
+     * @param   tag  a tag
+     *
+     * @return  the hash of the tag value
+     */
+    private static int fingerprint(final FileDicomTag tag) {
+        return (String.valueOf(tag.getValue(true)).hashCode() * 31) + tag.getLength();
+    }
+
+    /**
+     * Compares a parsed file info with one rebuilt from the index.
+     *
+     * @param   parsed  the file info from FileDicom.readHeader()
+     * @param   built   the file info rebuilt from the index
+     *
+     * @return  whether the two file infos have the same tags and image description
+     */
+    private static boolean isSame(final FileInfoDicom parsed, final FileInfoDicom built) {
+
+        if ( (parsed.getOffset() != built.getOffset()) || (parsed.getDataType() != built.getDataType())
+                || (parsed.displayType != built.displayType) || (parsed.bytesPerPixel != built.bytesPerPixel)
+                || (parsed.getEndianess() != built.getEndianess()) || (parsed.getVr_type() != built.getVr_type())
+                || (parsed.getModality() != built.getModality())
+                || !Arrays.equals(parsed.getExtents(), built.getExtents())
+                || !Arrays.equals(parsed.getOrigin(), built.getOrigin())
+                || !Arrays.equals(parsed.getResolutions(), built.getResolutions())) {
+            return false;
+        }
+
+        final Hashtable<FileDicomKey, FileDicomTag> parsedTags = parsed.getTagTable().getTagListCopy();
+        final Hashtable<FileDicomKey, FileDicomTag> builtTags = built.getTagTable().getTagListCopy();
+
+        if (parsedTags.size() != builtTags.size()) {
+            return false;
+        }
+
+        for (final Map.Entry<FileDicomKey, FileDicomTag> e : parsedTags.entrySet()) {
+
+            if ( !e.getValue().equals(builtTags.get(e.getKey()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * The indexed header of one file.
+     */
+    private static class Entry {
+
+        /** Size and modification time of the file when it was indexed. */
+        private final long size, modified;
+
+        /** Whether the file info can be rebuilt from this entry. */
+        private boolean usable;
+
+        /** Fields of the file info which are not set from the tags. */
+        private boolean endianess, explicit;
+
+        private int dataType, displayType, offset;
+
+        private short bytesPerPixel;
+
+        private int[] extents;
+
+        /** The stored tags, in file order. */
+        private ArrayList<StoredTag> tags;
+
+        /** Fingerprints of the tags taken from the reference file, keyed by tag key. */
+        private HashMap<String, Integer> inherited;
+
+        /**
+         * Creates an empty entry.
+         *
+         * @param  size      the size of the file
+         * @param  modified  the modification time of the file
+         */
+        private Entry(final long size, final long modified) {
+            this.size = size;
+            this.modified = modified;
+            this.inherited = new HashMap<String, Integer>();
+        }
+
+        /**
+         * Fills this entry from a parsed file info.
+         *
+         * @param   fileInfo  the file info parsed from the file
+         *
+         * @return  false if the file has a tag which cannot be stored and differs from the reference file
+         */
+        private boolean setFileInfo(final FileInfoDicom fileInfo) {
+            final FileDicomTagTable tagTable = fileInfo.getTagTable();
+            final Hashtable<FileDicomKey, FileDicomTag> unique = tagTable.getTagListUnique();
+
+            endianess = fileInfo.getEndianess();
+            explicit = fileInfo.getVr_type() == VRtype.EXPLICIT;
+            dataType = fileInfo.getDataType();
+            displayType = fileInfo.displayType;
+            bytesPerPixel = fileInfo.bytesPerPixel;
+            offset = fileInfo.getOffset();
+            extents = fileInfo.getExtents().clone();
+            tags = new ArrayList<StoredTag>();
+
+            for (final FileDicomTag tag : FileDicomTagTable.sortTagsList(tagTable.getTagListCopy())) {
+
+                if (StoredTag.isStorable(tag)) {
+                    tags.add(new StoredTag(tag));
+                } else if (unique.containsKey(tag.getKey())) {
+                    return false;
+                } else {
+                    inherited.put(tag.getKey().toString(), Integer.valueOf(FileDicomHeaderIndex.fingerprint(tag)));
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Rebuilds a file info from this entry, the way FileDicom.readHeader() sets it up.
+         *
+         * @param   fileName   the name of the file
+         * @param   directory  the directory of the file
+         * @param   refInfo    the file info of the reference file of the series
+         *
+         * @return  the file info
+         */
+        private FileInfoDicom createFileInfo(final String fileName, final String directory,
+                final FileInfoDicom refInfo) {
+            final FileInfoDicom fileInfo = new FileInfoDicom(fileName, directory, FileUtility.DICOM, refInfo);
+            final FileDicomTagTable tagTable = fileInfo.getTagTable();
+
+            fileInfo.setEndianess(endianess);
+
+            if (endianess == FileBase.BIG_ENDIAN) {
+                fileInfo.setOriginalEndianess(FileBase.BIG_ENDIAN);
+            }
+
+            fileInfo.setVr_type(explicit ? VRtype.EXPLICIT : VRtype.IMPLICIT);
+            fileInfo.setDataType(dataType);
+
+            for (final StoredTag stored : tags) {
+                final FileDicomKey key = new FileDicomKey(stored.key);
+
+                tagTable.setValue(key, stored.value, stored.length);
+
+                final FileDicomTag tag = tagTable.getTagListUnique().get(key);
+
+                if ( (tag != null) && (tag.getValueRepresentation() != stored.vr)) {
+                    tag.setValueRepresentation(stored.vr);
+                }
+            }
+
+            fileInfo.setInfoFromTags();
+            fileInfo.displayType = displayType;
+            fileInfo.bytesPerPixel = bytesPerPixel;
+            fileInfo.setOffset(offset);
+            fileInfo.setExtents(extents.clone());
+
+            return fileInfo;
+        }
+
+        /**
+         * Writes this entry to an index file.
+         *
+         * @param   out  the index file
+         *
+         * @throws  IOException  if the entry cannot be written
+         */
+        private void write(final DataOutputStream out) throws IOException {
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeBoolean(usable);
+
+            if ( !usable) {
+                return;
+            }
+
+            out.writeBoolean(endianess);
+            out.writeBoolean(explicit);
+            out.writeInt(dataType);
+            out.writeInt(displayType);
+            out.writeShort(bytesPerPixel);
+            out.writeInt(offset);
+            out.writeInt(extents.length);
+
+            for (final int extent : extents) {
+                out.writeInt(extent);
+            }
+
+            out.writeInt(tags.size());
+
+            for (final StoredTag tag : tags) {
+                tag.write(out);
+            }
+
+            out.writeInt(inherited.size());
+
+            for (final Map.Entry<String, Integer> e : inherited.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue().intValue());
+            }
+        }
+
+        /**
+         * Reads an entry from an index file.
+         *
+         * @param   in  the index file
+         *
+         * @return  the entry
+         *
+         * @throws  IOException  if the entry cannot be read
+         */
+        private static Entry read(final DataInputStream in) throws IOException {
+            final Entry entry = new Entry(in.readLong(), in.readLong());
+
+            entry.usable = in.readBoolean();
+
+            if ( !entry.usable) {
+                return entry;
+            }
+
+            entry.endianess = in.readBoolean();
+            entry.explicit = in.readBoolean();
+            entry.dataType = in.readInt();
+            entry.displayType = in.readInt();
+            entry.bytesPerPixel = in.readShort();
+            entry.offset = in.readInt();
+            entry.extents = new int[in.readInt()];
+
+            for (int i = 0; i < entry.extents.length; i++) {
+                entry.extents[i] = in.readInt();
+            }
+
+            final int nTags = in.readInt();
+            entry.tags = new ArrayList<StoredTag>(nTags);
+
+            for (int i = 0; i < nTags; i++) {
+                entry.tags.add(StoredTag.read(in));
+            }
+
+            final int nInherited = in.readInt();
+
+            for (int i = 0; i < nInherited; i++) {
+                final String key = in.readUTF();
+
+                entry.inherited.put(key, Integer.valueOf(in.readInt()));
+            }
+
+            return entry;
+        }
+    }
+
+    /**
+     * The stored value of one tag.
+     */
+    private static class StoredTag {
+
+        /** The tag key, 'group,element'. */
+        private final String key;
+
+        /** The value representation of the tag in the file. */
+        private final VR vr;
+
+        /** The length of the tag in the file. */
+        private final int length;
+
+        /** The unparsed value of the tag. */
+        private final Object value;
+
+        /**
+         * Copies the value of a tag.
+         *
+         * @param  tag  a tag for which isStorable() is true
+         */
+        private StoredTag(final FileDicomTag tag) {
+            this(tag.getKey().toString(), tag.getValueRepresentation(), tag.getLength(), tag.getValue(false));
+        }
+
+        /**
+         * Creates a stored tag.
+         *
+         * @param  key     the tag key
+         * @param  vr      the value representation
+         * @param  length  the tag length
+         * @param  value   the unparsed value
+         */
+        private StoredTag(final String key, final VR vr, final int length, final Object value) {
+            this.key = key;
+            this.vr = vr;
+            this.length = length;
+            this.value = value;
+        }
+
+        /**
+         * Returns whether the value of a tag can be stored: a public tag holding a string, a number or an array of
+         * numbers.
+         *
+         * @param   tag  a tag
+         *
+         * @return  whether the tag can be stored
+         */
+        private static boolean isStorable(final FileDicomTag tag) {
+
+            final VR vr = tag.getValueRepresentation();
+
+            // binary values are left undecoded by the parser, so check the VR before asking for the value
+            if ( (tag.getKey().getClass() != FileDicomKey.class) || (vr == null) || (vr == VR.SQ) || (vr == VR.OB)
+                    || (vr == VR.OW) || (vr == VR.UN) || !DicomDictionary.containsTag(tag.getKey())) {
+                return false;
+            }
+
+            final Object value = tag.getValue(false);
+
+            if (value instanceof Object[]) {
+                final Object[] array = (Object[]) value;
+
+                if ( (array.length == 0) || (typeOf(array[0]) < SHORT_VALUE)) {
+                    return false;
+                }
+
+                for (final Object element : array) {
+
+                    if ( (element == null) || (element.getClass() != array[0].getClass())) {
+                        return false;
+                    }
+                }
+
+                return value.getClass().getComponentType() == array[0].getClass();
+            }
+
+            return (typeOf(value) >= 0)
+                    && ( !(value instanceof String) || ( ((String) value).length() <= MAX_STRING_LENGTH));
+        }
+
+        /**
+         * Returns the type code of a single value.
+         *
+         * @param   value  a tag value
+         *
+         * @return  the type code, or -1 if the value cannot be stored
+         */
+        private static byte typeOf(final Object value) {
+
+            if (value == null) {
+                return NULL_VALUE;
+            } else if (value instanceof String) {
+                return STRING_VALUE;
+            } else if (value instanceof Short) {
+                return SHORT_VALUE;
+            } else if (value instanceof Integer) {
+                return INTEGER_VALUE;
+            } else if (value instanceof Long) {
+                return LONG_VALUE;
+            } else if (value instanceof Float) {
+                return FLOAT_VALUE;
+            } else if (value instanceof Double) {
+                return DOUBLE_VALUE;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Writes this tag to an index file.
+         *
+         * @param   out  the index file
+         *
+         * @throws  IOException  if the tag cannot be written
+         */
+        private void write(final DataOutputStream out) throws IOException {
+            out.writeUTF(key);
+            out.writeUTF(vr.name());
+            out.writeInt(length);
+
+            if (value instanceof Object[]) {
+                final Object[] array = (Object[]) value;
+
+                out.writeByte(ARRAY_VALUE + typeOf(array[0]));
+                out.writeInt(array.length);
+
+                for (final Object element : array) {
+                    writeValue(out, element);
+                }
+            } else {
+                out.writeByte(typeOf(value));
+                writeValue(out, value);
+            }
+        }
+
+        /**
+         * Writes a single value.
+         *
+         * @param   out    the index file
+         * @param   value  a value for which typeOf() is not negative
+         *
+         * @throws  IOException  if the value cannot be written
+         */
+        private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+
+            switch (typeOf(value)) {
+
+                case STRING_VALUE:
+                    out.writeUTF((String) value);
+                    break;
+
+                case SHORT_VALUE:
+                    out.writeShort( ((Short) value).shortValue());
+                    break;
+
+                case INTEGER_VALUE:
+                    out.writeInt( ((Integer) value).intValue());
+                    break;
+
+                case LONG_VALUE:
+                    out.writeLong( ((Long) value).longValue());
+                    break;
+
+                case FLOAT_VALUE:
+                    out.writeFloat( ((Float) value).floatValue());
+                    break;
+
+                case DOUBLE_VALUE:
+                    out.writeDouble( ((Double) value).doubleValue());
+                    break;
+
+                default:
+            }
+        }
+
+        /**
+         * Reads a tag from an index file.
+         *
+         * @param   in  the index file
+         *
+         * @return  the tag
+         *
+         * @throws  IOException  if the tag cannot be read
+         */
+        private static StoredTag read(final DataInputStream in) throws IOException {
+            final String key = in.readUTF();
+            final VR vr;
+
+            try {
+                vr = VR.valueOf(in.readUTF());
+            } catch (final IllegalArgumentException error) {
+                throw new IOException(error.getMessage());
+            }
+
+            final int length = in.readInt();
+            final byte type = in.readByte();
+            final Object value;
+
+            if (type >= ARRAY_VALUE) {
+                final Object[] array;
+                final int count = in.readInt();
+
+                switch (type - ARRAY_VALUE) {
+
+                    case SHORT_VALUE:
+                        array = new Short[count];
+                        break;
+
+                    case INTEGER_VALUE:
+                        array = new Integer[count];
+                        break;
+
+                    case LONG_VALUE:
+                        array = new Long[count];
+                        break;
+
+                    case FLOAT_VALUE:
+                        array = new Float[count];
+                        break;
+
+                    case DOUBLE_VALUE:
+                        array = new Double[count];
+                        break;
+
+                    default:
+                        throw new IOException("Unknown value type " + type);
+                }
+
+                for (int i = 0; i < count; i++) {
+                    array[i] = readValue(in, (byte) (type - ARRAY_VALUE));
+                }
+
+                value = array;
+            } else {
+                value = readValue(in, type);
+            }
+
+            return new StoredTag(key, vr, length, value);
+        }
+
+        /**
+         * Reads a single value.
+         *
+         * @param   in    the index file
+         * @param   type  the type code of the value
+         *
+         * @return  the value
+         *
+         * @throws  IOException  if the value cannot be read
+         */
+        private static Object readValue(final DataInputStream in, final byte type) throws IOException {
+
+            switch (type) {
+
+                case NULL_VALUE:
+                    return null;
+
+                case STRING_VALUE:
+                    return in.readUTF();
+
+                case SHORT_VALUE:
+                    return Short.valueOf(in.readShort());
+
+                case INTEGER_VALUE:
+                    return Integer.valueOf(in.readInt());
+
+                case LONG_VALUE:
+                    return Long.valueOf(in.readLong());
+
+                case FLOAT_VALUE:
+                    return Float.valueOf(in.readFloat());
+
+                case DOUBLE_VALUE:
+                    return Double.valueOf(in.readDouble());
+
+                default:
+                    throw new IOException("Unknown value type " + type);
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import gov.nih.mipav.model.structures.ModelSerialCloneable;
 
 import gov.nih.mipav.view.Preferences;
 
+import java.util.Arrays;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -52,6 +53,13 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
     /** Actual value of the tag (may be an array of elements). */
     private Object value = null;
 
+    /**
+     * Bytes of an OB, OW or UN value as read from the file, kept until the value is first asked for. Boxing them into
+     * a Byte[] takes several times the memory, and most of these values (large private blobs) are never looked at.
+     * While this is set, value is null.
+     */
+    private volatile byte[] rawValue = null;
+
     /**
      * Value representation for this tag, if the tags in this dicom file have explicit VRs. If the dicom tags have
      * implicit VRs, then the DicomDictionary VR is used.
@@ -103,6 +111,14 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
             final FileDicomTag tag = (FileDicomTag) obj;
 
             if ( (this.group == tag.group) && (this.element == tag.element) && this.tagInfo.equals(tag.getInfo())) {
+                final byte[] thisRaw = this.rawValue;
+                final byte[] otherRaw = tag.rawValue;
+
+                // compare undecoded values without boxing them
+                if ( (thisRaw != null) && (otherRaw != null)) {
+                    return (this.length == tag.length) && Arrays.equals(thisRaw, otherRaw);
+                }
+
                 final Object thisVal = this.getValue(false);
                 final Object otherVal = tag.getValue(false);
 
@@ -152,6 +168,7 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
     @Override
     public void finalize() {
         value = null;
+        rawValue = null;
         // if(tagInfo !0= null) {
         // tagInfo.finalize();
         // tagInfo = null;
@@ -171,6 +188,12 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
      * @return size of the value in bytes
      */
     public final int getDataLength() {
+        final byte[] raw = rawValue;
+
+        if (raw != null) {
+            return raw.length * sizeof();
+        }
+
         int dataItems = 0;
 
         final Object[] obj = getValueList();
@@ -316,6 +339,7 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
      * @return the value
      */
     public Object getValue(final boolean parse) {
+        decodeRawValue();
 
         final VR vr = getValueRepresentation();
         final String keyword = tagInfo.getKeyword();
@@ -378,6 +402,8 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
     public Object[] getValueList() {
         final Object[] stuff = new Object[1];
 
+        decodeRawValue();
+
         try {
             final VR type = tagInfo.getType();
 
@@ -440,7 +466,10 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
     public final int hashCode() {
 
         // TODO: this might not be a good hash code...
-        int hash = tagInfo.hashCode() + group + element + length + value.hashCode();
+        final byte[] raw = rawValue;
+        int hash = tagInfo.hashCode() + group + element + length;
+
+        hash += (raw != null) ? Arrays.hashCode(raw) : value.hashCode();
 
         if (valueRepresentation != null) {
             hash += valueRepresentation.hashCode();
@@ -520,10 +549,16 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
                     setValue(value, 4);
                     return;
                 case OB:
-                    setValue(value, ((Byte[]) value).length);
+                    if (value instanceof byte[]) {
+                        setValue(value, ((byte[]) value).length);
+                    } else {
+                        setValue(value, ((Byte[]) value).length);
+                    }
                     return;
                 case OW:
-                    if (value instanceof char[]) {
+                    if (value instanceof byte[]) {
+                        setValue(value, ((byte[]) value).length);
+                    } else if (value instanceof char[]) {
                         setValue(value, ((char[]) value).length);
                     } else if (value instanceof Short[]) {
                         setValue(value, ((Short[]) value).length);
@@ -532,7 +567,11 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
                     }
                     return;
                 case UN:
-                    setValue(value, ((Object[]) value).length);
+                    if (value instanceof byte[]) {
+                        setValue(value, ((byte[]) value).length);
+                    } else {
+                        setValue(value, ((Object[]) value).length);
+                    }
                     return;
                 default:
                     if (keyword.equals("PatientSex")) { // Patient Sex
@@ -668,7 +707,7 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
 
     /**
      * Sets the value attribute of the DicomTag. Does NOT parse so stored value is the same as the one read in. getValue
-     * does parse.
+     * does parse. A byte[] is kept as it is and only boxed into a Byte[] when the value is first asked for.
      * 
      * <p>
      * NOTE: DICOM compliant codes will be accepted.
@@ -679,6 +718,16 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
      */
     private final void setValue(Object value, final int length) {
 
+        if (value instanceof byte[]) {
+            this.length = length;
+            this.value = null;
+            this.rawValue = (byte[]) value;
+
+            return;
+        }
+
+        this.rawValue = null;
+
         // illegal on UIDs which are to be padded by null when not even length
         if ( ( (length % 2) != 0) && (value instanceof java.lang.String)) {
             value = value + new String(new byte[] {0x20});
@@ -690,6 +739,42 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
         this.value = value;
     }
 
+    /**
+     * Returns whether the value of this tag is a sequence. Unlike getValue(), this does not decode a value which has
+     * not been asked for yet.
+     * 
+     * @return whether the value is a FileDicomSQ
+     */
+    public final boolean isSequence() {
+        return (rawValue == null) && (value instanceof FileDicomSQ);
+    }
+
+    /**
+     * Boxes the bytes of a value that has not been asked for yet into the Byte[] that the rest of MIPAV expects.
+     * Several threads may share a tag of the reference tag table, so the bytes are only dropped once the value is set.
+     */
+    private void decodeRawValue() {
+
+        if (rawValue == null) {
+            return;
+        }
+
+        synchronized (this) {
+            final byte[] raw = rawValue;
+
+            if (raw != null) {
+                final Byte[] array = new Byte[raw.length];
+
+                for (int i = 0; i < raw.length; i++) {
+                    array[i] = Byte.valueOf(raw[i]);
+                }
+
+                value = array;
+                rawValue = null;
+            }
+        }
+    }
+
     /**
      * Sets the value representation (vr) of this tag. This method should only be used when a dicom's tag VRs are
      * explicit. Otherwise, the DicomDictionary VR should be used (implicit).
@@ -732,7 +817,7 @@ public class FileDicomTag extends ModelSerialCloneable implements Comparable<Fil
 
         s.append(tagInfo.toString());
 
-        if (value != null) {
+        if (getValue(false) != null) {
             s.append(" Value: ").append(this.value);
         }
 
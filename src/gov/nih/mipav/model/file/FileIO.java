@@ -17,6 +17,7 @@ import gov.nih.mipav.model.scripting.ScriptableActionInterface;
 import gov.nih.mipav.model.scripting.actions.ActionSaveImage;
 import gov.nih.mipav.model.scripting.actions.ActionSaveImageAs;
 import gov.nih.mipav.model.structures.*;
+import gov.nih.mipav.util.ThreadUtil;
 
 import gov.nih.mipav.view.*;
 import gov.nih.mipav.view.dialogs.*;
@@ -30,6 +31,11 @@ import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.*;
 
 import javax.imageio.ImageIO;
@@ -738,13 +744,17 @@ public class FileIO {
 
             // progressBar.setTitle("Reading headers");
 
+            // read the headers on several threads first, then check and sort them in file list order below
+            final HashMap<String, FileInfoDicom> headers = readDicomHeaders(fileList, selectedFileName, imageFile,
+                    refFileInfo);
+
             nImages = 0;
 
             nList: for (int i = 0; i < nListImages; i++) {
 
                 try {
 
-                    if (progressBar != null) {
+                    if (progressBar != null && headers == null) {
 	                	if ( ((float) i / (nListImages - 1) * 100) > pBarVal) {
 	                        pBarVal += 10;
 	                        progressBar.updateValue(Math.round((float) i / (10 * (nListImages - 1)) * 100), false);
@@ -754,8 +764,12 @@ public class FileIO {
                     FileInfoDicom fileInfoTemp;
 
                     if ( !fileList[i].equals(selectedFileName)) {
-                        imageFile.setFileName(fileList[i], refFileInfo);
-                        imageFile.readHeader(true);
+                        if (headers != null && headers.get(fileList[i]) != null) {
+                            imageFile.setFileInfo(headers.get(fileList[i]));
+                        } else {
+                            imageFile.setFileName(fileList[i], refFileInfo);
+                            imageFile.readHeader(true);
+                        }
                         fileInfoTemp = (FileInfoDicom) imageFile.getFileInfo();
                     } else {
                         fileInfoTemp = refFileInfo;
@@ -1391,6 +1405,28 @@ public class FileIO {
         int enhancedCounter1 = 0;
         int enhancedCounter2 = 0;
 
+        // Slices after the first are decoded on several threads once all of their file infos have been set up. The
+        // first one is still read in the loop so that a change of data type found while decoding it can reallocate
+        // the image before anything else is imported. A series whose headers already show such a change, or a
+        // DICOMDIR, is read in the loop as before.
+        boolean typeChange = false;
+
+        if ( !multiframe && (image.getType() != ModelStorageBase.FLOAT)
+                && (image.getType() != ModelStorageBase.DOUBLE)) {
+
+            for (int i = 0; (i < nImages) && !typeChange; i++) {
+                final int dataType = savedFileInfos[performSort ? indices[i] : i].getDataType();
+
+                typeChange = (dataType != ModelStorageBase.UINTEGER) && (dataType != originalDataType);
+            }
+        }
+
+        final boolean parallelRead = !multiframe && !typeChange && !imageFile.isDir()
+                && (getDicomWorkerCount(nImages - 1) > 1);
+        final String[] sliceFileNames = parallelRead ? new String[nImages] : null;
+        final FileInfoDicom[] sliceFileInfos = parallelRead ? new FileInfoDicom[nImages] : null;
+        final int[] sliceLocations = parallelRead ? new int[nImages] : null;
+
         for (int i = 0; i < nImages; i++) {
             if (multiframe) {
                 filename = fileList[0];
@@ -1413,7 +1449,7 @@ public class FileIO {
 
             try {
 
-                if (progressBar != null) {
+                if (progressBar != null && !parallelRead) {
 	            	if (i == (nImages - 1)) {
 	                    progressBar.updateValue(100, false);
 	                } else if ( ((float) i / (nImages - 1) * 100) > pBarVal) {
@@ -1454,7 +1490,9 @@ public class FileIO {
                 imageFile.setFileInfo(curFileInfo);
 
                 // Read the image
-                if (image.getType() == ModelStorageBase.FLOAT) {
+                if (parallelRead && (i > 0)) {
+                    // decoded by readDicomImages after the loop
+                } else if (image.getType() == ModelStorageBase.FLOAT) {
                     imageFile.readImage(bufferFloat, curFileInfo.getDataType(), start);
                 } else if (image.getType() == ModelStorageBase.DOUBLE) {
                     imageFile.readImage(bufferDouble, curFileInfo.getDataType(), start);
@@ -1547,7 +1585,11 @@ public class FileIO {
                     enhancedCounter1++;
                 }
 
-                if (image.getType() == ModelStorageBase.FLOAT) {
+                if (parallelRead && (i > 0)) {
+                    sliceFileNames[i] = filename;
+                    sliceFileInfos[i] = curFileInfo;
+                    sliceLocations[i] = location;
+                } else if (image.getType() == ModelStorageBase.FLOAT) {
                     image.importData(location * length, bufferFloat, false);
                 } else if (image.getType() == ModelStorageBase.DOUBLE) {
                     image.importData(location * length, bufferDouble, false);
@@ -1607,6 +1649,33 @@ public class FileIO {
             }
         }
 
+        if (parallelRead && (nImages > 1)) {
+            final Throwable error = readDicomImages(image, sliceFileNames, sliceFileInfos, sliceLocations, length,
+                    imageFile, refFileInfo);
+
+            if (error != null) {
+
+                if ( !quiet) {
+                    MipavUtil.displayError("FileIO: " + error);
+                }
+
+                Preferences.debug("FileIO: " + error + "\n", Preferences.DEBUG_FILEIO);
+                error.printStackTrace();
+
+                image.disposeLocal();
+                image = null;
+
+                if (progressBar != null) {
+                    progressBar.dispose();
+                    progressBar = null;
+                }
+
+                System.gc();
+
+                return null;
+            }
+        }
+
         // Save the DICOM tag 0020,0037 Image Orientation to the image transformation matrix.
         if (matrix != null) {
             final TransMatrix invMatrix = ( (matrix.clone()));
@@ -2550,6 +2619,257 @@ public class FileIO {
         return null;
     }
 
+    /**
+     * Returns the number of threads used to read a DICOM series, never more than the number of files.
+     * 
+     * @param nFiles the number of files to read
+     * 
+     * @return the number of threads, 1 when multithreading is turned off
+     */
+    private static int getDicomWorkerCount(final int nFiles) {
+
+        if ( !Preferences.isMultiThreadingEnabled()) {
+            return 1;
+        }
+
+        return Math.min(ThreadUtil.getAvailableCores(), nFiles);
+    }
+
+    /**
+     * Reads the headers of the files of a DICOM series on several threads, each with its own FileDicom. The checks
+     * and sorting are left to readDicom, which goes through the file infos in file list order as before. A header that
+     * fails to read is left out; readDicom then reads it again itself so that the error is reported as usual. When the
+     * DICOM header index preference is set, headers found unchanged in the index of the directory are rebuilt from it
+     * instead of being parsed, and the parsed ones are added to it. The threads take over the header of the reference
+     * file from its reader rather than each parsing it again. If one of the files is a DICOMDIR, null is returned so
+     * that readDicom reads the headers itself and finds it as before.
+     * 
+     * @param fileList the files of the series
+     * @param selectedFileName the reference file, whose header has already been read
+     * @param reference the reader of the reference file
+     * @param refFileInfo the file info of the reference file
+     * 
+     * @return the file infos keyed by file name, or null if there are too few files or threads to be worth it
+     */
+    private HashMap<String, FileInfoDicom> readDicomHeaders(final String[] fileList, final String selectedFileName,
+            final FileDicom reference, final FileInfoDicom refFileInfo) {
+        final boolean useIndex = Preferences.is(Preferences.PREF_DICOM_HEADER_INDEX);
+        final int nWorkers = Math.max(1, FileIO.getDicomWorkerCount(fileList.length - 1));
+
+        if ( (nWorkers < 2) && !useIndex) {
+            return null;
+        }
+
+        final FileDicomHeaderIndex index = useIndex ? new FileDicomHeaderIndex(fileDir) : null;
+
+        final FileInfoDicom[] headers = new FileInfoDicom[fileList.length];
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicBoolean dirFound = new AtomicBoolean();
+        final CountDownLatch doneSignal = new CountDownLatch(nWorkers);
+
+        for (int w = 0; w < nWorkers; w++) {
+            final int first = w;
+
+            ThreadUtil.mipavThreadPool.execute(new Runnable() {
+                public void run() {
+
+                    try {
+                        FileDicom reader = null;
+
+                        for (int i = first; i < fileList.length; i += nWorkers) {
+
+                            if ( !fileList[i].equals(selectedFileName)) {
+
+                                try {
+                                    headers[i] = (index != null) ? index.lookup(fileList[i], refFileInfo) : null;
+
+                                    if (headers[i] == null) {
+
+                                        if (reader == null) {
+                                            reader = new FileDicom(reference);
+                                            reader.setQuiet(true);
+                                        }
+
+                                        reader.setFileName(fileList[i], refFileInfo);
+                                        reader.readHeader(true);
+
+                                        if (reader.isDir()) {
+                                            dirFound.set(true);
+                                            break;
+                                        }
+
+                                        headers[i] = (FileInfoDicom) reader.getFileInfo();
+
+                                        if (index != null) {
+                                            index.store(fileList[i], headers[i], refFileInfo);
+                                        }
+                                    }
+                                } catch (final IOException error) {
+                                    Preferences.debug("FileIO: " + fileList[i] + ": " + error + "\n",
+                                            Preferences.DEBUG_FILEIO);
+                                }
+                            }
+
+                            completed.incrementAndGet();
+                        }
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+        }
+
+        waitForDicomWorkers(doneSignal, completed, fileList.length, 0, 10);
+
+        if (index != null) {
+            index.save();
+        }
+
+        if (dirFound.get()) {
+            return null;
+        }
+
+        final HashMap<String, FileInfoDicom> headerTable = new HashMap<String, FileInfoDicom>(fileList.length * 2);
+
+        for (int i = 0; i < fileList.length; i++) {
+
+            if (headers[i] != null) {
+                headerTable.put(fileList[i], headers[i]);
+            }
+        }
+
+        return headerTable;
+    }
+
+    /**
+     * Decodes slices of a DICOM series on several threads and imports them into the image. Each thread has its own
+     * FileDicom, set up from the reader of the reference file, and its own slice buffer. The file infos must already
+     * be complete, since the threads only read from them.
+     * 
+     * @param image the image to import the slices into
+     * @param fileNames the file of each slice, slices with a null file name are skipped
+     * @param fileInfos the file info of each slice
+     * @param locations the slice number in the image of each slice
+     * @param length the number of values in a slice
+     * @param reference the reader of the reference file, whose header has been read
+     * @param refFileInfo the file info of the reference file
+     * 
+     * @return the first error met, or null if all of the slices were read
+     */
+    private Throwable readDicomImages(final ModelImage image, final String[] fileNames, final FileInfoDicom[] fileInfos,
+            final int[] locations, final int length, final FileDicom reference, final FileInfoDicom refFileInfo) {
+        final int nWorkers = FileIO.getDicomWorkerCount(fileNames.length);
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicReference<Throwable> firstError = new AtomicReference<Throwable>();
+        final CountDownLatch doneSignal = new CountDownLatch(nWorkers);
+
+        for (int w = 0; w < nWorkers; w++) {
+            final int first = w;
+
+            ThreadUtil.mipavThreadPool.execute(new Runnable() {
+                public void run() {
+
+                    try {
+                        final FileDicom reader = new FileDicom(reference);
+                        reader.setQuiet(quiet);
+
+                        final int type = image.getType();
+                        final float[] bufferFloat = (type == ModelStorageBase.FLOAT) ? new float[length] : null;
+                        final double[] bufferDouble = (type == ModelStorageBase.DOUBLE) ? new double[length] : null;
+                        int[] bufferInt = null;
+                        short[] bufferShort = null;
+
+                        for (int i = first; (i < fileNames.length) && (firstError.get() == null); i += nWorkers) {
+
+                            if (fileNames[i] == null) {
+                                continue;
+                            }
+
+                            final FileInfoDicom curFileInfo = fileInfos[i];
+
+                            reader.setFileName(fileNames[i], refFileInfo);
+                            reader.setFileInfo(curFileInfo);
+
+                            if (type == ModelStorageBase.FLOAT) {
+                                reader.readImage(bufferFloat, curFileInfo.getDataType(), 0);
+                            } else if (type == ModelStorageBase.DOUBLE) {
+                                reader.readImage(bufferDouble, curFileInfo.getDataType(), 0);
+                            } else if (curFileInfo.getDataType() == ModelStorageBase.UINTEGER) {
+                                bufferInt = (bufferInt == null) ? new int[length] : bufferInt;
+                                reader.readImage(bufferInt, curFileInfo.getDataType(), 0);
+                            } else {
+                                bufferShort = (bufferShort == null) ? new short[length] : bufferShort;
+                                reader.readImage(bufferShort, curFileInfo.getDataType(), 0);
+                            }
+
+                            if (type == ModelStorageBase.FLOAT) {
+                                image.importData(locations[i] * length, bufferFloat, false);
+                            } else if (type == ModelStorageBase.DOUBLE) {
+                                image.importData(locations[i] * length, bufferDouble, false);
+                            } else if (type == ModelStorageBase.UINTEGER) {
+                                image.importData(locations[i] * length, bufferInt, false);
+                            } else {
+                                image.importData(locations[i] * length, bufferShort, false);
+                            }
+
+                            completed.incrementAndGet();
+                        }
+                    } catch (final IOException error) {
+                        firstError.compareAndSet(null, error);
+                    } catch (final OutOfMemoryError error) {
+                        firstError.compareAndSet(null, error);
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+        }
+
+        waitForDicomWorkers(doneSignal, completed, fileNames.length, 10, 90);
+
+        return firstError.get();
+    }
+
+    /**
+     * Waits for the threads reading a DICOM series, updating the progress bar with the number of files they have
+     * completed.
+     * 
+     * @param doneSignal counted down by each thread when it finishes
+     * @param completed the number of files completed so far
+     * @param total the number of files to read
+     * @param progressStart the progress bar value when no file has been read
+     * @param progressRange the amount the progress bar advances over all of the files
+     */
+    private void waitForDicomWorkers(final CountDownLatch doneSignal, final AtomicInteger completed, final int total,
+            final int progressStart, final int progressRange) {
+        boolean interrupted = false;
+
+        while (true) {
+
+            try {
+
+                if (doneSignal.await(100, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+
+            if (progressBar != null) {
+                progressBar.updateValue(progressStart + Math.round((float) completed.get() / total * progressRange),
+                        false);
+            }
+        }
+
+        if (progressBar != null) {
+            progressBar.updateValue(progressStart + progressRange, false);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Reads generic file from an absolute filename.
      * 
@@ -2619,8 +2939,8 @@ public class FileIO {
         File file;
         FileInputStream fis;
         ZipInputStream zin;
-        GZIPInputStream gzin;
-        CBZip2InputStream bz2in;
+        InputStream gzin;
+        InputStream bz2in;
         FileOutputStream out;
         int bytesRead;
 
@@ -2737,16 +3057,9 @@ public class FileIO {
                     int totalBytesRead = 0;
 
                     try {
-                        fis = new FileInputStream(file);
-                    } catch (final FileNotFoundException e) {
-                        MipavUtil.displayError("File not found exception on fis = new FileInputStream(file) for " + fileName);
-                        return null;
-                    }
-
-                    try {
-                        gzin = new GZIPInputStream(new BufferedInputStream(fis));
+                        gzin = ParallelDecompressInputStream.open(file, ParallelDecompressInputStream.GZIP);
                     } catch (final IOException e) {
-                        MipavUtil.displayError("IOException on GZIPInputStream for " + fileName);
+                        MipavUtil.displayError("IOException opening gzip stream for " + fileName);
                         return null;
                     }
 
@@ -2759,7 +3072,7 @@ public class FileIO {
                         MipavUtil.displayError("IOException on FileOutputStream for " + uncompressedName);
                         return null;
                     }
-                    final byte[] buffer = new byte[256];
+                    final byte[] buffer = new byte[65536];
 
                     while (true) {
                         try {
@@ -2785,6 +3098,7 @@ public class FileIO {
                     try {
                         out.flush();
                         out.close();
+                        gzin.close();
                     } catch (final IOException e) {
                         MipavUtil.displayError("IOException on out.close for " + uncompressedName);
                         return null;
@@ -2794,30 +3108,9 @@ public class FileIO {
                     int totalBytesRead = 0;
 
                     try {
-                        fis = new FileInputStream(file);
-                    } catch (final FileNotFoundException e) {
-                        MipavUtil.displayError("File not found exception on fis = new FileInputStream(file) for " + fileName);
-                        return null;
-                    }
-
-                    try {
-                        fis.read();
+                        bz2in = ParallelDecompressInputStream.open(file, ParallelDecompressInputStream.BZIP2);
                     } catch (final IOException e) {
-                        MipavUtil.displayError("IOException on fis.read() trying to read byte B");
-                        return null;
-                    }
-
-                    try {
-                        fis.read();
-                    } catch (final IOException e) {
-                        MipavUtil.displayError("IOException on fis.read() trying to read byte Z");
-                        return null;
-                    }
-
-                    try {
-                        bz2in = new CBZip2InputStream(new BufferedInputStream(fis));
-                    } catch (final Exception e) {
-                        MipavUtil.displayError("Exception on CBZip2InputStream for " + fileName);
+                        MipavUtil.displayError("IOException opening bzip2 stream for " + fileName);
                         return null;
                     }
 
@@ -2830,7 +3123,7 @@ public class FileIO {
                         MipavUtil.displayError("IOException on FileOutputStream for " + uncompressedName);
                         return null;
                     }
-                    final byte[] buffer = new byte[256];
+                    final byte[] buffer = new byte[65536];
 
                     while (true) {
                         try {
@@ -2856,6 +3149,7 @@ public class FileIO {
                     try {
                         out.flush();
                         out.close();
+                        bz2in.close();
                     } catch (final IOException e) {
                         MipavUtil.displayError("IOException on out.close for " + uncompressedName);
                         return null;
@@ -3231,8 +3525,8 @@ public class FileIO {
         File file;
         FileInputStream fis;
         ZipInputStream zin;
-        GZIPInputStream gzin;
-        CBZip2InputStream bz2in;
+        InputStream gzin;
+        InputStream bz2in;
         FileOutputStream out;
         int bytesRead;
         ModelImage image = null;
@@ -3496,16 +3790,9 @@ public class FileIO {
                         int totalBytesRead = 0;
 
                         try {
-                            fis = new FileInputStream(file);
-                        } catch (final FileNotFoundException e) {
-                            MipavUtil.displayError("File not found exception on fis = new FileInputStream(file) for " + fileName);
-                            return null;
-                        }
-
-                        try {
-                            gzin = new GZIPInputStream(new BufferedInputStream(fis));
+                            gzin = ParallelDecompressInputStream.open(file, ParallelDecompressInputStream.GZIP);
                         } catch (final IOException e) {
-                            MipavUtil.displayError("IOException on GZIPInputStream for " + fileName);
+                            MipavUtil.displayError("IOException opening gzip stream for " + fileName);
                             return null;
                         }
 
@@ -3518,7 +3805,7 @@ public class FileIO {
                             MipavUtil.displayError("IOException on FileOutputStream for " + uncompressedName);
                             return null;
                         }
-                        final byte[] buffer = new byte[256];
+                        final byte[] buffer = new byte[65536];
 
                         while (true) {
                             try {
@@ -3544,6 +3831,7 @@ public class FileIO {
                         try {
                             out.flush();
                             out.close();
+                            gzin.close();
                         } catch (final IOException e) {
                             MipavUtil.displayError("IOException on out.close for " + uncompressedName);
                             return null;
@@ -3556,30 +3844,9 @@ public class FileIO {
                     int totalBytesRead = 0;
 
                     try {
-                        fis = new FileInputStream(file);
-                    } catch (final FileNotFoundException e) {
-                        MipavUtil.displayError("File not found exception on fis = new FileInputStream(file) for " + fileName);
-                        return null;
-                    }
-
-                    try {
-                        fis.read();
-                    } catch (final IOException e) {
-                        MipavUtil.displayError("IOException on fis.read() trying to read byte B");
-                        return null;
-                    }
-
-                    try {
-                        fis.read();
+                        bz2in = ParallelDecompressInputStream.open(file, ParallelDecompressInputStream.BZIP2);
                     } catch (final IOException e) {
-                        MipavUtil.displayError("IOException on fis.read() trying to read byte Z");
-                        return null;
-                    }
-
-                    try {
-                        bz2in = new CBZip2InputStream(new BufferedInputStream(fis));
-                    } catch (final Exception e) {
-                        MipavUtil.displayError("Exception on CBZip2InputStream for " + fileName);
+                        MipavUtil.displayError("IOException opening bzip2 stream for " + fileName);
                         return null;
                     }
 
@@ -3592,7 +3859,7 @@ public class FileIO {
                         MipavUtil.displayError("IOException on FileOutputStream for " + uncompressedName);
                         return null;
                     }
-                    final byte[] buffer = new byte[256];
+                    final byte[] buffer = new byte[65536];
 
                     while (true) {
                         try {
@@ -3618,6 +3885,7 @@ public class FileIO {
                     try {
                         out.flush();
                         out.close();
+                        bz2in.close();
                     } catch (final IOException e) {
                         MipavUtil.displayError("IOException on out.close for " + uncompressedName);
                         return null;
@@ -4823,7 +5091,7 @@ public class FileIO {
         boolean zip = false;
         ZipOutputStream zout;
         boolean gzip = false;
-        GZIPOutputStream gzout;
+        BlockGZIPOutputStream gzout;
         boolean bz2zip = false;
         CBZip2OutputStream bz2out;
         FileInputStream in;
@@ -5063,7 +5331,7 @@ public class FileIO {
                 // big the image is and a factor since image cloning can occur
                 final long memoryInUse = MipavUtil.getUsedHeapMemory();
                 final long totalMemory = MipavUtil.getMaxHeapMemory();
-                final int imageSize = image.getSize();
+                final long imageSize = image.getSizeLong();
                 int numBytes = 1;
                 final int type = image.getType();
                 ;
@@ -5545,9 +5813,10 @@ public class FileIO {
                         }
                         try {
                             // Create the GZIP output stream
-                            gzout = new GZIPOutputStream(new FileOutputStream(outputFileName[i]));
+                            gzout = new BlockGZIPOutputStream(new BufferedOutputStream(
+                                    new FileOutputStream(outputFileName[i])));
                         } catch (final IOException e) {
-                            MipavUtil.displayError("IOException on new GZIPOutputStream");
+                            MipavUtil.displayError("IOException on new BlockGZIPOutputStream");
                             return;
                         }
                         progVal = progVal + (20 / numFiles);
@@ -12744,6 +13013,34 @@ public class FileIO {
             }
         }
 
+        if (Preferences.is(Preferences.PREF_MEMORY_MAPPED_READ)
+                && BufferMapped.isMappable(ModelStorageBase.DataType.getDataType(fileInfo.getDataType()))) {
+
+            try {
+                image = new ModelImage(fileInfo.getDataType(), fileInfo.getExtents(), fileName, new File(fileDir
+                        + fileName), fileInfo.getOffset(), fileInfo.getEndianess());
+                Preferences.debug("FileIO: memory mapped " + fileName + "\n", Preferences.DEBUG_FILEIO);
+            } catch (final IOException error) {
+                Preferences.debug("FileIO: unable to memory map " + fileName + ", reading instead: " + error + "\n",
+                        Preferences.DEBUG_FILEIO);
+                image = null;
+            }
+        }
+
+        if (image != null) {
+
+            if (fileInfo.getExtents().length > 2) { // Set file info
+
+                for (i = 0; i < fileInfo.getExtents()[2]; i++) {
+                    image.setFileInfo(fileInfo, i);
+                }
+            } else {
+                image.setFileInfo(fileInfo, 0);
+            }
+
+            return image;
+        }
+
         try {
             image = new ModelImage(fileInfo.getDataType(), fileInfo.getExtents(), fileName);
         } catch (final OutOfMemoryError error) {
@@ -838,7 +838,7 @@ public class FileInfoDicom extends FileInfoBase {
                 if(!insideSequenceTag && tag.getElement() != 0) {
                     appendLengthTag(tag, lengthComp);
                 }
-                if(tag.getValue(false) instanceof FileDicomSQ) {
+                if(tag.isSequence()) {
                     FileDicomSQ sq = (FileDicomSQ) tag.getValue(false);
                     for(int i=0; i<sq.getSequence().size(); i++) {
                         setInfoFromTags(sq.getSequence().get(i), true);
@@ -854,7 +854,7 @@ public class FileInfoDicom extends FileInfoBase {
             if(!insideSequenceTag && tag.getElement() != 0) {
                 appendLengthTag(tag, lengthComp);
             }
-            if(tag.getValue(false) instanceof FileDicomSQ) {
+            if(tag.isSequence()) {
                 FileDicomSQ sq = (FileDicomSQ) tag.getValue(false);
                 for(int i=0; i<sq.getSequence().size(); i++) {
                     setInfoFromTags(sq.getSequence().get(i), true);
@@ -10,7 +10,6 @@ import gov.nih.mipav.view.*;
 import gov.nih.mipav.view.dialogs.*;
 
 import java.io.*;
-import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipInputStream;
 
 import org.codehaus.jettison.json.JSONException;
@@ -111,6 +110,11 @@ http://nifti.nimh.nih.gov/pub/dist/src/niftilib/nifti1.h
 
 public class FileNIFTI extends FileBase {
 
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** Number of bytes of decompressed image data converted at a time when reading a compressed file. */
+    private static final int DECOMPRESSED_CHUNK_SIZE = 1 << 16;
+
     //~ Instance fields ------------------------------------------------------------------------------------------------
 
     /** R2L, L2R, A2P, P2A, I2S, and S2I orientations of x, y, and z axes. */
@@ -467,8 +471,8 @@ public class FileNIFTI extends FileBase {
     private File file;
     private FileInputStream fis;
     private ZipInputStream zin;
-    private GZIPInputStream gzin;
-    private CBZip2InputStream bz2in;
+    private InputStream gzin;
+    private InputStream bz2in;
     private boolean noReadPrivateTags;
 
     //~ Constructors ---------------------------------------------------------------------------------------------------
@@ -9062,17 +9066,10 @@ public class FileNIFTI extends FileBase {
                     throw (new IOException(" NIFTI header file error"));
                 }
         	}else if(ext.equalsIgnoreCase("gz")) {
-        		try {
-                    fis = new FileInputStream(file);
-                } catch (FileNotFoundException e) {
-                    MipavUtil.displayError("File not found exception on fis = new FileInputStream(file) for " +
-                            (fileDir + File.separator + fileName));
-                    return null;
-                }
                 try {
-                    gzin = new GZIPInputStream(new BufferedInputStream(fis));
+                    gzin = ParallelDecompressInputStream.open(file, ParallelDecompressInputStream.GZIP);
                 } catch (IOException e) {
-                    MipavUtil.displayError("IOException on GZIPInputStream for " + fileName);
+                    MipavUtil.displayError("IOException opening gzip stream for " + fileName);
                     return null;
                 }
                 
@@ -9082,34 +9079,10 @@ public class FileNIFTI extends FileBase {
                 }
                 fireProgressStateChanged(20);
         	}else if(ext.equalsIgnoreCase("bz2")) {
-        		try {
-                    fis = new FileInputStream(file);
-                } catch (FileNotFoundException e) {
-                    MipavUtil.displayError("File not found exception on fis = new FileInputStream(file) for " + 
-                            (fileDir + File.separator + fileName));
-                    return null;
-                }
-                
                 try {
-                fis.read();
-                }
-                catch (IOException e) {
-                    MipavUtil.displayError("IOException on fis.read() trying to read byte B");
-                    return null;
-                }
-                
-                try {
-                    fis.read();
-                    }
-                    catch (IOException e) {
-                        MipavUtil.displayError("IOException on fis.read() trying to read byte Z");
-                        return null;
-                    }
-
-                try {
-                    bz2in = new CBZip2InputStream(new BufferedInputStream(fis));
-                } catch (Exception e) {
-                    MipavUtil.displayError("Exception on CBZip2InputStream for " + fileName);
+                    bz2in = ParallelDecompressInputStream.open(file, ParallelDecompressInputStream.BZIP2);
+                } catch (IOException e) {
+                    MipavUtil.displayError("IOException opening bzip2 stream for " + fileName);
                     return null;
                 }
                 if (!readHeader(fileInfo.getFileName(), fileInfo.getFileDirectory(),true, noReadPrivateTags)) {
@@ -9138,7 +9111,17 @@ public class FileNIFTI extends FileBase {
                 image = new ModelImage(fileInfo.getDataType(), new int[] { extents[0], extents[1] },
                                        fileInfo.getFileName());
             } else {
-                image = new ModelImage(fileInfo.getDataType(), fileInfo.getExtents(), fileInfo.getFileName());
+                image = null;
+
+                if (!niftiCompressed && !noImportData && Preferences.is(Preferences.PREF_MEMORY_MAPPED_READ) &&
+                        BufferMapped.isMappable(ModelStorageBase.DataType.getDataType(fileInfo.getDataType())) &&
+                        !isRewrittenAfterRead()) {
+                    image = mapImage();
+                }
+
+                if (image == null) {
+                    image = new ModelImage(fileInfo.getDataType(), fileInfo.getExtents(), fileInfo.getFileName());
+                }
             }
         } catch (OutOfMemoryError error) {
             throw (error);
@@ -9276,7 +9259,7 @@ public class FileNIFTI extends FileBase {
             	}else if(image.getType() == ModelStorageBase.ARGB_FLOAT) {
             		buffer = new byte[8];
             	}else {
-            		buffer = new byte[256];
+            		buffer = new byte[DECOMPRESSED_CHUNK_SIZE];
             		
             	}
             	
@@ -9317,8 +9300,8 @@ public class FileNIFTI extends FileBase {
                                  	 buffer = getFullBuffer(zin,buffer,bytesRead,8); 
                                  }
                         	}else {
-                        		if(bytesRead != 256) {
-                                 	 buffer = getFullBuffer(zin,buffer,bytesRead,256); 
+                        		if(bytesRead != DECOMPRESSED_CHUNK_SIZE) {
+                                 	 buffer = getFullBuffer(zin,buffer,bytesRead,DECOMPRESSED_CHUNK_SIZE); 
                                  }
                         	}
                             
@@ -9329,56 +9312,12 @@ public class FileNIFTI extends FileBase {
                                 bytesDecomp = 0;
                             }
 
-                        	if(type == ModelStorageBase.BYTE || type == ModelStorageBase.UBYTE || type == ModelStorageBase.BOOLEAN) {
-                        		image.importData(start, buffer, false);
-                        		if(start < image.getDataSize()) {
-                        			start = start + buffer.length;
-                        		}
-                        	}else if(type == ModelStorageBase.SHORT || type == ModelStorageBase.USHORT ) {
-                        		short[] shortBuff = new short[buffer.length/2];
-                        		for(int m=0,k=0;m<buffer.length;m=m+2,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1]};
-                        			shortBuff[k] = FileBase.bytesToShort(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, shortBuff, false);
-                        		}
-                        		start = start + shortBuff.length;
-                        	}else if(type == ModelStorageBase.INTEGER || type == ModelStorageBase.UINTEGER) {
-                        		int[] intBuff = new int[buffer.length/4];
-                        		for(int m=0,k=0;m<buffer.length;m=m+4,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                        			intBuff[k] = FileBase.bytesToInt(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, intBuff, false);
-                        		}
-                        		start = start + intBuff.length;
-                        	}else if(type == ModelStorageBase.FLOAT) {
-                        		float[] floatBuff = new float[buffer.length/4];
-                        		for(int m=0,k=0;m<buffer.length;m=m+4,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                        			floatBuff[k] = FileBase.bytesToFloat(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, floatBuff, false);
-                        		}
-                        		start = start + floatBuff.length;                             
-                        		                              
-                        	}else if(type == ModelStorageBase.DOUBLE) {
-                        		double[] doubleBuff = new double[buffer.length/8];
-                        		for(int m=0,k=0;m<buffer.length;m=m+8,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3],buffer[m+4],buffer[m+5],buffer[m+6],buffer[m+7]};
-                        			doubleBuff[k] = FileBase.bytesToDouble(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, doubleBuff, false);
-                        		}
-                        		start = start + doubleBuff.length;                             
-                        		                              
+                        	if(type != ModelStorageBase.ARGB && type != ModelStorageBase.ARGB_USHORT
+                        	        && type != ModelStorageBase.ARGB_FLOAT) {
+                        		start = start + importDecompressedChunk(image, start, buffer, endianness);
                         	}else if(type == ModelStorageBase.ARGB) {
                         		byte[] buff2 = new byte[buffer.length + buffer.length/3];
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			int counter = 0;
                         			for(int m=0;m<buffer.length;m=m+3) {
                             			buff2[counter] = 1;
@@ -9395,10 +9334,9 @@ public class FileNIFTI extends FileBase {
                         		short[] shortBuff2 = new short[3];
                         		shortBuff2[0] = 1;
                         		
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			for(int m=0,k=1;m<buffer.length;m=m+2,k++) {
-                            			byte[] b = {buffer[m],buffer[m+1]};
-                            			shortBuff2[k] = FileBase.bytesToShort(endianness, 0, b);
+                            			shortBuff2[k] = FileBase.bytesToShort(endianness, m, buffer);
                             		}
                         			image.importData(start, shortBuff2, false);
                         		}
@@ -9408,10 +9346,9 @@ public class FileNIFTI extends FileBase {
                         		float[] floatBuff2 = new float[3];
                         		floatBuff2[0] = 1;
                         		
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			for(int m=0,k=1;m<buffer.length;m=m+4,k++) {
-                            			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                            			floatBuff2[k] = FileBase.bytesToFloat(endianness, 0, b);
+                            			floatBuff2[k] = FileBase.bytesToFloat(endianness, m, buffer);
                             		}
                         			image.importData(start, floatBuff2, false);
                         		}
@@ -9448,8 +9385,8 @@ public class FileNIFTI extends FileBase {
                                  	 buffer = getFullBuffer(gzin,buffer,bytesRead,8); 
                                  }
                         	}else {
-                        		if(bytesRead != 256) {
-                                 	 buffer = getFullBuffer(gzin,buffer,bytesRead,256); 
+                        		if(bytesRead != DECOMPRESSED_CHUNK_SIZE) {
+                                 	 buffer = getFullBuffer(gzin,buffer,bytesRead,DECOMPRESSED_CHUNK_SIZE); 
                                  }
                         	}
                             
@@ -9460,57 +9397,12 @@ public class FileNIFTI extends FileBase {
                                 bytesDecomp = 0;
                             }
 
-                        	if(type == ModelStorageBase.BYTE || type == ModelStorageBase.UBYTE  || type == ModelStorageBase.BOOLEAN) {
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, buffer, false);
-                        		}
-                        		start = start + buffer.length;
-                        	}else if(type == ModelStorageBase.SHORT || type == ModelStorageBase.USHORT ) {
-                        		short[] shortBuff = new short[buffer.length/2];
-                        		for(int m=0,k=0;m<buffer.length;m=m+2,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1]};
-                        			shortBuff[k] = FileBase.bytesToShort(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, shortBuff, false);
-                        		}
-                        		
-                        		start = start + shortBuff.length;
-                        	}else if(type == ModelStorageBase.INTEGER || type == ModelStorageBase.UINTEGER) {
-                        		int[] intBuff = new int[buffer.length/4];
-                        		for(int m=0,k=0;m<buffer.length;m=m+4,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                        			intBuff[k] = FileBase.bytesToInt(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, intBuff, false);
-                        		}
-                        		start = start + intBuff.length;
-                        	}else if(type == ModelStorageBase.FLOAT) {
-                        		float[] floatBuff = new float[buffer.length/4];
-                        		for(int m=0,k=0;m<buffer.length;m=m+4,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                        			floatBuff[k] = FileBase.bytesToFloat(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, floatBuff, false);
-                        		}
-                        		start = start + floatBuff.length;                             
-                        		                              
-                        	}else if(type == ModelStorageBase.DOUBLE) {
-                        		double[] doubleBuff = new double[buffer.length/8];
-                        		for(int m=0,k=0;m<buffer.length;m=m+8,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3],buffer[m+4],buffer[m+5],buffer[m+6],buffer[m+7]};
-                        			doubleBuff[k] = FileBase.bytesToDouble(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, doubleBuff, false);
-                        		}
-                        		start = start + doubleBuff.length;                             
-                        		                              
+                        	if(type != ModelStorageBase.ARGB && type != ModelStorageBase.ARGB_USHORT
+                        	        && type != ModelStorageBase.ARGB_FLOAT) {
+                        		start = start + importDecompressedChunk(image, start, buffer, endianness);
                         	}else if(type == ModelStorageBase.ARGB) {
                         		byte[] buff2 = new byte[buffer.length + buffer.length/3];
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			int counter = 0;
                         			for(int m=0;m<buffer.length;m=m+3) {
                             			buff2[counter] = 1;
@@ -9527,10 +9419,9 @@ public class FileNIFTI extends FileBase {
                         		short[] shortBuff2 = new short[3];
                         		shortBuff2[0] = 1;
                         		
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			for(int m=0,k=1;m<buffer.length;m=m+2,k++) {
-                            			byte[] b = {buffer[m],buffer[m+1]};
-                            			shortBuff2[k] = FileBase.bytesToShort(endianness, 0, b);
+                            			shortBuff2[k] = FileBase.bytesToShort(endianness, m, buffer);
                             		}
                         			image.importData(start, shortBuff2, false);
                         		}
@@ -9540,10 +9431,9 @@ public class FileNIFTI extends FileBase {
                         		float[] floatBuff2 = new float[3];
                         		floatBuff2[0] = 1;
                         		
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			for(int m=0,k=1;m<buffer.length;m=m+4,k++) {
-                            			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                            			floatBuff2[k] = FileBase.bytesToFloat(endianness, 0, b);
+                            			floatBuff2[k] = FileBase.bytesToFloat(endianness, m, buffer);
                             		}
                         			image.importData(start, floatBuff2, false);
                         		}
@@ -9580,8 +9470,8 @@ public class FileNIFTI extends FileBase {
                                  	 buffer = getFullBuffer(bz2in,buffer,bytesRead,8); 
                                  }
                         	}else {
-                        		if(bytesRead != 256) {
-                                 	 buffer = getFullBuffer(bz2in,buffer,bytesRead,256); 
+                        		if(bytesRead != DECOMPRESSED_CHUNK_SIZE) {
+                                 	 buffer = getFullBuffer(bz2in,buffer,bytesRead,DECOMPRESSED_CHUNK_SIZE); 
                                  }
                         	}
                             
@@ -9593,56 +9483,12 @@ public class FileNIFTI extends FileBase {
                             }
 
 
-                        	if(type == ModelStorageBase.BYTE || type == ModelStorageBase.UBYTE  || type == ModelStorageBase.BOOLEAN) {
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, buffer, false);
-                        		}
-                        		start = start + buffer.length;
-                        	}else if(type == ModelStorageBase.SHORT || type == ModelStorageBase.USHORT ) {
-                        		short[] shortBuff = new short[buffer.length/2];
-                        		for(int m=0,k=0;m<buffer.length;m=m+2,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1]};
-                        			shortBuff[k] = FileBase.bytesToShort(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, shortBuff, false);
-                        		}
-                        		start = start + shortBuff.length;
-                        	}else if(type == ModelStorageBase.INTEGER || type == ModelStorageBase.UINTEGER) {
-                        		int[] intBuff = new int[buffer.length/4];
-                        		for(int m=0,k=0;m<buffer.length;m=m+4,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                        			intBuff[k] = FileBase.bytesToInt(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, intBuff, false);
-                        		}
-                        		start = start + intBuff.length;
-                        	}else if(type == ModelStorageBase.FLOAT) {
-                        		float[] floatBuff = new float[buffer.length/4];
-                        		for(int m=0,k=0;m<buffer.length;m=m+4,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                        			floatBuff[k] = FileBase.bytesToFloat(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, floatBuff, false);
-                        		}
-                        		start = start + floatBuff.length;                             
-                        		                              
-                        	}else if(type == ModelStorageBase.DOUBLE) {
-                        		double[] doubleBuff = new double[buffer.length/8];
-                        		for(int m=0,k=0;m<buffer.length;m=m+8,k++) {
-                        			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3],buffer[m+4],buffer[m+5],buffer[m+6],buffer[m+7]};
-                        			doubleBuff[k] = FileBase.bytesToDouble(endianness, 0, b);
-                        		}
-                        		if(start < image.getDataSize()) {
-                        			image.importData(start, doubleBuff, false);
-                        		}
-                        		start = start + doubleBuff.length;                             
-                        		                              
+                        	if(type != ModelStorageBase.ARGB && type != ModelStorageBase.ARGB_USHORT
+                        	        && type != ModelStorageBase.ARGB_FLOAT) {
+                        		start = start + importDecompressedChunk(image, start, buffer, endianness);
                         	}else if(type == ModelStorageBase.ARGB) {
                         		byte[] buff2 = new byte[buffer.length + buffer.length/3];
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			int counter = 0;
                         			for(int m=0;m<buffer.length;m=m+3) {
                             			buff2[counter] = 1;
@@ -9659,10 +9505,9 @@ public class FileNIFTI extends FileBase {
                         		short[] shortBuff2 = new short[3];
                         		shortBuff2[0] = 1;
                         		
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			for(int m=0,k=1;m<buffer.length;m=m+2,k++) {
-                            			byte[] b = {buffer[m],buffer[m+1]};
-                            			shortBuff2[k] = FileBase.bytesToShort(endianness, 0, b);
+                            			shortBuff2[k] = FileBase.bytesToShort(endianness, m, buffer);
                             		}
                         			image.importData(start, shortBuff2, false);
                         		}
@@ -9672,10 +9517,9 @@ public class FileNIFTI extends FileBase {
                         		float[] floatBuff2 = new float[3];
                         		floatBuff2[0] = 1;
                         		
-                        		if(start < image.getDataSize()) {
+                        		if(start < image.getDataSizeLong()) {
                         			for(int m=0,k=1;m<buffer.length;m=m+4,k++) {
-                            			byte[] b = {buffer[m],buffer[m+1],buffer[m+2],buffer[m+3]};
-                            			floatBuff2[k] = FileBase.bytesToFloat(endianness, 0, b);
+                            			floatBuff2[k] = FileBase.bytesToFloat(endianness, m, buffer);
                             		}
                         			image.importData(start, floatBuff2, false);
                         		}
@@ -9687,7 +9531,7 @@ public class FileNIFTI extends FileBase {
                         } 
                     }
             	}
-            }else {
+            }else if (!image.isMapped()) {
             	FileRaw rawFile;
                 rawFile = new FileRaw(fileInfo.getFileName(), fileInfo.getFileDirectory(), fileInfo, FileBase.READ);
                 if (image.isColorImage()) {
@@ -9809,6 +9653,137 @@ public class FileNIFTI extends FileBase {
     }
     
     
+    /**
+     * Returns whether the voxel values are rewritten after they are read: the absolute value taken for a negative
+     * vox_offset, the scl_slope/scl_inter scaling or the top-bottom flip. Rewriting a memory mapped image copies every
+     * mapped region into direct memory, so such files are read into the heap instead of mapped.
+     *
+     * @return  true when readImage changes the voxel values after reading them
+     */
+    private boolean isRewrittenAfterRead() {
+        if (vox_offset < 0.0f) {
+            return true;
+        }
+
+        if ((scl_slope != 0.0) && ((scl_slope != 1.0f) || (scl_inter != 0.0f)) &&
+                (sourceType != FileInfoNIFTI.NIFTI_TYPE_COMPLEX64) &&
+                (sourceType != FileInfoNIFTI.NIFTI_TYPE_FLOAT64) &&
+                (sourceType != FileInfoNIFTI.NIFTI_TYPE_RGB24)) {
+            return true;
+        }
+        int[] orientation = fileInfo.getAxisOrientation();
+
+        return Preferences.is(Preferences.PREF_FLIP_NIFTI_READ) &&
+               ((orientation[1] == FileInfoBase.ORI_P2A_TYPE) || (orientation[1] == FileInfoBase.ORI_I2S_TYPE));
+    }
+
+    /**
+     * Creates an image whose data is memory mapped from the uncompressed .nii or .img file instead of being read.
+     * The voxel data is paged in from the file as it is accessed.
+     *
+     * @return  The mapped image, or null if the file could not be mapped and must be read instead.
+     */
+    private ModelImage mapImage() {
+        long offset;
+
+        if (oneFile) {
+            offset = Math.max((long) Math.abs(vox_offset), headerSize);
+        } else {
+            offset = 0L;
+        }
+
+        try {
+            ModelImage mappedImage = new ModelImage(fileInfo.getDataType(), fileInfo.getExtents(),
+                                                    fileInfo.getFileName(),
+                                                    new File(fileInfo.getFileDirectory() + fileInfo.getFileName()),
+                                                    offset, fileInfo.getEndianess());
+            Preferences.debug("FileNIFTI: memory mapped " + fileInfo.getFileName() + " at offset " + offset + "\n",
+                              Preferences.DEBUG_FILEIO);
+
+            return mappedImage;
+        } catch (IOException error) {
+            Preferences.debug("FileNIFTI: unable to memory map " + fileInfo.getFileName() + ", reading instead: " +
+                              error + "\n", Preferences.DEBUG_FILEIO);
+
+            return null;
+        }
+    }
+
+    /**
+     * Converts a chunk of decompressed image data of a single channel image and stores it in the image.
+     *
+     * @param   image       the image being read
+     * @param   start       index in the image buffer of the first value of the chunk
+     * @param   buffer      the decompressed bytes
+     * @param   endianness  the byte order of the data
+     *
+     * @return  the number of values in the chunk, or 0 for a data type that is not read from compressed files
+     *
+     * @throws  IOException  if the chunk runs past the end of the image buffer or can not be stored in the image
+     */
+    private static int importDecompressedChunk(ModelImage image, int start, byte[] buffer, boolean endianness)
+            throws IOException {
+        int type = image.getType();
+        int bytesPerValue;
+
+        if (type == ModelStorageBase.BYTE || type == ModelStorageBase.UBYTE || type == ModelStorageBase.BOOLEAN) {
+            bytesPerValue = 1;
+        } else if (type == ModelStorageBase.SHORT || type == ModelStorageBase.USHORT) {
+            bytesPerValue = 2;
+        } else if (type == ModelStorageBase.INTEGER || type == ModelStorageBase.UINTEGER
+                || type == ModelStorageBase.FLOAT) {
+            bytesPerValue = 4;
+        } else if (type == ModelStorageBase.DOUBLE) {
+            bytesPerValue = 8;
+        } else {
+            return 0;
+        }
+
+        int count = buffer.length / bytesPerValue;
+
+        if ((start + count) > image.getDataSizeLong()) {
+            throw new IOException("Import data error: the decompressed data is longer than the image");
+        }
+
+        if (bytesPerValue == 1) {
+            image.importData(start, buffer, false);
+        } else if (bytesPerValue == 2) {
+            short[] shortBuff = new short[count];
+
+            for (int k = 0; k < count; k++) {
+                shortBuff[k] = FileBase.bytesToShort(endianness, 2 * k, buffer);
+            }
+
+            image.importData(start, shortBuff, false);
+        } else if (type == ModelStorageBase.FLOAT) {
+            float[] floatBuff = new float[count];
+
+            for (int k = 0; k < count; k++) {
+                floatBuff[k] = FileBase.bytesToFloat(endianness, 4 * k, buffer);
+            }
+
+            image.importData(start, floatBuff, false);
+        } else if (bytesPerValue == 4) {
+            int[] intBuff = new int[count];
+
+            for (int k = 0; k < count; k++) {
+                intBuff[k] = FileBase.bytesToInt(endianness, 4 * k, buffer);
+            }
+
+            image.importData(start, intBuff, false);
+        } else {
+            double[] doubleBuff = new double[count];
+
+            for (int k = 0; k < count; k++) {
+                doubleBuff[k] = FileBase.bytesToDouble(endianness, 8 * k, buffer);
+            }
+
+            image.importData(start, doubleBuff, false);
+        }
+
+        return count;
+    }
+
     /**
      * 
      * @param in
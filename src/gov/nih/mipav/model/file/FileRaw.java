@@ -335,7 +335,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.BYTE, (((long)k) * bufferSize) + offset, bufferSize);
 
-                        image.importData(k * bufferSize, fileRW.getByteBuffer(), false);
+                        image.importData(((long) k) * bufferSize, fileRW.getByteBuffer(), false);
                     } catch (IOException error) {
                         throw error;
                     }
@@ -346,7 +346,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.UBYTE, (((long)k) * bufferSize) + offset, bufferSize);
 
-                        image.importUData(k * bufferSize, fileRW.getShortBuffer(), false);
+                        image.importUData(((long) k) * bufferSize, fileRW.getShortBuffer(), false);
                     } catch (IOException error) {
                         throw error;
                     }
@@ -357,7 +357,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.SHORT, (((long)k) * bufferSize * 2) + offset, bufferSize);
 
-                        image.importData(k * bufferSize, fileRW.getShortBuffer(), false);
+                        image.importData(((long) k) * bufferSize, fileRW.getShortBuffer(), false);
                     } catch (IOException error) {
                         throw error;
                     }
@@ -368,7 +368,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.USHORT, (((long)k) * bufferSize * 2) + offset, bufferSize);
 
-                        image.importUData(k * bufferSize, fileRW.getShortBuffer(), false);
+                        image.importUData(((long) k) * bufferSize, fileRW.getShortBuffer(), false);
                     } catch (IOException error) {
                         throw error;
                     }
@@ -379,7 +379,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.INTEGER, (((long)k) * bufferSize * 4) + offset, bufferSize);
 
-                        image.importData(k * bufferSize, fileRW.getIntBuffer(), false);
+                        image.importData(((long) k) * bufferSize, fileRW.getIntBuffer(), false);
                     } catch (IOException error) {
                         throw error;
                     }
@@ -390,7 +390,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.UINTEGER, (((long)k) * bufferSize * 4) + offset, bufferSize);
 
-                        image.importData(k * bufferSize, fileRW.getIntBuffer(), false);
+                        image.importData(((long) k) * bufferSize, fileRW.getIntBuffer(), false);
                     } catch (IOException error) {
                         throw error;
                     }
@@ -401,7 +401,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.LONG, (((long)k) * bufferSize * 8) + offset, bufferSize);
 
-                        image.importData(k * bufferSize, fileRW.getLongBuffer(), false);
+                        image.importData(((long) k) * bufferSize, fileRW.getLongBuffer(), false);
                     } catch (IOException error) {
                        throw error;
                     }
@@ -412,7 +412,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.FLOAT, (((long)k) * bufferSize * 4) + offset, bufferSize);
 
-                        image.importData(k * bufferSize, fileRW.getFloatBuffer(), false);
+                        image.importData(((long) k) * bufferSize, fileRW.getFloatBuffer(), false);
                     } catch (IOException error) {
                        throw error;
                     }
@@ -423,7 +423,7 @@ public class FileRaw extends FileBase {
                     try {
                         fileRW.readImage(ModelStorageBase.DOUBLE, (((long)k) * bufferSize * 8) + offset, bufferSize);
 
-                        image.importData(k * bufferSize, fileRW.getDoubleBuffer(), false);
+                        image.importData(((long) k) * bufferSize, fileRW.getDoubleBuffer(), false);
                     } catch (IOException error) {
                         throw error;
                     }
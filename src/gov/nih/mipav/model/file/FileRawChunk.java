@@ -61,13 +61,13 @@ public class FileRawChunk extends FileBase {
     private int compressionType = FileInfoBase.COMPRESSION_NONE;
 
     /** DOCUMENT ME! */
-    private DeflaterOutputStream deflaterStream;
+    private OutputStream deflaterStream;
 
     /** DOCUMENT ME! */
     private FileInfoBase fileInfo;
 
     /** DOCUMENT ME! */
-    private InflaterInputStream inflaterStream;
+    private InputStream inflaterStream;
 
     @SuppressWarnings("unused")
     private int numChannels = 4;
@@ -121,7 +121,8 @@ public class FileRawChunk extends FileBase {
                     inflaterStream = new ZipInputStream(new FileInputStream(fileName));
                     ((ZipInputStream) inflaterStream).getNextEntry();
                 } else if (compressionType == FileInfoBase.COMPRESSION_GZIP) {
-                    inflaterStream = new GZIPInputStream(new FileInputStream(fileName));
+                    inflaterStream = ParallelDecompressInputStream.open(new File(fileName),
+                            ParallelDecompressInputStream.GZIP);
                 } else {
                     MipavUtil.displayError("Unrecognized compression method: " + compress);
                 }
@@ -140,7 +141,8 @@ public class FileRawChunk extends FileBase {
                     String zipEntryName = fileName.substring(fileName.lastIndexOf(File.separator), fileName.length());
                     ((ZipOutputStream) deflaterStream).putNextEntry(new ZipEntry(zipEntryName));
                 } else if (compressionType == FileInfoBase.COMPRESSION_GZIP) {
-                    deflaterStream = new GZIPOutputStream(new FileOutputStream(fileName));
+                    deflaterStream = new BlockGZIPOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(fileName)));
                 } else {
                     MipavUtil.displayError("Unrecognized compression method: " + compress);
                 }
@@ -38,7 +38,10 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Vector;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
@@ -502,6 +505,9 @@ public class FileSVS extends FileBase {
 
     public static final int OVERLAY = 0x6f766572; // "over" (overlay)
 
+    /** Default most memory in bytes the decoded tiles kept by readRegion may use. */
+    public static final long DEFAULT_TILE_CACHE_SIZE = 256L * 1024L * 1024L;
+
     // ~ Instance fields
     // ------------------------------------------------------------------------------------------------
 
@@ -971,6 +977,15 @@ public class FileSVS extends FileBase {
     
     private boolean haveZResolution = false;
 
+    /** The tiled images of the pyramid from the largest to the smallest, set by openLevels. */
+    private Vector<PyramidLevel> levels = null;
+
+    /** Decoded tiles of the pyramid levels, kept by readRegion. */
+    private TileCache tileCache = null;
+
+    /** Most memory in bytes the tile cache may use. */
+    private long tileCacheSize = DEFAULT_TILE_CACHE_SIZE;
+
     // ~ Constructors
     // ---------------------------------------------------------------------------------------------------
 
@@ -1092,6 +1107,9 @@ public class FileSVS extends FileBase {
             rotateAlgo = null;
         }
 
+        levels = null;
+        tileCache = null;
+
         try {
             super.finalize();
         } catch (final Throwable er) {}
@@ -5912,6 +5930,400 @@ public class FileSVS extends FileBase {
         fileName = fName;
     }
 
+    /**
+     * Finds the tiled images of the pyramid in the file, from the largest to the smallest. The file is kept open for
+     * readRegion until closeLevels is called. The thumbnail, label and macro images of a slide are stored in strips
+     * and are not part of the pyramid. This instance should not be used for readImage while the levels are open.
+     * 
+     * @return the number of pyramid levels
+     * 
+     * @exception IOException if the file can not be read
+     */
+    public synchronized int openLevels() throws IOException {
+
+        if (levels != null) {
+            return levels.size();
+        }
+
+        file = new File(fileDir + fileName);
+        raFile = new RandomAccessFile(file, "r");
+        fileLength = raFile.length();
+
+        final short byteOrder = raFile.readShort();
+
+        if (byteOrder == 0x4949) {
+            endianess = FileBase.LITTLE_ENDIAN;
+        } else if (byteOrder == 0x4d4d) {
+            endianess = FileBase.BIG_ENDIAN;
+        } else {
+            raFile.close();
+            throw new IOException("TIFF Read Header: Error - first 2 bytes are an illegal " + byteOrder);
+        }
+
+        final int magicTIFFNumber = getUnsignedShort(endianess);
+
+        if (magicTIFFNumber != 42) {
+            raFile.close();
+            throw new IOException("Tiff Read Header: Error - Invalid Magic number = " + magicTIFFNumber);
+        }
+
+        levels = new Vector<PyramidLevel>();
+        imageSlice = 0;
+        IFDoffsets[imageSlice] = getInt(endianess);
+        imgResols = new float[5];
+        imgResols[0] = imgResols[1] = imgResols[2] = imgResols[3] = imgResols[4] = (float) 1.0;
+
+        boolean moreIFDs = true;
+
+        while (moreIFDs) {
+            raFile.seek(IFDoffsets[imageSlice]);
+            resetIFDState();
+
+            final FileInfoSVS levelInfo = new FileInfoSVS(fileName, fileDir, FileUtility.SVS);
+            moreIFDs = openIFD(levelInfo);
+
+            if (fileInfo == null) {
+                fileInfo = levelInfo;
+                fileInfo.setEndianess(endianess);
+                fileInfo.setResolutions(imgResols.clone());
+            }
+
+            if (haveTileWidth && haveTileLength && haveTileOffsets && (tileByteCounts != null)) {
+                final PyramidLevel level = new PyramidLevel();
+                level.xDim = xDim;
+                level.yDim = yDim;
+                level.tileWidth = tileWidth;
+                level.tileLength = tileLength;
+                level.tilesAcross = (xDim + tileWidth - 1) / tileWidth;
+                level.tileOffsets = tileOffsets;
+                level.tileByteCounts = tileByteCounts;
+                level.samplesPerPixel = samplesPerPixel;
+                level.bitsPerSample = (bitsPerSample == null) ? 8 : bitsPerSample[0];
+                level.chunky = chunky;
+                level.lzwCompression = lzwCompression;
+                level.zlibCompression = zlibCompression;
+                level.jpegCompression = jpegCompression;
+                level.uncompressed = !lzwCompression && !zlibCompression && !jpegCompression && !jpeg2000Compression
+                        && !packBit && !fax3Compression && !fax4Compression && !modHuffmanCompression
+                        && !ThunderScanCompression && !SGILogCompression && !SGILog24Compression;
+                level.predictor = predictor;
+                level.isYCbCr = isYCbCr;
+                level.isRGBA = isRGBA;
+                level.fillOrder = fillOrder;
+                level.tableStream = tableStream;
+
+                int i = 0;
+
+                while ( (i < levels.size()) && (levels.elementAt(i).xDim >= level.xDim)) {
+                    i++;
+                }
+
+                levels.insertElementAt(level, i);
+            }
+        }
+
+        if (levels.size() == 0) {
+            closeLevels();
+            throw new IOException("FileSVS: no tiled images in " + fileName);
+        }
+
+        tileCache = new TileCache(tileCacheSize);
+
+        return levels.size();
+    }
+
+    /**
+     * Closes the file opened by openLevels and empties the tile cache.
+     * 
+     * @exception IOException if the file can not be closed
+     */
+    public synchronized void closeLevels() throws IOException {
+        levels = null;
+        tileCache = null;
+
+        if (raFile != null) {
+            raFile.close();
+            raFile = null;
+        }
+    }
+
+    /**
+     * Returns the width and height of a pyramid level.
+     * 
+     * @param level index of the level, 0 being the full resolution image
+     * 
+     * @return the extents of the level
+     */
+    public synchronized int[] getLevelExtents(final int level) {
+        final PyramidLevel lv = levels.elementAt(level);
+
+        return new int[] {lv.xDim, lv.yDim};
+    }
+
+    /**
+     * Returns how many pixels of the full resolution image one pixel of a pyramid level spans along x.
+     * 
+     * @param level index of the level
+     * 
+     * @return the downsampling factor of the level
+     */
+    public synchronized double getLevelDownsample(final int level) {
+        return (double) levels.elementAt(0).xDim / levels.elementAt(level).xDim;
+    }
+
+    /**
+     * Sets the most memory the decoded tiles kept by readRegion may use. Least recently used tiles are dropped first.
+     * 
+     * @param bytes size of the tile cache in bytes
+     */
+    public synchronized void setTileCacheSize(final long bytes) {
+        tileCacheSize = bytes;
+
+        if (tileCache != null) {
+            tileCache.setCapacity(bytes);
+        }
+    }
+
+    /**
+     * Reads a rectangle of a pyramid level. Only the tiles that intersect the rectangle are read and decoded, and the
+     * decoded tiles are kept in a least recently used cache, so a slide too large to fit into memory can be read
+     * piece by piece. The buffer is filled as getImageBuffer would be: one value per pixel for gray scale images and
+     * four values (alpha, red, green, blue) per pixel for color images. Pixels outside the level are set to 0.
+     * 
+     * @param level index of the level, 0 being the full resolution image
+     * @param x x coordinate of the upper left corner of the rectangle in the level
+     * @param y y coordinate of the upper left corner of the rectangle in the level
+     * @param width width of the rectangle
+     * @param height height of the rectangle
+     * @param buffer buffer to hold the pixels, or null to allocate one
+     * 
+     * @return the buffer
+     * 
+     * @exception IOException if the tiles can not be read or their compression is not supported
+     */
+    public synchronized float[] readRegion(final int level, final int x, final int y, final int width,
+            final int height, float[] buffer) throws IOException {
+
+        if (levels == null) {
+            openLevels();
+        }
+
+        if ( (level < 0) || (level >= levels.size())) {
+            throw new IOException("FileSVS: no pyramid level " + level);
+        }
+
+        final PyramidLevel lv = levels.elementAt(level);
+
+        if ( !lv.chunky || (lv.bitsPerSample != 8) || (lv.samplesPerPixel == 2) || (lv.samplesPerPixel > 4)
+                || ( !lv.uncompressed && !lv.lzwCompression && !lv.zlibCompression && !lv.jpegCompression)
+                || (lv.jpegCompression && (lv.samplesPerPixel != 3))) {
+            throw new IOException("FileSVS: region reading supports 8 bit chunky tiles that are uncompressed or "
+                    + "LZW, zlib or JPEG compressed");
+        }
+
+        final int spp = lv.samplesPerPixel;
+        final int valuesPerPixel = (spp == 1) ? 1 : 4;
+
+        if (buffer == null) {
+            buffer = new float[width * height * valuesPerPixel];
+        } else if (buffer.length < (width * height * valuesPerPixel)) {
+            throw new IOException("FileSVS: region buffer is too small");
+        }
+
+        Arrays.fill(buffer, 0, width * height * valuesPerPixel, 0.0f);
+
+        final int xStart = Math.max(x, 0);
+        final int yStart = Math.max(y, 0);
+        final int xEnd = Math.min(x + width, lv.xDim);
+        final int yEnd = Math.min(y + height, lv.yDim);
+
+        for (int tileY = yStart / lv.tileLength; (tileY * lv.tileLength) < yEnd; tileY++) {
+
+            for (int tileX = xStart / lv.tileWidth; (tileX * lv.tileWidth) < xEnd; tileX++) {
+                final byte[] tile = getLevelTile(level, lv, (tileY * lv.tilesAcross) + tileX);
+                final int x0 = Math.max(xStart, tileX * lv.tileWidth);
+                final int x1 = Math.min(xEnd, (tileX + 1) * lv.tileWidth);
+                final int y0 = Math.max(yStart, tileY * lv.tileLength);
+                final int y1 = Math.min(yEnd, (tileY + 1) * lv.tileLength);
+
+                for (int row = y0; row < y1; row++) {
+                    int j = spp * ( ( (row - (tileY * lv.tileLength)) * lv.tileWidth) + (x0 - (tileX * lv.tileWidth)));
+                    int k = valuesPerPixel * ( ( (row - y) * width) + (x0 - x));
+
+                    for (int col = x0; col < x1; col++, j += spp) {
+
+                        if (spp == 1) {
+                            buffer[k++] = tile[j] & 0xff;
+                        } else {
+                            buffer[k++] = ( (spp == 4) && lv.isRGBA) ? (tile[j + 3] & 0xff) : 255;
+                            buffer[k++] = tile[j] & 0xff;
+                            buffer[k++] = tile[j + 1] & 0xff;
+                            buffer[k++] = tile[j + 2] & 0xff;
+                        }
+                    }
+                }
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Reads a rectangle of a pyramid level into a new 2D image. See readRegion.
+     * 
+     * @param level index of the level, 0 being the full resolution image
+     * @param x x coordinate of the upper left corner of the rectangle in the level
+     * @param y y coordinate of the upper left corner of the rectangle in the level
+     * @param width width of the rectangle
+     * @param height height of the rectangle
+     * 
+     * @return the image of the rectangle, with resolutions scaled to the level
+     * 
+     * @exception IOException if the tiles can not be read or their compression is not supported
+     */
+    public synchronized ModelImage readRegionImage(final int level, final int x, final int y, final int width,
+            final int height) throws IOException {
+        final float[] buffer = readRegion(level, x, y, width, height, null);
+        final int[] extents = new int[] {width, height};
+        final int dataType = (levels.elementAt(level).samplesPerPixel == 1) ? ModelStorageBase.UBYTE
+                : ModelStorageBase.ARGB;
+        final FileInfoSVS regionInfo = (FileInfoSVS) fileInfo.clone();
+        final float downsample = (float) getLevelDownsample(level);
+        final float[] resols = regionInfo.getResolutions().clone();
+        resols[0] *= downsample;
+        resols[1] *= downsample;
+
+        regionInfo.setDataType(dataType);
+        regionInfo.setExtents(extents);
+        regionInfo.setResolutions(resols);
+
+        final ModelImage regionImage = new ModelImage(dataType, extents, fileName + "_L" + level + "_" + x + "_" + y);
+        regionImage.importData(0, buffer, true);
+        regionImage.setFileInfo(regionInfo, 0);
+
+        return regionImage;
+    }
+
+    /**
+     * Returns a decoded tile of a pyramid level from the tile cache, reading and decoding it if it is not cached.
+     * 
+     * @param levelIndex index of the level
+     * @param lv the level
+     * @param tile index of the tile in the level
+     * 
+     * @return the chunky samples of the tile, tileWidth samples per row
+     * 
+     * @exception IOException if the tile can not be read or decoded
+     */
+    private byte[] getLevelTile(final int levelIndex, final PyramidLevel lv, final int tile) throws IOException {
+        final Long key = Long.valueOf( ((long) levelIndex << 40) | tile);
+        byte[] decoded = tileCache.get(key);
+
+        if (decoded != null) {
+            return decoded;
+        }
+
+        final int nBytes = lv.tileByteCounts[tile];
+        final byte[] data = new byte[nBytes];
+        raFile.seek(lv.tileOffsets[tile]);
+        raFile.readFully(data);
+
+        selectLevel(lv);
+
+        final int rowsToDo = Math.min(lv.tileLength, lv.yDim - ( (tile / lv.tilesAcross) * lv.tileLength));
+        decoded = new byte[lv.tileWidth * lv.tileLength * lv.samplesPerPixel];
+
+        if (lv.lzwCompression) {
+            LZWDecompresser(data, nBytes, decoded, (tile / lv.tilesAcross) * lv.tileLength, rowsToDo, lv.tileWidth
+                    * lv.samplesPerPixel);
+        } else if (lv.jpegCompression) {
+
+            if (jpegDecompresser(decoded, data, rowsToDo) < 0) {
+                throw new IOException("FileSVS: JPEG tile " + tile + " could not be decoded");
+            }
+        } else if (lv.zlibCompression) {
+            final Inflater inflater = new Inflater();
+
+            try {
+                inflater.setInput(data, 0, nBytes);
+                inflater.inflate(decoded);
+            } catch (final DataFormatException e) {
+                throw new IOException("FileSVS: zlib tile " + tile + " could not be decoded: " + e);
+            } finally {
+                inflater.end();
+            }
+
+            // Horizontal Differencing Predictor
+            if (lv.predictor == 2) {
+
+                for (int j = 0; j < rowsToDo; j++) {
+                    int count = lv.samplesPerPixel * ( (j * lv.tileWidth) + 1);
+
+                    for (int i = lv.samplesPerPixel; i < (lv.tileWidth * lv.samplesPerPixel); i++) {
+                        decoded[count] += decoded[count - lv.samplesPerPixel];
+                        count++;
+                    }
+                }
+            }
+        } else {
+            System.arraycopy(data, 0, decoded, 0, Math.min(nBytes, decoded.length));
+        }
+
+        tileCache.put(key, decoded);
+
+        return decoded;
+    }
+
+    /**
+     * Copies the fields of a pyramid level that the tile decompressers use into this reader.
+     * 
+     * @param lv the level
+     */
+    private void selectLevel(final PyramidLevel lv) {
+        xDim = lv.xDim;
+        yDim = lv.yDim;
+        tileWidth = lv.tileWidth;
+        tileLength = lv.tileLength;
+        samplesPerPixel = lv.samplesPerPixel;
+        predictor = lv.predictor;
+        isYCbCr = lv.isYCbCr;
+        fillOrder = lv.fillOrder;
+        tableStream = lv.tableStream;
+    }
+
+    /**
+     * Clears the fields that openIFD only sets when a tag is present, so that each IFD of the pyramid is described by
+     * its own tags.
+     */
+    private void resetIFDState() {
+        tileOffsetNumber = 0;
+        tileByteNumber = 0;
+        tileOffsets = null;
+        tileByteCounts = null;
+        haveTileWidth = false;
+        haveTileLength = false;
+        haveTileOffsets = false;
+        bitsPerSample = null;
+        samplesPerPixel = 1;
+        chunky = true;
+        lzwCompression = false;
+        zlibCompression = false;
+        jpegCompression = false;
+        jpeg2000Compression = false;
+        packBit = false;
+        fax3Compression = false;
+        fax4Compression = false;
+        modHuffmanCompression = false;
+        ThunderScanCompression = false;
+        SGILogCompression = false;
+        SGILog24Compression = false;
+        predictor = 1;
+        isYCbCr = false;
+        isRGBA = false;
+        fillOrder = 1;
+        tableStream = null;
+    }
+
     /**
      * This method writes a tiff image file.
      * 
@@ -18396,4 +18808,106 @@ public class FileSVS extends FileBase {
             index = _index;
         }
     }
+
+    /**
+     * The layout and compression of one tiled image of a whole slide pyramid.
+     */
+    private static class PyramidLevel {
+
+        /** Width and height of the level. */
+        public int xDim, yDim;
+
+        /** Tile size and number of tiles in a row. */
+        public int tileWidth, tileLength, tilesAcross;
+
+        /** File location and compressed size of each tile. */
+        public long[] tileOffsets;
+
+        /** DOCUMENT ME! */
+        public int[] tileByteCounts;
+
+        /** DOCUMENT ME! */
+        public int samplesPerPixel, bitsPerSample, predictor, fillOrder;
+
+        /** DOCUMENT ME! */
+        public boolean chunky, uncompressed, lzwCompression, zlibCompression, jpegCompression, isYCbCr, isRGBA;
+
+        /** JPEG tables shared by the tiles of the level, or null. */
+        public JPEGInputStream tableStream;
+    }
+
+    /**
+     * Least recently used cache of decoded tiles, limited by the total size of the tiles it holds.
+     */
+    private static class TileCache {
+
+        /** The tiles in access order, least recently used first. */
+        private final LinkedHashMap<Long, byte[]> tiles = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+
+        /** Most bytes the tiles may use. */
+        private long capacity;
+
+        /** Bytes used by the tiles. */
+        private long size = 0;
+
+        /**
+         * Creates an empty cache.
+         * 
+         * @param capacity most bytes the tiles may use
+         */
+        public TileCache(final long capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Returns a tile and marks it as most recently used.
+         * 
+         * @param key the tile key
+         * 
+         * @return the tile, or null if it is not cached
+         */
+        public byte[] get(final Long key) {
+            return tiles.get(key);
+        }
+
+        /**
+         * Adds a tile, dropping the least recently used tiles until the cache fits into its capacity. The tile just
+         * added is always kept.
+         * 
+         * @param key the tile key
+         * @param tile the decoded tile
+         */
+        public void put(final Long key, final byte[] tile) {
+            final byte[] old = tiles.put(key, tile);
+
+            if (old != null) {
+                size -= old.length;
+            }
+
+            size += tile.length;
+            evict();
+        }
+
+        /**
+         * Changes the capacity of the cache.
+         * 
+         * @param capacity most bytes the tiles may use
+         */
+        public void setCapacity(final long capacity) {
+            this.capacity = capacity;
+            evict();
+        }
+
+        /**
+         * Drops least recently used tiles until the cache fits into its capacity, keeping at least one tile.
+         */
+        private void evict() {
+            final Iterator<byte[]> iter = tiles.values().iterator();
+
+            while ( (size > capacity) && (tiles.size() > 1)) {
+                size -= iter.next().length;
+                iter.remove();
+            }
+        }
+    }
 }
@@ -18,6 +18,8 @@ import gov.nih.mipav.model.structures.VOIProtractor;
 import gov.nih.mipav.model.structures.VOIText;
 import gov.nih.mipav.model.structures.VOIVector;
 
+import gov.nih.mipav.util.ThreadUtil;
+
 import gov.nih.mipav.view.MipavUtil;
 import gov.nih.mipav.view.Preferences;
 import gov.nih.mipav.view.ViewUserInterface;
@@ -38,8 +40,11 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -594,12 +599,36 @@ public class FileTiff extends FileBase {
     private boolean lzwCompression = false; // true if the read data file has LZW compression
 
     /** TIFF files. */
-    // private TIFFLZWDecoder lzwDecoder = null; // for decoding LZW compressed images
+    private LZWDecoder lzwDecoder = null; // for decoding LZW compressed images
 
     private boolean zlibCompression = false; // true if the read data file has LZW compression
 
     private Inflater zlibDecompresser = null;
 
+    /**
+     * Tiles that were LZW or zlib decoded ahead on the thread pool, starting with tile decodedFirst of the image. Null
+     * if not decoded.
+     */
+    private byte[][] decodedTiles = null;
+
+    /** Compressed bytes of the tiles in decodedTiles, read with as few reads as possible. */
+    private byte[][] compressedTiles = null;
+
+    /** Number of rows that each LZW decoded tile in decodedTiles holds. */
+    private int[] decodedTileRows = null;
+
+    /** Bytes per row of the LZW decoded tiles in decodedTiles. */
+    private int decodedTileBytesPerRow;
+
+    /** The first tile of the image in decodedTiles, and the end of that batch of tiles. */
+    private int decodedFirst, decodedBatchEnd;
+
+    /** The tile offsets that the tiles in decodedTiles were read with. */
+    private long[] decodedOffsets;
+
+    /** The tile of the image that readTileBuffer is working on. */
+    private int currentTile;
+
     /** DOCUMENT ME! */
     private short nDirEntries;
 
@@ -899,42 +928,6 @@ public class FileTiff extends FileBase {
 
     private short threshholding = 1;
 
-    // If true, not old version of LZW
-    private boolean newLZW = true;
-
-    private boolean haveLZWInit = false;
-
-    private int next[];
-
-    private short length[]; // string length, including this token
-
-    private byte value[]; // data value
-
-    private byte firstChar[]; // first token of string
-
-    private short nBits; // # of bits/code
-
-    @SuppressWarnings("unused")
-    private short maxCode; // maximum code for nBits
-
-    private long nextData; // next bits of i/o
-
-    private long nextBits; // # of valid bits in nextData
-
-    private long nBitsMask; // LZWBaseState nBits 1 bits, right adjusted
-
-    private long restart; // restart count
-
-    private int bitsLeft; // available bits in raw data
-
-    private int currentRecognizedCode; // current recognized code
-
-    private int previousRecognizedCode; // previously recognized code
-
-    private int nextFreeEntry; // next free entry in dec_codetab
-
-    private int maxAvailableEntry; // max available entry
-
     private boolean flipHorizontal = false;
 
     private boolean rotate180 = false;
@@ -1095,10 +1088,7 @@ public class FileTiff extends FileBase {
         userComment = null;
         flashPixVersion = null;
         gdalMetadata = null;
-        next = null;
-        length = null;
-        value = null;
-        firstChar = null;
+        lzwDecoder = null;
 
         if (flipAlgo != null) {
             flipAlgo.finalize();
@@ -2261,142 +2251,180 @@ public class FileTiff extends FileBase {
 
     private void LZWDecompresser(final byte[] inData, final int bytesToRead, final byte[] outData,
             final int startingRow, final int rowsToDo, final int bytesToGeneratePerRow) throws IOException {
-        final int BITS_MIN = 9; // Start LZW with 9 bits
-        final int BITS_MAX = 12; // max of 12 bit strings for LZW
-        final int CODE_CLEAR = 256; // code to clear string table
-        final int CODE_EOI = 257; // end-of-information code
-        final int CODE_FIRST = 258; // first free code entry
-        // +1024 is for compatibility with old LZW files
-        final int CSIZE = (1 << BITS_MAX) + 1023;
-        int i;
-        short code;
-        int occ;
-        int inPosition = 0;
-        final int op0 = 0; // initial output position
-        int op;
-        int tp;
-        long residue;
-        byte t;
-        int bp;
-        long localNBits;
-        long localNextBits;
-        long localNextData;
-        long localNBitsMask;
-        int localCurrentRecognizedCode;
-        int localNextFreeEntry;
-        int localMaxAvailableEntry;
-        int localPreviousRecognizedCode;
-        int len;
-        if ( !haveLZWInit) {
-            haveLZWInit = true;
-            next = new int[CSIZE];
-            length = new short[CSIZE];
-            value = new byte[CSIZE];
-            firstChar = new byte[CSIZE];
-            code = 255;
-            do {
-                value[code] = (byte) code;
-                firstChar[code] = (byte) code;
-                length[code] = 1;
-                next[code] = -1;
-            } while (code-- > 0);
-        } // if (!haveLZWInit)
-        if ( (inData[0] == 0) && ( (inData[1] & 0x1) == 1)) {
-            // Check for old bit-reversed codes.
-            Preferences.debug("Old-style LZW codes\n", Preferences.DEBUG_FILEIO);
-            newLZW = false;
-            maxCode = ( (1 << BITS_MIN) - 1);
-        } else {
-            newLZW = true;
-            maxCode = ( (1 << BITS_MIN) - 2);
-        }
-        nBits = (short) BITS_MIN;
-        nextBits = 0L;
-        nextData = 0L;
-        restart = 0L;
-        nBitsMask = ( (1L << BITS_MIN) - 1);
-        bitsLeft = (bytesToRead << 3);
-        nextFreeEntry = CODE_FIRST;
-        // Zero entries that are not yet filled in. We do this to guard against bogus input data
-        // that causes us to index into undefined entries.
-        for (i = nextFreeEntry; i < CSIZE; i++) {
-            value[i] = (byte) 0;
-            firstChar[i] = (byte) 0;
-            length[i] = (short) 0;
-            next[i] = -1;
-        }
-        previousRecognizedCode = -1;
-        maxAvailableEntry = (int) (nBitsMask - 1);
-        op = op0;
-        if (newLZW) {
-            occ = bytesToGeneratePerRow * rowsToDo;
-            if (restart > 0) {
-                // Restart interrupted output operation
-                localCurrentRecognizedCode = currentRecognizedCode;
-                residue = length[localCurrentRecognizedCode] - restart;
-                if (residue > occ) {
-                    // Residue from previous decode is sufficient to satisfy the decode request.
-                    // Skip to the start of the decoded string, place decoded values in the output
-                    // buffer, and return.
-                    restart += occ;
-                    do {
-                        localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                    } while ( ( --residue > occ) && (localCurrentRecognizedCode >= 0));
-                    if (localCurrentRecognizedCode >= 0) {
-                        tp = op + occ;
+
+        if (copyDecodedTile(outData, rowsToDo, bytesToGeneratePerRow) >= 0) {
+            return;
+        }
+
+        if (lzwDecoder == null) {
+            lzwDecoder = new LZWDecoder();
+        }
+
+        lzwDecoder.decompress(inData, bytesToRead, outData, startingRow, rowsToDo, bytesToGeneratePerRow, predictor,
+                tileWidth, samplesPerPixel);
+    }
+
+    /**
+     * The LZW string table and decoding state. Each decoder may only be used by one thread at a time, so tiles that
+     * are decoded on several threads each get their own decoder.
+     */
+    private static class LZWDecoder {
+
+        // If true, not old version of LZW
+        private boolean newLZW = true;
+
+        private boolean haveLZWInit = false;
+
+        private int next[];
+
+        private short length[]; // string length, including this token
+
+        private byte value[]; // data value
+
+        private byte firstChar[]; // first token of string
+
+        private short nBits; // # of bits/code
+
+        @SuppressWarnings("unused")
+        private short maxCode; // maximum code for nBits
+
+        private long nextData; // next bits of i/o
+
+        private long nextBits; // # of valid bits in nextData
+
+        private long nBitsMask; // LZWBaseState nBits 1 bits, right adjusted
+
+        private long restart; // restart count
+
+        private int bitsLeft; // available bits in raw data
+
+        private int currentRecognizedCode; // current recognized code
+
+        private int previousRecognizedCode; // previously recognized code
+
+        private int nextFreeEntry; // next free entry in dec_codetab
+
+        private int maxAvailableEntry; // max available entry
+
+        /**
+         * Decodes the LZW data of one strip or tile.
+         */
+        public void decompress(final byte[] inData, final int bytesToRead, final byte[] outData,
+                final int startingRow, final int rowsToDo, final int bytesToGeneratePerRow, final int predictor,
+                final int tileWidth, final int samplesPerPixel) throws IOException {
+            final int BITS_MIN = 9; // Start LZW with 9 bits
+            final int BITS_MAX = 12; // max of 12 bit strings for LZW
+            final int CODE_CLEAR = 256; // code to clear string table
+            final int CODE_EOI = 257; // end-of-information code
+            final int CODE_FIRST = 258; // first free code entry
+            // +1024 is for compatibility with old LZW files
+            final int CSIZE = (1 << BITS_MAX) + 1023;
+            int i;
+            short code;
+            int occ;
+            int inPosition = 0;
+            final int op0 = 0; // initial output position
+            int op;
+            int tp;
+            long residue;
+            byte t;
+            int bp;
+            long localNBits;
+            long localNextBits;
+            long localNextData;
+            long localNBitsMask;
+            int localCurrentRecognizedCode;
+            int localNextFreeEntry;
+            int localMaxAvailableEntry;
+            int localPreviousRecognizedCode;
+            int len;
+            if ( !haveLZWInit) {
+                haveLZWInit = true;
+                next = new int[CSIZE];
+                length = new short[CSIZE];
+                value = new byte[CSIZE];
+                firstChar = new byte[CSIZE];
+                code = 255;
+                do {
+                    value[code] = (byte) code;
+                    firstChar[code] = (byte) code;
+                    length[code] = 1;
+                    next[code] = -1;
+                } while (code-- > 0);
+            } // if (!haveLZWInit)
+            if ( (inData[0] == 0) && ( (inData[1] & 0x1) == 1)) {
+                // Check for old bit-reversed codes.
+                Preferences.debug("Old-style LZW codes\n", Preferences.DEBUG_FILEIO);
+                newLZW = false;
+                maxCode = ( (1 << BITS_MIN) - 1);
+            } else {
+                newLZW = true;
+                maxCode = ( (1 << BITS_MIN) - 2);
+            }
+            nBits = (short) BITS_MIN;
+            nextBits = 0L;
+            nextData = 0L;
+            restart = 0L;
+            nBitsMask = ( (1L << BITS_MIN) - 1);
+            bitsLeft = (bytesToRead << 3);
+            nextFreeEntry = CODE_FIRST;
+            // Zero entries that are not yet filled in. We do this to guard against bogus input data
+            // that causes us to index into undefined entries.
+            for (i = nextFreeEntry; i < CSIZE; i++) {
+                value[i] = (byte) 0;
+                firstChar[i] = (byte) 0;
+                length[i] = (short) 0;
+                next[i] = -1;
+            }
+            previousRecognizedCode = -1;
+            maxAvailableEntry = (int) (nBitsMask - 1);
+            op = op0;
+            if (newLZW) {
+                occ = bytesToGeneratePerRow * rowsToDo;
+                if (restart > 0) {
+                    // Restart interrupted output operation
+                    localCurrentRecognizedCode = currentRecognizedCode;
+                    residue = length[localCurrentRecognizedCode] - restart;
+                    if (residue > occ) {
+                        // Residue from previous decode is sufficient to satisfy the decode request.
+                        // Skip to the start of the decoded string, place decoded values in the output
+                        // buffer, and return.
+                        restart += occ;
                         do {
-                            outData[ --tp] = value[localCurrentRecognizedCode];
                             localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                        } while ( ( --occ > 0) && (localCurrentRecognizedCode >= 0));
-                    } // if (localCurrentRecognizedCode >= 0)
-                    return;
-                } // if (residue > occ)
-                  // residue satisfies only part of the decode request
-                op += residue;
-                occ -= residue;
-                tp = op;
-                do {
-                    --tp;
-                    t = value[localCurrentRecognizedCode];
-                    localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                    outData[tp] = t;
-                } while ( ( --residue > 0) && (localCurrentRecognizedCode >= 0));
-                restart = 0;
-            } // if (restart > 0)
-
-            bp = inPosition;
-            localNBits = nBits;
-            localNextData = nextData;
-            localNextBits = nextBits;
-            localNBitsMask = nBitsMask;
-            localPreviousRecognizedCode = previousRecognizedCode;
-            localNextFreeEntry = nextFreeEntry;
-            localMaxAvailableEntry = maxAvailableEntry;
-
-            while (occ > 0) {
-                if (bitsLeft < localNBits) {
-                    Preferences.debug("Starting row " + startingRow + " not terminated with EOI code\n",
-                            Preferences.DEBUG_FILEIO);
-                    code = CODE_EOI;
-                } else {
-                    localNextData = (localNextData << 8) | (0xffL & inData[bp++]);
-                    localNextBits += 8;
-                    if (localNextBits < localNBits) {
-                        localNextData = (localNextData << 8) | (0xffL & inData[bp++]);
-                        localNextBits += 8;
-                    }
-                    code = (short) ( (localNextData >> (localNextBits - localNBits)) & localNBitsMask);
-                    localNextBits -= localNBits;
-                    bitsLeft -= localNBits;
-                }
-                if (code == CODE_EOI) {
-                    break;
-                }
-                if (code == CODE_CLEAR) {
-                    localNextFreeEntry = CODE_FIRST;
-                    localNBits = BITS_MIN;
-                    localNBitsMask = (1L << BITS_MIN) - 1;
-                    localMaxAvailableEntry = (int) (localNBitsMask - 1);
+                        } while ( ( --residue > occ) && (localCurrentRecognizedCode >= 0));
+                        if (localCurrentRecognizedCode >= 0) {
+                            tp = op + occ;
+                            do {
+                                outData[ --tp] = value[localCurrentRecognizedCode];
+                                localCurrentRecognizedCode = next[localCurrentRecognizedCode];
+                            } while ( ( --occ > 0) && (localCurrentRecognizedCode >= 0));
+                        } // if (localCurrentRecognizedCode >= 0)
+                        return;
+                    } // if (residue > occ)
+                      // residue satisfies only part of the decode request
+                    op += residue;
+                    occ -= residue;
+                    tp = op;
+                    do {
+                        --tp;
+                        t = value[localCurrentRecognizedCode];
+                        localCurrentRecognizedCode = next[localCurrentRecognizedCode];
+                        outData[tp] = t;
+                    } while ( ( --residue > 0) && (localCurrentRecognizedCode >= 0));
+                    restart = 0;
+                } // if (restart > 0)
+
+                bp = inPosition;
+                localNBits = nBits;
+                localNextData = nextData;
+                localNextBits = nextBits;
+                localNBitsMask = nBitsMask;
+                localPreviousRecognizedCode = previousRecognizedCode;
+                localNextFreeEntry = nextFreeEntry;
+                localMaxAvailableEntry = maxAvailableEntry;
+
+                while (occ > 0) {
                     if (bitsLeft < localNBits) {
                         Preferences.debug("Starting row " + startingRow + " not terminated with EOI code\n",
                                 Preferences.DEBUG_FILEIO);
@@ -2415,169 +2443,169 @@ public class FileTiff extends FileBase {
                     if (code == CODE_EOI) {
                         break;
                     }
-                    outData[op++] = (byte) code;
-                    occ--;
-                    localPreviousRecognizedCode = code;
-                    continue;
-                } // if (code == CODE_CLEAR)
-                localCurrentRecognizedCode = code;
-
-                // Add new entry to the code table
-                if ( (localNextFreeEntry < 0) || (localNextFreeEntry >= CSIZE)) {
-                    throw new IOException("Corrupted LZW table at starting row = " + startingRow);
-                }
-
-                next[localNextFreeEntry] = localPreviousRecognizedCode;
-                if ( (next[localNextFreeEntry] < 0) || (next[localNextFreeEntry] >= CSIZE)) {
-                    throw new IOException("Corrupted LZW table at starting row = " + startingRow);
-                }
-                firstChar[localNextFreeEntry] = firstChar[next[localNextFreeEntry]];
-                length[localNextFreeEntry] = (short) (length[next[localNextFreeEntry]] + 1);
-                if (localCurrentRecognizedCode < localNextFreeEntry) {
-                    value[localNextFreeEntry] = firstChar[localCurrentRecognizedCode];
-                } else {
-                    value[localNextFreeEntry] = firstChar[localNextFreeEntry];
-                }
-                if ( ++localNextFreeEntry > localMaxAvailableEntry) {
-                    if ( ++localNBits > BITS_MAX) {
-                        // should not happen
-                        localNBits = BITS_MAX;
-                    }
-                    localNBitsMask = (1L << localNBits) - 1;
-                    localMaxAvailableEntry = (int) (localNBitsMask - 1);
-                } // if (++localNextFreeEntry > localMaxAvailableEntry)
-                localPreviousRecognizedCode = localCurrentRecognizedCode;
-                if (code >= 256) {
-                    // Code maps to a string, copy string
-                    // value to output (written in reverse).
-                    if (length[localCurrentRecognizedCode] == 0) {
-                        throw new IOException(
-                                "Wrong length of decoded string Data probably corrupted at starting row = "
-                                        + startingRow);
-                    }
-                    if (length[localCurrentRecognizedCode] > occ) {
-                        // String is too long for decode buffer, locate portion that will fit,
-                        // copy to the decode buffer, and setup restart logic for the next
-                        // decoding call.
-                        currentRecognizedCode = localCurrentRecognizedCode;
-                        do {
-                            localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                        } while ( (localCurrentRecognizedCode >= 0) && (length[localCurrentRecognizedCode] > occ));
-                        if (localCurrentRecognizedCode >= 0) {
-                            restart = occ;
-                            tp = op + occ;
+                    if (code == CODE_CLEAR) {
+                        localNextFreeEntry = CODE_FIRST;
+                        localNBits = BITS_MIN;
+                        localNBitsMask = (1L << BITS_MIN) - 1;
+                        localMaxAvailableEntry = (int) (localNBitsMask - 1);
+                        if (bitsLeft < localNBits) {
+                            Preferences.debug("Starting row " + startingRow + " not terminated with EOI code\n",
+                                    Preferences.DEBUG_FILEIO);
+                            code = CODE_EOI;
+                        } else {
+                            localNextData = (localNextData << 8) | (0xffL & inData[bp++]);
+                            localNextBits += 8;
+                            if (localNextBits < localNBits) {
+                                localNextData = (localNextData << 8) | (0xffL & inData[bp++]);
+                                localNextBits += 8;
+                            }
+                            code = (short) ( (localNextData >> (localNextBits - localNBits)) & localNBitsMask);
+                            localNextBits -= localNBits;
+                            bitsLeft -= localNBits;
+                        }
+                        if (code == CODE_EOI) {
+                            break;
+                        }
+                        outData[op++] = (byte) code;
+                        occ--;
+                        localPreviousRecognizedCode = code;
+                        continue;
+                    } // if (code == CODE_CLEAR)
+                    localCurrentRecognizedCode = code;
+
+                    // Add new entry to the code table
+                    if ( (localNextFreeEntry < 0) || (localNextFreeEntry >= CSIZE)) {
+                        throw new IOException("Corrupted LZW table at starting row = " + startingRow);
+                    }
+
+                    next[localNextFreeEntry] = localPreviousRecognizedCode;
+                    if ( (next[localNextFreeEntry] < 0) || (next[localNextFreeEntry] >= CSIZE)) {
+                        throw new IOException("Corrupted LZW table at starting row = " + startingRow);
+                    }
+                    firstChar[localNextFreeEntry] = firstChar[next[localNextFreeEntry]];
+                    length[localNextFreeEntry] = (short) (length[next[localNextFreeEntry]] + 1);
+                    if (localCurrentRecognizedCode < localNextFreeEntry) {
+                        value[localNextFreeEntry] = firstChar[localCurrentRecognizedCode];
+                    } else {
+                        value[localNextFreeEntry] = firstChar[localNextFreeEntry];
+                    }
+                    if ( ++localNextFreeEntry > localMaxAvailableEntry) {
+                        if ( ++localNBits > BITS_MAX) {
+                            // should not happen
+                            localNBits = BITS_MAX;
+                        }
+                        localNBitsMask = (1L << localNBits) - 1;
+                        localMaxAvailableEntry = (int) (localNBitsMask - 1);
+                    } // if (++localNextFreeEntry > localMaxAvailableEntry)
+                    localPreviousRecognizedCode = localCurrentRecognizedCode;
+                    if (code >= 256) {
+                        // Code maps to a string, copy string
+                        // value to output (written in reverse).
+                        if (length[localCurrentRecognizedCode] == 0) {
+                            throw new IOException(
+                                    "Wrong length of decoded string Data probably corrupted at starting row = "
+                                            + startingRow);
+                        }
+                        if (length[localCurrentRecognizedCode] > occ) {
+                            // String is too long for decode buffer, locate portion that will fit,
+                            // copy to the decode buffer, and setup restart logic for the next
+                            // decoding call.
+                            currentRecognizedCode = localCurrentRecognizedCode;
                             do {
-                                outData[ --tp] = value[localCurrentRecognizedCode];
                                 localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                            } while ( ( --occ > 0) && (localCurrentRecognizedCode >= 0));
+                            } while ( (localCurrentRecognizedCode >= 0) && (length[localCurrentRecognizedCode] > occ));
                             if (localCurrentRecognizedCode >= 0) {
-                                throw new IOException("Bogus encoding, loop in the code table, starting row = "
-                                        + startingRow);
+                                restart = occ;
+                                tp = op + occ;
+                                do {
+                                    outData[ --tp] = value[localCurrentRecognizedCode];
+                                    localCurrentRecognizedCode = next[localCurrentRecognizedCode];
+                                } while ( ( --occ > 0) && (localCurrentRecognizedCode >= 0));
+                                if (localCurrentRecognizedCode >= 0) {
+                                    throw new IOException("Bogus encoding, loop in the code table, starting row = "
+                                            + startingRow);
+                                } // if (localCurrentRecognizedCode >= 0)
                             } // if (localCurrentRecognizedCode >= 0)
-                        } // if (localCurrentRecognizedCode >= 0)
-                        break; // break out of while (occ > 0)
-                    } // if (length[localCurrentRecognizedCode] > occ)
-                    len = length[localCurrentRecognizedCode];
-                    tp = op + len;
-                    do {
-                        --tp;
-                        t = value[localCurrentRecognizedCode];
-                        localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                        outData[tp] = t;
-                    } while ( (localCurrentRecognizedCode >= 0) && (tp > op));
-                    if (localCurrentRecognizedCode >= 0) {
-                        throw new IOException("Bogus encoding, loop in the code table, starting row = " + startingRow);
-                    }
-                    if (occ < len) {
-                        throw new IOException("occ < len, starting row = " + startingRow);
-                    }
-                    op += len;
-                    occ -= len;
-                } // if (code >= 256)
-                else {
-                    outData[op++] = (byte) code;
-                    occ--;
+                            break; // break out of while (occ > 0)
+                        } // if (length[localCurrentRecognizedCode] > occ)
+                        len = length[localCurrentRecognizedCode];
+                        tp = op + len;
+                        do {
+                            --tp;
+                            t = value[localCurrentRecognizedCode];
+                            localCurrentRecognizedCode = next[localCurrentRecognizedCode];
+                            outData[tp] = t;
+                        } while ( (localCurrentRecognizedCode >= 0) && (tp > op));
+                        if (localCurrentRecognizedCode >= 0) {
+                            throw new IOException("Bogus encoding, loop in the code table, starting row = "
+                                    + startingRow);
+                        }
+                        if (occ < len) {
+                            throw new IOException("occ < len, starting row = " + startingRow);
+                        }
+                        op += len;
+                        occ -= len;
+                    } // if (code >= 256)
+                    else {
+                        outData[op++] = (byte) code;
+                        occ--;
+                    }
+                } // while (occ > 0)
+                inPosition = bp;
+                nBits = (short) localNBits;
+                nextData = localNextData;
+                nextBits = localNextBits;
+                nBitsMask = localNBitsMask;
+                previousRecognizedCode = localPreviousRecognizedCode;
+                nextFreeEntry = localNextFreeEntry;
+                maxAvailableEntry = localMaxAvailableEntry;
+                if (occ > 0) {
+                    throw new IOException("Not enough data at starting row = " + startingRow + " short by " + occ
+                            + " bytes");
                 }
-            } // while (occ > 0)
-            inPosition = bp;
-            nBits = (short) localNBits;
-            nextData = localNextData;
-            nextBits = localNextBits;
-            nBitsMask = localNBitsMask;
-            previousRecognizedCode = localPreviousRecognizedCode;
-            nextFreeEntry = localNextFreeEntry;
-            maxAvailableEntry = localMaxAvailableEntry;
-            if (occ > 0) {
-                throw new IOException("Not enough data at starting row = " + startingRow + " short by " + occ
-                        + " bytes");
-            }
-        } // if (newLZW)
-        else { // oldLZW
-            occ = bytesToGeneratePerRow * rowsToDo;
-            if (restart > 0) {
-                // Restart interrupted output operation
-                localCurrentRecognizedCode = currentRecognizedCode;
-                residue = length[localCurrentRecognizedCode] - restart;
-                if (residue > occ) {
-                    // Residue from previous decode is sufficient to satisfy the decode request.
-                    // Skip to the start of the decoded string, place decoded values in the output
-                    // buffer, and return.
-                    restart += occ;
-                    do {
-                        localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                    } while ( --residue > occ);
-                    tp = op + occ;
+            } // if (newLZW)
+            else { // oldLZW
+                occ = bytesToGeneratePerRow * rowsToDo;
+                if (restart > 0) {
+                    // Restart interrupted output operation
+                    localCurrentRecognizedCode = currentRecognizedCode;
+                    residue = length[localCurrentRecognizedCode] - restart;
+                    if (residue > occ) {
+                        // Residue from previous decode is sufficient to satisfy the decode request.
+                        // Skip to the start of the decoded string, place decoded values in the output
+                        // buffer, and return.
+                        restart += occ;
+                        do {
+                            localCurrentRecognizedCode = next[localCurrentRecognizedCode];
+                        } while ( --residue > occ);
+                        tp = op + occ;
+                        do {
+                            outData[ --tp] = value[localCurrentRecognizedCode];
+                            localCurrentRecognizedCode = next[localCurrentRecognizedCode];
+                        } while ( --occ > 0);
+                        return;
+                    } // if (residue > occ)
+                      // Residue satisfies only part of the decode request.
+                    op += residue;
+                    occ -= residue;
+                    tp = op;
                     do {
                         outData[ --tp] = value[localCurrentRecognizedCode];
                         localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                    } while ( --occ > 0);
-                    return;
-                } // if (residue > occ)
-                  // Residue satisfies only part of the decode request.
-                op += residue;
-                occ -= residue;
-                tp = op;
-                do {
-                    outData[ --tp] = value[localCurrentRecognizedCode];
-                    localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                } while ( --residue > 0);
-                restart = 0;
-            } // if (restart > 0)
-
-            bp = inPosition;
-            localNBits = nBits;
-            localNextData = nextData;
-            localNextBits = nextBits;
-            localNBitsMask = nBitsMask;
-            localPreviousRecognizedCode = previousRecognizedCode;
-            localNextFreeEntry = nextFreeEntry;
-            localMaxAvailableEntry = maxAvailableEntry;
-
-            while (occ > 0) {
-                if (bitsLeft < localNBits) {
-                    Preferences.debug("Starting row " + startingRow + " not terminated with EOI code\n",
-                            Preferences.DEBUG_FILEIO);
-                    code = CODE_EOI;
-                } else {
-                    localNextData |= ( (0xffL & inData[bp++]) << localNextBits);
-                    localNextBits += 8;
-                    if (localNextBits < localNBits) {
-                        localNextData |= ( (0xffL & inData[bp++]) << localNextBits);
-                        localNextBits += 8;
-                    }
-                    code = (short) (localNextData & localNBitsMask);
-                    localNextData >>= localNBits;
-                    localNextBits -= localNBits;
-                    bitsLeft -= localNBits;
-                }
-                if (code == CODE_EOI) {
-                    break;
-                }
-                if (code == CODE_CLEAR) {
-                    localNextFreeEntry = CODE_FIRST;
-                    localNBits = BITS_MIN;
-                    localNBitsMask = (1L << BITS_MIN) - 1;
-                    localMaxAvailableEntry = (int) localNBitsMask;
+                    } while ( --residue > 0);
+                    restart = 0;
+                } // if (restart > 0)
+
+                bp = inPosition;
+                localNBits = nBits;
+                localNextData = nextData;
+                localNextBits = nextBits;
+                localNBitsMask = nBitsMask;
+                localPreviousRecognizedCode = previousRecognizedCode;
+                localNextFreeEntry = nextFreeEntry;
+                localMaxAvailableEntry = maxAvailableEntry;
+
+                while (occ > 0) {
                     if (bitsLeft < localNBits) {
                         Preferences.debug("Starting row " + startingRow + " not terminated with EOI code\n",
                                 Preferences.DEBUG_FILEIO);
@@ -2597,103 +2625,130 @@ public class FileTiff extends FileBase {
                     if (code == CODE_EOI) {
                         break;
                     }
-                    outData[op++] = (byte) code;
-                    occ--;
-                    localPreviousRecognizedCode = code;
-                    continue;
-                } // if (code == CODE_CLEAR)
-                localCurrentRecognizedCode = code;
-
-                // Add the new entry to the code table
-                if ( (localNextFreeEntry < 0) || (localNextFreeEntry >= CSIZE)) {
-                    throw new IOException("Corrupted LZW table at starting row = " + startingRow);
-                }
-                next[localNextFreeEntry] = localPreviousRecognizedCode;
-                if ( (next[localNextFreeEntry] < 0) || (next[localNextFreeEntry] >= CSIZE)) {
-                    throw new IOException("Corrupted LZW table at starting row = " + startingRow);
-                }
-                firstChar[localNextFreeEntry] = firstChar[next[localNextFreeEntry]];
-                length[localNextFreeEntry] = (short) (length[next[localNextFreeEntry]] + 1);
-                if (localCurrentRecognizedCode < localNextFreeEntry) {
-                    value[localNextFreeEntry] = firstChar[localCurrentRecognizedCode];
-                } else {
-                    value[localNextFreeEntry] = firstChar[localNextFreeEntry];
-                }
-                if ( ++localNextFreeEntry > localMaxAvailableEntry) {
-                    if ( ++localNBits > BITS_MAX) {
-                        // should not happen
-                        localNBits = BITS_MAX;
-                    }
-                    localNBitsMask = (1L << localNBits) - 1;
-                    localMaxAvailableEntry = (int) localNBitsMask;
-                } // if (++localNextFreeEntry > localMaxAvailableEntry)
-                localPreviousRecognizedCode = localCurrentRecognizedCode;
-                if (code >= 256) {
-                    // Code maps to a string, copy string value to output (written in reverse).
-                    if (length[localCurrentRecognizedCode] == 0) {
-                        throw new IOException(
-                                "Wrong length of decoded string: Data probably corrupted, starting row = "
-                                        + startingRow);
-                    }
-                    if (length[localCurrentRecognizedCode] > occ) {
-                        // String is too long for decode buffer, locate portion that will fit, copy to
-                        // the decode buffer, and setup restart logic for the next decoding call.
-                        currentRecognizedCode = localCurrentRecognizedCode;
-                        do {
-                            localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                        } while (length[localCurrentRecognizedCode] > occ);
-                        restart = occ;
-                        tp = op + occ;
+                    if (code == CODE_CLEAR) {
+                        localNextFreeEntry = CODE_FIRST;
+                        localNBits = BITS_MIN;
+                        localNBitsMask = (1L << BITS_MIN) - 1;
+                        localMaxAvailableEntry = (int) localNBitsMask;
+                        if (bitsLeft < localNBits) {
+                            Preferences.debug("Starting row " + startingRow + " not terminated with EOI code\n",
+                                    Preferences.DEBUG_FILEIO);
+                            code = CODE_EOI;
+                        } else {
+                            localNextData |= ( (0xffL & inData[bp++]) << localNextBits);
+                            localNextBits += 8;
+                            if (localNextBits < localNBits) {
+                                localNextData |= ( (0xffL & inData[bp++]) << localNextBits);
+                                localNextBits += 8;
+                            }
+                            code = (short) (localNextData & localNBitsMask);
+                            localNextData >>= localNBits;
+                            localNextBits -= localNBits;
+                            bitsLeft -= localNBits;
+                        }
+                        if (code == CODE_EOI) {
+                            break;
+                        }
+                        outData[op++] = (byte) code;
+                        occ--;
+                        localPreviousRecognizedCode = code;
+                        continue;
+                    } // if (code == CODE_CLEAR)
+                    localCurrentRecognizedCode = code;
+
+                    // Add the new entry to the code table
+                    if ( (localNextFreeEntry < 0) || (localNextFreeEntry >= CSIZE)) {
+                        throw new IOException("Corrupted LZW table at starting row = " + startingRow);
+                    }
+                    next[localNextFreeEntry] = localPreviousRecognizedCode;
+                    if ( (next[localNextFreeEntry] < 0) || (next[localNextFreeEntry] >= CSIZE)) {
+                        throw new IOException("Corrupted LZW table at starting row = " + startingRow);
+                    }
+                    firstChar[localNextFreeEntry] = firstChar[next[localNextFreeEntry]];
+                    length[localNextFreeEntry] = (short) (length[next[localNextFreeEntry]] + 1);
+                    if (localCurrentRecognizedCode < localNextFreeEntry) {
+                        value[localNextFreeEntry] = firstChar[localCurrentRecognizedCode];
+                    } else {
+                        value[localNextFreeEntry] = firstChar[localNextFreeEntry];
+                    }
+                    if ( ++localNextFreeEntry > localMaxAvailableEntry) {
+                        if ( ++localNBits > BITS_MAX) {
+                            // should not happen
+                            localNBits = BITS_MAX;
+                        }
+                        localNBitsMask = (1L << localNBits) - 1;
+                        localMaxAvailableEntry = (int) localNBitsMask;
+                    } // if (++localNextFreeEntry > localMaxAvailableEntry)
+                    localPreviousRecognizedCode = localCurrentRecognizedCode;
+                    if (code >= 256) {
+                        // Code maps to a string, copy string value to output (written in reverse).
+                        if (length[localCurrentRecognizedCode] == 0) {
+                            throw new IOException(
+                                    "Wrong length of decoded string: Data probably corrupted, starting row = "
+                                            + startingRow);
+                        }
+                        if (length[localCurrentRecognizedCode] > occ) {
+                            // String is too long for decode buffer, locate portion that will fit, copy to
+                            // the decode buffer, and setup restart logic for the next decoding call.
+                            currentRecognizedCode = localCurrentRecognizedCode;
+                            do {
+                                localCurrentRecognizedCode = next[localCurrentRecognizedCode];
+                            } while (length[localCurrentRecognizedCode] > occ);
+                            restart = occ;
+                            tp = op + occ;
+                            do {
+                                outData[ --tp] = value[localCurrentRecognizedCode];
+                                localCurrentRecognizedCode = next[localCurrentRecognizedCode];
+                            } while ( --occ > 0);
+                            break;
+                        } // if (length[localCurrentRecognizedCode] > occ)
+                        if (occ < length[localCurrentRecognizedCode]) {
+                            throw new IOException("occ < length[localCurrentRecognizedCode], starting row = "
+                                    + startingRow);
+                        }
+                        op += length[localCurrentRecognizedCode];
+                        occ -= length[localCurrentRecognizedCode];
+                        tp = op;
                         do {
                             outData[ --tp] = value[localCurrentRecognizedCode];
-                            localCurrentRecognizedCode = next[localCurrentRecognizedCode];
-                        } while ( --occ > 0);
-                        break;
-                    } // if (length[localCurrentRecognizedCode] > occ)
-                    if (occ < length[localCurrentRecognizedCode]) {
-                        throw new IOException("occ < length[localCurrentRecognizedCode], starting row = " + startingRow);
-                    }
-                    op += length[localCurrentRecognizedCode];
-                    occ -= length[localCurrentRecognizedCode];
-                    tp = op;
-                    do {
-                        outData[ --tp] = value[localCurrentRecognizedCode];
-                    } while ( (localCurrentRecognizedCode = next[localCurrentRecognizedCode]) != -1);
-                } // if (code >= 256)
-                else {
-                    outData[op++] = (byte) code;
-                    occ--;
+                        } while ( (localCurrentRecognizedCode = next[localCurrentRecognizedCode]) != -1);
+                    } // if (code >= 256)
+                    else {
+                        outData[op++] = (byte) code;
+                        occ--;
+                    }
+                } // while (occ > 0)
+                inPosition = bp;
+                nBits = (short) localNBits;
+                nextData = localNextData;
+                nextBits = localNextBits;
+                nBitsMask = localNBitsMask;
+                previousRecognizedCode = localPreviousRecognizedCode;
+                nextFreeEntry = localNextFreeEntry;
+                maxAvailableEntry = localMaxAvailableEntry;
+                if (occ > 0) {
+                    throw new IOException("Not enough data at starting row = " + startingRow + " short by " + occ
+                            + " bytes");
                 }
-            } // while (occ > 0)
-            inPosition = bp;
-            nBits = (short) localNBits;
-            nextData = localNextData;
-            nextBits = localNextBits;
-            nBitsMask = localNBitsMask;
-            previousRecognizedCode = localPreviousRecognizedCode;
-            nextFreeEntry = localNextFreeEntry;
-            maxAvailableEntry = localMaxAvailableEntry;
-            if (occ > 0) {
-                throw new IOException("Not enough data at starting row = " + startingRow + " short by " + occ
-                        + " bytes");
-            }
-        } // else oldLZW
+            } // else oldLZW
 
-        // Horizontal Differencing Predictor
-        if (predictor == 2) {
+            // Horizontal Differencing Predictor
+            if (predictor == 2) {
 
-            int count;
+                int count;
 
-            for (int j = 0; j < rowsToDo; j++) {
+                for (int j = 0; j < rowsToDo; j++) {
 
-                count = samplesPerPixel * ( (j * tileWidth) + 1);
+                    count = samplesPerPixel * ( (j * tileWidth) + 1);
 
-                for (i = samplesPerPixel; i < (tileWidth * samplesPerPixel); i++) {
+                    for (i = samplesPerPixel; i < (tileWidth * samplesPerPixel); i++) {
 
-                    outData[count] += outData[count - samplesPerPixel];
-                    count++;
+                        outData[count] += outData[count - samplesPerPixel];
+                        count++;
+                    }
                 }
             }
+    
         }
     }
 
@@ -16005,6 +16060,237 @@ public class FileTiff extends FileBase {
         }
     }
 
+    /**
+     * Makes sure that a tile of a slice has been decoded ahead when it is LZW or zlib compressed and several
+     * processors are available. When the tile is not in the batch decoded last, the next batch of tiles is read with
+     * as few reads as possible and decoded on the MIPAV thread pool. Compressed strips are read as tiles as wide as
+     * the image, so a batch holds the tiles or strips of one slice, or the strips of the following slices when every
+     * slice is a single strip. Tiles that can not be decoded ahead are left to the decoding in readTileBuffer.
+     * 
+     * @param slice image slice
+     * @param tile index of the tile in the slice
+     * 
+     * @throws IOException if the decoding is interrupted
+     */
+    private void decodeTilesAhead(final int slice, final int tile) throws IOException {
+        currentTile = (slice * tilesPerSlice) + tile;
+
+        if ( (decodedTiles != null) && (decodedOffsets == tileOffsets) && (currentTile >= decodedFirst)
+                && (currentTile < decodedBatchEnd)) {
+            return;
+        }
+
+        decodedTiles = null;
+        compressedTiles = null;
+        decodedTileRows = null;
+
+        final int last = (tilesPerSlice > 1) ? ( (slice + 1) * tilesPerSlice) : Math.min(imageSlice,
+                tileOffsets.length);
+
+        if ( ( !lzwCompression && !zlibCompression) || ( (last - currentTile) < 2) || (bitsPerSample == null)
+                || !Preferences.isMultiThreadingEnabled() || (ThreadUtil.getAvailableCores() < 2)) {
+            return;
+        }
+
+        decodedTileBytesPerRow = ( (tileWidth * (chunky ? samplesPerPixel : 1) * bitsPerSample[0]) + 7) / 8;
+
+        // size the batch to keep about 64 MB of decoded tiles
+        final int nThreads = ThreadUtil.getAvailableCores();
+        final long tileBytes = Math.max(1L, (long) decodedTileBytesPerRow * tileLength);
+        final int batchSize = (int) Math.max(nThreads, Math.min(8L * nThreads, (64L << 20) / tileBytes));
+        final int first = currentTile;
+        final int end = Math.min(last, first + batchSize);
+
+        decodedTiles = new byte[end - first][];
+        compressedTiles = new byte[end - first][];
+        decodedTileRows = new int[end - first];
+        decodedOffsets = tileOffsets;
+        decodedFirst = first;
+        decodedBatchEnd = end;
+
+        try {
+
+            // read runs of adjacent tiles with one read each
+            for (int t = first; t < end;) {
+                final long start = tileOffsets[t];
+                long runEnd = start + tileByteCounts[t];
+                int runLast = t;
+
+                while ( (runLast + 1 < end) && (tileOffsets[runLast + 1] == runEnd)
+                        && ( (runEnd - start) < (64L << 20))) {
+                    runLast++;
+                    runEnd += tileByteCounts[runLast];
+                }
+
+                final byte[] run = new byte[(int) (runEnd - start)];
+                raFile.seek(start);
+                raFile.readFully(run);
+
+                for (int pos = 0; t <= runLast; t++) {
+                    final int count = tileByteCounts[t];
+                    compressedTiles[t - first] = (t == runLast && pos == 0) ? run : Arrays.copyOfRange(run, pos, pos
+                            + count);
+                    pos += count;
+                }
+            }
+        } catch (final IOException e) {
+
+            // leave the whole batch to readTileBuffer
+            Arrays.fill(compressedTiles, null);
+
+            return;
+        }
+
+        final FutureTask<?>[] tasks = new FutureTask<?>[end - first];
+        final int tilesPerPlane = chunky ? tilesPerSlice : (tilesPerSlice / samplesPerPixel);
+
+        for (int t = first; t < end; t++) {
+            final int index = t - first;
+            final int rows = Math.min(tileLength, yDim - ( (t % tilesPerPlane) / tilesAcross) * tileLength);
+
+            decodedTileRows[index] = rows;
+            tasks[index] = new FutureTask<Object>(new Runnable() {
+                public void run() {
+
+                    try {
+                        decodedTiles[index] = decodeTile(compressedTiles[index], rows);
+                    } catch (final Throwable e) {
+                        // readTileBuffer decodes the tile again and reports the error
+                    }
+                }
+            }, null);
+            ThreadUtil.mipavThreadPool.execute(tasks[index]);
+        }
+
+        // tasks that no pool thread has started yet are run here, so a busy pool can not stall the read
+        for (final FutureTask<?> task : tasks) {
+            task.run();
+
+            try {
+                task.get();
+            } catch (final InterruptedException e) {
+                throw new IOException("Interrupted while decoding tiles");
+            } catch (final ExecutionException e) {
+                // not thrown, decodeTile errors are caught in the task
+            }
+        }
+    }
+
+    /**
+     * Decodes one LZW or zlib compressed tile. LZW tiles are decoded the way LZWDecompresser decodes them, zlib tiles
+     * are inflated in full.
+     * 
+     * @param compressed the compressed tile
+     * @param rows number of rows of the tile inside the image
+     * 
+     * @return the decoded tile
+     * 
+     * @throws IOException if an LZW tile holds too little data
+     * @throws DataFormatException if a zlib tile is corrupt
+     */
+    private byte[] decodeTile(final byte[] compressed, final int rows) throws IOException, DataFormatException {
+
+        if (lzwCompression) {
+            final byte[] decoded = new byte[decodedTileBytesPerRow * rows];
+            new LZWDecoder().decompress(compressed, compressed.length, decoded, 0, rows, decodedTileBytesPerRow,
+                    predictor, tileWidth, samplesPerPixel);
+
+            return decoded;
+        }
+
+        final Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(compressed);
+
+            byte[] decoded = new byte[Math.max(1024, decodedTileBytesPerRow * tileLength)];
+            int n = 0;
+
+            while ( !inflater.finished()) {
+
+                if (n == decoded.length) {
+                    decoded = Arrays.copyOf(decoded, 2 * decoded.length);
+                }
+
+                final int count = inflater.inflate(decoded, n, decoded.length - n);
+
+                if ( (count == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                n += count;
+            }
+
+            return Arrays.copyOf(decoded, n);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Copies the tile that readTileBuffer is working on from the tiles decoded ahead.
+     * 
+     * @param outData buffer for the decoded tile
+     * @param rows number of rows that the LZW decoding being replaced decodes, or -1 for zlib
+     * @param bytesPerRow bytes per row of the LZW decoding being replaced
+     * 
+     * @return the number of bytes copied, or -1 if the tile was not decoded ahead the same way
+     */
+    private int copyDecodedTile(final byte[] outData, final int rows, final int bytesPerRow) {
+
+        final int index = currentTile - decodedFirst;
+
+        if ( (decodedTiles == null) || (index < 0) || (index >= decodedTiles.length) || (decodedTiles[index] == null)) {
+            return -1;
+        }
+
+        if ( (rows >= 0) && ( (rows != decodedTileRows[index]) || (bytesPerRow != decodedTileBytesPerRow))) {
+            return -1;
+        }
+
+        final byte[] tile = decodedTiles[index];
+        final int n = Math.min(tile.length, outData.length);
+        System.arraycopy(tile, 0, outData, 0, n);
+
+        return n;
+    }
+
+    /**
+     * Inflates the zlib compressed tile that readTileBuffer is working on, taking it from the tiles decoded ahead if
+     * it is there.
+     * 
+     * @param decomp buffer for the decoded tile
+     * 
+     * @return the number of bytes inflated
+     * 
+     * @throws DataFormatException if the tile is corrupt
+     */
+    private int inflateTile(final byte[] decomp) throws DataFormatException {
+        final int n = copyDecodedTile(decomp, -1, 0);
+
+        return (n >= 0) ? n : zlibDecompresser.inflate(decomp);
+    }
+
+    /**
+     * Reads the compressed bytes of the tile that readTileBuffer is working on into byteBuffer. The file is only read
+     * when the tile was not read with its batch.
+     * 
+     * @param nBytes number of compressed bytes
+     * 
+     * @throws IOException if the file can not be read
+     */
+    private void readTileBytes(final int nBytes) throws IOException {
+
+        final int index = currentTile - decodedFirst;
+
+        if ( (compressedTiles != null) && (index >= 0) && (index < compressedTiles.length)
+                && (compressedTiles[index] != null) && (compressedTiles[index].length == nBytes)) {
+            System.arraycopy(compressedTiles[index], 0, byteBuffer, 0, nBytes);
+        } else {
+            raFile.read(byteBuffer, 0, nBytes);
+        }
+    }
+
     /**
      * Reads a slice of data at a time and stores the results in the buffer.
      * 
@@ -16079,6 +16365,7 @@ public class FileTiff extends FileBase {
                 // System.err.println("___________________________________________________");
                 // System.err.println("A = " + a + ", seeking to " + tileOffsets[slice * tilesPerSlice + a]);
                 // System.err.println("Starting with x = " + x + " and y = " + y);
+                decodeTilesAhead(slice, a);
                 raFile.seek(tileOffsets[ (slice * tilesPerSlice) + a]);
                 nBytes = tileByteCounts[ (slice * tilesPerSlice) + a];
 
@@ -16097,7 +16384,7 @@ public class FileTiff extends FileBase {
                                 byteBuffer = new byte[tileMaxByteCount];
                             }
 
-                            raFile.read(byteBuffer, 0, nBytes);
+                            readTileBytes(nBytes);
                             if (zlibCompression) {
                                 zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                             }
@@ -16134,7 +16421,7 @@ public class FileTiff extends FileBase {
                                 resultLength = modHuffmanDecompresser(decomp, data);
                             } else { // zlibCompression
                                 try {
-                                    resultLength = zlibDecompresser.inflate(decomp);
+                                    resultLength = inflateTile(decomp);
                                     resultLength = decomp.length;
                                     if (fileInfo.getPhotometric() == 0) {
                                         for (j = 0; j < resultLength; j++) {
@@ -16218,7 +16505,7 @@ public class FileTiff extends FileBase {
                                 }
                             }
 
-                            raFile.read(byteBuffer, 0, nBytes);
+                            readTileBytes(nBytes);
                             if (zlibCompression) {
                                 zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                             }
@@ -16239,7 +16526,7 @@ public class FileTiff extends FileBase {
                                     resultLength = decomp.length;
                                 } else { // zlibCompression
                                     try {
-                                        resultLength = zlibDecompresser.inflate(decomp);
+                                        resultLength = inflateTile(decomp);
                                     } catch (final DataFormatException e) {
                                         MipavUtil
                                                 .displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
@@ -16400,7 +16687,7 @@ public class FileTiff extends FileBase {
                                 }
                             }
 
-                            raFile.read(byteBuffer, 0, nBytes);
+                            readTileBytes(nBytes);
                             if (zlibCompression) {
                                 zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                             }
@@ -16436,7 +16723,7 @@ public class FileTiff extends FileBase {
                                     resultLength = ThunderScanDecompresser(decomp, byteBuffer, nBytes, rowsToDo);
                                 } else { // zlibCompression
                                     try {
-                                        resultLength = zlibDecompresser.inflate(decomp);
+                                        resultLength = inflateTile(decomp);
                                     } catch (final DataFormatException e) {
                                         MipavUtil
                                                 .displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
@@ -16607,7 +16894,7 @@ public class FileTiff extends FileBase {
                             }
                         }
 
-                        raFile.read(byteBuffer, 0, nBytes);
+                        readTileBytes(nBytes);
                         if (zlibCompression) {
                             zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                         }
@@ -16628,7 +16915,7 @@ public class FileTiff extends FileBase {
                                 resultLength = decomp.length;
                             } else if (zlibCompression) {
                                 try {
-                                    resultLength = zlibDecompresser.inflate(decomp);
+                                    resultLength = inflateTile(decomp);
                                 } catch (final DataFormatException e) {
                                     MipavUtil.displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
                                 }
@@ -16717,7 +17004,7 @@ public class FileTiff extends FileBase {
                             }
                         }
 
-                        raFile.read(byteBuffer, 0, nBytes);
+                        readTileBytes(nBytes);
                         if (zlibCompression) {
                             zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                         }
@@ -16738,7 +17025,7 @@ public class FileTiff extends FileBase {
                                 resultLength = decomp.length;
                             } else { // zlibCompression
                                 try {
-                                    resultLength = zlibDecompresser.inflate(decomp);
+                                    resultLength = inflateTile(decomp);
                                 } catch (final DataFormatException e) {
                                     MipavUtil.displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
                                 }
@@ -16823,7 +17110,7 @@ public class FileTiff extends FileBase {
                             }
                         }
 
-                        raFile.read(byteBuffer, 0, nBytes);
+                        readTileBytes(nBytes);
                         if (zlibCompression) {
                             zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                         }
@@ -16844,7 +17131,7 @@ public class FileTiff extends FileBase {
                                 resultLength = decomp.length;
                             } else { // zlibCompression
                                 try {
-                                    resultLength = zlibDecompresser.inflate(decomp);
+                                    resultLength = inflateTile(decomp);
                                 } catch (final DataFormatException e) {
                                     MipavUtil.displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
                                 }
@@ -16939,7 +17226,7 @@ public class FileTiff extends FileBase {
                             }
                         }
 
-                        raFile.read(byteBuffer, 0, nBytes);
+                        readTileBytes(nBytes);
                         if (zlibCompression) {
                             zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                         }
@@ -16960,7 +17247,7 @@ public class FileTiff extends FileBase {
                                 resultLength = decomp.length;
                             } else { // zlibCompression
                                 try {
-                                    resultLength = zlibDecompresser.inflate(decomp);
+                                    resultLength = inflateTile(decomp);
                                 } catch (final DataFormatException e) {
                                     MipavUtil.displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
                                 }
@@ -17059,7 +17346,7 @@ public class FileTiff extends FileBase {
                                 }
 
                                 // System.err.println("About to read " + nBytes + " bytes");
-                                raFile.read(byteBuffer, 0, nBytes);
+                                readTileBytes(nBytes);
                                 if (zlibCompression) {
                                     zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                                 }
@@ -17084,7 +17371,7 @@ public class FileTiff extends FileBase {
                                         resultLength = decomp.length;
                                     } else { // zlibCompression
                                         try {
-                                            resultLength = zlibDecompresser.inflate(decomp);
+                                            resultLength = inflateTile(decomp);
                                         } catch (final DataFormatException e) {
                                             MipavUtil
                                                     .displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
@@ -17139,7 +17426,7 @@ public class FileTiff extends FileBase {
                                 }
 
                                 // System.err.println("About to read " + nBytes + " bytes");
-                                raFile.read(byteBuffer, 0, nBytes);
+                                readTileBytes(nBytes);
                                 if (zlibCompression) {
                                     zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                                 }
@@ -17164,7 +17451,7 @@ public class FileTiff extends FileBase {
                                         resultLength = decomp.length;
                                     } else { // zlibCompression
                                         try {
-                                            resultLength = zlibDecompresser.inflate(decomp);
+                                            resultLength = inflateTile(decomp);
                                         } catch (final DataFormatException e) {
                                             MipavUtil
                                                     .displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
@@ -17554,7 +17841,7 @@ public class FileTiff extends FileBase {
                                 }
 
                                 // System.err.println("About to read " + nBytes + " bytes");
-                                raFile.read(byteBuffer, 0, nBytes);
+                                readTileBytes(nBytes);
                                 if (zlibCompression) {
                                     zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                                 }
@@ -17587,7 +17874,7 @@ public class FileTiff extends FileBase {
                                         resultLength = jpegDecompresser(decomp, data, rowsToDo);
                                     } else if (zlibCompression) {
                                         try {
-                                            resultLength = zlibDecompresser.inflate(decomp);
+                                            resultLength = inflateTile(decomp);
                                             // Horizontal Differencing Predictor
                                             if (predictor == 2) {
                                                 rowsToDo = Math.min(tileLength, yDim - y);
@@ -17722,7 +18009,7 @@ public class FileTiff extends FileBase {
                                 }
 
                                 // System.err.println("About to read " + nBytes + " bytes");
-                                raFile.read(byteBuffer, 0, nBytes);
+                                readTileBytes(nBytes);
                                 if (zlibCompression) {
                                     zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                                 }
@@ -17747,7 +18034,7 @@ public class FileTiff extends FileBase {
                                         resultLength = decomp.length;
                                     } else { // zlibCompression
                                         try {
-                                            resultLength = zlibDecompresser.inflate(decomp);
+                                            resultLength = inflateTile(decomp);
                                         } catch (final DataFormatException e) {
                                             MipavUtil
                                                     .displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
@@ -17928,7 +18215,7 @@ public class FileTiff extends FileBase {
                             }
 
                             // System.err.println("About to read " + nBytes + " bytes");
-                            raFile.read(byteBuffer, 0, nBytes);
+                            readTileBytes(nBytes);
                             if (zlibCompression) {
                                 zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                             }
@@ -17954,7 +18241,7 @@ public class FileTiff extends FileBase {
                                     resultLength = decomp.length;
                                 } else { // zlibCompression
                                     try {
-                                        resultLength = zlibDecompresser.inflate(decomp);
+                                        resultLength = inflateTile(decomp);
                                     } catch (final DataFormatException e) {
                                         MipavUtil
                                                 .displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
@@ -18102,7 +18389,7 @@ public class FileTiff extends FileBase {
                             }
 
                             // System.err.println("About to read " + nBytes + " bytes");
-                            raFile.read(byteBuffer, 0, nBytes);
+                            readTileBytes(nBytes);
                             if (zlibCompression) {
                                 zlibDecompresser.setInput(byteBuffer, 0, nBytes);
                             }
@@ -18127,7 +18414,7 @@ public class FileTiff extends FileBase {
                                     resultLength = decomp.length;
                                 } else { // zlibCompression
                                     try {
-                                        resultLength = zlibDecompresser.inflate(decomp);
+                                        resultLength = inflateTile(decomp);
                                     } catch (final DataFormatException e) {
                                         MipavUtil
                                                 .displayError("DataFormatException on zlibDecompresser.inflate(decomp)");
@@ -18413,6 +18700,18 @@ public class FileTiff extends FileBase {
         }
 
         decomp = null;
+
+        if ( (decodedTiles != null) && (decodedBatchEnd > ( (slice + 1) * tilesPerSlice))) {
+
+            // keep the strips decoded ahead for the following slices
+            for (int t = Math.max(decodedFirst, slice * tilesPerSlice); t < ( (slice + 1) * tilesPerSlice); t++) {
+                decodedTiles[t - decodedFirst] = null;
+                compressedTiles[t - decodedFirst] = null;
+            }
+        } else {
+            decodedTiles = null;
+            compressedTiles = null;
+        }
     }
 
     /**
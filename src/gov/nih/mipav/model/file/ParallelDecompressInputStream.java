@@ -0,0 +1,838 @@
+package gov.nih.mipav.model.file;
+
+
+import gov.nih.mipav.util.ThreadUtil;
+
+import gov.nih.mipav.view.Preferences;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+
+/**
+ * An input stream that decompresses a gzip or bzip2 file ahead of the reader, so that inflating the data overlaps with
+ * converting it into image values.
+ *
+ * <p>
+ * A file made of independently compressed pieces is decompressed on several threads of the MIPAV thread pool: block
+ * gzip files (BGZF, as written by BlockGZIPOutputStream, bgzip and samtools) are split into their gzip members, and
+ * bzip2 files made by concatenating bzip2 streams (pbzip2, lbzip2) are split into their streams. The pieces are
+ * returned in file order. Any other file is decompressed by a single producer thread that keeps a few chunks ahead of
+ * the reader. The start of the next bzip2 stream is only looked for a few megabytes ahead; when none is found there,
+ * the rest of the file is decoded in order by the producer thread, so a file of one large stream is not scanned before
+ * decoding starts.
+ * </p>
+ *
+ * <p>
+ * For bzip2 files the two magic bytes "BZ" must not have been read; the stream reads the whole file itself. Unlike
+ * CBZip2InputStream, this stream goes on with the next bzip2 stream of a concatenated file.
+ * </p>
+ */
+public class ParallelDecompressInputStream extends InputStream {
+
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** Compression types. */
+    public static final int GZIP = 0, BZIP2 = 1;
+
+    /** Size of the chunks handed from the producer thread to the reader. */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /** Number of chunks that the producer thread may run ahead of the reader. */
+    private static final int QUEUE_LENGTH = 4;
+
+    /** Length of the signature that starts a bzip2 stream: "BZh", the block size digit and the block magic. */
+    private static final int BZIP2_SIGNATURE_LENGTH = 10;
+
+    /**
+     * How far past the start of a bzip2 stream the start of the next one is looked for. The streams of pbzip2 and
+     * lbzip2 each hold one block of at most 900k, so their compressed length is well below this.
+     */
+    private static final int BZIP2_SEARCH_LENGTH = 4 << 20;
+
+    /** Marks the end of the data in the producer queue. */
+    private static final byte[] END_OF_DATA = new byte[0];
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    /** The compressed file. */
+    private final File file;
+
+    /** The compression type of the file. */
+    private final int type;
+
+    /** The compressed file, read with positional reads by the decompressing tasks. */
+    private FileChannel channel;
+
+    /** Length of the compressed file. */
+    private long fileLength;
+
+    /** Start of the next member or stream that has not been handed to a task yet, or -1 when there is none. */
+    private long nextOffset = -1;
+
+    /** Start of the bzip2 data left to the producer thread once the tasks are done, or -1 when there is none. */
+    private long sequentialOffset = -1;
+
+    /** Number of tasks that may be queued or running at once. */
+    private int window;
+
+    /** Decompressing tasks in file order. */
+    private final LinkedList<FutureTask<byte[]>> pending = new LinkedList<FutureTask<byte[]>>();
+
+    /** Chunks decompressed by the producer thread. Holds byte arrays, END_OF_DATA or the exception that stopped it. */
+    private ArrayBlockingQueue<Object> queue;
+
+    /** Thread decompressing a file that can not be split. */
+    private Thread producer;
+
+    /** The decompressed chunk being read, and the read position in it. */
+    private byte[] chunk = END_OF_DATA;
+
+    /** Read position in chunk. */
+    private int chunkPos = 0;
+
+    /** Set once the end of the data has been reached. */
+    private boolean atEnd = false;
+
+    /** Set by close(). */
+    private volatile boolean closed = false;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Opens a compressed file.
+     *
+     * @param   file  the compressed file
+     * @param   type  GZIP or BZIP2
+     *
+     * @throws  IOException  if the file can not be opened or does not start like a file of the given type
+     */
+    public ParallelDecompressInputStream(final File file, final int type) throws IOException {
+        this.file = file;
+        this.type = type;
+        channel = new RandomAccessFile(file, "r").getChannel();
+        fileLength = channel.size();
+
+        final int nThreads = ThreadUtil.getAvailableCores();
+        window = 2 * nThreads;
+
+        try {
+
+            if (type == GZIP) {
+
+                if ( (nThreads > 1) && (getBGZFMemberLength(0) > 0)) {
+                    nextOffset = 0;
+                }
+            } else if ( !isBzip2Stream(0)) {
+                throw new IOException("Not a bzip2 file");
+            } else if ( (nThreads > 1) && (findBzip2Stream(1, Math.min(fileLength, BZIP2_SEARCH_LENGTH)) > 0)) {
+                nextOffset = 0;
+            }
+
+            if (nextOffset < 0) {
+                startProducer(0);
+            }
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Opens a compressed file for reading. When multithreading is disabled in the preferences this gives the plain
+     * GZIPInputStream or CBZip2InputStream of the file, otherwise a ParallelDecompressInputStream.
+     *
+     * @param   file  the compressed file
+     * @param   type  GZIP or BZIP2
+     *
+     * @return  a stream of the decompressed data
+     *
+     * @throws  IOException  if the file can not be opened
+     */
+    public static InputStream open(final File file, final int type) throws IOException {
+
+        if (Preferences.isMultiThreadingEnabled()) {
+            return new ParallelDecompressInputStream(file, type);
+        }
+
+        return openSerial(file, type);
+    }
+
+    /**
+     * Opens the ordinary single threaded decompressing stream of a file.
+     *
+     * @param   file  the compressed file
+     * @param   type  GZIP or BZIP2
+     *
+     * @return  a stream of the decompressed data
+     *
+     * @throws  IOException  if the file can not be opened
+     */
+    private static InputStream openSerial(final File file, final int type) throws IOException {
+        final InputStream in = new BufferedInputStream(new FileInputStream(file), 65536);
+
+        if (type == GZIP) {
+            return new GZIPInputStream(in, 65536);
+        }
+
+        if ( (in.read() != 'B') || (in.read() != 'Z')) {
+            in.close();
+            throw new IOException("Not a bzip2 file");
+        }
+
+        return new CBZip2InputStream(in);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read() throws IOException {
+
+        if ( (chunkPos >= chunk.length) && !nextChunk()) {
+            return -1;
+        }
+
+        return chunk[chunkPos++] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read(final byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) {
+            return 0;
+        }
+
+        int total = 0;
+
+        while (len > 0) {
+
+            if (chunkPos >= chunk.length) {
+
+                // only block for the next chunk when nothing has been read yet
+                if ( ( (total > 0) && !isNextChunkReady()) || !nextChunk()) {
+                    break;
+                }
+            }
+
+            final int n = Math.min(len, chunk.length - chunkPos);
+            System.arraycopy(chunk, chunkPos, b, off, n);
+            chunkPos += n;
+            off += n;
+            len -= n;
+            total += n;
+        }
+
+        return (total == 0) ? -1 : total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int available() {
+        return chunk.length - chunkPos;
+    }
+
+    /**
+     * Stops the decompression and closes the file.
+     *
+     * @throws  IOException  if the file can not be closed
+     */
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        for (final FutureTask<byte[]> task : pending) {
+            task.cancel(false);
+        }
+
+        pending.clear();
+
+        if (producer != null) {
+            producer.interrupt();
+        }
+
+        chunk = END_OF_DATA;
+        channel.close();
+    }
+
+    /**
+     * Whether the next chunk can be taken without waiting.
+     *
+     * @return  true when the next chunk has been decompressed
+     */
+    private boolean isNextChunkReady() {
+
+        if (queue != null) {
+            return !queue.isEmpty();
+        }
+
+        return !pending.isEmpty() && pending.getFirst().isDone();
+    }
+
+    /**
+     * Moves on to the next decompressed chunk, waiting for it if needed.
+     *
+     * @return  false at the end of the data
+     *
+     * @throws  IOException  if the data can not be decompressed
+     */
+    private boolean nextChunk() throws IOException {
+
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while ( !atEnd) {
+            final byte[] next = (queue != null) ? takeQueued() : takeTask();
+
+            if (next == END_OF_DATA) {
+                atEnd = true;
+            } else if (next.length > 0) {
+                chunk = next;
+                chunkPos = 0;
+
+                return true;
+            }
+        }
+
+        chunk = END_OF_DATA;
+        chunkPos = 0;
+
+        return false;
+    }
+
+    /**
+     * Takes the next chunk from the producer thread.
+     *
+     * @return  the chunk, or END_OF_DATA
+     *
+     * @throws  IOException  if the producer failed
+     */
+    private byte[] takeQueued() throws IOException {
+        final Object next;
+
+        try {
+            next = queue.take();
+        } catch (final InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while decompressing");
+        }
+
+        if (next instanceof IOException) {
+            throw (IOException) next;
+        } else if (next instanceof Throwable) {
+            throw new IOException("Decompression failed: " + next);
+        }
+
+        return (byte[]) next;
+    }
+
+    /**
+     * Takes the result of the next decompressing task, first queueing tasks up to the window size. The task is run on
+     * the calling thread when no pool thread has started it yet, so the reader never waits on a busy pool. Once the
+     * tasks are done, the producer thread is started on any bzip2 data that could not be split.
+     *
+     * @return  the decompressed piece, or END_OF_DATA
+     *
+     * @throws  IOException  if the piece can not be read or decompressed
+     */
+    private byte[] takeTask() throws IOException {
+
+        while ( (nextOffset >= 0) && (pending.size() < window)) {
+            final FutureTask<byte[]> task = (type == GZIP) ? submitGzipMember() : submitBzip2Stream();
+
+            if (task != null) {
+                pending.add(task);
+                ThreadUtil.mipavThreadPool.execute(task);
+            }
+        }
+
+        if (pending.isEmpty()) {
+
+            if (sequentialOffset >= 0) {
+                startProducer(sequentialOffset);
+                sequentialOffset = -1;
+
+                return takeQueued();
+            }
+
+            return END_OF_DATA;
+        }
+
+        final FutureTask<byte[]> task = pending.removeFirst();
+        task.run();
+
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while decompressing");
+        } catch (final ExecutionException e) {
+
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Decompression failed: " + e.getCause());
+        }
+    }
+
+    /**
+     * Makes the task inflating the gzip member at nextOffset, and moves nextOffset to the member after it.
+     *
+     * @return  the task
+     *
+     * @throws  IOException  if the member header can not be read or is not a block gzip header
+     */
+    private FutureTask<byte[]> submitGzipMember() throws IOException {
+        final long start = nextOffset;
+        final int length = getBGZFMemberLength(start);
+
+        if (length <= 0) {
+            throw new IOException("Corrupt block gzip file at offset " + start);
+        }
+
+        nextOffset = (start + length < fileLength) ? (start + length) : -1;
+
+        return new FutureTask<byte[]>(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                return inflateMember(readBytes(start, length), start);
+            }
+        });
+    }
+
+    /**
+     * Makes the task decoding the bzip2 stream at nextOffset, and moves nextOffset to the stream after it. When the
+     * next stream is not found within BZIP2_SEARCH_LENGTH, the rest of the file is left to the producer thread.
+     *
+     * @return  the task, or null if the rest of the file is left to the producer thread
+     *
+     * @throws  IOException  if the file can not be read
+     */
+    private FutureTask<byte[]> submitBzip2Stream() throws IOException {
+        final long start = nextOffset;
+        final long limit = Math.min(fileLength, start + BZIP2_SEARCH_LENGTH);
+        final long end = findBzip2Stream(start + 1, limit);
+
+        if ( (end < 0) && (limit < fileLength)) {
+            nextOffset = -1;
+            sequentialOffset = start;
+
+            return null;
+        }
+
+        nextOffset = end;
+
+        final long length = ( (end < 0) ? fileLength : end) - start;
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("bzip2 stream at offset " + start + " is too long");
+        }
+
+        return new FutureTask<byte[]>(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                final byte[] compressed = readBytes(start, (int) length);
+                final CBZip2InputStream in = new CBZip2InputStream(new ByteArrayInputStream(compressed, 2,
+                        compressed.length - 2));
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(4 * compressed.length);
+                int b;
+
+                while ( (b = in.read()) >= 0) {
+                    out.write(b);
+                }
+
+                return out.toByteArray();
+            }
+        });
+    }
+
+    /**
+     * Inflates one gzip member and checks its CRC and length.
+     *
+     * @param   member  the whole member, header and trailer included
+     * @param   offset  file offset of the member, for error messages
+     *
+     * @return  the inflated data
+     *
+     * @throws  IOException  if the member is corrupt
+     */
+    private static byte[] inflateMember(final byte[] member, final long offset) throws IOException {
+        final int headerLength = getGzipHeaderLength(member, member.length);
+        final int trailer = member.length - 8;
+
+        if ( (headerLength < 0) || (trailer < headerLength)) {
+            throw new IOException("Corrupt gzip member at offset " + offset);
+        }
+
+        final int expectedCRC = getIntLE(member, trailer);
+        final int size = getIntLE(member, trailer + 4);
+
+        // deflate can not expand data by more than about 1032 times
+        if ( (size < 0) || (size > (1032L * member.length))) {
+            throw new IOException("Corrupt gzip member at offset " + offset + ": wrong length");
+        }
+
+        final byte[] data = new byte[size];
+        final byte[] spare = new byte[1];
+        final Inflater inflater = new Inflater(true);
+
+        try {
+            inflater.setInput(member, headerLength, trailer - headerLength);
+
+            int n = 0;
+
+            while ( !inflater.finished()) {
+                final int count = (n < size) ? inflater.inflate(data, n, size - n) : inflater.inflate(spare);
+
+                if ( (n == size) && (count > 0)) {
+                    throw new IOException("Corrupt gzip member at offset " + offset + ": wrong length");
+                } else if ( (count == 0) && !inflater.finished()
+                               && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt gzip member at offset " + offset + ": truncated");
+                }
+
+                n += count;
+            }
+
+            if (n != size) {
+                throw new IOException("Corrupt gzip member at offset " + offset + ": wrong length");
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException("Corrupt gzip member at offset " + offset + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, size);
+
+        if ((int) crc.getValue() != expectedCRC) {
+            throw new IOException("Corrupt gzip member at offset " + offset + ": CRC error");
+        }
+
+        return data;
+    }
+
+    /**
+     * Starts the thread that decompresses a file, or the rest of a bzip2 file, that can not be split.
+     *
+     * @param   offset  file offset of the bzip2 stream to start from, 0 for a gzip file
+     *
+     * @throws  IOException  if the file can not be opened
+     */
+    private void startProducer(final long offset) throws IOException {
+        final InputStream in = (type == GZIP) ? openSerial(file, type) : openBzip2Streams(offset);
+
+        queue = new ArrayBlockingQueue<Object>(QUEUE_LENGTH);
+        producer = new Thread("Decompress " + file.getName()) {
+            public void run() {
+
+                try {
+
+                    try {
+                        int n;
+
+                        do {
+                            final byte[] buffer = new byte[CHUNK_SIZE];
+                            n = 0;
+
+                            int count;
+
+                            while ( (n < CHUNK_SIZE) && ( (count = in.read(buffer, n, CHUNK_SIZE - n)) > 0)) {
+                                n += count;
+                            }
+
+                            if (n == CHUNK_SIZE) {
+                                queue.put(buffer);
+                            } else if (n > 0) {
+                                final byte[] last = new byte[n];
+                                System.arraycopy(buffer, 0, last, 0, n);
+                                queue.put(last);
+                            }
+                        } while ( (n == CHUNK_SIZE) && !closed);
+
+                        queue.put(END_OF_DATA);
+                    } catch (final InterruptedException e) {
+                        // closed by the reader
+                    } catch (final Throwable e) {
+
+                        if ( !closed) {
+                            queue.put(e);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                } catch (final InterruptedException e) {
+                    // closed by the reader
+                } catch (final IOException e) {
+                    // nothing left to report to
+                }
+            }
+        };
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Opens a stream that decodes the bzip2 streams of the file one after another. Each stream is decoded from where
+     * the one before it ended, so the file is read once. Anything after the last stream that is not a bzip2 stream is
+     * ignored.
+     *
+     * @param   offset  file offset of the first stream
+     *
+     * @return  the decoding stream
+     *
+     * @throws  IOException  if the file can not be read
+     */
+    private InputStream openBzip2Streams(final long offset) throws IOException {
+        channel.position(offset);
+
+        // CBZip2InputStream reads its input a byte at a time and closes it at the end of the stream, which must
+        // neither close the channel nor lose what has been buffered of the next stream
+        final InputStream compressed = new FilterInputStream(new BufferedInputStream(Channels.newInputStream(channel),
+                65536)) {
+                public void close() { }
+            };
+
+        return new InputStream() {
+            private InputStream current = null;
+
+            private boolean done = false;
+
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+
+                return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+            }
+
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+
+                while (true) {
+
+                    if (current == null) {
+
+                        // skip the "BZ" that CBZip2InputStream expects to have been read
+                        if (done || (compressed.read() != 'B') || (compressed.read() != 'Z')) {
+                            done = true;
+
+                            return -1;
+                        }
+
+                        current = new CBZip2InputStream(compressed);
+                    }
+
+                    final int n = current.read(b, off, len);
+
+                    if (n > 0) {
+                        return n;
+                    }
+
+                    current = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Gives the length of the block gzip member at an offset, taken from the BSIZE field of its header.
+     *
+     * @param   offset  file offset of the member
+     *
+     * @return  the length of the member, or -1 when the data at the offset is not a block gzip member header
+     *
+     * @throws  IOException  if the file can not be read
+     */
+    private int getBGZFMemberLength(final long offset) throws IOException {
+
+        if ( (fileLength - offset) < 18) {
+            return -1;
+        }
+
+        final byte[] header = readBytes(offset, (int) Math.min(fileLength - offset, 512));
+
+        if ( ( (header[0] & 0xff) != 0x1f) || ( (header[1] & 0xff) != 0x8b) || (header[2] != 8)
+                || ( (header[3] & 4) == 0)) {
+            return -1;
+        }
+
+        final int xlen = (header[10] & 0xff) | ( (header[11] & 0xff) << 8);
+        final int end = Math.min(12 + xlen, header.length);
+
+        for (int i = 12; (i + 4) <= end;) {
+            final int subLength = (header[i + 2] & 0xff) | ( (header[i + 3] & 0xff) << 8);
+
+            if ( (header[i] == 'B') && (header[i + 1] == 'C') && (subLength == 2) && ( (i + 6) <= end)) {
+                return ( (header[i + 4] & 0xff) | ( (header[i + 5] & 0xff) << 8)) + 1;
+            }
+
+            i += 4 + subLength;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gives the length of the gzip member header at the start of a buffer.
+     *
+     * @param   buf     the buffer
+     * @param   length  number of valid bytes in the buffer
+     *
+     * @return  the header length, or -1 if the buffer does not hold a whole gzip header
+     */
+    private static int getGzipHeaderLength(final byte[] buf, final int length) {
+
+        if ( (length < 10) || ( (buf[0] & 0xff) != 0x1f) || ( (buf[1] & 0xff) != 0x8b) || (buf[2] != 8)) {
+            return -1;
+        }
+
+        final int flags = buf[3] & 0xff;
+        int pos = 10;
+
+        if ( (flags & 4) != 0) {
+
+            if ( (pos + 2) > length) {
+                return -1;
+            }
+
+            pos += 2 + ( (buf[pos] & 0xff) | ( (buf[pos + 1] & 0xff) << 8));
+        }
+
+        // file name and comment are zero terminated
+        for (int field = 8; field <= 16; field *= 2) {
+
+            if ( (flags & field) != 0) {
+
+                while ( (pos < length) && (buf[pos] != 0)) {
+                    pos++;
+                }
+
+                pos++;
+            }
+        }
+
+        if ( (flags & 2) != 0) {
+            pos += 2;
+        }
+
+        return (pos <= length) ? pos : -1;
+    }
+
+    /**
+     * Whether a bzip2 stream starts at an offset.
+     *
+     * @param   offset  file offset
+     *
+     * @return  true if the bzip2 stream signature is at the offset
+     *
+     * @throws  IOException  if the file can not be read
+     */
+    private boolean isBzip2Stream(final long offset) throws IOException {
+
+        if ( (fileLength - offset) < BZIP2_SIGNATURE_LENGTH) {
+            return false;
+        }
+
+        return isBzip2Signature(readBytes(offset, BZIP2_SIGNATURE_LENGTH), 0);
+    }
+
+    /**
+     * Looks for the start of a bzip2 stream.
+     *
+     * @param   from   first file offset to look at
+     * @param   limit  file offset to stop looking at
+     *
+     * @return  the offset of the first stream found, or -1 if there is none before the limit
+     *
+     * @throws  IOException  if the file can not be read
+     */
+    private long findBzip2Stream(long from, final long limit) throws IOException {
+        final int bufferSize = 1 << 20;
+
+        while ( (limit - from) >= BZIP2_SIGNATURE_LENGTH) {
+            final int length = (int) Math.min(bufferSize, limit - from);
+            final byte[] buf = readBytes(from, length);
+
+            for (int i = 0; (i + BZIP2_SIGNATURE_LENGTH) <= length; i++) {
+
+                if ( (buf[i] == 'B') && isBzip2Signature(buf, i)) {
+                    return from + i;
+                }
+            }
+
+            from += length - BZIP2_SIGNATURE_LENGTH + 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Whether a buffer holds the start of a bzip2 stream at an index: "BZh", a block size digit, then either the magic
+     * of the first block or, for an empty stream, the end of stream magic.
+     *
+     * @param   buf    the buffer
+     * @param   index  index of the first byte
+     *
+     * @return  true if the signature is there
+     */
+    private static boolean isBzip2Signature(final byte[] buf, final int index) {
+
+        if ( (buf[index] != 'B') || (buf[index + 1] != 'Z') || (buf[index + 2] != 'h') || (buf[index + 3] < '1')
+                || (buf[index + 3] > '9')) {
+            return false;
+        }
+
+        final int m0 = buf[index + 4] & 0xff, m1 = buf[index + 5] & 0xff, m2 = buf[index + 6] & 0xff;
+        final int m3 = buf[index + 7] & 0xff, m4 = buf[index + 8] & 0xff, m5 = buf[index + 9] & 0xff;
+
+        return ( (m0 == 0x31) && (m1 == 0x41) && (m2 == 0x59) && (m3 == 0x26) && (m4 == 0x53) && (m5 == 0x59))
+                || ( (m0 == 0x17) && (m1 == 0x72) && (m2 == 0x45) && (m3 == 0x38) && (m4 == 0x50) && (m5 == 0x90));
+    }
+
+    /**
+     * Reads bytes of the compressed file with a positional read, which is safe from several threads at once.
+     *
+     * @param   offset  file offset
+     * @param   length  number of bytes
+     *
+     * @return  the bytes
+     *
+     * @throws  IOException  if the file ends early or can not be read
+     */
+    private byte[] readBytes(final long offset, final int length) throws IOException {
+        final byte[] buf = new byte[length];
+        final ByteBuffer bb = ByteBuffer.wrap(buf);
+
+        while (bb.hasRemaining()) {
+
+            if (channel.read(bb, offset + bb.position()) < 0) {
+                throw new EOFException("Unexpected end of compressed file");
+            }
+        }
+
+        return buf;
+    }
+
+    /**
+     * Reads a little endian int.
+     *
+     * @param   buf    the buffer
+     * @param   index  index of the first byte
+     *
+     * @return  the value
+     */
+    private static int getIntLE(final byte[] buf, final int index) {
+        return (buf[index] & 0xff) | ( (buf[index + 1] & 0xff) << 8) | ( (buf[index + 2] & 0xff) << 16)
+                | ( (buf[index + 3] & 0xff) << 24);
+    }
+}
@@ -3,6 +3,8 @@ package gov.nih.mipav.model.structures;
 
 import java.io.*;
 
+import java.nio.Buffer;
+
 
 /**
  * This is an abstract buffer class that indicates the required methods of the sub-classes. This is a base class of a
@@ -235,4 +237,276 @@ public abstract class BufferBase implements Serializable {
      * @param  value     the new data value to be placed in the data array
      */
     protected abstract void setUShort(int position, int value);
+
+    /**
+     * Gets the length of the data array as a long. Buffers backed by a single Java array can never hold more than
+     * Integer.MAX_VALUE elements, so by default this is the same as length(); BufferPaged overrides it.
+     *
+     * @return  the length of the data array
+     */
+    protected long lengthLong() {
+        return length();
+    }
+
+    /**
+     * Returns a read only view of a range of the data array that shares storage with the buffer instead of copying
+     * it. Unsigned buffers expose their signed storage type. Buffers that cannot provide a view return null.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view, or null if this buffer does not support views
+     */
+    protected Buffer getView(final long start, final int length) {
+        return null;
+    }
+
+    /**
+     * Gets a Number value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  Number object of the data
+     */
+    protected Number get(final long position) {
+        return get(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a boolean value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  boolean value of the data
+     */
+    protected boolean getBoolean(final long position) {
+        return getBoolean(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a byte value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  byte value of the data
+     */
+    protected byte getByte(final long position) {
+        return getByte(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a double value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  double value of the data
+     */
+    protected double getDouble(final long position) {
+        return getDouble(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a float value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  float value of the data
+     */
+    protected float getFloat(final long position) {
+        return getFloat(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a int value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  int value of the data
+     */
+    protected int getInt(final long position) {
+        return getInt(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a long value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  long value of the data
+     */
+    protected long getLong(final long position) {
+        return getLong(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a short value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  short value of the data
+     */
+    protected short getShort(final long position) {
+        return getShort(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a short value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  short(unsigned byte[0:255]) value of the data
+     */
+    protected short getUByte(final long position) {
+        return getUByte(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a long value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  long(unsigned int) value of the data
+     */
+    protected long getUInt(final long position) {
+        return getUInt(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Gets a int value at a long position in the data array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  int(unsigned short) value of the data
+     */
+    protected int getUShort(final long position) {
+        return getUShort(BufferBase.toIntPosition(position));
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void set(final long position, final Number value) {
+        set(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setBoolean(final long position, final boolean value) {
+        setBoolean(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setByte(final long position, final byte value) {
+        setByte(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setDouble(final long position, final double value) {
+        setDouble(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setFloat(final long position, final float value) {
+        setFloat(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setInt(final long position, final int value) {
+        setInt(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setLong(final long position, final long value) {
+        setLong(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setShort(final long position, final short value) {
+        setShort(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setUByte(final long position, final short value) {
+        setUByte(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setUInt(final long position, final long value) {
+        setUInt(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Sets the data array at the specified long index to the specified value.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected void setUShort(final long position, final int value) {
+        setUShort(BufferBase.toIntPosition(position), value);
+    }
+
+    /**
+     * Converts a long position into an index of a single backing array.
+     *
+     * @param   position  index into the data array.
+     *
+     * @return  the position as an int
+     *
+     * @throws  ArrayIndexOutOfBoundsException  if the position cannot be stored in an int
+     */
+    protected static final int toIntPosition(final long position) {
+
+        if (position > Integer.MAX_VALUE) {
+            throw new ArrayIndexOutOfBoundsException("Buffer position " + position + " exceeds " + Integer.MAX_VALUE);
+        }
+
+        return (int) position;
+    }
 }
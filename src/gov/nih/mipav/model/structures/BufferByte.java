@@ -1,6 +1,7 @@
 package gov.nih.mipav.model.structures;
 
 
+import java.nio.ByteBuffer;
 
 
 /**
@@ -66,6 +67,18 @@ public class BufferByte extends BufferBase {
         return dataArray.length;
     }
 
+    /**
+     * Returns a read only ByteBuffer that wraps a range of the data array without copying it.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view
+     */
+    protected ByteBuffer getView(long start, int length) {
+        return ByteBuffer.wrap(dataArray, (int) start, length).slice().asReadOnlyBuffer();
+    }
+
     /**
      * Gets the data in byte format.
      *
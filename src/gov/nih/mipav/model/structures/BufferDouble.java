@@ -1,6 +1,9 @@
 package gov.nih.mipav.model.structures;
 
 
+import java.nio.DoubleBuffer;
+
+
 /**
  * This class extends the abstract BufferBase class. It allocates the space for a float buffer on construction. This
  * class also defines the accessors to the data as required by the abstract base class.
@@ -64,6 +67,18 @@ public class BufferDouble extends BufferBase {
         return dataArray.length;
     }
 
+    /**
+     * Returns a read only DoubleBuffer that wraps a range of the data array without copying it.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view
+     */
+    protected DoubleBuffer getView(long start, int length) {
+        return DoubleBuffer.wrap(dataArray, (int) start, length).slice().asReadOnlyBuffer();
+    }
+
     /**
      * Gets the data in as Number.
      *
@@ -1,6 +1,9 @@
 package gov.nih.mipav.model.structures;
 
 
+import java.nio.FloatBuffer;
+
+
 /**
  * This class extends the abstract BufferBase class. It allocates the space for a float buffer on construction. This
  * class also defines the accessors to the data as required by the abstract base class.
@@ -63,6 +66,18 @@ public class BufferFloat extends BufferBase {
         return dataArray.length;
     }
 
+    /**
+     * Returns a read only FloatBuffer that wraps a range of the data array without copying it.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view
+     */
+    protected FloatBuffer getView(long start, int length) {
+        return FloatBuffer.wrap(dataArray, (int) start, length).slice().asReadOnlyBuffer();
+    }
+
     /**
      * Gets the data in Number format.
      *
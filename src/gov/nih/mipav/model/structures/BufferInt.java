@@ -1,6 +1,9 @@
 package gov.nih.mipav.model.structures;
 
 
+import java.nio.IntBuffer;
+
+
 /**
  * This class extends the abstract BufferBase class. It allocates the space for a integer buffer on construction. This
  * class also defines the accessors to the data as required by the abstract base class.
@@ -64,6 +67,18 @@ public class BufferInt extends BufferBase {
         return dataArray.length;
     }
 
+    /**
+     * Returns a read only IntBuffer that wraps a range of the data array without copying it.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view
+     */
+    protected IntBuffer getView(long start, int length) {
+        return IntBuffer.wrap(dataArray, (int) start, length).slice().asReadOnlyBuffer();
+    }
+
     /**
      * Gets the data as a Number object.
      *
@@ -1,6 +1,9 @@
 package gov.nih.mipav.model.structures;
 
 
+import java.nio.LongBuffer;
+
+
 /**
  * This class extends the abstract BufferBase class. It allocates the space for a long buffer on construction. This
  * class also defines the accessors to the data as required by the abstract base class.
@@ -64,6 +67,18 @@ public class BufferLong extends BufferBase {
         return dataArray.length;
     }
 
+    /**
+     * Returns a read only LongBuffer that wraps a range of the data array without copying it.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view
+     */
+    protected LongBuffer getView(long start, int length) {
+        return LongBuffer.wrap(dataArray, (int) start, length).slice().asReadOnlyBuffer();
+    }
+
     /**
      * Gets the data in as a Number object.
      *
@@ -0,0 +1,1029 @@
+package gov.nih.mipav.model.structures;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * This class extends the abstract BufferBase class. Instead of allocating a Java array it maps the voxel region of an
+ * uncompressed image file (raw, NIFTI ...) into memory, so that the operating system pages in only the parts of the
+ * file that are touched and all viewers of the same file share the page cache. The file is mapped read only; the first
+ * change to a mapped region copies that region into memory, so changes are never written back to the file.
+ *
+ * <p>The file is mapped in regions of at most 1 GB, so files larger than 2 GB and images with more than
+ * Integer.MAX_VALUE elements are supported through the long accessors.</p>
+ *
+ * <p>A serialized buffer (ModelSerialCloneable.clone() copies images by serializing them) stores the file and the
+ * regions that were changed in memory. Deserializing it maps the file again and restores the changed regions.</p>
+ *
+ * @see  BufferBase
+ * @see  ModelStorageBase
+ */
+
+public class BufferMapped extends BufferBase {
+
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** Use serialVersionUID for interoperability. */
+    private static final long serialVersionUID = -2096871418569524870L;
+
+    /** Size of each mapped region expressed as a power of two of bytes. */
+    private static final int REGION_SHIFT = 30;
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    /** True if the file is big endian. */
+    private boolean bigEndian;
+
+    /** Shift from an element index to a byte offset (log2 of the element size in bytes). */
+    private int byteShift;
+
+    /** The mapped file. */
+    private File file;
+
+    /** Number of elements in the buffer. */
+    private long length;
+
+    /** Byte offset of the first element in the file. */
+    private long offset;
+
+    /** Mask used to get the element index within a region. */
+    private long regionMask;
+
+    /** The mapped regions of the file. Mappings are not serialized, see writeObject(). */
+    private transient ByteBuffer[] regions;
+
+    /** Number of elements per region expressed as a power of two. */
+    private int regionShift;
+
+    /** Type of the elements stored in the file. */
+    private ModelStorageBase.DataType type;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Maps the voxel region of a file.
+     *
+     * @param   type       data type of the elements stored in the file, see isMappable()
+     * @param   file       the file to map
+     * @param   offset     byte offset of the first element in the file
+     * @param   size       number of elements to map (for complex types this is twice the number of voxels)
+     * @param   bigEndian  true if the file is big endian, false for little endian
+     *
+     * @throws  IOException  if the file is too short or cannot be mapped
+     */
+    public BufferMapped(final ModelStorageBase.DataType type, final File file, final long offset, final long size,
+            final boolean bigEndian) throws IOException {
+
+        if ( !BufferMapped.isMappable(type)) {
+            throw new IOException("BufferMapped: " + type + " data cannot be memory mapped");
+        }
+
+        this.type = type;
+        this.file = file;
+        this.offset = offset;
+        this.length = size;
+        this.bigEndian = bigEndian;
+        this.byteShift = BufferMapped.getByteShift(type);
+        this.regionShift = REGION_SHIFT - byteShift;
+        this.regionMask = (1L << regionShift) - 1;
+
+        mapRegions();
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true if images of the given type can be mapped directly from a file, that is, if the file layout of the
+     * type is the same as the layout of the buffer. Boolean (bit packed) and color images are not mappable.
+     *
+     * @param   type  data type of the image
+     *
+     * @return  true if a BufferMapped can be created for the type
+     */
+    public static boolean isMappable(final ModelStorageBase.DataType type) {
+
+        switch (type) {
+
+            case BYTE:
+            case UBYTE:
+            case SHORT:
+            case USHORT:
+            case INTEGER:
+            case UINTEGER:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case COMPLEX:
+            case DCOMPLEX:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns log2 of the number of bytes used by an element of the given type.
+     *
+     * @param   type  data type of the image
+     *
+     * @return  the element size as a power of two
+     */
+    private static int getByteShift(final ModelStorageBase.DataType type) {
+
+        switch (type) {
+
+            case BYTE:
+            case UBYTE:
+                return 0;
+
+            case SHORT:
+            case USHORT:
+                return 1;
+
+            case INTEGER:
+            case UINTEGER:
+            case FLOAT:
+            case COMPLEX:
+                return 2;
+
+            default:
+                return 3;
+        }
+    }
+
+    /**
+     * Releases the mappings. The memory is unmapped when the regions are garbage collected.
+     *
+     * @throws  Throwable  indicates error in while finalizing.
+     */
+    public void finalize() throws Throwable {
+        regions = null;
+    }
+
+    /**
+     * Returns the length of the data array, clamped to Integer.MAX_VALUE. Use lengthLong() to get the full length.
+     *
+     * @return  length of the array
+     */
+    public int length() {
+        return (int) Math.min(length, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of mapped elements.
+     *
+     * @return  length of the array
+     */
+    public long lengthLong() {
+        return length;
+    }
+
+    /**
+     * Returns a read only view of the mapped region when the range lies within a single region, otherwise null. A
+     * view taken before the region is first written to keeps reading the file and does not see the new values.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view, or null
+     */
+    protected final Buffer getView(final long start, final int length) {
+        final int r = (int) (start >>> regionShift);
+        final int offset = (int) ( (start & regionMask) << byteShift);
+        final long end = offset + ((long) length << byteShift);
+
+        if (end > regions[r].capacity()) {
+            return null;
+        }
+
+        final ByteBuffer region = regions[r].duplicate();
+
+        region.limit((int) end);
+        region.position(offset);
+
+        final ByteBuffer bytes = region.slice().order(regions[r].order());
+
+        switch (type) {
+
+            case BYTE:
+            case UBYTE:
+                return bytes.asReadOnlyBuffer();
+
+            case SHORT:
+            case USHORT:
+                return bytes.asShortBuffer().asReadOnlyBuffer();
+
+            case INTEGER:
+            case UINTEGER:
+                return bytes.asIntBuffer().asReadOnlyBuffer();
+
+            case LONG:
+                return bytes.asLongBuffer().asReadOnlyBuffer();
+
+            case FLOAT:
+            case COMPLEX:
+                return bytes.asFloatBuffer().asReadOnlyBuffer();
+
+            default:
+                return bytes.asDoubleBuffer().asReadOnlyBuffer();
+        }
+    }
+
+    /** Return the primitive type of the mapped elements, matching the type of the equivalent array buffer. */
+    protected final Class<?> getType() {
+
+        switch (type) {
+
+            case BYTE:
+            case UBYTE:
+                return byte.class;
+
+            case SHORT:
+            case USHORT:
+                return short.class;
+
+            case INTEGER:
+            case UINTEGER:
+                return int.class;
+
+            case LONG:
+                return long.class;
+
+            case FLOAT:
+            case COMPLEX:
+                return float.class;
+
+            default:
+                return double.class;
+        }
+    }
+
+    /**
+     * Reads an element of an integer type, unsigned types are returned as their unsigned value.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a long
+     */
+    private long readLong(final long position) {
+        final ByteBuffer region = regions[(int) (position >>> regionShift)];
+        final int index = (int) ( (position & regionMask) << byteShift);
+
+        switch (type) {
+
+            case BYTE:
+                return region.get(index);
+
+            case UBYTE:
+                return region.get(index) & 0xff;
+
+            case SHORT:
+                return region.getShort(index);
+
+            case USHORT:
+                return region.getShort(index) & 0xffff;
+
+            case INTEGER:
+                return region.getInt(index);
+
+            case UINTEGER:
+                return region.getInt(index) & 0xffffffffL;
+
+            case LONG:
+                return region.getLong(index);
+
+            case FLOAT:
+            case COMPLEX:
+                return (long) region.getFloat(index);
+
+            default:
+                return (long) region.getDouble(index);
+        }
+    }
+
+    /**
+     * Reads an element as a double.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a double
+     */
+    private double readDouble(final long position) {
+
+        switch (type) {
+
+            case FLOAT:
+            case COMPLEX:
+                return regions[(int) (position >>> regionShift)].getFloat((int) ( (position & regionMask)
+                        << byteShift));
+
+            case DOUBLE:
+            case DCOMPLEX:
+                return regions[(int) (position >>> regionShift)].getDouble((int) ( (position & regionMask)
+                        << byteShift));
+
+            default:
+                return readLong(position);
+        }
+    }
+
+    /**
+     * Returns the region holding the position, replacing a read only mapping by a copy in memory the first time the
+     * region is written to.
+     *
+     * @param   position  position in data array
+     *
+     * @return  a writable region
+     */
+    private ByteBuffer getWritableRegion(final long position) {
+        final int r = (int) (position >>> regionShift);
+
+        if (regions[r].isReadOnly()) {
+
+            synchronized (this) {
+
+                if (regions[r].isReadOnly()) {
+                    final ByteBuffer mapped = regions[r].duplicate();
+                    final ByteBuffer copy = ByteBuffer.allocateDirect(mapped.capacity()).order(mapped.order());
+
+                    mapped.clear();
+                    copy.put(mapped);
+                    regions[r] = copy;
+                }
+            }
+        }
+
+        return regions[r];
+    }
+
+    /**
+     * Maps the regions of the file.
+     *
+     * @throws  IOException  if the file is too short or cannot be mapped
+     */
+    private void mapRegions() throws IOException {
+        final ByteOrder order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        final long totalBytes = length << byteShift;
+        final RandomAccessFile raFile = new RandomAccessFile(file, "r");
+
+        try {
+
+            if (raFile.length() < (offset + totalBytes)) {
+                throw new IOException("BufferMapped: " + file.getName() + " is shorter than the image data");
+            }
+
+            final FileChannel channel = raFile.getChannel();
+            final int nRegions = (int) ( (totalBytes + (1L << REGION_SHIFT) - 1) >>> REGION_SHIFT);
+
+            regions = new ByteBuffer[nRegions];
+
+            for (int r = 0; r < nRegions; r++) {
+                final long regionStart = (long) r << REGION_SHIFT;
+                final long regionBytes = Math.min(1L << REGION_SHIFT, totalBytes - regionStart);
+
+                // the mapping stays valid after the channel is closed
+                regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, offset + regionStart, regionBytes).order(order);
+            }
+        } finally {
+            raFile.close();
+        }
+    }
+
+    /**
+     * Reads the fields written by writeObject(), maps the file again and restores the regions that had been changed in
+     * memory.
+     *
+     * @param   in  the stream to read from
+     *
+     * @throws  IOException             if the file cannot be mapped or the stream cannot be read
+     * @throws  ClassNotFoundException  if a class of the fields cannot be found
+     */
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        mapRegions();
+
+        final byte[] chunk = new byte[1 << 16];
+
+        for (int r = 0; r < regions.length; r++) {
+
+            if (in.readBoolean()) {
+                final ByteBuffer copy = ByteBuffer.allocateDirect(regions[r].capacity()).order(regions[r].order());
+
+                while (copy.hasRemaining()) {
+                    final int n = Math.min(chunk.length, copy.remaining());
+
+                    in.readFully(chunk, 0, n);
+                    copy.put(chunk, 0, n);
+                }
+
+                regions[r] = copy;
+            }
+        }
+    }
+
+    /**
+     * Writes the fields and the contents of the regions that were changed in memory. The mappings themselves cannot be
+     * serialized; the unchanged regions are mapped from the file again by readObject().
+     *
+     * @param   out  the stream to write to
+     *
+     * @throws  IOException  if the stream cannot be written
+     */
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        final byte[] chunk = new byte[1 << 16];
+
+        for (int r = 0; r < regions.length; r++) {
+            final ByteBuffer region = regions[r];
+
+            // regions that were written to have been replaced by writable copies
+            out.writeBoolean( !region.isReadOnly());
+
+            if ( !region.isReadOnly()) {
+                final ByteBuffer copy = region.duplicate();
+
+                copy.clear();
+
+                while (copy.hasRemaining()) {
+                    final int n = Math.min(chunk.length, copy.remaining());
+
+                    copy.get(chunk, 0, n);
+                    out.write(chunk, 0, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an element of an integer type, the value is truncated to the element size.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value
+     */
+    private void writeLong(final long position, final long value) {
+        final ByteBuffer region = getWritableRegion(position);
+        final int index = (int) ( (position & regionMask) << byteShift);
+
+        switch (type) {
+
+            case BYTE:
+            case UBYTE:
+                region.put(index, (byte) value);
+                break;
+
+            case SHORT:
+            case USHORT:
+                region.putShort(index, (short) value);
+                break;
+
+            case INTEGER:
+            case UINTEGER:
+                region.putInt(index, (int) value);
+                break;
+
+            case LONG:
+                region.putLong(index, value);
+                break;
+
+            case FLOAT:
+            case COMPLEX:
+                region.putFloat(index, value);
+                break;
+
+            default:
+                region.putDouble(index, value);
+        }
+    }
+
+    /**
+     * Writes an element, values written to integer types are rounded as in the array buffers.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value
+     */
+    private void writeDouble(final long position, final double value) {
+
+        switch (type) {
+
+            case FLOAT:
+            case COMPLEX:
+                getWritableRegion(position).putFloat((int) ( (position & regionMask) << byteShift), (float) value);
+                break;
+
+            case DOUBLE:
+            case DCOMPLEX:
+                getWritableRegion(position).putDouble((int) ( (position & regionMask) << byteShift), value);
+                break;
+
+            default:
+
+                if (value < 0) {
+                    writeLong(position, (long) (value - 0.5));
+                } else {
+                    writeLong(position, (long) (value + 0.5));
+                }
+        }
+    }
+
+    /**
+     * Gets the data in Number format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  Number object of the data
+     */
+    protected final Number get(final int position) {
+        return get((long) position);
+    }
+
+    /**
+     * Gets the data in Number format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  Number object of the data
+     */
+    protected final Number get(final long position) {
+
+        switch (type) {
+
+            case BYTE:
+            case UBYTE:
+                return Byte.valueOf((byte) readLong(position));
+
+            case SHORT:
+            case USHORT:
+                return Short.valueOf((short) readLong(position));
+
+            case INTEGER:
+            case UINTEGER:
+                return Integer.valueOf((int) readLong(position));
+
+            case LONG:
+                return Long.valueOf(readLong(position));
+
+            case FLOAT:
+            case COMPLEX:
+                return Float.valueOf((float) readDouble(position));
+
+            default:
+                return Double.valueOf(readDouble(position));
+        }
+    }
+
+    /**
+     * Gets the data in boolean format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  true if data at position is not equal to zero else its false
+     */
+    protected final boolean getBoolean(final int position) {
+        return readDouble(position) != 0;
+    }
+
+    /**
+     * Gets the data in boolean format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  true if data at position is not equal to zero else its false
+     */
+    protected final boolean getBoolean(final long position) {
+        return readDouble(position) != 0;
+    }
+
+    /**
+     * Gets the data in byte format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the byte value
+     */
+    protected final byte getByte(final int position) {
+        return (byte) getInt((long) position);
+    }
+
+    /**
+     * Gets the data in byte format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the byte value
+     */
+    protected final byte getByte(final long position) {
+        return (byte) getInt(position);
+    }
+
+    /**
+     * Gets the data in double format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the double value
+     */
+    protected final double getDouble(final int position) {
+        return readDouble(position);
+    }
+
+    /**
+     * Gets the data in double format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the double value
+     */
+    protected final double getDouble(final long position) {
+        return readDouble(position);
+    }
+
+    /**
+     * Gets the data in float format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the float value
+     */
+    protected final float getFloat(final int position) {
+        return (float) readDouble(position);
+    }
+
+    /**
+     * Gets the data in float format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the float value
+     */
+    protected final float getFloat(final long position) {
+        return (float) readDouble(position);
+    }
+
+    /**
+     * Gets the data in int format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the int value
+     */
+    protected final int getInt(final int position) {
+        return getInt((long) position);
+    }
+
+    /**
+     * Gets the data in int format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the int value
+     */
+    protected final int getInt(final long position) {
+
+        if ( (type == ModelStorageBase.DataType.FLOAT) || (type == ModelStorageBase.DataType.COMPLEX)
+                || (type == ModelStorageBase.DataType.DOUBLE) || (type == ModelStorageBase.DataType.DCOMPLEX)) {
+            return (int) readDouble(position);
+        }
+
+        return (int) readLong(position);
+    }
+
+    /**
+     * Gets the data in long format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the long value
+     */
+    protected final long getLong(final int position) {
+        return readLong(position);
+    }
+
+    /**
+     * Gets the data in long format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the long value
+     */
+    protected final long getLong(final long position) {
+        return readLong(position);
+    }
+
+    /**
+     * Gets the data in short format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the short value
+     */
+    protected final short getShort(final int position) {
+        return (short) getInt((long) position);
+    }
+
+    /**
+     * Gets the data in short format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the short value
+     */
+    protected final short getShort(final long position) {
+        return (short) getInt(position);
+    }
+
+    /**
+     * Gets the data in unsigned byte format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a short (unsigned byte)
+     */
+    protected final short getUByte(final int position) {
+        return (short) (getInt((long) position) & 0xff);
+    }
+
+    /**
+     * Gets the data in unsigned byte format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a short (unsigned byte)
+     */
+    protected final short getUByte(final long position) {
+        return (short) (getInt(position) & 0xff);
+    }
+
+    /**
+     * Gets the data in unsigned int format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a long (unsigned int)
+     */
+    protected final long getUInt(final int position) {
+        return readLong(position) & 0xffffffffL;
+    }
+
+    /**
+     * Gets the data in unsigned int format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a long (unsigned int)
+     */
+    protected final long getUInt(final long position) {
+        return readLong(position) & 0xffffffffL;
+    }
+
+    /**
+     * Gets the data in unsigned short format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as an int (unsigned short)
+     */
+    protected final int getUShort(final int position) {
+        return getInt((long) position) & 0xffff;
+    }
+
+    /**
+     * Gets the data in unsigned short format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as an int (unsigned short)
+     */
+    protected final int getUShort(final long position) {
+        return getInt(position) & 0xffff;
+    }
+
+    /**
+     * Sets the data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void set(final int position, final Number value) {
+        set((long) position, value);
+    }
+
+    /**
+     * Sets the data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void set(final long position, final Number value) {
+
+        if ( (value instanceof Float) || (value instanceof Double)) {
+            writeDouble(position, value.doubleValue());
+        } else {
+            writeLong(position, value.longValue());
+        }
+    }
+
+    /**
+     * Sets the data in the mapped type. One if value is true, zero if value is false
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setBoolean(final int position, final boolean value) {
+        writeLong(position, value ? 1 : 0);
+    }
+
+    /**
+     * Sets the data in the mapped type. One if value is true, zero if value is false
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setBoolean(final long position, final boolean value) {
+        writeLong(position, value ? 1 : 0);
+    }
+
+    /**
+     * Sets the byte data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setByte(final int position, final byte value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the byte data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setByte(final long position, final byte value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the double data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setDouble(final int position, final double value) {
+        writeDouble(position, value);
+    }
+
+    /**
+     * Sets the double data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setDouble(final long position, final double value) {
+        writeDouble(position, value);
+    }
+
+    /**
+     * Sets the float data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setFloat(final int position, final float value) {
+        writeDouble(position, value);
+    }
+
+    /**
+     * Sets the float data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setFloat(final long position, final float value) {
+        writeDouble(position, value);
+    }
+
+    /**
+     * Sets the int data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setInt(final int position, final int value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the int data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setInt(final long position, final int value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the long data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setLong(final int position, final long value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the long data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setLong(final long position, final long value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the short data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setShort(final int position, final short value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the short data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setShort(final long position, final short value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the unsigned byte data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUByte(final int position, final short value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the unsigned byte data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUByte(final long position, final short value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the unsigned int data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUInt(final int position, final long value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the unsigned int data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUInt(final long position, final long value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the unsigned short data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUShort(final int position, final int value) {
+        writeLong(position, value);
+    }
+
+    /**
+     * Sets the unsigned short data in the mapped type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUShort(final long position, final int value) {
+        writeLong(position, value);
+    }
+}
@@ -0,0 +1,677 @@
+package gov.nih.mipav.model.structures;
+
+
+import java.nio.Buffer;
+
+
+/**
+ * This class extends the abstract BufferBase class. It splits the data into fixed size pages, each of which is one of
+ * the ordinary single array buffers (BufferFloat, BufferShort ...), so that an image can hold more than
+ * Integer.MAX_VALUE elements. Positions are addressed with a long; the page is selected by the high bits of the
+ * position and the element within the page by the low bits. The int accessors required by the base class are still
+ * available and address the first Integer.MAX_VALUE elements.
+ *
+ * @see  BufferBase
+ * @see  ModelStorageBase
+ */
+
+public class BufferPaged extends BufferBase {
+
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** Use serialVersionUID for interoperability. */
+    private static final long serialVersionUID = 4417690152734218355L;
+
+    /** Default number of elements per page, expressed as a power of two (2^27 = 128M elements). */
+    public static final int DEFAULT_PAGE_SHIFT = 27;
+
+    //~ Instance fields ------------------------------------------------------------------------------------------------
+
+    /** Total number of elements held by all of the pages. */
+    private long length;
+
+    /** Mask used to get the element index within a page. */
+    private long pageMask;
+
+    /** The pages, each a single array buffer of the same type. */
+    private BufferBase[] pages;
+
+    /** Number of elements per page expressed as a power of two. */
+    private int pageShift;
+
+    //~ Constructors ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Constructor that allocates memory using the default page size.
+     *
+     * @param  type  buffer type of each page
+     * @param  size  the amount of data to allocate
+     */
+    public BufferPaged(final ModelStorageBase.DataType type, final long size) {
+        this(type, size, DEFAULT_PAGE_SHIFT);
+    }
+
+    /**
+     * Constructor that allocates memory.
+     *
+     * @param  type       buffer type of each page
+     * @param  size       the amount of data to allocate
+     * @param  pageShift  number of elements per page expressed as a power of two (must be between 6 and 30)
+     */
+    public BufferPaged(final ModelStorageBase.DataType type, final long size, final int pageShift) {
+
+        if ((pageShift < 6) || (pageShift > 30)) {
+            throw new IllegalArgumentException("BufferPaged: page shift must be between 6 and 30");
+        }
+
+        final long pageSize = 1L << pageShift;
+        final int nPages = (int) ((size + pageSize - 1) >>> pageShift);
+
+        this.length = size;
+        this.pageShift = pageShift;
+        this.pageMask = pageSize - 1;
+        this.pages = new BufferBase[Math.max(nPages, 1)];
+
+        for (int p = 0; p < pages.length; p++) {
+            pages[p] = allocatePage(type, (int) Math.min(pageSize, size - ((long) p << pageShift)));
+        }
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Clean up memory.
+     *
+     * @throws  Throwable  indicates error in while finalizing.
+     */
+    public void finalize() throws Throwable {
+
+        if (pages != null) {
+
+            for (int p = 0; p < pages.length; p++) {
+
+                if (pages[p] != null) {
+                    pages[p].finalize();
+                    pages[p] = null;
+                }
+            }
+        }
+
+        pages = null;
+    }
+
+    /**
+     * Returns the number of elements per page.
+     *
+     * @return  the page size
+     */
+    public int getPageSize() {
+        return 1 << pageShift;
+    }
+
+    /**
+     * Returns the number of pages.
+     *
+     * @return  the page count
+     */
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    /**
+     * Returns the length of the data array, clamped to Integer.MAX_VALUE. Use lengthLong() to get the full length.
+     *
+     * @return  length of the array
+     */
+    public int length() {
+        return (int) Math.min(length, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the total length of all of the pages.
+     *
+     * @return  length of the array
+     */
+    public long lengthLong() {
+        return length;
+    }
+
+    /**
+     * Returns a view of the range when it lies within a single page. Ranges that cross a page boundary have no
+     * contiguous storage to view, so null is returned for them.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view, or null
+     */
+    protected final Buffer getView(final long start, final int length) {
+        final BufferBase page = pages[(int) (start >>> pageShift)];
+        final int offset = (int) (start & pageMask);
+
+        if ((offset + (long) length) > page.length()) {
+            return null;
+        }
+
+        return page.getView(offset, length);
+    }
+
+    /** Return the primitive type of the pages. */
+    protected final Class<?> getType() {
+        return pages[0].getType();
+    }
+
+    /**
+     * Gets the data in Number format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  Number object of the data
+     */
+    protected final Number get(final int position) {
+        return get((long) position);
+    }
+
+    /**
+     * Gets the data in Number format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  Number object of the data
+     */
+    protected final Number get(final long position) {
+        return pages[(int) (position >>> pageShift)].get((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in boolean format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  true if data at position is not equal to zero else its false
+     */
+    protected final boolean getBoolean(final int position) {
+        return getBoolean((long) position);
+    }
+
+    /**
+     * Gets the data in boolean format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  true if data at position is not equal to zero else its false
+     */
+    protected final boolean getBoolean(final long position) {
+        return pages[(int) (position >>> pageShift)].getBoolean((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in byte format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the byte value
+     */
+    protected final byte getByte(final int position) {
+        return getByte((long) position);
+    }
+
+    /**
+     * Gets the data in byte format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the byte value
+     */
+    protected final byte getByte(final long position) {
+        return pages[(int) (position >>> pageShift)].getByte((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in double format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the double value
+     */
+    protected final double getDouble(final int position) {
+        return getDouble((long) position);
+    }
+
+    /**
+     * Gets the data in double format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the double value
+     */
+    protected final double getDouble(final long position) {
+        return pages[(int) (position >>> pageShift)].getDouble((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in float format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the float value
+     */
+    protected final float getFloat(final int position) {
+        return getFloat((long) position);
+    }
+
+    /**
+     * Gets the data in float format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the float value
+     */
+    protected final float getFloat(final long position) {
+        return pages[(int) (position >>> pageShift)].getFloat((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in int format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the int value
+     */
+    protected final int getInt(final int position) {
+        return getInt((long) position);
+    }
+
+    /**
+     * Gets the data in int format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the int value
+     */
+    protected final int getInt(final long position) {
+        return pages[(int) (position >>> pageShift)].getInt((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in long format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the long value
+     */
+    protected final long getLong(final int position) {
+        return getLong((long) position);
+    }
+
+    /**
+     * Gets the data in long format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the long value
+     */
+    protected final long getLong(final long position) {
+        return pages[(int) (position >>> pageShift)].getLong((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in short format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the short value
+     */
+    protected final short getShort(final int position) {
+        return getShort((long) position);
+    }
+
+    /**
+     * Gets the data in short format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the short value
+     */
+    protected final short getShort(final long position) {
+        return pages[(int) (position >>> pageShift)].getShort((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in unsigned byte format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a short (unsigned byte)
+     */
+    protected final short getUByte(final int position) {
+        return getUByte((long) position);
+    }
+
+    /**
+     * Gets the data in unsigned byte format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a short (unsigned byte)
+     */
+    protected final short getUByte(final long position) {
+        return pages[(int) (position >>> pageShift)].getUByte((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in unsigned int format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a long (unsigned int)
+     */
+    protected final long getUInt(final int position) {
+        return getUInt((long) position);
+    }
+
+    /**
+     * Gets the data in unsigned int format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as a long (unsigned int)
+     */
+    protected final long getUInt(final long position) {
+        return pages[(int) (position >>> pageShift)].getUInt((int) (position & pageMask));
+    }
+
+    /**
+     * Gets the data in unsigned short format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as an int (unsigned short)
+     */
+    protected final int getUShort(final int position) {
+        return getUShort((long) position);
+    }
+
+    /**
+     * Gets the data in unsigned short format.
+     *
+     * @param   position  position in data array
+     *
+     * @return  the value as an int (unsigned short)
+     */
+    protected final int getUShort(final long position) {
+        return pages[(int) (position >>> pageShift)].getUShort((int) (position & pageMask));
+    }
+
+    /**
+     * Sets the data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void set(final int position, final Number value) {
+        set((long) position, value);
+    }
+
+    /**
+     * Sets the data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void set(final long position, final Number value) {
+        pages[(int) (position >>> pageShift)].set((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the data in the page type. One if value is true, zero if value is false
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setBoolean(final int position, final boolean value) {
+        setBoolean((long) position, value);
+    }
+
+    /**
+     * Sets the data in the page type. One if value is true, zero if value is false
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setBoolean(final long position, final boolean value) {
+        pages[(int) (position >>> pageShift)].setBoolean((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the byte data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setByte(final int position, final byte value) {
+        setByte((long) position, value);
+    }
+
+    /**
+     * Sets the byte data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setByte(final long position, final byte value) {
+        pages[(int) (position >>> pageShift)].setByte((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the double data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setDouble(final int position, final double value) {
+        setDouble((long) position, value);
+    }
+
+    /**
+     * Sets the double data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setDouble(final long position, final double value) {
+        pages[(int) (position >>> pageShift)].setDouble((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the float data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setFloat(final int position, final float value) {
+        setFloat((long) position, value);
+    }
+
+    /**
+     * Sets the float data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setFloat(final long position, final float value) {
+        pages[(int) (position >>> pageShift)].setFloat((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the int data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setInt(final int position, final int value) {
+        setInt((long) position, value);
+    }
+
+    /**
+     * Sets the int data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setInt(final long position, final int value) {
+        pages[(int) (position >>> pageShift)].setInt((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the long data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setLong(final int position, final long value) {
+        setLong((long) position, value);
+    }
+
+    /**
+     * Sets the long data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setLong(final long position, final long value) {
+        pages[(int) (position >>> pageShift)].setLong((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the short data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setShort(final int position, final short value) {
+        setShort((long) position, value);
+    }
+
+    /**
+     * Sets the short data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setShort(final long position, final short value) {
+        pages[(int) (position >>> pageShift)].setShort((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the unsigned byte data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUByte(final int position, final short value) {
+        setUByte((long) position, value);
+    }
+
+    /**
+     * Sets the unsigned byte data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUByte(final long position, final short value) {
+        pages[(int) (position >>> pageShift)].setUByte((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the unsigned int data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUInt(final int position, final long value) {
+        setUInt((long) position, value);
+    }
+
+    /**
+     * Sets the unsigned int data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUInt(final long position, final long value) {
+        pages[(int) (position >>> pageShift)].setUInt((int) (position & pageMask), value);
+    }
+
+    /**
+     * Sets the unsigned short data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUShort(final int position, final int value) {
+        setUShort((long) position, value);
+    }
+
+    /**
+     * Sets the unsigned short data in the page type.
+     *
+     * @param  position  position in data array
+     * @param  value     the new data value to be placed in the data array
+     */
+    protected final void setUShort(final long position, final int value) {
+        pages[(int) (position >>> pageShift)].setUShort((int) (position & pageMask), value);
+    }
+
+    /**
+     * Allocates a single page of the given type. Complex and color buffers are stored as their component type.
+     *
+     * @param   type  buffer type
+     * @param   size  number of elements in the page
+     *
+     * @return  the page buffer
+     */
+    private static BufferBase allocatePage(final ModelStorageBase.DataType type, final int size) {
+
+        switch (type) {
+
+            case BOOLEAN:
+                return new BufferBoolean(size);
+
+            case BYTE:
+                return new BufferByte(size);
+
+            case UBYTE:
+            case ARGB:
+                return new BufferUByte(size);
+
+            case SHORT:
+                return new BufferShort(size);
+
+            case USHORT:
+            case ARGB_USHORT:
+                return new BufferUShort(size);
+
+            case INTEGER:
+                return new BufferInt(size);
+
+            case UINTEGER:
+                return new BufferUInt(size);
+
+            case LONG:
+                return new BufferLong(size);
+
+            case FLOAT:
+            case COMPLEX:
+            case ARGB_FLOAT:
+                return new BufferFloat(size);
+
+            case DOUBLE:
+            case DCOMPLEX:
+                return new BufferDouble(size);
+
+            default:
+                throw new IllegalArgumentException("BufferPaged: Unknown data type " + type);
+        }
+    }
+}
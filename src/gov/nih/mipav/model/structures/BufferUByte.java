@@ -1,6 +1,9 @@
 package gov.nih.mipav.model.structures;
 
 
+import java.nio.ByteBuffer;
+
+
 /**
  * This class extends the abstract BufferBase class. It allocates the space for an unsigned byte buffer on construction.
  * This class also defines the accessors to the data as required by the abstract base class.
@@ -64,6 +67,18 @@ public class BufferUByte extends BufferBase {
         return dataArray.length;
     }
 
+    /**
+     * Returns a read only ByteBuffer that wraps a range of the data array without copying it.
+     *
+     * @param   start   first element of the view
+     * @param   length  number of elements in the view
+     *
+     * @return  the view
+     */
+    protected ByteBuffer getView(long start, int length) {
+        return ByteBuffer.wrap(dataArray, (int) start, length).slice().asReadOnlyBuffer();
+    }
+
     /**
      * Gets the data in as a Number object.
      *
@@ -0,0 +1,584 @@
+package gov.nih.mipav.model.structures;
+
+
+import gov.nih.mipav.util.ThreadUtil;
+
+import gov.nih.mipav.view.Preferences;
+
+import java.io.IOException;
+import java.nio.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.*;
+
+
+/**
+ * Whole image reductions (min, max, sum, sum of squares, non zero extremes and counts) and histograms computed
+ * directly on the storage of a ModelStorageBase. The image is split into chunks that are reduced on the MIPAV thread
+ * pool; each chunk is read through a read only view of the data buffer (see ModelStorageBase.getDataView) with a bulk
+ * get of the primitive type, so there is no per voxel call through BufferBase. Buffers that can not provide a view,
+ * such as boolean images, are read one value at a time.
+ *
+ * <p>Values are reduced per channel: one channel for gray scale images, four (alpha, red, green, blue) for ARGB
+ * images. Complex images can be reduced on the magnitude of each voxel. NaN values are skipped.</p>
+ */
+public class ImageStatistics {
+
+    //~ Static fields/initializers -------------------------------------------------------------------------------------
+
+    /** log10(e), used for the log magnitude display of complex images. */
+    private static final double LOG10_E = 0.4342944819;
+
+    /** Smallest number of values a task is given. A power of two so chunks never cross a page of a paged buffer. */
+    private static final int MIN_CHUNK = 1 << 18;
+
+    /** Number of values converted to doubles at a time. */
+    private static final int BLOCK = 4096;
+
+    //~ Inner Classes --------------------------------------------------------------------------------------------------
+
+    /**
+     * Reduction of the values of one channel.
+     */
+    public static class Result {
+
+        /** Smallest and largest value, infinite when there are no values. */
+        public double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+        /** Sum and sum of squares of the values. */
+        public double sum = 0, sumOfSquares = 0;
+
+        /** Number of values that are not NaN. */
+        public long count = 0;
+
+        /** Number of values that are not 0. */
+        public long nonZeroCount = 0;
+
+        /** Smallest and largest value that is not 0, infinite when there are none. */
+        public double nonZeroMin = Double.POSITIVE_INFINITY, nonZeroMax = Double.NEGATIVE_INFINITY;
+
+        /** Positive value closest to 0, positive infinity when there is none. */
+        public double smallestMagnitudePositive = Double.POSITIVE_INFINITY;
+
+        /** Negative value closest to 0, negative infinity when there is none. */
+        public double smallestMagnitudeNegative = Double.NEGATIVE_INFINITY;
+
+        /**
+         * Returns the mean of the values.
+         *
+         * @return  the mean, NaN when there are no values
+         */
+        public double getMean() {
+            return (count == 0) ? Double.NaN : (sum / count);
+        }
+
+        /**
+         * Returns the sample standard deviation of the values.
+         *
+         * @return  the standard deviation, NaN when there are less than 2 values
+         */
+        public double getStandardDeviation() {
+
+            if (count < 2) {
+                return Double.NaN;
+            }
+
+            final double variance = (sumOfSquares - (sum * sum / count)) / (count - 1);
+
+            return Math.sqrt(Math.max(variance, 0));
+        }
+
+        /**
+         * Adds one value.
+         *
+         * @param  value  the value
+         */
+        private void add(final double value) {
+
+            if (value != value) {
+                return;
+            }
+
+            count++;
+            sum += value;
+            sumOfSquares += value * value;
+
+            if (value > max) {
+                max = value;
+            }
+
+            if (value < min) {
+                min = value;
+            }
+
+            if (value != 0.0) {
+                nonZeroCount++;
+
+                if (value > nonZeroMax) {
+                    nonZeroMax = value;
+                }
+
+                if (value < nonZeroMin) {
+                    nonZeroMin = value;
+                }
+
+                if ( (value > 0.0) && (value < smallestMagnitudePositive)) {
+                    smallestMagnitudePositive = value;
+                }
+
+                if ( (value < 0.0) && (value > smallestMagnitudeNegative)) {
+                    smallestMagnitudeNegative = value;
+                }
+            }
+        }
+
+        /**
+         * Adds the values of another reduction.
+         *
+         * @param  other  the other reduction
+         */
+        private void merge(final Result other) {
+            count += other.count;
+            sum += other.sum;
+            sumOfSquares += other.sumOfSquares;
+            nonZeroCount += other.nonZeroCount;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            nonZeroMin = Math.min(nonZeroMin, other.nonZeroMin);
+            nonZeroMax = Math.max(nonZeroMax, other.nonZeroMax);
+            smallestMagnitudePositive = Math.min(smallestMagnitudePositive, other.smallestMagnitudePositive);
+            smallestMagnitudeNegative = Math.max(smallestMagnitudeNegative, other.smallestMagnitudeNegative);
+        }
+    }
+
+    /**
+     * The work done on one chunk of the data buffer.
+     */
+    private abstract static class ChunkTask<T> implements Callable<T> {
+
+        /** The image. */
+        protected final ModelStorageBase image;
+
+        /** First position of the chunk in the data buffer. */
+        protected final long start;
+
+        /** Number of values in the chunk. */
+        protected final int length;
+
+        /** Scratch array of the primitive type of the view. */
+        private Object primitives = null;
+
+        /**
+         * Creates a task.
+         *
+         * @param  image   the image
+         * @param  start   first position of the chunk
+         * @param  length  number of values in the chunk
+         */
+        protected ChunkTask(final ModelStorageBase image, final long start, final int length) {
+            this.image = image;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Handles one block of values of the chunk.
+         *
+         * @param  values    the values
+         * @param  n         number of values
+         * @param  position  position of the first value in the data buffer
+         */
+        protected abstract void block(double[] values, int n, long position);
+
+        /**
+         * Returns the result of the task once all the blocks are handled.
+         *
+         * @return  the result
+         */
+        protected abstract T result();
+
+        /**
+         * {@inheritDoc}
+         */
+        public T call() throws IOException {
+            final double[] values = new double[BLOCK];
+            final Buffer view = image.getDataView(start, length);
+            final boolean unsigned = isUnsigned(image.getDataType());
+
+            for (int off = 0; off < length; off += BLOCK) {
+                final int n = Math.min(BLOCK, length - off);
+
+                if (view == null) {
+
+                    for (int i = 0; i < n; i++) {
+                        values[i] = image.getDouble(start + off + i);
+                    }
+                } else {
+                    read(view, off, n, values, unsigned);
+                }
+
+                block(values, n, start + off);
+            }
+
+            return result();
+        }
+
+        /**
+         * Reads values of a view into doubles with a bulk get of the primitive type of the view.
+         *
+         * @param  view      the view
+         * @param  off       index of the first value in the view
+         * @param  n         number of values
+         * @param  values    the doubles
+         * @param  unsigned  whether the primitives hold unsigned values
+         */
+        private void read(final Buffer view, final int off, final int n, final double[] values,
+                final boolean unsigned) {
+
+            if (view instanceof ByteBuffer) {
+                if ( !(primitives instanceof byte[])) {
+                    primitives = new byte[BLOCK];
+                }
+
+                final byte[] b = (byte[]) primitives;
+                final ByteBuffer v = ((ByteBuffer) view).duplicate();
+                v.position(off);
+                v.get(b, 0, n);
+
+                for (int i = 0; i < n; i++) {
+                    values[i] = unsigned ? (b[i] & 0xff) : b[i];
+                }
+            } else if (view instanceof ShortBuffer) {
+                if ( !(primitives instanceof short[])) {
+                    primitives = new short[BLOCK];
+                }
+
+                final short[] s = (short[]) primitives;
+                final ShortBuffer v = ((ShortBuffer) view).duplicate();
+                v.position(off);
+                v.get(s, 0, n);
+
+                for (int i = 0; i < n; i++) {
+                    values[i] = unsigned ? (s[i] & 0xffff) : s[i];
+                }
+            } else if (view instanceof IntBuffer) {
+                if ( !(primitives instanceof int[])) {
+                    primitives = new int[BLOCK];
+                }
+
+                final int[] a = (int[]) primitives;
+                final IntBuffer v = ((IntBuffer) view).duplicate();
+                v.position(off);
+                v.get(a, 0, n);
+
+                for (int i = 0; i < n; i++) {
+                    values[i] = unsigned ? (a[i] & 0xffffffffL) : a[i];
+                }
+            } else if (view instanceof LongBuffer) {
+                if ( !(primitives instanceof long[])) {
+                    primitives = new long[BLOCK];
+                }
+
+                final long[] a = (long[]) primitives;
+                final LongBuffer v = ((LongBuffer) view).duplicate();
+                v.position(off);
+                v.get(a, 0, n);
+
+                for (int i = 0; i < n; i++) {
+                    values[i] = a[i];
+                }
+            } else if (view instanceof FloatBuffer) {
+                if ( !(primitives instanceof float[])) {
+                    primitives = new float[BLOCK];
+                }
+
+                final float[] f = (float[]) primitives;
+                final FloatBuffer v = ((FloatBuffer) view).duplicate();
+                v.position(off);
+                v.get(f, 0, n);
+
+                for (int i = 0; i < n; i++) {
+                    values[i] = f[i];
+                }
+            } else {
+                final DoubleBuffer v = ((DoubleBuffer) view).duplicate();
+                v.position(off);
+                v.get(values, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Creates the tasks of one reduction.
+     */
+    private interface TaskFactory<T> {
+
+        /**
+         * Creates the task of one chunk.
+         *
+         * @param   image   the image
+         * @param   start   first position of the chunk
+         * @param   length  number of values in the chunk
+         *
+         * @return  the task
+         */
+        ChunkTask<T> create(ModelStorageBase image, long start, int length);
+    }
+
+    //~ Methods --------------------------------------------------------------------------------------------------------
+
+    /**
+     * Reduces all the values of an image. ARGB images give four results, one per channel, others one.
+     *
+     * @param   image      the image
+     * @param   magnitude  whether the values of a complex image are reduced as the magnitude of each voxel rather
+     *                     than as separate real and imaginary values
+     * @param   absolute   whether the absolute value of each value is reduced
+     *
+     * @return  the reduction of each channel
+     *
+     * @throws  IOException  if the data can not be read
+     */
+    public static Result[] compute(final ModelStorageBase image, final boolean magnitude, final boolean absolute)
+            throws IOException {
+        final int channels = isColor(image) ? 4 : 1;
+        final boolean complex = magnitude && isComplex(image);
+        final Result[] total = newResults(channels);
+
+        for (final Result[] part : run(image, complex ? 2 : channels, new TaskFactory<Result[]>() {
+                public ChunkTask<Result[]> create(final ModelStorageBase img, final long start, final int length) {
+                    return new ChunkTask<Result[]>(img, start, length) {
+                        private final Result[] results = newResults(channels);
+
+                        protected void block(final double[] values, final int n, final long position) {
+
+                            if (complex) {
+
+                                for (int i = 0; i < n; i += 2) {
+                                    results[0].add(Math.sqrt( (values[i] * values[i])
+                                            + (values[i + 1] * values[i + 1])));
+                                }
+                            } else if (channels == 1) {
+                                final Result r = results[0];
+
+                                for (int i = 0; i < n; i++) {
+                                    r.add(absolute ? Math.abs(values[i]) : values[i]);
+                                }
+                            } else {
+
+                                for (int i = 0; i < n; i++) {
+                                    results[i & 3].add(absolute ? Math.abs(values[i]) : values[i]);
+                                }
+                            }
+                        }
+
+                        protected Result[] result() {
+                            return results;
+                        }
+                    };
+                }
+            })) {
+
+            for (int c = 0; c < channels; c++) {
+                total[c].merge(part[c]);
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Counts the values of one channel of an image into the bins of a histogram. A value v falls into bin
+     * (int) ((v - min) * (bins - 1) / (max - min) + 0.5), so that min and max are the centers of the first and last
+     * bins, as AlgorithmHistogram has always done. Values outside of [min, max] and NaN values are not counted.
+     * Complex images are binned on the magnitude of each voxel.
+     *
+     * @param   image    the image
+     * @param   channel  channel to count for ARGB images (0 alpha, 1 red, 2 green, 3 blue), ignored for others
+     * @param   logMag   for complex images, whether log10(1 + magnitude) is counted
+     * @param   bins     number of bins
+     * @param   min      value of the center of the first bin
+     * @param   max      value of the center of the last bin
+     * @param   mask     voxels to count, indexed by voxel modulo maskSize, or null to count all voxels
+     * @param   maskSize number of voxels the mask covers, usually the size of a volume
+     *
+     * @return  the count of each bin
+     *
+     * @throws  IOException  if the data can not be read
+     */
+    public static int[] histogram(final ModelStorageBase image, final int channel, final boolean logMag,
+            final int bins, final double min, final double max, final BitSet mask, final int maskSize)
+            throws IOException {
+        final boolean complex = isComplex(image);
+        final int channels = isColor(image) ? 4 : (complex ? 2 : 1);
+        final double divisor = (max == min) ? 1 : (max - min);
+        final double factor = (bins - 1) / divisor;
+        final int[] histo = new int[bins];
+
+        for (final int[] part : run(image, channels, new TaskFactory<int[]>() {
+                public ChunkTask<int[]> create(final ModelStorageBase img, final long start, final int length) {
+                    return new ChunkTask<int[]>(img, start, length) {
+                        private final int[] counts = new int[bins];
+
+                        protected void block(final double[] values, final int n, final long position) {
+                            final int first = (channels == 4) ? channel : 0;
+
+                            for (int i = first; i < n; i += channels) {
+                                double value;
+
+                                if (complex) {
+                                    value = Math.sqrt( (values[i] * values[i]) + (values[i + 1] * values[i + 1]));
+
+                                    if (logMag) {
+                                        value = LOG10_E * Math.log(1 + value);
+                                    }
+                                } else {
+                                    value = values[i];
+                                }
+
+                                if ( (mask != null) && !mask.get((int) ( ( (position + i) / channels) % maskSize))) {
+                                    continue;
+                                }
+
+                                final int bin = (int) ( ( (value - min) * factor) + 0.5);
+
+                                if ( (bin >= 0) && (bin < bins)) {
+                                    counts[bin]++;
+                                }
+                            }
+                        }
+
+                        protected int[] result() {
+                            return counts;
+                        }
+                    };
+                }
+            })) {
+
+            for (int b = 0; b < bins; b++) {
+                histo[b] += part[b];
+            }
+        }
+
+        return histo;
+    }
+
+    /**
+     * Splits the data buffer of an image into chunks and runs a task on each, on the thread pool when multithreading
+     * is enabled and the image is large enough to gain from it.
+     *
+     * @param   image    the image
+     * @param   stride   number of values of a voxel; chunks hold whole voxels
+     * @param   factory  creates the task of each chunk
+     *
+     * @return  the results of the tasks
+     *
+     * @throws  IOException  if a task fails
+     */
+    private static <T> List<T> run(final ModelStorageBase image, final int stride, final TaskFactory<T> factory)
+            throws IOException {
+        final long size = image.getDataSizeLong();
+        final int cores = ThreadUtil.getAvailableCores();
+        final boolean parallel = Preferences.isMultiThreadingEnabled() && (cores > 1) && (size > MIN_CHUNK);
+        long chunk = MIN_CHUNK;
+
+        // a power of two, and so a multiple of the stride, and at most a page of a paged buffer
+        while (parallel && ( (chunk * 4 * cores) < size) && (chunk < (1 << 24))) {
+            chunk <<= 1;
+        }
+
+        final int nChunks = (int) ( (size + chunk - 1) / chunk);
+        final FutureTask<?>[] tasks = new FutureTask<?>[nChunks];
+
+        for (int i = 0; i < nChunks; i++) {
+            final long start = i * chunk;
+            tasks[i] = new FutureTask<T>(factory.create(image, start, (int) Math.min(chunk, size - start)));
+
+            if (parallel) {
+                ThreadUtil.mipavThreadPool.execute(tasks[i]);
+            }
+        }
+
+        final List<T> results = new ArrayList<T>(nChunks);
+
+        for (int i = 0; i < nChunks; i++) {
+
+            // runs the task here if no pool thread has started it yet
+            tasks[i].run();
+
+            try {
+                @SuppressWarnings("unchecked")
+                final T result = (T) tasks[i].get();
+                results.add(result);
+            } catch (final InterruptedException e) {
+                throw new IOException("Image statistics interrupted");
+            } catch (final ExecutionException e) {
+
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+
+                throw new IOException("Image statistics failed: " + e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Creates empty reductions.
+     *
+     * @param   channels  number of channels
+     *
+     * @return  the reductions
+     */
+    private static Result[] newResults(final int channels) {
+        final Result[] results = new Result[channels];
+
+        for (int c = 0; c < channels; c++) {
+            results[c] = new Result();
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns whether an image holds four values per voxel.
+     *
+     * @param   image  the image
+     *
+     * @return  true for ARGB, ARGB_USHORT and ARGB_FLOAT images
+     */
+    private static boolean isColor(final ModelStorageBase image) {
+        final ModelStorageBase.DataType type = image.getDataType();
+
+        return (type == ModelStorageBase.DataType.ARGB) || (type == ModelStorageBase.DataType.ARGB_USHORT)
+                || (type == ModelStorageBase.DataType.ARGB_FLOAT);
+    }
+
+    /**
+     * Returns whether an image holds a real and an imaginary value per voxel.
+     *
+     * @param   image  the image
+     *
+     * @return  true for COMPLEX and DCOMPLEX images
+     */
+    private static boolean isComplex(final ModelStorageBase image) {
+        return (image.getDataType() == ModelStorageBase.DataType.COMPLEX)
+                || (image.getDataType() == ModelStorageBase.DataType.DCOMPLEX);
+    }
+
+    /**
+     * Returns whether the values of a data type are stored in a signed primitive of the same width.
+     *
+     * @param   type  the data type
+     *
+     * @return  true for the unsigned types
+     */
+    private static boolean isUnsigned(final ModelStorageBase.DataType type) {
+        return (type == ModelStorageBase.DataType.UBYTE) || (type == ModelStorageBase.DataType.USHORT)
+                || (type == ModelStorageBase.DataType.UINTEGER) || (type == ModelStorageBase.DataType.ARGB)
+                || (type == ModelStorageBase.DataType.ARGB_USHORT);
+    }
+}
@@ -151,6 +151,41 @@ public class ModelImage extends ModelStorageBase {
         
     	super(type, dimExtents);
 
+        init(type, dimExtents, name, _UI);
+    }
+
+    /**
+     * Creates a new ModelImage object whose data is memory mapped from an uncompressed image file rather than read
+     * into memory, registering it to the default user interface.
+     * 
+     * @param type indicates type of buffer(ie. byte, short ...), must be mappable
+     * @param dimExtents array indicating image extent in each dimension.
+     * @param name name of the image.
+     * @param file file holding the image data
+     * @param offset byte offset of the image data in the file
+     * @param bigEndian true if the data in the file is big endian
+     * 
+     * @throws IOException if the file cannot be mapped
+     * 
+     * @see BufferMapped
+     */
+    public ModelImage(final int type, final int[] dimExtents, final String name, final File file, final long offset,
+            final boolean bigEndian) throws IOException {
+
+        super(DataType.getDataType(type), dimExtents, file, offset, bigEndian);
+
+        init(type, dimExtents, name, ViewUserInterface.getReference());
+    }
+
+    /**
+     * Registers the image with the user interface and creates the masks, matrix holder and file infos.
+     * 
+     * @param type indicates type of buffer(ie. boolean, byte ...)
+     * @param dimExtents array indicating image extent in each dimension.
+     * @param name name of the image.
+     * @param _UI should be ViewUserInterface.getReference()
+     */
+    private void init(final int type, final int[] dimExtents, final String name, final ViewUserInterface _UI) {
         int i;
 
         // The user interface has a vector of all image models loaded into
@@ -180,7 +215,7 @@ public class ModelImage extends ModelStorageBase {
             units[i] = Unit.MILLIMETERS.getLegacyNum();
         }
 
-        int length = 1;
+        long length = 1;
 
         if (dimExtents.length <= 3) {
 
@@ -194,8 +229,7 @@ public class ModelImage extends ModelStorageBase {
             }
         }
 
-        mask = new BitSet(length);
-        maskBU = new BitSet(length);
+        createMask(length);
 
         // create Matrix Holder to store matrices
         this.matrixHolder = new MatrixHolder(dimExtents.length);
@@ -621,7 +655,7 @@ public class ModelImage extends ModelStorageBase {
      */
     public void changeExtents(final int[] dimExtents) {
         int i;
-        int length = 1;
+        long length = 1;
 
         if (dimExtents.length <= 3) {
 
@@ -635,8 +669,7 @@ public class ModelImage extends ModelStorageBase {
             }
         }
 
-        mask = new BitSet(length);
-        maskBU = new BitSet(length);
+        createMask(length);
         setExtents(dimExtents);
 
         final float[] resolutions = fileInfo[0].getResolutions();
@@ -842,6 +875,16 @@ public class ModelImage extends ModelStorageBase {
         maskBU = new BitSet(length);
     }
 
+    /**
+     * Creates mask and maskBU for a volume of the given length. The masks are indexed by int, so the masks of a paged
+     * volume larger than that start empty and grow as they are set.
+     * 
+     * @param length number of voxels in the volume
+     */
+    private void createMask(final long length) {
+        createMask( (length > Integer.MAX_VALUE) ? 0 : (int) length);
+    }
+
     /**
      * Displays all information about an image.
      * 
@@ -5210,7 +5253,7 @@ public class ModelImage extends ModelStorageBase {
         double imMax = getMax();
         double imMin = getMin();
         double imDiff = imMax - imMin;
-        if ( (start >= 0) && ( (start + length) <= getSize()) && (length <= values.length)) {
+        if ( (start >= 0) && ( (start + length) <= getSizeLong()) && (length <= values.length)) {
 
             try {
                 setLock(ModelStorageBase.W_LOCKED);
@@ -5269,7 +5312,7 @@ public class ModelImage extends ModelStorageBase {
             throws IOException {
         int i, j;
 
-        if ( (start >= 0) && ( (start + length) <= getSize()) && (length <= values.length)) {
+        if ( (start >= 0) && ( (start + length) <= getSizeLong()) && (length <= values.length)) {
 
             try {
                 setLock(ModelStorageBase.W_LOCKED);
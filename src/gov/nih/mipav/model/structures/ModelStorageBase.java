@@ -9,9 +9,11 @@ import gov.nih.mipav.view.MipavUtil;
 import gov.nih.mipav.view.Preferences;
 import gov.nih.mipav.view.Preferences.ComplexDisplay;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import WildMagic.LibFoundation.Containment.ContBox3f;
 import WildMagic.LibFoundation.Mathematics.*;
@@ -44,6 +46,13 @@ public class ModelStorageBase extends ModelSerialCloneable {
     /** Used to indicate that the buffer is locked from writing. */
     public static final int W_LOCKED = 2;
 
+    /**
+     * Largest buffer that is stored in a single Java array. Larger buffers are split into pages.
+     * 
+     * @see BufferPaged
+     */
+    public static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
     /** Used to indicate nearest neighbor interpolation. */
     public static final int NEAREST = 0;
 
@@ -275,9 +284,15 @@ public class ModelStorageBase extends ModelSerialCloneable {
     /** Storage location of image data. */
     private BufferBase data;
 
-    /** Total buffer length. */
+    /**
+     * Total buffer length, clamped to Integer.MAX_VALUE for paged buffers. Only the bounds checks of the int position
+     * accessors use the clamped value, getSize() and getDataSize() refuse buffers that exceed it.
+     */
     private int dataSize;
 
+    /** Total buffer length. */
+    private long dataSizeLong;
+
     /**
      * Bounds of the image where.
      * 
@@ -324,7 +339,14 @@ public class ModelStorageBase extends ModelSerialCloneable {
     private boolean image25D;
 
     /** Locking status of the image. Default = UNLOCKED */
-    private int lockStatus = ModelStorageBase.UNLOCKED;
+    private volatile int lockStatus = ModelStorageBase.UNLOCKED;
+
+    /**
+     * Guards the data buffer: exports share the read lock so that several threads can copy slabs out concurrently,
+     * while imports and reallocation take the write lock. The write lock is always taken while holding the object
+     * monitor, and the read lock never is, so the two cannot deadlock.
+     */
+    private final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
 
     /** Boolean telling if log magnitude display is used for the data buffer */
     protected boolean logMagDisp;
@@ -453,6 +475,32 @@ public class ModelStorageBase extends ModelSerialCloneable {
         construct(type, dimExtents);
     }
 
+    /**
+     * Maps the image data directly from an uncompressed file instead of allocating buffer memory. Only the parts of
+     * the file that are accessed are read from disk. Changes to the data are kept in memory and are never written
+     * back to the file.
+     * 
+     * @param type type of the buffer, must be one of the types accepted by BufferMapped.isMappable()
+     * @param dimExtents extents of the buffer in each dimension
+     * @param file file holding the image data
+     * @param offset byte offset of the image data in the file
+     * @param bigEndian true if the data in the file is big endian
+     * 
+     * @throws IOException if the file cannot be mapped
+     * 
+     * @see BufferMapped
+     */
+    public ModelStorageBase(final DataType type, final int[] dimExtents, final File file, final long offset,
+            final boolean bigEndian) throws IOException {
+        this.bufferType = type;
+        this.dimExtents = dimExtents.clone();
+        this.nDims = dimExtents.length;
+
+        computeDataSize();
+
+        this.data = new BufferMapped(type, file, offset, dataSizeLong, bigEndian);
+    }
+
     // ~ Methods
     // --------------------------------------------------------------------------------------------------------
 
@@ -533,108 +581,25 @@ public class ModelStorageBase extends ModelSerialCloneable {
         min = Double.POSITIVE_INFINITY;
         max = Double.NEGATIVE_INFINITY;
 
-        int i;
-        double value;
-
         if ( (bufferType == DataType.COMPLEX) || (bufferType == DataType.DCOMPLEX)) {
             calcMinMaxMag(logMagDisplay);
         } else if ( (bufferType != DataType.ARGB) && (bufferType != DataType.ARGB_USHORT)
                 && (bufferType != DataType.ARGB_FLOAT)) {
+            final ImageStatistics.Result[] stats = computeStatistics(false, false);
 
-            /*
-             * if (bufferType == SHORT) { // I thought this would be faster but it is not -- Matt 9/5/2008 short
-             * minShort; short maxShort; short valueShort; minShort = Short.MAX_VALUE; maxShort = Short.MIN_VALUE; for
-             * (i = 0; i < dataSize; i++) { valueShort = data.getShort(i);
-             * 
-             * if (valueShort > maxShort) { maxShort = valueShort; }
-             * 
-             * if (valueShort < minShort) { minShort = valueShort; } } min = minShort; max = maxShort; }
-             */
-            // else if (bufferType == DOUBLE) {
-            for (i = 0; i < dataSize; i++) {
-                value = data.getDouble(i);
-                if (value > max) {
-                    max = value;
-                }
-
-                if (value < min) {
-                    min = value;
-                }
-            }
-            // Handle case where all values in image are Double.NaN or Float.NaN
-            if ((max == Double.NEGATIVE_INFINITY) && (min == Double.POSITIVE_INFINITY)) {
-            	min = Double.NaN;
-            	max = Double.NaN;
-            }
+            min = extreme(stats[0].min, stats[0].count > 0);
+            max = extreme(stats[0].max, stats[0].count > 0);
         } else { // color
-            minA = Double.POSITIVE_INFINITY;
-            maxA = Double.NEGATIVE_INFINITY;
-            minR = Double.POSITIVE_INFINITY;
-            maxR = Double.NEGATIVE_INFINITY;
-            minG = Double.POSITIVE_INFINITY;
-            maxG = Double.NEGATIVE_INFINITY;
-            minB = Double.POSITIVE_INFINITY;
-            maxB = Double.NEGATIVE_INFINITY;
-
-            for (i = 0; i < dataSize; i += 4) {
-                value = data.getDouble(i);
-
-                if (value > maxA) {
-                    maxA = value;
-                }
-
-                if (value < minA) {
-                    minA = value;
-                }
-                
-                value = data.getDouble(i + 1);
-
-                if (value > maxR) {
-                    maxR = value;
-                }
-
-                if (value < minR) {
-                    minR = value;
-                }
-
-                value = data.getDouble(i + 2);
-
-                if (value > maxG) {
-                    maxG = value;
-                }
-
-                if (value < minG) {
-                    minG = value;
-                }
-
-                value = data.getDouble(i + 3);
-
-                if (value > maxB) {
-                    maxB = value;
-                }
-
-                if (value < minB) {
-                    minB = value;
-                }
-            } // for(i= 0; i < dataSize; i+=4)
-            
-            // Check for case where all values in buffer are Double.NaN or Float.NaN
-            if ((maxA == Double.NEGATIVE_INFINITY) && (minA == Double.POSITIVE_INFINITY)) {
-            	minA = Double.NaN;
-            	maxA = Double.NaN;
-            }
-            if ((maxR == Double.NEGATIVE_INFINITY) && (minR == Double.POSITIVE_INFINITY)) {
-            	minR = Double.NaN;
-            	maxR = Double.NaN;
-            }
-            if ((maxG == Double.NEGATIVE_INFINITY) && (minG == Double.POSITIVE_INFINITY)) {
-            	minG = Double.NaN;
-            	maxG = Double.NaN;
-            }
-            if ((maxB == Double.NEGATIVE_INFINITY) && (minB == Double.POSITIVE_INFINITY)) {
-            	minB = Double.NaN;
-            	maxB = Double.NaN;
-            }
+            final ImageStatistics.Result[] stats = computeStatistics(false, false);
+
+            minA = extreme(stats[0].min, stats[0].count > 0);
+            maxA = extreme(stats[0].max, stats[0].count > 0);
+            minR = extreme(stats[1].min, stats[1].count > 0);
+            maxR = extreme(stats[1].max, stats[1].count > 0);
+            minG = extreme(stats[2].min, stats[2].count > 0);
+            maxG = extreme(stats[2].max, stats[2].count > 0);
+            minB = extreme(stats[3].min, stats[3].count > 0);
+            maxB = extreme(stats[3].max, stats[3].count > 0);
             min = Math.min(minR, Math.min(minG, minB));
             max = Math.max(maxR, Math.max(maxG, maxB));
         } // else color
@@ -647,49 +612,27 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * @param logMagDisplay if true calculate min and max for log10 of 1 + magnitude
      */
     public void calcMinMaxMag(final boolean logMagDisplay) {
-        min = Double.POSITIVE_INFINITY;
-        max = Double.NEGATIVE_INFINITY;
-        noLogMin = Double.POSITIVE_INFINITY;
-        noLogMinNonZero = Double.POSITIVE_INFINITY;
-        noLogMax = Double.NEGATIVE_INFINITY;
-
-        int i;
-        double valuer, valuei, value;
-
-        for (i = 0; i < dataSize; i = i + 2) {
-            valuer = data.getDouble(i);
-            valuei = data.getDouble(i + 1);
-            value = java.lang.Math.sqrt( (valuer * valuer) + (valuei * valuei));
-
-            if (logMagDisplay) {
+        final ImageStatistics.Result stats = computeStatistics(true, false)[0];
 
-                if (value > noLogMax) {
-                    noLogMax = value;
-                }
-
-                if (value < noLogMin) {
-                    noLogMin = value;
-                }
-
-                if ( (value > 0) && (value < noLogMinNonZero)) {
-                    noLogMinNonZero = value;
-                }
-
-                value = 0.4342944819 * java.lang.Math.log(1 + value);
-            }
-
-            if (value > max) {
-                max = value;
-            }
+        if (logMagDisplay) {
+            noLogMin = stats.min;
+            noLogMax = stats.max;
+            noLogMinNonZero = stats.smallestMagnitudePositive;
 
-            if (value < min) {
-                min = value;
-            }
+            // log10(1 + magnitude) is increasing, so it maps the extremes of the magnitude to its own extremes
+            min = 0.4342944819 * java.lang.Math.log(1 + stats.min);
+            max = 0.4342944819 * java.lang.Math.log(1 + stats.max);
+        } else {
+            noLogMin = Double.POSITIVE_INFINITY;
+            noLogMinNonZero = Double.POSITIVE_INFINITY;
+            noLogMax = Double.NEGATIVE_INFINITY;
+            min = stats.min;
+            max = stats.max;
         }
 
-        for (i = 0; i < fileInfo.length; i++) {
-            fileInfo[i].setMin(getMin());
-            fileInfo[i].setMax(getMax());
+        for (int j = 0; j < fileInfo.length; j++) {
+            fileInfo[j].setMin(getMin());
+            fileInfo[j].setMax(getMax());
         }
 
     }
@@ -698,42 +641,6 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * Calculates the min and max nonzero values for the image array.
      */
     public void calcMinMaxNonZero() {
-        boolean foundNonZeroMin;
-        boolean foundNonZeroMax;
-        boolean foundSmallestMagnitudeNegative;
-        boolean foundSmallestMagnitudePositive;
-        boolean foundNonZeroMinR;
-        boolean foundNonZeroMaxR;
-        boolean foundSmallestMagnitudeNegativeR;
-        boolean foundSmallestMagnitudePositiveR;
-        boolean foundNonZeroMinG;
-        boolean foundNonZeroMaxG;
-        boolean foundSmallestMagnitudeNegativeG;
-        boolean foundSmallestMagnitudePositiveG;
-        boolean foundNonZeroMinB;
-        boolean foundNonZeroMaxB;
-        boolean foundSmallestMagnitudeNegativeB;
-        boolean foundSmallestMagnitudePositiveB;
-
-        nonZeroMin = Double.POSITIVE_INFINITY;
-        nonZeroMax = -Double.POSITIVE_INFINITY;
-        smallestMagnitudeNegative = -Double.POSITIVE_INFINITY;
-        smallestMagnitudePositive = Double.POSITIVE_INFINITY;
-        nonZeroMinR = Double.POSITIVE_INFINITY;
-        nonZeroMaxR = -Double.POSITIVE_INFINITY;
-        smallestMagnitudeNegativeR = -Double.POSITIVE_INFINITY;
-        smallestMagnitudePositiveR = Double.POSITIVE_INFINITY;
-        nonZeroMinG = Double.POSITIVE_INFINITY;
-        nonZeroMaxG = -Double.POSITIVE_INFINITY;
-        smallestMagnitudeNegativeG = -Double.POSITIVE_INFINITY;
-        smallestMagnitudePositiveG = Double.POSITIVE_INFINITY;
-        nonZeroMinB = Double.POSITIVE_INFINITY;
-        nonZeroMaxB = -Double.POSITIVE_INFINITY;
-        smallestMagnitudeNegativeB = -Double.POSITIVE_INFINITY;
-        smallestMagnitudePositiveB = Double.POSITIVE_INFINITY;
-
-        int i;
-        double value;
 
         if (bufferType == DataType.BOOLEAN) {
             nonZeroMin = 1;
@@ -742,194 +649,80 @@ public class ModelStorageBase extends ModelSerialCloneable {
             smallestMagnitudePositive = 1;
         } else if ( (bufferType != DataType.ARGB) && (bufferType != DataType.ARGB_USHORT)
                 && (bufferType != DataType.ARGB_FLOAT)) {
-            foundNonZeroMin = false;
-            foundNonZeroMax = false;
-            foundSmallestMagnitudeNegative = false;
-            foundSmallestMagnitudePositive = false;
-
-            for (i = 0; i < dataSize; i++) {
-                value = data.getDouble(i);
-
-                if (value != 0.0) {
+            final ImageStatistics.Result[] stats = computeStatistics(false, false);
 
-                    if (value > nonZeroMax) {
-                        nonZeroMax = value;
-                        foundNonZeroMax = true;
-                    }
-
-                    if (value < nonZeroMin) {
-                        nonZeroMin = value;
-                        foundNonZeroMin = true;
-                    }
-
-                    if ( (value > 0.0) && (value < smallestMagnitudePositive)) {
-                        smallestMagnitudePositive = value;
-                        foundSmallestMagnitudePositive = true;
-                    }
-
-                    if ( (value < 0.0) && (value > smallestMagnitudeNegative)) {
-                        smallestMagnitudeNegative = value;
-                        foundSmallestMagnitudeNegative = true;
-                    }
-                } // if (value != 0.0)
-            } // for(i= 0; i < dataSize; i++)
-
-            if ( !foundNonZeroMin) {
-                nonZeroMin = Double.NaN;
-            }
-
-            if ( !foundNonZeroMax) {
-                nonZeroMax = Double.NaN;
-            }
-
-            if ( !foundSmallestMagnitudePositive) {
-                smallestMagnitudePositive = Double.NaN;
-            }
-
-            if ( !foundSmallestMagnitudeNegative) {
-                smallestMagnitudeNegative = Double.NaN;
-            }
+            nonZeroMin = extreme(stats[0].nonZeroMin, stats[0].nonZeroCount > 0);
+            nonZeroMax = extreme(stats[0].nonZeroMax, stats[0].nonZeroCount > 0);
+            smallestMagnitudePositive = finite(stats[0].smallestMagnitudePositive);
+            smallestMagnitudeNegative = finite(stats[0].smallestMagnitudeNegative);
         } // else if (bufferType != ARGB &&...)
-        else { // color
-            foundNonZeroMinR = false;
-            foundNonZeroMaxR = false;
-            foundSmallestMagnitudeNegativeR = false;
-            foundSmallestMagnitudePositiveR = false;
-            foundNonZeroMinG = false;
-            foundNonZeroMaxG = false;
-            foundSmallestMagnitudeNegativeG = false;
-            foundSmallestMagnitudePositiveG = false;
-            foundNonZeroMinB = false;
-            foundNonZeroMaxB = false;
-            foundSmallestMagnitudeNegativeB = false;
-            foundSmallestMagnitudePositiveB = false;
-
-            for (i = 0; i < dataSize; i += 4) {
-                value = Math.abs(data.getDouble(i + 1));
-
-                if (value != 0.0) {
-
-                    if (value > nonZeroMaxR) {
-                        nonZeroMaxR = value;
-                        foundNonZeroMaxR = true;
-                    }
-
-                    if (value < nonZeroMinR) {
-                        nonZeroMinR = value;
-                        foundNonZeroMinR = true;
-                    }
-
-                    if ( (value > 0.0) && (value < smallestMagnitudePositiveR)) {
-                        smallestMagnitudePositiveR = value;
-                        foundSmallestMagnitudePositiveR = true;
-                    }
-
-                    if ( (value < 0.0) && (value > smallestMagnitudeNegativeR)) {
-                        smallestMagnitudeNegativeR = value;
-                        foundSmallestMagnitudeNegativeR = true;
-                    }
-                } // if (value != 0.0)
-
-                value = Math.abs(data.getDouble(i + 2));
-
-                if (value != 0.0) {
-
-                    if (value > nonZeroMaxG) {
-                        nonZeroMaxG = value;
-                        foundNonZeroMaxG = true;
-                    }
-
-                    if (value < nonZeroMinG) {
-                        nonZeroMinG = value;
-                        foundNonZeroMinG = true;
-                    }
-
-                    if ( (value > 0.0) && (value < smallestMagnitudePositiveG)) {
-                        smallestMagnitudePositiveG = value;
-                        foundSmallestMagnitudePositiveG = true;
-                    }
-
-                    if ( (value < 0.0) && (value > smallestMagnitudeNegativeG)) {
-                        smallestMagnitudeNegativeG = value;
-                        foundSmallestMagnitudeNegativeG = true;
-                    }
-                } // if (value != 0.0)
-
-                value = Math.abs(data.getDouble(i + 3));
-
-                if (value != 0.0) {
-
-                    if (value > nonZeroMaxB) {
-                        nonZeroMaxB = value;
-                        foundNonZeroMaxB = true;
-                    }
-
-                    if (value < nonZeroMinB) {
-                        nonZeroMinB = value;
-                        foundNonZeroMinB = true;
-                    }
-
-                    if ( (value > 0.0) && (value < smallestMagnitudePositiveB)) {
-                        smallestMagnitudePositiveB = value;
-                        foundSmallestMagnitudePositiveB = true;
-                    }
-
-                    if ( (value < 0.0) && (value > smallestMagnitudeNegativeB)) {
-                        smallestMagnitudeNegativeB = value;
-                        foundSmallestMagnitudeNegativeB = true;
-                    }
-                } // if (value != 0.0)
-            } // for(i= 0; i < dataSize; i+=4)
-
-            if ( !foundNonZeroMinR) {
-                nonZeroMinR = Double.NaN;
-            }
-
-            if ( !foundNonZeroMaxR) {
-                nonZeroMaxR = Double.NaN;
-            }
-
-            if ( !foundSmallestMagnitudePositiveR) {
-                smallestMagnitudePositiveR = Double.NaN;
-            }
-
-            if ( !foundSmallestMagnitudeNegativeR) {
-                smallestMagnitudeNegativeR = Double.NaN;
-            }
-
-            if ( !foundNonZeroMinG) {
-                nonZeroMinG = Double.NaN;
-            }
+        else { // color, on the magnitude of each channel
+            final ImageStatistics.Result[] stats = computeStatistics(false, true);
+
+            nonZeroMinR = extreme(stats[1].nonZeroMin, stats[1].nonZeroCount > 0);
+            nonZeroMaxR = extreme(stats[1].nonZeroMax, stats[1].nonZeroCount > 0);
+            smallestMagnitudePositiveR = finite(stats[1].smallestMagnitudePositive);
+            smallestMagnitudeNegativeR = finite(stats[1].smallestMagnitudeNegative);
+            nonZeroMinG = extreme(stats[2].nonZeroMin, stats[2].nonZeroCount > 0);
+            nonZeroMaxG = extreme(stats[2].nonZeroMax, stats[2].nonZeroCount > 0);
+            smallestMagnitudePositiveG = finite(stats[2].smallestMagnitudePositive);
+            smallestMagnitudeNegativeG = finite(stats[2].smallestMagnitudeNegative);
+            nonZeroMinB = extreme(stats[3].nonZeroMin, stats[3].nonZeroCount > 0);
+            nonZeroMaxB = extreme(stats[3].nonZeroMax, stats[3].nonZeroCount > 0);
+            smallestMagnitudePositiveB = finite(stats[3].smallestMagnitudePositive);
+            smallestMagnitudeNegativeB = finite(stats[3].smallestMagnitudeNegative);
+        } // else color
 
-            if ( !foundNonZeroMaxG) {
-                nonZeroMaxG = Double.NaN;
-            }
+    }
 
-            if ( !foundSmallestMagnitudePositiveG) {
-                smallestMagnitudePositiveG = Double.NaN;
-            }
+    /**
+     * Reduces the data array with ImageStatistics. When the data can not be read the results hold no values.
+     * 
+     * @param magnitude whether complex data is reduced as the magnitude of each voxel
+     * @param absolute whether the absolute value of each value is reduced
+     * 
+     * @return the reduction of each channel
+     */
+    private ImageStatistics.Result[] computeStatistics(final boolean magnitude, final boolean absolute) {
 
-            if ( !foundSmallestMagnitudeNegativeG) {
-                smallestMagnitudeNegativeG = Double.NaN;
-            }
+        try {
+            return ImageStatistics.compute(this, magnitude, absolute);
+        } catch (final IOException error) {
+            Preferences.debug("ModelStorageBase: statistics failed: " + error + "\n", Preferences.DEBUG_MINOR);
 
-            if ( !foundNonZeroMinB) {
-                nonZeroMinB = Double.NaN;
-            }
+            final int channels = ( (bufferType == DataType.ARGB) || (bufferType == DataType.ARGB_USHORT)
+                    || (bufferType == DataType.ARGB_FLOAT)) ? 4 : 1;
+            final ImageStatistics.Result[] empty = new ImageStatistics.Result[channels];
 
-            if ( !foundNonZeroMaxB) {
-                nonZeroMaxB = Double.NaN;
+            for (int c = 0; c < channels; c++) {
+                empty[c] = new ImageStatistics.Result();
             }
 
-            if ( !foundSmallestMagnitudePositiveB) {
-                smallestMagnitudePositiveB = Double.NaN;
-            }
+            return empty;
+        }
+    }
 
-            if ( !foundSmallestMagnitudeNegativeB) {
-                smallestMagnitudeNegativeB = Double.NaN;
-            }
-        } // else color
+    /**
+     * Returns an extreme found by a reduction, or NaN when the reduction found no value for it.
+     * 
+     * @param value the extreme
+     * @param found whether a value was found
+     * 
+     * @return the extreme, or NaN
+     */
+    private static double extreme(final double value, final boolean found) {
+        return found ? value : Double.NaN;
+    }
 
+    /**
+     * Returns a value, or NaN when it is infinite because a reduction found nothing for it.
+     * 
+     * @param value the value
+     * 
+     * @return the value, or NaN
+     */
+    private static double finite(final double value) {
+        return Double.isInfinite(value) ? Double.NaN : value;
     }
 
     /**
@@ -968,20 +761,32 @@ public class ModelStorageBase extends ModelSerialCloneable {
             // data = null;
             // System.gc();
             if (getType() != ModelStorageBase.FLOAT) {
-                int i;
+                dataLock.writeLock().lock();
 
-                for (this.dataSize = 1, i = 0; i < this.nDims; i++) {
-                    this.dataSize *= dimExtents[i];
-                }
+                try {
+                    int i;
 
-                final float[] imgBuf = new float[dataSize];
+                    if (isPaged()) {
+                        convertPagedToFloat();
 
-                exportData(0, dataSize, imgBuf);
+                        return;
+                    }
 
-                data = null;
-                System.gc();
-                construct(DataType.FLOAT, dimExtents);
-                importData(0, imgBuf, true);
+                    for (this.dataSize = 1, i = 0; i < this.nDims; i++) {
+                        this.dataSize *= dimExtents[i];
+                    }
+
+                    final float[] imgBuf = new float[dataSize];
+
+                    exportData(0, dataSize, imgBuf);
+
+                    data = null;
+                    System.gc();
+                    construct(DataType.FLOAT, dimExtents);
+                    importData(0, imgBuf, true);
+                } finally {
+                    dataLock.writeLock().unlock();
+                }
             } else {
                 return;
             }
@@ -990,6 +795,23 @@ public class ModelStorageBase extends ModelSerialCloneable {
         }
     }
 
+    /**
+     * Converts a paged buffer to float element by element, since the data cannot be exported into a single float
+     * array.
+     */
+    private void convertPagedToFloat() {
+        final BufferBase oldData = data;
+        final long size = dataSizeLong;
+
+        construct(DataType.FLOAT, dimExtents);
+
+        for (long i = 0; i < size; i++) {
+            data.setFloat(i, oldData.getFloat(i));
+        }
+
+        calcMinMax();
+    }
+
     /**
      * Dispose of memory and call the garbage collector.
      */
@@ -1204,25 +1026,23 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportComplexData(final int start, final int length, final float[] valuesR,
+    public final void exportComplexData(final int start, final int length, final float[] valuesR,
             final float[] valuesI) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + (2 * length)) <= dataSize) && (length <= valuesR.length)
                 && (length <= valuesI.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i += 2, j++) {
                     valuesR[j] = data.getFloat(i);
                     valuesI[j] = data.getFloat(i + 1);
                 }
 
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1275,9 +1095,9 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         if ( (start >= 0) && ( (start + length) <= dataSize)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 final Class<?> buffer_type = data.getType();
                 if (buffer_type == null) {
                     return null;
@@ -1288,10 +1108,8 @@ public class ModelStorageBase extends ModelSerialCloneable {
                 for (i = start, j = 0; j < length; i++, j++) {
                     Array.set(value_array, j, data.get(i));
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return value_array;
@@ -1306,16 +1124,16 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * @param value_array Object storing data.
      * @throws IOException
      */
-    public final void importData(final Object value_array) throws IOException {
+    public final synchronized void importData(final Object value_array) throws IOException {
         try {
-            setLock(ModelStorageBase.W_LOCKED);
+            setWriteLock();
             for (int i = 0; i < Math.min(Array.getLength(value_array), dataSize); i++) {
                 data.set(i, (Number) Array.get(value_array, i));
             }
         } catch (final IOException error) {
             throw error;
         } finally {
-            releaseLock();
+            releaseWriteLock();
         }
     }
 
@@ -1333,16 +1151,14 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i++, j++) {
                     values[j] = data.get(i);
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1360,15 +1176,15 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportData(final int start, final int length, final BitSet values)
+    public final void exportData(final int start, final int length, final BitSet values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.size())) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i++, j++) {
 
                     if (data.getBoolean(i)) {
@@ -1377,10 +1193,8 @@ public class ModelStorageBase extends ModelSerialCloneable {
                         values.clear(j);
                     }
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1398,23 +1212,21 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportData(final int start, final int length, final byte[] values)
+    public final void exportData(final int start, final int length, final byte[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i++, j++) {
                     values[j] = data.getByte(i);
                 }
 
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1432,23 +1244,21 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportData(final int start, final int length, final short[] values)
+    public final void exportData(final int start, final int length, final short[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i++, j++) {
                     values[j] = data.getShort(i);
                 }
 
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1466,22 +1276,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportData(final int start, final int length, final int[] values) throws IOException {
+    public final void exportData(final int start, final int length, final int[] values) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i++, j++) {
                     values[j] = data.getInt(i);
                 }
 
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1499,22 +1307,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportData(final int start, final int length, final long[] values)
+    public final void exportData(final int start, final int length, final long[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i++, j++) {
                     values[j] = data.getLong(i);
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1532,23 +1338,21 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportData(final int start, final int length, final float[] values)
+    public final void exportData(final int start, final int length, final float[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i++, j++) {
                     values[j] = data.getFloat(i);
                 }
 
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1567,23 +1371,21 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportData(final int start, final int length, final double[] values)
+    public final void exportData(final int start, final int length, final double[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i++, j++) {
                     values[j] = data.getDouble(i);
                 }
 
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1602,7 +1404,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportData(final int start, final int length0, final int length1,
+    public final void exportData(final int start, final int length0, final int length1,
             final float[] values) throws IOException {
         int i, j;
         int x, y;
@@ -1610,9 +1412,9 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (y = 0, j = 0; y < length1; y++) {
 
                     for (x = 0; x <= (length0 - 1); x++, j++) {
@@ -1620,10 +1422,8 @@ public class ModelStorageBase extends ModelSerialCloneable {
                         values[j] = data.getFloat(i);
                     }
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -1647,8 +1447,14 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i++, j++) {
-                values[j] = data.get(i);
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.get(i);
+                }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -1666,19 +1472,25 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a bounds error.
      */
-    public final synchronized void exportDataNoLock(final int start, final int length, final BitSet values)
+    public final void exportDataNoLock(final int start, final int length, final BitSet values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.size())) {
 
-            for (i = start, j = 0; j < length; i++, j++) {
+            dataLock.readLock().lock();
 
-                if (data.getBoolean(i)) {
-                    values.set(j);
-                } else {
-                    values.clear(j);
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+
+                    if (data.getBoolean(i)) {
+                        values.set(j);
+                    } else {
+                        values.clear(j);
+                    }
                 }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -1696,14 +1508,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a bounds error.
      */
-    public final synchronized void exportDataNoLock(final int start, final int length, final byte[] values)
+    public final void exportDataNoLock(final int start, final int length, final byte[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i++, j++) {
-                values[j] = data.getByte(i);
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getByte(i);
+                }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -1721,14 +1539,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a bounds error.
      */
-    public final synchronized void exportDataNoLock(final int start, final int length, final short[] values)
+    public final void exportDataNoLock(final int start, final int length, final short[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i++, j++) {
-                values[j] = data.getShort(i);
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getShort(i);
+                }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -1746,18 +1570,24 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a bounds error.
      */
-    public final synchronized void exportDataNoLock(final int start, final int length, final int[] values)
+    public final void exportDataNoLock(final int start, final int length, final int[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i++, j++) {
-                values[j] = data.getInt(i);
-            }
-
-            return;
-        }
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getInt(i);
+                }
+            } finally {
+                dataLock.readLock().unlock();
+            }
+
+            return;
+        }
 
         throw new IOException("Export data error - bounds incorrect");
     }
@@ -1771,14 +1601,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a bounds error.
      */
-    public final synchronized void exportDataNoLock(final int start, final int length, final long[] values)
+    public final void exportDataNoLock(final int start, final int length, final long[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i++, j++) {
-                values[j] = data.getLong(i);
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getLong(i);
+                }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -1796,14 +1632,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a bounds error.
      */
-    public final synchronized void exportDataNoLock(final int start, final int length, final float[] values)
+    public final void exportDataNoLock(final int start, final int length, final float[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i++, j++) {
-                values[j] = data.getFloat(i);
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getFloat(i);
+                }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -1821,14 +1663,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a bounds error.
      */
-    public final synchronized void exportDataNoLock(final int start, final int length, final double[] values)
+    public final void exportDataNoLock(final int start, final int length, final double[] values)
             throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + length) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i++, j++) {
-                values[j] = data.getDouble(i);
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getDouble(i);
+                }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -1847,24 +1695,22 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportDComplexData(final int start, final int length, final double[] valuesR,
+    public final void exportDComplexData(final int start, final int length, final double[] valuesR,
             final double[] valuesI) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + (2 * length)) <= dataSize) && (length <= valuesR.length)
                 && (length <= valuesI.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i += 2, j++) {
                     valuesR[j] = data.getDouble(i);
                     valuesI[j] = data.getDouble(i + 1);
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -2578,25 +2424,23 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportDMagData(final int start, final int length, final double[] values)
+    public final void exportDMagData(final int start, final int length, final double[] values)
             throws IOException {
         int i, j;
         double real, imaginary;
 
         if ( (start >= 0) && ( (start + (2 * length)) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i += 2, j++) {
                     real = data.getDouble(i);
                     imaginary = data.getDouble(i + 1);
                     values[j] = Math.sqrt( (real * real) + (imaginary * imaginary));
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -2614,27 +2458,24 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportMagData(final int start, final int length, final float[] values)
+    public final void exportMagData(final int start, final int length, final float[] values)
             throws IOException {
         int i, j;
         double real, imaginary;
 
         if ( (start >= 0) && ( (start + (2 * length)) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i += 2, j++) {
                     real = data.getFloat(i);
                     imaginary = data.getFloat(i + 1);
                     values[j] = (float) Math.sqrt( (real * real) + (imaginary * imaginary));
                 }
 
-            } catch (final IOException error) {
-                releaseLock();
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -2652,27 +2493,24 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportMagData(final int start, final int length, final double[] values)
+    public final void exportMagData(final int start, final int length, final double[] values)
             throws IOException {
         int i, j;
         double real, imaginary;
 
         if ( (start >= 0) && ( (start + (2 * length)) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start, j = 0; j < length; i += 2, j++) {
                     real = data.getDouble(i);
                     imaginary = data.getDouble(i + 1);
                     values[j] = Math.sqrt( (real * real) + (imaginary * imaginary));
                 }
 
-            } catch (final IOException error) {
-                releaseLock();
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -2691,7 +2529,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized Object exportRGBData(final int offset, final int start, final int length)
+    public final Object exportRGBData(final int offset, final int start, final int length)
             throws IOException {
         int i, j;
 
@@ -2699,9 +2537,9 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         if ( (start >= 0) && ( (start + (4 * length)) <= dataSize)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 final Class<?> buffer_type = data.getType();
                 if (buffer_type == null) {
                     return null;
@@ -2712,10 +2550,8 @@ public class ModelStorageBase extends ModelSerialCloneable {
                 for (i = start + offset, j = 0; j < length; i += 4, j++) {
                     Array.set(value_array, j, data.get(i));
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return value_array;
@@ -2734,22 +2570,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportRGBData(final int offset, final int start, final int length,
+    public final void exportRGBData(final int offset, final int start, final int length,
             final byte[] values) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + (4 * length)) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start + offset, j = 0; j < length; i += 4, j++) {
                     values[j] = data.getByte(i);
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -2768,23 +2602,21 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportRGBData(final int offset, final int start, final int length,
+    public final void exportRGBData(final int offset, final int start, final int length,
             final short[] values) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + (4 * length)) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start + offset, j = 0; j < length; i += 4, j++) {
                     values[j] = data.getShort(i);
                 }
 
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -2803,22 +2635,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportRGBData(final int offset, final int start, final int length,
+    public final void exportRGBData(final int offset, final int start, final int length,
             final float[] values) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + (4 * length)) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start + offset, j = 0; j < length; i += 4, j++) {
                     values[j] = data.getFloat(i);
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -2837,22 +2667,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportRGBData(final int offset, final int start, final int length,
+    public final void exportRGBData(final int offset, final int start, final int length,
             final double[] values) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + (4 * length)) <= dataSize) && (length <= values.length)) {
 
-            try {
-                setLock(ModelStorageBase.W_LOCKED);
+            setReadLock();
 
+            try {
                 for (i = start + offset, j = 0; j < length; i += 4, j++) {
                     values[j] = data.getDouble(i);
                 }
-            } catch (final IOException error) {
-                throw error;
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
@@ -2871,14 +2699,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportRGBDataNoLock(final int offset, final int start, final int length,
+    public final void exportRGBDataNoLock(final int offset, final int start, final int length,
             final float[] values) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + (4 * length)) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i += 4, j++) {
-                values[j] = data.getFloat(i + offset);
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i += 4, j++) {
+                    values[j] = data.getFloat(i + offset);
+                }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -2897,14 +2731,20 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void exportRGBDataNoLock(final int offset, final int start, final int length,
+    public final void exportRGBDataNoLock(final int offset, final int start, final int length,
             final double[] values) throws IOException {
         int i, j;
 
         if ( (start >= 0) && ( (start + (4 * length)) <= dataSize) && (length <= values.length)) {
 
-            for (i = start, j = 0; j < length; i += 4, j++) {
-                values[j] = data.getDouble(i + offset);
+            dataLock.readLock().lock();
+
+            try {
+                for (i = start, j = 0; j < length; i += 4, j++) {
+                    values[j] = data.getDouble(i + offset);
+                }
+            } finally {
+                dataLock.readLock().unlock();
             }
 
             return;
@@ -4982,11 +4822,24 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * Accessor that returns the total size(length) of the data array.
      * 
      * @return Value indicating the number of data points in the data array
+     * 
+     * @throws IllegalStateException when the size does not fit in an int, use getSizeLong() for such images
      */
     public final int getSize() {
+        checkIntSize("getSize");
         return dataSize;
     }
 
+    /**
+     * Accessor that returns the total size(length) of the data array. Unlike getSize() this also works for paged
+     * buffers larger than Integer.MAX_VALUE.
+     * 
+     * @return Value indicating the number of data points in the data array
+     */
+    public final long getSizeLong() {
+        return dataSizeLong;
+    }
+
     /**
      * Get the nuber of pixels in a slice of the image.
      * 
@@ -5748,7 +5601,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
         if ( (length == lengthi) && (start >= 0) && ( (start + (2 * length)) <= dataSize)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr += 2) {
@@ -5764,7 +5617,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -5790,7 +5643,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
         if ( (start >= 0) && ( (start + length) <= dataSize)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -5804,7 +5657,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -5831,7 +5684,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
         if ( (start >= 0) && ( (start + length) <= dataSize)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -5844,7 +5697,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -5870,7 +5723,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
         if ( (start >= 0) && ( (start + length) <= dataSize)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -5883,7 +5736,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -5909,7 +5762,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
         if ( (start >= 0) && ( (start + length) <= dataSize)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -5922,7 +5775,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -5949,7 +5802,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
         if ( (start >= 0) && ( (start + length) <= dataSize)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -5962,7 +5815,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -5988,7 +5841,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
         if ( (start >= 0) && ( (start + length) <= dataSize)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -6002,7 +5855,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6028,7 +5881,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
         if ( (start >= 0) && ( (start + length) <= dataSize)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -6038,20 +5891,700 @@ public class ModelStorageBase extends ModelSerialCloneable {
                 if (mmFlag) {
                     calcMinMax();
                 }
-            } catch (final IOException error) {
-                throw error;
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * import float data into data array.
+     * 
+     * @param start indicates starting position in data array
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importData(final int start, final float[] values, final boolean mmFlag)
+            throws IOException {
+        final int length = values.length;
+        int ptr;
+
+        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = start;
+
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setFloat(ptr, values[i]);
+                }
+
+                if (mmFlag) {
+                    calcMinMax();
+                }
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * import double data into data array.
+     * 
+     * @param start indicates starting position in data array
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importData(final int start, final double[] values, final boolean mmFlag)
+            throws IOException {
+        final int length = values.length;
+        int ptr;
+
+        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = start;
+
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setDouble(ptr, values[i]);
+                }
+
+                if (mmFlag) {
+                    calcMinMax();
+                }
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * import Complex data (in 2 double units) into data array.
+     * 
+     * @param start indicates starting position in data array
+     * @param valuesR array where real data is to be acquired
+     * @param valuesI array where imaginary data is to be acquired
+     * @param mmFlag whether or not to calculate min and max magnitude values for the image
+     * @param logMagDisplay whether or not min and max are calculated for log10 of 1 + magnitude array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importDComplexData(final int start, final double[] valuesR, final double[] valuesI,
+            final boolean mmFlag, final boolean logMagDisplay) throws IOException {
+        final int length = valuesR.length;
+        final int lengthi = valuesI.length;
+        int ptr;
+
+        if ( (length == lengthi) && (start >= 0) && ( (start + (2 * length)) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = start;
+
+                for (int i = 0; i < length; i++, ptr += 2) {
+                    data.setDouble(ptr, valuesR[i]);
+                    data.setDouble(ptr + 1, valuesI[i]);
+                }
+
+                setLogMagDisplay(logMagDisplay);
+
+                if (mmFlag) {
+                    calcMinMaxMag(logMagDisplay);
+                }
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * Import byte data into data array.
+     * 
+     * @param color color planes are interleaved, so color offsets the appropriate interleave interval
+     * @param alphaIndexStart indicates starting position in data array which points to the alpha value
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importRGBData(final int color, final int alphaIndexStart, final byte[] values,
+            final boolean mmFlag) throws IOException {
+        final int length = values.length;
+        int ptr;
+
+        if ( (bufferType != DataType.ARGB) && (bufferType != DataType.ARGB_USHORT)
+                && (bufferType != DataType.ARGB_FLOAT)) { // not
+            // a
+            // color
+            // image
+            return; // so don't do anything
+        }
+
+        if ( (alphaIndexStart >= 0) && ( (alphaIndexStart + length) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = alphaIndexStart + color;
+
+                for (int i = 0; i < length; i++, ptr += 4) {
+                    data.setByte(ptr, values[i]);
+                }
+
+                if (mmFlag) {
+                    calcMinMax();
+                }
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+    
+    /**
+     * Import byte data into data array.
+     * 
+     * @param color color planes are interleaved, so color offsets the appropriate interleave interval
+     * @param alphaIndexStart indicates starting position in data array which points to the alpha value
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importRGBData(final int color, final int alphaIndexStart, final short[] values,
+            final boolean mmFlag) throws IOException {
+        final int length = values.length;
+        int ptr;
+
+        if ( (bufferType != DataType.ARGB) && (bufferType != DataType.ARGB_USHORT)
+                && (bufferType != DataType.ARGB_FLOAT)) { // not
+            // a
+            // color
+            // image
+            return; // so don't do anything
+        }
+
+        if ( (alphaIndexStart >= 0) && ( (alphaIndexStart + length) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = alphaIndexStart + color;
+
+                for (int i = 0; i < length; i++, ptr += 4) {
+                    data.setShort(ptr, values[i]);
+                }
+
+                if (mmFlag) {
+                    calcMinMax();
+                }
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * import float data into data array.
+     * 
+     * @param color color planes are interleaved, so color offsets the appropriate interleave interval
+     * @param alphaIndexStart indicates starting position in data array which points to the alpha value
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importRGBData(final int color, final int alphaIndexStart, final float[] values,
+            final boolean mmFlag) throws IOException {
+        final int length = values.length;
+        int ptr;
+
+        if ( (bufferType != DataType.ARGB) && (bufferType != DataType.ARGB_USHORT)
+                && (bufferType != DataType.ARGB_FLOAT)) { // not
+            // a
+            // color
+            // image
+            return; // so don't do anything
+        }
+
+        if ( (alphaIndexStart >= 0) && ( (alphaIndexStart + length) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = alphaIndexStart + color;
+
+                for (int i = 0; i < length; i++, ptr += 4) {
+                    data.setFloat(ptr, values[i]);
+                }
+
+                if (mmFlag) {
+                    calcMinMax();
+                }
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * import short data into data array.
+     * 
+     * @param start indicates starting position in data array
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importUData(final int start, final short[] values, final boolean mmFlag)
+            throws IOException {
+        final int length = values.length;
+        int ptr;
+
+        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = start;
+
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setUByte(ptr, values[i]);
+                }
+
+                if (mmFlag) {
+                    calcMinMax();
+                }
+
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * import int data into data array.
+     * 
+     * @param start indicates starting position in data array
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importUData(final int start, final int[] values, final boolean mmFlag)
+            throws IOException {
+        final int length = values.length;
+        int ptr;
+
+        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = start;
+
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setUShort(ptr, values[i]);
+                }
+
+                if (mmFlag) {
+                    calcMinMax();
+                }
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * import int data into data array.
+     * 
+     * @param start indicates starting position in data array
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final synchronized void importUData(final int start, final long[] values, final boolean mmFlag)
+            throws IOException {
+        final int length = values.length;
+        int ptr;
+
+        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+
+            try {
+                setWriteLock();
+                ptr = start;
+
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setUInt(ptr, values[i]);
+                }
+
+                if (mmFlag) {
+                    calcMinMax();
+                }
+
+            } catch (final IOException error) {
+                throw error;
+            } finally {
+                releaseWriteLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Import data error: bounds incorrect");
+    }
+
+    /**
+     * Gets the data at a long position in the data array, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param position index into the data array
+     * 
+     * @return the value as a double
+     */
+    public final double getDouble(final long position) {
+        return data.getDouble(position);
+    }
+
+    /**
+     * Gets the data at a long position in the data array, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param position index into the data array
+     * 
+     * @return the value as a float
+     */
+    public final float getFloat(final long position) {
+        return data.getFloat(position);
+    }
+
+    /**
+     * Sets the data at a long position in the data array, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param position index into the data array
+     * @param value the new data value to be placed in the data array
+     */
+    public final void set(final long position, final float value) {
+        data.setFloat(position, value);
+    }
+
+    /**
+     * Sets the data at a long position in the data array, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param position index into the data array
+     * @param value the new data value to be placed in the data array
+     */
+    public final void set(final long position, final double value) {
+        data.setDouble(position, value);
+    }
+
+    /**
+     * Export data to values array starting at a long position, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param start indicates starting position in data array
+     * @param length length of data to be copied from data array
+     * @param values array where data is to be deposited
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final void exportData(final long start, final int length, final byte[] values)
+            throws IOException {
+        long i;
+        int j;
+
+        if ( (start + length) <= dataSize) {
+            exportData((int) start, length, values);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong) && (length <= values.length)) {
+
+            setReadLock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getByte(i);
+                }
+            } finally {
+                releaseReadLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Export data error - bounds incorrect");
+    }
+
+    /**
+     * Export data to values array starting at a long position, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param start indicates starting position in data array
+     * @param length length of data to be copied from data array
+     * @param values array where data is to be deposited
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final void exportData(final long start, final int length, final short[] values)
+            throws IOException {
+        long i;
+        int j;
+
+        if ( (start + length) <= dataSize) {
+            exportData((int) start, length, values);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong) && (length <= values.length)) {
+
+            setReadLock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getShort(i);
+                }
+            } finally {
+                releaseReadLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Export data error - bounds incorrect");
+    }
+
+    /**
+     * Export data to values array starting at a long position, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param start indicates starting position in data array
+     * @param length length of data to be copied from data array
+     * @param values array where data is to be deposited
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final void exportData(final long start, final int length, final int[] values)
+            throws IOException {
+        long i;
+        int j;
+
+        if ( (start + length) <= dataSize) {
+            exportData((int) start, length, values);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong) && (length <= values.length)) {
+
+            setReadLock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getInt(i);
+                }
+            } finally {
+                releaseReadLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Export data error - bounds incorrect");
+    }
+
+    /**
+     * Export data to values array starting at a long position, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param start indicates starting position in data array
+     * @param length length of data to be copied from data array
+     * @param values array where data is to be deposited
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final void exportData(final long start, final int length, final long[] values)
+            throws IOException {
+        long i;
+        int j;
+
+        if ( (start + length) <= dataSize) {
+            exportData((int) start, length, values);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong) && (length <= values.length)) {
+
+            setReadLock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getLong(i);
+                }
+            } finally {
+                releaseReadLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Export data error - bounds incorrect");
+    }
+
+    /**
+     * Export data to values array starting at a long position, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param start indicates starting position in data array
+     * @param length length of data to be copied from data array
+     * @param values array where data is to be deposited
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final void exportData(final long start, final int length, final float[] values)
+            throws IOException {
+        long i;
+        int j;
+
+        if ( (start + length) <= dataSize) {
+            exportData((int) start, length, values);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong) && (length <= values.length)) {
+
+            setReadLock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getFloat(i);
+                }
+            } finally {
+                releaseReadLock();
+            }
+
+            return;
+        }
+
+        throw new IOException("Export data error - bounds incorrect");
+    }
+
+    /**
+     * Export data to values array starting at a long position, for paged buffers larger than Integer.MAX_VALUE.
+     * 
+     * @param start indicates starting position in data array
+     * @param length length of data to be copied from data array
+     * @param values array where data is to be deposited
+     * 
+     * @throws IOException Throws an error when there is a locking or bounds error.
+     */
+    public final void exportData(final long start, final int length, final double[] values)
+            throws IOException {
+        long i;
+        int j;
+
+        if ( (start + length) <= dataSize) {
+            exportData((int) start, length, values);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong) && (length <= values.length)) {
+
+            setReadLock();
+
+            try {
+                for (i = start, j = 0; j < length; i++, j++) {
+                    values[j] = data.getDouble(i);
+                }
             } finally {
-                releaseLock();
+                releaseReadLock();
             }
 
             return;
         }
 
-        throw new IOException("Import data error: bounds incorrect");
+        throw new IOException("Export data error - bounds incorrect");
     }
 
     /**
-     * import float data into data array.
+     * Returns a read only view of a range of the data buffer that shares storage with the image, so that a slab can be
+     * read without the copy made by exportData. The view is taken without the image lock: it sees later imports and
+     * is left pointing at the old storage if the buffer is reallocated. Positions are those of the data buffer (two
+     * values per complex voxel, four per ARGB voxel) and unsigned types are exposed in their signed storage type,
+     * e.g. a ShortBuffer for USHORT data.
+     * 
+     * @param start indicates starting position in data array
+     * @param length number of elements in the view
+     * @return the view, or null if the buffer cannot provide one (boolean data, or a range crossing a page of a paged
+     *         or memory mapped buffer)
+     * 
+     * @throws IOException Throws an error when there is a bounds error.
+     */
+    public final java.nio.Buffer getDataView(final long start, final int length) throws IOException {
+
+        if ( (start >= 0) && (length >= 0) && ( (start + length) <= dataSizeLong)) {
+            return data.getView(start, length);
+        }
+
+        throw new IOException("Export data error - bounds incorrect");
+    }
+
+    /**
+     * import byte data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
      * @param start indicates starting position in data array
      * @param values array where data is to be acquired
@@ -6059,19 +6592,25 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importData(final int start, final float[] values, final boolean mmFlag)
+    public final synchronized void importData(final long start, final byte[] values, final boolean mmFlag)
             throws IOException {
         final int length = values.length;
-        int ptr;
+        long ptr;
 
-        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+        if ( (start + length) <= dataSize) {
+            importData((int) start, values, mmFlag);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
-                    data.setFloat(ptr, values[i]);
+                    data.setByte(ptr, values[i]);
                 }
 
                 if (mmFlag) {
@@ -6080,7 +6619,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6090,7 +6629,8 @@ public class ModelStorageBase extends ModelSerialCloneable {
     }
 
     /**
-     * import double data into data array.
+     * import short data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
      * @param start indicates starting position in data array
      * @param values array where data is to be acquired
@@ -6098,19 +6638,25 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importData(final int start, final double[] values, final boolean mmFlag)
+    public final synchronized void importData(final long start, final short[] values, final boolean mmFlag)
             throws IOException {
         final int length = values.length;
-        int ptr;
+        long ptr;
 
-        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+        if ( (start + length) <= dataSize) {
+            importData((int) start, values, mmFlag);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
-                    data.setDouble(ptr, values[i]);
+                    data.setShort(ptr, values[i]);
                 }
 
                 if (mmFlag) {
@@ -6119,7 +6665,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6129,42 +6675,43 @@ public class ModelStorageBase extends ModelSerialCloneable {
     }
 
     /**
-     * import Complex data (in 2 double units) into data array.
+     * import int data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
      * @param start indicates starting position in data array
-     * @param valuesR array where real data is to be acquired
-     * @param valuesI array where imaginary data is to be acquired
-     * @param mmFlag whether or not to calculate min and max magnitude values for the image
-     * @param logMagDisplay whether or not min and max are calculated for log10 of 1 + magnitude array
+     * @param values array where data is to be acquired
+     * @param mmFlag whether or not to calculate min and max values for the image array
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importDComplexData(final int start, final double[] valuesR, final double[] valuesI,
-            final boolean mmFlag, final boolean logMagDisplay) throws IOException {
-        final int length = valuesR.length;
-        final int lengthi = valuesI.length;
-        int ptr;
+    public final synchronized void importData(final long start, final int[] values, final boolean mmFlag)
+            throws IOException {
+        final int length = values.length;
+        long ptr;
 
-        if ( (length == lengthi) && (start >= 0) && ( (start + (2 * length)) <= dataSize)) {
+        if ( (start + length) <= dataSize) {
+            importData((int) start, values, mmFlag);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
-                for (int i = 0; i < length; i++, ptr += 2) {
-                    data.setDouble(ptr, valuesR[i]);
-                    data.setDouble(ptr + 1, valuesI[i]);
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setInt(ptr, values[i]);
                 }
 
-                setLogMagDisplay(logMagDisplay);
-
                 if (mmFlag) {
-                    calcMinMaxMag(logMagDisplay);
+                    calcMinMax();
                 }
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6174,36 +6721,34 @@ public class ModelStorageBase extends ModelSerialCloneable {
     }
 
     /**
-     * Import byte data into data array.
+     * import long data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
-     * @param color color planes are interleaved, so color offsets the appropriate interleave interval
-     * @param alphaIndexStart indicates starting position in data array which points to the alpha value
+     * @param start indicates starting position in data array
      * @param values array where data is to be acquired
      * @param mmFlag whether or not to calculate min and max values for the image array
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importRGBData(final int color, final int alphaIndexStart, final byte[] values,
-            final boolean mmFlag) throws IOException {
+    public final synchronized void importData(final long start, final long[] values, final boolean mmFlag)
+            throws IOException {
         final int length = values.length;
-        int ptr;
+        long ptr;
 
-        if ( (bufferType != DataType.ARGB) && (bufferType != DataType.ARGB_USHORT)
-                && (bufferType != DataType.ARGB_FLOAT)) { // not
-            // a
-            // color
-            // image
-            return; // so don't do anything
+        if ( (start + length) <= dataSize) {
+            importData((int) start, values, mmFlag);
+
+            return;
         }
 
-        if ( (alphaIndexStart >= 0) && ( (alphaIndexStart + length) <= dataSize)) {
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
-                ptr = alphaIndexStart + color;
+                setWriteLock();
+                ptr = start;
 
-                for (int i = 0; i < length; i++, ptr += 4) {
-                    data.setByte(ptr, values[i]);
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setLong(ptr, values[i]);
                 }
 
                 if (mmFlag) {
@@ -6212,7 +6757,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6220,38 +6765,36 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         throw new IOException("Import data error: bounds incorrect");
     }
-    
+
     /**
-     * Import byte data into data array.
+     * import float data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
-     * @param color color planes are interleaved, so color offsets the appropriate interleave interval
-     * @param alphaIndexStart indicates starting position in data array which points to the alpha value
+     * @param start indicates starting position in data array
      * @param values array where data is to be acquired
      * @param mmFlag whether or not to calculate min and max values for the image array
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importRGBData(final int color, final int alphaIndexStart, final short[] values,
-            final boolean mmFlag) throws IOException {
+    public final synchronized void importData(final long start, final float[] values, final boolean mmFlag)
+            throws IOException {
         final int length = values.length;
-        int ptr;
+        long ptr;
 
-        if ( (bufferType != DataType.ARGB) && (bufferType != DataType.ARGB_USHORT)
-                && (bufferType != DataType.ARGB_FLOAT)) { // not
-            // a
-            // color
-            // image
-            return; // so don't do anything
+        if ( (start + length) <= dataSize) {
+            importData((int) start, values, mmFlag);
+
+            return;
         }
 
-        if ( (alphaIndexStart >= 0) && ( (alphaIndexStart + length) <= dataSize)) {
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
-                ptr = alphaIndexStart + color;
+                setWriteLock();
+                ptr = start;
 
-                for (int i = 0; i < length; i++, ptr += 4) {
-                    data.setShort(ptr, values[i]);
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setFloat(ptr, values[i]);
                 }
 
                 if (mmFlag) {
@@ -6260,7 +6803,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6270,36 +6813,34 @@ public class ModelStorageBase extends ModelSerialCloneable {
     }
 
     /**
-     * import float data into data array.
+     * import double data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
-     * @param color color planes are interleaved, so color offsets the appropriate interleave interval
-     * @param alphaIndexStart indicates starting position in data array which points to the alpha value
+     * @param start indicates starting position in data array
      * @param values array where data is to be acquired
      * @param mmFlag whether or not to calculate min and max values for the image array
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importRGBData(final int color, final int alphaIndexStart, final float[] values,
-            final boolean mmFlag) throws IOException {
+    public final synchronized void importData(final long start, final double[] values, final boolean mmFlag)
+            throws IOException {
         final int length = values.length;
-        int ptr;
+        long ptr;
 
-        if ( (bufferType != DataType.ARGB) && (bufferType != DataType.ARGB_USHORT)
-                && (bufferType != DataType.ARGB_FLOAT)) { // not
-            // a
-            // color
-            // image
-            return; // so don't do anything
+        if ( (start + length) <= dataSize) {
+            importData((int) start, values, mmFlag);
+
+            return;
         }
 
-        if ( (alphaIndexStart >= 0) && ( (alphaIndexStart + length) <= dataSize)) {
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
-                ptr = alphaIndexStart + color;
+                setWriteLock();
+                ptr = start;
 
-                for (int i = 0; i < length; i++, ptr += 4) {
-                    data.setFloat(ptr, values[i]);
+                for (int i = 0; i < length; i++, ptr++) {
+                    data.setDouble(ptr, values[i]);
                 }
 
                 if (mmFlag) {
@@ -6308,7 +6849,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6318,7 +6859,8 @@ public class ModelStorageBase extends ModelSerialCloneable {
     }
 
     /**
-     * import short data into data array.
+     * import unsigned byte data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
      * @param start indicates starting position in data array
      * @param values array where data is to be acquired
@@ -6326,15 +6868,21 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importUData(final int start, final short[] values, final boolean mmFlag)
+    public final synchronized void importUData(final long start, final short[] values, final boolean mmFlag)
             throws IOException {
         final int length = values.length;
-        int ptr;
+        long ptr;
 
-        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+        if ( (start + length) <= dataSize) {
+            importUData((int) start, values, mmFlag);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -6344,11 +6892,10 @@ public class ModelStorageBase extends ModelSerialCloneable {
                 if (mmFlag) {
                     calcMinMax();
                 }
-
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6358,7 +6905,8 @@ public class ModelStorageBase extends ModelSerialCloneable {
     }
 
     /**
-     * import int data into data array.
+     * import unsigned short data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
      * @param start indicates starting position in data array
      * @param values array where data is to be acquired
@@ -6366,15 +6914,21 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importUData(final int start, final int[] values, final boolean mmFlag)
+    public final synchronized void importUData(final long start, final int[] values, final boolean mmFlag)
             throws IOException {
         final int length = values.length;
-        int ptr;
+        long ptr;
 
-        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+        if ( (start + length) <= dataSize) {
+            importUData((int) start, values, mmFlag);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -6387,7 +6941,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6397,7 +6951,8 @@ public class ModelStorageBase extends ModelSerialCloneable {
     }
 
     /**
-     * import int data into data array.
+     * import unsigned int data into data array starting at a long position, for paged buffers
+     * larger than Integer.MAX_VALUE.
      * 
      * @param start indicates starting position in data array
      * @param values array where data is to be acquired
@@ -6405,15 +6960,21 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * 
      * @throws IOException Throws an error when there is a locking or bounds error.
      */
-    public final synchronized void importUData(final int start, final long[] values, final boolean mmFlag)
+    public final synchronized void importUData(final long start, final long[] values, final boolean mmFlag)
             throws IOException {
         final int length = values.length;
-        int ptr;
+        long ptr;
 
-        if ( (start >= 0) && ( (start + length) <= dataSize)) {
+        if ( (start + length) <= dataSize) {
+            importUData((int) start, values, mmFlag);
+
+            return;
+        }
+
+        if ( (start >= 0) && ( (start + length) <= dataSizeLong)) {
 
             try {
-                setLock(ModelStorageBase.RW_LOCKED);
+                setWriteLock();
                 ptr = start;
 
                 for (int i = 0; i < length; i++, ptr++) {
@@ -6423,11 +6984,10 @@ public class ModelStorageBase extends ModelSerialCloneable {
                 if (mmFlag) {
                     calcMinMax();
                 }
-
             } catch (final IOException error) {
                 throw error;
             } finally {
-                releaseLock();
+                releaseWriteLock();
             }
 
             return;
@@ -6447,10 +7007,16 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         if (lockStatus == ModelStorageBase.UNLOCKED) {
 
-            // disposeLocal(); // delete old memory and reallocate
-            data = null;
-            System.gc();
-            construct(DataType.getDataType(type), dimExtents);
+            dataLock.writeLock().lock();
+
+            try {
+                // disposeLocal(); // delete old memory and reallocate
+                data = null;
+                System.gc();
+                construct(DataType.getDataType(type), dimExtents);
+            } finally {
+                dataLock.writeLock().unlock();
+            }
         } else {
             throw new IOException("ModelStorageBase: Reallocate: Image locked !");
         }
@@ -6468,10 +7034,16 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         if (lockStatus == ModelStorageBase.UNLOCKED) {
 
-            // disposeLocal(); // delete old memory and reallocate
-            data = null;
-            System.gc();
-            construct(bufferType, dimExtents);
+            dataLock.writeLock().lock();
+
+            try {
+                // disposeLocal(); // delete old memory and reallocate
+                data = null;
+                System.gc();
+                construct(bufferType, dimExtents);
+            } finally {
+                dataLock.writeLock().unlock();
+            }
         } else {
             throw new IOException("ModelStorageBase: Reallocate: Image locked !");
         }
@@ -6490,10 +7062,16 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
         if (lockStatus == ModelStorageBase.UNLOCKED) {
 
-            // disposeLocal(); // delete old memory and reallocate
-            data = null;
-            System.gc();
-            construct(DataType.getDataType(type), dimExtents);
+            dataLock.writeLock().lock();
+
+            try {
+                // disposeLocal(); // delete old memory and reallocate
+                data = null;
+                System.gc();
+                construct(DataType.getDataType(type), dimExtents);
+            } finally {
+                dataLock.writeLock().unlock();
+            }
         } else {
             throw new IOException("ModelStorageBase: Reallocate: Image locked !");
         }
@@ -6509,16 +7087,57 @@ public class ModelStorageBase extends ModelSerialCloneable {
      * </p>
      */
     public void recomputeDataSize() {
-        final int oldDataSize = this.dataSize;
+        final long oldDataSize = this.dataSizeLong;
 
         this.computeDataSize();
 
-        if (this.dataSize != oldDataSize) {
+        if (this.dataSizeLong != oldDataSize) {
             allocateData();
         }
 
     } // end recomputeDataSize()
 
+    /**
+     * Acquires the shared data lock used by the export methods. Any number of threads may hold it at once; it is
+     * only blocked while an import is in progress.
+     * 
+     * @throws IOException if the image has been RW_LOCKED with <code>setLock</code>.
+     */
+    private void setReadLock() throws IOException {
+        dataLock.readLock().lock();
+
+        if (lockStatus == ModelStorageBase.RW_LOCKED && !dataLock.isWriteLockedByCurrentThread()) {
+            dataLock.readLock().unlock();
+            throw new IOException("ModelStorageBase: Image locked !");
+        }
+    }
+
+    /**
+     * Releases the shared data lock taken by <code>setReadLock</code>.
+     */
+    private void releaseReadLock() {
+        dataLock.readLock().unlock();
+    }
+
+    /**
+     * Acquires the exclusive data lock used by the import methods and marks the image RW_LOCKED. Must be called while
+     * holding the object monitor, and always paired with <code>releaseWriteLock</code> in a finally block.
+     * 
+     * @throws IOException if the image is already locked.
+     */
+    private void setWriteLock() throws IOException {
+        dataLock.writeLock().lock();
+        setLock(ModelStorageBase.RW_LOCKED);
+    }
+
+    /**
+     * Clears the RW_LOCKED status and releases the exclusive data lock taken by <code>setWriteLock</code>.
+     */
+    private void releaseWriteLock() {
+        releaseLock();
+        dataLock.writeLock().unlock();
+    }
+
     /**
      * Releases the lock so that other proceses can read or write the data.
      */
@@ -8068,6 +8687,12 @@ public class ModelStorageBase extends ModelSerialCloneable {
             System.gc();
         }
 
+        if (this.dataSizeLong > ModelStorageBase.MAX_ARRAY_LENGTH) {
+            allocatePagedData();
+
+            return;
+        }
+
         // allocate memory in the data buffer and do some initialization
         // based on dataSize
         switch (this.bufferType) {
@@ -8089,6 +8714,7 @@ public class ModelStorageBase extends ModelSerialCloneable {
                     // Reset dataSize to reflect change in buffer size
                     // because BitSet structure may increase buffer.
                     this.dataSize = ((BufferBoolean) (this.data)).dataArray.size();
+                    this.dataSizeLong = this.dataSize;
                 } catch (final OutOfMemoryError error) {
                     disposeLocal();
                     MipavUtil.displayError("ImageModel: Unable to allocate boolean data");
@@ -8273,6 +8899,39 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
     } // end allocateData()
 
+    /**
+     * Allocates a paged buffer for data too large to be held in a single Java array.
+     */
+    private void allocatePagedData() {
+        long i;
+
+        try {
+            this.data = new BufferPaged(this.bufferType, this.dataSizeLong);
+        } catch (final OutOfMemoryError error) {
+            disposeLocal();
+            MipavUtil.displayError("ImageModel: Unable to allocate " + bufferType + " paged data buffer");
+            throw (error);
+        }
+
+        // set alphas to full on
+        if (this.bufferType == DataType.ARGB) {
+
+            for (i = 0; i < this.dataSizeLong; i += 4) {
+                data.setUByte(i, (short) 255);
+            }
+        } else if (this.bufferType == DataType.ARGB_USHORT) {
+
+            for (i = 0; i < this.dataSizeLong; i += 4) {
+                data.setUShort(i, 65535);
+            }
+        } else if (this.bufferType == DataType.ARGB_FLOAT) {
+
+            for (i = 0; i < this.dataSizeLong; i += 4) {
+                data.setFloat(i, 1.0f);
+            }
+        }
+    }
+
     /**
      * his method return the min value allowed of the type
      * 
@@ -8515,27 +9174,28 @@ public class ModelStorageBase extends ModelSerialCloneable {
         long longSize;
 
         // base data size
-        for (this.dataSize = 1, i = 0, longSize = 1; i < this.nDims; i++) {
-            this.dataSize *= dimExtents[i];
+        for (i = 0, longSize = 1; i < this.nDims; i++) {
             longSize *= dimExtents[i];
         }
 
-        if (longSize > Integer.MAX_VALUE) {
-            MipavUtil.displayError("Product of dimExtents exceeds maximum allowable array size = " + Integer.MAX_VALUE);
-            return;
-        }
-
         switch (bufferType) {
 
             case BOOLEAN:
+                if (longSize > ModelStorageBase.MAX_ARRAY_LENGTH) {
+
+                    // paged BitSets are allocated in multiples of 64 bits
+                    longSize = 64 * ( (longSize + 63) >> 6);
+                    break;
+                }
+
                 try {
 
                     // create a temporary buffer to get this dataSize)
-                    BufferBase tmpdata = new BufferBoolean(this.dataSize);
+                    BufferBase tmpdata = new BufferBoolean((int) longSize);
 
                     // Reset dataSize to reflect change in buffer size
                     // because BitSet structure may increase buffer.
-                    dataSize = ((BufferBoolean) (tmpdata)).dataArray.size();
+                    longSize = ((BufferBoolean) (tmpdata)).dataArray.size();
 
                     // clean up the temporary buffer
                     tmpdata = null;
@@ -8563,26 +9223,14 @@ public class ModelStorageBase extends ModelSerialCloneable {
             case COMPLEX:
             case DCOMPLEX:
 
-                this.dataSize *= 2;
                 longSize *= 2;
-                if (longSize > Integer.MAX_VALUE) {
-                    MipavUtil.displayError("2 times product of dimExtents exceeds maximum allowable array size = "
-                            + Integer.MAX_VALUE);
-                    return;
-                }
                 break;
 
             case ARGB:
             case ARGB_USHORT:
             case ARGB_FLOAT:
 
-                this.dataSize *= 4;
                 longSize *= 4;
-                if (longSize > Integer.MAX_VALUE) {
-                    MipavUtil.displayError("4 times product of dimExtents exceeds maximum allowable array size = "
-                            + Integer.MAX_VALUE);
-                    return;
-                }
                 break;
 
             default: {
@@ -8591,6 +9239,10 @@ public class ModelStorageBase extends ModelSerialCloneable {
             }
         } // end switch
 
+        // Buffers larger than a single Java array are paged. The int size is clamped for the bounds checks of the int
+        // position accessors, while getSize() and getDataSize() refuse such buffers.
+        this.dataSizeLong = longSize;
+        this.dataSize = (int) Math.min(longSize, Integer.MAX_VALUE);
     } // end computeDataSize()
 
     /**
@@ -8628,9 +9280,54 @@ public class ModelStorageBase extends ModelSerialCloneable {
 
     /**
      * Get total buffer length.
+     * 
+     * @throws IllegalStateException when the length does not fit in an int, use getDataSizeLong() for such images
      */
     public int getDataSize() {
+        checkIntSize("getDataSize");
         return dataSize;
     }
 
+    /**
+     * Get total buffer length. Unlike getDataSize() this also works for paged buffers larger than Integer.MAX_VALUE.
+     */
+    public long getDataSizeLong() {
+        return dataSizeLong;
+    }
+
+    /**
+     * Refuses an int sized accessor on a buffer whose length does not fit in an int, so that code still on the int API
+     * fails instead of silently processing only the first Integer.MAX_VALUE elements.
+     * 
+     * @param method name of the int sized accessor
+     * 
+     * @throws IllegalStateException when the buffer length does not fit in an int
+     */
+    private void checkIntSize(final String method) {
+        if (dataSizeLong > Integer.MAX_VALUE) {
+            throw new IllegalStateException("ModelStorageBase." + method + ": buffer length " + dataSizeLong
+                    + " does not fit in an int, use the long sized accessors for this image");
+        }
+    }
+
+    /**
+     * Returns true when the buffer holds more elements than fit in a single Java array. Paged buffers must be accessed
+     * through the long position accessors (getFloat(long), exportData(long, ...), importData(long, ...)) beyond
+     * Integer.MAX_VALUE.
+     * 
+     * @return true if the data is stored in a BufferPaged
+     */
+    public final boolean isPaged() {
+        return data instanceof BufferPaged;
+    }
+
+    /**
+     * Returns true when the data is mapped from a file rather than held in buffer memory.
+     * 
+     * @return true if the data is stored in a BufferMapped
+     */
+    public final boolean isMapped() {
+        return data instanceof BufferMapped;
+    }
+
 }
@@ -3,6 +3,7 @@ package gov.nih.mipav.model.structures;
 import gov.nih.mipav.model.structures.event.VOIEvent;
 import gov.nih.mipav.model.structures.event.VOIListener;
 import gov.nih.mipav.util.MipavMath;
+import gov.nih.mipav.util.ThreadUtil;
 import gov.nih.mipav.view.MipavUtil;
 import gov.nih.mipav.view.Preferences;
 import gov.nih.mipav.view.ViewJFrameGraph;
@@ -11,8 +12,9 @@ import java.awt.Color;
 import java.awt.Polygon;
 import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -89,285 +91,27 @@ public class VOI extends ModelSerialCloneable {
 
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
+	/**
+	 * Calculates the largest distance between two of the points whose connecting line lies within the mask.
+	 *
+	 * @param   mask     the VOI mask
+	 * @param   extents  image extents
+	 * @param   xRes     x resolution
+	 * @param   yRes     y resolution
+	 * @param   zRes     z resolution
+	 * @param   xPts     x-coordinates of the VOI boundary points
+	 * @param   yPts     y-coordinates of the VOI boundary points
+	 * @param   zPts     z-coordinates of the VOI boundary points
+	 * @param   kPos1    set to the first end point of the largest distance
+	 * @param   kPos2    set to the second end point of the largest distance
+	 *
+	 * @return  the largest distance
+	 */
 	public static double calcLargestDistance(BitSet mask, int[] extents, float xRes, float yRes, float zRes,
 			float[] xPts, float[] yPts, float zPts[], Vector3f kPos1, Vector3f kPos2 )
 	{
-		long time = System.currentTimeMillis();
-		double avg = 0, max = 0;
-		double[] maxAvg = determineMaxAvg(xRes, yRes, zRes, xPts, yPts, zPts);
-		max = maxAvg[0];
-		avg = maxAvg[1];
-
-		Preferences.debug("Traverse points\n");
-		time = System.currentTimeMillis();
-		double a = 0, lowerBound = Double.MAX_VALUE, upperBound = Double.MAX_VALUE;
-		int iter = 0;
-		boolean terminal = false;
-		while(a == 0 && !terminal) {
-			ArrayList<Integer> orig = new ArrayList<Integer>();
-			ArrayList<Integer> term = new ArrayList<Integer>();
-			upperBound = lowerBound;
-			lowerBound = Math.max(0, max-iter*(avg/Math.max(1, (int)Math.pow(xPts.length, 0.3)-9)));
-			gatherBoundedPoints(orig, term, lowerBound-1, upperBound, xRes, yRes, zRes, xPts, yPts, zPts);
-			time = System.currentTimeMillis();        
-			Preferences.debug("Completed points in "+(System.currentTimeMillis() - time)+"\tsize: "+orig.size()+"\n");
-			a = getLargest(mask, extents, orig, term, xRes, yRes, zRes, xPts, yPts, zPts, kPos1, kPos2 );
-			if(lowerBound == 0.0) {
-				terminal = true;
-			}
-			iter++;
-		}
-		return a;
-	}
-
-	/**
-	 * Gathers max and average statistics to build guessing intervals
-	 */
-	private static double[] determineMaxAvg(float xRes, float yRes, float zRes,
-			float[] xPts, float[] yPts, float zPts[]) {
-		double max = 0, avg = 0;
-		int n = xPts.length;
-		Random r = new Random(1);
-		//note that a stop that yields a non-representative average is fine, since worst case is more computations
-		int stop = n < 100 ? (int)(n*0.50) : (int)(n*0.10);
-		int[] search = new int[stop];
-		int[] end = new int[stop];
-		double startX, startY, startZ;
-		double endX, endY, endZ;
-		double delX, delY, delZ;
-		double distX, distY, distZ;
-		double distanceSq;
-		int i, j;
-		for(i = 0; i<stop; i++) {
-			search[i] = r.nextInt(n);
-			end[i] = r.nextInt(n);
-		}
-
-		int numBegin = 0, numEnd = 0;;
-		for (i = 0; i < search.length; i++) {
-
-			numBegin = search[i];
-			startX = xPts[numBegin];
-			startY = yPts[numBegin];
-			startZ = zPts[numBegin];
-			for (j = 0; j < end.length; j++) {
-				numEnd = end[j];
-				endX = xPts[numEnd];
-				endY = yPts[numEnd];
-				endZ = zPts[numEnd];
-				delX = endX - startX;
-				delY = endY - startY;
-				delZ = endZ - startZ;
-				distX = xRes * delX;
-				distY = yRes * delY;
-				distZ = zRes * delZ;
-				distanceSq = distX*distX + distY*distY + distZ*distZ;
-				avg = avg + distanceSq;
-				if (distanceSq > max) {
-					max = distanceSq;
-				} // if (distanceSq > largsestDistanceSq)
-			} // for (j = i+1; j < xPts.length; j++)
-		} // for (i = 0; i < xPts.length; i++)
-			avg = avg / (end.length * search.length);
-		return new double[]{max, avg};
-	}
-
-	/**
-	 * Gathers the points that fall within the required bounds
-	 */
-	private static void gatherBoundedPoints(ArrayList<Integer> orig, ArrayList<Integer> term, 
-			double lowerBound, double upperBound, 
-			float xRes, float yRes, float zRes, 
-			float[] xPts, float[] yPts, float zPts[]) {
-		int i, j;
-		double startX, startY, startZ;
-		double endX, endY, endZ;
-		double delX, delY, delZ;
-		double distX, distY, distZ;
-		double distanceSq;
-		for (i = 0; i < xPts.length; i++) {
-			startX = xPts[i];
-			startY = yPts[i];
-			startZ = zPts[i];
-			for (j = i+1; j < xPts.length; j++) {
-				endX = xPts[j];
-				endY = yPts[j];
-				endZ = zPts[j];
-				delX = endX - startX;
-				delY = endY - startY;
-				delZ = endZ - startZ;
-				distX = xRes * delX;
-				distY = yRes * delY;
-				distZ = zRes * delZ;
-				distanceSq = distX*distX + distY*distY + distZ*distZ;
-				if (distanceSq > lowerBound && distanceSq < upperBound) {
-					orig.add(Integer.valueOf(i));
-					term.add(Integer.valueOf(j));
-				} // if (distanceSq > largsestDistanceSq)
-			} // for (j = i+1; j < xPts.length; j++)
-		} // for (i = 0; i < xPts.length; i++)
-	}
-
-	/**
-	 * Finds the largest line that lies within entirely within the VOI.
-	 */  
-	private static double getLargest(BitSet mask, int[] extents, ArrayList<Integer> orig, ArrayList<Integer> term, 
-			float xRes, float yRes, float zRes, 
-			float[] xPoints, float[] yPoints, float zPoints[], Vector3f kPos1, Vector3f kPos2) {
-		int origPoint, termPoint;
-		double largestDistanceSq = 0, distanceSq;
-		double startX, startY, startZ;
-		double endX, endY, endZ;
-		double delX, delY, delZ;
-		double distX, distY, distZ;
-		double x, y, z;
-		double slope, slope2;
-		int xRound, yRound, zRound;
-		int j;
-		int maskIndex = 0;
-		int xDim = extents.length > 0 ? extents[0] : 1;
-		int yDim = extents.length > 1 ? extents[1] : 1;
-		boolean okay;
-		forj:
-			for(j=0; j<orig.size(); j++) {
-				origPoint = orig.get(j).intValue();
-				startX = xPoints[origPoint];
-				startY = yPoints[origPoint];
-				startZ = zPoints[origPoint];
-				termPoint = term.get(j).intValue();
-				endX = xPoints[termPoint];
-				endY = yPoints[termPoint];
-				endZ = zPoints[termPoint];
-				delX = endX - startX;
-				delY = endY - startY;
-				delZ = endZ - startZ;
-				distX = xRes * delX;
-				distY = yRes * delY;
-				distZ = zRes * delZ;
-				distanceSq = distX*distX + distY*distY + distZ*distZ;
-
-				kPos1.X = (float)startX;
-				kPos1.Y = (float)startY;
-				kPos1.Z = (float)startZ;
-				kPos2.X = (float)endX;
-				kPos2.Y = (float)endY;
-				kPos2.Z = (float)endZ;
-				
-				if(distanceSq > largestDistanceSq) {
-					if ((Math.abs(delX) >= Math.abs(delY)) && (Math.abs(delX) >= Math.abs(delZ))) {
-						slope = delY/delX;
-						slope2 = delZ/delX;
-						if (endX >= startX) {
-							for (x = startX + 0.5, y = startY + 0.5 * slope, z = startZ + 0.5 * slope2; x < endX; x += 0.5, y += 0.5 * slope,
-							z += 0.5 * slope2) {
-								xRound = (int)Math.round(x);
-								yRound = (int)Math.round(y);
-								zRound = (int)Math.round(z);
-								if ( xRound < endX && yRound < endY && zRound < endZ )
-								{
-									maskIndex = zRound * xDim * yDim + yRound * xDim + xRound;
-									okay = mask.get( maskIndex );
-									if (!okay) {
-										continue forj;
-									}
-								}
-							} // for (x = startX + 0.5, y = startY + 0.5 * slope, z = startZ + 0.5 * slope2; x < endX; x += 0.5, y += 0.5 * slope,
-						} // if (endX >= startX)
-							else { // endX < startX
-								for (x = startX - 0.5, y = startY - 0.5 * slope, z = startZ - 0.5 * slope2; x > endX; x -= 0.5, y -= 0.5 * slope,
-								z -= 0.5 * slope2) {
-									xRound = (int)Math.round(x);
-									yRound = (int)Math.round(y);
-									zRound = (int)Math.round(z);
-									if ( xRound < endX && yRound < endY && zRound < endZ )
-									{
-										maskIndex = zRound * xDim * yDim + yRound * xDim + xRound;
-										okay = mask.get( maskIndex );
-										if (!okay) {
-											continue forj;
-										}
-									}
-								} // for (x = startX - 0.5, y = startY - 0.5 * slope, z = startZ - 0.5 * slope2; x > endX; x -= 0.5, y -= 0.5 * slope,
-							} // else endX < startX
-					} // if ((Math.abs(delX) >= Math.abs(delY)) && (Math.abs(delX) >= Math.abs(delZ)))
-					else if ((Math.abs(delY) >= Math.abs(delX)) && (Math.abs(delY) >= Math.abs(delZ))){ 
-						slope = delX/delY;
-						slope2 = delZ/delY;
-						if (endY >= startY) {
-							for (y = startY + 0.5, x = startX + 0.5 * slope, z = startX + 0.5 * slope2; y < endY; y += 0.5, x += 0.5 * slope,
-							z += 0.5 * slope2) {
-								xRound = (int)Math.round(x);
-								yRound = (int)Math.round(y);
-								zRound = (int)Math.round(z);
-								if ( xRound < endX && yRound < endY && zRound < endZ )
-								{
-									maskIndex = zRound * xDim * yDim + yRound * xDim + xRound;
-									okay = mask.get( maskIndex );
-									if (!okay) {
-										continue forj;
-									}
-								}
-							} // for (y = startY + 0.5, x = startX + 0.5 * slope, z = startX + 0.5 * slope2; y < endY; y += 0.5, x += 0.5 * slope,
-						} // if (endX >= startX)
-							else { // endX < startX
-								for (y = startY - 0.5, x = startX - 0.5 * slope, z = startZ - 0.5 * slope2; y > endY; y -= 0.5, x -= 0.5 * slope,
-								z -= 0.5 * slope2) {
-									xRound = (int)Math.round(x);
-									yRound = (int)Math.round(y);
-									zRound = (int)Math.round(z);
-									if ( xRound < endX && yRound < endY && zRound < endZ )
-									{
-										maskIndex = zRound * xDim * yDim + yRound * xDim + xRound;
-										okay = mask.get( maskIndex );
-										if (!okay) {
-											continue forj;
-										}
-									}
-								} // for (y = startY - 0.5, x = startX - 0.5 * slope, z = startZ - 0.5 * slope2; y > endY; y -= 0.5, x -= 0.5 * slope,
-							} // else endX < startX    
-					} // else if ((Math.abs(delY) >= Math.abs(delX)) && (Math.abs(delY) >= Math.abs(delZ)))
-					else { // ((Math.abs(delZ) >= Math.abs(delX)) && (Math.abs(delZ) >= Math.abs(delY))) 
-						slope = delX/delZ;
-						slope2 = delY/delZ;
-						if (endZ >= startZ) {
-							for (z = startZ + 0.5, x = startX + 0.5 * slope, y = startY + 0.5 * slope2; z < endZ; z += 0.5, x += 0.5 * slope,
-							y += 0.5 * slope2) {
-								xRound = (int)Math.round(x);
-								yRound = (int)Math.round(y);
-								zRound = (int)Math.round(z);
-								if ( xRound < endX && yRound < endY && zRound < endZ )
-								{
-									maskIndex = zRound * xDim * yDim + yRound * xDim + xRound;
-									okay = mask.get( maskIndex );
-									if (!okay) {
-										continue forj;
-									}
-								}
-							} // for (z = startZ + 0.5, x = startX + 0.5 * slope, y = startY + 0.5 * slope2; z < endZ; z += 0.5, x += 0.5 * slope,   
-						} // if (endZ >= startZ)
-							else { // endZ < startZ
-								for (z = startZ - 0.5, x = startX - 0.5 * slope, y = startY - 0.5 * slope2; z > endZ; z -= 0.5, x -= 0.5 * slope,
-								y -= 0.5 * slope2) {
-									xRound = (int)Math.round(x);
-									yRound = (int)Math.round(y);
-									zRound = (int)Math.round(z);
-									if ( xRound < endX && yRound < endY && zRound < endZ )
-									{
-										maskIndex = zRound * xDim * yDim + yRound * xDim + xRound;
-										okay = mask.get( maskIndex );
-										if (!okay) {
-											continue forj;
-										}
-									}
-								} // for (z = startZ - 0.5, x = startX - 0.5 * slope, y = startY - 0.5 * slope2; z > endZ; z -= 0.5, x -= 0.5 * slope,
-							} // else (endZ < startZ)
-					} // else ((Math.abs(delZ) >= Math.abs(delX)) && (Math.abs(delZ) >= Math.abs(delY))) 
-					largestDistanceSq = distanceSq;
-					Preferences.debug("New points for largest distance: "+kPos1+"\t"+kPos2+"\n", 
-					        Preferences.DEBUG_ALGORITHM);
-				}
-			}
-		return Math.sqrt(largestDistanceSq);
+		VOILargestDistance largest = new VOILargestDistance(xRes, yRes, zRes, xPts, yPts, zPts);
+		return largest.calcLargestDistance(mask, extents, kPos1, kPos2);
 	}
 
 	/** int indicating that no point was found. */
@@ -977,8 +721,6 @@ public class VOI extends ModelSerialCloneable {
 	 */
 	public void createBinaryMask(int xDim, int yDim, int slice, BitSet mask, boolean XOR, boolean onlyActive) {
 
-		int offsetZ = slice * xDim * yDim;
-
 		if ((process == true) && (curveType == CONTOUR)) {
 			//System.err.println("XOR is " + XOR);
 			//System.err.println("polarity additive?: " + (polarity == ADDITIVE));
@@ -993,29 +735,7 @@ public class VOI extends ModelSerialCloneable {
 					int ybe = (int) yBounds[1];
 
 					// System.err.println("Xbounds 0 = " + xBounds[0] + " Xbounds 1 = " + xBounds[1]);
-					for (int y = ybs; y < ybe; y++) {
-						int offset = offsetZ + (y * xDim);
-
-						for (int x = xbs; x < xbe; x++) {
-
-							if (((VOIContour) (curves.elementAt(i))).contains(x, y) &&
-									(polarity == ADDITIVE)) {
-
-								if (XOR && mask.get(offset + x)) {
-									mask.clear(offset + x);
-								} else {
-									mask.set(offset + x);
-								}
-							} else if (((VOIContour) (curves.elementAt(i))).contains(x, y) &&
-									(polarity == SUBTRACTIVE)) {
-
-								// System.err.println("doing subtractive");
-								mask.clear(offset + x);
-							} else {
-								// mask[0].clear(offset + x);
-							}
-						}
-					}
+					curves.elementAt(i).scanConvert(xbs, xbe, ybs, ybe, slice).setMask(mask, xDim, yDim, XOR, polarity);
 				}
 			}
 		} else if ((process == true) && (curveType == POINT)) {
@@ -1135,11 +855,18 @@ public class VOI extends ModelSerialCloneable {
 		int nGons = curves.size();
 
 		if ((process == true) && (curveType == CONTOUR)) {
+			Vector<VOIBase> contours = new Vector<VOIBase>();
 			for (int i = 0; i < nGons; i++) {
 
 				if (!onlyActive || ((VOIContour) (curves.elementAt(i))).isActive()) {
-
-					curves.elementAt(i).setMask( mask, xDim, yDim, XOR, polarity );     
+					contours.add(curves.elementAt(i));
+				}
+			}
+			// the contours are scan converted in parallel, then written in order so XOR nesting is unchanged.
+			VOIScanConverter[] runs = scanConvert(contours);
+			for (int i = 0; i < runs.length; i++) {
+				if (runs[i] != null) {
+					runs[i].setMask(mask, xDim, yDim, XOR, polarity);
 				}
 			}
 		} else if ((process == true) && (curveType == POINT)) {
@@ -2898,6 +2625,54 @@ public class VOI extends ModelSerialCloneable {
 		setActive( anyActive );        
 	}
 
+	/**
+	 * Scan converts contours on the MIPAV thread pool. Each task claims the next unconverted contour, so slices with
+	 * many or large contours do not hold up the others.
+	 *
+	 * @param   contours  the contours to scan convert
+	 *
+	 * @return  the runs of each contour, in the order of the contours
+	 */
+	private static VOIScanConverter[] scanConvert(final Vector<VOIBase> contours) {
+		final VOIScanConverter[] runs = new VOIScanConverter[contours.size()];
+		int nthreads = Preferences.isMultiThreadingEnabled() ? ThreadUtil.getAvailableCores() : 1;
+		int nTasks = Math.min(nthreads, runs.length);
+
+		if (nTasks <= 1) {
+			for (int i = 0; i < runs.length; i++) {
+				runs[i] = contours.elementAt(i).scanConvert();
+			}
+
+			return runs;
+		}
+
+		final AtomicInteger next = new AtomicInteger(0);
+		final CountDownLatch doneSignal = new CountDownLatch(nTasks);
+
+		for (int t = 0; t < nTasks; t++) {
+			ThreadUtil.mipavThreadPool.execute(new Runnable() {
+				public void run() {
+
+					try {
+						for (int i = next.getAndIncrement(); i < runs.length; i = next.getAndIncrement()) {
+							runs[i] = contours.elementAt(i).scanConvert();
+						}
+					} finally {
+						doneSignal.countDown();
+					}
+				}
+			});
+		}
+
+		try {
+			doneSignal.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return runs;
+	}
+
 	/**
 	 * This is used by the method maxWidth.
 	 *
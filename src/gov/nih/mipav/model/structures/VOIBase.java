@@ -2375,57 +2375,93 @@ public abstract class VOIBase extends Vector<Vector3f> {
     }    
 
 
+    /**
+     * Writes the pixels contained in this contour into a volume mask.
+     * @param kMask mask written into.
+     * @param xDim x-dimension of the mask.
+     * @param yDim y-dimension of the mask.
+     * @param XOR when true an ADDITIVE contour flips the pixels instead of setting them.
+     * @param polarity VOI.ADDITIVE sets the pixels, VOI.SUBTRACTIVE clears them.
+     */
     public void setMask( BitSet kMask, int xDim, int yDim, boolean XOR, int polarity )
     {
-        //if ( m_bUpdateMask )
-        //{
-        	Vector<Vector3f> kMaskPositions = getAllContourPoints();
-        //}
-        for ( int i = 0; i < kMaskPositions.size(); i++ )
+        VOIScanConverter kRuns = scanConvert();
+        if ( kRuns != null )
         {
-            Vector3f kPos = kMaskPositions.elementAt(i);
-            int x = (int)kPos.X;
-            int y = (int)kPos.Y;
-            int z = (int)kPos.Z;
-            int index = z * xDim * yDim + y * xDim + x;
-
-            if (polarity == VOI.ADDITIVE) {
-                if (XOR && kMask.get(index)) {
-                    kMask.clear(index);
-                } else {
-                    kMask.set(index);
-                }
-            }
-            else if (polarity == VOI.SUBTRACTIVE) {
-                kMask.clear(index);
-            } 
+            kRuns.setMask( kMask, xDim, yDim, XOR, polarity );
         }
     }
 
+    /**
+     * Writes the pixels contained in this contour into a single slice mask, ignoring the z-coordinate.
+     * @param kMask mask written into.
+     * @param xDim x-dimension of the mask.
+     * @param XOR when true an ADDITIVE contour flips the pixels instead of setting them.
+     * @param polarity VOI.ADDITIVE sets the pixels, VOI.SUBTRACTIVE clears them.
+     */
     public void setMaskSlice( BitSet kMask, int xDim, boolean XOR, int polarity )
     {
-    	//if ( m_bUpdateMask )
-        //{
-        	Vector<Vector3f> kMaskPositions = getAllContourPoints();
-        //}
-        for ( int i = 0; i < kMaskPositions.size(); i++ )
+        VOIScanConverter kRuns = scanConvert();
+        if ( kRuns != null )
         {
-            Vector3f kPos = kMaskPositions.elementAt(i);
-            int x = (int)kPos.X;
-            int y = (int)kPos.Y;
-            int index = y * xDim + x;
+            kRuns.setMaskSlice( kMask, xDim, XOR, polarity );
+        }
+    }
 
-            if (polarity == VOI.ADDITIVE) {
-                if (XOR && kMask.get(index)) {
-                    kMask.clear(index);
-                } else {
-                    kMask.set(index);
-                }
-            }
-            else if (polarity == VOI.SUBTRACTIVE) {
-                kMask.clear(index);
-            } 
+    /**
+     * Scan converts this contour into runs of contained pixels. The pixels are the ones getAllContourPoints() returns,
+     * found row by row instead of by testing every pixel of the bounding box.
+     * @return the runs of contained pixels, null for an empty contour.
+     */
+    public VOIScanConverter scanConvert()
+    {
+        if ( size() == 0 )
+        {
+            return null;
         }
+        getImageBoundingBox();
+        m_iPlane = getPlane();
+        if ( m_iPlane == NOT_A_PLANE )
+        {
+            m_bUpdatePlane = true;
+            getPlane();
+        }
+        reloadPoints();
+        Vector3f kMin = m_akImageMinMax[0];
+        Vector3f kMax = m_akImageMinMax[1];
+        if ( m_iPlane == ZPLANE )
+        {
+            return new VOIScanConverter( xPts, yPts, size(), (int)kMin.X, (int)kMax.X, (int)kMin.Y, (int)kMax.Y,
+                    false, ZPLANE, (int)elementAt(0).Z );
+        }
+        else if ( m_iPlane == XPLANE )
+        {
+            return new VOIScanConverter( yPts, zPts, size(), (int)kMin.Y, (int)kMax.Y, (int)kMin.Z, (int)kMax.Z,
+                    false, XPLANE, (int)elementAt(0).X );
+        }
+        return new VOIScanConverter( xPts, zPts, size(), (int)kMin.X, (int)kMax.X, (int)kMin.Z, (int)kMax.Z,
+                false, YPLANE, (int)elementAt(0).Y );
+    }
+
+    /**
+     * Scan converts this contour in x and y, ignoring the z-coordinate. The pixels are the ones in
+     * [xMin,xEnd) x [yMin,yEnd) for which contains(x,y) is true.
+     * @param xMin first column.
+     * @param xEnd last column + 1.
+     * @param yMin first row.
+     * @param yEnd last row + 1.
+     * @param iZ z-coordinate given to the runs.
+     * @return the runs of contained pixels.
+     */
+    public VOIScanConverter scanConvert( int xMin, int xEnd, int yMin, int yEnd, int iZ )
+    {
+        Vector3f[] kBounds = getImageBoundingBox();
+        reloadPoints();
+        int iUMin = Math.max( xMin, (int)Math.ceil( kBounds[0].X ) );
+        int iUMax = Math.min( xEnd - 1, (int)Math.floor( kBounds[1].X ) );
+        int iVMin = Math.max( yMin, (int)Math.ceil( kBounds[0].Y ) );
+        int iVMax = Math.min( yEnd - 1, (int)Math.floor( kBounds[1].Y ) );
+        return new VOIScanConverter( xPts, yPts, size(), iUMin, iUMax, iVMin, iVMax, true, ZPLANE, iZ );
     }
 
     /**
@@ -0,0 +1,713 @@
+package gov.nih.mipav.model.structures;
+
+import gov.nih.mipav.view.Preferences;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+import quickhull3d.QuickHull3D;
+import WildMagic.LibFoundation.Mathematics.Vector3f;
+
+/**
+ * Finds the largest distance between two VOI boundary points whose connecting line lies within the VOI mask.
+ *
+ * <p>The farthest pair of a point set is a pair of convex hull vertices, so the points are first reduced to their
+ * convex hull (QuickHull3D for a volume, a monotone chain for a planar set) and the farthest hull pair is found by
+ * branch and bound on a kd-tree. When that pair passes the mask line check it is the answer, which is the usual case
+ * for compact lesions. Otherwise the pairs of all the points are visited best first, again on a kd-tree, so that only
+ * pairs longer than the answer are ever generated and line checked.</p>
+ */
+public class VOILargestDistance {
+
+    /** Maximum number of points in a kd-tree leaf. */
+    private static final int LEAF_SIZE = 8;
+
+    /** Relative slack added to the box distance bounds to cover rounding in the scaled coordinates. */
+    private static final double BOUND_SLACK = 1.0e-9;
+
+    /** Point coordinates. */
+    private float[] xPts, yPts, zPts;
+
+    /** Point resolutions. */
+    private float xRes, yRes, zRes;
+
+    /** Scaled point coordinates, used for the kd-tree bounds. */
+    private double[] m_adX, m_adY, m_adZ;
+
+    /** Point indices, reordered so each kd-tree node covers a contiguous range. */
+    private int[] m_aiOrder;
+
+    /** Number of kd-tree nodes. */
+    private int m_iNumNodes;
+
+    /** First and last + 1 position in m_aiOrder of each node. */
+    private int[] m_aiFirst, m_aiEnd;
+
+    /** Children of each node, -1 for a leaf. */
+    private int[] m_aiLeft, m_aiRight;
+
+    /** Bounding box of each node, 3 values per node. */
+    private double[] m_adMin, m_adMax;
+
+    /** Largest squared distance found by the farthest pair search. */
+    private double m_dBestSq;
+
+    /** Pair found by the farthest pair search. */
+    private int m_iBest1, m_iBest2;
+
+    /** Max-heap of the best first search: key and pair. A node pair has a >= 0, a point pair a = -(point + 1). */
+    private double[] m_adHeapKey;
+
+    /** Max-heap of the best first search: first and second element of each pair. */
+    private int[] m_aiHeapA, m_aiHeapB;
+
+    /** Number of heap entries. */
+    private int m_iHeapSize;
+
+    /**
+     * Creates the search for the given boundary points.
+     *
+     * @param  xRes  x resolution
+     * @param  yRes  y resolution
+     * @param  zRes  z resolution
+     * @param  xPts  x-coordinates of the boundary points
+     * @param  yPts  y-coordinates of the boundary points
+     * @param  zPts  z-coordinates of the boundary points
+     */
+    public VOILargestDistance(float xRes, float yRes, float zRes, float[] xPts, float[] yPts, float[] zPts) {
+        this.xRes = xRes;
+        this.yRes = yRes;
+        this.zRes = zRes;
+        this.xPts = xPts;
+        this.yPts = yPts;
+        this.zPts = zPts;
+
+        int n = xPts.length;
+        m_adX = new double[n];
+        m_adY = new double[n];
+        m_adZ = new double[n];
+        for (int i = 0; i < n; i++) {
+            m_adX[i] = xRes * (double) xPts[i];
+            m_adY[i] = yRes * (double) yPts[i];
+            m_adZ[i] = zRes * (double) zPts[i];
+        }
+    }
+
+    /**
+     * Finds the largest distance between two points whose connecting line lies within the mask.
+     *
+     * @param   mask     the VOI mask
+     * @param   extents  image extents
+     * @param   kPos1    set to the first end point of the largest distance
+     * @param   kPos2    set to the second end point of the largest distance
+     *
+     * @return  the largest distance, 0 if no pair of points qualifies
+     */
+    public double calcLargestDistance(BitSet mask, int[] extents, Vector3f kPos1, Vector3f kPos2) {
+        int n = xPts.length;
+        if (n < 2) {
+            return 0;
+        }
+        int xDim = extents.length > 0 ? extents[0] : 1;
+        int yDim = extents.length > 1 ? extents[1] : 1;
+        long time = System.currentTimeMillis();
+
+        int[] aiHull = getHullVertices();
+        buildTree(aiHull);
+        m_dBestSq = 0;
+        m_iBest1 = -1;
+        m_iBest2 = -1;
+        farthestPair(0, 0);
+        Preferences.debug("Largest distance: " + aiHull.length + " of " + n + " points on the hull, farthest pair in "
+                + (System.currentTimeMillis() - time) + " ms\n", Preferences.DEBUG_ALGORITHM);
+
+        if ((m_iBest1 >= 0) && isContained(mask, xDim, yDim, m_iBest1, m_iBest2)) {
+            return setPositions(m_iBest1, m_iBest2, kPos1, kPos2);
+        }
+
+        // the farthest pair leaves the mask, visit the pairs of all the points from the longest down.
+        int[] aiAll = new int[n];
+        for (int i = 0; i < n; i++) {
+            aiAll[i] = i;
+        }
+        buildTree(aiAll);
+        m_adHeapKey = new double[1024];
+        m_aiHeapA = new int[1024];
+        m_aiHeapB = new int[1024];
+        m_iHeapSize = 0;
+        push(bound(0, 0), 0, 0);
+        int iChecked = 0;
+        while (m_iHeapSize > 0) {
+            double dKey = m_adHeapKey[0];
+            int a = m_aiHeapA[0];
+            int b = m_aiHeapB[0];
+            pop();
+            if (a < 0) {
+                iChecked++;
+                if (isContained(mask, xDim, yDim, -a - 1, b)) {
+                    Preferences.debug("Largest distance: " + iChecked + " pairs line checked in "
+                            + (System.currentTimeMillis() - time) + " ms\n", Preferences.DEBUG_ALGORITHM);
+                    return setPositions(-a - 1, b, kPos1, kPos2);
+                }
+            } else if (dKey > 0) {
+                expand(a, b);
+            }
+        }
+        m_adHeapKey = null;
+        m_aiHeapA = null;
+        m_aiHeapB = null;
+        return 0;
+    }
+
+    /**
+     * Returns the indices of the convex hull vertices. A planar set is handled in its plane, and a set the hull
+     * cannot be built for keeps all its points.
+     *
+     * @return  indices of the hull vertices
+     */
+    private int[] getHullVertices() {
+        int n = xPts.length;
+        double[] adMin = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        double[] adMax = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (int i = 0; i < n; i++) {
+            adMin[0] = Math.min(adMin[0], m_adX[i]);
+            adMax[0] = Math.max(adMax[0], m_adX[i]);
+            adMin[1] = Math.min(adMin[1], m_adY[i]);
+            adMax[1] = Math.max(adMax[1], m_adY[i]);
+            adMin[2] = Math.min(adMin[2], m_adZ[i]);
+            adMax[2] = Math.max(adMax[2], m_adZ[i]);
+        }
+        if (adMin[2] == adMax[2]) {
+            return getHullVertices2D(m_adX, m_adY);
+        } else if (adMin[1] == adMax[1]) {
+            return getHullVertices2D(m_adX, m_adZ);
+        } else if (adMin[0] == adMax[0]) {
+            return getHullVertices2D(m_adY, m_adZ);
+        }
+
+        try {
+            double[] adCoords = new double[3 * n];
+            for (int i = 0; i < n; i++) {
+                adCoords[3 * i] = m_adX[i];
+                adCoords[3 * i + 1] = m_adY[i];
+                adCoords[3 * i + 2] = m_adZ[i];
+            }
+            QuickHull3D kHull = new QuickHull3D(adCoords);
+            return kHull.getVertexPointIndices();
+        } catch (RuntimeException e) {
+            // an oblique planar or otherwise degenerate set.
+            int[] aiAll = new int[n];
+            for (int i = 0; i < n; i++) {
+                aiAll[i] = i;
+            }
+            return aiAll;
+        }
+    }
+
+    /**
+     * Returns the indices of the convex hull vertices of a planar set, by Andrew's monotone chain. Points on a hull
+     * edge are kept.
+     *
+     * @param   adU  first in-plane coordinate of each point
+     * @param   adV  second in-plane coordinate of each point
+     *
+     * @return  indices of the hull vertices
+     */
+    private static int[] getHullVertices2D(final double[] adU, final double[] adV) {
+        int n = adU.length;
+        Integer[] aiSorted = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            aiSorted[i] = i;
+        }
+        Arrays.sort(aiSorted, new Comparator<Integer>() {
+            public int compare(Integer i, Integer j) {
+                int iCompare = Double.compare(adU[i], adU[j]);
+                return (iCompare != 0) ? iCompare : Double.compare(adV[i], adV[j]);
+            }
+        });
+
+        int[] aiHull = new int[2 * n];
+        int k = 0;
+        for (int s = 0; s < n; s++) {
+            int i = aiSorted[s];
+            while ((k >= 2) && (cross(adU, adV, aiHull[k - 2], aiHull[k - 1], i) < 0)) {
+                k--;
+            }
+            aiHull[k++] = i;
+        }
+        for (int s = n - 2, iLower = k + 1; s >= 0; s--) {
+            int i = aiSorted[s];
+            while ((k >= iLower) && (cross(adU, adV, aiHull[k - 2], aiHull[k - 1], i) < 0)) {
+                k--;
+            }
+            aiHull[k++] = i;
+        }
+
+        // the chain ends on its first point, and may repeat points when the set is collinear.
+        BitSet kOnHull = new BitSet(n);
+        for (int i = 0; i < k; i++) {
+            kOnHull.set(aiHull[i]);
+        }
+        int[] aiVertices = new int[kOnHull.cardinality()];
+        for (int i = kOnHull.nextSetBit(0), j = 0; i >= 0; i = kOnHull.nextSetBit(i + 1)) {
+            aiVertices[j++] = i;
+        }
+        return aiVertices;
+    }
+
+    /**
+     * Returns the cross product of (b - a) and (c - a).
+     *
+     * @param   adU  first coordinate of each point
+     * @param   adV  second coordinate of each point
+     * @param   a    first point
+     * @param   b    second point
+     * @param   c    third point
+     *
+     * @return  positive for a left turn a-b-c, negative for a right turn
+     */
+    private static double cross(double[] adU, double[] adV, int a, int b, int c) {
+        return ((adU[b] - adU[a]) * (adV[c] - adV[a])) - ((adV[b] - adV[a]) * (adU[c] - adU[a]));
+    }
+
+    /**
+     * Builds a kd-tree over the given points, splitting each node at the median of its widest axis.
+     *
+     * @param  aiPoints  indices of the points, reordered by the tree
+     */
+    private void buildTree(int[] aiPoints) {
+        m_aiOrder = aiPoints;
+        int iMaxNodes = Math.max(1, 2 * ((aiPoints.length + LEAF_SIZE - 1) / LEAF_SIZE) * 2);
+        m_aiFirst = new int[iMaxNodes];
+        m_aiEnd = new int[iMaxNodes];
+        m_aiLeft = new int[iMaxNodes];
+        m_aiRight = new int[iMaxNodes];
+        m_adMin = new double[3 * iMaxNodes];
+        m_adMax = new double[3 * iMaxNodes];
+        m_iNumNodes = 0;
+        buildNode(0, aiPoints.length);
+    }
+
+    /**
+     * Builds the kd-tree node covering a range of m_aiOrder.
+     *
+     * @param   iFirst  first position
+     * @param   iEnd    last position + 1
+     *
+     * @return  the node
+     */
+    private int buildNode(int iFirst, int iEnd) {
+        int iNode = m_iNumNodes++;
+        m_aiFirst[iNode] = iFirst;
+        m_aiEnd[iNode] = iEnd;
+        m_aiLeft[iNode] = -1;
+        m_aiRight[iNode] = -1;
+
+        double[] adMin = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        double[] adMax = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (int k = iFirst; k < iEnd; k++) {
+            int i = m_aiOrder[k];
+            adMin[0] = Math.min(adMin[0], m_adX[i]);
+            adMax[0] = Math.max(adMax[0], m_adX[i]);
+            adMin[1] = Math.min(adMin[1], m_adY[i]);
+            adMax[1] = Math.max(adMax[1], m_adY[i]);
+            adMin[2] = Math.min(adMin[2], m_adZ[i]);
+            adMax[2] = Math.max(adMax[2], m_adZ[i]);
+        }
+        System.arraycopy(adMin, 0, m_adMin, 3 * iNode, 3);
+        System.arraycopy(adMax, 0, m_adMax, 3 * iNode, 3);
+
+        if ((iEnd - iFirst) > LEAF_SIZE) {
+            int iAxis = 0;
+            for (int a = 1; a < 3; a++) {
+                if ((adMax[a] - adMin[a]) > (adMax[iAxis] - adMin[iAxis])) {
+                    iAxis = a;
+                }
+            }
+            double[] adCoord = (iAxis == 0) ? m_adX : ((iAxis == 1) ? m_adY : m_adZ);
+            int iMid = (iFirst + iEnd) >>> 1;
+            select(adCoord, iFirst, iEnd - 1, iMid);
+            m_aiLeft[iNode] = buildNode(iFirst, iMid);
+            m_aiRight[iNode] = buildNode(iMid, iEnd);
+        }
+        return iNode;
+    }
+
+    /**
+     * Partially sorts m_aiOrder[iLeft..iRight] by the coordinate so that position k holds its k-th smallest point.
+     *
+     * @param  adCoord  the coordinate sorted on
+     * @param  iLeft    first position
+     * @param  iRight   last position
+     * @param  k        position to select
+     */
+    private void select(double[] adCoord, int iLeft, int iRight, int k) {
+        while (iRight > iLeft) {
+            double dPivot = adCoord[m_aiOrder[(iLeft + iRight) >>> 1]];
+            int i = iLeft;
+            int j = iRight;
+            while (i <= j) {
+                while (adCoord[m_aiOrder[i]] < dPivot) {
+                    i++;
+                }
+                while (adCoord[m_aiOrder[j]] > dPivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int iTemp = m_aiOrder[i];
+                    m_aiOrder[i] = m_aiOrder[j];
+                    m_aiOrder[j] = iTemp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                iRight = j;
+            } else if (k >= i) {
+                iLeft = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns an upper bound on the squared distance between a point of one node and a point of the other.
+     *
+     * @param   iA  first node
+     * @param   iB  second node
+     *
+     * @return  the bound
+     */
+    private double bound(int iA, int iB) {
+        double dSum = 0;
+        for (int a = 0; a < 3; a++) {
+            double d = Math.max(m_adMax[3 * iB + a] - m_adMin[3 * iA + a], m_adMax[3 * iA + a] - m_adMin[3 * iB + a]);
+            dSum += d * d;
+        }
+        return (dSum * (1 + BOUND_SLACK)) + BOUND_SLACK;
+    }
+
+    /**
+     * Returns the squared distance between two points, computed as the mask line check does.
+     *
+     * @param   i  first point
+     * @param   j  second point
+     *
+     * @return  the squared distance
+     */
+    private double distanceSq(int i, int j) {
+        double distX = xRes * ((double) xPts[j] - xPts[i]);
+        double distY = yRes * ((double) yPts[j] - yPts[i]);
+        double distZ = zRes * ((double) zPts[j] - zPts[i]);
+        return distX * distX + distY * distY + distZ * distZ;
+    }
+
+    /**
+     * Branch and bound search for the farthest pair between two kd-tree nodes.
+     *
+     * @param  iA  first node
+     * @param  iB  second node, iA itself for the pairs within one node
+     */
+    private void farthestPair(int iA, int iB) {
+        if (bound(iA, iB) <= m_dBestSq) {
+            return;
+        }
+        boolean bLeafA = m_aiLeft[iA] == -1;
+        boolean bLeafB = m_aiLeft[iB] == -1;
+        if (bLeafA && bLeafB) {
+            for (int k = m_aiFirst[iA]; k < m_aiEnd[iA]; k++) {
+                for (int l = (iA == iB) ? (k + 1) : m_aiFirst[iB]; l < m_aiEnd[iB]; l++) {
+                    int i = Math.min(m_aiOrder[k], m_aiOrder[l]);
+                    int j = Math.max(m_aiOrder[k], m_aiOrder[l]);
+                    double dSq = distanceSq(i, j);
+                    if (dSq > m_dBestSq) {
+                        m_dBestSq = dSq;
+                        m_iBest1 = i;
+                        m_iBest2 = j;
+                    }
+                }
+            }
+        } else if (iA == iB) {
+            farthestPair(m_aiLeft[iA], m_aiRight[iA]);
+            farthestPair(m_aiLeft[iA], m_aiLeft[iA]);
+            farthestPair(m_aiRight[iA], m_aiRight[iA]);
+        } else {
+            // split the larger node and visit the more promising half first.
+            if (bLeafB || (!bLeafA && ((m_aiEnd[iA] - m_aiFirst[iA]) >= (m_aiEnd[iB] - m_aiFirst[iB])))) {
+                int iTemp = iA;
+                iA = iB;
+                iB = iTemp;
+            }
+            int iL = m_aiLeft[iB];
+            int iR = m_aiRight[iB];
+            if (bound(iA, iL) >= bound(iA, iR)) {
+                farthestPair(iA, iL);
+                farthestPair(iA, iR);
+            } else {
+                farthestPair(iA, iR);
+                farthestPair(iA, iL);
+            }
+        }
+    }
+
+    /**
+     * Replaces a node pair of the best first search by its children, or by its point pairs for two leaves.
+     *
+     * @param  iA  first node
+     * @param  iB  second node, iA itself for the pairs within one node
+     */
+    private void expand(int iA, int iB) {
+        boolean bLeafA = m_aiLeft[iA] == -1;
+        boolean bLeafB = m_aiLeft[iB] == -1;
+        if (bLeafA && bLeafB) {
+            for (int k = m_aiFirst[iA]; k < m_aiEnd[iA]; k++) {
+                for (int l = (iA == iB) ? (k + 1) : m_aiFirst[iB]; l < m_aiEnd[iB]; l++) {
+                    int i = Math.min(m_aiOrder[k], m_aiOrder[l]);
+                    int j = Math.max(m_aiOrder[k], m_aiOrder[l]);
+                    double dSq = distanceSq(i, j);
+                    if (dSq > 0) {
+                        push(dSq, -i - 1, j);
+                    }
+                }
+            }
+        } else if (iA == iB) {
+            pushNodes(m_aiLeft[iA], m_aiRight[iA]);
+            pushNodes(m_aiLeft[iA], m_aiLeft[iA]);
+            pushNodes(m_aiRight[iA], m_aiRight[iA]);
+        } else {
+            if (bLeafB || (!bLeafA && ((m_aiEnd[iA] - m_aiFirst[iA]) >= (m_aiEnd[iB] - m_aiFirst[iB])))) {
+                int iTemp = iA;
+                iA = iB;
+                iB = iTemp;
+            }
+            pushNodes(iA, m_aiLeft[iB]);
+            pushNodes(iA, m_aiRight[iB]);
+        }
+    }
+
+    /**
+     * Adds a node pair to the best first search.
+     *
+     * @param  iA  first node
+     * @param  iB  second node
+     */
+    private void pushNodes(int iA, int iB) {
+        if ((iA == iB) && ((m_aiEnd[iA] - m_aiFirst[iA]) < 2)) {
+            return;
+        }
+        push(bound(iA, iB), iA, iB);
+    }
+
+    /**
+     * Adds an entry to the max-heap. Among equal keys a point pair comes out before a node pair, and the pair with
+     * the lower first point first, so ties resolve the same way every time.
+     *
+     * @param  dKey  squared distance or bound
+     * @param  a     first element
+     * @param  b     second element
+     */
+    private void push(double dKey, int a, int b) {
+        if (m_iHeapSize == m_adHeapKey.length) {
+            m_adHeapKey = Arrays.copyOf(m_adHeapKey, 2 * m_iHeapSize);
+            m_aiHeapA = Arrays.copyOf(m_aiHeapA, 2 * m_iHeapSize);
+            m_aiHeapB = Arrays.copyOf(m_aiHeapB, 2 * m_iHeapSize);
+        }
+        int i = m_iHeapSize++;
+        while (i > 0) {
+            int iParent = (i - 1) >>> 1;
+            if (!before(dKey, a, b, iParent)) {
+                break;
+            }
+            m_adHeapKey[i] = m_adHeapKey[iParent];
+            m_aiHeapA[i] = m_aiHeapA[iParent];
+            m_aiHeapB[i] = m_aiHeapB[iParent];
+            i = iParent;
+        }
+        m_adHeapKey[i] = dKey;
+        m_aiHeapA[i] = a;
+        m_aiHeapB[i] = b;
+    }
+
+    /**
+     * Removes the top entry of the max-heap.
+     */
+    private void pop() {
+        m_iHeapSize--;
+        double dKey = m_adHeapKey[m_iHeapSize];
+        int a = m_aiHeapA[m_iHeapSize];
+        int b = m_aiHeapB[m_iHeapSize];
+        int i = 0;
+        while (true) {
+            int iChild = (2 * i) + 1;
+            if (iChild >= m_iHeapSize) {
+                break;
+            }
+            if (((iChild + 1) < m_iHeapSize)
+                    && before(m_adHeapKey[iChild + 1], m_aiHeapA[iChild + 1], m_aiHeapB[iChild + 1], iChild)) {
+                iChild++;
+            }
+            if (before(dKey, a, b, iChild)) {
+                break;
+            }
+            m_adHeapKey[i] = m_adHeapKey[iChild];
+            m_aiHeapA[i] = m_aiHeapA[iChild];
+            m_aiHeapB[i] = m_aiHeapB[iChild];
+            i = iChild;
+        }
+        m_adHeapKey[i] = dKey;
+        m_aiHeapA[i] = a;
+        m_aiHeapB[i] = b;
+    }
+
+    /**
+     * Returns whether an entry comes out of the max-heap before the heap entry at position i.
+     *
+     * @param   dKey  key of the entry
+     * @param   a     first element of the entry
+     * @param   b     second element of the entry
+     * @param   i     heap position
+     *
+     * @return  true when the entry comes first
+     */
+    private boolean before(double dKey, int a, int b, int i) {
+        if (dKey != m_adHeapKey[i]) {
+            return dKey > m_adHeapKey[i];
+        }
+        int iA = m_aiHeapA[i];
+        if ((a < 0) != (iA < 0)) {
+            return a < 0;
+        }
+        return (a != iA) ? (a > iA) : (b < m_aiHeapB[i]);
+    }
+
+    /**
+     * Checks the line between two points against the mask, stepping half a voxel along its major axis. This is the
+     * check the previous pairwise search in VOI made for each candidate pair, kept unchanged.
+     *
+     * @param   mask  the VOI mask
+     * @param   xDim  x-dimension of the mask
+     * @param   yDim  y-dimension of the mask
+     * @param   i     start point
+     * @param   j     end point
+     *
+     * @return  false when a checked voxel of the line is outside the mask
+     */
+    private boolean isContained(BitSet mask, int xDim, int yDim, int i, int j) {
+        double startX = xPts[i];
+        double startY = yPts[i];
+        double startZ = zPts[i];
+        double endX = xPts[j];
+        double endY = yPts[j];
+        double endZ = zPts[j];
+        double delX = endX - startX;
+        double delY = endY - startY;
+        double delZ = endZ - startZ;
+        double x, y, z;
+        double slope, slope2;
+
+        if ((Math.abs(delX) >= Math.abs(delY)) && (Math.abs(delX) >= Math.abs(delZ))) {
+            slope = delY / delX;
+            slope2 = delZ / delX;
+            if (endX >= startX) {
+                for (x = startX + 0.5, y = startY + 0.5 * slope, z = startZ + 0.5 * slope2; x < endX;
+                        x += 0.5, y += 0.5 * slope, z += 0.5 * slope2) {
+                    if (!isInMask(mask, xDim, yDim, x, y, z, endX, endY, endZ)) {
+                        return false;
+                    }
+                }
+            } else {
+                for (x = startX - 0.5, y = startY - 0.5 * slope, z = startZ - 0.5 * slope2; x > endX;
+                        x -= 0.5, y -= 0.5 * slope, z -= 0.5 * slope2) {
+                    if (!isInMask(mask, xDim, yDim, x, y, z, endX, endY, endZ)) {
+                        return false;
+                    }
+                }
+            }
+        } else if ((Math.abs(delY) >= Math.abs(delX)) && (Math.abs(delY) >= Math.abs(delZ))) {
+            slope = delX / delY;
+            slope2 = delZ / delY;
+            if (endY >= startY) {
+                // z starts from startX here, as it did in the previous search.
+                for (y = startY + 0.5, x = startX + 0.5 * slope, z = startX + 0.5 * slope2; y < endY;
+                        y += 0.5, x += 0.5 * slope, z += 0.5 * slope2) {
+                    if (!isInMask(mask, xDim, yDim, x, y, z, endX, endY, endZ)) {
+                        return false;
+                    }
+                }
+            } else {
+                for (y = startY - 0.5, x = startX - 0.5 * slope, z = startZ - 0.5 * slope2; y > endY;
+                        y -= 0.5, x -= 0.5 * slope, z -= 0.5 * slope2) {
+                    if (!isInMask(mask, xDim, yDim, x, y, z, endX, endY, endZ)) {
+                        return false;
+                    }
+                }
+            }
+        } else {
+            slope = delX / delZ;
+            slope2 = delY / delZ;
+            if (endZ >= startZ) {
+                for (z = startZ + 0.5, x = startX + 0.5 * slope, y = startY + 0.5 * slope2; z < endZ;
+                        z += 0.5, x += 0.5 * slope, y += 0.5 * slope2) {
+                    if (!isInMask(mask, xDim, yDim, x, y, z, endX, endY, endZ)) {
+                        return false;
+                    }
+                }
+            } else {
+                for (z = startZ - 0.5, x = startX - 0.5 * slope, y = startY - 0.5 * slope2; z > endZ;
+                        z -= 0.5, x -= 0.5 * slope, y -= 0.5 * slope2) {
+                    if (!isInMask(mask, xDim, yDim, x, y, z, endX, endY, endZ)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks one sample of a line against the mask. Only the samples below the end point in all three coordinates
+     * are checked.
+     *
+     * @param   mask  the VOI mask
+     * @param   xDim  x-dimension of the mask
+     * @param   yDim  y-dimension of the mask
+     * @param   x     x-coordinate of the sample
+     * @param   y     y-coordinate of the sample
+     * @param   z     z-coordinate of the sample
+     * @param   endX  x-coordinate of the end point
+     * @param   endY  y-coordinate of the end point
+     * @param   endZ  z-coordinate of the end point
+     *
+     * @return  false when the sample is checked and outside the mask
+     */
+    private static boolean isInMask(BitSet mask, int xDim, int yDim, double x, double y, double z, double endX,
+            double endY, double endZ) {
+        int xRound = (int) Math.round(x);
+        int yRound = (int) Math.round(y);
+        int zRound = (int) Math.round(z);
+        if ((xRound < endX) && (yRound < endY) && (zRound < endZ)) {
+            return mask.get((zRound * xDim * yDim) + (yRound * xDim) + xRound);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the end points of the largest distance.
+     *
+     * @param   i      first point
+     * @param   j      second point
+     * @param   kPos1  set to the first point
+     * @param   kPos2  set to the second point
+     *
+     * @return  the distance between the points
+     */
+    private double setPositions(int i, int j, Vector3f kPos1, Vector3f kPos2) {
+        kPos1.set(xPts[i], yPts[i], zPts[i]);
+        kPos2.set(xPts[j], yPts[j], zPts[j]);
+        Preferences.debug("New points for largest distance: " + kPos1 + "\t" + kPos2 + "\n",
+                Preferences.DEBUG_ALGORITHM);
+        return Math.sqrt(distanceSq(i, j));
+    }
+}
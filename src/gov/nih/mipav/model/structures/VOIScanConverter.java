@@ -0,0 +1,358 @@
+package gov.nih.mipav.model.structures;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Scanline rasterizer for planar VOI contours. The polygon is given in the two in-plane coordinates (u,v) of the
+ * contour: (x,y) for a z-plane contour, (y,z) for an x-plane contour and (x,z) for a y-plane contour. An edge table
+ * bucketed by first row feeds an active edge list, so each row only visits the edges that cross it, and the pixels
+ * between crossings are stored as runs rather than tested one at a time.
+ *
+ * <p>A pixel (u,v) is inside when the half-open crossing test of VOIBase, evaluated at (u + 0.49, v + 0.49) with the
+ * same float arithmetic, toggles an odd number of times. That test is monotone in u along a row, so every crossing
+ * edge toggles all the pixels from some first column to the end of the row, and the runs reproduce the per-pixel
+ * contains tests exactly.</p>
+ */
+public class VOIScanConverter {
+
+    /** Initial capacity of the run array. */
+    private static final int INITIAL_RUNS = 64;
+
+    /** Plane of the contour, one of VOIBase.XPLANE, VOIBase.YPLANE or VOIBase.ZPLANE. */
+    private int m_iPlane;
+
+    /** Coordinate of the contour along the plane normal. */
+    private int m_iW;
+
+    /** Number of runs. */
+    private int m_iNumRuns = 0;
+
+    /** Row, first column and last column + 1 of each run, rows in increasing order. */
+    private int[] m_aiRuns = new int[3 * INITIAL_RUNS];
+
+    /**
+     * Scan converts the polygon over the inclusive pixel range [iUMin,iUMax] x [iVMin,iVMax].
+     *
+     * @param  afU              u-coordinates of the polygon vertices
+     * @param  afV              v-coordinates of the polygon vertices
+     * @param  iNumPts          number of polygon vertices
+     * @param  iUMin            first column
+     * @param  iUMax            last column
+     * @param  iVMin            first row
+     * @param  iVMax            last row
+     * @param  bVertexPixels    when true a pixel that exactly equals one of the vertices is also inside
+     * @param  iPlane           plane of the contour, one of VOIBase.XPLANE, VOIBase.YPLANE or VOIBase.ZPLANE
+     * @param  iW               coordinate of the contour along the plane normal
+     */
+    public VOIScanConverter(float[] afU, float[] afV, int iNumPts, int iUMin, int iUMax, int iVMin, int iVMax,
+            boolean bVertexPixels, int iPlane, int iW) {
+        m_iPlane = iPlane;
+        m_iW = iW;
+
+        if ((iNumPts == 0) || (iUMin > iUMax) || (iVMin > iVMax)) {
+            return;
+        }
+        int iRows = iVMax - iVMin + 1;
+
+        // edge table: each edge is bucketed by the first row it crosses.
+        int[] aiFirstEdge = new int[iRows];
+        Arrays.fill(aiFirstEdge, -1);
+        int[] aiNextEdge = new int[iNumPts];
+        int[] aiUpper = new int[iNumPts];
+        int[] aiLower = new int[iNumPts];
+        int[] aiLastRow = new int[iNumPts];
+        int j = iNumPts - 1;
+        for (int i = 0; i < iNumPts; i++) {
+            if (afV[i] != afV[j]) {
+                int iHi = (afV[i] > afV[j]) ? i : j;
+                int iLo = (iHi == i) ? j : i;
+                int iFirst = firstRow(afV[iLo], iVMin, iVMax);
+                int iLast = lastRow(afV[iHi], iVMin, iVMax);
+                if (iFirst <= iLast) {
+                    aiUpper[i] = iHi;
+                    aiLower[i] = iLo;
+                    aiLastRow[i] = iLast;
+                    aiNextEdge[i] = aiFirstEdge[iFirst - iVMin];
+                    aiFirstEdge[iFirst - iVMin] = i;
+                }
+            }
+            j = i;
+        }
+
+        // vertices that are pixels of the range, bucketed by row.
+        int[] aiFirstVertex = null;
+        int[] aiNextVertex = null;
+        if (bVertexPixels) {
+            aiFirstVertex = new int[iRows];
+            Arrays.fill(aiFirstVertex, -1);
+            aiNextVertex = new int[iNumPts];
+            for (int i = 0; i < iNumPts; i++) {
+                int iU = (int) afU[i];
+                int iV = (int) afV[i];
+                if ((iU == afU[i]) && (iV == afV[i]) && (iU >= iUMin) && (iU <= iUMax) && (iV >= iVMin)
+                        && (iV <= iVMax)) {
+                    aiNextVertex[i] = aiFirstVertex[iV - iVMin];
+                    aiFirstVertex[iV - iVMin] = i;
+                }
+            }
+        }
+
+        int[] aiActive = new int[iNumPts];
+        int iNumActive = 0;
+        int[] aiToggle = new int[iNumPts + 2];
+        for (int iV = iVMin; iV <= iVMax; iV++) {
+            float fV = iV + 0.49f;
+
+            for (int i = aiFirstEdge[iV - iVMin]; i != -1; i = aiNextEdge[i]) {
+                aiActive[iNumActive++] = i;
+            }
+            int iNumToggles = 0;
+            int iKept = 0;
+            for (int k = 0; k < iNumActive; k++) {
+                int i = aiActive[k];
+                if (aiLastRow[i] < iV) {
+                    continue;
+                }
+                aiActive[iKept++] = i;
+                int iU = firstColumn(afU[aiUpper[i]], afV[aiUpper[i]], afU[aiLower[i]], afV[aiLower[i]], fV,
+                        iUMin, iUMax);
+                if (iU <= iUMax) {
+                    if (iNumToggles == aiToggle.length) {
+                        aiToggle = Arrays.copyOf(aiToggle, 2 * iNumToggles);
+                    }
+                    aiToggle[iNumToggles++] = iU;
+                }
+            }
+            iNumActive = iKept;
+
+            if (bVertexPixels) {
+                for (int i = aiFirstVertex[iV - iVMin]; i != -1; i = aiNextVertex[i]) {
+                    int iU = (int) afU[i];
+                    int iCount = 0;
+                    for (int k = 0; k < iNumToggles; k++) {
+                        if (aiToggle[k] <= iU) {
+                            iCount++;
+                        }
+                    }
+                    if ((iCount & 1) == 0) {
+                        // toggling [iU, iU + 1) adds the pixel, and a repeated vertex now finds it inside.
+                        if (iNumToggles + 2 > aiToggle.length) {
+                            aiToggle = Arrays.copyOf(aiToggle, 2 * iNumToggles + 2);
+                        }
+                        aiToggle[iNumToggles++] = iU;
+                        aiToggle[iNumToggles++] = iU + 1;
+                    }
+                }
+            }
+            if (iNumToggles == 0) {
+                continue;
+            }
+            Arrays.sort(aiToggle, 0, iNumToggles);
+
+            for (int k = 0; k < iNumToggles; k += 2) {
+                int iStart = aiToggle[k];
+                int iEnd = (k + 1 < iNumToggles) ? Math.min(aiToggle[k + 1], iUMax + 1) : (iUMax + 1);
+                if (iStart < iEnd) {
+                    addRun(iV, iStart, iEnd);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of runs.
+     *
+     * @return  number of runs
+     */
+    public int getNumRuns() {
+        return m_iNumRuns;
+    }
+
+    /**
+     * Returns the runs as consecutive (row, first column, last column + 1) triples, rows in increasing order.
+     *
+     * @return  the run array, of which the first 3 * getNumRuns() entries are used
+     */
+    public int[] getRuns() {
+        return m_aiRuns;
+    }
+
+    /**
+     * Writes the contained pixels into a volume mask.
+     *
+     * @param  kMask     mask written into
+     * @param  xDim      x-dimension of the mask
+     * @param  yDim      y-dimension of the mask
+     * @param  XOR       when true an ADDITIVE contour flips the pixels instead of setting them
+     * @param  polarity  VOI.ADDITIVE sets the pixels, VOI.SUBTRACTIVE clears them
+     */
+    public void setMask(BitSet kMask, int xDim, int yDim, boolean XOR, int polarity) {
+        int iSliceSize = xDim * yDim;
+        if (m_iPlane == VOIBase.ZPLANE) {
+            setMask(kMask, m_iW * iSliceSize, 1, xDim, XOR, polarity);
+        } else if (m_iPlane == VOIBase.XPLANE) {
+            setMask(kMask, m_iW, xDim, iSliceSize, XOR, polarity);
+        } else {
+            setMask(kMask, m_iW * xDim, 1, iSliceSize, XOR, polarity);
+        }
+    }
+
+    /**
+     * Writes the contained pixels into a single slice mask, dropping the z-coordinate of each pixel.
+     *
+     * @param  kMask     mask written into
+     * @param  xDim      x-dimension of the mask
+     * @param  XOR       when true an ADDITIVE contour flips the pixels instead of setting them
+     * @param  polarity  VOI.ADDITIVE sets the pixels, VOI.SUBTRACTIVE clears them
+     */
+    public void setMaskSlice(BitSet kMask, int xDim, boolean XOR, int polarity) {
+        if (m_iPlane == VOIBase.ZPLANE) {
+            setMask(kMask, 0, 1, xDim, XOR, polarity);
+        } else if (m_iPlane == VOIBase.XPLANE) {
+            setMask(kMask, m_iW, xDim, 0, XOR, polarity);
+        } else {
+            setMask(kMask, m_iW * xDim, 1, 0, XOR, polarity);
+        }
+    }
+
+    /**
+     * Writes the runs into a mask, pixel (u,v) going to index iOffset + u * iUStride + v * iVStride.
+     *
+     * @param  kMask     mask written into
+     * @param  iOffset   index of pixel (0,0)
+     * @param  iUStride  index step between columns
+     * @param  iVStride  index step between rows
+     * @param  XOR       when true an ADDITIVE contour flips the pixels instead of setting them
+     * @param  polarity  VOI.ADDITIVE sets the pixels, VOI.SUBTRACTIVE clears them
+     */
+    public void setMask(BitSet kMask, int iOffset, int iUStride, int iVStride, boolean XOR, int polarity) {
+        if ((polarity != VOI.ADDITIVE) && (polarity != VOI.SUBTRACTIVE)) {
+            return;
+        }
+        for (int r = 0; r < 3 * m_iNumRuns; r += 3) {
+            int iRow = iOffset + m_aiRuns[r] * iVStride;
+            if (iUStride == 1) {
+                int iFrom = iRow + m_aiRuns[r + 1];
+                int iTo = iRow + m_aiRuns[r + 2];
+                if (polarity == VOI.SUBTRACTIVE) {
+                    kMask.clear(iFrom, iTo);
+                } else if (XOR) {
+                    kMask.flip(iFrom, iTo);
+                } else {
+                    kMask.set(iFrom, iTo);
+                }
+            } else {
+                for (int u = m_aiRuns[r + 1]; u < m_aiRuns[r + 2]; u++) {
+                    int index = iRow + u * iUStride;
+                    if (polarity == VOI.SUBTRACTIVE) {
+                        kMask.clear(index);
+                    } else if (XOR) {
+                        kMask.flip(index);
+                    } else {
+                        kMask.set(index);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a run.
+     *
+     * @param  iV      row
+     * @param  iStart  first column
+     * @param  iEnd    last column + 1
+     */
+    private void addRun(int iV, int iStart, int iEnd) {
+        if (3 * m_iNumRuns == m_aiRuns.length) {
+            m_aiRuns = Arrays.copyOf(m_aiRuns, 2 * m_aiRuns.length);
+        }
+        m_aiRuns[3 * m_iNumRuns] = iV;
+        m_aiRuns[3 * m_iNumRuns + 1] = iStart;
+        m_aiRuns[3 * m_iNumRuns + 2] = iEnd;
+        m_iNumRuns++;
+    }
+
+    /**
+     * Returns the first row v in [iVMin, iVMax + 1] with fLower <= v + 0.49.
+     *
+     * @param   fLower  lower end of the edge
+     * @param   iVMin   first row
+     * @param   iVMax   last row
+     *
+     * @return  the first row the edge can cross
+     */
+    private static int firstRow(float fLower, int iVMin, int iVMax) {
+        int iV = (int) Math.max(iVMin, Math.min(iVMax + 1, Math.ceil(fLower - 0.49)));
+        while ((iV > iVMin) && (fLower <= ((iV - 1) + 0.49f))) {
+            iV--;
+        }
+        while ((iV <= iVMax) && (fLower > (iV + 0.49f))) {
+            iV++;
+        }
+        return iV;
+    }
+
+    /**
+     * Returns the last row v in [iVMin - 1, iVMax] with v + 0.49 < fUpper.
+     *
+     * @param   fUpper  upper end of the edge
+     * @param   iVMin   first row
+     * @param   iVMax   last row
+     *
+     * @return  the last row the edge can cross
+     */
+    private static int lastRow(float fUpper, int iVMin, int iVMax) {
+        int iV = (int) Math.max(iVMin - 1, Math.min(iVMax, Math.floor(fUpper - 0.49)));
+        while ((iV < iVMax) && (((iV + 1) + 0.49f) < fUpper)) {
+            iV++;
+        }
+        while ((iV >= iVMin) && ((iV + 0.49f) >= fUpper)) {
+            iV--;
+        }
+        return iV;
+    }
+
+    /**
+     * Returns the first column u in [iUMin, iUMax + 1] at which the edge toggles the row, i.e. the first u for which
+     * VOIBase.areaTwice(A, B, u + 0.49, fV) >= 0. The test only grows with u, so every column after it toggles too.
+     *
+     * @param   fAU    u-coordinate of the upper end of the edge
+     * @param   fAV    v-coordinate of the upper end of the edge
+     * @param   fBU    u-coordinate of the lower end of the edge
+     * @param   fBV    v-coordinate of the lower end of the edge
+     * @param   fV     row position
+     * @param   iUMin  first column
+     * @param   iUMax  last column
+     *
+     * @return  the first toggled column, iUMax + 1 when there is none
+     */
+    private static int firstColumn(float fAU, float fAV, float fBU, float fBV, float fV, int iUMin, int iUMax) {
+        double dU = ((fBU * ((double) fAV - fV)) - (fAU * ((double) fBV - fV))) / ((double) fAV - fBV) - 0.49;
+        int iU = (int) Math.max(iUMin, Math.min(iUMax + 1, Math.ceil(dU)));
+        while ((iU > iUMin) && (areaTwice(fAU, fAV, fBU, fBV, (iU - 1) + 0.49f, fV) >= 0)) {
+            iU--;
+        }
+        while ((iU <= iUMax) && (areaTwice(fAU, fAV, fBU, fBV, iU + 0.49f, fV) < 0)) {
+            iU++;
+        }
+        return iU;
+    }
+
+    /**
+     * Same float expression as VOIBase.areaTwice.
+     *
+     * @param   ptAx  x-coordinate of the first point
+     * @param   ptAy  y-coordinate of the first point
+     * @param   ptBx  x-coordinate of the second point
+     * @param   ptBy  y-coordinate of the second point
+     * @param   ptCx  x-coordinate of the third point
+     * @param   ptCy  y-coordinate of the third point
+     *
+     * @return  twice the signed area of the triangle
+     */
+    private static float areaTwice(float ptAx, float ptAy, float ptBx, float ptBy, float ptCx, float ptCy) {
+        return ((ptAx - ptCx) * (ptBy - ptCy)) - ((ptAy - ptCy) * (ptBx - ptCx));
+    }
+}
@@ -246,6 +246,12 @@ public class Preferences {
 
     public static final String PREF_FLIP_NIFTI_READ = "FlipNIFTIRead";
 
+    /** Constant that indicates uncompressed raw and NIFTI images are memory mapped from the file instead of read. */
+    public static final String PREF_MEMORY_MAPPED_READ = "MemoryMappedRead";
+
+    /** Constant that indicates DICOM headers are kept in an on-disk index so reopening a series skips parsing. */
+    public static final String PREF_DICOM_HEADER_INDEX = "DicomHeaderIndex";
+
     /** Constant that indicates the file temp directory. */
     public static final String PREF_FILE_TEMP_DIR = "fileTempDir";
 
@@ -783,6 +789,8 @@ public class Preferences {
         Preferences.defaultProps.setProperty(Preferences.PREF_FILENAME_FILTER, "8"); // 8 = ViewImageFileFilter.TECH
         Preferences.defaultProps.setProperty(Preferences.PREF_SAVE_XML_THUMBNAIL, "false");
         Preferences.defaultProps.setProperty(Preferences.PREF_FLIP_NIFTI_READ, "true");
+        Preferences.defaultProps.setProperty(Preferences.PREF_MEMORY_MAPPED_READ, "false");
+        Preferences.defaultProps.setProperty(Preferences.PREF_DICOM_HEADER_INDEX, "false");
         Preferences.defaultProps.setProperty(Preferences.PREF_SAVE_ALL_ON_SAVE, "false");
         Preferences.defaultProps.setProperty(Preferences.PREF_OVERWRITE_STATISTICS, "false");
         Preferences.defaultProps.setProperty(Preferences.PREF_LAST_X_IMAGES, "");
@@ -3903,10 +3903,11 @@ public abstract class ViewJFrameBase extends JFrame implements ViewImageUpdateIn
         absoluteZTextField.setText(String.valueOf((int) position.Z));
 
         final int[] dimExtents = imageA.getExtents();
-        final int index = (int) ( (position.Z * dimExtents[0] * dimExtents[1]) + (position.Y * dimExtents[0]) + position.X);
+        final long index = ( (long) position.Z * dimExtents[0] * dimExtents[1]) + ( (long) position.Y * dimExtents[0])
+                + (long) position.X;
 
         final int iBuffFactor = imageA.isColorImage() ? 4 : 1;
-        if ( (index * iBuffFactor > imageA.getSize()) || (index < 0)) {
+        if ( (index * iBuffFactor > imageA.getSizeLong()) || (index < 0)) {
             return;
         }
         absoluteLabelVals[3].setText("Intensity: " + imageA.getFloat(index * iBuffFactor));
@@ -3930,10 +3931,11 @@ public abstract class ViewJFrameBase extends JFrame implements ViewImageUpdateIn
         final String[] LPS_labelContents = ViewJComponentEditImage.getScannerPositionLabels(imageA, position);
         final String[] RAS_labelContents = ViewJComponentEditImage.getRASScannerPositionLabels(imageA, position);
         final int[] dimExtents = imageA.getExtents();
-        final int index = (int) ( (position.Z * dimExtents[0] * dimExtents[1]) + (position.Y * dimExtents[0]) + position.X);
+        final long index = ( (long) position.Z * dimExtents[0] * dimExtents[1]) + ( (long) position.Y * dimExtents[0])
+                + (long) position.X;
 
         final int iBuffFactor = imageA.isColorImage() ? 4 : 1;
-        if ( (index * iBuffFactor > imageA.getSize()) || (index < 0)) {
+        if ( (index * iBuffFactor > imageA.getSizeLong()) || (index < 0)) {
             return;
         }
         for (int i = 0; i < LPS_labelContents.length; i++) {
@@ -63,6 +63,8 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
 	
 	private static final int FAST_GLOBAL_K_MEANS = 2;
 	
+	private static final int MINI_BATCH_K_MEANS = 3;
+	
     private static final int EUCLIDEAN_SQUARED = 0;
 	
 	private static final int CITY_BLOCK = 1;
@@ -167,6 +169,8 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
     
     private JRadioButton fastGlobalAlgo;
     
+    private JRadioButton miniBatchAlgo;
+    
     private int algoSelection = K_MEANS;
     
     private ButtonGroup initGroup;
@@ -270,7 +274,8 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
 	         dispose();
 	     } else if (command.equals("Help")) {
 	            //MipavUtil.showHelp("");
-	     } else if ((source == kMeansAlgo) || (source == globalAlgo) || (source == fastGlobalAlgo)) {
+	     } else if ((source == kMeansAlgo) || (source == globalAlgo) || (source == fastGlobalAlgo) ||
+	    		 (source == miniBatchAlgo)) {
 	    	 if (kMeansAlgo.isSelected()) {
 	    		 initLabel.setEnabled(true);
 	    	     randomInit.setEnabled(true);
@@ -309,11 +314,12 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
 	    	     differentSpheresButton.setEnabled(false);
 	    	 } // else if (globalAlgo.isSlelected())
 	    	 else {
-	    		 initLabel.setEnabled(false);
-	    		 randomInit.setEnabled(false);
-	    	     BradleyInit.setEnabled(false);
-	    	     hierarchicalInit.setEnabled(false);
-	    	     maxMinInit.setEnabled(false);
+	    		 // Mini-batch k-means uses the k-means initializations
+	    		 initLabel.setEnabled(miniBatchAlgo.isSelected());
+	    		 randomInit.setEnabled(miniBatchAlgo.isSelected());
+	    	     BradleyInit.setEnabled(miniBatchAlgo.isSelected());
+	    	     hierarchicalInit.setEnabled(miniBatchAlgo.isSelected());
+	    	     maxMinInit.setEnabled(miniBatchAlgo.isSelected());
 	    	     if (cityBlock.isSelected()) {
 	    	    	 cityBlock.setSelected(false);
 	    	    	 euclideanSquared.setSelected(true);
@@ -345,6 +351,7 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
 	    	 if (euclideanSquared.isSelected()) {
 	    		 globalAlgo.setEnabled(true);
 	    		 fastGlobalAlgo.setEnabled(true);
+	    		 miniBatchAlgo.setEnabled(true);
 	    		 axesRatioLabel.setEnabled(false);
 	    		 axesRatioText.setEnabled(false);
 	    		 followBatchBox.setEnabled(true);
@@ -355,7 +362,12 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
 	    			 fastGlobalAlgo.setSelected(false);
 	    			 globalAlgo.setSelected(true);
 	    		 }
+	    		 if (miniBatchAlgo.isSelected()) {
+	    			 miniBatchAlgo.setSelected(false);
+	    			 kMeansAlgo.setSelected(true);
+	    		 }
 	    		 fastGlobalAlgo.setEnabled(false);
+	    		 miniBatchAlgo.setEnabled(false);
 	    		 axesRatioLabel.setEnabled(false);
 	    		 axesRatioText.setEnabled(false);
 	    		 followBatchBox.setEnabled(false);
@@ -370,8 +382,13 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
 	    			 fastGlobalAlgo.setSelected(false);
 	    			 kMeansAlgo.setSelected(true);
 	    		 }
+	    		 else if (miniBatchAlgo.isSelected()) {
+	    			 miniBatchAlgo.setSelected(false);
+	    			 kMeansAlgo.setSelected(true);
+	    		 }
 	    		 globalAlgo.setEnabled(false);
 	    		 fastGlobalAlgo.setEnabled(false);
+	    		 miniBatchAlgo.setEnabled(false);
 	    		 axesRatioLabel.setEnabled(false);
 	    		 axesRatioText.setEnabled(false);
 	    		 followBatchBox.setEnabled(false);
@@ -387,8 +404,13 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
 	    			 fastGlobalAlgo.setSelected(false);
 	    			 kMeansAlgo.setSelected(true);
 	    		 }
+	    		 else if (miniBatchAlgo.isSelected()) {
+	    			 miniBatchAlgo.setSelected(false);
+	    			 kMeansAlgo.setSelected(true);
+	    		 }
 	    		 globalAlgo.setEnabled(false);
 	    		 fastGlobalAlgo.setEnabled(false);
+	    		 miniBatchAlgo.setEnabled(false);
 	    		 axesRatioLabel.setEnabled(true);
 	    		 axesRatioText.setEnabled(true);
 	    		 followBatchBox.setEnabled(false);
@@ -403,8 +425,13 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
 	    			 fastGlobalAlgo.setSelected(false);
 	    			 kMeansAlgo.setSelected(true);
 	    		 }
+	    		 else if (miniBatchAlgo.isSelected()) {
+	    			 miniBatchAlgo.setSelected(false);
+	    			 kMeansAlgo.setSelected(true);
+	    		 }
 	    		 globalAlgo.setEnabled(false);
 	    		 fastGlobalAlgo.setEnabled(false);
+	    		 miniBatchAlgo.setEnabled(false);
 	    		 axesRatioLabel.setEnabled(false);
 	    		 axesRatioText.setEnabled(false);
 	    		 followBatchBox.setEnabled(false);
@@ -1151,6 +1178,16 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
         gbc.gridy++;
         mainPanel.add(fastGlobalAlgo, gbc);
         
+        miniBatchAlgo = new JRadioButton("Mini-batch k-means", false);
+        miniBatchAlgo.setFont(serif12);
+        miniBatchAlgo.setForeground(Color.black);
+        miniBatchAlgo.addActionListener(this);
+        algorithmGroup.add(miniBatchAlgo);
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.gridx = 0;
+        gbc.gridy++;
+        mainPanel.add(miniBatchAlgo, gbc);
+        
         JLabel distanceLabel = new JLabel("Choose an distance measure");
         distanceLabel.setForeground(Color.black);
         distanceLabel.setFont(serif12);
@@ -1600,6 +1637,9 @@ public class JDialogKMeans extends JDialogScriptableBase implements AlgorithmInt
     	else if (fastGlobalAlgo.isSelected()) {
     		algoSelection = FAST_GLOBAL_K_MEANS;
     	}
+    	else if (miniBatchAlgo.isSelected()) {
+    		algoSelection = MINI_BATCH_K_MEANS;
+    	}
     	
     	if (euclideanSquared.isSelected()) {
     		distanceMeasure = EUCLIDEAN_SQUARED;
@@ -194,6 +194,10 @@ public class JDialogMipavOptions extends JDialogBase implements KeyListener {
 
     private JCheckBox flipNIFTIReadCheckBox;
 
+    private JCheckBox memoryMappedReadCheckBox;
+
+    private JCheckBox dicomHeaderIndexCheckBox;
+
     private JTextField fileTempDirField;
 
     private JButton fileTempDirBrowseButton;
@@ -360,6 +364,8 @@ public class JDialogMipavOptions extends JDialogBase implements KeyListener {
         makeSaveXMLThumbnailOptions(gbc, gbl);
         makeFrameRateOptions(gbc, gbl);
         makeFlipNIFTIReadOptions(gbc, gbl);
+        makeMemoryMappedReadOptions(gbc, gbl);
+        makeDicomHeaderIndexOptions(gbc, gbl);
 
         fileMiscPanel.setLayout(gbl);
         fileMiscPanel.setBorder(buildTitledBorder("Misc"));
@@ -559,6 +565,8 @@ public class JDialogMipavOptions extends JDialogBase implements KeyListener {
             Preferences.setProperty(Preferences.PREF_SAVE_PROMPT_OVERWRITE, String.valueOf(savePromptOverwriteBox.isSelected()));
             Preferences.setProperty(Preferences.PREF_SAVE_XML_THUMBNAIL, String.valueOf(saveThumbnailCheckBox.isSelected()));
             Preferences.setProperty(Preferences.PREF_FLIP_NIFTI_READ, String.valueOf(flipNIFTIReadCheckBox.isSelected()));
+            Preferences.setProperty(Preferences.PREF_MEMORY_MAPPED_READ, String.valueOf(memoryMappedReadCheckBox.isSelected()));
+            Preferences.setProperty(Preferences.PREF_DICOM_HEADER_INDEX, String.valueOf(dicomHeaderIndexCheckBox.isSelected()));
             Preferences.setProperty(Preferences.PREF_FILENAME_FILTER, String.valueOf(fileFilter));
             if (fileTempDirField.getText().length() > 0) {
                 Preferences.setFileTempDir(fileTempDirField.getText());
@@ -2145,6 +2153,48 @@ public class JDialogMipavOptions extends JDialogBase implements KeyListener {
         flipNIFTIReadCheckBox.setSelected(Preferences.is(Preferences.PREF_FLIP_NIFTI_READ));
     }
 
+    /**
+     * Makes the option for memory mapping uncompressed raw and NIFTI images instead of reading them into memory.
+     * 
+     * @param gbc the constraints used in the dialog
+     * @param gbl the layout used in the dialog
+     */
+    protected void makeMemoryMappedReadOptions(final GridBagConstraints gbc, final GridBagLayout gbl) {
+        memoryMappedReadCheckBox = new JCheckBox("Memory map uncompressed raw and NIFTI files on read");
+        memoryMappedReadCheckBox.setFont(MipavUtil.font12);
+        memoryMappedReadCheckBox.setForeground(Color.black);
+        memoryMappedReadCheckBox.addActionListener(this);
+        gbc.insets = new Insets(0, 0, 0, 0);
+        gbc.gridwidth = GridBagConstraints.REMAINDER;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbl.setConstraints(memoryMappedReadCheckBox, gbc);
+        fileSavePanel.add(memoryMappedReadCheckBox);
+
+        // preset the choices.
+        memoryMappedReadCheckBox.setSelected(Preferences.is(Preferences.PREF_MEMORY_MAPPED_READ));
+    }
+
+    /**
+     * Makes the option for keeping DICOM headers in an index, so that opening a series again does not parse them.
+     * 
+     * @param gbc the constraints used in the dialog
+     * @param gbl the layout used in the dialog
+     */
+    protected void makeDicomHeaderIndexOptions(final GridBagConstraints gbc, final GridBagLayout gbl) {
+        dicomHeaderIndexCheckBox = new JCheckBox("Keep an index of DICOM headers to speed up reopening series");
+        dicomHeaderIndexCheckBox.setFont(MipavUtil.font12);
+        dicomHeaderIndexCheckBox.setForeground(Color.black);
+        dicomHeaderIndexCheckBox.addActionListener(this);
+        gbc.insets = new Insets(0, 0, 0, 0);
+        gbc.gridwidth = GridBagConstraints.REMAINDER;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbl.setConstraints(dicomHeaderIndexCheckBox, gbc);
+        fileSavePanel.add(dicomHeaderIndexCheckBox);
+
+        // preset the choices.
+        dicomHeaderIndexCheckBox.setSelected(Preferences.is(Preferences.PREF_DICOM_HEADER_INDEX));
+    }
+
     /**
      * makes the splash-screen option line in the otherPanel.
      * 
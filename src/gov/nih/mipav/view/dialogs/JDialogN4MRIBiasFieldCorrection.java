@@ -110,7 +110,7 @@ public class JDialogN4MRIBiasFieldCorrection extends JDialogScriptableBase
     private int resXUnit, resYUnit, resZUnit; // type of measurement unit
 
     /** DOCUMENT ME! */
-    private float shrink;
+    private float shrink = 1.0f;
 
     /** DOCUMENT ME! */
     private JTextField textDistance;
@@ -448,6 +448,7 @@ public class JDialogN4MRIBiasFieldCorrection extends JDialogScriptableBase
             // This is very important. Adding this object as a listener allows the algorithm to
             // notify this object when it has completed of failed. See algorithm performed event.
             // This is made possible by implementing AlgorithmedPerformed interface
+            N4Algo.setShrinkFactor(Math.max(1, (int) shrink));
             N4Algo.addListener(this);
 
             createProgressBar(image.getImageName(), N4Algo);
@@ -502,7 +503,9 @@ public class JDialogN4MRIBiasFieldCorrection extends JDialogScriptableBase
         setEndTol(scriptParameters.getParams().getDouble("end_tolerance"));
         setMaxIter(scriptParameters.getParams().getInt("max_iterations"));
         //setFieldDistance(scriptParameters.getParams().getFloat("field_distance_mm"));
-        //setShrink(scriptParameters.getParams().getFloat("subsampling_factor"));
+        if (scriptParameters.getParams().containsParameter("subsampling_factor")) {
+            setShrink(scriptParameters.getParams().getFloat("subsampling_factor"));
+        }
         setKernel(scriptParameters.getParams().getDouble("kernel_fwhm"));
         setNoise(scriptParameters.getParams().getDouble("wiener_noise_filter"));
         setFittingLevels(scriptParameters.getParams().getInt("fitting_levels"));
@@ -590,15 +593,15 @@ public class JDialogN4MRIBiasFieldCorrection extends JDialogScriptableBase
 
         textDistance = new JTextField(5);
         textDistance.setText(makeString(fieldDistance, 3));
-        textDistance.setFont(serif12);
+        textDistance.setFont(serif12);*/
 
-        labelShrink = new JLabel("Subsampling factor (1.0-32.0)");
+        labelShrink = new JLabel("Shrink factor (1-8)");
         labelShrink.setForeground(Color.black);
         labelShrink.setFont(serif12);
 
         textShrink = new JTextField(5);
-        textShrink.setText("4.0");
-        textShrink.setFont(serif12);*/
+        textShrink.setText("1");
+        textShrink.setFont(serif12);
 
         labelKernel = new JLabel("Kernel fwhm (0.05-0.50)");
         labelKernel.setForeground(Color.black);
@@ -679,17 +682,16 @@ public class JDialogN4MRIBiasFieldCorrection extends JDialogScriptableBase
         gbc.gridy = 3;
         gbc.weightx = 1;
         gbc.fill = GridBagConstraints.HORIZONTAL;
-        paramPanel.add(textDistance, gbc);
+        paramPanel.add(textDistance, gbc);*/
         gbc.gridx = 0;
-        gbc.gridy = 4;
+        gbc.gridy++;
         gbc.weightx = 0;
         gbc.fill = GridBagConstraints.NONE;
         paramPanel.add(labelShrink, gbc);
         gbc.gridx = 1;
-        gbc.gridy = 4;
         gbc.weightx = 1;
         gbc.fill = GridBagConstraints.HORIZONTAL;
-        paramPanel.add(textShrink, gbc);*/
+        paramPanel.add(textShrink, gbc);
         gbc.gridx = 0;
         gbc.gridy++;
         gbc.weightx = 0;
@@ -997,18 +999,18 @@ public class JDialogN4MRIBiasFieldCorrection extends JDialogScriptableBase
             textDistance.selectAll();
 
             return false;
-        }
+        }*/
 
         tmpStr = textShrink.getText();
 
-        if (testParameter(tmpStr, 1.0, 32.0)) {
+        if (testParameter(tmpStr, 1.0, 8.0)) {
             shrink = Float.valueOf(tmpStr).floatValue();
         } else {
             textShrink.requestFocus();
             textShrink.selectAll();
 
             return false;
-        }*/
+        }
 
         tmpStr = textKernel.getText();
 
@@ -1124,7 +1126,7 @@ public class JDialogN4MRIBiasFieldCorrection extends JDialogScriptableBase
             table.put(new ParameterDouble("end_tolerance", 0.001));
             table.put(new ParameterInt("max_iterations", 50));
             //table.put(new ParameterFloat("field_distance_mm", 47.5f));			//200?
-            //table.put(new ParameterFloat("subsampling_factor", 4.0f));							
+            table.put(new ParameterFloat("subsampling_factor", 1.0f));							
             table.put(new ParameterDouble("kernel_fwhm", 0.15));
             table.put(new ParameterDouble("wiener_noise_filter", 0.01));
             table.put(new ParameterInt("fitting_levels", 4));
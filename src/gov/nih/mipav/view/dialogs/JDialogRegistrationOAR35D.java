@@ -69,6 +69,9 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
 
     /** DOCUMENT ME! */
     private JTextField maxIterationsText, numMinText;
+
+    /** Fraction of the reference voxels sampled by the cost functions and the seed of the sample. */
+    private JTextField samplingText, seedText;
     
     /** When true, the full version of JTEM Powell search is used in the registration algorithm. */
     private boolean doJTEM;
@@ -141,6 +144,12 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
     /** DOCUMENT ME! */
     private int numMinima = numMinima_def;
 
+    /** Fraction of the reference voxels sampled by the cost functions; 1 samples every voxel. */
+    private float samplingFraction_def = 1.0f, samplingFraction = samplingFraction_def;
+
+    /** Seed of the random voxel sample of the cost functions. */
+    private long samplingSeed_def = 0, samplingSeed = samplingSeed_def;
+
     /** DOCUMENT ME! */
     private int refImageNum = 0;
 
@@ -247,6 +256,8 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
         } else if (command.equals("AdvancedSettings")) {
             maxIterations_def = maxIterations;
             numMinima_def = numMinima;
+            samplingFraction_def = samplingFraction;
+            samplingSeed_def = samplingSeed;
             advancedDialog = buildAdvancedDialog(maxIterations, numMinima);
         } else if (command.equals("Input")) {
 
@@ -311,11 +322,28 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
                 numMinima = numMinima_def;
             }
 
+            tmpStr = samplingText.getText();
+
+            if (testParameter(tmpStr, 0.001, 1)) {
+                samplingFraction = Float.valueOf(tmpStr).floatValue();
+            } else {
+                samplingFraction = samplingFraction_def;
+            }
+
+            try {
+                samplingSeed = Long.parseLong(seedText.getText().trim());
+            } catch (final NumberFormatException e) {
+                MipavUtil.displayError("The sampling seed must be an integer");
+                samplingSeed = samplingSeed_def;
+            }
+
             advancedDialog.setVisible(false);
             advancedDialog.dispose();
         } else if (command.equals("AdvancedCancel")) {
             maxIterations = maxIterations_def;
             numMinima = numMinima_def;
+            samplingFraction = samplingFraction_def;
+            samplingSeed = samplingSeed_def;
             advancedDialog.setVisible(false);
             advancedDialog.dispose();
         } else if (command.equals("AdvancedHelp")) {
@@ -721,6 +749,17 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
         this.numMinima = numMinima;
     }
 
+    /**
+     * Accessor to set the voxel sampling of the cost functions.
+     *
+     * @param  fraction  fraction of the reference voxels sampled; 1 samples every voxel
+     * @param  seed      seed of the random sample
+     */
+    public void setSampling(float fraction, long seed) {
+        samplingFraction = fraction;
+        samplingSeed = seed;
+    }
+
     /**
      * allows user to use an outside reference volume for registering.
      *
@@ -887,6 +926,7 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
 	        }
 	        
 	        reg35.setJTEM(doJTEM);
+	        reg35.setSampling(samplingFraction, samplingSeed);
 	
 	        // Start the thread as a low priority because we wish to still have user interface work fast.
 	        reg35.addListener(this);
@@ -945,6 +985,11 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
         setMaxIterations(scriptParameters.getParams().getInt("max_iterations"));
         setNumMinima(scriptParameters.getParams().getInt("num_minima"));
 
+        if (scriptParameters.getParams().containsParameter("cost_sampling_fraction")) {
+            setSampling(scriptParameters.getParams().getFloat("cost_sampling_fraction"),
+                    scriptParameters.getParams().getLong("cost_sampling_seed"));
+        }
+
         setRegisterTo(scriptParameters.getParams().getInt("registration_reference_type"));
         setRefImageNum(scriptParameters.getParams().getInt("reference_volume_num"));
         setGraphCheckBox(scriptParameters.getParams().getBoolean("do_graph_transform"));
@@ -979,6 +1024,8 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
         scriptParameters.getParams().put(ParameterFactory.newParameter("do_use_fast_mode", fastMode));
         scriptParameters.getParams().put(ParameterFactory.newParameter("max_iterations", maxIterations));
         scriptParameters.getParams().put(ParameterFactory.newParameter("num_minima", numMinima));
+        scriptParameters.getParams().put(ParameterFactory.newParameter("cost_sampling_fraction", samplingFraction));
+        scriptParameters.getParams().put(ParameterFactory.newParameter("cost_sampling_seed", samplingSeed));
 
         scriptParameters.getParams().put(ParameterFactory.newParameter("registration_reference_type", registerTo));
         scriptParameters.getParams().put(ParameterFactory.newParameter("reference_volume_num", refImageNum));
@@ -1031,6 +1078,31 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
         numMinText.addFocusListener(this);
         numMinPanel.add(numMinText, BorderLayout.CENTER);
 
+        JPanel samplingPanel = new JPanel();
+        samplingPanel.setLayout(new BorderLayout(1, 3));
+        samplingPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+
+        JLabel samplingLabel = new JLabel("Fraction of voxels sampled by the cost: ", JLabel.LEFT);
+        samplingPanel.add(samplingLabel, BorderLayout.WEST);
+        samplingPanel.setToolTipText("Below 1 the cost is evaluated on a fixed random sample of the reference voxels.");
+        samplingText = new JTextField(String.valueOf(samplingFraction), 5);
+        samplingText.addFocusListener(this);
+        samplingPanel.add(samplingText, BorderLayout.CENTER);
+
+        JLabel samplingInstruct = new JLabel("1 samples every voxel.", JLabel.RIGHT);
+        samplingPanel.add(samplingInstruct, BorderLayout.SOUTH);
+
+        JPanel seedPanel = new JPanel();
+        seedPanel.setLayout(new BorderLayout(1, 3));
+        seedPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+
+        JLabel seedLabel = new JLabel("Seed of the voxel sample: ", JLabel.LEFT);
+        seedPanel.add(seedLabel, BorderLayout.WEST);
+        seedPanel.setToolTipText("The same seed samples the same voxels.");
+        seedText = new JTextField(String.valueOf(samplingSeed), 5);
+        seedText.addFocusListener(this);
+        seedPanel.add(seedText, BorderLayout.CENTER);
+
         fastModeCheckbox = new JCheckBox("Skip multilevel search.  Assume images are close to alignment.");
         fastModeCheckbox.setFont(serif12);
         fastModeCheckbox.setForeground(Color.black);
@@ -1050,6 +1122,10 @@ public class JDialogRegistrationOAR35D extends JDialogScriptableBase implements
         settingsPanel.add(Box.createVerticalStrut(20));
         settingsPanel.add(numMinPanel);
         settingsPanel.add(Box.createVerticalStrut(15));
+        settingsPanel.add(samplingPanel);
+        settingsPanel.add(Box.createVerticalStrut(10));
+        settingsPanel.add(seedPanel);
+        settingsPanel.add(Box.createVerticalStrut(15));
         settingsPanel.add(fastModeCheckbox);
         settingsPanel.add(jtemCheckbox);
 
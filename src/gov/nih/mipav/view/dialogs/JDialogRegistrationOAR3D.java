@@ -63,6 +63,9 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
     /** DOCUMENT ME! */
     private JTextField maxIterationsText, numMinText;
 
+    /** Fraction of the reference voxels sampled by the cost functions and the seed of the sample. */
+    private JTextField samplingText, seedText;
+
     /** DOCUMENT ME! */
     private JButton buttonWeightInput;
 
@@ -179,6 +182,12 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
     /** DOCUMENT ME! */
     private int numMinima = numMinima_def;
 
+    /** Fraction of the reference voxels sampled by the cost functions; 1 samples every voxel. */
+    private float samplingFraction_def = 1.0f, samplingFraction = samplingFraction_def;
+
+    /** Seed of the random voxel sample of the cost functions. */
+    private long samplingSeed_def = 0, samplingSeed = samplingSeed_def;
+
     /** DOCUMENT ME! */
     private ModelImage refImage;
 
@@ -345,6 +354,8 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
         } else if (command.equals("AdvancedSettings")) {
             maxIterations_def = maxIterations;
             numMinima_def = numMinima;
+            samplingFraction_def = samplingFraction;
+            samplingSeed_def = samplingSeed;
             advancedDialog = buildAdvancedDialog(maxIterations, numMinima);
         } else if (command.equals("Ref")) {
 
@@ -455,11 +466,28 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
                 numMinima = numMinima_def;
             }
 
+            tmpStr = samplingText.getText();
+
+            if (JDialogBase.testParameter(tmpStr, 0.001, 1)) {
+                samplingFraction = Float.valueOf(tmpStr).floatValue();
+            } else {
+                samplingFraction = samplingFraction_def;
+            }
+
+            try {
+                samplingSeed = Long.parseLong(seedText.getText().trim());
+            } catch (final NumberFormatException e) {
+                MipavUtil.displayError("The sampling seed must be an integer");
+                samplingSeed = samplingSeed_def;
+            }
+
             advancedDialog.setVisible(false);
             advancedDialog.dispose();
         } else if (command.equals("AdvancedCancel")) {
             maxIterations = maxIterations_def;
             numMinima = numMinima_def;
+            samplingFraction = samplingFraction_def;
+            samplingSeed = samplingSeed_def;
             advancedDialog.setVisible(false);
             advancedDialog.dispose();
         } else if (command.equals("AdvancedHelp")) {
@@ -1044,6 +1072,17 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
         this.numMinima = numMinima;
     }
 
+    /**
+     * Accessor to set the voxel sampling of the cost functions.
+     * 
+     * @param fraction fraction of the reference voxels sampled; 1 samples every voxel
+     * @param seed seed of the random sample
+     */
+    public void setSampling(final float fraction, final long seed) {
+        samplingFraction = fraction;
+        samplingSeed = seed;
+    }
+
     /**
      * Accessor to set the whether or not to calculate the center of gravity (mass).
      * 
@@ -1467,6 +1506,7 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
 	            }
 	        }
 	
+	        reg3.setSampling(samplingFraction, samplingSeed);
 	        reg3.addListener(this);
 	
 	        createProgressBar(matchImage.getImageName(), reg3);
@@ -1580,6 +1620,11 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
 
         setAdvancedSettings(scriptParameters.getParams().getInt( "max_iterations"), 
         		scriptParameters.getParams().getInt("num_minima"));
+
+        if (scriptParameters.getParams().containsParameter("cost_sampling_fraction")) {
+            setSampling(scriptParameters.getParams().getFloat("cost_sampling_fraction"),
+                    scriptParameters.getParams().getLong("cost_sampling_seed"));
+        }
     }
 
     /**
@@ -1624,6 +1669,8 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
         scriptParameters.getParams().put(ParameterFactory.newParameter("matrix_directory", matrixDirectory));
         scriptParameters.getParams().put(ParameterFactory.newParameter("max_iterations", maxIterations));
         scriptParameters.getParams().put(ParameterFactory.newParameter("num_minima", numMinima));
+        scriptParameters.getParams().put(ParameterFactory.newParameter("cost_sampling_fraction", samplingFraction));
+        scriptParameters.getParams().put(ParameterFactory.newParameter("cost_sampling_seed", samplingSeed));
     }
 
     /**
@@ -1674,10 +1721,39 @@ public class JDialogRegistrationOAR3D extends JDialogScriptableBase implements A
         numMinText.addFocusListener(this);
         numMinPanel.add(numMinText, BorderLayout.CENTER);
 
+        final JPanel samplingPanel = new JPanel();
+        samplingPanel.setLayout(new BorderLayout(1, 3));
+        samplingPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+
+        final JLabel samplingLabel = new JLabel("Fraction of voxels sampled by the cost: ", SwingConstants.LEFT);
+        samplingPanel.add(samplingLabel, BorderLayout.WEST);
+        samplingPanel.setToolTipText("Below 1 the cost is evaluated on a fixed random sample of the reference voxels.");
+        samplingText = new JTextField(String.valueOf(samplingFraction), 5);
+        samplingText.addFocusListener(this);
+        samplingPanel.add(samplingText, BorderLayout.CENTER);
+
+        final JLabel samplingInstruct = new JLabel("1 samples every voxel.", SwingConstants.RIGHT);
+        samplingPanel.add(samplingInstruct, BorderLayout.SOUTH);
+
+        final JPanel seedPanel = new JPanel();
+        seedPanel.setLayout(new BorderLayout(1, 3));
+        seedPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+
+        final JLabel seedLabel = new JLabel("Seed of the voxel sample: ", SwingConstants.LEFT);
+        seedPanel.add(seedLabel, BorderLayout.WEST);
+        seedPanel.setToolTipText("The same seed samples the same voxels.");
+        seedText = new JTextField(String.valueOf(samplingSeed), 5);
+        seedText.addFocusListener(this);
+        seedPanel.add(seedText, BorderLayout.CENTER);
+
         settingsPanel.add(maxIterPanel);
         settingsPanel.add(Box.createVerticalStrut(20));
         settingsPanel.add(numMinPanel);
         settingsPanel.add(Box.createVerticalStrut(15));
+        settingsPanel.add(samplingPanel);
+        settingsPanel.add(Box.createVerticalStrut(10));
+        settingsPanel.add(seedPanel);
+        settingsPanel.add(Box.createVerticalStrut(15));
         settingsPanel.add(sampleCheckbox);
         settingsPanel.add(jtemCheckbox);
         settingsPanel.add(Box.createVerticalStrut(10));
@@ -1,16 +1,21 @@
 package gov.nih.mipav.view.renderer.WildMagic.Interface;
 
 import gov.nih.mipav.model.structures.TransMatrix;
+import gov.nih.mipav.util.ThreadUtil;
 import gov.nih.mipav.view.Preferences;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
 
+import WildMagic.LibFoundation.Mathematics.ColorRGBA;
 import WildMagic.LibFoundation.Mathematics.Vector3f;
 import WildMagic.LibFoundation.Meshes.TriangleKey;
+import WildMagic.LibGraphics.SceneGraph.Attributes;
 import WildMagic.LibGraphics.SceneGraph.IndexBuffer;
 import WildMagic.LibGraphics.SceneGraph.TriMesh;
 import WildMagic.LibGraphics.SceneGraph.VertexBuffer;
@@ -36,6 +41,24 @@ public class SurfaceExtractorCubes extends ExtractSurfaceCubes {
 	/** Relative voxel size. */
 	private float m_fXDelta, m_fYDelta, m_fZDelta;
 
+	/** Edges of each face, in the order XMin, XMax, YMin, YMax, ZMin, ZMax. */
+	private static final int[][] FACE_EDGES = {
+			{ EI_XMIN_YMIN, EI_XMIN_YMAX, EI_XMIN_ZMIN, EI_XMIN_ZMAX },
+			{ EI_XMAX_YMIN, EI_XMAX_YMAX, EI_XMAX_ZMIN, EI_XMAX_ZMAX },
+			{ EI_XMIN_YMIN, EI_XMAX_YMIN, EI_YMIN_ZMIN, EI_YMIN_ZMAX },
+			{ EI_XMIN_YMAX, EI_XMAX_YMAX, EI_YMAX_ZMIN, EI_YMAX_ZMAX },
+			{ EI_XMIN_ZMIN, EI_XMAX_ZMIN, EI_YMIN_ZMIN, EI_YMAX_ZMIN },
+			{ EI_XMIN_ZMAX, EI_XMAX_ZMAX, EI_YMIN_ZMAX, EI_YMAX_ZMAX } };
+
+	/** Edges whose x, y and z coordinates give the saddle point of each face. */
+	private static final int[][] FACE_SADDLE = {
+			{ EI_XMIN_ZMIN, EI_XMIN_ZMIN, EI_XMIN_YMIN },
+			{ EI_XMAX_ZMIN, EI_XMAX_ZMIN, EI_XMAX_YMIN },
+			{ EI_YMIN_ZMIN, EI_XMIN_YMIN, EI_XMIN_YMIN },
+			{ EI_YMAX_ZMIN, EI_XMIN_YMAX, EI_XMIN_YMAX },
+			{ EI_YMIN_ZMIN, EI_XMIN_ZMIN, EI_XMIN_ZMIN },
+			{ EI_YMIN_ZMAX, EI_XMIN_ZMAX, EI_XMIN_ZMAX } };
+
 	/**
 	 * Create a level surface extractor for a 3D image. The delta input values are important when the voxels are not
 	 * cubic. For example, a typical MRI might have z-slice spacing about 5 times that of the x and y spacing. In this
@@ -179,89 +202,93 @@ public class SurfaceExtractorCubes extends ExtractSurfaceCubes {
 		// image is the same as the selected level surface value.  Since
 		// the image contains integer values, then apply a small adjustment
 		// to the input level surface value in order to avoid this.
-		float[] coord = new float[3];
-		float[] tCoord = new float[3];
 		float fLevel = iLevel + 0.5f;
-		Vector<Vector3f> vertices = new Vector<Vector3f>();
-		Vector<TriangleKey> triangles = new Vector<TriangleKey>();
+		float[] afVertex;
+		int[] aiConnect;
 		if ( kTriTable == null )
 		{
-			super.ExtractContour(fLevel, vertices, triangles);
+			LevelSet kLevelSet = extractLevelSet(fLevel);
+			afVertex = kLevelSet.m_afVertex;
+			aiConnect = kLevelSet.m_aiConnect;
 		}
 		else
 		{
+			Vector<Vector3f> vertices = new Vector<Vector3f>();
+			Vector<TriangleKey> triangles = new Vector<TriangleKey>();
 			super.ExtractContour(fLevel, kTriTable, vertices, triangles);
-		}
 
-		Vector<Vector3f> newVertices = new Vector<Vector3f>();
-		Vector<TriangleKey> newTriangles = new Vector<TriangleKey>();
-		super.MakeUnique(vertices, triangles, newVertices, newTriangles);
-		Preferences.debug("\n\nVertex count reduced from " + vertices.size() + " to " + newVertices.size() + ".\n", Preferences.DEBUG_MINOR);
-		Preferences.debug("Triangle count reduced from " + triangles.size() + " to " + newTriangles.size() + ".\n\n", Preferences.DEBUG_MINOR);
+			Vector<Vector3f> newVertices = new Vector<Vector3f>();
+			Vector<TriangleKey> newTriangles = new Vector<TriangleKey>();
+			super.MakeUnique(vertices, triangles, newVertices, newTriangles);
+			Preferences.debug("\n\nVertex count reduced from " + vertices.size() + " to " + newVertices.size() + ".\n", Preferences.DEBUG_MINOR);
+			Preferences.debug("Triangle count reduced from " + triangles.size() + " to " + newTriangles.size() + ".\n\n", Preferences.DEBUG_MINOR);
 
-		// pack vertices and triangle connectivity into arrays
-		int iVQuantity = newVertices.size();
-		int iTQuantity = newTriangles.size();
+			// pack vertices and triangle connectivity into arrays
+			afVertex = new float[3 * newVertices.size()];
+			for ( int i = 0; i < newVertices.size(); i++ )
+			{
+				Vector3f kV = newVertices.elementAt(i);
+				afVertex[3 * i] = kV.X;
+				afVertex[3 * i + 1] = kV.Y;
+				afVertex[3 * i + 2] = kV.Z;
+			}
 
-		if ((iVQuantity == 0) || (iTQuantity == 0)) {
+			aiConnect = new int[3 * newTriangles.size()];
+			int iIndex = 0;
+
+			for ( int i = 0; i < newTriangles.size(); i++ )
+			{
+				TriangleKey kT = newTriangles.elementAt(i);
+				aiConnect[iIndex++] = kT.V[0];
+				aiConnect[iIndex++] = kT.V[1];
+				aiConnect[iIndex++] = kT.V[2];
+			}
+		}
+
+		if ((afVertex.length == 0) || (aiConnect.length == 0)) {
 			return null;
 		}
 
-		Vector3f[] akVertex = new Vector3f[iVQuantity];
-		for ( int i = 0; i < iVQuantity; i++ )
+		float[] coord = new float[3];
+		float[] tCoord = new float[3];
+		float xBox = (m_iXBound - 1) * m_fXDelta;
+		float yBox = (m_iYBound - 1) * m_fYDelta;
+		float zBox = (m_iZBound - 1) * m_fZDelta;
+		float maxBox = Math.max(xBox, Math.max(yBox, zBox));
+
+		for ( int i = 0; i < afVertex.length; i += 3 )
 		{
-			Vector3f kV = newVertices.elementAt(i);
 			if ( bTransform )
 			{
 				if (dicomMatrix != null) {
 
 					// Change the voxel coordinate into millimeters
-					coord[0] = kV.X * m_fXDelta;
-					coord[1] = kV.Y * m_fYDelta;
-					coord[2] = kV.Z * m_fZDelta;
+					coord[0] = afVertex[i] * m_fXDelta;
+					coord[1] = afVertex[i + 1] * m_fYDelta;
+					coord[2] = afVertex[i + 2] * m_fZDelta;
 
 					// Convert the point to axial millimeter DICOM space
 					dicomMatrix.transform(coord, tCoord);
 
 					// Add in the DICOM origin
-					tCoord[0] = tCoord[0] + m_afStartLocation[0];
-					tCoord[1] = tCoord[1] + m_afStartLocation[1];
-					tCoord[2] = tCoord[2] + m_afStartLocation[2];
-					akVertex[i] = new Vector3f(tCoord[0], tCoord[1], tCoord[2]);
+					afVertex[i] = tCoord[0] + m_afStartLocation[0];
+					afVertex[i + 1] = tCoord[1] + m_afStartLocation[1];
+					afVertex[i + 2] = tCoord[2] + m_afStartLocation[2];
 				} else {
-					kV.X = (kV.X * m_fXDelta * m_aiDirection[0]) + m_afStartLocation[0];
-					kV.Y = (kV.Y * m_fYDelta * m_aiDirection[1]) + m_afStartLocation[1];
-					kV.Z = (kV.Z * m_fZDelta * m_aiDirection[2]) + m_afStartLocation[2];
-					akVertex[i] = new Vector3f(kV);
+					afVertex[i] = (afVertex[i] * m_fXDelta * m_aiDirection[0]) + m_afStartLocation[0];
+					afVertex[i + 1] = (afVertex[i + 1] * m_fYDelta * m_aiDirection[1]) + m_afStartLocation[1];
+					afVertex[i + 2] = (afVertex[i + 2] * m_fZDelta * m_aiDirection[2]) + m_afStartLocation[2];
 				}
 			}
 			else
 			{
-
-				float xBox = (m_iXBound - 1) * m_fXDelta;
-				float yBox = (m_iYBound - 1) * m_fYDelta;
-				float zBox = (m_iZBound - 1) * m_fZDelta;
-				float maxBox = Math.max(xBox, Math.max(yBox, zBox));
-
-				kV.X = ((2.0f * (kV.X * m_fXDelta)) - xBox)/(2.0f*maxBox);
-				kV.Y = ((2.0f * (kV.Y * m_fYDelta)) - yBox)/(2.0f*maxBox);
-				kV.Z = ((2.0f * (kV.Z * m_fZDelta)) - zBox)/(2.0f*maxBox);
-
-				akVertex[i] = new Vector3f(kV);
+				afVertex[i] = ((2.0f * (afVertex[i] * m_fXDelta)) - xBox)/(2.0f*maxBox);
+				afVertex[i + 1] = ((2.0f * (afVertex[i + 1] * m_fYDelta)) - yBox)/(2.0f*maxBox);
+				afVertex[i + 2] = ((2.0f * (afVertex[i + 2] * m_fZDelta)) - zBox)/(2.0f*maxBox);
 			}
 		}
 
-		int[] aiConnect = new int[3 * iTQuantity];
-		int iIndex = 0;
-
-		for ( int i = 0; i < iTQuantity; i++ )
-		{
-			TriangleKey kT = newTriangles.elementAt(i);
-			aiConnect[iIndex++] = kT.V[0];
-			aiConnect[iIndex++] = kT.V[1];
-			aiConnect[iIndex++] = kT.V[2];
-		}
-		return new TriMesh(new VertexBuffer(akVertex), new IndexBuffer(aiConnect));
+		return new TriMesh(createVertexBuffer(afVertex), new IndexBuffer(aiConnect));
 	}
 
 
@@ -278,45 +305,16 @@ public class SurfaceExtractorCubes extends ExtractSurfaceCubes {
 		// the image contains integer values, then apply a small adjustment
 		// to the input level surface value in order to avoid this.
 		float fLevel = iLevel + 0.5f;
-		Vector<Vector3f> vertices = new Vector<Vector3f>();
-		Vector<TriangleKey> triangles = new Vector<TriangleKey>();
-		
-		super.ExtractContour(fLevel, vertices, triangles);
+		LevelSet kLevelSet = extractLevelSet(fLevel);
 
-		Vector<Vector3f> newVertices = new Vector<Vector3f>();
-		Vector<TriangleKey> newTriangles = new Vector<TriangleKey>();
-		super.MakeUnique(vertices, triangles, newVertices, newTriangles);
-		Preferences.debug("\n\nVertex count reduced from " + vertices.size() + " to " + newVertices.size() + ".\n", Preferences.DEBUG_MINOR);
-		Preferences.debug("Triangle count reduced from " + triangles.size() + " to " + newTriangles.size() + ".\n\n", Preferences.DEBUG_MINOR);
-
-		// pack vertices and triangle connectivity into arrays
-		int iVQuantity = newVertices.size();
-		int iTQuantity = newTriangles.size();
-
-		if ((iVQuantity == 0) || (iTQuantity == 0)) {
+		if ((kLevelSet.m_afVertex.length == 0) || (kLevelSet.m_aiConnect.length == 0)) {
 			return null;
 		}
 
-//		Vector3f[] akVertex = new Vector3f[iVQuantity];
-//		for ( int i = 0; i < iVQuantity; i++ )
-//		{
-//			Vector3f kV = newVertices.elementAt(i);
-//			akVertex[i] = new Vector3f(kV);
-//		}
-
-		int[] aiConnect = new int[3 * iTQuantity];
-		int iIndex = 0;
-
-		for ( int i = 0; i < iTQuantity; i++ )
-		{
-			TriangleKey kT = newTriangles.elementAt(i);
-			aiConnect[iIndex++] = kT.V[0];
-			aiConnect[iIndex++] = kT.V[1];
-			aiConnect[iIndex++] = kT.V[2];
-		}
-		return new TriMesh(new VertexBuffer(newVertices), new IndexBuffer(aiConnect));
+		return new TriMesh(createVertexBuffer(kLevelSet.m_afVertex), new IndexBuffer(kLevelSet.m_aiConnect));
 	}
 
+
 	/**
 	 * Construct a level surface from the 3D image managed by the extractor.
 	 * @param   iLevel       the desired level value, in [min(image),max(image)]
@@ -382,4 +380,654 @@ public class SurfaceExtractorCubes extends ExtractSurfaceCubes {
 	}
 	 */
 
+	/**
+	 * Creates a vertex buffer with the same attributes as the buffers built from vertex lists: positions, normals, one
+	 * set of 3D texture coordinates equal to the positions and one set of white colors.
+	 * @param   afVertex  the vertex positions, three floats per vertex
+	 * @return  the vertex buffer
+	 */
+	private static VertexBuffer createVertexBuffer(float[] afVertex) {
+		Attributes kAttributes = new Attributes();
+		kAttributes.SetPChannels(3);
+		kAttributes.SetNChannels(3);
+		kAttributes.SetTChannels(0, 3);
+		kAttributes.SetCChannels(0, 4);
+
+		int iVQuantity = afVertex.length / 3;
+		VertexBuffer kVBuffer = new VertexBuffer(kAttributes, iVQuantity);
+		for ( int i = 0; i < iVQuantity; i++ )
+		{
+			kVBuffer.SetPosition3(i, afVertex[3 * i], afVertex[3 * i + 1], afVertex[3 * i + 2]);
+			kVBuffer.SetColor4(0, i, ColorRGBA.WHITE);
+			kVBuffer.SetTCoord3(0, i, afVertex[3 * i], afVertex[3 * i + 1], afVertex[3 * i + 2]);
+		}
+		return kVBuffer;
+	}
+
+	/**
+	 * Extracts the level set in voxel coordinates. The cubes are processed in slabs of z-slices, one slab per thread,
+	 * and each slab shares its vertices through tables indexed by the edge or face of the image grid that the vertex
+	 * lies on, so no vertex is looked up by its position. Vertices and triangles are built in primitive arrays. The
+	 * slabs are then stitched together by matching the vertices on the plane that two neighboring slabs share, which
+	 * gives the same mesh, in the same order, as a single slab.
+	 * @param   fLevel  the level value
+	 * @return  the level set
+	 */
+	private LevelSet extractLevelSet(float fLevel) {
+		int iLayers = m_iZBound - 1;
+		if ((iLayers < 1) || (m_iXBound < 2) || (m_iYBound < 2)) {
+			return new LevelSet(new float[0], new int[0]);
+		}
+
+		int iThreads = Preferences.isMultiThreadingEnabled() ? ThreadUtil.getAvailableCores() : 1;
+		int iSlabs = Math.max(1, Math.min(iThreads, iLayers));
+		final SlabExtractor[] akSlab = new SlabExtractor[iSlabs];
+		for ( int i = 0; i < iSlabs; i++ )
+		{
+			akSlab[i] = new SlabExtractor(fLevel, (int)((long)iLayers * i / iSlabs),
+					(int)((long)iLayers * (i + 1) / iSlabs));
+		}
+
+		if ( iSlabs == 1 )
+		{
+			akSlab[0].run();
+		}
+		else
+		{
+			final CountDownLatch doneSignal = new CountDownLatch(iSlabs);
+			for ( int i = 0; i < iSlabs; i++ )
+			{
+				final SlabExtractor kSlab = akSlab[i];
+				ThreadUtil.mipavThreadPool.execute(new Runnable() {
+					public void run() {
+						try {
+							kSlab.run();
+						} finally {
+							doneSignal.countDown();
+						}
+					}
+				});
+			}
+			try {
+				doneSignal.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// Map the vertices of each slab to the mesh. The vertices on the first plane of a slab were already created by
+		// the slab below it; the rest are new and keep their order.
+		int[][] aaiMap = new int[iSlabs][];
+		int[] aiFirstNew = new int[iSlabs];
+		int iVQuantity = 0;
+		int iIQuantity = 0;
+		for ( int i = 0; i < iSlabs; i++ )
+		{
+			SlabExtractor kSlab = akSlab[i];
+			int[] aiMap = new int[kSlab.m_iVQuantity];
+			Arrays.fill(aiMap, -1);
+			if ( i > 0 )
+			{
+				SlabExtractor kBelow = akSlab[i - 1];
+				stitch(kSlab.m_aiXEdgeFirst, kBelow.m_aiXEdgeMax, aaiMap[i - 1], aiMap);
+				stitch(kSlab.m_aiYEdgeFirst, kBelow.m_aiYEdgeMax, aaiMap[i - 1], aiMap);
+				stitch(kSlab.m_aiZFaceFirst, kBelow.m_aiZFaceMax, aaiMap[i - 1], aiMap);
+			}
+			aiFirstNew[i] = iVQuantity;
+			for ( int j = 0; j < aiMap.length; j++ )
+			{
+				if ( aiMap[j] < 0 )
+				{
+					aiMap[j] = iVQuantity++;
+				}
+			}
+			aaiMap[i] = aiMap;
+			iIQuantity += kSlab.m_iIQuantity;
+		}
+
+		float[] afVertex = new float[3 * iVQuantity];
+		int[] aiConnect = new int[iIQuantity];
+		int iIndex = 0;
+		for ( int i = 0; i < iSlabs; i++ )
+		{
+			SlabExtractor kSlab = akSlab[i];
+			int[] aiMap = aaiMap[i];
+			for ( int j = 0; j < kSlab.m_iVQuantity; j++ )
+			{
+				if ( aiMap[j] >= aiFirstNew[i] )
+				{
+					System.arraycopy(kSlab.m_afVertex, 3 * j, afVertex, 3 * aiMap[j], 3);
+				}
+			}
+			for ( int j = 0; j < kSlab.m_iIQuantity; j++ )
+			{
+				aiConnect[iIndex++] = aiMap[kSlab.m_aiConnect[j]];
+			}
+			akSlab[i] = null;
+		}
+		Preferences.debug("\n\nExtracted " + iVQuantity + " vertices and " + (iIQuantity / 3) + " triangles in " + iSlabs
+				+ " slabs.\n\n", Preferences.DEBUG_MINOR);
+
+		return new LevelSet(afVertex, aiConnect);
+	}
+
+	/**
+	 * Maps the vertices on the first plane of a slab to the same vertices of the slab below it.
+	 * @param  aiFirst  the vertex table of the first plane of the slab
+	 * @param  aiBelow  the vertex table of the last plane of the slab below
+	 * @param  aiBelowMap  the mesh indices of the vertices of the slab below
+	 * @param  aiMap  receives the mesh indices of the shared vertices of the slab
+	 */
+	private static void stitch(int[] aiFirst, int[] aiBelow, int[] aiBelowMap, int[] aiMap) {
+		for ( int i = 0; i < aiFirst.length; i++ )
+		{
+			if ( (aiFirst[i] >= 0) && (aiBelow[i] >= 0) )
+			{
+				aiMap[aiFirst[i]] = aiBelowMap[aiBelow[i]];
+			}
+		}
+	}
+
+	/**
+	 * The vertices and triangles of an extracted level set.
+	 */
+	private static class LevelSet {
+
+		/** Vertex positions, three floats per vertex. */
+		private final float[] m_afVertex;
+
+		/** Triangle vertex indices, three per triangle. */
+		private final int[] m_aiConnect;
+
+		/**
+		 * @param  afVertex   vertex positions
+		 * @param  aiConnect  triangle vertex indices
+		 */
+		LevelSet(float[] afVertex, int[] aiConnect) {
+			m_afVertex = afVertex;
+			m_aiConnect = aiConnect;
+		}
+	}
+
+	/**
+	 * Extracts the triangles of the cubes of a slab of z-slices. Each cube is decomposed as in ExtractSurfaceCubes: the
+	 * level set crosses the cube edges at the linearly interpolated points, each cube face connects its edge points in
+	 * pairs, using the bilinear saddle to resolve faces with four points, and the closed polygons are triangulated by
+	 * removing ears, oriented by the image gradient. Vertices are shared through tables indexed by grid position: the
+	 * x and y edges and the z faces of the two planes of the current z-slice, and the z edges and the x and y faces
+	 * between them.
+	 */
+	private class SlabExtractor implements Runnable {
+
+		/** The level value. */
+		private final float m_fLevel;
+
+		/** First z-slice of cubes. */
+		private final int m_iZMin;
+
+		/** z-slice of cubes after the last one. */
+		private final int m_iZMax;
+
+		/** Vertices on the x edges, y edges and z faces of the lower plane of the current z-slice. */
+		private int[] m_aiXEdgeMin, m_aiYEdgeMin, m_aiZFaceMin;
+
+		/** Vertices on the x edges, y edges and z faces of the upper plane of the current z-slice. */
+		private int[] m_aiXEdgeMax, m_aiYEdgeMax, m_aiZFaceMax;
+
+		/** Vertices on the first plane of the slab, kept for stitching. */
+		private int[] m_aiXEdgeFirst, m_aiYEdgeFirst, m_aiZFaceFirst;
+
+		/** Vertices on the z edges, x faces and y faces of the current z-slice. */
+		private final int[] m_aiZEdge, m_aiXFace, m_aiYFace;
+
+		/** Vertex positions of the slab, three floats per vertex. */
+		private float[] m_afVertex = new float[3 * 1024];
+
+		/** Number of vertices of the slab. */
+		private int m_iVQuantity = 0;
+
+		/** Triangle vertex indices of the slab. */
+		private int[] m_aiConnect = new int[3 * 2048];
+
+		/** Number of triangle vertex indices of the slab. */
+		private int m_iIQuantity = 0;
+
+		/** Points of the current cube, indexed by EI_* and FI_*. */
+		private final float[] m_afX = new float[18], m_afY = new float[18], m_afZ = new float[18];
+
+		/** Point graph of the current cube. */
+		private final boolean[] m_abValid = new boolean[18];
+
+		/** Number of neighbors of each point of the current cube. */
+		private final int[] m_aiAdjQuantity = new int[18];
+
+		/** Neighbors of each point of the current cube, four per point. */
+		private final int[] m_aiAdj = new int[72];
+
+		/**
+		 * @param  fLevel  the level value
+		 * @param  iZMin   first z-slice of cubes
+		 * @param  iZMax   z-slice of cubes after the last one
+		 */
+		SlabExtractor(float fLevel, int iZMin, int iZMax) {
+			m_fLevel = fLevel;
+			m_iZMin = iZMin;
+			m_iZMax = iZMax;
+			m_aiZEdge = new int[m_iXYBound];
+			m_aiXFace = new int[m_iXYBound];
+			m_aiYFace = new int[m_iXYBound];
+		}
+
+		/**
+		 * Extracts the triangles of all the cubes of the slab.
+		 */
+		public void run() {
+			m_aiXEdgeFirst = newTable();
+			m_aiYEdgeFirst = newTable();
+			m_aiZFaceFirst = newTable();
+			m_aiXEdgeMin = m_aiXEdgeFirst;
+			m_aiYEdgeMin = m_aiYEdgeFirst;
+			m_aiZFaceMin = m_aiZFaceFirst;
+			m_aiXEdgeMax = newTable();
+			m_aiYEdgeMax = newTable();
+			m_aiZFaceMax = newTable();
+
+			for ( int iZ = m_iZMin; iZ < m_iZMax; iZ++ )
+			{
+				if ( iZ > m_iZMin )
+				{
+					// the upper plane becomes the lower one; the tables of the first plane are kept
+					int[] aiXEdge = (m_aiXEdgeMin == m_aiXEdgeFirst) ? newTable() : reset(m_aiXEdgeMin);
+					int[] aiYEdge = (m_aiYEdgeMin == m_aiYEdgeFirst) ? newTable() : reset(m_aiYEdgeMin);
+					int[] aiZFace = (m_aiZFaceMin == m_aiZFaceFirst) ? newTable() : reset(m_aiZFaceMin);
+					m_aiXEdgeMin = m_aiXEdgeMax;
+					m_aiYEdgeMin = m_aiYEdgeMax;
+					m_aiZFaceMin = m_aiZFaceMax;
+					m_aiXEdgeMax = aiXEdge;
+					m_aiYEdgeMax = aiYEdge;
+					m_aiZFaceMax = aiZFace;
+				}
+				reset(m_aiZEdge);
+				reset(m_aiXFace);
+				reset(m_aiYFace);
+
+				for ( int iY = 0; iY < m_iYBound - 1; iY++ )
+				{
+					for ( int iX = 0; iX < m_iXBound - 1; iX++ )
+					{
+						extractCube(iX, iY, iZ);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return  a vertex table for a plane, with no vertices
+		 */
+		private int[] newTable() {
+			return reset(new int[m_iXYBound]);
+		}
+
+		/**
+		 * Removes all the vertices from a table.
+		 * @param   aiTable  the table
+		 * @return  the table
+		 */
+		private int[] reset(int[] aiTable) {
+			Arrays.fill(aiTable, -1);
+			return aiTable;
+		}
+
+		/**
+		 * Extracts the triangles of a cube.
+		 * @param  iX  x of the lower corner of the cube
+		 * @param  iY  y of the lower corner of the cube
+		 * @param  iZ  z of the lower corner of the cube
+		 */
+		private void extractCube(int iX, int iY, int iZ) {
+			int[] aiData = m_aiData;
+			int i000 = iX + m_iXBound * (iY + m_iYBound * iZ);
+			int i100 = i000 + 1;
+			int i010 = i000 + m_iXBound;
+			int i110 = i010 + 1;
+			int i001 = i000 + m_iXYBound;
+			int i101 = i001 + 1;
+			int i011 = i001 + m_iXBound;
+			int i111 = i011 + 1;
+
+			float fF000 = aiData[i000], fF100 = aiData[i100], fF010 = aiData[i010], fF110 = aiData[i110];
+			float fF001 = aiData[i001], fF101 = aiData[i101], fF011 = aiData[i011], fF111 = aiData[i111];
+			float fD000 = m_fLevel - fF000, fD100 = m_fLevel - fF100, fD010 = m_fLevel - fF010;
+			float fD110 = m_fLevel - fF110, fD001 = m_fLevel - fF001, fD101 = m_fLevel - fF101;
+			float fD011 = m_fLevel - fF011, fD111 = m_fLevel - fF111;
+
+			if ( ((fD000 > 0) && (fD100 > 0) && (fD010 > 0) && (fD110 > 0) && (fD001 > 0) && (fD101 > 0)
+					&& (fD011 > 0) && (fD111 > 0))
+					|| ((fD000 < 0) && (fD100 < 0) && (fD010 < 0) && (fD110 < 0) && (fD001 < 0) && (fD101 < 0)
+							&& (fD011 < 0) && (fD111 < 0)) )
+			{
+				return;
+			}
+
+			for ( int i = 0; i < 18; i++ )
+			{
+				m_abValid[i] = false;
+				m_aiAdjQuantity[i] = 0;
+			}
+
+			float fX0 = iX, fY0 = iY, fZ0 = iZ;
+			float fX1 = fX0 + 1.0f, fY1 = fY0 + 1.0f, fZ1 = fZ0 + 1.0f;
+			int iType = 0;
+			iType |= setEdge(EI_XMIN_YMIN, fD000, fD001, fF000, fF001, fX0, fY0, fZ0, 2);
+			iType |= setEdge(EI_XMIN_YMAX, fD010, fD011, fF010, fF011, fX0, fY1, fZ0, 2);
+			iType |= setEdge(EI_XMAX_YMIN, fD100, fD101, fF100, fF101, fX1, fY0, fZ0, 2);
+			iType |= setEdge(EI_XMAX_YMAX, fD110, fD111, fF110, fF111, fX1, fY1, fZ0, 2);
+			iType |= setEdge(EI_XMIN_ZMIN, fD000, fD010, fF000, fF010, fX0, fY0, fZ0, 1);
+			iType |= setEdge(EI_XMIN_ZMAX, fD001, fD011, fF001, fF011, fX0, fY0, fZ1, 1);
+			iType |= setEdge(EI_XMAX_ZMIN, fD100, fD110, fF100, fF110, fX1, fY0, fZ0, 1);
+			iType |= setEdge(EI_XMAX_ZMAX, fD101, fD111, fF101, fF111, fX1, fY0, fZ1, 1);
+			iType |= setEdge(EI_YMIN_ZMIN, fD000, fD100, fF000, fF100, fX0, fY0, fZ0, 0);
+			iType |= setEdge(EI_YMIN_ZMAX, fD001, fD101, fF001, fF101, fX0, fY0, fZ1, 0);
+			iType |= setEdge(EI_YMAX_ZMIN, fD010, fD110, fF010, fF110, fX0, fY1, fZ0, 0);
+			iType |= setEdge(EI_YMAX_ZMAX, fD011, fD111, fF011, fF111, fX0, fY1, fZ1, 0);
+			if ( iType == 0 )
+			{
+				return;
+			}
+
+			setFace(0, iType, i000, i010, i011, i001);
+			setFace(1, iType, i100, i110, i111, i101);
+			setFace(2, iType, i000, i100, i101, i001);
+			setFace(3, iType, i010, i110, i111, i011);
+			setFace(4, iType, i000, i100, i110, i010);
+			setFace(5, iType, i001, i101, i111, i011);
+
+			removeTriangles(iX + m_iXBound * iY);
+		}
+
+		/**
+		 * Adds the point where the level set crosses a cube edge, if it does.
+		 * @param   iEdge  the edge, EI_*
+		 * @param   fD0    level minus the value at the lower end of the edge
+		 * @param   fD1    level minus the value at the upper end of the edge
+		 * @param   fF0    value at the lower end of the edge
+		 * @param   fF1    value at the upper end of the edge
+		 * @param   fX     x of the lower end of the edge
+		 * @param   fY     y of the lower end of the edge
+		 * @param   fZ     z of the lower end of the edge
+		 * @param   iAxis  direction of the edge, 0, 1 or 2 for x, y or z
+		 * @return  the bit of the edge when the level set crosses it, 0 otherwise
+		 */
+		private int setEdge(int iEdge, float fD0, float fD1, float fF0, float fF1, float fX, float fY, float fZ,
+				int iAxis) {
+			if ( fD0 * fD1 >= 0 )
+			{
+				return 0;
+			}
+			float fT = fD0 / (fF1 - fF0);
+			m_afX[iEdge] = (iAxis == 0) ? (fX + fT) : fX;
+			m_afY[iEdge] = (iAxis == 1) ? (fY + fT) : fY;
+			m_afZ[iEdge] = (iAxis == 2) ? (fZ + fT) : fZ;
+			m_abValid[iEdge] = true;
+			return 1 << iEdge;
+		}
+
+		/**
+		 * Connects the edge points of a cube face. A face with four points is a saddle of the bilinear interpolation;
+		 * the sign of the determinant of its corner values picks the pairs, and a zero determinant connects all four
+		 * points to a point in the face.
+		 * @param  iFace  the face, 0 to 5 for XMin, XMax, YMin, YMax, ZMin, ZMax
+		 * @param  iType  the bits of the edges that the level set crosses
+		 * @param  i00    data index of the first face corner
+		 * @param  i10    data index of the second face corner
+		 * @param  i11    data index of the third face corner
+		 * @param  i01    data index of the fourth face corner
+		 */
+		private void setFace(int iFace, int iType, int i00, int i10, int i11, int i01) {
+			int[] aiEdge = FACE_EDGES[iFace];
+			int iFaceType = 0;
+			for ( int i = 0; i < 4; i++ )
+			{
+				if ( (iType & (1 << aiEdge[i])) != 0 )
+				{
+					iFaceType |= (1 << i);
+				}
+			}
+
+			switch ( iFaceType )
+			{
+			case 0:
+				break;
+			case 3:
+				connect(aiEdge[0], aiEdge[1]);
+				break;
+			case 5:
+				connect(aiEdge[0], aiEdge[2]);
+				break;
+			case 6:
+				connect(aiEdge[1], aiEdge[2]);
+				break;
+			case 9:
+				connect(aiEdge[0], aiEdge[3]);
+				break;
+			case 10:
+				connect(aiEdge[1], aiEdge[3]);
+				break;
+			case 12:
+				connect(aiEdge[2], aiEdge[3]);
+				break;
+			case 15:
+				int iDet = m_aiData[i00] * m_aiData[i11] - m_aiData[i01] * m_aiData[i10];
+				if ( iDet > 0 )
+				{
+					connect(aiEdge[0], aiEdge[2]);
+					connect(aiEdge[1], aiEdge[3]);
+				}
+				else if ( iDet < 0 )
+				{
+					connect(aiEdge[0], aiEdge[3]);
+					connect(aiEdge[1], aiEdge[2]);
+				}
+				else
+				{
+					int iPoint = FI_XMIN + iFace;
+					int[] aiSaddle = FACE_SADDLE[iFace];
+					m_afX[iPoint] = m_afX[aiSaddle[0]];
+					m_afY[iPoint] = m_afY[aiSaddle[1]];
+					m_afZ[iPoint] = m_afZ[aiSaddle[2]];
+					m_abValid[iPoint] = true;
+					for ( int i = 0; i < 4; i++ )
+					{
+						connect(aiEdge[i], iPoint);
+					}
+				}
+				break;
+			default:
+				Preferences.debug("Unexpected condition\n", Preferences.DEBUG_MINOR);
+			}
+		}
+
+		/**
+		 * Connects two points of the current cube.
+		 * @param  i0  first point
+		 * @param  i1  second point
+		 */
+		private void connect(int i0, int i1) {
+			m_aiAdj[4 * i0 + m_aiAdjQuantity[i0]++] = i1;
+			m_aiAdj[4 * i1 + m_aiAdjQuantity[i1]++] = i0;
+		}
+
+		/**
+		 * Triangulates the polygons of the current cube by repeatedly removing a point with two neighbors.
+		 * @param  iXY  plane index of the lower corner of the cube
+		 */
+		private void removeTriangles(int iXY) {
+			while ( true )
+			{
+				int iEar = 0;
+				while ( (iEar < 18) && !(m_abValid[iEar] && (m_aiAdjQuantity[iEar] == 2)) )
+				{
+					iEar++;
+				}
+				if ( iEar == 18 )
+				{
+					return;
+				}
+
+				int i0 = iEar, i1 = m_aiAdj[4 * iEar], i2 = m_aiAdj[4 * iEar + 1];
+				removePoint(iEar);
+
+				int iV0 = getVertex(i0, iXY);
+				int iV1 = getVertex(i1, iXY);
+				int iV2 = getVertex(i2, iXY);
+				if ( m_iIQuantity + 3 > m_aiConnect.length )
+				{
+					int[] aiConnect = new int[2 * m_aiConnect.length];
+					System.arraycopy(m_aiConnect, 0, aiConnect, 0, m_iIQuantity);
+					m_aiConnect = aiConnect;
+				}
+				m_aiConnect[m_iIQuantity++] = iV0;
+				if ( isBackFacing(i0, i1, i2) )
+				{
+					m_aiConnect[m_iIQuantity++] = iV1;
+					m_aiConnect[m_iIQuantity++] = iV2;
+				}
+				else
+				{
+					m_aiConnect[m_iIQuantity++] = iV2;
+					m_aiConnect[m_iIQuantity++] = iV1;
+				}
+			}
+		}
+
+		/**
+		 * Removes an ear from the point graph of the current cube and joins its two neighbors.
+		 * @param  i  the point
+		 */
+		private void removePoint(int i) {
+			int iA0 = m_aiAdj[4 * i], iA1 = m_aiAdj[4 * i + 1];
+			for ( int j = 0; j < m_aiAdjQuantity[iA0]; j++ )
+			{
+				if ( m_aiAdj[4 * iA0 + j] == i )
+				{
+					m_aiAdj[4 * iA0 + j] = iA1;
+					break;
+				}
+			}
+			for ( int j = 0; j < m_aiAdjQuantity[iA1]; j++ )
+			{
+				if ( m_aiAdj[4 * iA1 + j] == i )
+				{
+					m_aiAdj[4 * iA1 + j] = iA0;
+					break;
+				}
+			}
+			m_abValid[i] = false;
+			if ( (m_aiAdjQuantity[iA0] == 2) && (m_aiAdj[4 * iA0] == m_aiAdj[4 * iA0 + 1]) )
+			{
+				m_abValid[iA0] = false;
+			}
+			if ( (m_aiAdjQuantity[iA1] == 2) && (m_aiAdj[4 * iA1] == m_aiAdj[4 * iA1 + 1]) )
+			{
+				m_abValid[iA1] = false;
+			}
+		}
+
+		/**
+		 * Tests whether a triangle of the current cube faces against the image gradient at its centroid, in which
+		 * case it keeps its order.
+		 * @param   i0  first point
+		 * @param   i1  second point
+		 * @param   i2  third point
+		 * @return  true if the normal of the triangle does not point along the gradient
+		 */
+		private boolean isBackFacing(int i0, int i1, int i2) {
+			float fE0X = m_afX[i1] - m_afX[i0], fE0Y = m_afY[i1] - m_afY[i0], fE0Z = m_afZ[i1] - m_afZ[i0];
+			float fE1X = m_afX[i2] - m_afX[i0], fE1Y = m_afY[i2] - m_afY[i0], fE1Z = m_afZ[i2] - m_afZ[i0];
+			float fNX = fE0Y * fE1Z - fE0Z * fE1Y;
+			float fNY = fE0Z * fE1X - fE0X * fE1Z;
+			float fNZ = fE0X * fE1Y - fE0Y * fE1X;
+
+			float fCX = (m_afX[i0] + m_afX[i1] + m_afX[i2]) * 0.33333334f;
+			float fCY = (m_afY[i0] + m_afY[i1] + m_afY[i2]) * 0.33333334f;
+			float fCZ = (m_afZ[i0] + m_afZ[i1] + m_afZ[i2]) * 0.33333334f;
+
+			// trilinear gradient at the centroid, zero outside the image
+			int iX = (int)fCX, iY = (int)fCY, iZ = (int)fCZ;
+			if ( (iX < 0) || (iX >= m_iXBound - 1) || (iY < 0) || (iY >= m_iYBound - 1) || (iZ < 0)
+					|| (iZ >= m_iZBound - 1) )
+			{
+				return true;
+			}
+			int i000 = iX + m_iXBound * (iY + m_iYBound * iZ);
+			int i010 = i000 + m_iXBound;
+			int i001 = i000 + m_iXYBound;
+			int i011 = i001 + m_iXBound;
+			float fF000 = m_aiData[i000], fF100 = m_aiData[i000 + 1], fF010 = m_aiData[i010];
+			float fF110 = m_aiData[i010 + 1], fF001 = m_aiData[i001], fF101 = m_aiData[i001 + 1];
+			float fF011 = m_aiData[i011], fF111 = m_aiData[i011 + 1];
+			float fDX = fCX - iX, fDY = fCY - iY, fDZ = fCZ - iZ;
+			float fOmDX = 1.0f - fDX, fOmDY = 1.0f - fDY, fOmDZ = 1.0f - fDZ;
+
+			float fT0 = fOmDY * (fF100 - fF000) + fDY * (fF110 - fF010);
+			float fT1 = fOmDY * (fF101 - fF001) + fDY * (fF111 - fF011);
+			float fGX = fOmDZ * fT0 + fDZ * fT1;
+			fT0 = fOmDX * (fF010 - fF000) + fDX * (fF110 - fF100);
+			fT1 = fOmDX * (fF011 - fF001) + fDX * (fF111 - fF101);
+			float fGY = fOmDZ * fT0 + fDZ * fT1;
+			fT0 = fOmDX * (fF001 - fF000) + fDX * (fF101 - fF100);
+			fT1 = fOmDX * (fF011 - fF010) + fDX * (fF111 - fF110);
+			float fGZ = fOmDY * fT0 + fDY * fT1;
+
+			return (fGX * fNX + fGY * fNY + fGZ * fNZ) <= 0;
+		}
+
+		/**
+		 * Returns the slab index of the vertex at a point of the current cube, adding the vertex the first time the
+		 * grid edge or face that it lies on is used.
+		 * @param   iPoint  the point, EI_* or FI_*
+		 * @param   iXY     plane index of the lower corner of the cube
+		 * @return  the vertex index
+		 */
+		private int getVertex(int iPoint, int iXY) {
+			int[] aiTable;
+			int i;
+			switch ( iPoint )
+			{
+			case EI_XMIN_YMIN: aiTable = m_aiZEdge;    i = iXY;                  break;
+			case EI_XMIN_YMAX: aiTable = m_aiZEdge;    i = iXY + m_iXBound;      break;
+			case EI_XMAX_YMIN: aiTable = m_aiZEdge;    i = iXY + 1;              break;
+			case EI_XMAX_YMAX: aiTable = m_aiZEdge;    i = iXY + 1 + m_iXBound;  break;
+			case EI_XMIN_ZMIN: aiTable = m_aiYEdgeMin; i = iXY;                  break;
+			case EI_XMIN_ZMAX: aiTable = m_aiYEdgeMax; i = iXY;                  break;
+			case EI_XMAX_ZMIN: aiTable = m_aiYEdgeMin; i = iXY + 1;              break;
+			case EI_XMAX_ZMAX: aiTable = m_aiYEdgeMax; i = iXY + 1;              break;
+			case EI_YMIN_ZMIN: aiTable = m_aiXEdgeMin; i = iXY;                  break;
+			case EI_YMIN_ZMAX: aiTable = m_aiXEdgeMax; i = iXY;                  break;
+			case EI_YMAX_ZMIN: aiTable = m_aiXEdgeMin; i = iXY + m_iXBound;      break;
+			case EI_YMAX_ZMAX: aiTable = m_aiXEdgeMax; i = iXY + m_iXBound;      break;
+			case FI_XMIN:      aiTable = m_aiXFace;    i = iXY;                  break;
+			case FI_XMAX:      aiTable = m_aiXFace;    i = iXY + 1;              break;
+			case FI_YMIN:      aiTable = m_aiYFace;    i = iXY;                  break;
+			case FI_YMAX:      aiTable = m_aiYFace;    i = iXY + m_iXBound;      break;
+			case FI_ZMIN:      aiTable = m_aiZFaceMin; i = iXY;                  break;
+			default:           aiTable = m_aiZFaceMax; i = iXY;                  break;
+			}
+
+			if ( aiTable[i] < 0 )
+			{
+				if ( 3 * m_iVQuantity + 3 > m_afVertex.length )
+				{
+					float[] afVertex = new float[2 * m_afVertex.length];
+					System.arraycopy(m_afVertex, 0, afVertex, 0, 3 * m_iVQuantity);
+					m_afVertex = afVertex;
+				}
+				m_afVertex[3 * m_iVQuantity] = m_afX[iPoint];
+				m_afVertex[3 * m_iVQuantity + 1] = m_afY[iPoint];
+				m_afVertex[3 * m_iVQuantity + 2] = m_afZ[iPoint];
+				aiTable[i] = m_iVQuantity++;
+			}
+			return aiTable[i];
+		}
+	}
 }
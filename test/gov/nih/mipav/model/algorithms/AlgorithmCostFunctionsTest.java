@@ -0,0 +1,177 @@
+package gov.nih.mipav.model.algorithms;
+
+/**
+ * Test case for the voxel sampling and the threads of AlgorithmCostFunctions. Sampling every voxel must give the cost
+ * of the whole image, which for least squares is compared with a direct computation as the cost was made before, and a
+ * given sampling seed must always give the same cost.
+ */
+import gov.nih.mipav.model.structures.ModelSimpleImage;
+import gov.nih.mipav.model.structures.TransMatrixd;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+
+
+public class AlgorithmCostFunctionsTest extends TestCase {
+    private static final int X_DIM = 40, Y_DIM = 36, Z_DIM = 24;
+
+    private static final int[] COSTS = {AlgorithmCostFunctions.CORRELATION_RATIO,
+            AlgorithmCostFunctions.CORRELATION_RATIO_SMOOTHED, AlgorithmCostFunctions.LEAST_SQUARES,
+            AlgorithmCostFunctions.LEAST_SQUARES_SMOOTHED, AlgorithmCostFunctions.MUTUAL_INFORMATION,
+            AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION,
+            AlgorithmCostFunctions.NORMALIZED_MUTUAL_INFORMATION_SMOOTHED};
+
+    private ModelSimpleImage refImage;
+
+    private ModelSimpleImage inputImage;
+
+    private TransMatrixd matrix;
+
+    protected void setUp() {
+        final Random random = new Random(21);
+        refImage = new ModelSimpleImage(new int[] {X_DIM, Y_DIM, Z_DIM}, new float[] {1f, 1f, 1f});
+        inputImage = new ModelSimpleImage(new int[] {X_DIM, Y_DIM, Z_DIM}, new float[] {1f, 1f, 1f});
+
+        for (int i = 0; i < refImage.data.length; i++) {
+            final int x = i % X_DIM, y = (i / X_DIM) % Y_DIM, z = i / (X_DIM * Y_DIM);
+            refImage.data[i] = (float) (200 + 100 * Math.sin(x * 0.2) * Math.cos(y * 0.15 + z * 0.3)
+                    + 5 * random.nextGaussian());
+            inputImage.data[i] = (float) (210 + 100 * Math.sin(x * 0.2 + 0.25) * Math.cos(y * 0.15 + z * 0.3 - 0.1)
+                    + 5 * random.nextGaussian());
+        }
+
+        refImage.calcMinMax();
+        inputImage.calcMinMax();
+
+        matrix = new TransMatrixd(4);
+        matrix.set(0, 3, 1.3);
+        matrix.set(1, 3, -0.7);
+        matrix.set(2, 3, 0.4);
+    }
+
+    /**
+     * Sampling every voxel gives the least squares cost of the direct computation, on one thread or on several.
+     */
+    public void testFullSamplingLeastSquares() {
+        final double expected = leastSquaresDirect(matrix);
+
+        for (int nthreads = 1; nthreads <= 4; nthreads++) {
+            final AlgorithmCostFunctions cost = newCost(AlgorithmCostFunctions.LEAST_SQUARES, nthreads);
+            Assert.assertEquals("threads " + nthreads, expected, cost.cost(matrix), 1.0e-9 * expected);
+
+            cost.setSampling(1.0f, 5);
+            Assert.assertEquals("threads " + nthreads, expected, cost.cost(matrix), 1.0e-9 * expected);
+        }
+    }
+
+    /**
+     * Sampling every voxel gives the cost without a sample for every cost function, and the number of threads does not
+     * change the cost.
+     */
+    public void testFullSampling() {
+
+        for (final int costChoice : COSTS) {
+            final double expected = newCost(costChoice, 1).cost(matrix);
+
+            for (int nthreads = 1; nthreads <= 4; nthreads++) {
+                final AlgorithmCostFunctions cost = newCost(costChoice, nthreads);
+                cost.setSampling(1.0f, 11);
+                Assert.assertEquals("cost " + costChoice + ", threads " + nthreads, expected, cost.cost(matrix),
+                        1.0e-9 * Math.abs(expected));
+            }
+        }
+    }
+
+    /**
+     * The same seed samples the same voxels, so it gives the same cost again, while another seed gives another cost.
+     * The correlation ratio and least squares costs of a quarter of the voxels stay close to those of the whole image;
+     * the histogram estimates of mutual information are biased upwards by a small sample.
+     */
+    public void testSamplingRepeatable() {
+
+        for (final int costChoice : COSTS) {
+            final double full = newCost(costChoice, 1).cost(matrix);
+
+            for (int nthreads = 1; nthreads <= 3; nthreads += 2) {
+                final AlgorithmCostFunctions cost = newCost(costChoice, nthreads);
+                final AlgorithmCostFunctions same = newCost(costChoice, nthreads);
+                final AlgorithmCostFunctions other = newCost(costChoice, nthreads);
+                cost.setSampling(0.25f, 42);
+                same.setSampling(0.25f, 42);
+                other.setSampling(0.25f, 43);
+
+                final double sampled = cost.cost(matrix);
+                final String message = "cost " + costChoice + ", threads " + nthreads;
+
+                Assert.assertEquals(message, sampled, cost.cost(matrix), 0.0);
+                Assert.assertEquals(message, sampled, same.cost(matrix), 0.0);
+                Assert.assertTrue(message, sampled != other.cost(matrix));
+
+                if ( (costChoice == AlgorithmCostFunctions.CORRELATION_RATIO)
+                        || (costChoice == AlgorithmCostFunctions.CORRELATION_RATIO_SMOOTHED)
+                        || (costChoice == AlgorithmCostFunctions.LEAST_SQUARES)
+                        || (costChoice == AlgorithmCostFunctions.LEAST_SQUARES_SMOOTHED)) {
+                    Assert.assertEquals(message, full, sampled, 0.05 * Math.abs(full));
+                }
+            }
+        }
+    }
+
+    private AlgorithmCostFunctions newCost(final int costChoice, final int nthreads) {
+        final AlgorithmCostFunctions cost = new AlgorithmCostFunctions(refImage, inputImage, costChoice, 64, 1);
+        cost.setNumberOfThreads(nthreads);
+
+        return cost;
+    }
+
+    /**
+     * Least squares cost over the reference voxels that map inside the input image, with trilinear interpolation and
+     * both images shifted to a minimum of zero.
+     */
+    private double leastSquaresDirect(final TransMatrixd t) {
+        double sum = 0.0;
+        long count = 0;
+
+        for (int z = 0; z < Z_DIM; z++) {
+            for (int y = 0; y < Y_DIM; y++) {
+                for (int x = 0; x < X_DIM; x++) {
+                    final double px = (t.M00 * x) + (t.M01 * y) + (t.M02 * z) + t.M03;
+                    final double py = (t.M10 * x) + (t.M11 * y) + (t.M12 * z) + t.M13;
+                    final double pz = (t.M20 * x) + (t.M21 * y) + (t.M22 * z) + t.M23;
+
+                    if ( (px < 0) || (px > X_DIM - 1.0001) || (py < 0) || (py > Y_DIM - 1.0001) || (pz < 0)
+                            || (pz > Z_DIM - 1.0001)) {
+                        continue;
+                    }
+
+                    final double diff = (refImage.data[x + X_DIM * (y + Y_DIM * z)] - refImage.min)
+                            - (trilinear(inputImage.data, px, py, pz) - inputImage.min);
+                    sum += diff * diff;
+                    count++;
+                }
+            }
+        }
+
+        return sum / count;
+    }
+
+    private static double trilinear(final float[] data, final double x, final double y, final double z) {
+        final int ix = (int) x, iy = (int) y, iz = (int) z;
+        final double dx = x - ix, dy = y - iy, dz = z - iz;
+        double value = 0.0;
+
+        for (int k = 0; k <= 1; k++) {
+            for (int j = 0; j <= 1; j++) {
+                for (int i = 0; i <= 1; i++) {
+                    final double w = ( (i == 0) ? 1 - dx : dx) * ( (j == 0) ? 1 - dy : dy) * ( (k == 0) ? 1 - dz : dz);
+                    value += w * data[ (ix + i) + X_DIM * ( (iy + j) + Y_DIM * (iz + k))];
+                }
+            }
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,346 @@
+package gov.nih.mipav.model.algorithms.filters;
+
+/**
+ * This class is used to create test cases to test AlgorithmNonlocalMeansFilter.java. The filter computes the window
+ * distances from integral images; the results are compared with a direct computation that sums the weighted squared
+ * differences over every similarity window, as the filter did before. Gaussian and Rician filtering of 2D images, of
+ * volumes and of volumes slice by slice (2.5D) are checked. Running main gives the time taken by both.
+ */
+import gov.nih.mipav.model.structures.ModelImage;
+import gov.nih.mipav.model.structures.ModelStorageBase;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class AlgorithmNonlocalMeansFilterTest extends TestCase {
+    /**
+     * Noise standard deviation given to the filter.
+     */
+    private static final float NOISE_STD = 10.0f;
+
+    public void test2D() throws Exception {
+        checkFilter(new int[] {23, 17}, 7, 3, false, false);
+        checkFilter(new int[] {23, 17}, 9, 5, false, false);
+    }
+
+    public void test3D() throws Exception {
+        checkFilter(new int[] {11, 9, 7}, 5, 3, false, false);
+        checkFilter(new int[] {9, 8, 6}, 3, 5, false, false);
+    }
+
+    public void test25D() throws Exception {
+        checkFilter(new int[] {19, 13, 4}, 7, 3, false, true);
+        checkFilter(new int[] {15, 16, 3}, 5, 5, false, true);
+    }
+
+    public void testRician2D() throws Exception {
+        checkFilter(new int[] {23, 17}, 7, 3, true, false);
+        checkFilter(new int[] {21, 18}, 9, 5, true, false);
+    }
+
+    public void testRician3D() throws Exception {
+        checkFilter(new int[] {11, 9, 7}, 5, 3, true, false);
+        checkFilter(new int[] {9, 8, 6}, 3, 5, true, false);
+    }
+
+    public void testRician25D() throws Exception {
+        checkFilter(new int[] {19, 13, 4}, 7, 3, true, true);
+    }
+
+    /**
+     * Times the filter and the direct computation on a 2D image and on a volume with both noise models.
+     */
+    public static void main(final String[] args) throws Exception {
+        final int[][] extents = { {256, 256}, {64, 64, 32}};
+        final int[][] windows = { {15, 5}, {5, 3}};
+
+        for (int c = 0; c < extents.length; c++) {
+            final int xDim = extents[c][0], yDim = extents[c][1];
+            final int zDim = (extents[c].length > 2) ? extents[c][2] : 1;
+
+            for (int model = 0; model < 2; model++) {
+                final boolean rician = (model == 1);
+                final float[] input = noisyImage(xDim, yDim, zDim, rician);
+
+                // the first run warms up
+                filter(input, extents[c], windows[c][0], windows[c][1], rician, false);
+
+                long start = System.nanoTime();
+                final float[] result = filter(input, extents[c], windows[c][0], windows[c][1], rician, false);
+                final long filterTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                final float[] expected = filterDirect(input, xDim, yDim, zDim, windows[c][0], windows[c][1], rician);
+                final long directTime = System.nanoTime() - start;
+                double maxDifference = 0.0;
+
+                for (int i = 0; i < result.length; i++) {
+                    maxDifference = Math.max(maxDifference, Math.abs(result[i] - expected[i]));
+                }
+
+                System.out.println(extents[c].length + "D " + (rician ? "Rician" : "Gaussian") + ", search "
+                        + windows[c][0] + ", similarity " + windows[c][1] + ": direct " + (directTime / 1000000)
+                        + " ms, integral images " + (filterTime / 1000000) + " ms, largest difference "
+                        + maxDifference);
+            }
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * Filters a noisy test image and compares every voxel with the direct computation.
+     *
+     * @param rician if true the image has Rician noise and is filtered with the Rician noise model, otherwise it has
+     *            Gaussian noise and is filtered with the Gaussian model
+     * @param do25D if true the slices of a volume are filtered one by one
+     */
+    private void checkFilter(final int[] extents, final int searchWindowSide, final int similarityWindowSide,
+            final boolean rician, final boolean do25D) throws Exception {
+        final int xDim = extents[0];
+        final int yDim = extents[1];
+        final int zDim = (extents.length > 2) ? extents[2] : 1;
+        final float[] input = noisyImage(xDim, yDim, zDim, rician);
+        final float[] result = filter(input, extents, searchWindowSide, similarityWindowSide, rician, do25D);
+        final float[] expected;
+
+        if (do25D) {
+            expected = filterDirect25D(input, xDim, yDim, zDim, searchWindowSide, similarityWindowSide, rician);
+        } else {
+            expected = filterDirect(input, xDim, yDim, zDim, searchWindowSide, similarityWindowSide, rician);
+        }
+
+        for (int i = 0; i < result.length; i++) {
+            Assert.assertEquals("voxel " + i, expected[i], result[i], 1.0e-3f * Math.max(1, Math.abs(expected[i])));
+        }
+    }
+
+    /**
+     * A smooth test image with Gaussian noise added, or with Rician noise: the magnitude of the image with Gaussian
+     * noise added to its real and imaginary parts.
+     */
+    private static float[] noisyImage(final int xDim, final int yDim, final int zDim, final boolean rician) {
+        final float[] input = new float[xDim * yDim * zDim];
+        final Random random = new Random(input.length);
+
+        for (int i = 0; i < input.length; i++) {
+            final int x = i % xDim, y = (i / xDim) % yDim, z = i / (xDim * yDim);
+            final double signal = 100 + 50 * Math.sin(x * 0.3) * Math.cos(y * 0.2 + z * 0.5);
+
+            if (rician) {
+                final double real = signal + NOISE_STD * random.nextGaussian();
+                final double imaginary = NOISE_STD * random.nextGaussian();
+                input[i] = (float) Math.sqrt(real * real + imaginary * imaginary);
+            } else {
+                input[i] = (float) (signal + NOISE_STD * random.nextGaussian());
+            }
+        }
+
+        return input;
+    }
+
+    private static float[] filter(final float[] input, final int[] extents, final int searchWindowSide,
+            final int similarityWindowSide, final boolean rician, final boolean do25D) throws Exception {
+        final ModelImage srcImage = new ModelImage(ModelStorageBase.FLOAT, extents, "src");
+        final ModelImage destImage = new ModelImage(ModelStorageBase.FLOAT, extents, "dest");
+        srcImage.importData(0, input, true);
+
+        final AlgorithmNonlocalMeansFilter nlm = new AlgorithmNonlocalMeansFilter(destImage, srcImage,
+                searchWindowSide, similarityWindowSide, false, NOISE_STD, 1.0f, rician, do25D, false);
+        nlm.setRunningInSeparateThread(false);
+        nlm.run();
+
+        final float[] result = new float[input.length];
+        destImage.exportData(0, result.length, result);
+        srcImage.disposeLocal();
+        destImage.disposeLocal();
+
+        return result;
+    }
+
+    /**
+     * The direct computation applied to each slice of a volume on its own.
+     */
+    private static float[] filterDirect25D(final float[] input, final int xDim, final int yDim, final int zDim,
+            final int searchWindowSide, final int similarityWindowSide, final boolean rician) {
+        final int sliceSize = xDim * yDim;
+        final float[] output = new float[input.length];
+        final float[] slice = new float[sliceSize];
+
+        for (int z = 0; z < zDim; z++) {
+            System.arraycopy(input, z * sliceSize, slice, 0, sliceSize);
+            System.arraycopy(filterDirect(slice, xDim, yDim, 1, searchWindowSide, similarityWindowSide, rician), 0,
+                    output, z * sliceSize, sliceSize);
+        }
+
+        return output;
+    }
+
+    /**
+     * Nonlocal means filter with the window distance summed over every voxel of the similarity windows. The image is
+     * mirrored at its borders, the kernel is the normalized sum of nested boxes weighted by 1 / (2d + 1)^2, and the
+     * voxel itself is weighted by the largest weight of its search window. A 2D image uses square windows.
+     *
+     * <p>
+     * The Rician model averages the squared voxels with the weights 1 / (1 + (distance / h)^2), skips voxels whose
+     * neighborhood mean differs from that of the voxel by more than the noise standard deviation, weights the voxel
+     * itself by 0.5 and subtracts the bias 2 sigma^2 before taking the square root.
+     * </p>
+     */
+    private static float[] filterDirect(final float[] input, final int xDim, final int yDim, final int zDim,
+            final int searchWindowSide, final int similarityWindowSide, final boolean rician) {
+        final int halfSearch = (searchWindowSide - 1) / 2;
+        final int half = (similarityWindowSide - 1) / 2;
+        final int halfZ = (zDim > 1) ? half : 0;
+        final int side = similarityWindowSide;
+        final int sideZ = 2 * halfZ + 1;
+        final double[] kernel = new double[side * side * sideZ];
+        double kernelSum = 0.0;
+
+        for (int d = 1; d <= half; d++) {
+            final double value = 1.0 / ((2 * d + 1) * (2 * d + 1));
+
+            for (int z = -Math.min(d, halfZ); z <= Math.min(d, halfZ); z++) {
+                for (int y = -d; y <= d; y++) {
+                    for (int x = -d; x <= d; x++) {
+                        kernel[(x + half) + side * ((y + half) + side * (z + halfZ))] += value;
+                        kernelSum += value;
+                    }
+                }
+            }
+        }
+
+        for (int k = 0; k < kernel.length; k++) {
+            kernel[k] /= kernelSum;
+        }
+
+        final double filterParameter = NOISE_STD * NOISE_STD;
+        final float[] output = new float[input.length];
+        final double[] means = rician ? neighborhoodMeans(input, xDim, yDim, zDim, half, halfZ) : null;
+
+        for (int z = 0; z < zDim; z++) {
+            for (int y = 0; y < yDim; y++) {
+                for (int x = 0; x < xDim; x++) {
+                    final int index = x + xDim * (y + yDim * z);
+                    double wmax = 0.0;
+                    double average = 0.0;
+                    double sweight = 0.0;
+
+                    for (int q = Math.max(z - halfSearch, 0); q <= Math.min(z + halfSearch, zDim - 1); q++) {
+                        for (int r = Math.max(y - halfSearch, 0); r <= Math.min(y + halfSearch, yDim - 1); r++) {
+                            for (int s = Math.max(x - halfSearch, 0); s <= Math.min(x + halfSearch, xDim - 1); s++) {
+                                final int other = s + xDim * (r + yDim * q);
+
+                                if (other == index) {
+                                    continue;
+                                }
+
+                                if (rician && (Math.abs(means[index] - means[other]) > NOISE_STD)) {
+                                    continue;
+                                }
+
+                                double dsum = 0.0;
+
+                                for (int wz = -halfZ; wz <= halfZ; wz++) {
+                                    for (int wy = -half; wy <= half; wy++) {
+                                        for (int wx = -half; wx <= half; wx++) {
+                                            final double diff =
+                                                    mirrored(input, xDim, yDim, zDim, x + wx, y + wy, z + wz)
+                                                    - mirrored(input, xDim, yDim, zDim, s + wx, r + wy, q + wz);
+
+                                            dsum += kernel[(wx + half) + side * ((wy + half) + side * (wz + halfZ))]
+                                                    * diff * diff;
+                                        }
+                                    }
+                                }
+
+                                if (rician) {
+                                    final double distance = dsum / filterParameter;
+                                    final double w = 1.0 / (1.0 + distance * distance);
+                                    sweight += w;
+                                    average += w * input[other] * input[other];
+                                } else {
+                                    final double w = Math.exp( -dsum / filterParameter);
+                                    wmax = Math.max(wmax, w);
+                                    sweight += w;
+                                    average += w * input[other];
+                                }
+                            }
+                        }
+                    }
+
+                    if (rician) {
+                        average += 0.5 * input[index] * input[index];
+                        sweight += 0.5;
+                        output[index] = (float) Math.sqrt(Math.max(0, average / sweight - 2 * NOISE_STD * NOISE_STD));
+                    } else {
+                        average += wmax * input[index];
+                        sweight += wmax;
+                        output[index] = (sweight > 0) ? (float) (average / sweight) : input[index];
+                    }
+                }
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * Means of the 3 x 3 neighborhoods of the pixels of a 2D image, or of the 3 x 3 x 3 neighborhoods of the voxels of
+     * a volume. Neighbors are read from the image mirrored by the similarity window half sizes and are clamped to it.
+     */
+    private static double[] neighborhoodMeans(final float[] input, final int xDim, final int yDim, final int zDim,
+            final int half, final int halfZ) {
+        final double[] means = new double[input.length];
+        final int nz = (zDim > 1) ? 1 : 0;
+
+        for (int z = 0; z < zDim; z++) {
+            for (int y = 0; y < yDim; y++) {
+                for (int x = 0; x < xDim; x++) {
+                    double sum = 0.0;
+
+                    for (int dz = -nz; dz <= nz; dz++) {
+                        for (int dy = -1; dy <= 1; dy++) {
+                            for (int dx = -1; dx <= 1; dx++) {
+                                sum += mirrored(input, xDim, yDim, zDim, clamp(x + dx, half, xDim),
+                                        clamp(y + dy, half, yDim), clamp(z + dz, halfZ, zDim));
+                            }
+                        }
+                    }
+
+                    means[x + xDim * (y + yDim * z)] = sum / ((nz == 1) ? 27 : 9);
+                }
+            }
+        }
+
+        return means;
+    }
+
+    /**
+     * Keeps a coordinate within the image mirrored by a half size.
+     */
+    private static int clamp(final int i, final int half, final int dim) {
+        return Math.max( -half, Math.min(dim - 1 + half, i));
+    }
+
+    /**
+     * Gives the image value at a position that may lie outside of the image, reflecting it at the borders with the
+     * border voxel repeated.
+     */
+    private static float mirrored(final float[] input, final int xDim, final int yDim, final int zDim, final int x,
+            final int y, final int z) {
+        return input[reflect(x, xDim) + xDim * (reflect(y, yDim) + yDim * reflect(z, zDim))];
+    }
+
+    private static int reflect(final int i, final int dim) {
+        if (i < 0) {
+            return -1 - i;
+        } else if (i >= dim) {
+            return 2 * dim - 1 - i;
+        }
+
+        return i;
+    }
+}
@@ -0,0 +1,115 @@
+package gov.nih.mipav.model.structures;
+
+/**
+ * Test case for images whose data is mapped from a file by BufferMapped. A clone of such an image is made by
+ * serializing it, so the clone has to map the file again and keep the values that were changed in memory.
+ */
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+
+
+public class BufferMappedTest extends TestCase {
+    private static final int X_DIM = 32, Y_DIM = 24, Z_DIM = 5;
+
+    /**
+     * Bytes of header in front of the image data.
+     */
+    private static final int OFFSET = 352;
+
+    private File file;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("mapped", ".raw");
+
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+
+        try {
+            out.write(new byte[OFFSET]);
+
+            for (int i = 0; i < X_DIM * Y_DIM * Z_DIM; i++) {
+                out.writeFloat(value(i));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testRead() throws IOException {
+        final ModelImage image = mapImage();
+
+        Assert.assertTrue(image.isMapped());
+
+        for (int i = 0; i < image.getSize(); i++) {
+            Assert.assertEquals(value(i), image.getFloat(i), 0f);
+        }
+
+        image.disposeLocal();
+    }
+
+    /**
+     * Clones a mapped image that has one changed value and reads every value of the clone. Changes to the clone must
+     * not show in the original.
+     */
+    public void testClone() throws IOException {
+        final ModelImage image = mapImage();
+        final int changed = X_DIM * Y_DIM * 2 + 7;
+
+        image.set(changed, -1f);
+
+        final ModelImage clone = (ModelImage) image.clone();
+
+        Assert.assertTrue(clone.isMapped());
+
+        for (int i = 0; i < clone.getSize(); i++) {
+            Assert.assertEquals("voxel " + i, (i == changed) ? -1f : value(i), clone.getFloat(i), 0f);
+        }
+
+        final float[] slice = new float[X_DIM * Y_DIM];
+
+        clone.exportData(X_DIM * Y_DIM * 3, slice.length, slice);
+
+        for (int i = 0; i < slice.length; i++) {
+            Assert.assertEquals(value(X_DIM * Y_DIM * 3 + i), slice[i], 0f);
+        }
+
+        clone.set(0, -2f);
+        Assert.assertEquals(value(0), image.getFloat(0), 0f);
+        Assert.assertEquals(-1f, image.getFloat(changed), 0f);
+
+        clone.disposeLocal();
+        image.disposeLocal();
+    }
+
+    /**
+     * Clones a mapped image that was not changed.
+     */
+    public void testCloneUnchanged() throws IOException {
+        final ModelImage image = mapImage();
+        final ModelImage clone = (ModelImage) image.clone();
+
+        for (int i = 0; i < clone.getSize(); i++) {
+            Assert.assertEquals(value(i), clone.getFloat(i), 0f);
+        }
+
+        clone.disposeLocal();
+        image.disposeLocal();
+    }
+
+    private ModelImage mapImage() throws IOException {
+        return new ModelImage(ModelStorageBase.FLOAT, new int[] {X_DIM, Y_DIM, Z_DIM}, "mapped", file, OFFSET, true);
+    }
+
+    private static float value(final int i) {
+        return (i % 1000) * 0.25f - 17f;
+    }
+}
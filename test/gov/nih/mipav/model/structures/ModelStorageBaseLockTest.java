@@ -0,0 +1,220 @@
+package gov.nih.mipav.model.structures;
+
+/**
+ * Test case for the export/import locking of ModelStorageBase. Several threads export slices of the same image at
+ * once while another thread imports into it; every exported slice must be one that was imported as a whole, and
+ * the image must be unlocked again once all of them are done. Running main gives the export throughput of the image
+ * for an increasing number of threads.
+ */
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+
+
+public class ModelStorageBaseLockTest extends TestCase {
+    /**
+     * Slice dimensions of the test image.
+     */
+    private static final int X_DIM = 256, Y_DIM = 256, Z_DIM = 64;
+
+    private static final int SLICE_SIZE = X_DIM * Y_DIM;
+
+    private ModelStorageBase image;
+
+    protected void setUp() throws IOException {
+        image = new ModelStorageBase(ModelStorageBase.DataType.FLOAT, new int[] {X_DIM, Y_DIM, Z_DIM});
+        final float[] slice = new float[SLICE_SIZE];
+
+        for (int z = 0; z < Z_DIM; z++) {
+            java.util.Arrays.fill(slice, z);
+            image.importData(z * SLICE_SIZE, slice, false);
+        }
+    }
+
+    public void testConcurrentExport() throws Exception {
+        for (int nThreads = 1; nThreads <= 8; nThreads *= 2) {
+            runExporters(nThreads, 5, false);
+            Assert.assertEquals(ModelStorageBase.UNLOCKED, image.getLockStatus());
+        }
+
+        // a writer must still get the lock after the readers are done
+        image.setLock(ModelStorageBase.RW_LOCKED);
+        Assert.assertEquals(ModelStorageBase.RW_LOCKED, image.getLockStatus());
+        image.releaseLock();
+        Assert.assertEquals(ModelStorageBase.UNLOCKED, image.getLockStatus());
+    }
+
+    public void testExportDuringImport() throws Exception {
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final Thread writer = new Thread() {
+            public void run() {
+                final float[] slice = new float[SLICE_SIZE];
+
+                try {
+                    for (int pass = 0; pass < 20; pass++) {
+                        for (int z = 0; z < Z_DIM; z++) {
+                            java.util.Arrays.fill(slice, (pass % 2 == 0) ? -z : z);
+                            image.importData(z * SLICE_SIZE, slice, false);
+                        }
+                    }
+                } catch (final Throwable e) {
+                    error.set(e);
+                }
+            }
+        };
+
+        writer.start();
+        runExporters(4, 10, true);
+        writer.join();
+
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+
+        Assert.assertEquals(ModelStorageBase.UNLOCKED, image.getLockStatus());
+    }
+
+    public void testDataView() throws IOException {
+        final FloatBuffer view = (FloatBuffer) image.getDataView(3 * SLICE_SIZE, SLICE_SIZE);
+
+        Assert.assertEquals(SLICE_SIZE, view.remaining());
+        Assert.assertTrue(view.isReadOnly());
+        Assert.assertEquals(3.0f, view.get(0));
+        Assert.assertEquals(3.0f, view.get(SLICE_SIZE - 1));
+
+        image.set(3 * SLICE_SIZE, 42.0f);
+        Assert.assertEquals(42.0f, view.get(0));
+    }
+
+    /**
+     * Exports slices of one image from 1, 2, 4 ... threads up to the number of processors and prints the exports per
+     * second. The same exports are also timed with the threads taking turns on a single monitor, as they did when an
+     * export locked the image exclusively.
+     */
+    public static void main(final String[] args) throws IOException {
+        final ModelStorageBase image = new ModelStorageBase(ModelStorageBase.DataType.FLOAT,
+                new int[] {X_DIM, Y_DIM, Z_DIM});
+        final int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final int exports = 4000;
+
+        for (int nThreads = 1;; nThreads = Math.min(2 * nThreads, maxThreads)) {
+
+            // warm up, then time
+            timeExports(image, nThreads, exports / 4, null);
+
+            final long shared = timeExports(image, nThreads, exports, null);
+            final long exclusive = timeExports(image, nThreads, exports, new Object());
+
+            System.out.println(nThreads + " threads: " + Math.round(exports * 1.0e9 / shared)
+                    + " exports/s shared, " + Math.round(exports * 1.0e9 / exclusive) + " exports/s exclusive");
+
+            if (nThreads == maxThreads) {
+                break;
+            }
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * Times a number of slice exports divided among threads.
+     *
+     * @param monitor when not null the threads hold it during each export
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    private static long timeExports(final ModelStorageBase image, final int nThreads, final int exports,
+            final Object monitor) {
+        final Thread[] threads = new Thread[nThreads];
+        final long start = System.nanoTime();
+
+        for (int t = 0; t < nThreads; t++) {
+            final int first = t;
+
+            threads[t] = new Thread() {
+                public void run() {
+                    final float[] slice = new float[SLICE_SIZE];
+
+                    try {
+                        for (int i = first; i < exports; i += nThreads) {
+                            if (monitor == null) {
+                                image.exportData((i % Z_DIM) * SLICE_SIZE, SLICE_SIZE, slice);
+                            } else {
+                                synchronized (monitor) {
+                                    image.exportData((i % Z_DIM) * SLICE_SIZE, SLICE_SIZE, slice);
+                                }
+                            }
+                        }
+                    } catch (final IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (int t = 0; t < nThreads; t++) {
+            try {
+                threads[t].join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs threads that each export every slice of the image a number of times. When checkWhole is set the slices
+     * may be rewritten concurrently, so only check that each one holds a single value.
+     */
+    private void runExporters(final int nThreads, final int passes, final boolean checkWhole) throws Exception {
+        final Thread[] threads = new Thread[nThreads];
+        final Throwable[] errors = new Throwable[nThreads];
+
+        for (int t = 0; t < nThreads; t++) {
+            final int index = t;
+
+            threads[t] = new Thread() {
+                public void run() {
+                    final float[] slice = new float[SLICE_SIZE];
+
+                    try {
+                        for (int pass = 0; pass < passes; pass++) {
+                            for (int z = 0; z < Z_DIM; z++) {
+                                image.exportData(z * SLICE_SIZE, SLICE_SIZE, slice);
+
+                                final float expected = checkWhole ? slice[0] : z;
+
+                                if (Math.abs(expected) != z) {
+                                    throw new AssertionError("slice " + z + " holds " + expected);
+                                }
+
+                                for (int i = 0; i < SLICE_SIZE; i++) {
+                                    if (slice[i] != expected) {
+                                        throw new AssertionError("slice " + z + " is torn at " + i);
+                                    }
+                                }
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        errors[index] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (int t = 0; t < nThreads; t++) {
+            threads[t].join();
+
+            if (errors[t] != null) {
+                fail(errors[t].toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package gov.nih.mipav.model.structures;
+
+/**
+ * Test case for the VOI contour masks made by VOIScanConverter. The masks are compared with the ones of the per-pixel
+ * containment tests that were used before: the contour points of fillVolume for VOIBase.setMask and
+ * VOI.createBinaryMask3D, and contains(x, y) over the contour bounds for VOI.createBinaryMask of a slice. Running main
+ * gives the time taken by both on a large VOI.
+ */
+import java.util.BitSet;
+import java.util.Random;
+import java.util.Vector;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import WildMagic.LibFoundation.Mathematics.Vector3f;
+
+
+
+public class VOIScanConverterTest extends TestCase {
+    private Random random;
+
+    protected void setUp() {
+        random = new Random(24);
+    }
+
+    /**
+     * Single contours in z, x and y planes: convex and star shaped, self intersecting, with integer, half integer and
+     * fractional vertices.
+     */
+    public void testContourMask() {
+
+        for (int trial = 0; trial < 300; trial++) {
+            final int xDim = 20 + random.nextInt(40), yDim = 20 + random.nextInt(40), zDim = 20 + random.nextInt(10);
+            final VOIContour contour = randomContour(xDim, yDim, zDim, random.nextInt(3));
+            final boolean XOR = random.nextBoolean();
+            final int polarity = random.nextBoolean() ? VOI.ADDITIVE : VOI.SUBTRACTIVE;
+            final BitSet expected = randomMask(xDim * yDim * zDim);
+            final BitSet mask = (BitSet) expected.clone();
+
+            setMaskByPoints(contour, expected, xDim, yDim, XOR, polarity);
+            contour.setMask(mask, xDim, yDim, XOR, polarity);
+            Assert.assertEquals("trial " + trial, expected, mask);
+        }
+    }
+
+    /**
+     * Whole VOIs of several z plane contours, with XOR nesting, only the active contours and both polarities.
+     */
+    public void testVOIMask() {
+
+        for (int trial = 0; trial < 100; trial++) {
+            final int xDim = 20 + random.nextInt(40), yDim = 20 + random.nextInt(40), zDim = 5 + random.nextInt(5);
+            final VOI voi = randomVOI(xDim, yDim, zDim, 1 + random.nextInt(8));
+            final boolean XOR = random.nextBoolean(), onlyActive = random.nextBoolean();
+            final int slice = random.nextInt(zDim);
+
+            BitSet expected = new BitSet();
+            BitSet mask = new BitSet();
+
+            if (voi.getPolarity() == VOI.SUBTRACTIVE) {
+                expected.set(0, xDim * yDim * zDim);
+                mask.set(0, xDim * yDim * zDim);
+            }
+
+            for (int i = 0; i < voi.getCurves().size(); i++) {
+
+                if ( !onlyActive || voi.getCurves().elementAt(i).isActive()) {
+                    setMaskByPoints(voi.getCurves().elementAt(i), expected, xDim, yDim, XOR, voi.getPolarity());
+                }
+            }
+
+            voi.createBinaryMask3D(mask, xDim, yDim, XOR, onlyActive);
+            Assert.assertEquals("3D trial " + trial, expected, mask);
+
+            expected = new BitSet();
+            mask = new BitSet();
+            createBinaryMaskByContains(voi, xDim, yDim, slice, expected, XOR, onlyActive);
+            voi.createBinaryMask(xDim, yDim, slice, mask, XOR, onlyActive);
+            Assert.assertEquals("slice trial " + trial, expected, mask);
+        }
+    }
+
+    /**
+     * Times the masks of a VOI of 4000 contours over 200 slices of a 256 x 256 volume.
+     */
+    public static void main(final String[] args) {
+        final int xDim = 256, yDim = 256, zDim = 200;
+        final Random random = new Random(5);
+        final VOI voi = new VOI((short) 0, "benchmark", VOI.CONTOUR, 0f);
+
+        for (int z = 0; z < zDim; z++) {
+
+            for (int k = 0; k < 20; k++) {
+                final float cx = 40 + random.nextFloat() * 176, cy = 40 + random.nextFloat() * 176;
+                final float radius = 10 + random.nextFloat() * 28;
+                final VOIContour contour = new VOIContour(false, true);
+
+                for (int i = 0; i < 120; i++) {
+                    final double angle = 2 * Math.PI * i / 120;
+                    contour.add(new Vector3f((float) (cx + radius * Math.cos(angle)),
+                            (float) (cy + radius * Math.sin(angle)), z));
+                }
+
+                contour.setLabel("c");
+                voi.importCurve(contour);
+            }
+        }
+
+        for (int pass = 0; pass < 3; pass++) {
+            final BitSet expected = new BitSet(xDim * yDim * zDim);
+            final BitSet mask = new BitSet(xDim * yDim * zDim);
+            long start = System.nanoTime();
+
+            for (int i = 0; i < voi.getCurves().size(); i++) {
+                setMaskByPoints(voi.getCurves().elementAt(i), expected, xDim, yDim, true, VOI.ADDITIVE);
+            }
+
+            final long pointsTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            voi.createBinaryMask3D(mask, xDim, yDim, true, false);
+
+            final long scanTime = System.nanoTime() - start;
+            final BitSet expectedSlice = new BitSet(xDim * yDim);
+            final BitSet maskSlice = new BitSet(xDim * yDim);
+            start = System.nanoTime();
+            createBinaryMaskByContains(voi, xDim, yDim, 0, expectedSlice, true, false);
+
+            final long containsTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            voi.createBinaryMask(xDim, yDim, 0, maskSlice, true, false);
+
+            final long sliceTime = System.nanoTime() - start;
+
+            System.out.println("createBinaryMask3D: contour points " + (pointsTime / 1000000) + " ms, scan converted "
+                    + (scanTime / 1000000) + " ms, " + (expected.equals(mask) ? "same mask" : "MASKS DIFFER"));
+            System.out.println("createBinaryMask slice 0: contains " + (containsTime / 1000000)
+                    + " ms, scan converted " + (sliceTime / 1000000) + " ms, "
+                    + (expectedSlice.equals(maskSlice) ? "same mask" : "MASKS DIFFER"));
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * The mask of a contour as VOIBase.setMask made it from the points of fillVolume.
+     */
+    private static void setMaskByPoints(final VOIBase contour, final BitSet mask, final int xDim, final int yDim,
+            final boolean XOR, final int polarity) {
+        final Vector<Vector3f> points = contour.getAllContourPoints();
+
+        for (int i = 0; i < points.size(); i++) {
+            final Vector3f point = points.elementAt(i);
+            final int index = ((int) point.Z * xDim * yDim) + ((int) point.Y * xDim) + (int) point.X;
+
+            if (polarity == VOI.ADDITIVE) {
+
+                if (XOR && mask.get(index)) {
+                    mask.clear(index);
+                } else {
+                    mask.set(index);
+                }
+            } else if (polarity == VOI.SUBTRACTIVE) {
+                mask.clear(index);
+            }
+        }
+    }
+
+    /**
+     * The slice mask of a VOI as VOI.createBinaryMask made it with contains(x, y) over the bounds of each contour.
+     */
+    private static void createBinaryMaskByContains(final VOI voi, final int xDim, final int yDim, final int slice,
+            final BitSet mask, final boolean XOR, final boolean onlyActive) {
+        final float[] xBounds = new float[2], yBounds = new float[2], zBounds = new float[2];
+
+        for (int i = 0; i < voi.getCurves().size(); i++) {
+            final VOIBase contour = voi.getCurves().elementAt(i);
+
+            if (onlyActive && !contour.isActive()) {
+                continue;
+            }
+
+            contour.getBounds(xBounds, yBounds, zBounds);
+
+            for (int y = (int) yBounds[0]; y < (int) yBounds[1]; y++) {
+                final int offset = (slice * xDim * yDim) + (y * xDim);
+
+                for (int x = (int) xBounds[0]; x < (int) xBounds[1]; x++) {
+
+                    if (contour.contains(x, y) && (voi.getPolarity() == VOI.ADDITIVE)) {
+
+                        if (XOR && mask.get(offset + x)) {
+                            mask.clear(offset + x);
+                        } else {
+                            mask.set(offset + x);
+                        }
+                    } else if (contour.contains(x, y) && (voi.getPolarity() == VOI.SUBTRACTIVE)) {
+                        mask.clear(offset + x);
+                    }
+                }
+            }
+        }
+    }
+
+    private VOI randomVOI(final int xDim, final int yDim, final int zDim, final int nContours) {
+        final VOI voi = new VOI((short) 0, "voi", VOI.CONTOUR, 0f);
+
+        for (int i = 0; i < nContours; i++) {
+            final VOIContour contour = randomContour(xDim, yDim, zDim, 0);
+            contour.setLabel(String.valueOf(i));
+            voi.importCurve(contour);
+        }
+
+        for (int i = 0; i < voi.getCurves().size(); i++) {
+            voi.getCurves().elementAt(i).setActive(random.nextBoolean());
+        }
+
+        voi.setPolarity(random.nextBoolean() ? VOI.ADDITIVE : VOI.SUBTRACTIVE);
+
+        return voi;
+    }
+
+    /**
+     * A closed contour in a z (plane 0), x (plane 1) or y (plane 2) plane.
+     */
+    private VOIContour randomContour(final int xDim, final int yDim, final int zDim, final int plane) {
+        final int nPoints = 1 + random.nextInt(random.nextBoolean() ? 6 : 40);
+        final int mode = random.nextInt(3);
+        final int uDim = (plane == 1) ? yDim : xDim, vDim = (plane == 0) ? yDim : zDim;
+        final boolean star = random.nextBoolean();
+        final float cu = random.nextFloat() * (uDim - 1), cv = random.nextFloat() * (vDim - 1);
+        final int w = (plane == 0) ? random.nextInt(zDim) : (plane == 1) ? random.nextInt(xDim) : random.nextInt(yDim);
+        final VOIContour contour = new VOIContour(false, true);
+        float v = 0;
+
+        for (int i = 0; i < nPoints; i++) {
+            float u;
+
+            if (star) {
+                final double angle = 2 * Math.PI * i / nPoints, radius = 2 + random.nextDouble() * 20;
+                u = clamp(round((float) (cu + radius * Math.cos(angle)), mode), uDim);
+                v = clamp(round((float) (cv + radius * Math.sin(angle)), mode), vDim);
+            } else {
+                u = clamp(round(random.nextFloat() * (uDim - 1), mode), uDim);
+
+                // repeat a row now and then for horizontal edges
+                if ((i == 0) || (random.nextInt(8) != 0)) {
+                    v = clamp(round(random.nextFloat() * (vDim - 1), mode), vDim);
+                }
+            }
+
+            if (plane == 0) {
+                contour.add(new Vector3f(u, v, w));
+            } else if (plane == 1) {
+                contour.add(new Vector3f(w, u, v));
+            } else {
+                contour.add(new Vector3f(u, w, v));
+            }
+        }
+
+        return contour;
+    }
+
+    /**
+     * Rounds a coordinate to an integer (mode 0), to a half integer (mode 2) or leaves it fractional (mode 1).
+     */
+    private static float round(final float f, final int mode) {
+
+        if (mode == 0) {
+            return Math.round(f);
+        } else if (mode == 2) {
+            return Math.round(2 * f) * 0.5f;
+        }
+
+        return f;
+    }
+
+    private static float clamp(final float f, final int dim) {
+        return Math.max(0, Math.min(dim - 1, f));
+    }
+
+    private BitSet randomMask(final int length) {
+        final BitSet mask = new BitSet(length);
+
+        for (int i = 0; i < length; i++) {
+
+            if (random.nextInt(4) == 0) {
+                mask.set(i);
+            }
+        }
+
+        return mask;
+    }
+}